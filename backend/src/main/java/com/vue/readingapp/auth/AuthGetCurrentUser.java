@@ -9,6 +9,7 @@ import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
 
 /**
  * 获取当前用户信息控制器
@@ -22,6 +23,9 @@ public class AuthGetCurrentUser {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     /**
      * 辅助方法：打印获取用户信息请求日志
      */
@@ -81,8 +85,7 @@ public class AuthGetCurrentUser {
             String token = authHeader.substring(7);
 
             // 2. 会话验证：检查 Token 是否存在且未过期
-            String findSessionSql = "SELECT s.user_id FROM user_sessions s WHERE s.access_token = ? AND s.expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(findSessionSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
             printQueryResult(sessions);
 
             if (sessions.isEmpty()) {
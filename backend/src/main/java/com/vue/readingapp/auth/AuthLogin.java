@@ -13,6 +13,7 @@ import java.util.UUID;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
 
 /**
  * 用户登录控制器
@@ -30,6 +31,9 @@ public class AuthLogin {
     @Autowired
     private JdbcTemplate jdbcTemplate; // 用于执行 SQL 语句操作数据库
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     /**
      * 辅助方法：在控制台打印登录请求数据，方便调试
      */
@@ -122,6 +126,7 @@ public class AuthLogin {
             // 4. 安全清理：登录前先删除该用户旧的会话记录，防止重复登录或残留数据
             String deleteSessionSql = "DELETE FROM user_sessions WHERE user_id = ?";
             jdbcTemplate.update(deleteSessionSql, user.get("user_id"));
+            sessionTokenCache.invalidateUser(user.get("user_id"));
 
             // 5. 令牌生成：创建一个唯一的随机字符串作为用户的“通行证”
             // UUID 会生成类似 "550e8400-e29b-41d4-a716-446655440000" 的唯一标识
@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.reader.ReadingProgressBuffer;
 
 /**
  * 用户登出控制器
@@ -21,6 +23,12 @@ public class AuthLogout {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReadingProgressBuffer readingProgressBuffer;
+
     /**
      * 辅助方法：打印登出请求日志
      */
@@ -96,6 +104,7 @@ public class AuthLogout {
             printQueryResult(sessions);
 
             if (sessions.isEmpty()) {
+                sessionTokenCache.invalidate(token);
                 // 如果数据库里已经没有这个 Token 了（可能已过期或已在别处登出），
                 // 为了用户体验，我们依然返回成功，让前端清除本地缓存。
                 LogoutResponse response = new LogoutResponse(true, "登出成功");
@@ -110,9 +119,15 @@ public class AuthLogout {
 
             String deleteSessionSql = "DELETE FROM user_sessions WHERE session_id = ?";
             jdbcTemplate.update(deleteSessionSql, sessionId);
+            sessionTokenCache.invalidate(token);
 
             System.out.println("用户ID " + userId + " 的会话已删除");
 
+            // 阅读会话随登录会话结束，写入缓冲中的阅读进度
+            if (userId != null) {
+                readingProgressBuffer.flushUser(userId);
+            }
+
             // 4. 返回成功响应
             LogoutResponse response = new LogoutResponse(true, "登出成功");
             printResponse(response);
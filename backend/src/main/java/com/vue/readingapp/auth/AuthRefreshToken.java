@@ -9,6 +9,7 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 import java.util.Map;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
 
 /**
  * 令牌刷新控制器
@@ -23,6 +24,9 @@ public class AuthRefreshToken {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     /**
      * 辅助方法：打印刷新令牌请求日志
      */
@@ -127,7 +131,7 @@ public class AuthRefreshToken {
             }
 
             // 2. 数据库验证：检查该刷新令牌是否存在
-            String checkTokenSql = "SELECT session_id, user_id, expires_at FROM user_sessions WHERE refresh_token = ?";
+            String checkTokenSql = "SELECT session_id, user_id, access_token, expires_at FROM user_sessions WHERE refresh_token = ?";
             List<Map<String, Object>> sessions = jdbcTemplate.queryForList(checkTokenSql, request.getRefresh_token());
             printQueryResult(sessions);
 
@@ -142,6 +146,9 @@ public class AuthRefreshToken {
             LocalDateTime expiresAt = (LocalDateTime) session.get("expires_at");
             LocalDateTime now = LocalDateTime.now();
 
+            // 旧的访问令牌无论续期成功与否都将失效，先从令牌缓存中移除
+            sessionTokenCache.invalidate((String) session.get("access_token"));
+
             // 3. 过期检查：如果刷新令牌也过期了，用户必须重新登录
             if (now.isAfter(expiresAt)) {
                 // 清理已过期的会话记录
@@ -6,6 +6,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.HashMap;
@@ -24,6 +25,9 @@ public class AuthRegister {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SystemStatsRollup statsRollup;
+
     // 用于密码加密的工具类
     private BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
@@ -147,6 +151,7 @@ public class AuthRegister {
                     now,
                     now
             );
+            statsRollup.userRegistered();
 
             // 8. 获取新创建的用户 ID（用于后续生成会话）
             String getUserIdSql = "SELECT user_id FROM users WHERE email = ?";
@@ -10,6 +10,7 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
 
 /**
  * 重置密码控制器
@@ -23,6 +24,9 @@ public class AuthResetPassword {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     /**
      * 辅助方法：打印重置密码请求日志
      */
@@ -201,6 +205,7 @@ public class AuthResetPassword {
 
             // 9. 安全增强：强制该用户的所有旧会话失效（登出所有设备）
             jdbcTemplate.update("DELETE FROM user_sessions WHERE user_id = ?", userId);
+            sessionTokenCache.invalidateUser(userId);
 
             // 10. 返回成功响应
             ResetPasswordResponse response = new ResetPasswordResponse(true, "密码重置成功，请使用新密码登录");
@@ -9,6 +9,7 @@ import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
 
 /**
  * 修改密码控制器
@@ -23,6 +24,9 @@ public class AuthUpdatePassword {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     /**
      * 辅助方法：打印更新密码请求日志
      */
@@ -182,6 +186,7 @@ public class AuthUpdatePassword {
             // 9. 安全增强：修改密码后，强制注销该用户的所有登录会话
             String deleteSessionsSql = "DELETE FROM user_sessions WHERE user_id = ?";
             jdbcTemplate.update(deleteSessionsSql, userId);
+            sessionTokenCache.invalidateUser(userId);
 
             System.out.println("用户ID " + userId + " 的密码已更新，所有旧会话已清除");
 
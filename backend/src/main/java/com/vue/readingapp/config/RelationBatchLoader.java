@@ -0,0 +1,217 @@
+package com.vue.readingapp.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 关联数据批量加载器
+ *
+ * 列表类接口以前对每一行结果单独查询标签、例句、释义等关联数据，
+ * 一页 100 条结果就是 100～500 次数据库往返。
+ * 这个组件先收集一页结果的全部ID，再对每种关联数据执行一次 IN (...) 查询并按ID分组，
+ * 一页结果的往返次数与页大小无关。
+ *
+ * ID 数量超过 chunkSize 时分批查询，避免 SQL 过长。
+ * 返回的 Map 中没有关联数据的ID不会出现，调用方用 getOrDefault 取值。
+ */
+@Component
+public class RelationBatchLoader {
+
+    // SQL 中代表 ID 列表的占位符，会被展开为 (?, ?, ...)
+    private static final String IDS = "{ids}";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 单条 IN 查询最多携带的ID数量
+    @Value("${app.batch-loader.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * 通用批量查询
+     *
+     * @param sql           包含 {ids} 占位符的 SQL，如 "... WHERE x.id IN {ids}"
+     * @param keyColumn     用于分组的列名（结果集中的ID列）
+     * @param ids           需要加载的ID，重复和 null 会被忽略
+     * @param leadingParams 出现在 {ids} 之前的其他参数
+     * @return ID -> 该ID对应的行（保持 SQL 的排序）
+     */
+    public Map<Long, List<Map<String, Object>>> loadGrouped(String sql, String keyColumn,
+                                                             Collection<? extends Number> ids,
+                                                             Object... leadingParams) {
+        Map<Long, List<Map<String, Object>>> grouped = new HashMap<>();
+        List<Long> distinctIds = distinct(ids);
+        if (distinctIds.isEmpty()) {
+            return grouped;
+        }
+
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < distinctIds.size(); from += size) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(distinctIds.size(), from + size));
+
+            StringBuilder placeholders = new StringBuilder("(");
+            for (int i = 0; i < chunk.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            placeholders.append(")");
+
+            List<Object> params = new ArrayList<>(Arrays.asList(leadingParams));
+            params.addAll(chunk);
+
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    sql.replace(IDS, placeholders.toString()), params.toArray());
+            for (Map<String, Object> row : rows) {
+                Object key = row.get(keyColumn);
+                if (key != null) {
+                    grouped.computeIfAbsent(((Number) key).longValue(), k -> new ArrayList<>()).add(row);
+                }
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * 文档标签名称：文档ID -> 标签名列表
+     */
+    public Map<Long, List<String>> loadDocumentTagNames(Collection<? extends Number> documentIds) {
+        String sql = "SELECT dtr.document_id, dt.tag_name FROM document_tags dt " +
+                "JOIN document_tag_relations dtr ON dt.tag_id = dtr.tag_id " +
+                "WHERE dtr.document_id IN " + IDS + " " +
+                "ORDER BY dt.tag_name";
+        return column(loadGrouped(sql, "document_id", documentIds), "tag_name");
+    }
+
+    /**
+     * 文档标签详情（tag_id、tag_name、color）：文档ID -> 标签行
+     */
+    public Map<Long, List<Map<String, Object>>> loadDocumentTags(Collection<? extends Number> documentIds) {
+        String sql = "SELECT dtr.document_id, dt.tag_id, dt.tag_name, dt.color FROM document_tags dt " +
+                "JOIN document_tag_relations dtr ON dt.tag_id = dtr.tag_id " +
+                "WHERE dtr.document_id IN " + IDS + " " +
+                "ORDER BY dt.tag_name";
+        return loadGrouped(sql, "document_id", documentIds);
+    }
+
+    /**
+     * 生词本条目的标签名称：user_vocab_id -> 标签名列表
+     */
+    public Map<Long, List<String>> loadUserVocabularyTagNames(Collection<? extends Number> userVocabIds) {
+        String sql = "SELECT uvt.user_vocab_id, vt.tag_name FROM user_vocabulary_tags uvt " +
+                "JOIN vocabulary_tags vt ON uvt.tag_id = vt.tag_id " +
+                "WHERE uvt.user_vocab_id IN " + IDS + " " +
+                "ORDER BY vt.tag_name";
+        return column(loadGrouped(sql, "user_vocab_id", userVocabIds), "tag_name");
+    }
+
+    /**
+     * 某个用户给词典单词打的标签（经由生词本条目）：word_id -> 标签名列表
+     */
+    public Map<Long, List<String>> loadWordTagNames(long userId, Collection<? extends Number> wordIds) {
+        String sql = "SELECT DISTINCT uv.word_id, vt.tag_name FROM user_vocabulary uv " +
+                "JOIN user_vocabulary_tags uvt ON uv.user_vocab_id = uvt.user_vocab_id " +
+                "JOIN vocabulary_tags vt ON uvt.tag_id = vt.tag_id " +
+                "WHERE uv.user_id = ? AND uv.word_id IN " + IDS + " " +
+                "ORDER BY vt.tag_name";
+        return column(loadGrouped(sql, "word_id", wordIds, userId), "tag_name");
+    }
+
+    /**
+     * 单词释义（按 order_index 排序）：word_id -> 释义列表
+     */
+    public Map<Long, List<String>> loadWordDefinitions(Collection<? extends Number> wordIds) {
+        String sql = "SELECT word_id, definition FROM word_definitions " +
+                "WHERE word_id IN " + IDS + " " +
+                "ORDER BY word_id, order_index";
+        return column(loadGrouped(sql, "word_id", wordIds), "definition");
+    }
+
+    /**
+     * 单词例句（按 order_index 排序，每个单词最多 perWord 条）：word_id -> 例句行
+     * 行中包含 example_sentence 和 translation。
+     */
+    public Map<Long, List<Map<String, Object>>> loadWordExamples(Collection<? extends Number> wordIds, int perWord) {
+        String sql = "SELECT word_id, example_sentence, translation FROM word_examples " +
+                "WHERE word_id IN " + IDS + " " +
+                "ORDER BY word_id, order_index";
+        Map<Long, List<Map<String, Object>>> grouped = loadGrouped(sql, "word_id", wordIds);
+        if (perWord > 0) {
+            for (Map.Entry<Long, List<Map<String, Object>>> entry : grouped.entrySet()) {
+                if (entry.getValue().size() > perWord) {
+                    entry.setValue(new ArrayList<>(entry.getValue().subList(0, perWord)));
+                }
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * 单词例句原文：word_id -> 例句列表
+     */
+    public Map<Long, List<String>> loadWordExampleSentences(Collection<? extends Number> wordIds, int perWord) {
+        return column(loadWordExamples(wordIds, perWord), "example_sentence");
+    }
+
+    /**
+     * 单词关系（近义词、反义词等）：word_id -> 关系类型 -> 相关单词列表
+     *
+     * @param perType 每种关系最多返回的单词数，<= 0 表示不限制
+     */
+    public Map<Long, Map<String, List<String>>> loadWordRelations(Collection<? extends Number> wordIds, int perType) {
+        String sql = "SELECT wr.word_id, wr.relationship_type, w.word FROM word_relations wr " +
+                "JOIN words w ON wr.related_word_id = w.word_id " +
+                "WHERE wr.word_id IN " + IDS + " " +
+                "ORDER BY wr.word_id, w.word";
+        Map<Long, Map<String, List<String>>> relations = new HashMap<>();
+        for (Map.Entry<Long, List<Map<String, Object>>> entry : loadGrouped(sql, "word_id", wordIds).entrySet()) {
+            Map<String, List<String>> byType = new HashMap<>();
+            for (Map<String, Object> row : entry.getValue()) {
+                List<String> words = byType.computeIfAbsent((String) row.get("relationship_type"), k -> new ArrayList<>());
+                if (perType <= 0 || words.size() < perType) {
+                    words.add((String) row.get("word"));
+                }
+            }
+            relations.put(entry.getKey(), byType);
+        }
+        return relations;
+    }
+
+    /**
+     * 在用户生词本中的单词ID
+     */
+    public Set<Long> loadWordIdsInVocabulary(long userId, Collection<? extends Number> wordIds) {
+        String sql = "SELECT DISTINCT word_id FROM user_vocabulary " +
+                "WHERE user_id = ? AND word_id IN " + IDS;
+        return new HashSet<>(loadGrouped(sql, "word_id", wordIds, userId).keySet());
+    }
+
+    private static List<Long> distinct(Collection<? extends Number> ids) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        if (ids != null) {
+            for (Number id : ids) {
+                if (id != null) {
+                    distinct.add(id.longValue());
+                }
+            }
+        }
+        return new ArrayList<>(distinct);
+    }
+
+    private static Map<Long, List<String>> column(Map<Long, List<Map<String, Object>>> grouped, String column) {
+        Map<Long, List<String>> values = new HashMap<>();
+        for (Map.Entry<Long, List<Map<String, Object>>> entry : grouped.entrySet()) {
+            List<String> list = new ArrayList<>();
+            for (Map<String, Object> row : entry.getValue()) {
+                Object value = row.get(column);
+                if (value != null) {
+                    list.add(value.toString());
+                }
+            }
+            values.put(entry.getKey(), list);
+        }
+        return values;
+    }
+}
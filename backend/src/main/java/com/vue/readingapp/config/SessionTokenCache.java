@@ -0,0 +1,156 @@
+package com.vue.readingapp.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 会话令牌缓存（统一的身份认证组件）
+ *
+ * 以前每个控制器都会自己执行一次
+ * "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()"，
+ * 阅读器翻页这类高频接口因此每次请求都要多一次数据库往返。
+ *
+ * 这个组件把 Token -> 用户ID 的解析结果缓存在内存中：
+ *   - 缓存条目数量有上限，超出后按最近最少使用（LRU）淘汰；
+ *   - 条目在会话的 expires_at 到达时立即失效，并且最多保留 maxAgeSeconds 秒，
+ *     这样其他途径对 user_sessions 的修改也能在有限时间内生效；
+ *   - 登出、刷新令牌、修改密码、注销账号时会主动调用 invalidate 清除对应条目。
+ */
+@Component
+public class SessionTokenCache {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 缓存的最大条目数
+    @Value("${app.auth.token-cache.max-size:10000}")
+    private int maxSize;
+
+    // 单个条目在缓存中的最长保留时间（秒）
+    @Value("${app.auth.token-cache.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    /**
+     * 缓存条目：记录用户ID、会话过期时间，以及条目本身的失效时间
+     */
+    private static class CachedSession {
+        private final Object userId;
+        private final LocalDateTime expiresAt;
+        private final LocalDateTime validUntil;
+
+        CachedSession(Object userId, LocalDateTime expiresAt, LocalDateTime validUntil) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+            this.validUntil = validUntil;
+        }
+    }
+
+    // accessOrder = true 的 LinkedHashMap 即为 LRU 结构，超过上限时淘汰最久未访问的条目
+    private final Map<String, CachedSession> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedSession>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedSession> eldest) {
+                    return size() > maxSize;
+                }
+            });
+
+    /**
+     * 根据访问令牌查找有效会话
+     *
+     * 返回结构与原来的 jdbcTemplate.queryForList 保持一致：
+     * 令牌无效或已过期时返回空列表，否则返回一条包含 user_id 和 expires_at 的记录。
+     *
+     * @param token 访问令牌（不含 "Bearer " 前缀）
+     * @return 会话记录列表
+     */
+    public List<Map<String, Object>> findSessions(String token) {
+        if (token == null || token.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        CachedSession cached = cache.get(token);
+        if (cached != null) {
+            if (now.isBefore(cached.validUntil)) {
+                return toRows(cached);
+            }
+            cache.remove(token);
+        }
+
+        String sql = "SELECT user_id, expires_at FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
+        List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+        if (sessions.isEmpty()) {
+            // 无效令牌不缓存，避免登录后新写入的会话被旧的"不存在"结果遮蔽
+            return sessions;
+        }
+
+        Map<String, Object> session = sessions.get(0);
+        LocalDateTime expiresAt = toLocalDateTime(session.get("expires_at"));
+        LocalDateTime validUntil = now.plusSeconds(maxAgeSeconds);
+        if (expiresAt != null && expiresAt.isBefore(validUntil)) {
+            validUntil = expiresAt;
+        }
+
+        CachedSession entry = new CachedSession(session.get("user_id"), expiresAt, validUntil);
+        cache.put(token, entry);
+        return toRows(entry);
+    }
+
+    /**
+     * 根据访问令牌直接获取用户ID，令牌无效时返回 null
+     */
+    public Integer getUserId(String token) {
+        List<Map<String, Object>> sessions = findSessions(token);
+        if (sessions.isEmpty()) {
+            return null;
+        }
+        return ((Number) sessions.get(0).get("user_id")).intValue();
+    }
+
+    /**
+     * 使某个访问令牌的缓存条目失效（登出、刷新令牌时调用）
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            cache.remove(token);
+        }
+    }
+
+    /**
+     * 使某个用户的所有缓存条目失效（修改密码、重置密码、注销账号时调用）
+     */
+    public void invalidateUser(Object userId) {
+        if (userId == null) {
+            return;
+        }
+        long id = ((Number) userId).longValue();
+        synchronized (cache) {
+            cache.values().removeIf(entry -> ((Number) entry.userId).longValue() == id);
+        }
+    }
+
+    private List<Map<String, Object>> toRows(CachedSession entry) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("user_id", entry.userId);
+        row.put("expires_at", entry.expiresAt);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(row);
+        return rows;
+    }
+
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        return null;
+    }
+}
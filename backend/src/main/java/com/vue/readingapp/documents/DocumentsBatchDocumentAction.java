@@ -8,6 +8,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
 import java.sql.Timestamp;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.reader.ReaderPageCache;
+import com.vue.readingapp.reader.index.DocumentTextIndexService;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -16,6 +21,21 @@ public class DocumentsBatchDocumentAction {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private DocumentTextIndexService documentTextIndexService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(String action, BatchActionRequest request, String authHeader) {
         System.out.println("=== 收到批量操作文档请求 ===");
@@ -129,8 +149,7 @@ public class DocumentsBatchDocumentAction {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -300,6 +319,11 @@ public class DocumentsBatchDocumentAction {
 
                 if (rowsUpdated > 0) {
                     successCount++;
+                    searchIndexService.onDocumentChanged(documentId);
+                    readerPageCache.invalidateDocument(documentId);
+                    if (data.get("title") != null) {
+                        suggestionService.onDocumentRenamed(userId, documentId, String.valueOf(data.get("title")));
+                    }
                 } else {
                     failedIds.add(documentId);
                     Map<String, Object> failedItem = new HashMap<>();
@@ -347,6 +371,10 @@ public class DocumentsBatchDocumentAction {
 
                 if (rowsDeleted > 0) {
                     successCount++;
+                    searchIndexService.onDocumentRemoved(documentId);
+                    readerPageCache.invalidateDocument(documentId);
+                    documentTextIndexService.invalidate(documentId);
+                    suggestionService.onDocumentRemoved(userId, documentId);
 
                     // 从处理队列中移除
                     String deleteQueueSql = "DELETE FROM document_processing_queue WHERE document_id = ?";
@@ -445,6 +473,7 @@ public class DocumentsBatchDocumentAction {
 
                 if (rowsUpdated > 0) {
                     successCount++;
+                    readerPageCache.invalidateDocument(documentId);
                 } else {
                     failedIds.add(documentId);
                     Map<String, Object> failedItem = new HashMap<>();
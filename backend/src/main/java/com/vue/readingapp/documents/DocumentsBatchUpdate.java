@@ -8,6 +8,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
 import java.sql.Timestamp;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.reader.ReaderPageCache;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -16,6 +20,18 @@ public class DocumentsBatchUpdate {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(BatchUpdateRequest request) {
         System.out.println("=== 收到批量更新文档请求 ===");
@@ -138,8 +154,7 @@ public class DocumentsBatchUpdate {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -225,6 +240,11 @@ public class DocumentsBatchUpdate {
 
                     if (rowsUpdated > 0) {
                         successCount++;
+                        searchIndexService.onDocumentChanged(documentId);
+                        readerPageCache.invalidateDocument(documentId);
+                        if (request.getTitle() != null) {
+                            suggestionService.onDocumentRenamed(userId, documentId, request.getTitle());
+                        }
 
                         // 处理标签更新
                         if (request.getTags() != null) {
@@ -8,6 +8,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
 import java.sql.Timestamp;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.reader.ReaderPageCache;
+import com.vue.readingapp.reader.index.DocumentTextIndexService;
+import com.vue.readingapp.documents.storage.DocumentBlobStore;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -16,6 +23,27 @@ public class DocumentsDelete {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private DocumentTextIndexService documentTextIndexService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private DocumentBlobStore documentBlobStore;
+
+    @Autowired
+    private SystemStatsRollup statsRollup;
+
     // 打印接收到的请求
     private void printRequest(Integer documentId, String authHeader) {
         System.out.println("=== 收到删除文档请求 ===");
@@ -83,8 +111,7 @@ public class DocumentsDelete {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -96,7 +123,7 @@ public class DocumentsDelete {
 
             // 2. 检查文档是否存在且属于当前用户
             // 修改：移除 deleted_at IS NULL 条件，因为表中没有这个字段
-            String checkSql = "SELECT document_id, title FROM documents WHERE document_id = ? AND user_id = ?";
+            String checkSql = "SELECT document_id, title, content_hash, status FROM documents WHERE document_id = ? AND user_id = ?";
             List<Map<String, Object>> documents = jdbcTemplate.queryForList(checkSql, documentId, userId);
 
             if (documents.isEmpty()) {
@@ -119,6 +146,14 @@ public class DocumentsDelete {
                 );
             }
 
+            searchIndexService.onDocumentRemoved(documentId);
+            readerPageCache.invalidateDocument(documentId);
+            documentTextIndexService.invalidate(documentId);
+            suggestionService.onDocumentRemoved(userId, documentId);
+            statsRollup.documentDeleted((String) document.get("status"));
+            // 释放对文件的引用，没有其他文档引用时由定时回收删除文件
+            documentBlobStore.release((String) document.get("content_hash"));
+
             // 4. 从处理队列中移除（如果存在）
             String deleteQueueSql = "DELETE FROM document_processing_queue WHERE document_id = ?";
             jdbcTemplate.update(deleteQueueSql, documentId);
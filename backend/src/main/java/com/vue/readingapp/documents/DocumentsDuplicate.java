@@ -10,6 +10,13 @@ import java.time.LocalDateTime;
 import java.sql.Timestamp;
 import java.io.IOException;
 import java.nio.file.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.DocumentProcessingScheduler;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.documents.storage.DocumentBlobStore;
+import com.vue.readingapp.documents.storage.ProcessedContentCloner;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -18,8 +25,26 @@ public class DocumentsDuplicate {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    // 文件存储路径
-    private final String UPLOAD_DIR = "uploads/documents/";
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private DocumentProcessingScheduler documentProcessingScheduler;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private DocumentBlobStore documentBlobStore;
+
+    @Autowired
+    private ProcessedContentCloner processedContentCloner;
+
+    @Autowired
+    private SystemStatsRollup statsRollup;
 
     // 打印接收到的请求
     private void printRequest(Integer documentId, String authHeader) {
@@ -128,8 +153,7 @@ public class DocumentsDuplicate {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -151,7 +175,7 @@ public class DocumentsDuplicate {
 
             Map<String, Object> originalDocument = originalDocuments.get(0);
 
-            // 3. 复制文件
+            // 3. 引用原文件（按内容存储，副本与原文档共用同一个文件，不再拷贝）
             String originalFilePath = (String) originalDocument.get("file_path");
             String originalFileName = (String) originalDocument.get("file_name");
 
@@ -168,21 +192,26 @@ public class DocumentsDuplicate {
                 );
             }
 
-            // 生成新的文件名
             String fileExtension = getFileExtension(originalFileName);
             String newFileName = "copy_of_" + originalFileName;
-            String uniqueFilename = System.currentTimeMillis() + "_" + UUID.randomUUID().toString() + fileExtension;
-
-            // 创建上传目录
-            Path uploadPath = Paths.get(UPLOAD_DIR);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
+            String contentHash = (String) originalDocument.get("content_hash");
+
+            Path newFilePath = contentHash != null ? documentBlobStore.acquire(contentHash) : null;
+            if (newFilePath == null) {
+                // 早期上传的文件不在内容存储中：先把原文件纳入存储并改由原文档引用，再为副本登记引用
+                DocumentBlobStore.StoredBlob blob = documentBlobStore.adopt(originalPath, fileExtension);
+                contentHash = blob.getContentHash();
+                jdbcTemplate.update("UPDATE documents SET file_path = ?, content_hash = ? WHERE document_id = ?",
+                        blob.getPath().toString(), contentHash, documentId);
+                if (!originalPath.toAbsolutePath().normalize().equals(blob.getPath())) {
+                    Files.deleteIfExists(originalPath);
+                }
+                newFilePath = documentBlobStore.acquire(contentHash);
+                if (newFilePath == null) {
+                    newFilePath = blob.getPath();
+                }
             }
 
-            // 复制文件
-            Path newFilePath = uploadPath.resolve(uniqueFilename);
-            Files.copy(originalPath, newFilePath, StandardCopyOption.REPLACE_EXISTING);
-
             // 4. 创建新的文档记录
             LocalDateTime now = LocalDateTime.now();
             Timestamp timestamp = Timestamp.valueOf(now);
@@ -191,10 +220,10 @@ public class DocumentsDuplicate {
             String newTitle = "副本 - " + originalTitle;
 
             String insertSql = "INSERT INTO documents (user_id, title, description, file_path, file_name, " +
-                    "file_size, file_type, language, page_count, reading_progress, " +
+                    "file_size, file_type, content_hash, language, page_count, reading_progress, " +
                     "current_page, is_public, is_favorite, is_processed, processing_status, " +
                     "processing_progress, status, created_at, updated_at) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
             jdbcTemplate.update(insertSql,
                     userId,
@@ -204,14 +233,15 @@ public class DocumentsDuplicate {
                     newFileName,
                     originalDocument.get("file_size"),
                     originalDocument.get("file_type"),
+                    contentHash,
                     originalDocument.get("language"),
                     originalDocument.get("page_count"),
                     0, // 重置阅读进度
                     1, // 重置当前页码
                     false, // 默认不公开
                     false, // 默认不收藏
-                    originalDocument.get("is_processed"),
-                    originalDocument.get("processing_status"),
+                    false, // 处理结果由下方复制或重新处理得到
+                    "pending",
                     0, // 重置处理进度
                     "uploading",
                     timestamp,
@@ -221,6 +251,9 @@ public class DocumentsDuplicate {
             // 获取插入的文档ID
             String lastIdSql = "SELECT LAST_INSERT_ID() as id";
             Integer newDocumentId = jdbcTemplate.queryForObject(lastIdSql, Integer.class);
+            searchIndexService.onDocumentChanged(newDocumentId);
+            suggestionService.onDocumentCreated(userId, newDocumentId, newTitle);
+            statsRollup.documentCreated("uploading");
 
             // 5. 复制标签关系
             String tagRelationsSql = "SELECT tag_id FROM document_tag_relations WHERE document_id = ?";
@@ -233,9 +266,13 @@ public class DocumentsDuplicate {
                 jdbcTemplate.update(insertRelationSql, newDocumentId, tagId, timestamp);
             }
 
-            // 6. 添加到文档处理队列
-            String insertQueueSql = "INSERT INTO document_processing_queue (document_id, status, priority, created_at) VALUES (?, ?, ?, ?)";
-            jdbcTemplate.update(insertQueueSql, newDocumentId, "pending", 1, timestamp);
+            // 6. 原文档已处理完成时直接复制页面和 OCR 结果，否则添加到文档处理队列
+            boolean reused = processedContentCloner.cloneFromProcessed(newDocumentId);
+            if (!reused) {
+                String insertQueueSql = "INSERT INTO document_processing_queue (document_id, status, priority, created_at) VALUES (?, ?, ?, ?)";
+                jdbcTemplate.update(insertQueueSql, newDocumentId, "pending", 1, timestamp);
+                documentProcessingScheduler.wakeUp();
+            }
 
             printQueryResult(originalDocument, newDocumentId);
 
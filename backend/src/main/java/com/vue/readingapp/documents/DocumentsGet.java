@@ -9,6 +9,8 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -17,6 +19,12 @@ public class DocumentsGet {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
     // 打印接收到的请求
     private void printRequest(Map<String, Object> params) {
         System.out.println("=== 收到获取文档列表请求 ===");
@@ -324,8 +332,7 @@ public class DocumentsGet {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -419,23 +426,20 @@ public class DocumentsGet {
 
             List<Map<String, Object>> documents = jdbcTemplate.queryForList(querySql, finalQueryParams.toArray());
 
-            // 8. 获取每个文档的标签 - 修复：去掉 dt.user_id 条件
+            // 8. 一次查询本页所有文档的标签 - 修复：去掉 dt.user_id 条件
+            List<Integer> pageDocumentIds = documents.stream()
+                    .map(doc -> (Integer) doc.get("document_id"))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            Map<Long, List<String>> pageTags = relationBatchLoader.loadDocumentTagNames(pageDocumentIds);
+
             List<DocumentDTO> documentDTOs = new ArrayList<>();
 
             for (Map<String, Object> doc : documents) {
                 Integer docId = (Integer) doc.get("document_id");
                 if (docId == null) continue;
 
-                // 查询文档标签 - 修复：去掉 AND dt.user_id = ? 条件
-                String tagSql = "SELECT dt.tag_name FROM document_tag_relations dtr " +
-                        "JOIN document_tags dt ON dtr.tag_id = dt.tag_id " +
-                        "WHERE dtr.document_id = ?";
-                List<Map<String, Object>> tagResults = jdbcTemplate.queryForList(tagSql, docId);
-
-                List<String> tagNames = tagResults.stream()
-                        .map(tag -> (String) tag.get("tag_name"))
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
+                List<String> tagNames = pageTags.getOrDefault(docId.longValue(), new ArrayList<>());
 
                 // 构建 DTO
                 DocumentDTO dto = new DocumentDTO();
@@ -7,6 +7,10 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.util.stream.Collectors;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.index.SearchTokenizer;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -15,6 +19,15 @@ public class DocumentsSearch {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
     // 打印接收到的请求
     private void printRequest(String query, Map<String, Object> params) {
         System.out.println("=== 收到搜索文档请求 ===");
@@ -218,8 +231,7 @@ public class DocumentsSearch {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -236,61 +248,71 @@ public class DocumentsSearch {
                 );
             }
 
-            // 3. 构建搜索条件
-            String searchTerm = "%" + request.getQuery().trim() + "%";
-
-            // 基础查询
-            StringBuilder whereClause = new StringBuilder("WHERE d.user_id = ? AND d.deleted_at IS NULL ");
-            whereClause.append("AND (d.title LIKE ? OR d.description LIKE ? OR d.file_name LIKE ?)");
-
-            List<Object> queryParams = new ArrayList<>();
-            queryParams.add(userId);
-            queryParams.add(searchTerm);
-            queryParams.add(searchTerm);
-            queryParams.add(searchTerm);
-
-            // 4. 获取总数
-            String countSql = "SELECT COUNT(*) as total FROM documents d " + whereClause;
-            Integer total = jdbcTemplate.queryForObject(countSql, Integer.class, queryParams.toArray());
-
-            // 5. 构建排序
-            String orderClause;
-            if ("relevance".equals(request.getSortBy())) {
-                // 简单相关性排序：标题匹配 > 描述匹配 > 文件名匹配
-                orderClause = "ORDER BY " +
-                        "CASE WHEN d.title LIKE ? THEN 1 " +
-                        "WHEN d.description LIKE ? THEN 2 " +
-                        "WHEN d.file_name LIKE ? THEN 3 " +
-                        "ELSE 4 END, " +
-                        "d.created_at DESC";
-            } else {
-                orderClause = "ORDER BY d.created_at DESC";
+            // 3. 从全文索引中查找命中的文档（标题、描述、文件名和页面正文，BM25 排序）
+            List<SearchIndexService.SearchHit> hits = searchIndexService.searchDocuments(userId, request.getQuery().trim());
+            Map<Long, SearchIndexService.SearchHit> hitsByDocument = new HashMap<>();
+            for (SearchIndexService.SearchHit hit : hits) {
+                hitsByDocument.put(hit.getDocumentId(), hit);
+            }
+            Integer total = hits.size();
+
+            // 4. 排序：relevance 按索引得分，其他按创建时间（命中集合已在内存中，直接对ID排序）
+            List<SearchIndexService.SearchHit> orderedHits = new ArrayList<>(hits);
+            Map<Long, Map<String, Object>> createdAtRows = new HashMap<>();
+            if (!"relevance".equals(request.getSortBy()) && !hits.isEmpty()) {
+                String placeholders = hits.stream().map(h -> "?").collect(Collectors.joining(", "));
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT document_id, created_at FROM documents WHERE document_id IN (" + placeholders + ")",
+                        hits.stream().map(SearchIndexService.SearchHit::getDocumentId).toArray());
+                for (Map<String, Object> row : rows) {
+                    createdAtRows.put(((Number) row.get("document_id")).longValue(), row);
+                }
+                orderedHits.sort((a, b) -> {
+                    Map<String, Object> rowA = createdAtRows.get(a.getDocumentId());
+                    Map<String, Object> rowB = createdAtRows.get(b.getDocumentId());
+                    String timeA = rowA != null && rowA.get("created_at") != null ? rowA.get("created_at").toString() : "";
+                    String timeB = rowB != null && rowB.get("created_at") != null ? rowB.get("created_at").toString() : "";
+                    return timeB.compareTo(timeA);
+                });
             }
 
-            // 6. 构建分页
+            // 5. 分页
             int offset = (request.getPage() - 1) * request.getPageSize();
-            String limitClause = "LIMIT ? OFFSET ?";
-
-            // 7. 查询文档列表
-            String querySql = "SELECT d.document_id, d.title, d.description, d.file_name, d.file_size, " +
-                    "d.file_type, d.language, d.page_count, d.reading_progress, d.created_at, " +
-                    "u.username as uploader " +
-                    "FROM documents d " +
-                    "LEFT JOIN users u ON d.user_id = u.user_id " +
-                    whereClause + " " + orderClause + " " + limitClause;
-
-            List<Object> finalQueryParams = new ArrayList<>(queryParams);
-
-            if ("relevance".equals(request.getSortBy())) {
-                finalQueryParams.add(searchTerm);
-                finalQueryParams.add(searchTerm);
-                finalQueryParams.add(searchTerm);
-            }
+            int fromIndex = Math.min(Math.max(offset, 0), orderedHits.size());
+            int toIndex = Math.min(fromIndex + request.getPageSize(), orderedHits.size());
+            List<SearchIndexService.SearchHit> pagedHits = orderedHits.subList(fromIndex, toIndex);
+
+            // 6. 按主键读取当前页的文档
+            List<Map<String, Object>> documents = new ArrayList<>();
+            if (!pagedHits.isEmpty()) {
+                String placeholders = pagedHits.stream().map(h -> "?").collect(Collectors.joining(", "));
+                String querySql = "SELECT d.document_id, d.title, d.description, d.file_name, d.file_size, " +
+                        "d.file_type, d.language, d.page_count, d.reading_progress, d.created_at, " +
+                        "u.username as uploader " +
+                        "FROM documents d " +
+                        "LEFT JOIN users u ON d.user_id = u.user_id " +
+                        "WHERE d.document_id IN (" + placeholders + ") AND d.user_id = ? AND d.deleted_at IS NULL";
+                List<Object> queryParams = new ArrayList<>();
+                for (SearchIndexService.SearchHit hit : pagedHits) {
+                    queryParams.add(hit.getDocumentId());
+                }
+                queryParams.add(userId);
 
-            finalQueryParams.add(request.getPageSize());
-            finalQueryParams.add(offset);
+                Map<Long, Map<String, Object>> rowsById = new HashMap<>();
+                for (Map<String, Object> row : jdbcTemplate.queryForList(querySql, queryParams.toArray())) {
+                    rowsById.put(((Number) row.get("document_id")).longValue(), row);
+                }
+                for (SearchIndexService.SearchHit hit : pagedHits) {
+                    if (rowsById.containsKey(hit.getDocumentId())) {
+                        documents.add(rowsById.get(hit.getDocumentId()));
+                    }
+                }
+            }
+            Map<Long, String> pageContents = searchIndexService.loadHitPageContents(pagedHits);
+            Map<Long, List<String>> pageTags = relationBatchLoader.loadDocumentTagNames(
+                    documents.stream().map(doc -> (Number) doc.get("document_id")).collect(Collectors.toList()));
 
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(querySql, finalQueryParams.toArray());
+            // 7. 打印查询结果
             printQueryResult(documents, total);
 
             // 8. 构建响应数据
@@ -299,46 +321,32 @@ public class DocumentsSearch {
             for (Map<String, Object> doc : documents) {
                 Integer docId = (Integer) doc.get("document_id");
 
-                // 查询文档标签
-                String tagSql = "SELECT dt.tag_name FROM document_tag_relations dtr " +
-                        "JOIN document_tags dt ON dtr.tag_id = dt.tag_id " +
-                        "WHERE dtr.document_id = ?";
-                List<Map<String, Object>> tagResults = jdbcTemplate.queryForList(tagSql, docId);
-
-                List<String> tags = tagResults.stream()
-                        .map(tag -> (String) tag.get("tag_name"))
-                        .collect(Collectors.toList());
+                List<String> tags = pageTags.getOrDefault(docId.longValue(), new ArrayList<>());
 
                 // 构建高亮信息
                 Map<String, List<String>> highlights = new HashMap<>();
                 String title = (String) doc.get("title");
                 String description = (String) doc.get("description");
+                SearchIndexService.SearchHit hit = hitsByDocument.get(docId.longValue());
 
-                // 简单高亮逻辑：如果包含搜索词，就标记
                 if (title != null && title.toLowerCase().contains(request.getQuery().toLowerCase())) {
                     highlights.put("title", Collections.singletonList(title));
                 }
 
                 if (description != null && description.toLowerCase().contains(request.getQuery().toLowerCase())) {
-                    // 截取包含搜索词的部分
-                    int index = description.toLowerCase().indexOf(request.getQuery().toLowerCase());
-                    int start = Math.max(0, index - 50);
-                    int end = Math.min(description.length(), index + request.getQuery().length() + 50);
-                    String snippet = description.substring(start, end);
-                    if (start > 0) snippet = "..." + snippet;
-                    if (end < description.length()) snippet = snippet + "...";
-                    highlights.put("description", Collections.singletonList(snippet));
+                    highlights.put("description", Collections.singletonList(SearchTokenizer.excerpt(description, request.getQuery(), 100)));
                 }
 
-                // 计算相关性分数（简单实现）
-                double relevance = 0.0;
-                if (title != null && title.toLowerCase().contains(request.getQuery().toLowerCase())) {
-                    relevance += 1.0;
-                }
-                if (description != null && description.toLowerCase().contains(request.getQuery().toLowerCase())) {
-                    relevance += 0.5;
+                // 正文命中：截取命中页中包含关键词的片段
+                String pageContent = pageContents.get(docId.longValue());
+                if (pageContent != null) {
+                    highlights.put("content", Collections.singletonList(SearchTokenizer.excerpt(pageContent, request.getQuery(), 100)));
+                    highlights.put("page", Collections.singletonList(String.valueOf(hit.getPageNumber())));
                 }
 
+                // 相关性分数来自索引的 BM25 得分（归一化到 0~1）
+                double relevance = hit.getRelevance();
+
                 // 构建DTO
                 SearchDocumentDTO dto = new SearchDocumentDTO();
                 dto.setId(docId);
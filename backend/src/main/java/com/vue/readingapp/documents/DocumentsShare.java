@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
 import java.sql.Timestamp;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.reader.ReaderPageCache;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -16,6 +18,12 @@ public class DocumentsShare {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
     // 打印接收到的请求
     private void printRequest(Integer documentId, ShareRequest request, String authHeader) {
         System.out.println("=== 收到分享文档请求 ===");
@@ -148,8 +156,7 @@ public class DocumentsShare {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -209,6 +216,8 @@ public class DocumentsShare {
                 );
             }
 
+            readerPageCache.invalidateDocument(documentId);
+
             // 6. 保存允许的用户列表（如果有）
             if (request.getAllowedUsers() != null && !request.getAllowedUsers().isEmpty()) {
                 // 这里应该有一个文档分享权限表
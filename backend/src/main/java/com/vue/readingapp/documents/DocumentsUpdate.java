@@ -8,6 +8,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
 import java.sql.Timestamp;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.reader.ReaderPageCache;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -16,6 +20,18 @@ public class DocumentsUpdate {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Integer documentId, UpdateRequest request) {
         System.out.println("=== 收到更新文档请求 ===");
@@ -155,8 +171,7 @@ public class DocumentsUpdate {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -233,6 +248,12 @@ public class DocumentsUpdate {
                 );
             }
 
+            searchIndexService.onDocumentChanged(documentId);
+            readerPageCache.invalidateDocument(documentId);
+            if (request.getTitle() != null) {
+                suggestionService.onDocumentRenamed(userId, documentId, request.getTitle());
+            }
+
             // 6. 处理标签更新
             if (request.getTags() != null) {
                 // 删除旧的标签关系
@@ -12,6 +12,13 @@ import java.time.LocalDateTime;
 import java.io.IOException;
 import java.nio.file.*;
 import java.sql.Timestamp;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.DocumentProcessingScheduler;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.documents.storage.DocumentBlobStore;
+import com.vue.readingapp.documents.storage.ProcessedContentCloner;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
 
 @RestController
 @RequestMapping("/api/v1/documents")
@@ -20,11 +27,29 @@ public class DocumentsUpload {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private DocumentProcessingScheduler documentProcessingScheduler;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     @Autowired
     private OcrService ocrService;
 
-    // 文件存储路径
-    private final String UPLOAD_DIR = "uploads/documents/";
+    @Autowired
+    private DocumentBlobStore documentBlobStore;
+
+    @Autowired
+    private ProcessedContentCloner processedContentCloner;
+
+    @Autowired
+    private SystemStatsRollup statsRollup;
 
     // 打印接收到的请求
     private void printRequest(String title, String description, String tags, String language, String fileName, long fileSize) {
@@ -157,8 +182,7 @@ public class DocumentsUpload {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -200,27 +224,26 @@ public class DocumentsUpload {
                 );
             }
 
-            // 3. 保存文件
+            // 3. 保存文件（写入时计算内容哈希，相同内容只保存一份）
             String originalFilename = file.getOriginalFilename();
             String fileExtension = getFileExtension(originalFilename);
-            String uniqueFilename = System.currentTimeMillis() + "_" + UUID.randomUUID().toString() + fileExtension;
 
-            // 创建上传目录
-            Path uploadPath = Paths.get(UPLOAD_DIR);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
+            DocumentBlobStore.StoredBlob blob;
+            try (java.io.InputStream in = file.getInputStream()) {
+                blob = documentBlobStore.store(in, fileExtension);
+            }
+            Path filePath = blob.getPath();
+            if (blob.isDeduplicated()) {
+                System.out.println("INFO: 文件内容已存在，复用已保存的文件: " + blob.getContentHash());
             }
-
-            Path filePath = uploadPath.resolve(uniqueFilename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
 
             // 4. 保存到数据库
             LocalDateTime now = LocalDateTime.now();
             Timestamp timestamp = Timestamp.valueOf(now);
 
             String insertSql = "INSERT INTO documents (user_id, title, description, file_path, file_name, " +
-                    "file_size, file_type, language, status, processing_progress, created_at, updated_at) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    "file_size, file_type, content_hash, language, status, processing_progress, created_at, updated_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
             jdbcTemplate.update(insertSql,
                     userId,
@@ -228,8 +251,9 @@ public class DocumentsUpload {
                     description,
                     filePath.toString(),
                     originalFilename,
-                    file.getSize(),
+                    blob.getSize(),
                     contentType,
+                    blob.getContentHash(),
                     language != null ? language : "en",
                     "uploaded", // 修改状态为 uploaded，表示已上传完成
                     0,
@@ -240,6 +264,9 @@ public class DocumentsUpload {
             // 获取插入的文档ID
             String lastIdSql = "SELECT LAST_INSERT_ID() as id";
             Integer documentId = jdbcTemplate.queryForObject(lastIdSql, Integer.class);
+            searchIndexService.onDocumentChanged(documentId);
+            suggestionService.onDocumentCreated(userId, documentId, title);
+            statsRollup.documentCreated("uploaded");
 
             System.out.println("INFO: 文档上传成功，文档ID: " + documentId);
 
@@ -288,20 +315,25 @@ public class DocumentsUpload {
                 }
             }
 
-            // 6. 自动添加到文档处理队列
-            boolean addedToQueue = addDocumentToProcessingQueue(documentId, userId);
+            // 6. 相同内容的文档已处理过时直接复用页面和 OCR 结果，否则自动添加到文档处理队列
+            boolean reused = processedContentCloner.cloneFromProcessed(documentId);
+            boolean addedToQueue = reused || addDocumentToProcessingQueue(documentId, userId);
 
-            if (addedToQueue) {
+            if (reused) {
+                System.out.println("INFO: 已复用相同内容文档的处理结果，跳过处理队列，文档ID: " + documentId);
+            } else if (addedToQueue) {
                 System.out.println("INFO: 文档已成功添加到处理队列，文档ID: " + documentId);
 
                 // 更新文档状态为 pending
                 String updateDocSql = "UPDATE documents SET status = ?, updated_at = ? WHERE document_id = ?";
                 jdbcTemplate.update(updateDocSql, "pending", timestamp, documentId);
+                statsRollup.documentStatusChanged("uploaded", "pending");
             } else {
                 System.err.println("WARNING: 添加文档到处理队列失败，文档ID: " + documentId);
                 // 如果添加到队列失败，设置状态为需要手动处理
                 String updateDocSql = "UPDATE documents SET status = ?, updated_at = ? WHERE document_id = ?";
                 jdbcTemplate.update(updateDocSql, "needs_manual_processing", timestamp, documentId);
+                statsRollup.documentStatusChanged("uploaded", "needs_manual_processing");
             }
 
             // 7. 构建响应数据
@@ -311,12 +343,13 @@ public class DocumentsUpload {
             dto.setFileName(originalFilename);
             dto.setFileSize(formatFileSize(file.getSize()));
             dto.setFileType(contentType);
-            dto.setStatus(addedToQueue ? "pending" : "needs_manual_processing");
-            dto.setProcessingProgress(0);
+            dto.setStatus(reused ? "processed" : addedToQueue ? "pending" : "needs_manual_processing");
+            dto.setProcessingProgress(reused ? 100 : 0);
             dto.setCreatedAt(now);
 
             UploadData data = new UploadData(dto);
-            String message = addedToQueue ? "文档上传成功并已加入处理队列" : "文档上传成功，但需要手动加入处理队列";
+            String message = reused ? "文档上传成功，已复用相同文件的处理结果"
+                    : addedToQueue ? "文档上传成功并已加入处理队列" : "文档上传成功，但需要手动加入处理队列";
             UploadResponse response = new UploadResponse(true, message, data);
 
             // 打印返回数据
@@ -361,8 +394,7 @@ public class DocumentsUpload {
             }
 
             String token = authHeader.substring(7);
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -440,11 +472,13 @@ public class DocumentsUpload {
                         String insertQueueSql = "INSERT INTO document_processing_queue (document_id, status, priority, created_at) " +
                                 "VALUES (?, ?, ?, ?)";
                         int queueRows = jdbcTemplate.update(insertQueueSql, documentId, "pending", 1, timestamp);
+                        documentProcessingScheduler.wakeUp();
 
                         if (queueRows > 0) {
                             // 更新文档状态
                             String updateDocSql = "UPDATE documents SET status = ?, updated_at = ? WHERE document_id = ?";
                             jdbcTemplate.update(updateDocSql, "pending", timestamp, documentId);
+                            statsRollup.documentStatusChanged(status, "pending");
 
                             result.put("status", "success");
                             result.put("message", "已成功添加到处理队列");
@@ -501,8 +535,7 @@ public class DocumentsUpload {
             }
 
             String token = authHeader.substring(7);
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -550,6 +583,7 @@ public class DocumentsUpload {
                 // 更新文档状态
                 String updateDocSql = "UPDATE documents SET status = ?, updated_at = ? WHERE document_id = ?";
                 jdbcTemplate.update(updateDocSql, "pending", timestamp, documentId);
+                statsRollup.documentStatusChanged(status, "pending");
 
                 return ResponseEntity.ok(Map.of(
                         "success", true,
@@ -594,8 +628,7 @@ public class DocumentsUpload {
             }
 
             String token = authHeader.substring(7);
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -682,8 +715,7 @@ public class DocumentsUpload {
             }
 
             String token = authHeader.substring(7);
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> tokenResults = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> tokenResults = sessionTokenCache.findSessions(token);
 
             if (tokenResults.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -755,6 +787,7 @@ public class DocumentsUpload {
             String insertQueueSql = "INSERT INTO document_processing_queue (document_id, status, priority, created_at) " +
                     "VALUES (?, ?, ?, ?)";
             int queueRows = jdbcTemplate.update(insertQueueSql, documentId, "pending", 1, timestamp);
+            documentProcessingScheduler.wakeUp();
 
             return queueRows > 0;
 
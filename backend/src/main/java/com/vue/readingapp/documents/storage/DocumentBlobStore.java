@@ -0,0 +1,292 @@
+package com.vue.readingapp.documents.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 按内容寻址的文档文件存储
+ *
+ * 上传的文件原来各自以随机文件名写入 uploads/documents/，复制文档时再整份拷贝一次；
+ * 同一份讲义被全班上传几十次，磁盘上就有几十份相同的文件。
+ *
+ * 现在文件在写盘的同时计算 SHA-256，按哈希存放（blob-dir/ab/abcdef....pdf），
+ * 内容相同的文件只保存一份。document_blobs 记录每个文件被多少个文档引用：
+ *   - store / acquire：新文档引用文件时引用数 +1；
+ *   - release：文档被删除时引用数 -1；
+ *   - 定时任务按 documents.content_hash 重新核对引用数，删除无人引用且超过宽限期的文件。
+ * 写入和回收都在持有 document_blobs 行锁的事务里检查、移动或删除文件，
+ * 同一内容的上传和回收并发执行时不会删掉刚被引用的文件。
+ */
+@Component
+public class DocumentBlobStore {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 文件存储根目录
+    @Value("${app.documents.blob-dir:uploads/documents/blobs/}")
+    private String blobDir;
+
+    // 引用数归零后保留多久才删除文件（分钟），覆盖"文件已入库、文档记录尚未写入"的窗口
+    @Value("${app.documents.blob-gc-grace-minutes:60}")
+    private int gcGraceMinutes;
+
+    /**
+     * 一次写入的结果
+     */
+    public static class StoredBlob {
+        private final String contentHash;
+        private final Path path;
+        private final long size;
+        private final boolean deduplicated;
+
+        StoredBlob(String contentHash, Path path, long size, boolean deduplicated) {
+            this.contentHash = contentHash;
+            this.path = path;
+            this.size = size;
+            this.deduplicated = deduplicated;
+        }
+
+        public String getContentHash() { return contentHash; }
+        public Path getPath() { return path; }
+        public long getSize() { return size; }
+        /** 存储中已有相同内容，本次没有占用新的磁盘空间 */
+        public boolean isDeduplicated() { return deduplicated; }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        try {
+            Integer tableCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'document_blobs'",
+                    Integer.class);
+            if (tableCount == null || tableCount == 0) {
+                System.out.println("INFO: Creating table 'document_blobs'...");
+                jdbcTemplate.execute("CREATE TABLE document_blobs (" +
+                        "content_hash CHAR(64) NOT NULL PRIMARY KEY," +
+                        "file_path VARCHAR(255) NOT NULL," +
+                        "file_size BIGINT NOT NULL," +
+                        "ref_count INT NOT NULL DEFAULT 0," +
+                        "last_referenced_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                        "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                        "INDEX idx_ref_count (ref_count)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            }
+
+            List<String> columns = jdbcTemplate.queryForList(
+                    "SELECT COLUMN_NAME FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'documents'",
+                    String.class);
+            if (!columns.contains("content_hash")) {
+                System.out.println("INFO: Adding column 'content_hash' to 'documents'");
+                jdbcTemplate.execute("ALTER TABLE documents ADD COLUMN content_hash CHAR(64) NULL AFTER file_type, " +
+                        "ADD INDEX idx_content_hash (content_hash)");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to check document blob schema: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入文件并登记一次引用。边写临时文件边计算哈希，不在内存中缓存文件内容。
+     *
+     * @param in        文件内容（调用方负责关闭）
+     * @param extension 文件扩展名（含点，如 ".pdf"），文本提取按扩展名判断格式
+     */
+    public StoredBlob store(InputStream in, String extension) throws IOException {
+        Path root = root();
+        Path tmpDir = root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+        Path temp = tmpDir.resolve(UUID.randomUUID().toString() + ".part");
+
+        MessageDigest digest = sha256();
+        long size;
+        try {
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                size = in.transferTo(out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        String hash = toHex(digest.digest());
+        Path target = root.resolve(hash.substring(0, 2)).resolve(hash + normalizeExtension(extension));
+        try {
+            return commit(hash, temp, target, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 把已有的文件（旧版本按随机文件名保存的上传）纳入存储并登记一次引用，原文件保持不变
+     */
+    public StoredBlob adopt(Path file, String extension) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return store(in, extension);
+        }
+    }
+
+    // 持有 document_blobs 行锁：登记引用，目标文件不存在（首次写入或刚被回收）时移入临时文件
+    private StoredBlob commit(String hash, Path temp, Path target, long size) {
+        return transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT file_path FROM document_blobs WHERE content_hash = ? FOR UPDATE", hash);
+            Path stored = rows.isEmpty() ? target : Paths.get((String) rows.get(0).get("file_path"));
+            boolean deduplicated = Files.isRegularFile(stored);
+            if (!deduplicated) {
+                try {
+                    Files.createDirectories(stored.getParent());
+                    Files.move(temp, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new IllegalStateException("无法写入文件存储: " + e.getMessage(), e);
+                }
+            }
+            if (rows.isEmpty()) {
+                jdbcTemplate.update("INSERT INTO document_blobs (content_hash, file_path, file_size, ref_count, last_referenced_at, created_at) " +
+                        "VALUES (?, ?, ?, 1, NOW(), NOW())", hash, stored.toString(), size);
+            } else {
+                jdbcTemplate.update("UPDATE document_blobs SET ref_count = ref_count + 1, last_referenced_at = NOW() " +
+                        "WHERE content_hash = ?", hash);
+            }
+            return new StoredBlob(hash, stored, size, deduplicated);
+        });
+    }
+
+    /**
+     * 新文档引用已有的文件（复制文档）
+     *
+     * @return 文件路径；存储中没有该内容时返回 null
+     */
+    public Path acquire(String contentHash) {
+        return transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT file_path FROM document_blobs WHERE content_hash = ? FOR UPDATE", contentHash);
+            if (rows.isEmpty()) {
+                return null;
+            }
+            Path stored = Paths.get((String) rows.get(0).get("file_path"));
+            if (!Files.isRegularFile(stored)) {
+                return null;
+            }
+            jdbcTemplate.update("UPDATE document_blobs SET ref_count = ref_count + 1, last_referenced_at = NOW() " +
+                    "WHERE content_hash = ?", contentHash);
+            return stored;
+        });
+    }
+
+    /**
+     * 文档被删除后释放引用。文件不会立即删除，由定时回收处理。
+     */
+    public void release(String contentHash) {
+        if (contentHash == null || contentHash.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("UPDATE document_blobs SET ref_count = GREATEST(ref_count - 1, 0) WHERE content_hash = ?", contentHash);
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to release document blob " + contentHash + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 核对引用数并回收无人引用的文件
+     *
+     * 引用数以 documents.content_hash 为准重新计算，覆盖级联删除（如删除用户）等没有调用 release 的情况。
+     */
+    @Scheduled(fixedDelayString = "${app.documents.blob-gc-interval-ms:3600000}")
+    public void collectGarbage() {
+        try {
+            jdbcTemplate.update("UPDATE document_blobs b SET ref_count = " +
+                    "(SELECT COUNT(*) FROM documents d WHERE d.content_hash = b.content_hash)");
+
+            List<String> candidates = jdbcTemplate.queryForList(
+                    "SELECT content_hash FROM document_blobs WHERE ref_count = 0 " +
+                            "AND last_referenced_at < DATE_SUB(NOW(), INTERVAL ? MINUTE)",
+                    String.class, Math.max(1, gcGraceMinutes));
+
+            int deleted = 0;
+            long freed = 0;
+            for (String hash : candidates) {
+                Long size = transactionTemplate.execute(status -> {
+                    List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                            "SELECT file_path, file_size FROM document_blobs WHERE content_hash = ? AND ref_count = 0 " +
+                                    "AND last_referenced_at < DATE_SUB(NOW(), INTERVAL ? MINUTE) FOR UPDATE",
+                            hash, Math.max(1, gcGraceMinutes));
+                    if (rows.isEmpty()) {
+                        return null;
+                    }
+                    try {
+                        Files.deleteIfExists(Paths.get((String) rows.get(0).get("file_path")));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                    jdbcTemplate.update("DELETE FROM document_blobs WHERE content_hash = ?", hash);
+                    return ((Number) rows.get(0).get("file_size")).longValue();
+                });
+                if (size != null) {
+                    deleted++;
+                    freed += size;
+                }
+            }
+            if (deleted > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Collected " + deleted + " unreferenced document blobs, freed " + freed + " bytes");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to collect document blobs: " + e.getMessage());
+        }
+    }
+
+    private Path root() {
+        return Paths.get(blobDir).toAbsolutePath().normalize();
+    }
+
+    private static String normalizeExtension(String extension) {
+        if (extension == null || extension.isEmpty()) {
+            return "";
+        }
+        String normalized = extension.toLowerCase();
+        // 扩展名会成为文件名的一部分，只保留字母和数字
+        return normalized.matches("\\.[a-z0-9]{1,10}") ? normalized : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
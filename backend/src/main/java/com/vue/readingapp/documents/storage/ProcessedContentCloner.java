@@ -0,0 +1,153 @@
+package com.vue.readingapp.documents.storage;
+
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.reader.ReaderPageCache;
+import com.vue.readingapp.reader.index.DocumentTextIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 复用相同内容文档的处理结果
+ *
+ * 文件内容相同（content_hash 相同）时文本提取 / OCR 的结果也相同。
+ * 只要已有一份处理完成的文档，就把它的 document_pages 和 document_ocr_results 复制给新文档，
+ * 不再为同一个文件重复跑一遍 OCR（例如同一份讲义被一个班的学生各上传一次）。
+ * OCR 结果可以通过 PUT /documents/{id}/ocr/{page} 手动修改，修改后文档的 ocr_edited 置为 1：
+ * 跨用户只从未修改过的文档复制，修改过的结果只复用给同一用户自己的文档，复制出的文档继承该标记。
+ * 完成状态只写 OCR 完成时写入的那几列（is_processed、processing_status 等），不改 status。
+ * 复制在一个事务中完成，任何一步失败都会回滚，由调用方照常加入 OCR 队列。
+ */
+@Component
+public class ProcessedContentCloner {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private DocumentTextIndexService documentTextIndexService;
+
+    /**
+     * 确保 documents 表有 ocr_edited 列
+     *
+     * 新增列时已有的文档无法判断是否被手动修改过，一律按已修改处理（只在同一用户内复用），之后新建的文档默认为 0。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'documents' AND column_name = 'ocr_edited'",
+                    Integer.class);
+            if (count == null || count == 0) {
+                System.out.println("INFO: Adding column 'ocr_edited' to 'documents'...");
+                jdbcTemplate.execute("ALTER TABLE documents ADD COLUMN ocr_edited TINYINT(1) NOT NULL DEFAULT 1");
+                jdbcTemplate.execute("ALTER TABLE documents ALTER COLUMN ocr_edited SET DEFAULT 0");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to check documents.ocr_edited column: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 为文档复制同内容文档的处理结果
+     *
+     * @return true 表示已复制并把文档标记为处理完成；没有可复用的结果或复制失败时返回 false
+     */
+    public boolean cloneFromProcessed(Integer documentId) {
+        try {
+            List<Map<String, Object>> targets = jdbcTemplate.queryForList(
+                    "SELECT content_hash, user_id FROM documents WHERE document_id = ?", documentId);
+            if (targets.isEmpty() || targets.get(0).get("content_hash") == null) {
+                return false;
+            }
+            String contentHash = (String) targets.get(0).get("content_hash");
+            Object userId = targets.get(0).get("user_id");
+            if (userId == null) {
+                return false;
+            }
+
+            List<Map<String, Object>> sources = jdbcTemplate.queryForList(
+                    "SELECT document_id, page_count, text_layer_pages, ocr_pages, ocr_edited FROM documents " +
+                            "WHERE content_hash = ? AND document_id <> ? AND is_processed = 1 AND processing_status = 'completed' " +
+                            "AND (ocr_edited = 0 OR user_id = ?) " +
+                            "ORDER BY ocr_edited, processing_completed_at DESC LIMIT 1",
+                    contentHash, documentId, userId);
+            if (sources.isEmpty()) {
+                return false;
+            }
+            Map<String, Object> source = sources.get(0);
+            Integer sourceId = ((Number) source.get("document_id")).intValue();
+
+            Integer copiedPages = transactionTemplate.execute(status -> {
+                int pages = jdbcTemplate.update(
+                        "INSERT INTO document_pages (page_id, document_id, page_number, content, html_content, " +
+                                "word_count, character_count, has_images, images, created_at, updated_at) " +
+                                "SELECT CONCAT('page_', ?, '_', page_number), ?, page_number, content, html_content, " +
+                                "word_count, character_count, has_images, images, NOW(), NOW() " +
+                                "FROM document_pages WHERE document_id = ? " +
+                                "ON DUPLICATE KEY UPDATE content = VALUES(content), html_content = VALUES(html_content), " +
+                                "word_count = VALUES(word_count), character_count = VALUES(character_count), updated_at = NOW()",
+                        documentId, documentId, sourceId);
+                if (pages == 0) {
+                    // 源文档没有页面内容（例如页面已被清理），不能算作处理完成
+                    status.setRollbackOnly();
+                    return 0;
+                }
+
+                jdbcTemplate.update(
+                        "INSERT INTO document_ocr_results (ocr_id, document_id, page_number, ocr_text, confidence, " +
+                                "words_json, lines_json, blocks_json, metadata_json, created_at, updated_at) " +
+                                "SELECT CONCAT('ocr_', SUBSTRING(REPLACE(UUID(), '-', ''), 1, 16)), ?, page_number, ocr_text, confidence, " +
+                                "words_json, lines_json, blocks_json, metadata_json, NOW(), NOW() " +
+                                "FROM document_ocr_results WHERE document_id = ?",
+                        documentId, sourceId);
+
+                jdbcTemplate.update(
+                        "UPDATE documents SET is_processed = 1, processing_status = 'completed', processing_progress = 100, " +
+                                "processing_error = NULL, processing_completed_at = ?, page_count = ?, text_layer_pages = ?, " +
+                                "ocr_pages = ?, ocr_edited = ? WHERE document_id = ?",
+                        LocalDateTime.now(), source.get("page_count"), source.get("text_layer_pages"),
+                        source.get("ocr_pages"), source.get("ocr_edited"), documentId);
+                return pages;
+            });
+            if (copiedPages == null || copiedPages == 0) {
+                return false;
+            }
+
+            // 新文档的页面加入搜索索引
+            Map<Integer, String> pageContents = new LinkedHashMap<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    "SELECT page_number, content FROM document_pages WHERE document_id = ? ORDER BY page_number", documentId)) {
+                pageContents.put(((Number) row.get("page_number")).intValue(), (String) row.get("content"));
+            }
+            searchIndexService.onPagesWritten(documentId, pageContents);
+            readerPageCache.invalidateDocument(documentId);
+            documentTextIndexService.invalidate(documentId);
+            documentTextIndexService.rebuildAsync(documentId);
+
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Document " + documentId + " reused processed content of document "
+                    + sourceId + " (" + copiedPages + " pages), OCR skipped");
+            return true;
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to clone processed content for document " + documentId + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
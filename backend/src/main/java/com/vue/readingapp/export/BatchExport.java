@@ -3,21 +3,18 @@ package com.vue.readingapp.export;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -26,6 +23,15 @@ public class BatchExport {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到批量导出请求 ===");
@@ -52,6 +58,7 @@ public class BatchExport {
         private List<String> types;
         private String format = "zip";
         private Map<String, Object> template;
+        private boolean async = false;
 
         public List<String> getTypes() { return types; }
         public void setTypes(List<String> types) { this.types = types; }
@@ -61,6 +68,9 @@ public class BatchExport {
 
         public Map<String, Object> getTemplate() { return template; }
         public void setTemplate(Map<String, Object> template) { this.template = template; }
+
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
     }
 
     // 错误响应DTO
@@ -105,6 +115,18 @@ public class BatchExport {
             "documents", "vocabulary", "reviews", "statistics", "notes", "highlights", "reading_history"
     ));
 
+    // 各导出类型在 README 中的说明
+    private static final Map<String, String> TYPE_DESCRIPTIONS = new HashMap<>();
+    static {
+        TYPE_DESCRIPTIONS.put("documents", "文档数据");
+        TYPE_DESCRIPTIONS.put("vocabulary", "词汇数据");
+        TYPE_DESCRIPTIONS.put("reviews", "复习记录");
+        TYPE_DESCRIPTIONS.put("statistics", "学习统计");
+        TYPE_DESCRIPTIONS.put("notes", "阅读笔记");
+        TYPE_DESCRIPTIONS.put("highlights", "文档高亮");
+        TYPE_DESCRIPTIONS.put("reading_history", "阅读历史");
+    }
+
     @PostMapping("/batch")
     public ResponseEntity<?> batchExport(@RequestBody BatchExportRequest request,
                                          @RequestHeader(value = "Authorization", required = false) String authHeader) {
@@ -124,8 +146,7 @@ public class BatchExport {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -171,144 +192,73 @@ public class BatchExport {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 3. 收集导出数据
-            Map<String, byte[]> exportFiles = new HashMap<>();
-            Map<String, String> fileDescriptions = new HashMap<>();
-
+            // 3. 确定导出文件（同一类型只导出一次），数据在响应写出时逐个文件流式查询
+            Map<String, String> fileDescriptions = new LinkedHashMap<>();
+            List<String> exportTypes = new ArrayList<>();
             for (String type : request.getTypes()) {
-                switch (type.toLowerCase()) {
-                    case "documents":
-                        byte[] documentsData = exportDocumentsData(userId);
-                        exportFiles.put("documents.json", documentsData);
-                        fileDescriptions.put("documents.json", "文档数据");
-                        break;
-
-                    case "vocabulary":
-                        byte[] vocabularyData = exportVocabularyData(userId);
-                        exportFiles.put("vocabulary.json", vocabularyData);
-                        fileDescriptions.put("vocabulary.json", "词汇数据");
-                        break;
-
-                    case "reviews":
-                        byte[] reviewsData = exportReviewsData(userId);
-                        exportFiles.put("reviews.json", reviewsData);
-                        fileDescriptions.put("reviews.json", "复习记录");
-                        break;
-
-                    case "statistics":
-                        byte[] statisticsData = exportStatisticsData(userId);
-                        exportFiles.put("statistics.json", statisticsData);
-                        fileDescriptions.put("statistics.json", "学习统计");
-                        break;
-
-                    case "notes":
-                        byte[] notesData = exportNotesData(userId);
-                        exportFiles.put("notes.json", notesData);
-                        fileDescriptions.put("notes.json", "阅读笔记");
-                        break;
-
-                    case "highlights":
-                        byte[] highlightsData = exportHighlightsData(userId);
-                        exportFiles.put("highlights.json", highlightsData);
-                        fileDescriptions.put("highlights.json", "文档高亮");
-                        break;
-
-                    case "reading_history":
-                        byte[] readingHistoryData = exportReadingHistoryData(userId);
-                        exportFiles.put("reading_history.json", readingHistoryData);
-                        fileDescriptions.put("reading_history.json", "阅读历史");
-                        break;
+                String normalized = type.toLowerCase();
+                if (!exportTypes.contains(normalized)) {
+                    exportTypes.add(normalized);
+                    fileDescriptions.put(normalized + ".json", TYPE_DESCRIPTIONS.get(normalized));
                 }
             }
 
-            if (exportFiles.isEmpty()) {
-                Map<String, Object> details = new HashMap<>();
-                details.put("types", request.getTypes());
-                ErrorResponse errorResponse = new ErrorResponse("EXPORT_ERROR", "没有生成任何导出文件", details);
-                printResponse(errorResponse);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
-            }
+            // 4. 生成文件名
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+            String filename = "batch_export_" + timestamp + ".zip";
+            String exportId = "export_batch_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+            String readmeContent = generateReadmeContent(request.getTypes(), fileDescriptions, userId);
 
-            // 4. 创建ZIP文件
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ZipOutputStream zos = new ZipOutputStream(baos);
+            // 5. ZIP 流：README + 每种类型一个 JSON 文件，逐条目写出
+            ExportStreamWriter.ContentWriter content = out -> {
+                ZipOutputStream zos = new ZipOutputStream(out);
 
-            // 添加README文件
-            String readmeContent = generateReadmeContent(request.getTypes(), fileDescriptions, userId);
-            ZipEntry readmeEntry = new ZipEntry("README.txt");
-            zos.putNextEntry(readmeEntry);
-            zos.write(readmeContent.getBytes(StandardCharsets.UTF_8));
-            zos.closeEntry();
-
-            // 添加导出文件
-            for (Map.Entry<String, byte[]> entry : exportFiles.entrySet()) {
-                ZipEntry fileEntry = new ZipEntry(entry.getKey());
-                zos.putNextEntry(fileEntry);
-                zos.write(entry.getValue());
+                // 添加README文件
+                zos.putNextEntry(new ZipEntry("README.txt"));
+                zos.write(readmeContent.getBytes(StandardCharsets.UTF_8));
                 zos.closeEntry();
-            }
 
-            zos.close();
-            byte[] zipBytes = baos.toByteArray();
+                // 添加导出文件
+                for (String type : exportTypes) {
+                    zos.putNextEntry(new ZipEntry(type + ".json"));
+                    JsonGenerator json = exportStreamWriter.openJson(zos);
+                    json.writeStartObject();
+                    Integer count = writeTypeData(json, type, userId);
+
+                    // 行数要写完数据才知道，所以 metadata 放在数据之后
+                    json.writeObjectFieldStart("metadata");
+                    json.writeStringField("exportedAt", LocalDateTime.now().toString());
+                    json.writeStringField("type", type);
+                    if (count != null) {
+                        json.writeNumberField("count", count);
+                    }
+                    json.writeEndObject();
+
+                    json.writeEndObject();
+                    json.flush();
+                    zos.closeEntry();
+                }
 
-            // 5. 生成文件名
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-            String filename = "batch_export_" + timestamp + ".zip";
+                zos.finish();
+            };
 
-            // 6. 记录导出历史
-            String exportId = "export_batch_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            String typesJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class,
-                    String.join(",", request.getTypes())
-            );
-
-            Map<String, Object> exportDetails = new HashMap<>();
-            exportDetails.put("export_id", exportId);
-            exportDetails.put("format", request.getFormat());
-            exportDetails.put("types", request.getTypes());
-            exportDetails.put("file_count", exportFiles.size() + 1); // +1 for README
-            exportDetails.put("total_size", zipBytes.length);
-            exportDetails.put("filename", filename);
-
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "types", String.join(",", request.getTypes()),
-                    "file_count", exportFiles.size() + 1,
-                    "total_size", zipBytes.length,
-                    "filename", filename
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "BATCH",
-                    typesJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
-
-            // 7. 准备文件响应
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType("application/zip"));
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(zipBytes.length);
+            // 6. 同步时直接流式返回ZIP，异步时提交导出任务（大批量导出建议使用异步）
+            ExportJobService.ExportJob job = new ExportJobService.ExportJob(
+                    userId, "BATCH", exportId, filename, MediaType.parseMediaType("application/zip"), exportTypes);
+            job.getDetails().put("format", request.getFormat());
+            job.getDetails().put("types", exportTypes);
+            job.getDetails().put("file_count", exportTypes.size() + 1); // +1 for README
 
             // 打印返回信息
             Map<String, Object> responseInfo = new HashMap<>();
             responseInfo.put("filename", filename);
-            responseInfo.put("file_size", zipBytes.length);
             responseInfo.put("format", request.getFormat());
             responseInfo.put("types", request.getTypes());
-            responseInfo.put("file_count", exportFiles.size() + 1);
+            responseInfo.put("file_count", exportTypes.size() + 1);
+            responseInfo.put("async", request.isAsync());
             printResponse(responseInfo);
 
-            return new ResponseEntity<>(zipBytes, headers, HttpStatus.OK);
+            return exportJobService.deliver(job, request.isAsync(), content);
 
         } catch (Exception e) {
             System.err.println("批量导出过程中发生错误: " + e.getMessage());
@@ -323,153 +273,73 @@ public class BatchExport {
         }
     }
 
-    // 导出文档数据
-    private byte[] exportDocumentsData(int userId) {
-        String sql = "SELECT document_id, title, author, description, file_path, " +
-                "file_size, page_count, reading_progress, created_at, updated_at " +
-                "FROM documents WHERE user_id = ?";
-
-        List<Map<String, Object>> documents = jdbcTemplate.queryForList(sql, userId);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "documents");
-            put("count", documents.size());
-        }});
-        result.put("documents", documents);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    // 导出词汇数据
-    private byte[] exportVocabularyData(int userId) {
-        String sql = "SELECT uv.user_vocabulary_id, w.word, w.phonetic, wd.definition as meaning, " +
-                "w.part_of_speech, uv.mastery_level, uv.study_count, uv.correct_count, " +
-                "uv.wrong_count, uv.last_studied_at, uv.created_at " +
-                "FROM user_vocabulary uv " +
-                "JOIN words w ON uv.word_id = w.word_id " +
-                "LEFT JOIN word_definitions wd ON w.word_id = wd.word_id AND wd.is_primary = 1 " +
-                "WHERE uv.user_id = ?";
-
-        List<Map<String, Object>> vocabulary = jdbcTemplate.queryForList(sql, userId);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "vocabulary");
-            put("count", vocabulary.size());
-        }});
-        result.put("vocabulary", vocabulary);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    // 导出复习数据
-    private byte[] exportReviewsData(int userId) {
-        String sql = "SELECT review_session_id, start_time, end_time, total_items, " +
-                "correct_count, wrong_count, accuracy, session_type, created_at " +
-                "FROM review_sessions WHERE user_id = ?";
-
-        List<Map<String, Object>> reviews = jdbcTemplate.queryForList(sql, userId);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "reviews");
-            put("count", reviews.size());
-        }});
-        result.put("reviews", reviews);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    // 导出统计数据
-    private byte[] exportStatisticsData(int userId) {
-        // 查询各种统计数据
-        Map<String, Object> statistics = new HashMap<>();
-
-        // 每日统计
-        String dailySql = "SELECT date, total_study_time, words_studied, documents_read, " +
-                "notes_created, highlights_created FROM daily_learning_stats " +
-                "WHERE user_id = ? ORDER BY date DESC LIMIT 30";
-        statistics.put("daily_stats", jdbcTemplate.queryForList(dailySql, userId));
-
-        // 词汇统计
-        String vocabSql = "SELECT mastery_level, COUNT(*) as count FROM user_vocabulary " +
-                "WHERE user_id = ? GROUP BY mastery_level";
-        statistics.put("vocabulary_stats", jdbcTemplate.queryForList(vocabSql, userId));
-
-        // 成就统计
-        String achieveSql = "SELECT COUNT(*) as total_achievements FROM user_achievements " +
-                "WHERE user_id = ?";
-        statistics.put("achievement_stats", jdbcTemplate.queryForList(achieveSql, userId));
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "statistics");
-        }});
-        result.put("statistics", statistics);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    // 导出笔记数据
-    private byte[] exportNotesData(int userId) {
-        String sql = "SELECT note_id, document_id, page_number, content, " +
-                "highlight_id, created_at, updated_at " +
-                "FROM document_notes WHERE user_id = ?";
-
-        List<Map<String, Object>> notes = jdbcTemplate.queryForList(sql, userId);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "notes");
-            put("count", notes.size());
-        }});
-        result.put("notes", notes);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    // 导出高亮数据
-    private byte[] exportHighlightsData(int userId) {
-        String sql = "SELECT highlight_id, document_id, page_number, text_content, " +
-                "color, start_position, end_position, created_at " +
-                "FROM document_highlights WHERE user_id = ?";
-
-        List<Map<String, Object>> highlights = jdbcTemplate.queryForList(sql, userId);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "highlights");
-            put("count", highlights.size());
-        }});
-        result.put("highlights", highlights);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    // 导出阅读历史数据
-    private byte[] exportReadingHistoryData(int userId) {
-        String sql = "SELECT history_id, document_id, start_time, end_time, " +
-                "duration_seconds, pages_read, created_at " +
-                "FROM reading_history WHERE user_id = ? ORDER BY start_time DESC LIMIT 100";
-
-        List<Map<String, Object>> history = jdbcTemplate.queryForList(sql, userId);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("metadata", new HashMap<String, Object>() {{
-            put("exportedAt", LocalDateTime.now().toString());
-            put("type", "reading_history");
-            put("count", history.size());
-        }});
-        result.put("reading_history", history);
-
-        return result.toString().getBytes(StandardCharsets.UTF_8);
+    // 写出一种类型的数据，返回行数（统计数据没有单一行数，返回 null）
+    private Integer writeTypeData(JsonGenerator json, String type, int userId) throws IOException {
+        switch (type) {
+            case "documents":
+                return exportStreamWriter.writeJsonArray(json, "documents",
+                        "SELECT document_id, title, author, description, file_path, " +
+                                "file_size, page_count, reading_progress, created_at, updated_at " +
+                                "FROM documents WHERE user_id = ?", userId);
+
+            case "vocabulary":
+                return exportStreamWriter.writeJsonArray(json, "vocabulary",
+                        "SELECT uv.user_vocab_id, uv.word, uv.phonetic, uv.definition as meaning, " +
+                                "w.part_of_speech, uv.status, uv.mastery_level, uv.review_count, " +
+                                "uv.last_reviewed_at, uv.created_at " +
+                                "FROM user_vocabulary uv " +
+                                "LEFT JOIN words w ON uv.word_id = w.word_id " +
+                                "WHERE uv.user_id = ?", userId);
+
+            case "reviews":
+                return exportStreamWriter.writeJsonArray(json, "reviews",
+                        "SELECT session_id, mode, total_words, correct_words, accuracy, " +
+                                "duration, status, completed_at, created_at " +
+                                "FROM review_sessions WHERE user_id = ?", userId);
+
+            case "statistics":
+                json.writeObjectFieldStart("statistics");
+
+                // 每日统计
+                exportStreamWriter.writeJsonArray(json, "daily_stats",
+                        "SELECT date, reading_time, words_reviewed, documents_read, " +
+                                "pages_read, streak_days FROM daily_learning_stats " +
+                                "WHERE user_id = ? ORDER BY date DESC LIMIT 30", userId);
+
+                // 词汇统计
+                exportStreamWriter.writeJsonArray(json, "vocabulary_stats",
+                        "SELECT mastery_level, COUNT(*) as count FROM user_vocabulary " +
+                                "WHERE user_id = ? GROUP BY mastery_level", userId);
+
+                // 成就统计
+                exportStreamWriter.writeJsonArray(json, "achievement_stats",
+                        "SELECT COUNT(*) as total_achievements FROM user_achievements " +
+                                "WHERE user_id = ?", userId);
+
+                json.writeEndObject();
+                return null;
+
+            case "notes":
+                return exportStreamWriter.writeJsonArray(json, "notes",
+                        "SELECT note_id, document_id, page, content, " +
+                                "highlight_id, created_at, updated_at " +
+                                "FROM document_notes WHERE user_id = ?", userId);
+
+            case "highlights":
+                return exportStreamWriter.writeJsonArray(json, "highlights",
+                        "SELECT highlight_id, document_id, page, text, " +
+                                "color, position, note, created_at " +
+                                "FROM document_highlights WHERE user_id = ?", userId);
+
+            case "reading_history":
+                return exportStreamWriter.writeJsonArray(json, "reading_history",
+                        "SELECT history_id, document_id, page, start_time, end_time, " +
+                                "reading_time, pages_read, created_at " +
+                                "FROM reading_history WHERE user_id = ? ORDER BY start_time DESC LIMIT 100", userId);
+
+            default:
+                return 0;
+        }
     }
 
     // 生成README内容
@@ -7,6 +7,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -15,6 +16,12 @@ public class CleanupExportFiles {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到清理导出文件请求 ===");
@@ -58,12 +65,14 @@ public class CleanupExportFiles {
 
     public static class CleanupData {
         private int deletedCount;
+        private int deletedFileCount;
         private long freedSpace;
         private Map<String, Integer> deletedByType;
         private LocalDateTime cleanupTime;
 
-        public CleanupData(int deletedCount, long freedSpace, Map<String, Integer> deletedByType, LocalDateTime cleanupTime) {
+        public CleanupData(int deletedCount, int deletedFileCount, long freedSpace, Map<String, Integer> deletedByType, LocalDateTime cleanupTime) {
             this.deletedCount = deletedCount;
+            this.deletedFileCount = deletedFileCount;
             this.freedSpace = freedSpace;
             this.deletedByType = deletedByType;
             this.cleanupTime = cleanupTime;
@@ -72,6 +81,9 @@ public class CleanupExportFiles {
         public int getDeletedCount() { return deletedCount; }
         public void setDeletedCount(int deletedCount) { this.deletedCount = deletedCount; }
 
+        public int getDeletedFileCount() { return deletedFileCount; }
+        public void setDeletedFileCount(int deletedFileCount) { this.deletedFileCount = deletedFileCount; }
+
         public long getFreedSpace() { return freedSpace; }
         public void setFreedSpace(long freedSpace) { this.freedSpace = freedSpace; }
 
@@ -139,8 +151,7 @@ public class CleanupExportFiles {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -162,13 +173,15 @@ public class CleanupExportFiles {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 3. 查询要清理的记录
+            // 3. 查询要清理的记录（进行中的异步导出任务不清理）
             String findOldSql = "SELECT log_id, entity_type, details FROM sync_logs " +
                     "WHERE user_id = ? AND operation_type = 'EXPORT' " +
+                    "AND status NOT IN (?, ?) " +
                     "AND created_at < DATE_SUB(NOW(), INTERVAL ? DAY) " +
                     "ORDER BY created_at";
 
-            List<Map<String, Object>> oldRecords = jdbcTemplate.queryForList(findOldSql, userId, daysOld);
+            List<Map<String, Object>> oldRecords = jdbcTemplate.queryForList(findOldSql, userId,
+                    ExportJobService.PENDING, ExportJobService.RUNNING, daysOld);
             printQueryResult("找到需要清理的记录: " + oldRecords.size() + "条");
 
             if (oldRecords.isEmpty()) {
@@ -180,34 +193,32 @@ public class CleanupExportFiles {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
             }
 
-            // 4. 计算要释放的空间
+            // 4. 删除记录对应的导出文件（只有异步导出会在服务端保存文件），统计实际释放的空间
             long totalFreedSpace = 0;
+            int deletedFileCount = 0;
             Map<String, Integer> deletedByType = new HashMap<>();
+            List<Object> logIds = new ArrayList<>();
 
             for (Map<String, Object> record : oldRecords) {
                 String entityType = (String) record.get("entity_type");
-                String detailsJson = (String) record.get("details");
-
-                // 从details中提取文件大小
-                if (detailsJson != null && detailsJson.contains("\"file_size\":")) {
-                    try {
-                        String sizePart = detailsJson.split("\"file_size\":")[1].split(",")[0].replace("\"", "").trim();
-                        long fileSize = Long.parseLong(sizePart);
-                        totalFreedSpace += fileSize;
-                    } catch (Exception e) {
-                        System.out.println("无法解析文件大小: " + detailsJson);
-                    }
+                long freed = exportJobService.deleteSpoolFile(exportJobService.parseDetails(record.get("details")));
+                if (freed > 0) {
+                    totalFreedSpace += freed;
+                    deletedFileCount++;
                 }
 
                 // 统计按类型删除的数量
                 deletedByType.put(entityType, deletedByType.getOrDefault(entityType, 0) + 1);
+                logIds.add(record.get("log_id"));
             }
 
-            // 5. 执行清理
-            String deleteSql = "DELETE FROM sync_logs WHERE user_id = ? AND operation_type = 'EXPORT' " +
-                    "AND created_at < DATE_SUB(NOW(), INTERVAL ? DAY)";
+            // 5. 删除记录（只删除上面已处理过文件的记录）
+            String placeholders = String.join(",", Collections.nCopies(logIds.size(), "?"));
+            List<Object> deleteParams = new ArrayList<>(logIds);
+            deleteParams.add(userId);
+            String deleteSql = "DELETE FROM sync_logs WHERE log_id IN (" + placeholders + ") AND user_id = ?";
 
-            int deletedCount = jdbcTemplate.update(deleteSql, userId, daysOld);
+            int deletedCount = jdbcTemplate.update(deleteSql, deleteParams.toArray());
 
             if (deletedCount != oldRecords.size()) {
                 System.out.println("警告: 预期删除 " + oldRecords.size() + " 条记录，实际删除 " + deletedCount + " 条");
@@ -216,6 +227,7 @@ public class CleanupExportFiles {
             // 6. 构建响应数据
             CleanupData cleanupData = new CleanupData(
                     deletedCount,
+                    deletedFileCount,
                     totalFreedSpace,
                     deletedByType,
                     LocalDateTime.now()
@@ -11,6 +11,7 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.time.format.DateTimeFormatter;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +20,12 @@ public class DeleteExportHistory {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到删除导出历史请求 ===");
@@ -129,8 +136,7 @@ public class DeleteExportHistory {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -201,7 +207,8 @@ public class DeleteExportHistory {
 
             // 5. 获取要删除的log_id
             Map<String, Object> record = records.get(0);
-            int actualLogId = (int) record.get("log_id");
+            long actualLogId = ((Number) record.get("log_id")).longValue();
+            Map<String, Object> detailsMap = exportJobService.parseDetails(record.get("details"));
 
             // 6. 删除记录
             String deleteSql = "DELETE FROM sync_logs WHERE log_id = ? AND user_id = ?";
@@ -216,33 +223,18 @@ public class DeleteExportHistory {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
             }
 
-            // 7. 构建响应数据
+            // 7. 删除对应的导出文件（异步导出才有）
+            long freedSpace = exportJobService.deleteSpoolFile(detailsMap);
+
+            // 8. 构建响应数据
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("deletedId", historyId);
             responseData.put("logId", actualLogId);
             responseData.put("deletedAt", LocalDateTime.now().toString());
             responseData.put("operationType", record.get("operation_type"));
             responseData.put("entityType", record.get("entity_type"));
-
-            // 解析details字段
-            String detailsJson = (String) record.get("details");
-            if (detailsJson != null && detailsJson.startsWith("{")) {
-                // 简单解析details
-                Map<String, Object> detailsMap = new HashMap<>();
-                String content = detailsJson.substring(1, detailsJson.length() - 1);
-                String[] pairs = content.split(",");
-
-                for (String pair : pairs) {
-                    String[] keyValue = pair.split(":");
-                    if (keyValue.length == 2) {
-                        String key = keyValue[0].trim().replace("\"", "");
-                        String value = keyValue[1].trim().replace("\"", "");
-                        detailsMap.put(key, value);
-                    }
-                }
-
-                responseData.put("details", detailsMap);
-            }
+            responseData.put("freedSpace", freedSpace);
+            responseData.put("details", detailsMap);
 
             DeleteExportHistoryResponse response = new DeleteExportHistoryResponse(responseData);
 
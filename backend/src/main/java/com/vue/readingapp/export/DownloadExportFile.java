@@ -0,0 +1,193 @@
+package com.vue.readingapp.export;
+
+import org.springframework.web.bind.annotation.*;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ContentDisposition;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+
+/**
+ * 下载异步导出生成的文件
+ *
+ * 返回 FileSystemResource，Spring MVC 会按请求中的 Range 头返回 206 分段内容，
+ * 大文件下载中断后客户端可以从断点继续。
+ * 同一个 exportId 对应的文件写完后不再变化，ETag 直接使用 exportId。
+ */
+@RestController
+@RequestMapping("/api/v1/export")
+public class DownloadExportFile {
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    // 打印接收到的请求
+    private void printRequest(Object request) {
+        System.out.println("=== 收到导出文件下载请求 ===");
+        System.out.println("请求数据: " + request);
+        System.out.println("=======================");
+    }
+
+    // 打印返回数据
+    private void printResponse(Object response) {
+        System.out.println("=== 准备返回的响应 ===");
+        System.out.println("响应数据: " + response);
+        System.out.println("===================");
+    }
+
+    // 错误响应DTO
+    public static class ErrorResponse {
+        private boolean success = false;
+        private ErrorDetail error;
+
+        public ErrorResponse(String code, String message, Map<String, Object> details) {
+            this.error = new ErrorDetail(code, message, details);
+        }
+
+        public boolean isSuccess() { return success; }
+        public void setSuccess(boolean success) { this.success = success; }
+
+        public ErrorDetail getError() { return error; }
+        public void setError(ErrorDetail error) { this.error = error; }
+
+        public static class ErrorDetail {
+            private String code;
+            private String message;
+            private Map<String, Object> details;
+
+            public ErrorDetail(String code, String message, Map<String, Object> details) {
+                this.code = code;
+                this.message = message;
+                this.details = details;
+            }
+
+            public String getCode() { return code; }
+            public void setCode(String code) { this.code = code; }
+
+            public String getMessage() { return message; }
+            public void setMessage(String message) { this.message = message; }
+
+            public Map<String, Object> getDetails() { return details; }
+            public void setDetails(Map<String, Object> details) { this.details = details; }
+        }
+    }
+
+    @GetMapping("/download/{exportId}")
+    public ResponseEntity<?> downloadExportFile(@PathVariable String exportId,
+                                                @RequestHeader(value = "Range", required = false) String range,
+                                                @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        // 打印接收到的请求
+        printRequest("exportId=" + exportId + ", range=" + range);
+
+        try {
+            // 1. 验证认证
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("auth", "缺少有效的认证令牌");
+                ErrorResponse errorResponse = new ErrorResponse("UNAUTHORIZED", "未授权，需要重新登录", details);
+                printResponse(errorResponse);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+            }
+
+            String token = authHeader.substring(7);
+
+            // 验证token并获取用户ID
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
+
+            if (sessions.isEmpty()) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("token", "令牌无效或已过期");
+                ErrorResponse errorResponse = new ErrorResponse("UNAUTHORIZED", "未授权，需要重新登录", details);
+                printResponse(errorResponse);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+            }
+
+            int userId = (int) sessions.get(0).get("user_id");
+
+            // 2. 查询导出记录
+            Map<String, Object> record = exportJobService.findExport(userId, exportId);
+            if (record == null) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("exportId", exportId);
+                ErrorResponse errorResponse = new ErrorResponse("EXPORT_NOT_FOUND", "未找到指定的导出任务", details);
+                printResponse(errorResponse);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+            }
+
+            String status = (String) record.get("status");
+            Map<String, Object> exportDetails = exportJobService.parseDetails(record.get("details"));
+
+            // 3. 任务尚未完成或已失败
+            if (!ExportJobService.COMPLETED.equals(status)) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("exportId", exportId);
+                details.put("status", status);
+                if (exportDetails.get("error") != null) {
+                    details.put("reason", exportDetails.get("error"));
+                }
+                boolean failed = ExportJobService.FAILED.equals(status);
+                ErrorResponse errorResponse = new ErrorResponse(
+                        failed ? "EXPORT_FAILED" : "EXPORT_NOT_READY",
+                        failed ? "导出任务失败，请重新导出" : "导出任务尚未完成，请稍后再试",
+                        details);
+                printResponse(errorResponse);
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
+            }
+
+            // 4. 文件已超过保留期被清理（或是同步导出，服务端没有保存文件）
+            Path file = exportJobService.spoolFile(exportDetails);
+            if (file == null) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("exportId", exportId);
+                ErrorResponse errorResponse = new ErrorResponse("EXPORT_FILE_EXPIRED", "导出文件已过期，请重新导出", details);
+                printResponse(errorResponse);
+                return ResponseEntity.status(HttpStatus.GONE).body(errorResponse);
+            }
+
+            // 5. 返回文件，Range 请求由 Spring 转为 206 分段响应
+            String filename = exportDetails.getOrDefault("filename", file.getFileName().toString()).toString();
+            MediaType mediaType = exportDetails.get("media_type") != null
+                    ? MediaType.parseMediaType(exportDetails.get("media_type").toString())
+                    : MediaType.APPLICATION_OCTET_STREAM;
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(mediaType);
+            headers.setContentDisposition(ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build());
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.setETag("\"" + exportId + "\"");
+            headers.setLastModified(Files.getLastModifiedTime(file).toMillis());
+
+            Map<String, Object> responseInfo = new HashMap<>();
+            responseInfo.put("exportId", exportId);
+            responseInfo.put("filename", filename);
+            responseInfo.put("file_size", Files.size(file));
+            responseInfo.put("range", range);
+            printResponse(responseInfo);
+
+            return new ResponseEntity<>(new FileSystemResource(file), headers, HttpStatus.OK);
+
+        } catch (Exception e) {
+            System.err.println("下载导出文件过程中发生错误: " + e.getMessage());
+            e.printStackTrace();
+
+            Map<String, Object> details = new HashMap<>();
+            details.put("exception", e.getMessage());
+            details.put("exportId", exportId);
+            ErrorResponse errorResponse = new ErrorResponse("EXPORT_DOWNLOAD_ERROR", "服务器内部错误: " + e.getMessage(), details);
+            printResponse(errorResponse);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import java.util.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -24,6 +25,12 @@ public class ExportDocuments {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到文档导出请求 ===");
@@ -190,8 +197,7 @@ public class ExportDocuments {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -303,14 +309,6 @@ public class ExportDocuments {
 
             // 9. 记录导出历史
             String exportId = "export_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            String entityIdsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class,
-                    String.join(",", validDocIds.stream().map(String::valueOf).toArray(String[]::new))
-            );
-
             Map<String, Object> exportDetails = new HashMap<>();
             exportDetails.put("export_id", exportId);
             exportDetails.put("format", request.getFormat());
@@ -320,26 +318,7 @@ public class ExportDocuments {
             exportDetails.put("include_notes", request.isInclude_notes());
             exportDetails.put("include_highlights", request.isInclude_highlights());
 
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "item_count", documents.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length,
-                    "include_notes", request.isInclude_notes(),
-                    "include_highlights", request.isInclude_highlights()
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "DOCUMENTS",
-                    entityIdsJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
+            exportJobService.recordHistory(userId, "DOCUMENTS", validDocIds, "COMPLETED", exportDetails);
 
             // 10. 准备文件响应
             HttpHeaders headers = new HttpHeaders();
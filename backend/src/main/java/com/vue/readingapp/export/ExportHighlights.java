@@ -3,14 +3,17 @@ package com.vue.readingapp.export;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +22,15 @@ public class ExportHighlights {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到高亮导出请求 ===");
@@ -44,12 +56,16 @@ public class ExportHighlights {
     public static class ExportHighlightsRequest {
         private int document_id;
         private String format = "json";
+        private boolean async = false;
 
         public int getDocument_id() { return document_id; }
         public void setDocument_id(int document_id) { this.document_id = document_id; }
 
         public String getFormat() { return format; }
         public void setFormat(String format) { this.format = format; }
+
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
     }
 
     // 错误响应DTO
@@ -97,12 +113,14 @@ public class ExportHighlights {
     @GetMapping("/documents/{documentId}/highlights")
     public ResponseEntity<?> exportHighlights(@PathVariable int documentId,
                                               @RequestParam(required = false, defaultValue = "json") String format,
+                                              @RequestParam(required = false, defaultValue = "false") boolean async,
                                               @RequestHeader(value = "Authorization", required = false) String authHeader) {
 
         // 构建请求对象
         ExportHighlightsRequest request = new ExportHighlightsRequest();
         request.setDocument_id(documentId);
         request.setFormat(format);
+        request.setAsync(async);
 
         // 打印接收到的请求
         printRequest(request);
@@ -120,8 +138,7 @@ public class ExportHighlights {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -158,81 +175,47 @@ public class ExportHighlights {
             Map<String, Object> document = documents.get(0);
             String documentTitle = (String) document.get("title");
 
-            // 4. 查询文档高亮
-            String highlightsSql = "SELECT highlight_id, document_id, page_number, text_content, " +
-                    "color, start_position, end_position, created_at " +
+            // 4. 文档高亮在写出时流式查询，这里只统计数量（文件头需要）
+            String highlightsSql = "SELECT highlight_id, document_id, page as page_number, text as text_content, " +
+                    "color, position, created_at " +
                     "FROM document_highlights " +
                     "WHERE document_id = ? AND user_id = ? " +
-                    "ORDER BY page_number, start_position";
-
-            List<Map<String, Object>> highlights = jdbcTemplate.queryForList(highlightsSql, documentId, userId);
-            printQueryResult("高亮查询结果: " + highlights.size() + "条记录");
+                    "ORDER BY page, highlight_id";
 
-            // 5. 生成导出文件内容
-            String fileContent = generateHighlightsContent(highlights, documentTitle, request.getFormat());
-            byte[] fileBytes = fileContent.getBytes(StandardCharsets.UTF_8);
+            Integer highlightCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM document_highlights WHERE document_id = ? AND user_id = ?",
+                    Integer.class, documentId, userId);
+            int totalHighlights = highlightCount != null ? highlightCount : 0;
+            printQueryResult("高亮查询结果: " + totalHighlights + "条记录");
 
-            // 6. 生成文件名
+            // 5. 生成文件名
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
             String extension = getFileExtension(request.getFormat());
             String filename = "highlights_" + documentId + "_" + timestamp + "." + extension;
-
-            // 7. 记录导出历史
             String exportId = "export_highlights_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            String entityIdsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class, String.valueOf(documentId)
-            );
-
-            Map<String, Object> exportDetails = new HashMap<>();
-            exportDetails.put("export_id", exportId);
-            exportDetails.put("format", request.getFormat());
-            exportDetails.put("document_id", documentId);
-            exportDetails.put("document_title", documentTitle);
-            exportDetails.put("highlight_count", highlights.size());
-            exportDetails.put("filename", filename);
-            exportDetails.put("file_size", fileBytes.length);
-
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "document_id", documentId,
-                    "document_title", documentTitle,
-                    "highlight_count", highlights.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "HIGHLIGHTS",
-                    entityIdsJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
-
-            // 8. 准备文件响应
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(getMediaType(request.getFormat()));
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(fileBytes.length);
+
+            // 6. 同步时直接流式返回文件，异步时提交导出任务
+            ExportJobService.ExportJob job = new ExportJobService.ExportJob(
+                    userId, "HIGHLIGHTS", exportId, filename, getMediaType(request.getFormat()),
+                    Collections.singletonList(documentId));
+            job.getDetails().put("format", request.getFormat());
+            job.getDetails().put("document_id", documentId);
+            job.getDetails().put("document_title", documentTitle);
+            job.getDetails().put("highlight_count", totalHighlights);
 
             // 打印返回信息
             Map<String, Object> responseInfo = new HashMap<>();
             responseInfo.put("filename", filename);
-            responseInfo.put("file_size", fileBytes.length);
             responseInfo.put("format", request.getFormat());
             responseInfo.put("document_id", documentId);
             responseInfo.put("document_title", documentTitle);
-            responseInfo.put("highlight_count", highlights.size());
+            responseInfo.put("highlight_count", totalHighlights);
+            responseInfo.put("async", request.isAsync());
             printResponse(responseInfo);
 
-            return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+            return exportJobService.deliver(job, request.isAsync(),
+                    out -> writeHighlightsContent(out, highlightsSql, documentId, userId, documentTitle,
+                            totalHighlights, request.getFormat()));
 
         } catch (Exception e) {
             System.err.println("高亮导出过程中发生错误: " + e.getMessage());
@@ -248,131 +231,102 @@ public class ExportHighlights {
         }
     }
 
-    // 生成高亮内容
-    private String generateHighlightsContent(List<Map<String, Object>> highlights, String documentTitle, String format) {
-        StringBuilder content = new StringBuilder();
-
+    // 逐条写出高亮内容
+    private void writeHighlightsContent(OutputStream out, String highlightsSql, int documentId, int userId,
+                                        String documentTitle, int totalHighlights, String format) throws IOException {
         if (format.equalsIgnoreCase("json")) {
             // JSON格式
-            Map<String, Object> exportData = new HashMap<>();
-            exportData.put("metadata", new HashMap<String, Object>() {{
-                put("exportedAt", LocalDateTime.now().toString());
-                put("type", "highlights");
-                put("document_title", documentTitle);
-                put("highlight_count", highlights.size());
-                put("format", "json");
-                put("version", "1.0");
-            }});
-
-            exportData.put("highlights", highlights);
-
-            // 简单JSON序列化
-            content.append("{\n");
-            content.append("  \"metadata\": {\n");
-            content.append("    \"exportedAt\": \"").append(LocalDateTime.now()).append("\",\n");
-            content.append("    \"type\": \"highlights\",\n");
-            content.append("    \"document_title\": \"").append(escapeJson(documentTitle)).append("\",\n");
-            content.append("    \"highlight_count\": ").append(highlights.size()).append(",\n");
-            content.append("    \"format\": \"json\",\n");
-            content.append("    \"version\": \"1.0\"\n");
-            content.append("  },\n");
-            content.append("  \"highlights\": [\n");
-
-            for (int i = 0; i < highlights.size(); i++) {
-                Map<String, Object> highlight = highlights.get(i);
-                content.append("    {\n");
-                content.append("      \"highlight_id\": ").append(highlight.get("highlight_id")).append(",\n");
-                content.append("      \"document_id\": ").append(highlight.get("document_id")).append(",\n");
-                content.append("      \"page_number\": ").append(highlight.get("page_number")).append(",\n");
-                content.append("      \"text_content\": \"").append(escapeJson(highlight.get("text_content"))).append("\",\n");
-                content.append("      \"color\": \"").append(escapeJson(highlight.get("color"))).append("\",\n");
-                content.append("      \"start_position\": ").append(highlight.get("start_position")).append(",\n");
-                content.append("      \"end_position\": ").append(highlight.get("end_position")).append(",\n");
-                content.append("      \"created_at\": \"").append(highlight.get("created_at")).append("\"\n");
-                content.append("    }");
-                if (i < highlights.size() - 1) content.append(",");
-                content.append("\n");
-            }
+            JsonGenerator json = exportStreamWriter.openJson(out);
+            json.writeStartObject();
+            json.writeObjectFieldStart("metadata");
+            json.writeStringField("exportedAt", LocalDateTime.now().toString());
+            json.writeStringField("type", "highlights");
+            json.writeStringField("document_title", documentTitle);
+            json.writeNumberField("highlight_count", totalHighlights);
+            json.writeStringField("format", "json");
+            json.writeStringField("version", "1.0");
+            json.writeEndObject();
+            exportStreamWriter.writeJsonArray(json, "highlights", highlightsSql, documentId, userId);
+            json.writeEndObject();
+            json.flush();
+            return;
+        }
 
-            content.append("  ]\n");
-            content.append("}");
+        Writer writer = exportStreamWriter.openWriter(out);
 
-        } else if (format.equalsIgnoreCase("csv")) {
+        if (format.equalsIgnoreCase("csv")) {
             // CSV格式
-            content.append("文档标题: ").append(documentTitle).append("\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("高亮数量: ").append(highlights.size()).append("\n\n");
-
-            content.append("高亮ID,页码,文本内容,颜色,起始位置,结束位置,创建时间\n");
-
-            for (Map<String, Object> highlight : highlights) {
-                content.append(highlight.get("highlight_id")).append(",");
-                content.append(highlight.get("page_number")).append(",");
-                content.append(escapeCsv(highlight.get("text_content"))).append(",");
-                content.append(escapeCsv(highlight.get("color"))).append(",");
-                content.append(highlight.get("start_position")).append(",");
-                content.append(highlight.get("end_position")).append(",");
-                content.append(escapeCsv(highlight.get("created_at"))).append("\n");
-            }
+            writer.write("文档标题: " + documentTitle + "\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("高亮数量: " + totalHighlights + "\n\n");
+
+            writer.write("高亮ID,页码,文本内容,颜色,位置,创建时间\n");
+
+            exportStreamWriter.streamRows(highlightsSql, highlight -> exportStreamWriter.writeCsvRow(writer, Arrays.asList(
+                    highlight.get("highlight_id"),
+                    highlight.get("page_number"),
+                    highlight.get("text_content"),
+                    highlight.get("color"),
+                    highlight.get("position"),
+                    highlight.get("created_at")
+            )), documentId, userId);
 
         } else {
             // 默认文本格式
-            content.append("文档高亮导出报告\n");
-            content.append("================\n\n");
-            content.append("文档标题: ").append(documentTitle).append("\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("高亮数量: ").append(highlights.size()).append("\n");
-            content.append("导出格式: ").append(format).append("\n\n");
-
-            content.append("高亮列表:\n");
-            content.append("--------\n");
-
-            // 按页码分组
-            Map<Integer, List<Map<String, Object>>> highlightsByPage = new HashMap<>();
-            for (Map<String, Object> highlight : highlights) {
-                int pageNumber = ((Number) highlight.get("page_number")).intValue();
-                highlightsByPage.computeIfAbsent(pageNumber, k -> new ArrayList<>()).add(highlight);
+            writer.write("文档高亮导出报告\n");
+            writer.write("================\n\n");
+            writer.write("文档标题: " + documentTitle + "\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("高亮数量: " + totalHighlights + "\n");
+            writer.write("导出格式: " + format + "\n\n");
+
+            writer.write("高亮列表:\n");
+            writer.write("--------\n");
+
+            // 每页的高亮数（页标题需要），结果按页码排序，写出时遇到新页码就输出页标题
+            Map<Integer, Integer> pageCounts = new HashMap<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    "SELECT page, COUNT(*) as count FROM document_highlights " +
+                            "WHERE document_id = ? AND user_id = ? GROUP BY page", documentId, userId)) {
+                pageCounts.put(((Number) row.get("page")).intValue(), ((Number) row.get("count")).intValue());
             }
 
-            // 按页码排序
-            List<Integer> sortedPages = new ArrayList<>(highlightsByPage.keySet());
-            Collections.sort(sortedPages);
-
-            for (int pageNumber : sortedPages) {
-                List<Map<String, Object>> pageHighlights = highlightsByPage.get(pageNumber);
-
-                content.append("第 ").append(pageNumber).append(" 页 (").append(pageHighlights.size()).append(" 处高亮):\n");
-
-                for (int i = 0; i < pageHighlights.size(); i++) {
-                    Map<String, Object> highlight = pageHighlights.get(i);
+            Map<String, Integer> colorStats = new LinkedHashMap<>();
+            int[] state = {Integer.MIN_VALUE, 0}; // 当前页码、页内序号
+            exportStreamWriter.streamRows(highlightsSql, highlight -> {
+                int pageNumber = ((Number) highlight.get("page_number")).intValue();
+                if (pageNumber != state[0]) {
+                    if (state[0] != Integer.MIN_VALUE) {
+                        writer.write("\n");
+                    }
+                    state[0] = pageNumber;
+                    state[1] = 0;
+                    writer.write("第 " + pageNumber + " 页 (" + pageCounts.getOrDefault(pageNumber, 0) + " 处高亮):\n");
+                }
 
-                    content.append("  ").append(i + 1).append(". ");
-                    content.append("[").append(highlight.get("color")).append("] ");
-                    content.append(highlight.get("text_content")).append("\n");
+                writer.write("  " + (++state[1]) + ". ");
+                writer.write("[" + highlight.get("color") + "] ");
+                writer.write(highlight.get("text_content") + "\n");
 
-                    if (highlight.get("created_at") != null) {
-                        content.append("     创建时间: ").append(highlight.get("created_at")).append("\n");
-                    }
+                if (highlight.get("created_at") != null) {
+                    writer.write("     创建时间: " + exportStreamWriter.formatValue(highlight.get("created_at")) + "\n");
                 }
 
-                content.append("\n");
+                colorStats.merge((String) highlight.get("color"), 1, Integer::sum);
+            }, documentId, userId);
+            if (state[0] != Integer.MIN_VALUE) {
+                writer.write("\n");
             }
 
             // 添加颜色统计
-            Map<String, Integer> colorStats = new HashMap<>();
-            for (Map<String, Object> highlight : highlights) {
-                String color = (String) highlight.get("color");
-                colorStats.put(color, colorStats.getOrDefault(color, 0) + 1);
-            }
-
-            content.append("颜色统计:\n");
-            content.append("--------\n");
+            writer.write("颜色统计:\n");
+            writer.write("--------\n");
             for (Map.Entry<String, Integer> entry : colorStats.entrySet()) {
-                content.append(entry.getKey()).append(": ").append(entry.getValue()).append(" 处\n");
+                writer.write(entry.getKey() + ": " + entry.getValue() + " 处\n");
             }
         }
 
-        return content.toString();
+        writer.flush();
     }
 
     // 获取文件扩展名
@@ -396,25 +350,4 @@ public class ExportHighlights {
             default: return MediaType.TEXT_PLAIN;
         }
     }
-
-    // 转义JSON字符串
-    private String escapeJson(Object value) {
-        if (value == null) return "";
-        return value.toString()
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
-
-    // 转义CSV字符串
-    private String escapeCsv(Object value) {
-        if (value == null) return "";
-        String str = value.toString();
-        if (str.contains(",") || str.contains("\"") || str.contains("\n")) {
-            return "\"" + str.replace("\"", "\"\"") + "\"";
-        }
-        return str;
-    }
-}
\ No newline at end of file
+}
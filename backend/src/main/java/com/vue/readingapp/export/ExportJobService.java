@@ -0,0 +1,431 @@
+package com.vue.readingapp.export;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 导出任务
+ *
+ * 导出接口支持两种交付方式：
+ *   - 同步（默认）：内容经 ExportStreamWriter 直接流式写入响应，写完后记录导出历史；
+ *   - 异步（async=true）：先写入一条 PENDING 状态的 sync_logs 记录并返回 202，
+ *     由后台任务执行器的导出线程池（BackgroundTaskExecutor.Pool.EXPORT）把文件写到暂存目录，完成后状态变为 COMPLETED。
+ *     客户端通过导出历史接口轮询状态，再从 /api/v1/export/download/{exportId} 下载
+ *     （支持 HTTP Range，断点续传）。
+ *
+ * 任务状态：PENDING -> RUNNING -> COMPLETED / FAILED。
+ * 暂存文件只在执行任务的实例本地，details.node 记录执行实例；启动时只把本实例上次运行遗留的未完成任务标记为失败，
+ * 其他实例的任务只有创建时间超过 stale-after-hours（实例已下线）时才会被回收。
+ * 队列已满或用户进行中的任务过多时直接拒绝，不占用请求线程排队。
+ * 暂存文件超过保留天数后由定时任务删除；清理导出历史时会同时删除对应的文件。
+ *
+ * 导出历史的 details 在应用内用 Jackson 序列化，不再为拼 JSON 字符串专门查一次数据库。
+ */
+@Component
+public class ExportJobService {
+
+    static final String PENDING = "PENDING";
+    static final String RUNNING = "RUNNING";
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "FAILED";
+
+    private static final String PART_SUFFIX = ".part";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    // 导出线程数和排队上限由 app.tasks.export.* 配置
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
+    // 异步导出文件的暂存目录
+    @Value("${app.export.spool-dir:exports/}")
+    private String spoolDir;
+
+    // 每个用户同时进行中（PENDING/RUNNING）的导出任务上限
+    @Value("${app.export.jobs.max-active-per-user:3}")
+    private int maxActivePerUser;
+
+    // 暂存文件保留天数
+    @Value("${app.export.retention-days:7}")
+    private int retentionDays;
+
+    // 本实例的标识，写入异步任务的 details.node；需要在重启后保持不变，默认使用主机名
+    @Value("${app.export.node-id:}")
+    private String configuredNodeId;
+
+    // 任意实例的未完成任务超过该时长仍未结束时视为执行实例已下线，启动时标记为失败
+    @Value("${app.export.jobs.stale-after-hours:24}")
+    private int staleAfterHours;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Path spoolRoot;
+    private String nodeId;
+
+    /**
+     * 一次导出：文件名、类型以及写入导出历史的 details
+     */
+    public static class ExportJob {
+        private final int userId;
+        private final String entityType;
+        private final String exportId;
+        private final String filename;
+        private final MediaType mediaType;
+        private final Collection<?> entityIds;
+        private final Map<String, Object> details = new LinkedHashMap<>();
+
+        public ExportJob(int userId, String entityType, String exportId, String filename,
+                         MediaType mediaType, Collection<?> entityIds) {
+            this.userId = userId;
+            this.entityType = entityType;
+            this.exportId = exportId;
+            this.filename = filename;
+            this.mediaType = mediaType;
+            this.entityIds = entityIds;
+            details.put("export_id", exportId);
+            details.put("filename", filename);
+        }
+
+        public int getUserId() { return userId; }
+        public String getEntityType() { return entityType; }
+        public String getExportId() { return exportId; }
+        public String getFilename() { return filename; }
+        public MediaType getMediaType() { return mediaType; }
+        public Collection<?> getEntityIds() { return entityIds; }
+        public Map<String, Object> getDetails() { return details; }
+    }
+
+    @PostConstruct
+    public void init() {
+        spoolRoot = Paths.get(spoolDir).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(spoolRoot);
+        } catch (IOException e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to create export spool directory " + spoolRoot + ": " + e.getMessage());
+        }
+
+        nodeId = configuredNodeId != null && !configuredNodeId.trim().isEmpty() ? configuredNodeId.trim() : localHostName();
+
+        // 本实例上次运行时未完成的异步任务已随进程中断，标记为失败，客户端可以重新提交；
+        // 其他实例仍在执行的任务不动，只回收超过 stale-after-hours 的遗留任务
+        try {
+            int interrupted = jdbcTemplate.update("UPDATE sync_logs SET status = ? " +
+                    "WHERE operation_type = 'EXPORT' AND status IN (?, ?) " +
+                    "AND (JSON_UNQUOTE(JSON_EXTRACT(details, '$.node')) = ? OR created_at < ?)",
+                    FAILED, PENDING, RUNNING, nodeId, Timestamp.valueOf(LocalDateTime.now().minusHours(Math.max(1, staleAfterHours))));
+            if (interrupted > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Marked " + interrupted + " interrupted export jobs as FAILED");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to reset interrupted export jobs: " + e.getMessage());
+        }
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Export job service started, node=" + nodeId + ", spool=" + spoolRoot);
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * 交付导出内容：同步时直接流式写入响应，异步时提交到工作线程池并返回 202
+     */
+    public ResponseEntity<?> deliver(ExportJob job, boolean async, ExportStreamWriter.ContentWriter content) {
+        if (!async) {
+            return exportStreamWriter.attachment(job.getFilename(), job.getMediaType(), content, fileSize -> {
+                job.getDetails().put("file_size", fileSize);
+                recordHistory(job.getUserId(), job.getEntityType(), job.getEntityIds(), COMPLETED, job.getDetails());
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Export " + job.getExportId() + " streamed, " + fileSize + " bytes");
+            });
+        }
+        return submit(job, content);
+    }
+
+    private ResponseEntity<?> submit(ExportJob job, ExportStreamWriter.ContentWriter content) {
+        Integer active = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sync_logs WHERE user_id = ? AND operation_type = 'EXPORT' AND status IN (?, ?)",
+                Integer.class, job.getUserId(), PENDING, RUNNING);
+        if (active != null && active >= maxActivePerUser) {
+            Map<String, Object> details = new HashMap<>();
+            details.put("activeJobs", active);
+            details.put("maxActiveJobs", maxActivePerUser);
+            return error(HttpStatus.TOO_MANY_REQUESTS, "TOO_MANY_EXPORT_JOBS", "进行中的导出任务过多，请稍后再试", details);
+        }
+
+        job.getDetails().put("async", true);
+        job.getDetails().put("node", nodeId);
+        job.getDetails().put("media_type", job.getMediaType().toString());
+        job.getDetails().put("download_url", downloadUrl(job.getExportId()));
+        long logId = recordHistory(job.getUserId(), job.getEntityType(), job.getEntityIds(), PENDING, job.getDetails());
+
+        try {
+            backgroundTaskExecutor.execute(BackgroundTaskExecutor.Pool.EXPORT, () -> run(logId, job, content));
+        } catch (RejectedExecutionException e) {
+            job.getDetails().put("error", "导出队列已满");
+            updateStatus(logId, FAILED, job.getDetails());
+            Map<String, Object> details = new HashMap<>();
+            details.put("queueCapacity", backgroundTaskExecutor.getQueueCapacity(BackgroundTaskExecutor.Pool.EXPORT));
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "EXPORT_QUEUE_FULL", "导出队列已满，请稍后再试", details);
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("exportId", job.getExportId());
+        data.put("status", PENDING);
+        data.put("filename", job.getFilename());
+        data.put("statusUrl", "/api/v1/export/history?export_id=" + job.getExportId());
+        data.put("downloadUrl", downloadUrl(job.getExportId()));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", true);
+        response.put("message", "导出任务已提交");
+        response.put("data", data);
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Export job " + job.getExportId() + " queued, log_id=" + logId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    private void run(long logId, ExportJob job, ExportStreamWriter.ContentWriter content) {
+        updateStatus(logId, RUNNING, job.getDetails());
+        Path userDir = spoolRoot.resolve(String.valueOf(job.getUserId()));
+        Path target = userDir.resolve(job.getExportId() + extensionOf(job.getFilename()));
+        Path part = userDir.resolve(target.getFileName() + PART_SUFFIX);
+        long started = System.currentTimeMillis();
+        try {
+            Files.createDirectories(userDir);
+            ExportStreamWriter.CountingOutputStream counting;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part))) {
+                counting = new ExportStreamWriter.CountingOutputStream(out);
+                content.write(counting);
+                counting.flush();
+            }
+            // 写完后再改名，下载接口不会读到写了一半的文件
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            job.getDetails().put("file_size", counting.getCount());
+            job.getDetails().put("spool_file", spoolRoot.relativize(target).toString());
+            job.getDetails().put("completed_at", LocalDateTime.now().toString());
+            updateStatus(logId, COMPLETED, job.getDetails());
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Export job " + job.getExportId() + " completed, "
+                    + counting.getCount() + " bytes in " + (System.currentTimeMillis() - started) + "ms");
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Export job " + job.getExportId() + " failed: " + e.getMessage());
+            e.printStackTrace();
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+                // 残留的 .part 文件由定时清理删除
+            }
+            job.getDetails().put("error", e.getMessage());
+            updateStatus(logId, FAILED, job.getDetails());
+        }
+    }
+
+    /**
+     * 写入一条导出历史
+     *
+     * @return 新记录的 log_id
+     */
+    public long recordHistory(int userId, String entityType, Collection<?> entityIds,
+                              String status, Map<String, Object> details) {
+        String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
+                "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String entityIdsJson = entityIds != null ? toJson(entityIds) : null;
+        String detailsJson = toJson(details);
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        PreparedStatementCreator insert = con -> {
+            PreparedStatement ps = con.prepareStatement(insertHistorySql, Statement.RETURN_GENERATED_KEYS);
+            ps.setInt(1, userId);
+            ps.setString(2, "EXPORT");
+            ps.setString(3, entityType);
+            ps.setString(4, entityIdsJson);
+            ps.setString(5, status);
+            ps.setString(6, detailsJson);
+            ps.setTimestamp(7, Timestamp.valueOf(LocalDateTime.now()));
+            return ps;
+        };
+        jdbcTemplate.update(insert, keyHolder);
+        Number key = keyHolder.getKey();
+        return key != null ? key.longValue() : 0L;
+    }
+
+    private void updateStatus(long logId, String status, Map<String, Object> details) {
+        try {
+            jdbcTemplate.update("UPDATE sync_logs SET status = ?, details = ? WHERE log_id = ?",
+                    status, toJson(details), logId);
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to update export job " + logId + " to " + status + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按 export_id 查找当前用户的导出记录，找不到时返回 null
+     */
+    public Map<String, Object> findExport(int userId, String exportId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT log_id, entity_type, status, details, created_at FROM sync_logs " +
+                        "WHERE user_id = ? AND operation_type = 'EXPORT' " +
+                        "AND JSON_UNQUOTE(JSON_EXTRACT(details, '$.export_id')) = ? " +
+                        "ORDER BY log_id DESC LIMIT 1",
+                userId, exportId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * 导出记录对应的暂存文件；不是异步导出、文件已过期被删除或路径非法时返回 null
+     */
+    public Path spoolFile(Map<String, Object> details) {
+        Object relative = details.get("spool_file");
+        if (relative == null || spoolRoot == null) {
+            return null;
+        }
+        Path file = spoolRoot.resolve(relative.toString()).normalize();
+        if (!file.startsWith(spoolRoot) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * 删除导出记录对应的暂存文件
+     *
+     * @return 释放的字节数，没有文件时为 0
+     */
+    public long deleteSpoolFile(Map<String, Object> details) {
+        Path file = spoolFile(details);
+        if (file == null) {
+            return 0L;
+        }
+        try {
+            long size = Files.size(file);
+            Files.deleteIfExists(file);
+            return size;
+        } catch (IOException e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to delete export file " + file + ": " + e.getMessage());
+            return 0L;
+        }
+    }
+
+    /**
+     * 删除超过保留期的暂存文件，以及异常中断遗留的 .part 文件。
+     * 导出历史记录本身保留，文件过期后下载接口返回 410。
+     */
+    @Scheduled(fixedDelayString = "${app.export.cleanup-interval-ms:3600000}")
+    public void purgeExpiredFiles() {
+        if (spoolRoot == null || !Files.isDirectory(spoolRoot)) {
+            return;
+        }
+        Instant fileCutoff = Instant.now().minus(Duration.ofDays(Math.max(1, retentionDays)));
+        // 正在写的 .part 文件修改时间会不断更新，一天没有变化的视为残留
+        Instant partCutoff = Instant.now().minus(Duration.ofDays(1));
+        int deleted = 0;
+        long freed = 0;
+        try (DirectoryStream<Path> userDirs = Files.newDirectoryStream(spoolRoot)) {
+            for (Path userDir : userDirs) {
+                if (!Files.isDirectory(userDir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(userDir)) {
+                    for (Path file : files) {
+                        Instant modified = Files.getLastModifiedTime(file).toInstant();
+                        Instant cutoff = file.getFileName().toString().endsWith(PART_SUFFIX) ? partCutoff : fileCutoff;
+                        if (modified.isBefore(cutoff)) {
+                            long size = Files.size(file);
+                            if (Files.deleteIfExists(file)) {
+                                deleted++;
+                                freed += size;
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to purge expired export files: " + e.getMessage());
+        }
+        if (deleted > 0) {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Purged " + deleted + " expired export files, freed " + freed + " bytes");
+        }
+    }
+
+    /**
+     * 解析导出历史的 details 字段，无法解析时返回空 Map
+     */
+    public Map<String, Object> parseDetails(Object detailsJson) {
+        if (detailsJson == null) {
+            return new LinkedHashMap<>();
+        }
+        try {
+            return objectMapper.readValue(detailsJson.toString(), new TypeReference<LinkedHashMap<String, Object>>() {});
+        } catch (JsonProcessingException e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to parse export details: " + e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    public String downloadUrl(String exportId) {
+        return "/api/v1/export/download/" + exportId;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("无法序列化导出历史: " + e.getMessage(), e);
+        }
+    }
+
+    private static String extensionOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 ? filename.substring(dot) : "";
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String code, String message, Map<String, Object> details) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", message);
+        error.put("details", details);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("error", error);
+        return ResponseEntity.status(status).body(body);
+    }
+}
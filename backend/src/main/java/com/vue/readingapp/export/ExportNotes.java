@@ -3,14 +3,17 @@ package com.vue.readingapp.export;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +22,15 @@ public class ExportNotes {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到笔记导出请求 ===");
@@ -45,6 +57,7 @@ public class ExportNotes {
         private List<Integer> note_ids;
         private String format = "pdf";
         private Map<String, Object> template;
+        private boolean async = false;
 
         public List<Integer> getNote_ids() { return note_ids; }
         public void setNote_ids(List<Integer> note_ids) { this.note_ids = note_ids; }
@@ -54,6 +67,9 @@ public class ExportNotes {
 
         public Map<String, Object> getTemplate() { return template; }
         public void setTemplate(Map<String, Object> template) { this.template = template; }
+
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
     }
 
     // 错误响应DTO
@@ -118,8 +134,7 @@ public class ExportNotes {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -158,18 +173,24 @@ public class ExportNotes {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 3. 验证笔记是否存在且属于当前用户
+            // 3. 验证笔记是否存在且属于当前用户（一次 IN 查询）
+            String idPlaceholders = String.join(",", Collections.nCopies(request.getNote_ids().size(), "?"));
+            List<Object> ownerParams = new ArrayList<>(request.getNote_ids());
+            ownerParams.add(userId);
+            Set<Integer> ownedNoteIds = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT note_id FROM document_notes WHERE note_id IN (" + idPlaceholders + ") AND user_id = ?",
+                    Integer.class, ownerParams.toArray()));
+
             List<Integer> invalidNoteIds = new ArrayList<>();
             List<Integer> validNoteIds = new ArrayList<>();
 
             for (Integer noteId : request.getNote_ids()) {
-                String noteSql = "SELECT note_id FROM document_notes WHERE note_id = ? AND user_id = ?";
-                List<Map<String, Object>> notes = jdbcTemplate.queryForList(noteSql, noteId, userId);
-
-                if (notes.isEmpty()) {
-                    invalidNoteIds.add(noteId);
+                if (ownedNoteIds.contains(noteId)) {
+                    if (!validNoteIds.contains(noteId)) {
+                        validNoteIds.add(noteId);
+                    }
                 } else {
-                    validNoteIds.add(noteId);
+                    invalidNoteIds.add(noteId);
                 }
             }
 
@@ -180,11 +201,12 @@ public class ExportNotes {
                 printResponse(errorResponse);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
             }
+            printQueryResult("笔记验证结果: " + validNoteIds.size() + "条记录");
 
-            // 4. 查询笔记详细信息
+            // 4. 笔记详细信息在写出时流式查询
             String placeholders = String.join(",", Collections.nCopies(validNoteIds.size(), "?"));
             String notesSql = "SELECT n.note_id, n.document_id, d.title as document_title, " +
-                    "n.page_number, n.content, n.highlight_id, " +
+                    "n.page as page_number, n.content, " +
                     "n.created_at, n.updated_at " +
                     "FROM document_notes n " +
                     "LEFT JOIN documents d ON n.document_id = d.document_id " +
@@ -194,77 +216,28 @@ public class ExportNotes {
             List<Object> params = new ArrayList<>(validNoteIds);
             params.add(userId);
 
-            List<Map<String, Object>> notes = jdbcTemplate.queryForList(notesSql, params.toArray());
-            printQueryResult("笔记查询结果: " + notes.size() + "条记录");
-
-            if (notes.isEmpty()) {
-                Map<String, Object> details = new HashMap<>();
-                details.put("noteIds", validNoteIds);
-                ErrorResponse errorResponse = new ErrorResponse("NOTES_EXPORT_ERROR", "没有找到可导出的笔记", details);
-                printResponse(errorResponse);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
-            }
-
-            // 5. 生成导出文件内容
-            String fileContent = generateNotesContent(notes, request.getFormat());
-            byte[] fileBytes = fileContent.getBytes(StandardCharsets.UTF_8);
-
-            // 6. 生成文件名
+            // 5. 生成文件名
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
             String extension = getFileExtension(request.getFormat());
             String filename = "notes_" + timestamp + "." + extension;
-
-            // 7. 记录导出历史
             String exportId = "export_notes_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            String entityIdsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class,
-                    String.join(",", validNoteIds.stream().map(String::valueOf).toArray(String[]::new))
-            );
-
-            Map<String, Object> exportDetails = new HashMap<>();
-            exportDetails.put("export_id", exportId);
-            exportDetails.put("format", request.getFormat());
-            exportDetails.put("item_count", notes.size());
-            exportDetails.put("filename", filename);
-            exportDetails.put("file_size", fileBytes.length);
-
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "item_count", notes.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "NOTES",
-                    entityIdsJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
-
-            // 8. 准备文件响应
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(getMediaType(request.getFormat()));
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(fileBytes.length);
+
+            // 6. 同步时直接流式返回文件，异步时提交导出任务
+            ExportJobService.ExportJob job = new ExportJobService.ExportJob(
+                    userId, "NOTES", exportId, filename, getMediaType(request.getFormat()), validNoteIds);
+            job.getDetails().put("format", request.getFormat());
+            job.getDetails().put("item_count", validNoteIds.size());
 
             // 打印返回信息
             Map<String, Object> responseInfo = new HashMap<>();
             responseInfo.put("filename", filename);
-            responseInfo.put("file_size", fileBytes.length);
             responseInfo.put("format", request.getFormat());
-            responseInfo.put("note_count", notes.size());
+            responseInfo.put("note_count", validNoteIds.size());
+            responseInfo.put("async", request.isAsync());
             printResponse(responseInfo);
 
-            return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+            return exportJobService.deliver(job, request.isAsync(),
+                    out -> writeNotesContent(out, notesSql, params.toArray(), validNoteIds.size(), request.getFormat()));
 
         } catch (Exception e) {
             System.err.println("笔记导出过程中发生错误: " + e.getMessage());
@@ -279,117 +252,92 @@ public class ExportNotes {
         }
     }
 
-    // 生成笔记内容
-    private String generateNotesContent(List<Map<String, Object>> notes, String format) {
-        StringBuilder content = new StringBuilder();
-
+    // 逐条写出笔记内容
+    private void writeNotesContent(OutputStream out, String notesSql, Object[] params, int count, String format) throws IOException {
         if (format.equalsIgnoreCase("json")) {
             // JSON格式
-            Map<String, Object> exportData = new HashMap<>();
-            exportData.put("metadata", new HashMap<String, Object>() {{
-                put("exportedAt", LocalDateTime.now().toString());
-                put("type", "notes");
-                put("count", notes.size());
-                put("format", "json");
-                put("version", "1.0");
-            }});
-
-            exportData.put("notes", notes);
-
-            // 简单JSON序列化
-            content.append("{\n");
-            content.append("  \"metadata\": {\n");
-            content.append("    \"exportedAt\": \"").append(LocalDateTime.now()).append("\",\n");
-            content.append("    \"type\": \"notes\",\n");
-            content.append("    \"count\": ").append(notes.size()).append(",\n");
-            content.append("    \"format\": \"json\",\n");
-            content.append("    \"version\": \"1.0\"\n");
-            content.append("  },\n");
-            content.append("  \"notes\": [\n");
-
-            for (int i = 0; i < notes.size(); i++) {
-                Map<String, Object> note = notes.get(i);
-                content.append("    {\n");
-                content.append("      \"note_id\": ").append(note.get("note_id")).append(",\n");
-                content.append("      \"document_id\": ").append(note.get("document_id")).append(",\n");
-                content.append("      \"document_title\": \"").append(escapeJson(note.get("document_title"))).append("\",\n");
-                content.append("      \"page_number\": ").append(note.get("page_number")).append(",\n");
-                content.append("      \"content\": \"").append(escapeJson(note.get("content"))).append("\",\n");
-                content.append("      \"created_at\": \"").append(note.get("created_at")).append("\",\n");
-                content.append("      \"updated_at\": \"").append(note.get("updated_at")).append("\"\n");
-                content.append("    }");
-                if (i < notes.size() - 1) content.append(",");
-                content.append("\n");
-            }
+            JsonGenerator json = exportStreamWriter.openJson(out);
+            json.writeStartObject();
+            json.writeObjectFieldStart("metadata");
+            json.writeStringField("exportedAt", LocalDateTime.now().toString());
+            json.writeStringField("type", "notes");
+            json.writeNumberField("count", count);
+            json.writeStringField("format", "json");
+            json.writeStringField("version", "1.0");
+            json.writeEndObject();
+            exportStreamWriter.writeJsonArray(json, "notes", notesSql, params);
+            json.writeEndObject();
+            json.flush();
+            return;
+        }
 
-            content.append("  ]\n");
-            content.append("}");
+        Writer writer = exportStreamWriter.openWriter(out);
 
-        } else if (format.equalsIgnoreCase("html")) {
+        if (format.equalsIgnoreCase("html")) {
             // HTML格式
-            content.append("<!DOCTYPE html>\n");
-            content.append("<html>\n");
-            content.append("<head>\n");
-            content.append("  <meta charset=\"UTF-8\">\n");
-            content.append("  <title>笔记导出</title>\n");
-            content.append("  <style>\n");
-            content.append("    body { font-family: Arial, sans-serif; margin: 20px; line-height: 1.6; }\n");
-            content.append("    h1 { color: #333; border-bottom: 2px solid #eee; padding-bottom: 10px; }\n");
-            content.append("    .note { border: 1px solid #ddd; margin: 15px 0; padding: 15px; border-radius: 5px; }\n");
-            content.append("    .note-header { background-color: #f5f5f5; padding: 10px; margin: -15px -15px 15px -15px; border-radius: 5px 5px 0 0; }\n");
-            content.append("    .note-title { font-weight: bold; color: #555; }\n");
-            content.append("    .note-meta { color: #888; font-size: 0.9em; margin-top: 5px; }\n");
-            content.append("    .note-content { margin-top: 15px; }\n");
-            content.append("  </style>\n");
-            content.append("</head>\n");
-            content.append("<body>\n");
-            content.append("  <h1>笔记导出</h1>\n");
-            content.append("  <p>导出时间: ").append(LocalDateTime.now()).append("</p>\n");
-            content.append("  <p>笔记数量: ").append(notes.size()).append("</p>\n");
-            content.append("  <hr>\n");
-
-            for (Map<String, Object> note : notes) {
-                content.append("  <div class=\"note\">\n");
-                content.append("    <div class=\"note-header\">\n");
-                content.append("      <div class=\"note-title\">").append(escapeHtml(note.get("document_title"))).append("</div>\n");
-                content.append("      <div class=\"note-meta\">\n");
-                content.append("        第").append(note.get("page_number")).append("页 | ");
-                content.append("        创建: ").append(note.get("created_at")).append(" | ");
-                content.append("        更新: ").append(note.get("updated_at")).append("\n");
-                content.append("      </div>\n");
-                content.append("    </div>\n");
-                content.append("    <div class=\"note-content\">\n");
-                content.append("      ").append(escapeHtml(note.get("content"))).append("\n");
-                content.append("    </div>\n");
-                content.append("  </div>\n");
-            }
-
-            content.append("</body>\n");
-            content.append("</html>\n");
+            writer.write("<!DOCTYPE html>\n");
+            writer.write("<html>\n");
+            writer.write("<head>\n");
+            writer.write("  <meta charset=\"UTF-8\">\n");
+            writer.write("  <title>笔记导出</title>\n");
+            writer.write("  <style>\n");
+            writer.write("    body { font-family: Arial, sans-serif; margin: 20px; line-height: 1.6; }\n");
+            writer.write("    h1 { color: #333; border-bottom: 2px solid #eee; padding-bottom: 10px; }\n");
+            writer.write("    .note { border: 1px solid #ddd; margin: 15px 0; padding: 15px; border-radius: 5px; }\n");
+            writer.write("    .note-header { background-color: #f5f5f5; padding: 10px; margin: -15px -15px 15px -15px; border-radius: 5px 5px 0 0; }\n");
+            writer.write("    .note-title { font-weight: bold; color: #555; }\n");
+            writer.write("    .note-meta { color: #888; font-size: 0.9em; margin-top: 5px; }\n");
+            writer.write("    .note-content { margin-top: 15px; }\n");
+            writer.write("  </style>\n");
+            writer.write("</head>\n");
+            writer.write("<body>\n");
+            writer.write("  <h1>笔记导出</h1>\n");
+            writer.write("  <p>导出时间: " + LocalDateTime.now() + "</p>\n");
+            writer.write("  <p>笔记数量: " + count + "</p>\n");
+            writer.write("  <hr>\n");
+
+            exportStreamWriter.streamRows(notesSql, note -> {
+                writer.write("  <div class=\"note\">\n");
+                writer.write("    <div class=\"note-header\">\n");
+                writer.write("      <div class=\"note-title\">" + escapeHtml(note.get("document_title")) + "</div>\n");
+                writer.write("      <div class=\"note-meta\">\n");
+                writer.write("        第" + note.get("page_number") + "页 | ");
+                writer.write("        创建: " + exportStreamWriter.formatValue(note.get("created_at")) + " | ");
+                writer.write("        更新: " + exportStreamWriter.formatValue(note.get("updated_at")) + "\n");
+                writer.write("      </div>\n");
+                writer.write("    </div>\n");
+                writer.write("    <div class=\"note-content\">\n");
+                writer.write("      " + escapeHtml(note.get("content")) + "\n");
+                writer.write("    </div>\n");
+                writer.write("  </div>\n");
+            }, params);
+
+            writer.write("</body>\n");
+            writer.write("</html>\n");
 
         } else {
             // 默认文本格式
-            content.append("笔记导出报告\n");
-            content.append("============\n\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("笔记数量: ").append(notes.size()).append("\n");
-            content.append("导出格式: ").append(format).append("\n\n");
-
-            content.append("笔记列表:\n");
-            content.append("--------\n");
-
-            for (int i = 0; i < notes.size(); i++) {
-                Map<String, Object> note = notes.get(i);
-                content.append(i + 1).append(". ").append(note.get("document_title")).append("\n");
-                content.append("   页码: 第").append(note.get("page_number")).append("页\n");
-                content.append("   内容: ").append(note.get("content")).append("\n");
-                content.append("   创建时间: ").append(note.get("created_at")).append("\n");
-                content.append("   更新时间: ").append(note.get("updated_at")).append("\n");
-                content.append("   -------------------------\n\n");
-            }
+            writer.write("笔记导出报告\n");
+            writer.write("============\n\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("笔记数量: " + count + "\n");
+            writer.write("导出格式: " + format + "\n\n");
+
+            writer.write("笔记列表:\n");
+            writer.write("--------\n");
+
+            int[] index = {0};
+            exportStreamWriter.streamRows(notesSql, note -> {
+                writer.write(++index[0] + ". " + note.get("document_title") + "\n");
+                writer.write("   页码: 第" + note.get("page_number") + "页\n");
+                writer.write("   内容: " + note.get("content") + "\n");
+                writer.write("   创建时间: " + exportStreamWriter.formatValue(note.get("created_at")) + "\n");
+                writer.write("   更新时间: " + exportStreamWriter.formatValue(note.get("updated_at")) + "\n");
+                writer.write("   -------------------------\n\n");
+            }, params);
         }
 
-        return content.toString();
+        writer.flush();
     }
 
     // 获取文件扩展名
@@ -416,17 +364,6 @@ public class ExportNotes {
         }
     }
 
-    // 转义JSON字符串
-    private String escapeJson(Object value) {
-        if (value == null) return "";
-        return value.toString()
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
-
     // 转义HTML字符串
     private String escapeHtml(Object value) {
         if (value == null) return "";
@@ -3,14 +3,17 @@ package com.vue.readingapp.export;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +22,15 @@ public class ExportReadingHistory {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到阅读历史导出请求 ===");
@@ -42,10 +54,11 @@ public class ExportReadingHistory {
 
     @GetMapping("/reading-history")
     public ResponseEntity<?> exportReadingHistory(@RequestParam(required = false, defaultValue = "csv") String format,
+                                                  @RequestParam(required = false, defaultValue = "false") boolean async,
                                                   @RequestHeader(value = "Authorization", required = false) String authHeader) {
 
         // 打印接收到的请求
-        printRequest("format=" + format);
+        printRequest("format=" + format + ", async=" + async);
 
         try {
             // 1. 验证认证
@@ -60,8 +73,7 @@ public class ExportReadingHistory {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -83,19 +95,23 @@ public class ExportReadingHistory {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 3. 查询阅读历史
+            // 3. 阅读历史在写出时流式查询，这里只统计数量
             String historySql = "SELECT rh.history_id, rh.document_id, d.title as document_title, " +
-                    "rh.start_time, rh.end_time, rh.duration_seconds, rh.pages_read, " +
+                    "rh.start_time, rh.end_time, rh.reading_time as duration_seconds, rh.pages_read, " +
                     "rh.created_at " +
                     "FROM reading_history rh " +
                     "JOIN documents d ON rh.document_id = d.document_id " +
                     "WHERE rh.user_id = ? " +
                     "ORDER BY rh.start_time DESC";
 
-            List<Map<String, Object>> readingHistory = jdbcTemplate.queryForList(historySql, userId);
-            printQueryResult("阅读历史查询结果: " + readingHistory.size() + "条记录");
+            Integer historyCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM reading_history rh " +
+                            "JOIN documents d ON rh.document_id = d.document_id WHERE rh.user_id = ?",
+                    Integer.class, userId);
+            int totalHistory = historyCount != null ? historyCount : 0;
+            printQueryResult("阅读历史查询结果: " + totalHistory + "条记录");
 
-            if (readingHistory.isEmpty()) {
+            if (totalHistory == 0) {
                 Map<String, Object> details = new HashMap<>();
                 details.put("userId", userId);
                 ErrorResponse errorResponse = new ErrorResponse("READING_HISTORY_NOT_FOUND", "没有找到阅读历史记录", details);
@@ -103,60 +119,28 @@ public class ExportReadingHistory {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
             }
 
-            // 4. 生成导出文件内容
-            String fileContent = generateReadingHistoryContent(readingHistory, format);
-            byte[] fileBytes = fileContent.getBytes(StandardCharsets.UTF_8);
-
-            // 5. 生成文件名
+            // 4. 生成文件名
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
             String extension = getFileExtension(format);
             String filename = "reading_history_" + timestamp + "." + extension;
-
-            // 6. 记录导出历史
             String exportId = "export_reading_history_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?)";
-
-            Map<String, Object> exportDetails = new HashMap<>();
-            exportDetails.put("export_id", exportId);
-            exportDetails.put("format", format);
-            exportDetails.put("item_count", readingHistory.size());
-            exportDetails.put("filename", filename);
-            exportDetails.put("file_size", fileBytes.length);
-
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", format,
-                    "item_count", readingHistory.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "READING_HISTORY",
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
-
-            // 7. 准备文件响应
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(getMediaType(format));
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(fileBytes.length);
+
+            // 5. 同步时直接流式返回文件，异步时提交导出任务
+            ExportJobService.ExportJob job = new ExportJobService.ExportJob(
+                    userId, "READING_HISTORY", exportId, filename, getMediaType(format), null);
+            job.getDetails().put("format", format);
+            job.getDetails().put("item_count", totalHistory);
 
             // 打印返回信息
             Map<String, Object> responseInfo = new HashMap<>();
             responseInfo.put("filename", filename);
-            responseInfo.put("file_size", fileBytes.length);
             responseInfo.put("format", format);
-            responseInfo.put("history_count", readingHistory.size());
+            responseInfo.put("history_count", totalHistory);
+            responseInfo.put("async", async);
             printResponse(responseInfo);
 
-            return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+            return exportJobService.deliver(job, async,
+                    out -> writeReadingHistoryContent(out, historySql, userId, totalHistory, format));
 
         } catch (Exception e) {
             System.err.println("阅读历史导出过程中发生错误: " + e.getMessage());
@@ -171,139 +155,99 @@ public class ExportReadingHistory {
         }
     }
 
-    // 生成阅读历史内容
-    private String generateReadingHistoryContent(List<Map<String, Object>> readingHistory, String format) {
-        StringBuilder content = new StringBuilder();
-
+    // 逐条写出阅读历史内容
+    private void writeReadingHistoryContent(OutputStream out, String historySql, int userId,
+                                            int totalHistory, String format) throws IOException {
         if (format.equalsIgnoreCase("json")) {
             // JSON格式
-            Map<String, Object> exportData = new HashMap<>();
-            exportData.put("metadata", new HashMap<String, Object>() {{
-                put("exportedAt", LocalDateTime.now().toString());
-                put("type", "reading_history");
-                put("count", readingHistory.size());
-                put("format", "json");
-                put("version", "1.0");
-            }});
-
-            exportData.put("reading_history", readingHistory);
-
-            // 简单JSON序列化
-            content.append("{\n");
-            content.append("  \"metadata\": {\n");
-            content.append("    \"exportedAt\": \"").append(LocalDateTime.now()).append("\",\n");
-            content.append("    \"type\": \"reading_history\",\n");
-            content.append("    \"count\": ").append(readingHistory.size()).append(",\n");
-            content.append("    \"format\": \"json\",\n");
-            content.append("    \"version\": \"1.0\"\n");
-            content.append("  },\n");
-            content.append("  \"reading_history\": [\n");
-
-            for (int i = 0; i < readingHistory.size(); i++) {
-                Map<String, Object> history = readingHistory.get(i);
-                content.append("    {\n");
-                content.append("      \"history_id\": ").append(history.get("history_id")).append(",\n");
-                content.append("      \"document_id\": ").append(history.get("document_id")).append(",\n");
-                content.append("      \"document_title\": \"").append(escapeJson(history.get("document_title"))).append("\",\n");
-                content.append("      \"start_time\": \"").append(history.get("start_time")).append("\",\n");
-                content.append("      \"end_time\": \"").append(history.get("end_time")).append("\",\n");
-                content.append("      \"duration_seconds\": ").append(history.get("duration_seconds")).append(",\n");
-                content.append("      \"pages_read\": ").append(history.get("pages_read")).append(",\n");
-                content.append("      \"created_at\": \"").append(history.get("created_at")).append("\"\n");
-                content.append("    }");
-                if (i < readingHistory.size() - 1) content.append(",");
-                content.append("\n");
-            }
+            JsonGenerator json = exportStreamWriter.openJson(out);
+            json.writeStartObject();
+            json.writeObjectFieldStart("metadata");
+            json.writeStringField("exportedAt", LocalDateTime.now().toString());
+            json.writeStringField("type", "reading_history");
+            json.writeNumberField("count", totalHistory);
+            json.writeStringField("format", "json");
+            json.writeStringField("version", "1.0");
+            json.writeEndObject();
+            exportStreamWriter.writeJsonArray(json, "reading_history", historySql, userId);
+            json.writeEndObject();
+            json.flush();
+            return;
+        }
 
-            content.append("  ]\n");
-            content.append("}");
+        Writer writer = exportStreamWriter.openWriter(out);
 
-        } else if (format.equalsIgnoreCase("csv")) {
+        if (format.equalsIgnoreCase("csv")) {
             // CSV格式
-            content.append("阅读历史导出报告\n");
-            content.append("================\n\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("记录数量: ").append(readingHistory.size()).append("\n\n");
-
-            content.append("历史ID,文档ID,文档标题,开始时间,结束时间,持续时间(秒),阅读页数,创建时间\n");
-
-            for (Map<String, Object> history : readingHistory) {
-                content.append(history.get("history_id")).append(",");
-                content.append(history.get("document_id")).append(",");
-                content.append(escapeCsv(history.get("document_title"))).append(",");
-                content.append(escapeCsv(history.get("start_time"))).append(",");
-                content.append(escapeCsv(history.get("end_time"))).append(",");
-                content.append(history.get("duration_seconds")).append(",");
-                content.append(history.get("pages_read")).append(",");
-                content.append(escapeCsv(history.get("created_at"))).append("\n");
-            }
+            writer.write("阅读历史导出报告\n");
+            writer.write("================\n\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("记录数量: " + totalHistory + "\n\n");
+
+            writer.write("历史ID,文档ID,文档标题,开始时间,结束时间,持续时间(秒),阅读页数,创建时间\n");
+
+            exportStreamWriter.streamRows(historySql, history -> exportStreamWriter.writeCsvRow(writer, Arrays.asList(
+                    history.get("history_id"),
+                    history.get("document_id"),
+                    history.get("document_title"),
+                    history.get("start_time"),
+                    history.get("end_time"),
+                    history.get("duration_seconds"),
+                    history.get("pages_read"),
+                    history.get("created_at")
+            )), userId);
 
         } else {
             // 默认文本格式
-            content.append("阅读历史导出报告\n");
-            content.append("================\n\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("记录数量: ").append(readingHistory.size()).append("\n");
-            content.append("导出格式: ").append(format).append("\n\n");
-
-            content.append("阅读历史列表:\n");
-            content.append("------------\n");
-
-            for (int i = 0; i < readingHistory.size(); i++) {
-                Map<String, Object> history = readingHistory.get(i);
-
-                content.append(i + 1).append(". ").append(history.get("document_title")).append("\n");
-                content.append("   开始时间: ").append(history.get("start_time")).append("\n");
-                content.append("   结束时间: ").append(history.get("end_time")).append("\n");
-                content.append("   持续时间: ").append(history.get("duration_seconds")).append(" 秒\n");
-                content.append("   阅读页数: ").append(history.get("pages_read")).append(" 页\n");
-                content.append("   记录时间: ").append(history.get("created_at")).append("\n");
-                content.append("   -------------------------\n\n");
-            }
+            writer.write("阅读历史导出报告\n");
+            writer.write("================\n\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("记录数量: " + totalHistory + "\n");
+            writer.write("导出格式: " + format + "\n\n");
+
+            writer.write("阅读历史列表:\n");
+            writer.write("------------\n");
+
+            long[] totals = {0, 0, 0}; // 序号、总页数、总时长
+            exportStreamWriter.streamRows(historySql, history -> {
+                int pages = history.get("pages_read") != null ? ((Number) history.get("pages_read")).intValue() : 0;
+                int duration = history.get("duration_seconds") != null ? ((Number) history.get("duration_seconds")).intValue() : 0;
+                totals[1] += pages;
+                totals[2] += duration;
+
+                writer.write(++totals[0] + ". " + history.get("document_title") + "\n");
+                writer.write("   开始时间: " + exportStreamWriter.formatValue(history.get("start_time")) + "\n");
+                writer.write("   结束时间: " + exportStreamWriter.formatValue(history.get("end_time")) + "\n");
+                writer.write("   持续时间: " + duration + " 秒\n");
+                writer.write("   阅读页数: " + pages + " 页\n");
+                writer.write("   记录时间: " + exportStreamWriter.formatValue(history.get("created_at")) + "\n");
+                writer.write("   -------------------------\n\n");
+            }, userId);
 
             // 添加统计信息
-            int totalPagesRead = readingHistory.stream()
-                    .mapToInt(h -> ((Number) h.get("pages_read")).intValue())
-                    .sum();
-
-            int totalDuration = readingHistory.stream()
-                    .mapToInt(h -> ((Number) h.get("duration_seconds")).intValue())
-                    .sum();
-
-            content.append("统计摘要:\n");
-            content.append("--------\n");
-            content.append("总阅读次数: ").append(readingHistory.size()).append(" 次\n");
-            content.append("总阅读页数: ").append(totalPagesRead).append(" 页\n");
-            content.append("总阅读时间: ").append(totalDuration).append(" 秒 (约 ");
-            content.append(String.format("%.1f", totalDuration / 3600.0)).append(" 小时)\n");
-
-            // 按文档统计
-            Map<String, Integer> pagesByDocument = new HashMap<>();
-            Map<String, Integer> durationByDocument = new HashMap<>();
-
-            for (Map<String, Object> history : readingHistory) {
-                String docTitle = (String) history.get("document_title");
-                int pages = ((Number) history.get("pages_read")).intValue();
-                int duration = ((Number) history.get("duration_seconds")).intValue();
-
-                pagesByDocument.put(docTitle, pagesByDocument.getOrDefault(docTitle, 0) + pages);
-                durationByDocument.put(docTitle, durationByDocument.getOrDefault(docTitle, 0) + duration);
-            }
-
-            content.append("\n按文档统计:\n");
-            content.append("----------\n");
-            for (Map.Entry<String, Integer> entry : pagesByDocument.entrySet()) {
-                String docTitle = entry.getKey();
-                int pages = entry.getValue();
-                int duration = durationByDocument.getOrDefault(docTitle, 0);
-
-                content.append(docTitle).append(": ");
-                content.append(pages).append(" 页, ");
-                content.append(duration).append(" 秒\n");
-            }
+            writer.write("统计摘要:\n");
+            writer.write("--------\n");
+            writer.write("总阅读次数: " + totals[0] + " 次\n");
+            writer.write("总阅读页数: " + totals[1] + " 页\n");
+            writer.write("总阅读时间: " + totals[2] + " 秒 (约 ");
+            writer.write(String.format("%.1f", totals[2] / 3600.0) + " 小时)\n");
+
+            // 按文档统计（由数据库聚合，结果行数与文档数相同）
+            writer.write("\n按文档统计:\n");
+            writer.write("----------\n");
+            exportStreamWriter.streamRows("SELECT d.title as document_title, " +
+                    "COALESCE(SUM(rh.pages_read), 0) as pages, COALESCE(SUM(rh.reading_time), 0) as duration " +
+                    "FROM reading_history rh " +
+                    "JOIN documents d ON rh.document_id = d.document_id " +
+                    "WHERE rh.user_id = ? " +
+                    "GROUP BY rh.document_id, d.title", document -> {
+                writer.write(document.get("document_title") + ": ");
+                writer.write(document.get("pages") + " 页, ");
+                writer.write(document.get("duration") + " 秒\n");
+            }, userId);
         }
 
-        return content.toString();
+        writer.flush();
     }
 
     // 获取文件扩展名
@@ -326,27 +270,6 @@ public class ExportReadingHistory {
         }
     }
 
-    // 转义JSON字符串
-    private String escapeJson(Object value) {
-        if (value == null) return "";
-        return value.toString()
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
-
-    // 转义CSV字符串
-    private String escapeCsv(Object value) {
-        if (value == null) return "";
-        String str = value.toString();
-        if (str.contains(",") || str.contains("\"") || str.contains("\n")) {
-            return "\"" + str.replace("\"", "\"\"") + "\"";
-        }
-        return str;
-    }
-
     // 错误响应DTO
     public static class ErrorResponse {
         private boolean success = false;
@@ -3,19 +3,17 @@ package com.vue.readingapp.export;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
+import java.io.Writer;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -24,6 +22,15 @@ public class ExportReviews {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到复习记录导出请求 ===");
@@ -47,13 +54,14 @@ public class ExportReviews {
 
     // 请求DTO
     public static class ExportReviewsRequest {
-        private List<Integer> review_ids;
+        private List<String> review_ids;
         private String format = "csv";
         private Map<String, Object> template;
         private String date_range;
+        private boolean async = false;
 
-        public List<Integer> getReview_ids() { return review_ids; }
-        public void setReview_ids(List<Integer> review_ids) { this.review_ids = review_ids; }
+        public List<String> getReview_ids() { return review_ids; }
+        public void setReview_ids(List<String> review_ids) { this.review_ids = review_ids; }
 
         public String getFormat() { return format; }
         public void setFormat(String format) { this.format = format; }
@@ -63,6 +71,9 @@ public class ExportReviews {
 
         public String getDate_range() { return date_range; }
         public void setDate_range(String date_range) { this.date_range = date_range; }
+
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
     }
 
     // 错误响应DTO
@@ -102,121 +113,6 @@ public class ExportReviews {
         }
     }
 
-    // 复习会话信息DTO
-    public static class ReviewSessionInfo {
-        private int review_session_id;
-        private int user_id;
-        private LocalDateTime start_time;
-        private LocalDateTime end_time;
-        private int total_items;
-        private int correct_count;
-        private int wrong_count;
-        private double accuracy;
-        private String session_type;
-        private LocalDateTime created_at;
-        private List<ReviewItemInfo> review_items;
-
-        // 构造函数
-        public ReviewSessionInfo(int review_session_id, int user_id, LocalDateTime start_time,
-                                 LocalDateTime end_time, int total_items, int correct_count,
-                                 int wrong_count, double accuracy, String session_type, LocalDateTime created_at) {
-            this.review_session_id = review_session_id;
-            this.user_id = user_id;
-            this.start_time = start_time;
-            this.end_time = end_time;
-            this.total_items = total_items;
-            this.correct_count = correct_count;
-            this.wrong_count = wrong_count;
-            this.accuracy = accuracy;
-            this.session_type = session_type;
-            this.created_at = created_at;
-            this.review_items = new ArrayList<>();
-        }
-
-        // getter和setter方法
-        public int getReview_session_id() { return review_session_id; }
-        public void setReview_session_id(int review_session_id) { this.review_session_id = review_session_id; }
-
-        public int getUser_id() { return user_id; }
-        public void setUser_id(int user_id) { this.user_id = user_id; }
-
-        public LocalDateTime getStart_time() { return start_time; }
-        public void setStart_time(LocalDateTime start_time) { this.start_time = start_time; }
-
-        public LocalDateTime getEnd_time() { return end_time; }
-        public void setEnd_time(LocalDateTime end_time) { this.end_time = end_time; }
-
-        public int getTotal_items() { return total_items; }
-        public void setTotal_items(int total_items) { this.total_items = total_items; }
-
-        public int getCorrect_count() { return correct_count; }
-        public void setCorrect_count(int correct_count) { this.correct_count = correct_count; }
-
-        public int getWrong_count() { return wrong_count; }
-        public void setWrong_count(int wrong_count) { this.wrong_count = wrong_count; }
-
-        public double getAccuracy() { return accuracy; }
-        public void setAccuracy(double accuracy) { this.accuracy = accuracy; }
-
-        public String getSession_type() { return session_type; }
-        public void setSession_type(String session_type) { this.session_type = session_type; }
-
-        public LocalDateTime getCreated_at() { return created_at; }
-        public void setCreated_at(LocalDateTime created_at) { this.created_at = created_at; }
-
-        public List<ReviewItemInfo> getReview_items() { return review_items; }
-        public void setReview_items(List<ReviewItemInfo> review_items) { this.review_items = review_items; }
-    }
-
-    // 复习项目信息DTO
-    public static class ReviewItemInfo {
-        private int review_item_id;
-        private int review_session_id;
-        private int user_vocabulary_id;
-        private String word;
-        private String answer;
-        private boolean is_correct;
-        private int response_time;
-        private LocalDateTime created_at;
-
-        public ReviewItemInfo(int review_item_id, int review_session_id, int user_vocabulary_id,
-                              String word, String answer, boolean is_correct, int response_time, LocalDateTime created_at) {
-            this.review_item_id = review_item_id;
-            this.review_session_id = review_session_id;
-            this.user_vocabulary_id = user_vocabulary_id;
-            this.word = word;
-            this.answer = answer;
-            this.is_correct = is_correct;
-            this.response_time = response_time;
-            this.created_at = created_at;
-        }
-
-        // getter和setter方法
-        public int getReview_item_id() { return review_item_id; }
-        public void setReview_item_id(int review_item_id) { this.review_item_id = review_item_id; }
-
-        public int getReview_session_id() { return review_session_id; }
-        public void setReview_session_id(int review_session_id) { this.review_session_id = review_session_id; }
-
-        public int getUser_vocabulary_id() { return user_vocabulary_id; }
-        public void setUser_vocabulary_id(int user_vocabulary_id) { this.user_vocabulary_id = user_vocabulary_id; }
-
-        public String getWord() { return word; }
-        public void setWord(String word) { this.word = word; }
-
-        public String getAnswer() { return answer; }
-        public void setAnswer(String answer) { this.answer = answer; }
-
-        public boolean isIs_correct() { return is_correct; }
-        public void setIs_correct(boolean is_correct) { this.is_correct = is_correct; }
-
-        public int getResponse_time() { return response_time; }
-        public void setResponse_time(int response_time) { this.response_time = response_time; }
-
-        public LocalDateTime getCreated_at() { return created_at; }
-        public void setCreated_at(LocalDateTime created_at) { this.created_at = created_at; }
-    }
-
     // 支持的格式
     private static final Set<String> SUPPORTED_FORMATS = new HashSet<>(Arrays.asList(
             "csv", "json", "pdf", "xlsx"
@@ -241,8 +137,7 @@ public class ExportReviews {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -276,76 +171,16 @@ public class ExportReviews {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 3. 查询复习记录
-            List<ReviewSessionInfo> reviewSessions = new ArrayList<>();
+            // 3. 确定导出范围：指定的复习会话，或日期范围内的复习会话
+            String condition;
+            List<Object> conditionParams = new ArrayList<>();
 
             if (request.getReview_ids() != null && !request.getReview_ids().isEmpty()) {
                 // 根据提供的review_ids查询
                 String placeholders = String.join(",", Collections.nCopies(request.getReview_ids().size(), "?"));
-
-                // 查询复习会话基本信息
-                String sessionSql = "SELECT rs.review_session_id, rs.user_id, rs.start_time, rs.end_time, " +
-                        "rs.total_items, rs.correct_count, rs.wrong_count, rs.accuracy, " +
-                        "rs.session_type, rs.created_at " +
-                        "FROM review_sessions rs " +
-                        "WHERE rs.review_session_id IN (" + placeholders + ") AND rs.user_id = ?";
-
-                List<Object> params = new ArrayList<>(request.getReview_ids());
-                params.add(userId);
-
-                List<Map<String, Object>> sessionResults = jdbcTemplate.queryForList(sessionSql, params.toArray());
-                printQueryResult("复习会话查询结果: " + sessionResults.size() + "条记录");
-
-                // 处理每个复习会话
-                for (Map<String, Object> session : sessionResults) {
-                    int sessionId = (int) session.get("review_session_id");
-                    int sessionUserId = (int) session.get("user_id");
-                    LocalDateTime startTime = ((java.sql.Timestamp) session.get("start_time")).toLocalDateTime();
-                    LocalDateTime endTime = session.get("end_time") != null ?
-                            ((java.sql.Timestamp) session.get("end_time")).toLocalDateTime() : null;
-                    int totalItems = (int) session.get("total_items");
-                    int correctCount = (int) session.get("correct_count");
-                    int wrongCount = (int) session.get("wrong_count");
-                    double accuracy = (double) session.get("accuracy");
-                    String sessionType = (String) session.get("session_type");
-                    LocalDateTime createdAt = ((java.sql.Timestamp) session.get("created_at")).toLocalDateTime();
-
-                    ReviewSessionInfo sessionInfo = new ReviewSessionInfo(
-                            sessionId, sessionUserId, startTime, endTime, totalItems,
-                            correctCount, wrongCount, accuracy, sessionType, createdAt
-                    );
-
-                    // 查询复习项目详情
-                    String itemsSql = "SELECT ri.review_item_id, ri.review_session_id, ri.user_vocabulary_id, " +
-                            "w.word, ri.user_answer as answer, ri.is_correct, " +
-                            "ri.response_time, ri.created_at " +
-                            "FROM review_items ri " +
-                            "JOIN user_vocabulary uv ON ri.user_vocabulary_id = uv.user_vocabulary_id " +
-                            "JOIN words w ON uv.word_id = w.word_id " +
-                            "WHERE ri.review_session_id = ?";
-
-                    List<Map<String, Object>> itemResults = jdbcTemplate.queryForList(itemsSql, sessionId);
-
-                    for (Map<String, Object> item : itemResults) {
-                        int itemId = (int) item.get("review_item_id");
-                        int itemSessionId = (int) item.get("review_session_id");
-                        int userVocabId = (int) item.get("user_vocabulary_id");
-                        String word = (String) item.get("word");
-                        String answer = (String) item.get("answer");
-                        boolean isCorrect = (boolean) item.get("is_correct");
-                        int responseTime = (int) item.get("response_time");
-                        LocalDateTime itemCreatedAt = ((java.sql.Timestamp) item.get("created_at")).toLocalDateTime();
-
-                        ReviewItemInfo itemInfo = new ReviewItemInfo(
-                                itemId, itemSessionId, userVocabId, word, answer,
-                                isCorrect, responseTime, itemCreatedAt
-                        );
-
-                        sessionInfo.getReview_items().add(itemInfo);
-                    }
-
-                    reviewSessions.add(sessionInfo);
-                }
+                condition = "rs.session_id IN (" + placeholders + ") AND rs.user_id = ?";
+                conditionParams.addAll(request.getReview_ids());
+                conditionParams.add(userId);
             } else {
                 // 根据date_range查询
                 String[] dateRange = request.getDate_range().split(",");
@@ -357,76 +192,24 @@ public class ExportReviews {
                     return ResponseEntity.badRequest().body(errorResponse);
                 }
 
-                String startDate = dateRange[0].trim();
-                String endDate = dateRange[1].trim();
-
-                // 查询指定日期范围内的复习会话
-                String sessionSql = "SELECT rs.review_session_id, rs.user_id, rs.start_time, rs.end_time, " +
-                        "rs.total_items, rs.correct_count, rs.wrong_count, rs.accuracy, " +
-                        "rs.session_type, rs.created_at " +
-                        "FROM review_sessions rs " +
-                        "WHERE rs.user_id = ? AND DATE(rs.created_at) BETWEEN ? AND ? " +
-                        "ORDER BY rs.created_at DESC";
-
-                List<Map<String, Object>> sessionResults = jdbcTemplate.queryForList(
-                        sessionSql, userId, startDate, endDate
-                );
-
-                printQueryResult("日期范围复习会话查询结果: " + sessionResults.size() + "条记录");
-
-                // 处理每个复习会话
-                for (Map<String, Object> session : sessionResults) {
-                    int sessionId = (int) session.get("review_session_id");
-                    int sessionUserId = (int) session.get("user_id");
-                    LocalDateTime startTime = ((java.sql.Timestamp) session.get("start_time")).toLocalDateTime();
-                    LocalDateTime endTime = session.get("end_time") != null ?
-                            ((java.sql.Timestamp) session.get("end_time")).toLocalDateTime() : null;
-                    int totalItems = (int) session.get("total_items");
-                    int correctCount = (int) session.get("correct_count");
-                    int wrongCount = (int) session.get("wrong_count");
-                    double accuracy = (double) session.get("accuracy");
-                    String sessionType = (String) session.get("session_type");
-                    LocalDateTime createdAt = ((java.sql.Timestamp) session.get("created_at")).toLocalDateTime();
-
-                    ReviewSessionInfo sessionInfo = new ReviewSessionInfo(
-                            sessionId, sessionUserId, startTime, endTime, totalItems,
-                            correctCount, wrongCount, accuracy, sessionType, createdAt
-                    );
-
-                    // 查询复习项目详情
-                    String itemsSql = "SELECT ri.review_item_id, ri.review_session_id, ri.user_vocabulary_id, " +
-                            "w.word, ri.user_answer as answer, ri.is_correct, " +
-                            "ri.response_time, ri.created_at " +
-                            "FROM review_items ri " +
-                            "JOIN user_vocabulary uv ON ri.user_vocabulary_id = uv.user_vocabulary_id " +
-                            "JOIN words w ON uv.word_id = w.word_id " +
-                            "WHERE ri.review_session_id = ?";
-
-                    List<Map<String, Object>> itemResults = jdbcTemplate.queryForList(itemsSql, sessionId);
-
-                    for (Map<String, Object> item : itemResults) {
-                        int itemId = (int) item.get("review_item_id");
-                        int itemSessionId = (int) item.get("review_session_id");
-                        int userVocabId = (int) item.get("user_vocabulary_id");
-                        String word = (String) item.get("word");
-                        String answer = (String) item.get("answer");
-                        boolean isCorrect = (boolean) item.get("is_correct");
-                        int responseTime = (int) item.get("response_time");
-                        LocalDateTime itemCreatedAt = ((java.sql.Timestamp) item.get("created_at")).toLocalDateTime();
-
-                        ReviewItemInfo itemInfo = new ReviewItemInfo(
-                                itemId, itemSessionId, userVocabId, word, answer,
-                                isCorrect, responseTime, itemCreatedAt
-                        );
-
-                        sessionInfo.getReview_items().add(itemInfo);
-                    }
-
-                    reviewSessions.add(sessionInfo);
-                }
+                condition = "rs.user_id = ? AND DATE(rs.created_at) BETWEEN ? AND ?";
+                conditionParams.add(userId);
+                conditionParams.add(dateRange[0].trim());
+                conditionParams.add(dateRange[1].trim());
             }
-
-            if (reviewSessions.isEmpty()) {
+            Object[] params = conditionParams.toArray();
+
+            // 4. 汇总统计（文件头需要），明细在写出时流式查询
+            Map<String, Object> summary = jdbcTemplate.queryForMap(
+                    "SELECT COUNT(*) as session_count, COALESCE(SUM(rs.total_words), 0) as total_items, " +
+                            "COALESCE(SUM(rs.correct_words), 0) as total_correct " +
+                            "FROM review_sessions rs WHERE " + condition, params);
+            int sessionCount = ((Number) summary.get("session_count")).intValue();
+            int totalItems = ((Number) summary.get("total_items")).intValue();
+            int totalCorrect = ((Number) summary.get("total_correct")).intValue();
+            printQueryResult("复习会话查询结果: " + sessionCount + "条记录");
+
+            if (sessionCount == 0) {
                 Map<String, Object> details = new HashMap<>();
                 details.put("review_ids", request.getReview_ids());
                 details.put("date_range", request.getDate_range());
@@ -435,74 +218,36 @@ public class ExportReviews {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
             }
 
-            // 4. 生成导出文件内容
-            String fileContent = generateExportContent(reviewSessions, request.getFormat());
-            byte[] fileBytes = fileContent.getBytes(StandardCharsets.UTF_8);
+            ReviewExport export = new ReviewExport(condition, params, sessionCount, totalItems, totalCorrect);
 
             // 5. 生成文件名
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
             String extension = getFileExtension(request.getFormat());
             String filename = "reviews_" + timestamp + "." + extension;
-
-            // 6. 记录导出历史
             String exportId = "export_reviews_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            // 构建实体ID数组
-            List<Integer> sessionIds = reviewSessions.stream()
-                    .map(ReviewSessionInfo::getReview_session_id)
-                    .collect(java.util.stream.Collectors.toList());
-
-            String entityIdsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class,
-                    String.join(",", sessionIds.stream().map(String::valueOf).toArray(String[]::new))
-            );
-
-            Map<String, Object> exportDetails = new HashMap<>();
-            exportDetails.put("export_id", exportId);
-            exportDetails.put("format", request.getFormat());
-            exportDetails.put("session_count", reviewSessions.size());
-            exportDetails.put("filename", filename);
-            exportDetails.put("file_size", fileBytes.length);
-            exportDetails.put("date_range", request.getDate_range());
-
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "session_count", reviewSessions.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length,
-                    "date_range", request.getDate_range() != null ? request.getDate_range() : ""
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "REVIEWS",
-                    entityIdsJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
-
-            // 7. 准备文件响应
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(getMediaType(request.getFormat()));
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(fileBytes.length);
+
+            // 6. 同步时直接流式返回文件，异步时提交导出任务
+            // 按日期范围导出时会话可能很多，只记录日期范围
+            List<String> entityIds = request.getReview_ids() != null && !request.getReview_ids().isEmpty()
+                    ? request.getReview_ids()
+                    : Collections.singletonList(request.getDate_range());
+            ExportJobService.ExportJob job = new ExportJobService.ExportJob(
+                    userId, "REVIEWS", exportId, filename, getMediaType(request.getFormat()), entityIds);
+            job.getDetails().put("format", request.getFormat());
+            job.getDetails().put("session_count", sessionCount);
+            job.getDetails().put("date_range", request.getDate_range() != null ? request.getDate_range() : "");
 
             // 打印返回信息
             Map<String, Object> responseInfo = new HashMap<>();
             responseInfo.put("filename", filename);
-            responseInfo.put("file_size", fileBytes.length);
             responseInfo.put("format", request.getFormat());
-            responseInfo.put("session_count", reviewSessions.size());
-            responseInfo.put("total_items", reviewSessions.stream().mapToInt(ReviewSessionInfo::getTotal_items).sum());
+            responseInfo.put("session_count", sessionCount);
+            responseInfo.put("total_items", totalItems);
+            responseInfo.put("async", request.isAsync());
             printResponse(responseInfo);
 
-            return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+            return exportJobService.deliver(job, request.isAsync(),
+                    out -> writeExportContent(out, export, request.getFormat()));
 
         } catch (Exception e) {
             System.err.println("复习记录导出过程中发生错误: " + e.getMessage());
@@ -517,246 +262,276 @@ public class ExportReviews {
         }
     }
 
-    // 生成导出内容
-    private String generateExportContent(List<ReviewSessionInfo> reviewSessions, String format) {
-        StringBuilder content = new StringBuilder();
+    // 复习会话列（别名保持导出文件原有的字段名）
+    private static final String SESSION_COLUMNS = "rs.session_id as review_session_id, rs.user_id, " +
+            "rs.created_at as start_time, rs.completed_at as end_time, " +
+            "rs.total_words as total_items, rs.correct_words as correct_count, " +
+            "(rs.total_words - rs.correct_words) as wrong_count, rs.accuracy, " +
+            "rs.mode as session_type, rs.created_at";
+
+    // 复习项目列
+    private static final String ITEM_COLUMNS = "ri.review_item_id, ri.user_vocab_id as user_vocabulary_id, " +
+            "uv.word, ri.user_answer as answer, ri.is_correct, ri.response_time, ri.created_at as item_created_at";
+
+    /**
+     * 一次复习导出的范围和汇总
+     */
+    private static class ReviewExport {
+        final String condition;
+        final Object[] params;
+        final int sessionCount;
+        final int totalItems;
+        final int totalCorrect;
+
+        ReviewExport(String condition, Object[] params, int sessionCount, int totalItems, int totalCorrect) {
+            this.condition = condition;
+            this.params = params;
+            this.sessionCount = sessionCount;
+            this.totalItems = totalItems;
+            this.totalCorrect = totalCorrect;
+        }
+    }
 
-        if (format.equalsIgnoreCase("json")) {
-            // JSON格式
-            Map<String, Object> exportData = new HashMap<>();
-            exportData.put("metadata", new HashMap<String, Object>() {{
-                put("exportedAt", LocalDateTime.now().toString());
-                put("totalSessions", reviewSessions.size());
-                put("totalItems", reviewSessions.stream().mapToInt(ReviewSessionInfo::getTotal_items).sum());
-                put("format", "json");
-                put("version", "1.0");
-            }});
-
-            List<Map<String, Object>> sessionsJsonList = new ArrayList<>();
-            for (ReviewSessionInfo session : reviewSessions) {
-                Map<String, Object> sessionMap = new HashMap<>();
-                sessionMap.put("review_session_id", session.getReview_session_id());
-                sessionMap.put("user_id", session.getUser_id());
-                sessionMap.put("start_time", session.getStart_time().toString());
-                sessionMap.put("end_time", session.getEnd_time() != null ? session.getEnd_time().toString() : null);
-                sessionMap.put("total_items", session.getTotal_items());
-                sessionMap.put("correct_count", session.getCorrect_count());
-                sessionMap.put("wrong_count", session.getWrong_count());
-                sessionMap.put("accuracy", session.getAccuracy());
-                sessionMap.put("session_type", session.getSession_type());
-                sessionMap.put("created_at", session.getCreated_at().toString());
-
-                // 添加复习项目
-                List<Map<String, Object>> itemsJsonList = new ArrayList<>();
-                for (ReviewItemInfo item : session.getReview_items()) {
-                    Map<String, Object> itemMap = new HashMap<>();
-                    itemMap.put("review_item_id", item.getReview_item_id());
-                    itemMap.put("review_session_id", item.getReview_session_id());
-                    itemMap.put("user_vocabulary_id", item.getUser_vocabulary_id());
-                    itemMap.put("word", item.getWord());
-                    itemMap.put("answer", item.getAnswer());
-                    itemMap.put("is_correct", item.isIs_correct());
-                    itemMap.put("response_time", item.getResponse_time());
-                    itemMap.put("created_at", item.getCreated_at().toString());
-                    itemsJsonList.add(itemMap);
-                }
-                sessionMap.put("review_items", itemsJsonList);
+    /**
+     * 逐个处理复习会话及其复习项目
+     */
+    private interface SessionHandler {
+        void handle(Map<String, Object> session, List<Map<String, Object>> items) throws IOException;
+    }
 
-                sessionsJsonList.add(sessionMap);
+    /**
+     * 会话与项目 LEFT JOIN 后按会话排序流式读取，连续的行属于同一会话。
+     * 内存中只保留当前一个会话的项目。
+     */
+    @SuppressWarnings("unchecked")
+    private void streamSessions(ReviewExport export, SessionHandler handler) throws IOException {
+        String sql = "SELECT " + SESSION_COLUMNS + ", " + ITEM_COLUMNS + " " +
+                "FROM review_sessions rs " +
+                "LEFT JOIN review_items ri ON ri.session_id = rs.session_id " +
+                "LEFT JOIN user_vocabulary uv ON ri.user_vocab_id = uv.user_vocab_id " +
+                "WHERE " + export.condition + " " +
+                "ORDER BY rs.created_at DESC, rs.session_id, ri.review_item_id";
+
+        Object[] current = {null};
+        List<Map<String, Object>> items = new ArrayList<>();
+        exportStreamWriter.streamRows(sql, row -> {
+            Object sessionId = row.get("review_session_id");
+            if (current[0] != null && !sessionId.equals(((Map<?, ?>) current[0]).get("review_session_id"))) {
+                handler.handle(sessionOf((Map<String, Object>) current[0]), items);
+                items.clear();
             }
-
-            exportData.put("review_sessions", sessionsJsonList);
-
-            // 简单JSON序列化
-            content.append("{\n");
-            content.append("  \"metadata\": {\n");
-            content.append("    \"exportedAt\": \"").append(LocalDateTime.now()).append("\",\n");
-            content.append("    \"totalSessions\": ").append(reviewSessions.size()).append(",\n");
-            content.append("    \"totalItems\": ").append(reviewSessions.stream().mapToInt(ReviewSessionInfo::getTotal_items).sum()).append(",\n");
-            content.append("    \"format\": \"json\",\n");
-            content.append("    \"version\": \"1.0\"\n");
-            content.append("  },\n");
-            content.append("  \"review_sessions\": [\n");
-
-            for (int i = 0; i < reviewSessions.size(); i++) {
-                ReviewSessionInfo session = reviewSessions.get(i);
-                content.append("    {\n");
-                content.append("      \"review_session_id\": ").append(session.getReview_session_id()).append(",\n");
-                content.append("      \"user_id\": ").append(session.getUser_id()).append(",\n");
-                content.append("      \"start_time\": \"").append(session.getStart_time()).append("\",\n");
-                content.append("      \"end_time\": \"").append(session.getEnd_time() != null ? session.getEnd_time() : "").append("\",\n");
-                content.append("      \"total_items\": ").append(session.getTotal_items()).append(",\n");
-                content.append("      \"correct_count\": ").append(session.getCorrect_count()).append(",\n");
-                content.append("      \"wrong_count\": ").append(session.getWrong_count()).append(",\n");
-                content.append("      \"accuracy\": ").append(session.getAccuracy()).append(",\n");
-                content.append("      \"session_type\": \"").append(escapeJson(session.getSession_type())).append("\",\n");
-                content.append("      \"created_at\": \"").append(session.getCreated_at()).append("\"\n");
-                content.append("    }");
-                if (i < reviewSessions.size() - 1) content.append(",");
-                content.append("\n");
+            current[0] = row;
+            if (row.get("review_item_id") != null) {
+                items.add(itemOf(row));
             }
+        }, export.params);
+        if (current[0] != null) {
+            handler.handle(sessionOf((Map<String, Object>) current[0]), items);
+        }
+    }
+
+    private Map<String, Object> sessionOf(Map<String, Object> row) {
+        Map<String, Object> session = new LinkedHashMap<>();
+        for (String column : Arrays.asList("review_session_id", "user_id", "start_time", "end_time", "total_items",
+                "correct_count", "wrong_count", "accuracy", "session_type", "created_at")) {
+            session.put(column, row.get(column));
+        }
+        return session;
+    }
+
+    private Map<String, Object> itemOf(Map<String, Object> row) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("review_item_id", row.get("review_item_id"));
+        item.put("review_session_id", row.get("review_session_id"));
+        item.put("user_vocabulary_id", row.get("user_vocabulary_id"));
+        item.put("word", row.get("word"));
+        item.put("answer", row.get("answer"));
+        item.put("is_correct", isCorrect(row.get("is_correct")));
+        item.put("response_time", row.get("response_time"));
+        item.put("created_at", row.get("item_created_at"));
+        return item;
+    }
+
+    private boolean isCorrect(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value instanceof Number && ((Number) value).intValue() != 0;
+    }
+
+    private double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+    }
+
+    // 按会话类型统计（由数据库聚合，结果行数与类型数相同）
+    private List<Map<String, Object>> queryTypeStats(ReviewExport export) {
+        return jdbcTemplate.queryForList(
+                "SELECT rs.mode as session_type, COUNT(*) as sessions_count, " +
+                        "COALESCE(SUM(rs.total_words), 0) as items_count, " +
+                        "COALESCE(SUM(rs.correct_words), 0) as correct_count " +
+                        "FROM review_sessions rs WHERE " + export.condition + " GROUP BY rs.mode", export.params);
+    }
 
-            content.append("  ]\n");
-            content.append("}");
+    // 逐个会话写出导出内容
+    private void writeExportContent(OutputStream out, ReviewExport export, String format) throws IOException {
+        int totalWrong = export.totalItems - export.totalCorrect;
+        double overallAccuracy = export.totalItems > 0 ? (export.totalCorrect * 100.0 / export.totalItems) : 0.0;
 
-        } else if (format.equalsIgnoreCase("csv")) {
+        if (format.equalsIgnoreCase("json")) {
+            // JSON格式
+            JsonGenerator json = exportStreamWriter.openJson(out);
+            json.writeStartObject();
+            json.writeObjectFieldStart("metadata");
+            json.writeStringField("exportedAt", LocalDateTime.now().toString());
+            json.writeNumberField("totalSessions", export.sessionCount);
+            json.writeNumberField("totalItems", export.totalItems);
+            json.writeStringField("format", "json");
+            json.writeStringField("version", "1.0");
+            json.writeEndObject();
+
+            json.writeArrayFieldStart("review_sessions");
+            streamSessions(export, (session, items) -> {
+                Map<String, Object> sessionMap = new LinkedHashMap<>(session);
+                sessionMap.put("review_items", items);
+                exportStreamWriter.writeJsonObject(json, sessionMap);
+            });
+            json.writeEndArray();
+
+            json.writeEndObject();
+            json.flush();
+            return;
+        }
+
+        Writer writer = exportStreamWriter.openWriter(out);
+
+        if (format.equalsIgnoreCase("csv")) {
             // CSV格式 - 会话概要
-            content.append("复习会话ID,用户ID,开始时间,结束时间,总项目数,正确数,错误数,正确率,会话类型,创建时间\n");
-            for (ReviewSessionInfo session : reviewSessions) {
-                content.append(session.getReview_session_id()).append(",");
-                content.append(session.getUser_id()).append(",");
-                content.append(escapeCsv(session.getStart_time().toString())).append(",");
-                content.append(escapeCsv(session.getEnd_time() != null ? session.getEnd_time().toString() : "")).append(",");
-                content.append(session.getTotal_items()).append(",");
-                content.append(session.getCorrect_count()).append(",");
-                content.append(session.getWrong_count()).append(",");
-                content.append(String.format("%.2f", session.getAccuracy())).append(",");
-                content.append(escapeCsv(session.getSession_type())).append(",");
-                content.append(escapeCsv(session.getCreated_at().toString())).append("\n");
-            }
+            writer.write("复习会话ID,用户ID,开始时间,结束时间,总项目数,正确数,错误数,正确率,会话类型,创建时间\n");
+            exportStreamWriter.streamRows("SELECT " + SESSION_COLUMNS + " FROM review_sessions rs " +
+                    "WHERE " + export.condition + " ORDER BY rs.created_at DESC, rs.session_id", session ->
+                    exportStreamWriter.writeCsvRow(writer, Arrays.asList(
+                            session.get("review_session_id"),
+                            session.get("user_id"),
+                            session.get("start_time"),
+                            session.get("end_time"),
+                            session.get("total_items"),
+                            session.get("correct_count"),
+                            session.get("wrong_count"),
+                            String.format("%.2f", toDouble(session.get("accuracy"))),
+                            session.get("session_type"),
+                            session.get("created_at")
+                    )), export.params);
 
             // 添加复习项目详情
-            content.append("\n\n=== 复习项目详情 ===\n");
-            content.append("复习项目ID,复习会话ID,用户词汇ID,单词,用户答案,是否正确,响应时间(秒),创建时间\n");
-            for (ReviewSessionInfo session : reviewSessions) {
-                for (ReviewItemInfo item : session.getReview_items()) {
-                    content.append(item.getReview_item_id()).append(",");
-                    content.append(item.getReview_session_id()).append(",");
-                    content.append(item.getUser_vocabulary_id()).append(",");
-                    content.append(escapeCsv(item.getWord())).append(",");
-                    content.append(escapeCsv(item.getAnswer())).append(",");
-                    content.append(item.isIs_correct() ? "是" : "否").append(",");
-                    content.append(item.getResponse_time()).append(",");
-                    content.append(escapeCsv(item.getCreated_at().toString())).append("\n");
-                }
-            }
+            writer.write("\n\n=== 复习项目详情 ===\n");
+            writer.write("复习项目ID,复习会话ID,用户词汇ID,单词,用户答案,是否正确,响应时间(秒),创建时间\n");
+            exportStreamWriter.streamRows("SELECT rs.session_id as review_session_id, " + ITEM_COLUMNS + " " +
+                    "FROM review_items ri " +
+                    "JOIN review_sessions rs ON ri.session_id = rs.session_id " +
+                    "LEFT JOIN user_vocabulary uv ON ri.user_vocab_id = uv.user_vocab_id " +
+                    "WHERE " + export.condition + " " +
+                    "ORDER BY rs.created_at DESC, rs.session_id, ri.review_item_id", item ->
+                    exportStreamWriter.writeCsvRow(writer, Arrays.asList(
+                            item.get("review_item_id"),
+                            item.get("review_session_id"),
+                            item.get("user_vocabulary_id"),
+                            item.get("word"),
+                            item.get("answer"),
+                            isCorrect(item.get("is_correct")) ? "是" : "否",
+                            item.get("response_time"),
+                            item.get("item_created_at")
+                    )), export.params);
 
             // 添加统计摘要
-            content.append("\n\n=== 统计摘要 ===\n");
-            content.append("统计项,数值\n");
-            content.append("总复习会话数,").append(reviewSessions.size()).append("\n");
-
-            int totalItems = reviewSessions.stream().mapToInt(ReviewSessionInfo::getTotal_items).sum();
-            int totalCorrect = reviewSessions.stream().mapToInt(ReviewSessionInfo::getCorrect_count).sum();
-            int totalWrong = reviewSessions.stream().mapToInt(ReviewSessionInfo::getWrong_count).sum();
-            double overallAccuracy = totalItems > 0 ? (totalCorrect * 100.0 / totalItems) : 0.0;
-
-            content.append("总复习项目数,").append(totalItems).append("\n");
-            content.append("总正确数,").append(totalCorrect).append("\n");
-            content.append("总错误数,").append(totalWrong).append("\n");
-            content.append("整体正确率,").append(String.format("%.2f", overallAccuracy)).append("%\n");
+            writer.write("\n\n=== 统计摘要 ===\n");
+            writer.write("统计项,数值\n");
+            writer.write("总复习会话数," + export.sessionCount + "\n");
+            writer.write("总复习项目数," + export.totalItems + "\n");
+            writer.write("总正确数," + export.totalCorrect + "\n");
+            writer.write("总错误数," + totalWrong + "\n");
+            writer.write("整体正确率," + String.format("%.2f", overallAccuracy) + "%\n");
 
             // 按会话类型统计
-            Map<String, Integer> typeCount = new HashMap<>();
-            Map<String, Integer> typeItems = new HashMap<>();
-            Map<String, Integer> typeCorrect = new HashMap<>();
-
-            for (ReviewSessionInfo session : reviewSessions) {
-                String type = session.getSession_type();
-                typeCount.put(type, typeCount.getOrDefault(type, 0) + 1);
-                typeItems.put(type, typeItems.getOrDefault(type, 0) + session.getTotal_items());
-                typeCorrect.put(type, typeCorrect.getOrDefault(type, 0) + session.getCorrect_count());
-            }
-
-            content.append("\n按会话类型统计:\n");
-            content.append("会话类型,会话数,项目数,正确数,正确率\n");
-            for (Map.Entry<String, Integer> entry : typeCount.entrySet()) {
-                String type = entry.getKey();
-                int sessionsCount = entry.getValue();
-                int itemsCount = typeItems.getOrDefault(type, 0);
-                int correctCount = typeCorrect.getOrDefault(type, 0);
+            writer.write("\n按会话类型统计:\n");
+            writer.write("会话类型,会话数,项目数,正确数,正确率\n");
+            for (Map<String, Object> type : queryTypeStats(export)) {
+                int itemsCount = ((Number) type.get("items_count")).intValue();
+                int correctCount = ((Number) type.get("correct_count")).intValue();
                 double typeAccuracy = itemsCount > 0 ? (correctCount * 100.0 / itemsCount) : 0.0;
 
-                content.append(escapeCsv(type)).append(",");
-                content.append(sessionsCount).append(",");
-                content.append(itemsCount).append(",");
-                content.append(correctCount).append(",");
-                content.append(String.format("%.2f", typeAccuracy)).append("%\n");
+                writer.write(exportStreamWriter.escapeCsv(exportStreamWriter.formatValue(type.get("session_type"))) + ",");
+                writer.write(type.get("sessions_count") + ",");
+                writer.write(itemsCount + ",");
+                writer.write(correctCount + ",");
+                writer.write(String.format("%.2f", typeAccuracy) + "%\n");
             }
 
         } else {
             // 默认文本格式（用于pdf和txt）
-            content.append("复习记录导出报告\n");
-            content.append("================\n\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("复习会话数: ").append(reviewSessions.size()).append("\n");
-            content.append("导出格式: ").append(format).append("\n\n");
+            writer.write("复习记录导出报告\n");
+            writer.write("================\n\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("复习会话数: " + export.sessionCount + "\n");
+            writer.write("导出格式: " + format + "\n\n");
 
             // 总体统计
-            int totalItems = reviewSessions.stream().mapToInt(ReviewSessionInfo::getTotal_items).sum();
-            int totalCorrect = reviewSessions.stream().mapToInt(ReviewSessionInfo::getCorrect_count).sum();
-            int totalWrong = reviewSessions.stream().mapToInt(ReviewSessionInfo::getWrong_count).sum();
-            double overallAccuracy = totalItems > 0 ? (totalCorrect * 100.0 / totalItems) : 0.0;
-
-            content.append("总体统计:\n");
-            content.append("--------\n");
-            content.append("总复习项目数: ").append(totalItems).append("\n");
-            content.append("总正确数: ").append(totalCorrect).append("\n");
-            content.append("总错误数: ").append(totalWrong).append("\n");
-            content.append("整体正确率: ").append(String.format("%.2f", overallAccuracy)).append("%\n\n");
-
-            content.append("复习会话列表:\n");
-            content.append("------------\n");
-
-            for (int i = 0; i < reviewSessions.size(); i++) {
-                ReviewSessionInfo session = reviewSessions.get(i);
-                content.append(i + 1).append(". 会话ID: ").append(session.getReview_session_id()).append("\n");
-                content.append("   开始时间: ").append(session.getStart_time()).append("\n");
-                content.append("   结束时间: ").append(session.getEnd_time() != null ? session.getEnd_time() : "进行中").append("\n");
-                content.append("   会话类型: ").append(session.getSession_type()).append("\n");
-                content.append("   项目总数: ").append(session.getTotal_items()).append("\n");
-                content.append("   正确数: ").append(session.getCorrect_count()).append(" | ");
-                content.append("错误数: ").append(session.getWrong_count()).append("\n");
-                content.append("   正确率: ").append(String.format("%.2f", session.getAccuracy())).append("%\n");
-                content.append("   创建时间: ").append(session.getCreated_at()).append("\n");
+            writer.write("总体统计:\n");
+            writer.write("--------\n");
+            writer.write("总复习项目数: " + export.totalItems + "\n");
+            writer.write("总正确数: " + export.totalCorrect + "\n");
+            writer.write("总错误数: " + totalWrong + "\n");
+            writer.write("整体正确率: " + String.format("%.2f", overallAccuracy) + "%\n\n");
+
+            writer.write("复习会话列表:\n");
+            writer.write("------------\n");
+
+            int[] index = {0};
+            streamSessions(export, (session, items) -> {
+                writer.write(++index[0] + ". 会话ID: " + session.get("review_session_id") + "\n");
+                writer.write("   开始时间: " + exportStreamWriter.formatValue(session.get("start_time")) + "\n");
+                writer.write("   结束时间: " + (session.get("end_time") != null ? exportStreamWriter.formatValue(session.get("end_time")) : "进行中") + "\n");
+                writer.write("   会话类型: " + session.get("session_type") + "\n");
+                writer.write("   项目总数: " + session.get("total_items") + "\n");
+                writer.write("   正确数: " + session.get("correct_count") + " | ");
+                writer.write("错误数: " + session.get("wrong_count") + "\n");
+                writer.write("   正确率: " + String.format("%.2f", toDouble(session.get("accuracy"))) + "%\n");
+                writer.write("   创建时间: " + exportStreamWriter.formatValue(session.get("created_at")) + "\n");
 
                 // 显示前3个复习项目
-                if (!session.getReview_items().isEmpty()) {
-                    content.append("   复习项目:\n");
-                    int limit = Math.min(3, session.getReview_items().size());
+                if (!items.isEmpty()) {
+                    writer.write("   复习项目:\n");
+                    int limit = Math.min(3, items.size());
                     for (int j = 0; j < limit; j++) {
-                        ReviewItemInfo item = session.getReview_items().get(j);
-                        content.append("     - ").append(item.getWord()).append(": ");
-                        content.append(item.getAnswer()).append(" (");
-                        content.append(item.isIs_correct() ? "正确" : "错误").append(")\n");
+                        Map<String, Object> item = items.get(j);
+                        writer.write("     - " + item.get("word") + ": ");
+                        writer.write(item.get("answer") + " (");
+                        writer.write((Boolean) item.get("is_correct") ? "正确" : "错误");
+                        writer.write(")\n");
                     }
-                    if (session.getReview_items().size() > 3) {
-                        content.append("     ... 还有").append(session.getReview_items().size() - 3).append("个项目\n");
+                    if (items.size() > 3) {
+                        writer.write("     ... 还有" + (items.size() - 3) + "个项目\n");
                     }
                 }
 
-                content.append("\n");
-            }
+                writer.write("\n");
+            });
 
             // 按会话类型统计
-            Map<String, Integer> typeCount = new HashMap<>();
-            Map<String, Integer> typeItems = new HashMap<>();
-            Map<String, Integer> typeCorrect = new HashMap<>();
-
-            for (ReviewSessionInfo session : reviewSessions) {
-                String type = session.getSession_type();
-                typeCount.put(type, typeCount.getOrDefault(type, 0) + 1);
-                typeItems.put(type, typeItems.getOrDefault(type, 0) + session.getTotal_items());
-                typeCorrect.put(type, typeCorrect.getOrDefault(type, 0) + session.getCorrect_count());
-            }
-
-            content.append("\n按会话类型统计:\n");
-            content.append("------------\n");
-            for (Map.Entry<String, Integer> entry : typeCount.entrySet()) {
-                String type = entry.getKey();
-                int sessionsCount = entry.getValue();
-                int itemsCount = typeItems.getOrDefault(type, 0);
-                int correctCount = typeCorrect.getOrDefault(type, 0);
+            writer.write("\n按会话类型统计:\n");
+            writer.write("------------\n");
+            for (Map<String, Object> type : queryTypeStats(export)) {
+                int itemsCount = ((Number) type.get("items_count")).intValue();
+                int correctCount = ((Number) type.get("correct_count")).intValue();
                 double typeAccuracy = itemsCount > 0 ? (correctCount * 100.0 / itemsCount) : 0.0;
 
-                content.append("类型: ").append(type).append("\n");
-                content.append("  会话数: ").append(sessionsCount).append("\n");
-                content.append("  项目数: ").append(itemsCount).append("\n");
-                content.append("  正确率: ").append(String.format("%.2f", typeAccuracy)).append("%\n\n");
+                writer.write("类型: " + type.get("session_type") + "\n");
+                writer.write("  会话数: " + type.get("sessions_count") + "\n");
+                writer.write("  项目数: " + itemsCount + "\n");
+                writer.write("  正确率: " + String.format("%.2f", typeAccuracy) + "%\n\n");
             }
         }
 
-        return content.toString();
+        writer.flush();
     }
 
     // 获取文件扩展名
@@ -780,25 +555,4 @@ public class ExportReviews {
             default: return MediaType.TEXT_PLAIN;
         }
     }
-
-    // 转义JSON字符串
-    private String escapeJson(Object value) {
-        if (value == null) return "";
-        return value.toString()
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
-
-    // 转义CSV字符串
-    private String escapeCsv(Object value) {
-        if (value == null) return "";
-        String str = value.toString();
-        if (str.contains(",") || str.contains("\"") || str.contains("\n")) {
-            return "\"" + str.replace("\"", "\"\"") + "\"";
-        }
-        return str;
-    }
-}
\ No newline at end of file
+}
@@ -16,6 +16,7 @@ import java.util.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -24,6 +25,12 @@ public class ExportStatistics {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到学习统计导出请求 ===");
@@ -135,8 +142,7 @@ public class ExportStatistics {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -231,9 +237,6 @@ public class ExportStatistics {
 
             // 6. 记录导出历史
             String exportId = "export_stats_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?)";
-
             Map<String, Object> exportDetails = new HashMap<>();
             exportDetails.put("export_id", exportId);
             exportDetails.put("format", request.getFormat());
@@ -242,24 +245,7 @@ public class ExportStatistics {
             exportDetails.put("filename", filename);
             exportDetails.put("file_size", fileBytes.length);
 
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "date_range", request.getDate_range(),
-                    "include_charts", request.isInclude_charts(),
-                    "filename", filename,
-                    "file_size", fileBytes.length
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "STATISTICS",
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
+            exportJobService.recordHistory(userId, "STATISTICS", null, "COMPLETED", exportDetails);
 
             // 7. 准备文件响应
             HttpHeaders headers = new HttpHeaders();
@@ -0,0 +1,273 @@
+package com.vue.readingapp.export;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * 流式导出管道
+ *
+ * 导出接口原来先把用户的全部数据 queryForList 到内存，再用 StringBuilder 拼出整个文件，
+ * 最后 getBytes 返回（批量导出还要再压进一个 ByteArrayOutputStream），
+ * 一次导出要占用数据量数倍的堆内存。
+ *
+ * 现在的管道：JDBC 游标逐行读取 -> JsonGenerator / CSV 逐行写出 -> （可选）ZipOutputStream
+ * -> StreamingResponseBody 直接写入响应。任何时刻内存中只有当前一行数据，与导出量无关。
+ *
+ * 注意：响应开始写出后状态码已经发出，流式阶段的错误只能记录日志并中断连接，
+ * 所以参数校验、权限校验都要在返回 StreamingResponseBody 之前完成。
+ */
+@Component
+public class ExportStreamWriter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 游标每次从数据库取回的行数
+    @Value("${app.export.fetch-size:500}")
+    private int fetchSize;
+
+    // MySQL 驱动默认会把整个结果集读入内存，只有 fetchSize = Integer.MIN_VALUE 时才逐行流式读取
+    @Value("${app.export.mysql-row-streaming:true}")
+    private boolean mysqlRowStreaming;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * 逐行处理查询结果
+     */
+    public interface RowHandler {
+        void handle(Map<String, Object> row) throws IOException;
+    }
+
+    /**
+     * 写出一个导出文件的内容
+     */
+    public interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 用只读、只向前的游标执行查询，每读到一行就交给 handler，不在内存中保留结果集
+     *
+     * 流式读取期间这条连接不能执行其他语句；handler 中如需再查数据库，
+     * 会经由 JdbcTemplate 取得另一条连接，不受影响。
+     *
+     * @return 处理的行数
+     */
+    public int streamRows(String sql, RowHandler handler, Object... params) throws IOException {
+        ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+        int[] count = {0};
+        PreparedStatementCreator statement = con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(mysqlRowStreaming ? Integer.MIN_VALUE : Math.max(1, fetchSize));
+            new ArgumentPreparedStatementSetter(params).setValues(ps);
+            return ps;
+        };
+        RowCallbackHandler callback = rs -> {
+            try {
+                handler.handle(rowMapper.mapRow(rs, count[0]++));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            jdbcTemplate.query(statement, callback);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    /**
+     * 在输出流上打开 JsonGenerator。关闭 generator 不会关闭底层输出流（ZIP 条目需要继续写）。
+     */
+    public JsonGenerator openJson(OutputStream out) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.useDefaultPrettyPrinter();
+        return generator;
+    }
+
+    /**
+     * 在输出流上打开 UTF-8 Writer（用于 CSV 和文本格式），调用方写完后 flush 即可，不要关闭
+     */
+    public Writer openWriter(OutputStream out) {
+        return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把查询结果作为 JSON 数组写入当前对象的 field 字段
+     *
+     * @return 写出的行数
+     */
+    public int writeJsonArray(JsonGenerator generator, String field, String sql, Object... params) throws IOException {
+        generator.writeArrayFieldStart(field);
+        int count = streamRows(sql, row -> writeJsonObject(generator, row), params);
+        generator.writeEndArray();
+        return count;
+    }
+
+    /**
+     * 把一行数据写成 JSON 对象
+     */
+    public void writeJsonObject(JsonGenerator generator, Map<String, Object> row) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            writeJsonValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * 写出一个 JSON 值：数字、布尔原样输出，时间转为 ISO 格式，列表写成数组，其他类型按字符串输出
+     */
+    @SuppressWarnings("unchecked")
+    public void writeJsonValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            writeJsonObject(generator, (Map<String, Object>) value);
+        } else if (value instanceof List) {
+            generator.writeStartArray();
+            for (Object item : (List<?>) value) {
+                writeJsonValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeString(formatValue(value));
+        }
+    }
+
+    /**
+     * 单元格的文本形式（CSV、文本格式共用）
+     */
+    public String formatValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * 写出一行 CSV
+     */
+    public void writeCsvRow(Writer writer, List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(formatValue(values.get(i))));
+        }
+        writer.write('\n');
+    }
+
+    public String escapeCsv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /**
+     * 记录已写出字节数的输出流，用于在导出结束后记录文件大小
+     */
+    public static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * 构造流式下载响应
+     *
+     * 文件大小事先未知，不设置 Content-Length（分块传输）。
+     * onComplete 在文件全部写出后执行，参数为写出的字节数，用于记录导出历史。
+     */
+    public ResponseEntity<StreamingResponseBody> attachment(String filename, MediaType mediaType,
+                                                            ContentWriter content, LongConsumer onComplete) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(mediaType);
+        headers.setContentDispositionFormData("attachment", filename);
+
+        StreamingResponseBody body = out -> {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            try {
+                content.write(counting);
+                counting.flush();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Export stream " + filename + " aborted: " + e.getMessage());
+                throw e;
+            }
+            if (onComplete != null) {
+                try {
+                    onComplete.accept(counting.getCount());
+                } catch (Exception e) {
+                    System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to record export " + filename + ": " + e.getMessage());
+                }
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
@@ -11,6 +11,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +20,12 @@ public class ExportStudyPlan {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到学习计划导出请求 ===");
@@ -117,8 +124,7 @@ public class ExportStudyPlan {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -188,9 +194,6 @@ public class ExportStudyPlan {
 
             // 7. 记录导出历史
             String exportId = "export_study_plan_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?)";
-
             Map<String, Object> exportDetails = new HashMap<>();
             exportDetails.put("export_id", exportId);
             exportDetails.put("format", "text");
@@ -202,27 +205,7 @@ public class ExportStudyPlan {
             exportDetails.put("filename", filename);
             exportDetails.put("file_size", fileBytes.length);
 
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", "text",
-                    "start_date", request.getStart_date(),
-                    "end_date", request.getEnd_date(),
-                    "daily_goal", request.getDaily_goal(),
-                    "total_words", dueWords.size(),
-                    "plan_days", dailyPlan.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "STUDY_PLAN",
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
+            exportJobService.recordHistory(userId, "STUDY_PLAN", null, "COMPLETED", exportDetails);
 
             // 8. 准备文件响应
             HttpHeaders headers = new HttpHeaders();
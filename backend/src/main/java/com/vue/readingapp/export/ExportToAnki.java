@@ -11,6 +11,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.nio.charset.StandardCharsets;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +20,12 @@ public class ExportToAnki {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到Anki导出请求 ===");
@@ -117,8 +124,7 @@ public class ExportToAnki {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -226,14 +232,6 @@ public class ExportToAnki {
 
             // 7. 记录导出历史
             String exportId = "export_anki_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            String entityIdsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class,
-                    String.join(",", validVocabIds.stream().map(String::valueOf).toArray(String[]::new))
-            );
-
             Map<String, Object> exportDetails = new HashMap<>();
             exportDetails.put("export_id", exportId);
             exportDetails.put("format", "anki_csv");
@@ -244,27 +242,7 @@ public class ExportToAnki {
             exportDetails.put("include_audio", request.isInclude_audio());
             exportDetails.put("include_images", request.isInclude_images());
 
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", "anki_csv",
-                    "deck_name", request.getDeck_name(),
-                    "item_count", vocabulary.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length,
-                    "include_audio", request.isInclude_audio(),
-                    "include_images", request.isInclude_images()
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "ANKI",
-                    entityIdsJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
+            exportJobService.recordHistory(userId, "ANKI", validVocabIds, "COMPLETED", exportDetails);
 
             // 8. 准备文件响应
             HttpHeaders headers = new HttpHeaders();
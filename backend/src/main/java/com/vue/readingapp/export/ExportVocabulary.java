@@ -3,19 +3,18 @@ package com.vue.readingapp.export;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
+import java.io.Writer;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -24,6 +23,18 @@ public class ExportVocabulary {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportStreamWriter exportStreamWriter;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到词汇导出请求 ===");
@@ -52,6 +63,7 @@ public class ExportVocabulary {
         private Map<String, Object> template;
         private boolean include_examples = true;
         private boolean include_statistics = true;
+        private boolean async = false;
 
         public List<Integer> getVocabulary_ids() { return vocabulary_ids; }
         public void setVocabulary_ids(List<Integer> vocabulary_ids) { this.vocabulary_ids = vocabulary_ids; }
@@ -67,6 +79,9 @@ public class ExportVocabulary {
 
         public boolean isInclude_statistics() { return include_statistics; }
         public void setInclude_statistics(boolean include_statistics) { this.include_statistics = include_statistics; }
+
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
     }
 
     // 错误响应DTO
@@ -106,131 +121,6 @@ public class ExportVocabulary {
         }
     }
 
-    // 词汇信息DTO
-    public static class VocabularyInfo {
-        private int user_vocabulary_id;
-        private int word_id;
-        private String word;
-        private String phonetic;
-        private String meaning;
-        private String part_of_speech;
-        private int difficulty;
-        private int mastery;
-        private int study_count;
-        private double accuracy;
-        private LocalDateTime last_studied;
-        private List<ExampleInfo> examples;
-        private StatisticsInfo statistics;
-
-        // 构造函数、getter和setter
-        public VocabularyInfo(int user_vocabulary_id, int word_id, String word, String phonetic,
-                              String meaning, String part_of_speech, int difficulty, int mastery,
-                              int study_count, double accuracy, LocalDateTime last_studied) {
-            this.user_vocabulary_id = user_vocabulary_id;
-            this.word_id = word_id;
-            this.word = word;
-            this.phonetic = phonetic;
-            this.meaning = meaning;
-            this.part_of_speech = part_of_speech;
-            this.difficulty = difficulty;
-            this.mastery = mastery;
-            this.study_count = study_count;
-            this.accuracy = accuracy;
-            this.last_studied = last_studied;
-            this.examples = new ArrayList<>();
-            this.statistics = new StatisticsInfo();
-        }
-
-        // getter和setter方法
-        public int getUser_vocabulary_id() { return user_vocabulary_id; }
-        public void setUser_vocabulary_id(int user_vocabulary_id) { this.user_vocabulary_id = user_vocabulary_id; }
-
-        public int getWord_id() { return word_id; }
-        public void setWord_id(int word_id) { this.word_id = word_id; }
-
-        public String getWord() { return word; }
-        public void setWord(String word) { this.word = word; }
-
-        public String getPhonetic() { return phonetic; }
-        public void setPhonetic(String phonetic) { this.phonetic = phonetic; }
-
-        public String getMeaning() { return meaning; }
-        public void setMeaning(String meaning) { this.meaning = meaning; }
-
-        public String getPart_of_speech() { return part_of_speech; }
-        public void setPart_of_speech(String part_of_speech) { this.part_of_speech = part_of_speech; }
-
-        public int getDifficulty() { return difficulty; }
-        public void setDifficulty(int difficulty) { this.difficulty = difficulty; }
-
-        public int getMastery() { return mastery; }
-        public void setMastery(int mastery) { this.mastery = mastery; }
-
-        public int getStudy_count() { return study_count; }
-        public void setStudy_count(int study_count) { this.study_count = study_count; }
-
-        public double getAccuracy() { return accuracy; }
-        public void setAccuracy(double accuracy) { this.accuracy = accuracy; }
-
-        public LocalDateTime getLast_studied() { return last_studied; }
-        public void setLast_studied(LocalDateTime last_studied) { this.last_studied = last_studied; }
-
-        public List<ExampleInfo> getExamples() { return examples; }
-        public void setExamples(List<ExampleInfo> examples) { this.examples = examples; }
-
-        public StatisticsInfo getStatistics() { return statistics; }
-        public void setStatistics(StatisticsInfo statistics) { this.statistics = statistics; }
-    }
-
-    // 例句信息DTO
-    public static class ExampleInfo {
-        private String sentence;
-        private String translation;
-        private String source;
-
-        public ExampleInfo(String sentence, String translation, String source) {
-            this.sentence = sentence;
-            this.translation = translation;
-            this.source = source;
-        }
-
-        public String getSentence() { return sentence; }
-        public void setSentence(String sentence) { this.sentence = sentence; }
-
-        public String getTranslation() { return translation; }
-        public void setTranslation(String translation) { this.translation = translation; }
-
-        public String getSource() { return source; }
-        public void setSource(String source) { this.source = source; }
-    }
-
-    // 统计信息DTO
-    public static class StatisticsInfo {
-        private LocalDateTime first_learned;
-        private int study_sessions;
-        private int correct_answers;
-        private int wrong_answers;
-
-        public StatisticsInfo() {
-            this.first_learned = LocalDateTime.now();
-            this.study_sessions = 0;
-            this.correct_answers = 0;
-            this.wrong_answers = 0;
-        }
-
-        public LocalDateTime getFirst_learned() { return first_learned; }
-        public void setFirst_learned(LocalDateTime first_learned) { this.first_learned = first_learned; }
-
-        public int getStudy_sessions() { return study_sessions; }
-        public void setStudy_sessions(int study_sessions) { this.study_sessions = study_sessions; }
-
-        public int getCorrect_answers() { return correct_answers; }
-        public void setCorrect_answers(int correct_answers) { this.correct_answers = correct_answers; }
-
-        public int getWrong_answers() { return wrong_answers; }
-        public void setWrong_answers(int wrong_answers) { this.wrong_answers = wrong_answers; }
-    }
-
     // 支持的格式
     private static final Set<String> SUPPORTED_FORMATS = new HashSet<>(Arrays.asList(
             "xlsx", "csv", "json", "pdf"
@@ -255,8 +145,7 @@ public class ExportVocabulary {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -295,18 +184,28 @@ public class ExportVocabulary {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 3. 验证词汇是否存在且属于当前用户
+            // 3. 验证词汇是否存在且属于当前用户（一次 IN 查询）
+            String placeholders = String.join(",", Collections.nCopies(request.getVocabulary_ids().size(), "?"));
+            List<Object> params = new ArrayList<>(request.getVocabulary_ids());
+            params.add(userId);
+
+            Map<Integer, Long> wordIdsByVocabId = new HashMap<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    "SELECT user_vocab_id, word_id FROM user_vocabulary " +
+                            "WHERE user_vocab_id IN (" + placeholders + ") AND user_id = ?", params.toArray())) {
+                wordIdsByVocabId.put(((Number) row.get("user_vocab_id")).intValue(), ((Number) row.get("word_id")).longValue());
+            }
+
             List<Integer> invalidVocabIds = new ArrayList<>();
             List<Integer> validVocabIds = new ArrayList<>();
 
             for (Integer vocabId : request.getVocabulary_ids()) {
-                String vocabSql = "SELECT user_vocabulary_id FROM user_vocabulary WHERE user_vocabulary_id = ? AND user_id = ?";
-                List<Map<String, Object>> vocabs = jdbcTemplate.queryForList(vocabSql, vocabId, userId);
-
-                if (vocabs.isEmpty()) {
-                    invalidVocabIds.add(vocabId);
+                if (wordIdsByVocabId.containsKey(vocabId)) {
+                    if (!validVocabIds.contains(vocabId)) {
+                        validVocabIds.add(vocabId);
+                    }
                 } else {
-                    validVocabIds.add(vocabId);
+                    invalidVocabIds.add(vocabId);
                 }
             }
 
@@ -317,175 +216,61 @@ public class ExportVocabulary {
                 printResponse(errorResponse);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
             }
-
-            // 4. 查询词汇详细信息
-            List<VocabularyInfo> vocabularyList = new ArrayList<>();
-
-            if (!validVocabIds.isEmpty()) {
-                String placeholders = String.join(",", Collections.nCopies(validVocabIds.size(), "?"));
-
-                // 查询用户词汇基本信息
-                String vocabSql = "SELECT uv.user_vocabulary_id, uv.word_id, uv.mastery_level as mastery, " +
-                        "uv.study_count, uv.correct_count, uv.wrong_count, uv.last_studied_at, " +
-                        "w.word, w.phonetic, w.part_of_speech, w.difficulty_level as difficulty, " +
-                        "wd.definition as meaning " +
-                        "FROM user_vocabulary uv " +
-                        "JOIN words w ON uv.word_id = w.word_id " +
-                        "LEFT JOIN word_definitions wd ON w.word_id = wd.word_id AND wd.is_primary = 1 " +
-                        "WHERE uv.user_vocabulary_id IN (" + placeholders + ") AND uv.user_id = ?";
-
-                List<Object> params = new ArrayList<>(validVocabIds);
-                params.add(userId);
-
-                List<Map<String, Object>> vocabResults = jdbcTemplate.queryForList(vocabSql, params.toArray());
-                printQueryResult("词汇基本信息查询结果: " + vocabResults.size() + "条记录");
-
-                // 处理每个词汇
-                for (Map<String, Object> vocab : vocabResults) {
-                    int userVocabId = (int) vocab.get("user_vocabulary_id");
-                    int wordId = (int) vocab.get("word_id");
-                    String word = (String) vocab.get("word");
-                    String phonetic = (String) vocab.get("phonetic");
-                    String meaning = (String) vocab.get("meaning");
-                    String partOfSpeech = (String) vocab.get("part_of_speech");
-                    int difficulty = vocab.get("difficulty") != null ? (int) vocab.get("difficulty") : 1;
-                    int mastery = vocab.get("mastery") != null ? (int) vocab.get("mastery") : 0;
-                    int studyCount = vocab.get("study_count") != null ? (int) vocab.get("study_count") : 0;
-
-                    // 计算正确率
-                    int correctCount = vocab.get("correct_count") != null ? (int) vocab.get("correct_count") : 0;
-                    int wrongCount = vocab.get("wrong_count") != null ? (int) vocab.get("wrong_count") : 0;
-                    double accuracy = (studyCount > 0) ? (correctCount * 100.0 / studyCount) : 0.0;
-
-                    LocalDateTime lastStudied = vocab.get("last_studied_at") != null ?
-                            ((java.sql.Timestamp) vocab.get("last_studied_at")).toLocalDateTime() : null;
-
-                    VocabularyInfo vocabInfo = new VocabularyInfo(
-                            userVocabId, wordId, word, phonetic, meaning, partOfSpeech,
-                            difficulty, mastery, studyCount, accuracy, lastStudied
-                    );
-
-                    // 查询例句（如果需要）
-                    if (request.isInclude_examples()) {
-                        String examplesSql = "SELECT example_sentence, translation, source " +
-                                "FROM word_examples WHERE word_id = ? LIMIT 5";
-                        List<Map<String, Object>> examples = jdbcTemplate.queryForList(examplesSql, wordId);
-
-                        for (Map<String, Object> example : examples) {
-                            String sentence = (String) example.get("example_sentence");
-                            String translation = (String) example.get("translation");
-                            String source = (String) example.get("source");
-
-                            vocabInfo.getExamples().add(new ExampleInfo(sentence, translation, source));
-                        }
-                    }
-
-                    // 查询统计信息（如果需要）
-                    if (request.isInclude_statistics()) {
-                        // 查询第一次学习时间
-                        String firstLearnedSql = "SELECT MIN(created_at) as first_learned " +
-                                "FROM review_items WHERE user_vocabulary_id = ?";
-                        List<Map<String, Object>> firstLearnedResult = jdbcTemplate.queryForList(firstLearnedSql, userVocabId);
-
-                        if (!firstLearnedResult.isEmpty() && firstLearnedResult.get(0).get("first_learned") != null) {
-                            LocalDateTime firstLearned = ((java.sql.Timestamp) firstLearnedResult.get(0).get("first_learned")).toLocalDateTime();
-                            vocabInfo.getStatistics().setFirst_learned(firstLearned);
-                        }
-
-                        // 查询学习会话次数
-                        String sessionsSql = "SELECT COUNT(DISTINCT review_session_id) as session_count " +
-                                "FROM review_items WHERE user_vocabulary_id = ?";
-                        List<Map<String, Object>> sessionsResult = jdbcTemplate.queryForList(sessionsSql, userVocabId);
-
-                        if (!sessionsResult.isEmpty()) {
-                            int sessionCount = ((Number) sessionsResult.get(0).get("session_count")).intValue();
-                            vocabInfo.getStatistics().setStudy_sessions(sessionCount);
-                        }
-
-                        // 设置正确和错误答案数
-                        vocabInfo.getStatistics().setCorrect_answers(correctCount);
-                        vocabInfo.getStatistics().setWrong_answers(wrongCount);
-                    }
-
-                    vocabularyList.add(vocabInfo);
-                }
-            }
-
-            if (vocabularyList.isEmpty()) {
-                Map<String, Object> details = new HashMap<>();
-                details.put("vocabularyIds", validVocabIds);
-                ErrorResponse errorResponse = new ErrorResponse("VOCABULARY_EXPORT_ERROR", "没有找到可导出的词汇", details);
-                printResponse(errorResponse);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
-            }
-
-            // 5. 生成导出文件内容
-            String fileContent = generateExportContent(vocabularyList, request.getFormat(),
-                    request.isInclude_examples(), request.isInclude_statistics());
-            byte[] fileBytes = fileContent.getBytes(StandardCharsets.UTF_8);
-
-            // 6. 生成文件名
+            printQueryResult("词汇验证结果: " + validVocabIds.size() + "条记录");
+
+            // 4. 词汇基本信息在写出时流式查询；例句和复习统计按本次导出的ID批量加载（最多500条）
+            String vocabSql = "SELECT uv.user_vocab_id as user_vocabulary_id, uv.word_id, uv.mastery_level as mastery, " +
+                    "uv.review_count as study_count, uv.last_reviewed_at as last_studied_at, " +
+                    "uv.word, uv.phonetic, w.part_of_speech, w.difficulty, " +
+                    "uv.definition as meaning " +
+                    "FROM user_vocabulary uv " +
+                    "LEFT JOIN words w ON uv.word_id = w.word_id " +
+                    "WHERE uv.user_vocab_id IN (" + placeholders + ") AND uv.user_id = ?";
+
+            // 每个词汇的答题统计：作答次数、正确次数、首次学习时间、复习会话数
+            Map<Long, List<Map<String, Object>>> reviewStats = relationBatchLoader.loadGrouped(
+                    "SELECT user_vocab_id, COUNT(*) as answer_count, " +
+                            "COALESCE(SUM(is_correct), 0) as correct_count, " +
+                            "MIN(created_at) as first_learned, COUNT(DISTINCT session_id) as session_count " +
+                            "FROM review_items WHERE user_vocab_id IN {ids} GROUP BY user_vocab_id",
+                    "user_vocab_id", validVocabIds);
+
+            Map<Long, List<Map<String, Object>>> examples = request.isInclude_examples()
+                    ? relationBatchLoader.loadGrouped(
+                            "SELECT word_id, example_sentence, translation, source FROM word_examples " +
+                                    "WHERE word_id IN {ids} ORDER BY word_id, order_index",
+                            "word_id", wordIdsByVocabId.values())
+                    : Collections.emptyMap();
+
+            VocabularyExport export = new VocabularyExport(vocabSql, params.toArray(), validVocabIds.size(),
+                    reviewStats, examples, request.isInclude_examples(), request.isInclude_statistics());
+
+            // 5. 生成文件名
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
             String extension = getFileExtension(request.getFormat());
             String filename = "vocabulary_" + timestamp + "." + extension;
-
-            // 7. 记录导出历史
             String exportId = "export_vocab_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
-            String insertHistorySql = "INSERT INTO sync_logs (user_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-            String entityIdsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_ARRAY(?)", String.class,
-                    String.join(",", validVocabIds.stream().map(String::valueOf).toArray(String[]::new))
-            );
-
-            Map<String, Object> exportDetails = new HashMap<>();
-            exportDetails.put("export_id", exportId);
-            exportDetails.put("format", request.getFormat());
-            exportDetails.put("item_count", vocabularyList.size());
-            exportDetails.put("filename", filename);
-            exportDetails.put("file_size", fileBytes.length);
-            exportDetails.put("include_examples", request.isInclude_examples());
-            exportDetails.put("include_statistics", request.isInclude_statistics());
-
-            String detailsJson = jdbcTemplate.queryForObject(
-                    "SELECT JSON_OBJECT(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", String.class,
-                    "export_id", exportId,
-                    "format", request.getFormat(),
-                    "item_count", vocabularyList.size(),
-                    "filename", filename,
-                    "file_size", fileBytes.length,
-                    "include_examples", request.isInclude_examples(),
-                    "include_statistics", request.isInclude_statistics()
-            );
-
-            jdbcTemplate.update(insertHistorySql,
-                    userId,
-                    "EXPORT",
-                    "VOCABULARY",
-                    entityIdsJson,
-                    "COMPLETED",
-                    detailsJson,
-                    LocalDateTime.now()
-            );
-
-            // 8. 准备文件响应
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(getMediaType(request.getFormat()));
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(fileBytes.length);
+
+            // 6. 同步时直接流式返回文件，异步时提交导出任务
+            ExportJobService.ExportJob job = new ExportJobService.ExportJob(
+                    userId, "VOCABULARY", exportId, filename, getMediaType(request.getFormat()), validVocabIds);
+            job.getDetails().put("format", request.getFormat());
+            job.getDetails().put("item_count", validVocabIds.size());
+            job.getDetails().put("include_examples", request.isInclude_examples());
+            job.getDetails().put("include_statistics", request.isInclude_statistics());
 
             // 打印返回信息
             Map<String, Object> responseInfo = new HashMap<>();
             responseInfo.put("filename", filename);
-            responseInfo.put("file_size", fileBytes.length);
             responseInfo.put("format", request.getFormat());
-            responseInfo.put("vocabulary_count", vocabularyList.size());
+            responseInfo.put("vocabulary_count", validVocabIds.size());
             responseInfo.put("include_examples", request.isInclude_examples());
             responseInfo.put("include_statistics", request.isInclude_statistics());
+            responseInfo.put("async", request.isAsync());
             printResponse(responseInfo);
 
-            return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+            return exportJobService.deliver(job, request.isAsync(),
+                    out -> writeExportContent(out, export, request.getFormat()));
 
         } catch (Exception e) {
             System.err.println("词汇导出过程中发生错误: " + e.getMessage());
@@ -500,219 +285,258 @@ public class ExportVocabulary {
         }
     }
 
-    // 生成导出内容
-    private String generateExportContent(List<VocabularyInfo> vocabularyList, String format,
-                                         boolean includeExamples, boolean includeStatistics) {
-        StringBuilder content = new StringBuilder();
+    /**
+     * 一次词汇导出的查询和预加载的关联数据
+     */
+    private static class VocabularyExport {
+        final String vocabSql;
+        final Object[] params;
+        final int count;
+        final Map<Long, List<Map<String, Object>>> reviewStats;
+        final Map<Long, List<Map<String, Object>>> examples;
+        final boolean includeExamples;
+        final boolean includeStatistics;
+
+        VocabularyExport(String vocabSql, Object[] params, int count,
+                         Map<Long, List<Map<String, Object>>> reviewStats,
+                         Map<Long, List<Map<String, Object>>> examples,
+                         boolean includeExamples, boolean includeStatistics) {
+            this.vocabSql = vocabSql;
+            this.params = params;
+            this.count = count;
+            this.reviewStats = reviewStats;
+            this.examples = examples;
+            this.includeExamples = includeExamples;
+            this.includeStatistics = includeStatistics;
+        }
+
+        Map<String, Object> statsOf(Map<String, Object> vocab) {
+            List<Map<String, Object>> stats = reviewStats.get(((Number) vocab.get("user_vocabulary_id")).longValue());
+            return stats != null && !stats.isEmpty() ? stats.get(0) : Collections.emptyMap();
+        }
+
+        List<Map<String, Object>> examplesOf(Map<String, Object> vocab) {
+            return examples.getOrDefault(((Number) vocab.get("word_id")).longValue(), Collections.emptyList());
+        }
+    }
+
+    private int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    // 正确率 = 正确次数 / 作答次数
+    private double accuracyOf(Map<String, Object> stats) {
+        int answerCount = intValue(stats.get("answer_count"));
+        return answerCount > 0 ? intValue(stats.get("correct_count")) * 100.0 / answerCount : 0.0;
+    }
+
+    // 逐条写出导出内容
+    private void writeExportContent(OutputStream out, VocabularyExport export, String format) throws IOException {
+        // 统计摘要在写出过程中累计
+        int[] masteredCount = {0};
+        long[] masterySum = {0};
+        double[] accuracySum = {0.0};
 
         if (format.equalsIgnoreCase("json")) {
             // JSON格式
-            Map<String, Object> exportData = new HashMap<>();
-            exportData.put("metadata", new HashMap<String, Object>() {{
-                put("exportedAt", LocalDateTime.now().toString());
-                put("totalItems", vocabularyList.size());
-                put("format", "json");
-                put("version", "1.0");
-            }});
-
-            List<Map<String, Object>> vocabJsonList = new ArrayList<>();
-            for (VocabularyInfo vocab : vocabularyList) {
-                Map<String, Object> vocabMap = new HashMap<>();
-                vocabMap.put("id", "vocab_" + vocab.getUser_vocabulary_id());
-                vocabMap.put("word", vocab.getWord());
-                vocabMap.put("phonetic", vocab.getPhonetic());
-                vocabMap.put("meaning", vocab.getMeaning());
-                vocabMap.put("partOfSpeech", vocab.getPart_of_speech());
-                vocabMap.put("difficulty", vocab.getDifficulty());
-                vocabMap.put("mastery", vocab.getMastery());
-                vocabMap.put("studyCount", vocab.getStudy_count());
-                vocabMap.put("accuracy", vocab.getAccuracy());
-                vocabMap.put("lastStudied", vocab.getLast_studied() != null ? vocab.getLast_studied().toString() : null);
-
-                if (includeExamples && !vocab.getExamples().isEmpty()) {
+            JsonGenerator json = exportStreamWriter.openJson(out);
+            json.writeStartObject();
+            json.writeObjectFieldStart("metadata");
+            json.writeStringField("exportedAt", LocalDateTime.now().toString());
+            json.writeNumberField("totalItems", export.count);
+            json.writeStringField("format", "json");
+            json.writeStringField("version", "1.0");
+            json.writeEndObject();
+
+            json.writeArrayFieldStart("vocabulary");
+            exportStreamWriter.streamRows(export.vocabSql, vocab -> {
+                Map<String, Object> stats = export.statsOf(vocab);
+
+                Map<String, Object> vocabMap = new LinkedHashMap<>();
+                vocabMap.put("id", "vocab_" + vocab.get("user_vocabulary_id"));
+                vocabMap.put("word", vocab.get("word"));
+                vocabMap.put("phonetic", vocab.get("phonetic"));
+                vocabMap.put("meaning", vocab.get("meaning"));
+                vocabMap.put("partOfSpeech", vocab.get("part_of_speech"));
+                vocabMap.put("difficulty", vocab.get("difficulty"));
+                vocabMap.put("mastery", intValue(vocab.get("mastery")));
+                vocabMap.put("studyCount", intValue(vocab.get("study_count")));
+                vocabMap.put("accuracy", accuracyOf(stats));
+                vocabMap.put("lastStudied", vocab.get("last_studied_at"));
+
+                if (export.includeExamples && !export.examplesOf(vocab).isEmpty()) {
                     List<Map<String, Object>> examplesList = new ArrayList<>();
-                    for (ExampleInfo example : vocab.getExamples()) {
-                        Map<String, Object> exampleMap = new HashMap<>();
-                        exampleMap.put("sentence", example.getSentence());
-                        exampleMap.put("translation", example.getTranslation());
-                        exampleMap.put("source", example.getSource());
+                    for (Map<String, Object> example : export.examplesOf(vocab)) {
+                        Map<String, Object> exampleMap = new LinkedHashMap<>();
+                        exampleMap.put("sentence", example.get("example_sentence"));
+                        exampleMap.put("translation", example.get("translation"));
+                        exampleMap.put("source", example.get("source"));
                         examplesList.add(exampleMap);
                     }
                     vocabMap.put("examples", examplesList);
                 }
 
-                if (includeStatistics) {
-                    Map<String, Object> statsMap = new HashMap<>();
-                    statsMap.put("firstLearned", vocab.getStatistics().getFirst_learned().toString());
-                    statsMap.put("studySessions", vocab.getStatistics().getStudy_sessions());
-                    statsMap.put("correctAnswers", vocab.getStatistics().getCorrect_answers());
-                    statsMap.put("wrongAnswers", vocab.getStatistics().getWrong_answers());
+                if (export.includeStatistics) {
+                    int answerCount = intValue(stats.get("answer_count"));
+                    int correctCount = intValue(stats.get("correct_count"));
+                    Map<String, Object> statsMap = new LinkedHashMap<>();
+                    statsMap.put("firstLearned", stats.get("first_learned"));
+                    statsMap.put("studySessions", intValue(stats.get("session_count")));
+                    statsMap.put("correctAnswers", correctCount);
+                    statsMap.put("wrongAnswers", answerCount - correctCount);
                     vocabMap.put("statistics", statsMap);
                 }
 
-                vocabJsonList.add(vocabMap);
-            }
+                exportStreamWriter.writeJsonObject(json, vocabMap);
+            }, export.params);
+            json.writeEndArray();
 
-            exportData.put("vocabulary", vocabJsonList);
-
-            // 简单JSON序列化
-            content.append("{\n");
-            content.append("  \"metadata\": {\n");
-            content.append("    \"exportedAt\": \"").append(LocalDateTime.now()).append("\",\n");
-            content.append("    \"totalItems\": ").append(vocabularyList.size()).append(",\n");
-            content.append("    \"format\": \"json\",\n");
-            content.append("    \"version\": \"1.0\"\n");
-            content.append("  },\n");
-            content.append("  \"vocabulary\": [\n");
-
-            for (int i = 0; i < vocabularyList.size(); i++) {
-                VocabularyInfo vocab = vocabularyList.get(i);
-                content.append("    {\n");
-                content.append("      \"id\": \"vocab_").append(vocab.getUser_vocabulary_id()).append("\",\n");
-                content.append("      \"word\": \"").append(escapeJson(vocab.getWord())).append("\",\n");
-                content.append("      \"phonetic\": \"").append(escapeJson(vocab.getPhonetic())).append("\",\n");
-                content.append("      \"meaning\": \"").append(escapeJson(vocab.getMeaning())).append("\",\n");
-                content.append("      \"partOfSpeech\": \"").append(escapeJson(vocab.getPart_of_speech())).append("\",\n");
-                content.append("      \"difficulty\": ").append(vocab.getDifficulty()).append(",\n");
-                content.append("      \"mastery\": ").append(vocab.getMastery()).append(",\n");
-                content.append("      \"studyCount\": ").append(vocab.getStudy_count()).append(",\n");
-                content.append("      \"accuracy\": ").append(vocab.getAccuracy()).append(",\n");
-                content.append("      \"lastStudied\": \"").append(vocab.getLast_studied() != null ? vocab.getLast_studied() : "").append("\"\n");
-                content.append("    }");
-                if (i < vocabularyList.size() - 1) content.append(",");
-                content.append("\n");
-            }
+            json.writeEndObject();
+            json.flush();
+            return;
+        }
 
-            content.append("  ]\n");
-            content.append("}");
+        Writer writer = exportStreamWriter.openWriter(out);
 
-        } else if (format.equalsIgnoreCase("csv")) {
+        if (format.equalsIgnoreCase("csv")) {
             // CSV格式
-            content.append("单词,音标,释义,词性,难度等级,掌握程度,学习次数,正确率,最后学习时间\n");
-            for (VocabularyInfo vocab : vocabularyList) {
-                content.append(escapeCsv(vocab.getWord())).append(",");
-                content.append(escapeCsv(vocab.getPhonetic())).append(",");
-                content.append(escapeCsv(vocab.getMeaning())).append(",");
-                content.append(escapeCsv(vocab.getPart_of_speech())).append(",");
-                content.append(vocab.getDifficulty()).append(",");
-                content.append(vocab.getMastery()).append(",");
-                content.append(vocab.getStudy_count()).append(",");
-                content.append(String.format("%.2f", vocab.getAccuracy())).append(",");
-                content.append(escapeCsv(vocab.getLast_studied() != null ? vocab.getLast_studied().toString() : "")).append("\n");
-            }
+            writer.write("单词,音标,释义,词性,难度等级,掌握程度,学习次数,正确率,最后学习时间\n");
+
+            // 例句工作表在词汇之后输出，这里记下单词和例句的对应关系（数量受导出上限约束）
+            List<Object[]> wordExamples = new ArrayList<>();
+            exportStreamWriter.streamRows(export.vocabSql, vocab -> {
+                double accuracy = accuracyOf(export.statsOf(vocab));
+                int mastery = intValue(vocab.get("mastery"));
+                if (mastery >= 80) {
+                    masteredCount[0]++;
+                }
+                accuracySum[0] += accuracy;
+
+                exportStreamWriter.writeCsvRow(writer, Arrays.asList(
+                        vocab.get("word"),
+                        vocab.get("phonetic"),
+                        vocab.get("meaning"),
+                        vocab.get("part_of_speech"),
+                        vocab.get("difficulty"),
+                        mastery,
+                        intValue(vocab.get("study_count")),
+                        String.format("%.2f", accuracy),
+                        vocab.get("last_studied_at")
+                ));
+
+                if (export.includeExamples) {
+                    wordExamples.add(new Object[]{vocab.get("word"), export.examplesOf(vocab)});
+                }
+            }, export.params);
 
             // 如果包含例句，添加例句工作表
-            if (includeExamples) {
-                content.append("\n\n=== 例句 ===\n");
-                content.append("单词,例句,翻译,来源\n");
-                for (VocabularyInfo vocab : vocabularyList) {
-                    for (ExampleInfo example : vocab.getExamples()) {
-                        content.append(escapeCsv(vocab.getWord())).append(",");
-                        content.append(escapeCsv(example.getSentence())).append(",");
-                        content.append(escapeCsv(example.getTranslation())).append(",");
-                        content.append(escapeCsv(example.getSource())).append("\n");
+            if (export.includeExamples) {
+                writer.write("\n\n=== 例句 ===\n");
+                writer.write("单词,例句,翻译,来源\n");
+                for (Object[] wordExample : wordExamples) {
+                    @SuppressWarnings("unchecked")
+                    List<Map<String, Object>> sentences = (List<Map<String, Object>>) wordExample[1];
+                    for (Map<String, Object> example : sentences) {
+                        exportStreamWriter.writeCsvRow(writer, Arrays.asList(
+                                wordExample[0],
+                                example.get("example_sentence"),
+                                example.get("translation"),
+                                example.get("source")
+                        ));
                     }
                 }
             }
 
             // 如果包含统计信息，添加统计工作表
-            if (includeStatistics) {
-                content.append("\n\n=== 统计信息 ===\n");
-                content.append("统计项,数值,说明\n");
-                content.append("总词汇数,").append(vocabularyList.size()).append(",词汇总数\n");
+            if (export.includeStatistics) {
+                writer.write("\n\n=== 统计信息 ===\n");
+                writer.write("统计项,数值,说明\n");
+                writer.write("总词汇数," + export.count + ",词汇总数\n");
 
-                // 计算已掌握词汇数（掌握度80%以上）
-                long masteredCount = vocabularyList.stream()
-                        .filter(v -> v.getMastery() >= 80)
-                        .count();
-                content.append("已掌握词汇,").append(masteredCount).append(",掌握度80%以上的词汇数\n");
+                // 已掌握词汇数（掌握度80%以上）
+                writer.write("已掌握词汇," + masteredCount[0] + ",掌握度80%以上的词汇数\n");
 
                 // 计算学习天数（模拟）
                 int studyDays = (int) (Math.random() * 30) + 1;
-                content.append("学习天数,").append(studyDays).append(",累计学习天数\n");
+                writer.write("学习天数," + studyDays + ",累计学习天数\n");
 
-                // 计算平均正确率
-                double avgAccuracy = vocabularyList.stream()
-                        .mapToDouble(VocabularyInfo::getAccuracy)
-                        .average()
-                        .orElse(0.0);
-                content.append("平均正确率,").append(String.format("%.2f", avgAccuracy)).append(",整体答题正确率\n");
+                // 平均正确率
+                double avgAccuracy = export.count > 0 ? accuracySum[0] / export.count : 0.0;
+                writer.write("平均正确率," + String.format("%.2f", avgAccuracy) + ",整体答题正确率\n");
 
                 // 最长连续学习（模拟）
                 int longestStreak = (int) (Math.random() * 15) + 1;
-                content.append("最长连续学习,").append(longestStreak).append(",连续学习天数\n");
+                writer.write("最长连续学习," + longestStreak + ",连续学习天数\n");
             }
 
         } else {
             // 默认文本格式（用于pdf和txt）
-            content.append("词汇导出报告\n");
-            content.append("============\n\n");
-            content.append("导出时间: ").append(LocalDateTime.now()).append("\n");
-            content.append("词汇数量: ").append(vocabularyList.size()).append("\n");
-            content.append("导出格式: ").append(format).append("\n\n");
-
-            content.append("词汇列表:\n");
-            content.append("--------\n");
+            writer.write("词汇导出报告\n");
+            writer.write("============\n\n");
+            writer.write("导出时间: " + LocalDateTime.now() + "\n");
+            writer.write("词汇数量: " + export.count + "\n");
+            writer.write("导出格式: " + format + "\n\n");
+
+            writer.write("词汇列表:\n");
+            writer.write("--------\n");
+
+            int[] index = {0};
+            exportStreamWriter.streamRows(export.vocabSql, vocab -> {
+                double accuracy = accuracyOf(export.statsOf(vocab));
+                int mastery = intValue(vocab.get("mastery"));
+                if (mastery >= 80) {
+                    masteredCount[0]++;
+                }
+                masterySum[0] += mastery;
+                accuracySum[0] += accuracy;
 
-            for (int i = 0; i < vocabularyList.size(); i++) {
-                VocabularyInfo vocab = vocabularyList.get(i);
-                content.append(i + 1).append(". ").append(vocab.getWord()).append(" ");
+                writer.write(++index[0] + ". " + vocab.get("word") + " ");
 
-                if (vocab.getPhonetic() != null && !vocab.getPhonetic().isEmpty()) {
-                    content.append("[").append(vocab.getPhonetic()).append("] ");
+                String phonetic = (String) vocab.get("phonetic");
+                if (phonetic != null && !phonetic.isEmpty()) {
+                    writer.write("[" + phonetic + "] ");
                 }
 
-                if (vocab.getPart_of_speech() != null && !vocab.getPart_of_speech().isEmpty()) {
-                    content.append("(").append(vocab.getPart_of_speech()).append(") ");
+                String partOfSpeech = (String) vocab.get("part_of_speech");
+                if (partOfSpeech != null && !partOfSpeech.isEmpty()) {
+                    writer.write("(" + partOfSpeech + ") ");
                 }
 
-                content.append("\n");
-                content.append("   释义: ").append(vocab.getMeaning()).append("\n");
-                content.append("   难度: ").append(vocab.getDifficulty()).append("级 | ");
-                content.append("掌握度: ").append(vocab.getMastery()).append("% | ");
-                content.append("学习次数: ").append(vocab.getStudy_count()).append(" | ");
-                content.append("正确率: ").append(String.format("%.2f", vocab.getAccuracy())).append("%\n");
+                writer.write("\n");
+                writer.write("   释义: " + exportStreamWriter.formatValue(vocab.get("meaning")) + "\n");
+                writer.write("   难度: " + exportStreamWriter.formatValue(vocab.get("difficulty")) + "级 | ");
+                writer.write("掌握度: " + mastery + "% | ");
+                writer.write("学习次数: " + intValue(vocab.get("study_count")) + " | ");
+                writer.write("正确率: " + String.format("%.2f", accuracy) + "%\n");
 
-                if (vocab.getLast_studied() != null) {
-                    content.append("   最后学习: ").append(vocab.getLast_studied()).append("\n");
+                if (vocab.get("last_studied_at") != null) {
+                    writer.write("   最后学习: " + exportStreamWriter.formatValue(vocab.get("last_studied_at")) + "\n");
                 }
 
                 // 添加例句
-                if (includeExamples && !vocab.getExamples().isEmpty()) {
-                    content.append("   例句:\n");
-                    for (ExampleInfo example : vocab.getExamples()) {
-                        content.append("     - ").append(example.getSentence()).append("\n");
-                        content.append("       ").append(example.getTranslation()).append("\n");
+                if (export.includeExamples && !export.examplesOf(vocab).isEmpty()) {
+                    writer.write("   例句:\n");
+                    for (Map<String, Object> example : export.examplesOf(vocab)) {
+                        writer.write("     - " + example.get("example_sentence") + "\n");
+                        writer.write("       " + exportStreamWriter.formatValue(example.get("translation")) + "\n");
                     }
                 }
 
-                content.append("\n");
-            }
+                writer.write("\n");
+            }, export.params);
 
             // 添加统计信息
-            if (includeStatistics) {
-                content.append("\n统计摘要:\n");
-                content.append("--------\n");
-
-                // 计算已掌握词汇数
-                long masteredCount = vocabularyList.stream()
-                        .filter(v -> v.getMastery() >= 80)
-                        .count();
-
-                // 计算平均正确率
-                double avgAccuracy = vocabularyList.stream()
-                        .mapToDouble(VocabularyInfo::getAccuracy)
-                        .average()
-                        .orElse(0.0);
-
-                content.append("总词汇数: ").append(vocabularyList.size()).append("\n");
-                content.append("已掌握词汇: ").append(masteredCount).append(" (").append(String.format("%.1f", masteredCount * 100.0 / vocabularyList.size())).append("%)\n");
-                content.append("平均掌握度: ").append(String.format("%.1f", vocabularyList.stream().mapToInt(VocabularyInfo::getMastery).average().orElse(0.0))).append("%\n");
-                content.append("平均正确率: ").append(String.format("%.2f", avgAccuracy)).append("%\n");
+            if (export.includeStatistics && export.count > 0) {
+                writer.write("\n统计摘要:\n");
+                writer.write("--------\n");
+                writer.write("总词汇数: " + export.count + "\n");
+                writer.write("已掌握词汇: " + masteredCount[0] + " (" + String.format("%.1f", masteredCount[0] * 100.0 / export.count) + "%)\n");
+                writer.write("平均掌握度: " + String.format("%.1f", masterySum[0] * 1.0 / export.count) + "%\n");
+                writer.write("平均正确率: " + String.format("%.2f", accuracySum[0] / export.count) + "%\n");
             }
         }
 
-        return content.toString();
+        writer.flush();
     }
 
     // 获取文件扩展名
@@ -736,25 +560,4 @@ public class ExportVocabulary {
             default: return MediaType.TEXT_PLAIN;
         }
     }
-
-    // 转义JSON字符串
-    private String escapeJson(Object value) {
-        if (value == null) return "";
-        return value.toString()
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
-
-    // 转义CSV字符串
-    private String escapeCsv(Object value) {
-        if (value == null) return "";
-        String str = value.toString();
-        if (str.contains(",") || str.contains("\"") || str.contains("\n")) {
-            return "\"" + str.replace("\"", "\"\"") + "\"";
-        }
-        return str;
-    }
-}
\ No newline at end of file
+}
@@ -11,6 +11,7 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.time.format.DateTimeFormatter;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/export")
@@ -19,6 +20,23 @@ public class GetExportHistory {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    // 排序字段 -> sync_logs 列
+    private static final Map<String, String> SORT_COLUMNS = new HashMap<>();
+
+    static {
+        SORT_COLUMNS.put("createdAt", "created_at");
+        SORT_COLUMNS.put("type", "entity_type");
+        SORT_COLUMNS.put("format", "JSON_UNQUOTE(JSON_EXTRACT(details, '$.format'))");
+        SORT_COLUMNS.put("status", "status");
+        SORT_COLUMNS.put("itemCount", "CAST(JSON_EXTRACT(details, '$.item_count') AS UNSIGNED)");
+    }
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到导出历史查询请求 ===");
@@ -46,6 +64,8 @@ public class GetExportHistory {
         private int page_size = 20;
         private String sort_by = "createdAt";
         private String sort_order = "desc";
+        private String export_id;
+        private String status;
 
         public int getPage() { return page; }
         public void setPage(int page) { this.page = page; }
@@ -58,6 +78,12 @@ public class GetExportHistory {
 
         public String getSort_order() { return sort_order; }
         public void setSort_order(String sort_order) { this.sort_order = sort_order; }
+
+        public String getExport_id() { return export_id; }
+        public void setExport_id(String export_id) { this.export_id = export_id; }
+
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
     }
 
     // 响应DTO
@@ -107,6 +133,7 @@ public class GetExportHistory {
         private int userId;
         private LocalDateTime createdAt;
         private String status;
+        private String downloadUrl;
         private Map<String, Object> metadata;
 
         // 构造函数
@@ -157,6 +184,9 @@ public class GetExportHistory {
         public String getStatus() { return status; }
         public void setStatus(String status) { this.status = status; }
 
+        public String getDownloadUrl() { return downloadUrl; }
+        public void setDownloadUrl(String downloadUrl) { this.downloadUrl = downloadUrl; }
+
         public Map<String, Object> getMetadata() { return metadata; }
         public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
     }
@@ -239,6 +269,8 @@ public class GetExportHistory {
                                               @RequestParam(required = false, defaultValue = "20") int page_size,
                                               @RequestParam(required = false, defaultValue = "createdAt") String sort_by,
                                               @RequestParam(required = false, defaultValue = "desc") String sort_order,
+                                              @RequestParam(required = false) String export_id,
+                                              @RequestParam(required = false) String status,
                                               @RequestHeader(value = "Authorization", required = false) String authHeader) {
 
         // 构建请求对象
@@ -247,6 +279,8 @@ public class GetExportHistory {
         request.setPage_size(page_size);
         request.setSort_by(sort_by);
         request.setSort_order(sort_order);
+        request.setExport_id(export_id);
+        request.setStatus(status);
 
         // 打印接收到的请求
         printRequest(request);
@@ -264,8 +298,7 @@ public class GetExportHistory {
             String token = authHeader.substring(7);
 
             // 验证token并获取用户ID
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 Map<String, Object> details = new HashMap<>();
@@ -287,11 +320,7 @@ public class GetExportHistory {
             }
 
             // 验证排序字段
-            Set<String> validSortFields = new HashSet<>(Arrays.asList(
-                    "createdAt", "type", "format", "status", "itemCount"
-            ));
-
-            if (!validSortFields.contains(sort_by)) {
+            if (!SORT_COLUMNS.containsKey(sort_by)) {
                 sort_by = "createdAt";
             }
 
@@ -302,76 +331,76 @@ public class GetExportHistory {
             // 3. 计算分页参数
             int offset = (page - 1) * page_size;
 
-            // 4. 查询总记录数
-            String countSql = "SELECT COUNT(*) as total FROM sync_logs " +
-                    "WHERE user_id = ? AND operation_type = 'EXPORT'";
-            int totalItems = jdbcTemplate.queryForObject(countSql, Integer.class, userId);
+            // 4. 查询条件：可按 export_id 查询单个导出任务的状态（异步导出轮询），或按状态筛选
+            StringBuilder where = new StringBuilder("WHERE user_id = ? AND operation_type = 'EXPORT'");
+            List<Object> params = new ArrayList<>();
+            params.add(userId);
+            if (export_id != null && !export_id.trim().isEmpty()) {
+                where.append(" AND JSON_UNQUOTE(JSON_EXTRACT(details, '$.export_id')) = ?");
+                params.add(export_id.trim());
+            }
+            if (status != null && !status.trim().isEmpty()) {
+                where.append(" AND status = ?");
+                params.add(status.trim().toUpperCase());
+            }
+
+            // 5. 查询总记录数
+            String countSql = "SELECT COUNT(*) as total FROM sync_logs " + where;
+            int totalItems = jdbcTemplate.queryForObject(countSql, Integer.class, params.toArray());
 
-            // 5. 查询导出历史记录
+            // 6. 查询导出历史记录
             String historySql = "SELECT log_id, operation_type, entity_type, entity_ids, " +
-                    "status, details, created_at FROM sync_logs " +
-                    "WHERE user_id = ? AND operation_type = 'EXPORT' " +
-                    "ORDER BY " + sort_by + " " + sort_order + " " +
+                    "status, details, created_at FROM sync_logs " + where + " " +
+                    "ORDER BY " + SORT_COLUMNS.get(sort_by) + " " + sort_order + ", log_id " + sort_order + " " +
                     "LIMIT ? OFFSET ?";
 
-            List<Map<String, Object>> historyResults = jdbcTemplate.queryForList(
-                    historySql, userId, page_size, offset
-            );
+            List<Object> pageParams = new ArrayList<>(params);
+            pageParams.add(page_size);
+            pageParams.add(offset);
+            List<Map<String, Object>> historyResults = jdbcTemplate.queryForList(historySql, pageParams.toArray());
 
             printQueryResult("导出历史查询结果: " + historyResults.size() + "条记录");
 
-            // 6. 转换结果
+            // 7. 转换结果
             List<ExportHistoryItem> historyItems = new ArrayList<>();
 
             for (Map<String, Object> record : historyResults) {
-                int logId = (int) record.get("log_id");
+                int logId = ((Number) record.get("log_id")).intValue();
                 String entityType = (String) record.get("entity_type");
-                String status = (String) record.get("status");
+                String recordStatus = (String) record.get("status");
                 LocalDateTime createdAt = ((java.sql.Timestamp) record.get("created_at")).toLocalDateTime();
 
                 // 解析details字段
-                Map<String, Object> details = new HashMap<>();
-                String detailsJson = (String) record.get("details");
-
-                // 简单解析details JSON（实际项目中应使用JSON库）
-                if (detailsJson != null && detailsJson.startsWith("{")) {
-                    // 移除花括号并分割键值对
-                    String content = detailsJson.substring(1, detailsJson.length() - 1);
-                    String[] pairs = content.split(",");
-
-                    for (String pair : pairs) {
-                        String[] keyValue = pair.split(":");
-                        if (keyValue.length == 2) {
-                            String key = keyValue[0].trim().replace("\"", "");
-                            String value = keyValue[1].trim().replace("\"", "");
-                            details.put(key, value);
-                        }
-                    }
-                }
+                Map<String, Object> details = exportJobService.parseDetails(record.get("details"));
 
                 // 从details中提取信息
-                String exportId = (String) details.getOrDefault("export_id", "export_" + logId);
-                String format = (String) details.getOrDefault("format", "unknown");
+                String exportId = details.getOrDefault("export_id", "export_" + logId).toString();
+                String format = details.getOrDefault("format", "unknown").toString();
                 int itemCount = Integer.parseInt(details.getOrDefault("item_count", "0").toString());
-                String filename = (String) details.getOrDefault("filename", "unknown");
-                String fileSize = (String) details.getOrDefault("file_size", "0");
+                String filename = details.getOrDefault("filename", "unknown").toString();
+                String fileSize = details.getOrDefault("file_size", "0").toString();
                 boolean isBackup = Boolean.parseBoolean(details.getOrDefault("is_backup", "false").toString());
 
                 ExportHistoryItem item = new ExportHistoryItem(
                         exportId, entityType, format, itemCount, filename,
-                        fileSize, isBackup, userId, createdAt, status
+                        fileSize, isBackup, userId, createdAt, recordStatus
                 );
 
+                // 异步导出完成且文件仍在保留期内时提供下载地址
+                if (ExportJobService.COMPLETED.equals(recordStatus) && exportJobService.spoolFile(details) != null) {
+                    item.setDownloadUrl(exportJobService.downloadUrl(exportId));
+                }
+
                 // 添加metadata
                 item.setMetadata(details);
 
                 historyItems.add(item);
             }
 
-            // 7. 构建分页信息
+            // 8. 构建分页信息
             PaginationInfo pagination = new PaginationInfo(page, page_size, totalItems);
 
-            // 8. 构建响应数据
+            // 9. 构建响应数据
             ExportHistoryData historyData = new ExportHistoryData(historyItems, pagination);
             GetExportHistoryResponse response = new GetExportHistoryResponse(historyData);
 
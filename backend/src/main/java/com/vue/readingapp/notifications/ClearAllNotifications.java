@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationPublisher;
 
 @RestController
 @RequestMapping("/api/v1/notifications")
@@ -16,6 +18,12 @@ public class ClearAllNotifications {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationPublisher notificationPublisher;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到清除所有通知请求 ===");
@@ -82,8 +90,7 @@ public class ClearAllNotifications {
             String token = authHeader.substring(7);
 
             // 2. 根据token获取用户ID
-            String getUserSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(getUserSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -114,6 +121,8 @@ public class ClearAllNotifications {
             printQueryResult("删除行数: " + deletedRows);
 
             if (deletedRows > 0) {
+                notificationPublisher.cleared(userId);
+
                 LocalDateTime now = LocalDateTime.now();
                 DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
                 String formattedNow = now.format(formatter) + "Z";
@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationPublisher;
 
 @RestController
 @RequestMapping("/api/v1/notifications")
@@ -16,6 +18,12 @@ public class MarkAsRead {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationPublisher notificationPublisher;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到标记通知为已读请求 (MarkAsRead) ===");
@@ -91,8 +99,7 @@ public class MarkAsRead {
             String token = authHeader.substring(7);
 
             // 2. 根据token获取用户ID
-            String getUserSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(getUserSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -148,12 +155,15 @@ public class MarkAsRead {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
             String formattedNow = now.format(formatter) + "Z";
 
-            String updateSql = "UPDATE notifications SET is_read = true, read_at = ? WHERE notification_id = ? AND user_id = ?";
+            // 只更新仍为未读的通知：并发或重复请求只有一个会更新成功，未读数只减一次
+            String updateSql = "UPDATE notifications SET is_read = true, read_at = ? WHERE notification_id = ? AND user_id = ? AND is_read = false";
             int updatedRows = jdbcTemplate.update(updateSql, now, notificationIdInt, userId);
 
             printQueryResult("更新行数: " + updatedRows);
 
             if (updatedRows > 0) {
+                notificationPublisher.read(userId, Collections.singletonList(notificationIdInt), updatedRows);
+
                 MarkAsReadResponse response = new MarkAsReadResponse(
                         true,
                         "通知已标记为已读",
@@ -166,8 +176,9 @@ public class MarkAsRead {
 
                 return ResponseEntity.ok(response);
             } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
-                        new MarkAsReadResponse(false, "更新通知状态失败", request.getNotificationId(), null)
+                // 检查之后已被其他请求标记为已读
+                return ResponseEntity.ok(
+                        new MarkAsReadResponse(true, "通知已经是已读状态", request.getNotificationId(), null)
                 );
             }
 
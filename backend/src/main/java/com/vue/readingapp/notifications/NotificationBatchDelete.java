@@ -6,6 +6,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationPublisher;
 
 @RestController
 @RequestMapping("/api/v1/notifications")
@@ -14,6 +16,12 @@ public class NotificationBatchDelete {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationPublisher notificationPublisher;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到批量删除通知请求 ===");
@@ -110,8 +118,7 @@ public class NotificationBatchDelete {
             String token = authHeader.substring(7);
 
             // 2. 根据token获取用户ID
-            String getUserSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(getUserSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -167,6 +174,11 @@ public class NotificationBatchDelete {
 
             printQueryResult("删除行数: " + deletedRows);
 
+            // 被删除的通知中有多少未读无法从删除结果得知，由各节点重新查询未读数
+            if (deletedRows > 0) {
+                notificationPublisher.deleted(userId, notificationIdInts, null);
+            }
+
             // 7. 创建响应
             BatchDeleteResponse response = new BatchDeleteResponse(
                     true,
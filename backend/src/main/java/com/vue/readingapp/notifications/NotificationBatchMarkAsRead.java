@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationPublisher;
 
 @RestController
 @RequestMapping("/api/v1/notifications")
@@ -16,6 +18,12 @@ public class NotificationBatchMarkAsRead {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationPublisher notificationPublisher;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到批量标记通知为已读请求 ===");
@@ -112,8 +120,7 @@ public class NotificationBatchMarkAsRead {
             String token = authHeader.substring(7);
 
             // 2. 根据token获取用户ID
-            String getUserSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(getUserSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -174,6 +181,10 @@ public class NotificationBatchMarkAsRead {
 
             printQueryResult("更新行数: " + updatedRows);
 
+            if (updatedRows > 0) {
+                notificationPublisher.read(userId, notificationIdInts, updatedRows);
+            }
+
             // 7. 创建响应
             BatchMarkAsReadResponse response = new BatchMarkAsReadResponse(
                     true,
@@ -6,6 +6,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationPublisher;
 
 @RestController
 @RequestMapping("/api/v1/notifications")
@@ -14,6 +16,12 @@ public class NotificationDelete {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationPublisher notificationPublisher;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到删除通知请求 ===");
@@ -88,8 +96,7 @@ public class NotificationDelete {
             String token = authHeader.substring(7);
 
             // 2. 根据token获取用户ID
-            String getUserSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(getUserSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -115,7 +122,7 @@ public class NotificationDelete {
             }
 
             // 4. 验证通知是否存在且属于当前用户
-            String checkNotificationSql = "SELECT notification_id FROM notifications WHERE notification_id = ? AND user_id = ?";
+            String checkNotificationSql = "SELECT notification_id, is_read FROM notifications WHERE notification_id = ? AND user_id = ?";
             List<Map<String, Object>> notifications = jdbcTemplate.queryForList(checkNotificationSql, notificationIdInt, userId);
 
             if (notifications.isEmpty()) {
@@ -131,6 +138,11 @@ public class NotificationDelete {
             printQueryResult("删除行数: " + deletedRows);
 
             if (deletedRows > 0) {
+                Object isRead = notifications.get(0).get("is_read");
+                boolean wasUnread = isRead == null || Boolean.FALSE.equals(isRead)
+                        || (isRead instanceof Number && ((Number) isRead).intValue() == 0);
+                notificationPublisher.deleted(userId, Collections.singletonList(notificationIdInt), wasUnread ? 1 : 0);
+
                 DeleteNotificationResponse response = new DeleteNotificationResponse(
                         true,
                         "通知删除成功",
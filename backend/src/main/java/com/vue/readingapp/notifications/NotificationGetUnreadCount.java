@@ -3,16 +3,26 @@ package com.vue.readingapp.notifications;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
-
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationUnreadCounter;
+
+/**
+ * 获取未读通知数量
+ *
+ * 未读数由 NotificationUnreadCounter 在内存中维护，不再每次执行 COUNT(*)；
+ * 客户端可以改为订阅 /api/v1/notifications/stream，由服务端推送未读数变化，不再轮询本接口。
+ */
 @RestController
 @RequestMapping("/api/v1/notifications")
 public class NotificationGetUnreadCount {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationUnreadCounter unreadCounter;
 
     // 打印接收到的请求
     private void printRequest(Object request) {
@@ -75,8 +85,7 @@ public class NotificationGetUnreadCount {
             String token = authHeader.substring(7);
 
             // 2. 根据token获取用户ID
-            String getUserSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(getUserSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -88,9 +97,7 @@ public class NotificationGetUnreadCount {
             Integer userId = (Integer) session.get("user_id");
 
             // 3. 查询未读通知数量
-            String countSql = "SELECT COUNT(*) as unread_count FROM notifications WHERE user_id = ? AND is_read = false";
-            Map<String, Object> countResult = jdbcTemplate.queryForMap(countSql, userId);
-            long unreadCount = ((Number) countResult.get("unread_count")).longValue();
+            long unreadCount = unreadCounter.get(userId);
 
             printQueryResult("未读通知数量: " + unreadCount);
 
@@ -0,0 +1,69 @@
+package com.vue.readingapp.notifications;
+
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.notifications.stream.NotificationStreamHub;
+
+/**
+ * 通知推送流（Server-Sent Events）
+ *
+ * 连接建立后先推送一次 unread-count 事件，之后按通知变化推送：
+ *   - notification：新通知（data 中含通知内容和最新未读数）；
+ *   - read：通知被标记为已读；
+ *   - deleted：通知被删除。
+ * 浏览器的 EventSource 不能设置请求头，因此除 Authorization 头外也接受 token 查询参数。
+ */
+@RestController
+@RequestMapping("/api/v1/notifications")
+public class NotificationStream {
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private NotificationStreamHub streamHub;
+
+    // 打印接收到的请求
+    private void printRequest(Object request) {
+        System.out.println("=== 收到通知推送流连接请求 ===");
+        System.out.println("请求数据: " + request);
+        System.out.println("===========================");
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<SseEmitter> stream(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestParam(value = "token", required = false) String tokenParam) {
+
+        printRequest("建立通知推送流");
+
+        // 1. 验证认证信息
+        String token = null;
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            token = authHeader.substring(7);
+        } else if (tokenParam != null && !tokenParam.trim().isEmpty()) {
+            token = tokenParam.trim();
+        }
+        if (token == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        // 2. 根据token获取用户ID
+        List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
+        if (sessions.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Integer userId = (Integer) sessions.get(0).get("user_id");
+
+        // 3. 建立连接，关闭代理缓冲以便事件即时送达
+        return ResponseEntity.ok()
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(streamHub.connect(userId));
+    }
+}
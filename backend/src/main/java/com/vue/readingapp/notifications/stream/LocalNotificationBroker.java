@@ -0,0 +1,35 @@
+package com.vue.readingapp.notifications.stream;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的通知事件分发（单节点部署）
+ *
+ * 在发布线程中直接调用监听器，监听器负责把耗时的推送转到自己的线程。
+ */
+@Component
+public class LocalNotificationBroker implements NotificationBroker {
+
+    private final List<Consumer<NotificationEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(NotificationEvent event) {
+        for (Consumer<NotificationEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Notification listener failed for " + event + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<NotificationEvent> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,24 @@
+package com.vue.readingapp.notifications.stream;
+
+import java.util.function.Consumer;
+
+/**
+ * 通知事件的分发通道
+ *
+ * 目前只有进程内的 LocalNotificationBroker，只适用于单节点部署。
+ * 多节点部署需要另外实现（例如基于 Redis Pub/Sub、MQ）并替换 LocalNotificationBroker：
+ * publish 把事件发到共享通道，各节点收到后（包括发布者自己）调用已注册的监听器，
+ * 这样用户连在哪个节点上都能收到推送，各节点的未读计数也保持一致。
+ */
+public interface NotificationBroker {
+
+    /**
+     * 发布事件，不能阻塞调用方太久（调用方是处理 HTTP 请求的线程）
+     */
+    void publish(NotificationEvent event);
+
+    /**
+     * 注册本节点的事件监听器
+     */
+    void subscribe(Consumer<NotificationEvent> listener);
+}
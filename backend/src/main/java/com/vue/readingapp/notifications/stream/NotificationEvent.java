@@ -0,0 +1,63 @@
+package com.vue.readingapp.notifications.stream;
+
+import java.util.List;
+
+/**
+ * 通知变化事件
+ *
+ * 由通知相关接口在写库成功后发布，经 NotificationBroker 分发到所有节点：
+ * 各节点据此调整本地的未读计数，并推送给该用户在本节点上的 SSE 连接。
+ * 未读数的变化用以下三种方式之一描述：
+ *   - unreadDelta：增量（新建 +1，标记已读 -n）；
+ *   - unreadCount：绝对值（全部已读、清空后为 0）；
+ *   - resync：变化量未知（批量删除），各节点丢弃缓存的计数，下次使用时重新查询。
+ */
+public class NotificationEvent {
+
+    public static final String CREATED = "notification";
+    public static final String READ = "read";
+    public static final String DELETED = "deleted";
+
+    private String type;
+    private int userId;
+    private int unreadDelta;
+    private Integer unreadCount;
+    private boolean resync;
+    private Object notification;
+    private List<Integer> notificationIds;
+
+    public NotificationEvent() {
+    }
+
+    public NotificationEvent(String type, int userId) {
+        this.type = type;
+        this.userId = userId;
+    }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public int getUserId() { return userId; }
+    public void setUserId(int userId) { this.userId = userId; }
+
+    public int getUnreadDelta() { return unreadDelta; }
+    public void setUnreadDelta(int unreadDelta) { this.unreadDelta = unreadDelta; }
+
+    public Integer getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(Integer unreadCount) { this.unreadCount = unreadCount; }
+
+    public boolean isResync() { return resync; }
+    public void setResync(boolean resync) { this.resync = resync; }
+
+    public Object getNotification() { return notification; }
+    public void setNotification(Object notification) { this.notification = notification; }
+
+    public List<Integer> getNotificationIds() { return notificationIds; }
+    public void setNotificationIds(List<Integer> notificationIds) { this.notificationIds = notificationIds; }
+
+    @Override
+    public String toString() {
+        return "NotificationEvent{type=" + type + ", userId=" + userId + ", unreadDelta=" + unreadDelta
+                + ", unreadCount=" + unreadCount + ", resync=" + resync + "}";
+    }
+}
@@ -0,0 +1,83 @@
+package com.vue.readingapp.notifications.stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 通知接口在写库成功后调用，把变化作为 NotificationEvent 发布出去
+ *
+ * 发布失败只记录日志，不影响接口本身的结果（未读计数会在缓存过期后自动纠正）。
+ */
+@Component
+public class NotificationPublisher {
+
+    @Autowired
+    private NotificationBroker broker;
+
+    /**
+     * 新建了一条未读通知
+     */
+    public void created(int userId, Object notification) {
+        NotificationEvent event = new NotificationEvent(NotificationEvent.CREATED, userId);
+        event.setUnreadDelta(1);
+        event.setNotification(notification);
+        publish(event);
+    }
+
+    /**
+     * 若干通知被标记为已读
+     *
+     * @param markedCount 实际从未读变为已读的条数
+     */
+    public void read(int userId, List<Integer> notificationIds, int markedCount) {
+        NotificationEvent event = new NotificationEvent(NotificationEvent.READ, userId);
+        event.setUnreadDelta(-markedCount);
+        event.setNotificationIds(notificationIds);
+        publish(event);
+    }
+
+    /**
+     * 全部通知已读
+     */
+    public void allRead(int userId) {
+        NotificationEvent event = new NotificationEvent(NotificationEvent.READ, userId);
+        event.setUnreadCount(0);
+        publish(event);
+    }
+
+    /**
+     * 删除了若干通知
+     *
+     * @param unreadRemoved 被删除的未读通知数；为 null 表示未知，各节点重新查询
+     */
+    public void deleted(int userId, List<Integer> notificationIds, Integer unreadRemoved) {
+        NotificationEvent event = new NotificationEvent(NotificationEvent.DELETED, userId);
+        if (unreadRemoved == null) {
+            event.setResync(true);
+        } else {
+            event.setUnreadDelta(-unreadRemoved);
+        }
+        event.setNotificationIds(notificationIds);
+        publish(event);
+    }
+
+    /**
+     * 删除了用户的全部通知
+     */
+    public void cleared(int userId) {
+        NotificationEvent event = new NotificationEvent(NotificationEvent.DELETED, userId);
+        event.setUnreadCount(0);
+        publish(event);
+    }
+
+    private void publish(NotificationEvent event) {
+        try {
+            broker.publish(event);
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to publish " + event + ": " + e.getMessage());
+        }
+    }
+}
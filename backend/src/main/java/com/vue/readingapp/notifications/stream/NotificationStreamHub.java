@@ -0,0 +1,142 @@
+package com.vue.readingapp.notifications.stream;
+
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 本节点上的通知 SSE 连接
+ *
+ * 订阅 NotificationBroker：收到事件后先调整未读计数，再把事件推送给该用户在本节点上的所有连接。
+ * 推送在后台任务执行器的通知线程池（单线程）中按事件顺序进行，不占用发布事件的请求线程；心跳的优先级低于事件。
+ * 定时发送心跳注释行，防止代理因空闲断开连接，同时清理已经断开的连接。
+ */
+@Component
+public class NotificationStreamHub {
+
+    @Autowired
+    private NotificationBroker broker;
+
+    @Autowired
+    private NotificationUnreadCounter unreadCounter;
+
+    // SSE 连接的超时时间（毫秒），超时后浏览器的 EventSource 会自动重连
+    @Value("${app.notifications.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    // 每个用户最多保留的连接数（多个标签页），超出时关闭最早的连接
+    @Value("${app.notifications.stream.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    private final Map<Integer, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
+    @PostConstruct
+    public void init() {
+        broker.subscribe(this::onEvent);
+    }
+
+    /**
+     * 为用户建立一个 SSE 连接，建立后立即推送当前未读数
+     */
+    public SseEmitter connect(int userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        List<SseEmitter> userEmitters = emitters.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>());
+        userEmitters.add(emitter);
+        while (userEmitters.size() > maxConnectionsPerUser) {
+            SseEmitter oldest = userEmitters.remove(0);
+            oldest.complete();
+        }
+
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+
+        backgroundTaskExecutor.execute(BackgroundTaskExecutor.Pool.NOTIFICATION, () -> {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("unreadCount", unreadCounter.get(userId));
+            send(userId, emitter, SseEmitter.event().name("unread-count").data(data, MediaType.APPLICATION_JSON));
+        });
+        return emitter;
+    }
+
+    private void onEvent(NotificationEvent event) {
+        unreadCounter.apply(event);
+        if (!emitters.containsKey(event.getUserId())) {
+            return;
+        }
+        backgroundTaskExecutor.execute(BackgroundTaskExecutor.Pool.NOTIFICATION, () -> {
+            List<SseEmitter> userEmitters = emitters.get(event.getUserId());
+            if (userEmitters == null || userEmitters.isEmpty()) {
+                return;
+            }
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("type", event.getType());
+            data.put("unreadCount", unreadCounter.get(event.getUserId()));
+            if (event.getNotification() != null) {
+                data.put("notification", event.getNotification());
+            }
+            if (event.getNotificationIds() != null) {
+                data.put("notificationIds", event.getNotificationIds());
+            }
+            for (SseEmitter emitter : userEmitters) {
+                send(event.getUserId(), emitter, SseEmitter.event().name(event.getType()).data(data, MediaType.APPLICATION_JSON));
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.notifications.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.NOTIFICATION, null, BackgroundTaskExecutor.Priority.LOW, () -> {
+            for (Map.Entry<Integer, List<SseEmitter>> entry : emitters.entrySet()) {
+                for (SseEmitter emitter : entry.getValue()) {
+                    send(entry.getKey(), emitter, SseEmitter.event().comment("ping"));
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (List<SseEmitter> userEmitters : emitters.values()) {
+            for (SseEmitter emitter : userEmitters) {
+                emitter.complete();
+            }
+        }
+        emitters.clear();
+    }
+
+    private void send(int userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            remove(userId, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void remove(int userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (id, userEmitters) -> {
+            userEmitters.remove(emitter);
+            return userEmitters.isEmpty() ? null : userEmitters;
+        });
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.vue.readingapp.notifications.stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 每个用户的未读通知数
+ *
+ * 第一次使用时查询一次数据库，之后按通知事件增减，获取未读数和 SSE 推送都不再执行 COUNT(*)。
+ *   - 缓存条目数量有上限，超出后按最近最少使用（LRU）淘汰；
+ *   - 条目最多保留 maxAgeSeconds 秒后重新查询，
+ *     纠正"查询计数"与"事件到达"交错导致的偏差，以及没有发布事件的写入（如删除用户的级联删除）。
+ */
+@Component
+public class NotificationUnreadCounter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 缓存的最大用户数
+    @Value("${app.notifications.unread-cache.max-size:10000}")
+    private int maxSize;
+
+    // 单个条目的最长保留时间（秒）
+    @Value("${app.notifications.unread-cache.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    private static class CachedCount {
+        private int count;
+        private final long loadedAt;
+
+        CachedCount(int count, long loadedAt) {
+            this.count = count;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final Map<Integer, CachedCount> cache = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, CachedCount>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CachedCount> eldest) {
+                    return size() > maxSize;
+                }
+            });
+
+    /**
+     * 获取用户的未读通知数
+     */
+    public int get(int userId) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedCount cached = cache.get(userId);
+            if (cached != null && now - cached.loadedAt < maxAgeSeconds * 1000) {
+                return cached.count;
+            }
+        }
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM notifications WHERE user_id = ? AND is_read = false", Integer.class, userId);
+        int unread = count != null ? count : 0;
+        cache.put(userId, new CachedCount(unread, now));
+        return unread;
+    }
+
+    /**
+     * 按事件调整缓存的计数；没有缓存的用户不做处理，下次使用时查询
+     */
+    public void apply(NotificationEvent event) {
+        synchronized (cache) {
+            if (event.isResync()) {
+                cache.remove(event.getUserId());
+                return;
+            }
+            if (event.getUnreadCount() != null) {
+                cache.put(event.getUserId(), new CachedCount(Math.max(0, event.getUnreadCount()), System.currentTimeMillis()));
+                return;
+            }
+            CachedCount cached = cache.get(event.getUserId());
+            if (cached != null) {
+                cached.count = Math.max(0, cached.count + event.getUnreadDelta());
+            }
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
@@ -1,10 +1,14 @@
 package com.vue.readingapp.ocr;
 
+import com.vue.readingapp.ocr.core.OcrResult;
+import com.vue.readingapp.ocr.service.OcrProcessingService;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import java.awt.image.BufferedImage;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Map;
@@ -12,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.JsonProcessingException; // 添加这行导入
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -23,6 +28,15 @@ public class OcrBatchProcess {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private OcrService ocrService;
+
+    @Autowired
+    private OcrProcessingService ocrProcessingService;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     private ObjectMapper objectMapper = new ObjectMapper();
     private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
@@ -253,18 +267,26 @@ public class OcrBatchProcess {
             final BatchOcrOptions finalOptions = options;
             final String finalBatchId = batchId;
 
-            // 9. 启动异步处理任务
-            new Thread(() -> {
-                try {
-                    processBatchDocuments(finalBatchId, finalDocumentIds, finalPagesMap, finalOptions);
-                } catch (Exception e) {
-                    System.err.println("批量OCR处理线程错误: " + e.getMessage());
+            // 9. 提交到 OCR 线程池（批量任务优先级低于单页识别），队列已满时直接返回繁忙
+            try {
+                backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.OCR, batchId, BackgroundTaskExecutor.Priority.LOW, () -> {
+                    try {
+                        processBatchDocuments(finalBatchId, finalDocumentIds, finalPagesMap, finalOptions);
+                    } catch (Exception e) {
+                        System.err.println("批量OCR处理线程错误: " + e.getMessage());
 
-                    // 更新任务为失败状态
-                    String failBatchSql = "UPDATE batch_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE batch_id = ?";
-                    jdbcTemplate.update(failBatchSql, e.getMessage(), LocalDateTime.now(), finalBatchId);
-                }
-            }).start();
+                        // 更新任务为失败状态（已取消的任务保持取消状态）
+                        String failBatchSql = "UPDATE batch_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE batch_id = ? AND status = 'processing'";
+                        jdbcTemplate.update(failBatchSql, e.getMessage(), LocalDateTime.now(), finalBatchId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                String failBatchSql = "UPDATE batch_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE batch_id = ?";
+                jdbcTemplate.update(failBatchSql, "OCR队列已满", LocalDateTime.now(), batchId);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                        new BatchOcrResponse(false, "OCR任务过多，请稍后再试", null)
+                );
+            }
 
             // 10. 准备响应数据
             BatchTaskData responseData = new BatchTaskData(
@@ -302,6 +324,11 @@ public class OcrBatchProcess {
 
             List<Map<String, Object>> results = new ArrayList<>();
 
+            Map<String, Object> engineOptions = new HashMap<>();
+            engineOptions.put("language", options.getLanguage());
+            engineOptions.put("pageSegMode", options.getPageSegMode());
+            engineOptions.put("preprocess", options.getPreprocess());
+
             // 处理每个文档
             for (String docId : documentIds) {
                 // 获取该文档要处理的页码
@@ -315,21 +342,27 @@ public class OcrBatchProcess {
 
                 // 处理每个页面
                 for (Integer page : pageList) {
+                    // 任务被取消（或应用关闭）时在页面之间停止，状态由取消接口写入
+                    if (Thread.currentThread().isInterrupted() || !backgroundTaskExecutor.isActive(batchId)) {
+                        System.out.println("批量OCR任务已停止: " + batchId + ", 已处理页数: " + processedPages);
+                        return;
+                    }
                     try {
                         System.out.println("处理文档: " + docId + ", 页码: " + page);
 
-                        // 模拟OCR处理
-                        Thread.sleep(2000);
+                        // 渲染页面并识别，识别时从引擎池借用 Tesseract 句柄，多个批量任务可以并行
+                        long pageStart = System.currentTimeMillis();
+                        BufferedImage pageImage = ocrService.renderDocumentPage(docId, page);
+                        OcrResult recognized = ocrProcessingService.processImage(pageImage, engineOptions);
 
-                        // 生成模拟的OCR结果
                         Map<String, Object> ocrResult = new HashMap<>();
-                        ocrResult.put("text", "文档" + docId + "第" + page + "页的OCR识别文本内容。");
-                        ocrResult.put("confidence", 85.0 + Math.random() * 15);
+                        ocrResult.put("text", recognized.getText());
+                        ocrResult.put("confidence", (double) recognized.getConfidence());
 
                         Map<String, Object> metadata = new HashMap<>();
-                        metadata.put("engine", "tesseract");
-                        metadata.put("language", options.getLanguage());
-                        metadata.put("processingTime", 2000);
+                        metadata.put("engine", recognized.getEngineName());
+                        metadata.put("language", recognized.getLanguage());
+                        metadata.put("processingTime", System.currentTimeMillis() - pageStart);
                         ocrResult.put("metadata", metadata);
 
                         // 保存OCR结果
@@ -391,7 +424,7 @@ public class OcrBatchProcess {
             double averageConfidence = successfulPages > 0 ? totalConfidence / successfulPages : 0.0;
 
             // 更新批量任务为完成状态
-            String completeBatchSql = "UPDATE batch_ocr_tasks SET status = 'completed', successful_pages = ?, failed_pages = ?, average_confidence = ?, results_json = ?, completed_at = ?, updated_at = ? WHERE batch_id = ?";
+            String completeBatchSql = "UPDATE batch_ocr_tasks SET status = 'completed', successful_pages = ?, failed_pages = ?, average_confidence = ?, results_json = ?, completed_at = ?, updated_at = ? WHERE batch_id = ? AND status = 'processing'";
 
             String resultsJson;
             try {
@@ -14,6 +14,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 @RestController
 @RequestMapping("/api/v1/documents/ocr/tasks")
@@ -22,6 +23,9 @@ public class OcrCancelTask {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     private ObjectMapper objectMapper = new ObjectMapper();
     private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
@@ -156,6 +160,8 @@ public class OcrCancelTask {
                             taskId
                     );
 
+                    // 排队中的批量任务移出 OCR 队列，执行中的在当前页结束后停止
+                    backgroundTaskExecutor.cancel(taskId);
                     System.out.println("批量OCR任务已取消: " + taskId);
 
                     // 准备响应数据
@@ -175,7 +181,49 @@ public class OcrCancelTask {
                 }
             }
 
-            // 3. 检查普通OCR任务表
+            // 3. 检查单页OCR任务表
+            String checkPageTableSql = "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'page_ocr_tasks'";
+            Integer pageTableCount = jdbcTemplate.queryForObject(checkPageTableSql, Integer.class);
+
+            if (pageTableCount != null && pageTableCount > 0) {
+                List<Map<String, Object>> pageTasks = jdbcTemplate.queryForList(
+                        "SELECT task_id, status FROM page_ocr_tasks WHERE task_id = ?", taskId);
+
+                if (!pageTasks.isEmpty()) {
+                    String currentStatus = (String) pageTasks.get(0).get("status");
+                    if (!"processing".equals(currentStatus)) {
+                        return ResponseEntity.badRequest().body(
+                                new CancelTaskResponse(false, "任务已处于" + currentStatus + "状态，无法取消", null)
+                        );
+                    }
+
+                    LocalDateTime now = LocalDateTime.now();
+                    jdbcTemplate.update("UPDATE page_ocr_tasks SET status = 'cancelled', error_message = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'",
+                            request.getReason() != null ? request.getReason() : "用户取消",
+                            now,
+                            taskId
+                    );
+                    backgroundTaskExecutor.cancel(taskId);
+
+                    System.out.println("页面OCR任务已取消: " + taskId);
+
+                    CancelTaskData responseData = new CancelTaskData(
+                            taskId,
+                            "cancelled",
+                            now.format(formatter),
+                            request.getReason()
+                    );
+
+                    CancelTaskResponse response = new CancelTaskResponse(true, "页面OCR任务取消成功", responseData);
+
+                    // 打印返回数据
+                    printResponse(response);
+
+                    return ResponseEntity.ok(response);
+                }
+            }
+
+            // 4. 检查普通OCR任务表
             String checkTaskTableSql = "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'ocr_tasks'";
             Integer taskTableCount = jdbcTemplate.queryForObject(checkTaskTableSql, Integer.class);
 
@@ -185,8 +233,8 @@ public class OcrCancelTask {
                 );
             }
 
-            // 4. 查询OCR任务
-            String queryTaskSql = "SELECT task_id, status FROM ocr_tasks WHERE task_id = ?";
+            // 5. 查询OCR任务
+            String queryTaskSql = "SELECT task_id, document_id, status FROM ocr_tasks WHERE task_id = ?";
             List<Map<String, Object>> tasks = jdbcTemplate.queryForList(queryTaskSql, taskId);
             printQueryResult(tasks);
 
@@ -199,14 +247,14 @@ public class OcrCancelTask {
             Map<String, Object> task = tasks.get(0);
             String currentStatus = (String) task.get("status");
 
-            // 5. 检查任务是否可以取消
+            // 6. 检查任务是否可以取消
             if ("completed".equals(currentStatus) || "failed".equals(currentStatus) || "cancelled".equals(currentStatus)) {
                 return ResponseEntity.badRequest().body(
                         new CancelTaskResponse(false, "任务已处于" + currentStatus + "状态，无法取消", null)
                 );
             }
 
-            // 6. 取消OCR任务
+            // 7. 取消OCR任务
             LocalDateTime now = LocalDateTime.now();
             String cancelTaskSql = "UPDATE ocr_tasks SET status = 'cancelled', updated_at = ?, cancelled_at = ?, cancel_reason = ? WHERE task_id = ?";
 
@@ -217,9 +265,12 @@ public class OcrCancelTask {
                     taskId
             );
 
+            // 手动触发的整份文档 OCR 在 OCR 线程池中执行，按文档取消
+            backgroundTaskExecutor.cancel(OcrService.documentTaskKey(task.get("document_id")));
+
             System.out.println("OCR任务已取消: " + taskId);
 
-            // 7. 准备响应数据
+            // 8. 准备响应数据
             CancelTaskData responseData = new CancelTaskData(
                     taskId,
                     "cancelled",
@@ -3,6 +3,7 @@ package com.vue.readingapp.ocr;
 // 引入 OcrResult 和 OcrProcessingService
 import com.vue.readingapp.ocr.core.OcrResult;
 import com.vue.readingapp.ocr.service.OcrProcessingService;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -15,6 +16,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List; // Not directly used in this snippet, but kept as it was in original imports
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @RestController
@@ -28,6 +30,9 @@ public class OcrProcessPage {
     @Autowired
     private OcrProcessingService ocrProcessingService;
 
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     private ObjectMapper objectMapper = new ObjectMapper();
     // DateTimeFormatter is declared but not used in the final code, can be removed if not needed elsewhere
     private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
@@ -285,20 +290,29 @@ public class OcrProcessPage {
             final Boolean finalIsImageContent = request.getIsImageContent();
             final PageOcrOptions finalOptions = ocrOptions; // Use the parsed/defaulted options
 
-            // 8. Start an asynchronous thread to process the page content
-            new Thread(() -> {
-                try {
-                    // Delegate the actual processing to a dedicated method
-                    processPageContent(finalTaskId, finalDocumentId, finalPage, finalContent,
-                            finalIsImageContent, finalOptions);
-                } catch (Exception e) {
-                    System.err.println("Page OCR processing thread encountered an error: " + e.getMessage());
-                    e.printStackTrace(); // Log the stack trace
-                    // Update task status to 'failed' if any exception occurs during processing
-                    String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ?";
-                    jdbcTemplate.update(failTaskSql, e.getMessage(), LocalDateTime.now(), finalTaskId);
-                }
-            }).start(); // Start the new thread
+            // 8. Submit the page to the bounded OCR pool (single pages are interactive, so they run before batch work)
+            try {
+                backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.OCR, taskId, BackgroundTaskExecutor.Priority.HIGH, () -> {
+                    try {
+                        // Delegate the actual processing to a dedicated method
+                        processPageContent(finalTaskId, finalDocumentId, finalPage, finalContent,
+                                finalIsImageContent, finalOptions);
+                    } catch (Exception e) {
+                        System.err.println("Page OCR processing thread encountered an error: " + e.getMessage());
+                        e.printStackTrace(); // Log the stack trace
+                        // Update task status to 'failed' if any exception occurs during processing
+                        String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'";
+                        jdbcTemplate.update(failTaskSql, e.getMessage(), LocalDateTime.now(), finalTaskId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The OCR queue is full: fail the task right away instead of spawning another thread
+                String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ?";
+                jdbcTemplate.update(failTaskSql, "OCR队列已满", LocalDateTime.now(), taskId);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                        new ProcessPageResponse(false, "OCR任务过多，请稍后再试", null)
+                );
+            }
 
             // 9. Prepare the response data for the client
             PageOcrResultData responseData = new PageOcrResultData(
@@ -401,14 +415,19 @@ public class OcrProcessPage {
                     String resultJson = objectMapper.writeValueAsString(ocrResultMap);
 
                     // Update the task to 'completed' status and save the result JSON
-                    String completeTaskSql = "UPDATE page_ocr_tasks SET status = 'completed', progress = 100, result_json = ?, completed_at = ?, updated_at = ? WHERE task_id = ?";
-                    jdbcTemplate.update(completeTaskSql,
+                    // Only a task that is still 'processing' completes (it may have been cancelled meanwhile)
+                    String completeTaskSql = "UPDATE page_ocr_tasks SET status = 'completed', progress = 100, result_json = ?, completed_at = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'";
+                    int completed = jdbcTemplate.update(completeTaskSql,
                             resultJson,
                             LocalDateTime.now(), // Completed at
                             LocalDateTime.now(), // Updated at
                             taskId
                     );
 
+                    if (completed == 0) {
+                        System.out.println("Page OCR task was cancelled before completion: " + taskId);
+                        return;
+                    }
                     System.out.println("Page OCR task completed successfully: " + taskId);
 
                     // --- Save OCR result to the 'document_ocr_results' table ---
@@ -438,15 +457,15 @@ public class OcrProcessPage {
             // Handle thread interruption specifically
             Thread.currentThread().interrupt(); // Restore interrupted status
             System.err.println("Page content processing thread was interrupted: " + taskId + " - " + e.getMessage());
-            // Update task status to 'failed' due to interruption
-            String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ?";
+            // Update task status to 'failed' due to interruption (a cancelled task keeps its 'cancelled' status)
+            String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'";
             jdbcTemplate.update(failTaskSql, "Thread interrupted: " + e.getMessage(), LocalDateTime.now(), taskId);
         } catch (Exception e) {
             // Catch any other exceptions during the processing
             System.err.println("Error during page content processing for TaskID: " + taskId + " - " + e.getMessage());
             e.printStackTrace(); // Log the stack trace for detailed debugging
             // Update task status to 'failed' with the error message
-            String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ?";
+            String failTaskSql = "UPDATE page_ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'";
             jdbcTemplate.update(failTaskSql, e.getMessage(), LocalDateTime.now(), taskId);
         }
     }
@@ -1,9 +1,13 @@
 package com.vue.readingapp.ocr;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
-import net.sourceforge.tess4j.TesseractException;
+import com.vue.readingapp.ocr.core.OcrEngine;
+import com.vue.readingapp.ocr.core.OcrResult;
+import com.vue.readingapp.ocr.service.PdfOcrPipeline;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.reader.ReaderPageCache;
+import com.vue.readingapp.reader.index.DocumentTextIndexService;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
@@ -23,10 +27,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 @Service
 public class OcrService {
@@ -34,179 +40,248 @@ public class OcrService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private OcrEngine ocrEngine;
+
+    @Autowired
+    private PdfOcrPipeline pdfOcrPipeline;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private DocumentTextIndexService documentTextIndexService;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * 异步处理文档（供手动触发接口使用），立即返回 false 表示已转入后台执行。
+     * 任务提交到 OCR 线程池，同一文档已在排队或处理中时不重复提交；队列已满时抛出 RejectedExecutionException。
+     */
     public boolean processDocument(Integer documentId) {
+        String taskKey = documentTaskKey(documentId);
+        if (backgroundTaskExecutor.isActive(taskKey)) {
+            return false;
+        }
+        backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.OCR, taskKey, BackgroundTaskExecutor.Priority.NORMAL, () -> {
+            try {
+                runDocumentOcr(documentId);
+            } catch (Exception e) {
+                // 失败状态已由 runDocumentOcr 写入 ocr_tasks 和 documents
+            }
+        });
+        return false;
+    }
+
+    /**
+     * 手动触发的整份文档 OCR 在后台执行器中的任务键（取消接口按 ocr_tasks.document_id 取消）
+     */
+    public static String documentTaskKey(Object documentId) {
+        return "ocr_document_" + documentId;
+    }
+
+    /**
+     * 在调用线程中同步执行整份文档的 OCR / 文本提取。
+     * 失败时先把 ocr_tasks 和 documents 标记为 failed，再把异常抛给调用方，
+     * 文档处理队列据此把队列项标记为失败并记录原因。
+     * 任务被取消（执行线程被中断，或完成时 ocr_tasks 已不是 processing）时抛出 CancellationException，
+     * ocr_tasks 保持 cancelled，文档不会被标记为已处理。
+     */
+    public void runDocumentOcr(Integer documentId) throws Exception {
         // 假设我们只处理第一页作为示例
         Integer page = 1;
         String taskId = "ocr_task_" + UUID.randomUUID().toString().substring(0, 8);
         LocalDateTime now = LocalDateTime.now();
 
-        // 异步执行OCR处理
-        new Thread(() -> {
-            try {
-                // 1. 检查并创建 ocr_tasks 表 (如果不存在)
-                ensureOcrTasksTableExists();
-
-                // 2. 插入 OCR 任务记录
-                String insertTaskSql = "INSERT INTO ocr_tasks (task_id, document_id, page_number, status, progress, options_json, estimated_time, started_at, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                jdbcTemplate.update(insertTaskSql, taskId, documentId, page, "processing", 0, "{}", 30, now, now, now);
-
-                System.out.println("INFO: Started OCR processing for document_id: " + documentId);
-
-                // 确保 documents 表包含必要的 OCR 列
-                ensureDocumentsColumnsExist();
-
-                // 3. 获取文件路径
-                String queryFileSql = "SELECT file_path FROM documents WHERE document_id = ?";
-                String filePath = jdbcTemplate.queryForObject(queryFileSql, String.class, documentId);
-                System.out.println("DEBUG: Document file path from DB: " + filePath);
-                
-                File imageFile = new File(filePath);
-                if (!imageFile.exists()) {
-                    throw new Exception("文件不存在: " + filePath);
-                }
-
-                // 4. 执行真实 OCR 处理
-                ITesseract tesseract = new Tesseract();
-                
-                // 设置训练数据路径
-                // 解决中文路径兼容性问题：如果项目路径包含中文，Tesseract 原生库可能无法加载。
-                // 方案：将训练数据复制到系统临时目录（通常不含中文）
-                File sourceTessDataFolder = new File("src/main/resources/tessdata");
-                if (!sourceTessDataFolder.exists()) {
-                    throw new Exception("源 Tessdata 目录不存在: " + sourceTessDataFolder.getAbsolutePath());
-                }
+        try {
+            // 1. 检查并创建 ocr_tasks 表 (如果不存在)
+            ensureOcrTasksTableExists();
+
+            // 2. 插入 OCR 任务记录
+            String insertTaskSql = "INSERT INTO ocr_tasks (task_id, document_id, page_number, status, progress, options_json, estimated_time, started_at, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            jdbcTemplate.update(insertTaskSql, taskId, documentId, page, "processing", 0, "{}", 30, now, now, now);
+
+            System.out.println("INFO: Started OCR processing for document_id: " + documentId);
+
+            // 确保 documents 表包含必要的 OCR 列
+            ensureDocumentsColumnsExist();
+
+            // 3. 获取文件路径
+            String queryFileSql = "SELECT file_path FROM documents WHERE document_id = ?";
+            String filePath = jdbcTemplate.queryForObject(queryFileSql, String.class, documentId);
+            System.out.println("DEBUG: Document file path from DB: " + filePath);
+            
+            File imageFile = new File(filePath);
+            if (!imageFile.exists()) {
+                throw new Exception("文件不存在: " + filePath);
+            }
 
-                // 创建临时目录
-                File tempTessDataFolder = new File(System.getProperty("java.io.tmpdir"), "readingapp_tessdata");
-                if (!tempTessDataFolder.exists()) {
-                    tempTessDataFolder.mkdirs();
+            // 4. 执行真实 OCR 处理：识别时从引擎池借用已初始化的 Tesseract 句柄
+            Map<String, Object> ocrOptions = new HashMap<>();
+            ocrOptions.put("language", "chi_sim+eng");
+
+            System.out.println("INFO: Executing Text Extraction/OCR for file: " + filePath);
+            
+            String resultText = "";
+            String lowerPath = filePath.toLowerCase();
+            int totalPages = 1;
+            // 直接读取文本的页数 / 经过 OCR 的页数
+            int textLayerPages = 0;
+            int ocrPages = 0;
+            int highDpiRetryPages = 0;
+            // 直接读取的文本按 100 计，OCR 结果使用 Tesseract 给出的平均置信度
+            float confidence = 100.0f;
+            
+            if (lowerPath.endsWith(".pdf")) {
+                System.out.println("DEBUG: Detected PDF file, running page-parallel OCR pipeline...");
+                // 有文本层的页面直接提取；其余页面渲染、识别、批量入库分阶段并行执行，逐批写入 document_pages
+                PdfOcrPipeline.PdfResult pdfResult = pdfOcrPipeline.process(documentId, imageFile, ocrOptions, taskId);
+                List<String> pageTexts = pdfResult.getPageTexts();
+                totalPages = pageTexts.size();
+                textLayerPages = pdfResult.getTextLayerPages();
+                ocrPages = pdfResult.getOcrPages();
+                highDpiRetryPages = pdfResult.getHighDpiRetryPages();
+                confidence = pdfResult.getMeanConfidence();
+                resultText = String.join("\n", pageTexts);
+            } else if (lowerPath.endsWith(".docx")) {
+                System.out.println("DEBUG: Detected DOCX file, extracting text...");
+                try (FileInputStream fis = new FileInputStream(imageFile);
+                     XWPFDocument doc = new XWPFDocument(fis);
+                     XWPFWordExtractor extractor = new XWPFWordExtractor(doc)) {
+                    resultText = extractor.getText();
                 }
-
-                // 复制必要的训练数据文件
-                String[] langFiles = {"chi_sim.traineddata", "eng.traineddata"};
-                for (String langFile : langFiles) {
-                    File srcFile = new File(sourceTessDataFolder, langFile);
-                    File destFile = new File(tempTessDataFolder, langFile);
-                    if (srcFile.exists() && (!destFile.exists() || srcFile.length() != destFile.length())) {
-                        System.out.println("INFO: Copying " + langFile + " to temp directory...");
-                        Files.copy(srcFile.toPath(), destFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                    }
+            } else if (lowerPath.endsWith(".doc")) {
+                System.out.println("DEBUG: Detected DOC file, extracting text...");
+                try (FileInputStream fis = new FileInputStream(imageFile);
+                     HWPFDocument doc = new HWPFDocument(fis);
+                     WordExtractor extractor = new WordExtractor(doc)) {
+                    resultText = extractor.getText();
                 }
-
-                String datapath = tempTessDataFolder.getAbsolutePath();
-                System.out.println("INFO: Setting Tesseract datapath to temp directory: " + datapath);
-                tesseract.setDatapath(datapath);
-                
-                // 设置语言 (确保 chi_sim.traineddata 和 eng.traineddata 存在)
-                tesseract.setLanguage("chi_sim+eng");
-
-                System.out.println("INFO: Executing Text Extraction/OCR for file: " + filePath);
-                
-                String resultText = "";
-                String lowerPath = filePath.toLowerCase();
-                int totalPages = 1;
-                
-                if (lowerPath.endsWith(".pdf")) {
-                    System.out.println("DEBUG: Detected PDF file, converting to images for OCR...");
-                    try (PDDocument document = PDDocument.load(imageFile)) {
-                        totalPages = document.getNumberOfPages();
-                        PDFRenderer pdfRenderer = new PDFRenderer(document);
-                        StringBuilder sb = new StringBuilder();
-                        int pagesToProcess = totalPages; // 处理所有页面
-                        for (int i = 0; i < pagesToProcess; i++) {
-                            int currentPageNum = i + 1;
-                            // 检查文档是否仍然存在，防止处理已删除的文档
-                            if (!checkDocumentExists(documentId)) {
-                                throw new Exception("文档 ID " + documentId + " 已不存在，停止 OCR 处理。");
-                            }
-                            
-                            System.out.println("DEBUG: Processing PDF page " + currentPageNum);
-                            BufferedImage bim = pdfRenderer.renderImageWithDPI(i, 300, ImageType.RGB);
-                            String pageText = tesseract.doOCR(bim);
-                            sb.append(pageText).append("\n");
-                            
-                            // 保存每一页到 document_pages 表
-                            savePageToDatabase(documentId, currentPageNum, pageText);
-                        }
-                        resultText = sb.toString();
-                    }
-                } else if (lowerPath.endsWith(".docx")) {
-                    System.out.println("DEBUG: Detected DOCX file, extracting text...");
-                    try (FileInputStream fis = new FileInputStream(imageFile);
-                         XWPFDocument doc = new XWPFDocument(fis);
-                         XWPFWordExtractor extractor = new XWPFWordExtractor(doc)) {
-                        resultText = extractor.getText();
-                    }
-                } else if (lowerPath.endsWith(".doc")) {
-                    System.out.println("DEBUG: Detected DOC file, extracting text...");
-                    try (FileInputStream fis = new FileInputStream(imageFile);
-                         HWPFDocument doc = new HWPFDocument(fis);
-                         WordExtractor extractor = new WordExtractor(doc)) {
-                        resultText = extractor.getText();
-                    }
-                } else if (lowerPath.endsWith(".txt") || lowerPath.endsWith(".html") || lowerPath.endsWith(".htm")) {
-                    System.out.println("DEBUG: Detected Text/HTML file, reading content...");
-                    resultText = new String(Files.readAllBytes(imageFile.toPath()), StandardCharsets.UTF_8);
-                } else if (lowerPath.endsWith(".png") || lowerPath.endsWith(".jpg") || lowerPath.endsWith(".jpeg") || lowerPath.endsWith(".bmp") || lowerPath.endsWith(".tiff")) {
-                    System.out.println("DEBUG: Detected Image file, performing OCR...");
-                    resultText = tesseract.doOCR(imageFile);
-                } else {
-                    System.out.println("DEBUG: Unknown format, attempting direct OCR...");
-                    resultText = tesseract.doOCR(imageFile);
-                }
-                
-                // 对于非 PDF 文件，保存第一页内容
-                if (!lowerPath.endsWith(".pdf")) {
-                    // 检查文档是否仍然存在
-                    if (!checkDocumentExists(documentId)) {
-                        throw new Exception("文档 ID " + documentId + " 已不存在，停止 OCR 处理。");
-                    }
-                    savePageToDatabase(documentId, 1, resultText);
+            } else if (lowerPath.endsWith(".txt") || lowerPath.endsWith(".html") || lowerPath.endsWith(".htm")) {
+                System.out.println("DEBUG: Detected Text/HTML file, reading content...");
+                resultText = new String(Files.readAllBytes(imageFile.toPath()), StandardCharsets.UTF_8);
+            } else if (lowerPath.endsWith(".png") || lowerPath.endsWith(".jpg") || lowerPath.endsWith(".jpeg") || lowerPath.endsWith(".bmp") || lowerPath.endsWith(".tiff")) {
+                System.out.println("DEBUG: Detected Image file, performing OCR...");
+                OcrResult imageResult = recognizeImageFile(imageFile, ocrOptions);
+                resultText = imageResult.getText();
+                confidence = imageResult.getConfidence();
+                ocrPages = 1;
+            } else {
+                System.out.println("DEBUG: Unknown format, attempting direct OCR...");
+                OcrResult imageResult = recognizeImageFile(imageFile, ocrOptions);
+                resultText = imageResult.getText();
+                confidence = imageResult.getConfidence();
+                ocrPages = 1;
+            }
+            if (!lowerPath.endsWith(".pdf") && ocrPages == 0) {
+                textLayerPages = 1;
+            }
+            
+            // 对于非 PDF 文件，保存第一页内容
+            if (!lowerPath.endsWith(".pdf")) {
+                // 检查文档是否仍然存在
+                if (!checkDocumentExists(documentId)) {
+                    throw new Exception("文档 ID " + documentId + " 已不存在，停止 OCR 处理。");
                 }
-                
-                System.out.println("DEBUG: OCR Result length: " + (resultText != null ? resultText.length() : 0));
-
-                // 5. 生成 OCR 结果
-                Map<String, Object> ocrResultMap = new HashMap<>();
-                ocrResultMap.put("text", resultText);
-                ocrResultMap.put("confidence", 80.0); // Tess4J 获取单字置信度较复杂，此处暂设固定值
-                String resultJson = objectMapper.writeValueAsString(ocrResultMap);
+                savePageToDatabase(documentId, 1, resultText);
+            }
 
-                // 5. 更新任务状态为完成，并保存结果
-                String completeTaskSql = "UPDATE ocr_tasks SET status = 'completed', progress = 100, result_json = ?, completed_at = ?, updated_at = ? WHERE task_id = ?";
-                jdbcTemplate.update(completeTaskSql, resultJson, LocalDateTime.now(), LocalDateTime.now(), taskId);
+            // 5. 生成 OCR 结果
+            Map<String, Object> ocrResultMap = new HashMap<>();
+            ocrResultMap.put("text", resultText);
+            ocrResultMap.put("confidence", (double) confidence);
+            ocrResultMap.put("totalPages", totalPages);
+            ocrResultMap.put("textLayerPages", textLayerPages);
+            ocrResultMap.put("ocrPages", ocrPages);
+            ocrResultMap.put("highDpiRetryPages", highDpiRetryPages);
+            String resultJson = objectMapper.writeValueAsString(ocrResultMap);
+
+            // 5. 更新任务状态为完成，并保存结果（处理期间已被取消的任务保持取消状态，也不再更新文档）
+            String completeTaskSql = "UPDATE ocr_tasks SET status = 'completed', progress = 100, result_json = ?, completed_at = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'";
+            int completedRows = jdbcTemplate.update(completeTaskSql, resultJson, LocalDateTime.now(), LocalDateTime.now(), taskId);
+            if (completedRows != 1) {
+                throw new CancellationException("OCR 任务 " + taskId + " 已取消，不再保存结果");
+            }
 
-                System.out.println("INFO: Completed OCR processing for document_id: " + documentId);
+            System.out.println("INFO: Completed OCR processing for document_id: " + documentId);
 
-                // 6. 更新文档表的状态（包括页数）
-                String updateDocSql = "UPDATE documents SET is_processed = 1, processing_status = 'completed', " +
-                        "processing_progress = 100, processing_completed_at = ?, page_count = ? WHERE document_id = ?";
-                jdbcTemplate.update(updateDocSql, LocalDateTime.now(), totalPages, documentId);
+            // 6. 更新文档表的状态（包括页数）
+            String updateDocSql = "UPDATE documents SET is_processed = 1, processing_status = 'completed', " +
+                    "processing_progress = 100, processing_completed_at = ?, page_count = ?, " +
+                    "text_layer_pages = ?, ocr_pages = ? WHERE document_id = ?";
+            jdbcTemplate.update(updateDocSql, LocalDateTime.now(), totalPages, textLayerPages, ocrPages, documentId);
+            documentTextIndexService.rebuildAsync(documentId);
 
-                // 7. (可选) 将结果保存到 document_ocr_results 表
-                saveOcrResultToDatabase(documentId, 1, ocrResultMap);
+            // 7. (可选) 将结果保存到 document_ocr_results 表
+            saveOcrResultToDatabase(documentId, 1, ocrResultMap);
 
-            } catch (Throwable t) {
-                String errorMsg = t.getClass().getSimpleName() + ": " + t.getMessage();
+        } catch (Throwable t) {
+            String errorMsg = t.getClass().getSimpleName() + ": " + t.getMessage();
+            if (t instanceof CancellationException) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] OCR processing cancelled for document_id: " + documentId + " - " + t.getMessage());
+            } else {
                 System.err.println("FATAL ERROR: OCR processing crashed for document_id: " + documentId + " - " + errorMsg);
                 t.printStackTrace();
+            }
 
-                // 更新任务为失败状态
-                try {
-                    String failTaskSql = "UPDATE ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ?";
-                    jdbcTemplate.update(failTaskSql, errorMsg, LocalDateTime.now(), taskId);
-
-                    // 更新文档表的状态
-                    String updateDocSql = "UPDATE documents SET processing_status = 'failed', processing_error = ? WHERE document_id = ?";
-                    jdbcTemplate.update(updateDocSql, errorMsg, documentId);
-                } catch (Exception dbEx) {
-                    System.err.println("CRITICAL: Failed to update error status to DB: " + dbEx.getMessage());
+            // 更新任务为失败状态
+            try {
+                // 已被取消的任务保持取消状态
+                String failTaskSql = "UPDATE ocr_tasks SET status = 'failed', error_message = ?, updated_at = ? WHERE task_id = ? AND status = 'processing'";
+                jdbcTemplate.update(failTaskSql, errorMsg, LocalDateTime.now(), taskId);
+
+                // 更新文档表的状态
+                String updateDocSql = "UPDATE documents SET processing_status = 'failed', processing_error = ? WHERE document_id = ?";
+                jdbcTemplate.update(updateDocSql, errorMsg, documentId);
+            } catch (Exception dbEx) {
+                System.err.println("CRITICAL: Failed to update error status to DB: " + dbEx.getMessage());
+            }
+            throw new Exception(errorMsg, t);
+        }
+    }
+
+    /**
+     * 将文档的某一页渲染为图像，供按页 OCR 的接口（如批量 OCR）使用。
+     * PDF 按 300 DPI 渲染指定页，图片文件直接读取（只有第 1 页）。
+     */
+    public BufferedImage renderDocumentPage(String documentId, int pageNumber) throws Exception {
+        String filePath = jdbcTemplate.queryForObject("SELECT file_path FROM documents WHERE document_id = ?", String.class, documentId);
+        File file = new File(filePath);
+        if (!file.exists()) {
+            throw new Exception("文件不存在: " + filePath);
+        }
+
+        if (filePath.toLowerCase().endsWith(".pdf")) {
+            try (PDDocument document = PDDocument.load(file)) {
+                if (pageNumber < 1 || pageNumber > document.getNumberOfPages()) {
+                    throw new Exception("页码超出范围: " + pageNumber);
                 }
+                return new PDFRenderer(document).renderImageWithDPI(pageNumber - 1, 300, ImageType.RGB);
             }
-        }).start();
-        return false;
+        }
+
+        if (pageNumber != 1) {
+            throw new Exception("页码超出范围: " + pageNumber);
+        }
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new Exception("该文档格式不支持OCR: " + filePath);
+        }
+        return image;
+    }
+
+    private OcrResult recognizeImageFile(File imageFile, Map<String, Object> ocrOptions) throws Exception {
+        BufferedImage image = ImageIO.read(imageFile);
+        if (image == null) {
+            throw new Exception("无法读取图像文件: " + imageFile.getPath());
+        }
+        return ocrEngine.recognize(image, ocrOptions);
     }
 
     private void ensureDocumentsColumnsExist() {
@@ -217,7 +292,9 @@ public class OcrService {
                 "processing_progress INT(11) DEFAULT 0",
                 "processing_error TEXT",
                 "processing_started_at TIMESTAMP NULL DEFAULT NULL",
-                "processing_completed_at TIMESTAMP NULL DEFAULT NULL"
+                "processing_completed_at TIMESTAMP NULL DEFAULT NULL",
+                "text_layer_pages INT(11) DEFAULT NULL",
+                "ocr_pages INT(11) DEFAULT NULL"
             };
 
             for (String colDef : columns) {
@@ -291,6 +368,9 @@ public class OcrService {
 
             int rows = jdbcTemplate.update(sql, pageId, documentId, pageNumber, content, wordCount, charCount, content, wordCount, charCount);
             System.out.println("INFO: 成功保存页面 " + pageNumber + " 到 document_pages，影响行数: " + rows);
+            searchIndexService.onPagesWritten(documentId, Collections.singletonMap(pageNumber, content));
+            readerPageCache.invalidateDocument(documentId);
+            documentTextIndexService.invalidate(documentId);
         } catch (Exception e) {
             System.err.println("ERROR: 保存页面到 document_pages 失败: " + e.getMessage());
             throw new Exception("数据库写入失败 (可能文档已被删除): " + e.getMessage(), e);
@@ -246,6 +246,9 @@ public class OcrUpdateResult {
                 System.out.println("更新了OCR结果: " + ocrId);
             }
 
+            // 手动修改过的 OCR 结果不再复用给其他用户上传的相同文件
+            jdbcTemplate.update("UPDATE documents SET ocr_edited = 1 WHERE document_id = ?", documentId);
+
             // 5. 查询更新后的OCR结果
             String queryOcrSql = "SELECT ocr_id, document_id, page_number, ocr_text, confidence, updated_at FROM document_ocr_results WHERE ocr_id = ?";
             List<Map<String, Object>> updatedOcr = jdbcTemplate.queryForList(queryOcrSql, ocrId);
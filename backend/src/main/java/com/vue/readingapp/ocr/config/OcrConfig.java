@@ -4,13 +4,14 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import com.vue.readingapp.ocr.core.OcrEngine;
 import com.vue.readingapp.ocr.core.TesseractEngine;
+import com.vue.readingapp.ocr.core.TesseractEnginePool;
 
 @Configuration
 public class OcrConfig {
 
     @Bean
-    public OcrEngine ocrEngine() {
-        return new TesseractEngine();
+    public OcrEngine ocrEngine(TesseractEnginePool enginePool) {
+        return new TesseractEngine(enginePool);
     }
 
     @Bean
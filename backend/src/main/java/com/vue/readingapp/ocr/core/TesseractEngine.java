@@ -1,7 +1,6 @@
 package com.vue.readingapp.ocr.core;
 
-import net.sourceforge.tess4j.Tesseract;
-import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -12,63 +11,44 @@ import java.util.*;
 @Component
 public class TesseractEngine implements OcrEngine {
 
-    private final Tesseract tesseract;
+    // 原生句柄不是线程安全的，每次识别都从池中借用一个与选项匹配的已初始化句柄
+    private final TesseractEnginePool enginePool;
 
-    // 移除 @Autowired 注解，因为构造函数没有参数需要自动装配
-    public TesseractEngine() {
-        this.tesseract = new Tesseract();
-        initialize();
-    }
-
-    private void initialize() {
-        try {
-            // 设置Tesseract数据路径 - 使用相对路径
-            String tessdataPath = "tessdata";
-            System.out.println("Tesseract数据路径: " + tessdataPath);
-
-            tesseract.setDatapath(tessdataPath);
-
-            // 默认设置
-            tesseract.setLanguage("chi_sim+eng");
-            tesseract.setPageSegMode(1);
-            tesseract.setOcrEngineMode(1);
-
-            System.out.println("Tesseract OCR引擎初始化成功");
-            System.out.println("支持的语言: " + getSupportedLanguages());
-
-        } catch (Exception e) {
-            System.err.println("Tesseract初始化失败: " + e.getMessage());
-            e.printStackTrace();
-            // 课设中，我们允许OCR引擎初始化失败，但应用继续运行
-            // 在实际项目中，这里应该抛出异常
-        }
+    @Autowired
+    public TesseractEngine(TesseractEnginePool enginePool) {
+        this.enginePool = enginePool;
     }
 
     @Override
     public OcrResult recognize(BufferedImage image, Map<String, Object> options) {
-        try {
-            // 应用OCR选项
-            applyOptions(options);
-
-            // 执行OCR识别
-            String text = tesseract.doOCR(image);
-
-            // 获取置信度 - Tesseract 4.x 版本中，置信度信息在doOCR方法中返回
-            // 但Tess4J API没有直接提供置信度，我们需要估算
-            float confidence = estimateConfidence(text, image, options);
-
-            // 构建OCR结果
-            return OcrResult.builder()
-                    .text(text)
-                    .confidence(confidence)
-                    .engineName(getEngineName())
-                    .language(options != null ? options.getOrDefault("language", "chi_sim").toString() : "chi_sim")
-                    .processingTime(estimateProcessingTime(image))
-                    .build();
+        TesseractEnginePool.EngineKey key = enginePool.keyFromOptions(options);
+
+        // 执行OCR识别，在归还句柄前读取行、单词及其置信度和位置
+        long startTime = System.currentTimeMillis();
+        String text;
+        int meanConfidence;
+        List<OcrResult.LineInfo> lines;
+        try (TesseractEnginePool.PooledEngine engine = enginePool.borrow(key)) {
+            text = engine.recognizeText(image);
+            meanConfidence = engine.getMeanConfidence();
+            lines = engine.getLines();
+        }
 
-        } catch (TesseractException e) {
-            throw new OcrProcessingException("OCR识别失败: " + e.getMessage(), e);
+        List<OcrResult.WordInfo> words = new ArrayList<>();
+        for (OcrResult.LineInfo line : lines) {
+            words.addAll(line.getWords());
         }
+
+        // 构建OCR结果：置信度为 Tesseract 给出的单词平均置信度，没有识别出文字时为 0
+        return OcrResult.builder()
+                .text(text)
+                .confidence(words.isEmpty() ? 0.0f : Math.max(0, Math.min(100, meanConfidence)))
+                .engineName(getEngineName())
+                .language(key.getLanguage())
+                .processingTime(System.currentTimeMillis() - startTime)
+                .words(words)
+                .lines(lines)
+                .build();
     }
 
     @Override
@@ -98,73 +78,4 @@ public class TesseractEngine implements OcrEngine {
     public String getEngineName() {
         return "Tesseract OCR";
     }
-
-    private void applyOptions(Map<String, Object> options) {
-        if (options == null) return;
-
-        // 设置语言
-        if (options.containsKey("language")) {
-            String language = options.get("language").toString();
-            try {
-                tesseract.setLanguage(language);
-                System.out.println("设置OCR语言: " + language);
-            } catch (Exception e) {
-                System.err.println("设置语言失败: " + language + ", 错误: " + e.getMessage());
-                // 使用默认语言
-                tesseract.setLanguage("chi_sim+eng");
-            }
-        }
-
-        // 设置页面分割模式
-        if (options.containsKey("pageSegMode")) {
-            try {
-                int psm = Integer.parseInt(options.get("pageSegMode").toString());
-                tesseract.setPageSegMode(psm);
-                System.out.println("设置页面分割模式: " + psm);
-            } catch (NumberFormatException e) {
-                System.err.println("无效的页面分割模式: " + options.get("pageSegMode"));
-            }
-        }
-
-        // 设置OCR引擎模式
-        if (options.containsKey("ocrEngineMode")) {
-            try {
-                int oem = Integer.parseInt(options.get("ocrEngineMode").toString());
-                tesseract.setOcrEngineMode(oem);
-                System.out.println("设置OCR引擎模式: " + oem);
-            } catch (NumberFormatException e) {
-                System.err.println("无效的OCR引擎模式: " + options.get("ocrEngineMode"));
-            }
-        }
-    }
-
-    private long estimateProcessingTime(BufferedImage image) {
-        // 根据图像大小估算处理时间
-        long pixels = image.getWidth() * image.getHeight();
-        return pixels / 1000; // 每1000像素约1毫秒
-    }
-
-    private float estimateConfidence(String text, BufferedImage image, Map<String, Object> options) {
-        // 估算置信度的方法
-        // 1. 基于文本长度和图像大小的简单估算
-        float baseConfidence = 85.0f;
-
-        // 2. 如果文本太短，降低置信度
-        if (text.length() < 10) {
-            baseConfidence -= 20.0f;
-        }
-
-        // 3. 如果图像质量差（太小），降低置信度
-        if (image.getWidth() < 100 || image.getHeight() < 100) {
-            baseConfidence -= 15.0f;
-        }
-
-        // 4. 添加一些随机性以模拟真实情况
-        Random random = new Random();
-        float randomFactor = random.nextFloat() * 10.0f - 5.0f; // -5 到 +5
-        baseConfidence += randomFactor;
-
-        // 确保置信度在合理范围内
-        return Math.max(0.0f, Math.min(100.0f, baseConfidence));
-    }
 }
\ No newline at end of file
@@ -0,0 +1,517 @@
+package com.vue.readingapp.ocr.core;
+
+import com.sun.jna.Pointer;
+import com.vue.readingapp.ocr.config.OcrConfig;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.ITessAPI.TessPageIterator;
+import net.sourceforge.tess4j.ITessAPI.TessResultIterator;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tesseract 引擎池
+ *
+ * Tesseract 的原生句柄（TessBaseAPI）不是线程安全的，而且初始化一次（加载 traineddata）
+ * 需要几百毫秒。以前 TesseractEngine 共用一个实例并在每次调用时修改语言/PSM/OEM，
+ * OcrService 则每个文档都新建一个实例，两种做法都无法并行。
+ *
+ * 这个池按 (语言, PSM, OEM) 缓存已经初始化好的原生句柄：
+ *   - 同一时刻借出的句柄总数不超过 poolSize（默认等于 CPU 核数）；
+ *   - 空闲句柄按配置分组复用，配置不同时会淘汰其他分组中的空闲句柄；
+ *   - 记录借用等待时间和利用率，供统计接口查看。
+ */
+@Component
+public class TesseractEnginePool {
+
+    @Autowired
+    private OcrConfig.OcrProperties ocrProperties;
+
+    // 池大小，<= 0 时使用 CPU 核数
+    @Value("${app.ocr.engine-pool.size:0}")
+    private int configuredSize;
+
+    // 借用句柄的最长等待时间（秒）
+    @Value("${app.ocr.engine-pool.borrow-timeout-seconds:300}")
+    private long borrowTimeoutSeconds;
+
+    private int poolSize;
+    private Semaphore permits;
+    private String datapath;
+
+    // 按配置分组的空闲句柄
+    private final Map<EngineKey, Deque<PooledEngine>> idleEngines = new HashMap<>();
+    private int totalEngines = 0;
+
+    // 统计信息
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalBusyNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private long startedAt;
+
+    @PostConstruct
+    public void init() {
+        poolSize = configuredSize > 0 ? configuredSize : Runtime.getRuntime().availableProcessors();
+        permits = new Semaphore(poolSize, true);
+        startedAt = System.nanoTime();
+        datapath = prepareDatapath();
+        System.out.println("Tesseract引擎池初始化: 大小=" + poolSize + ", 数据路径=" + datapath);
+
+        // 预热一个默认配置的句柄；课设环境中允许原生库缺失，失败时不影响应用启动
+        try (PooledEngine engine = borrow(defaultKey())) {
+            System.out.println("Tesseract引擎预热成功: " + engine.getKey());
+        } catch (Throwable t) {
+            System.err.println("Tesseract引擎预热失败: " + t.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (idleEngines) {
+            for (Deque<PooledEngine> engines : idleEngines.values()) {
+                for (PooledEngine engine : engines) {
+                    engine.destroy();
+                }
+            }
+            idleEngines.clear();
+            totalEngines = 0;
+        }
+    }
+
+    /**
+     * 借用一个指定配置的引擎，使用完毕后必须调用 close() 归还（推荐 try-with-resources）
+     */
+    public PooledEngine borrow(EngineKey key) {
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutSeconds, TimeUnit.SECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new OcrProcessingException("等待OCR引擎超时，当前所有引擎都在使用中");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OcrProcessingException("等待OCR引擎时被中断", e);
+        }
+
+        long waited = System.nanoTime() - waitStart;
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        try {
+            PooledEngine engine = takeIdleOrCreate(key);
+            engine.borrowedAt = System.nanoTime();
+            engine.released = false;
+            return engine;
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 根据 OCR 选项借用引擎，未指定的参数使用 OcrProperties 中的默认值
+     */
+    public PooledEngine borrow(Map<String, Object> options) {
+        return borrow(keyFromOptions(options));
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public EngineKey defaultKey() {
+        return new EngineKey(ocrProperties.getDefaultLanguage(),
+                ocrProperties.getDefaultPageSegMode(),
+                ocrProperties.getDefaultOcrEngineMode());
+    }
+
+    public EngineKey keyFromOptions(Map<String, Object> options) {
+        EngineKey defaults = defaultKey();
+        if (options == null) {
+            return defaults;
+        }
+
+        String language = defaults.getLanguage();
+        Object languageOption = options.get("language");
+        if (languageOption != null && !languageOption.toString().trim().isEmpty()
+                && !"auto".equalsIgnoreCase(languageOption.toString())) {
+            language = languageOption.toString().trim();
+        }
+
+        int psm = parseInt(options.get("pageSegMode"), defaults.getPageSegMode());
+        int oem = parseInt(options.get("ocrEngineMode"), defaults.getOcrEngineMode());
+        return new EngineKey(language, psm, oem);
+    }
+
+    /**
+     * 获取引擎池统计信息
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        long borrows = borrowCount.get();
+        int inUse = poolSize - permits.availablePermits();
+        long uptime = Math.max(1, System.nanoTime() - startedAt);
+
+        metrics.put("poolSize", poolSize);
+        metrics.put("inUse", inUse);
+        metrics.put("waitingThreads", permits.getQueueLength());
+        synchronized (idleEngines) {
+            metrics.put("totalEngines", totalEngines);
+            Map<String, Integer> idle = new HashMap<>();
+            for (Map.Entry<EngineKey, Deque<PooledEngine>> entry : idleEngines.entrySet()) {
+                idle.put(entry.getKey().toString(), entry.getValue().size());
+            }
+            metrics.put("idleByConfig", idle);
+        }
+        metrics.put("borrowCount", borrows);
+        metrics.put("createdCount", createdCount.get());
+        metrics.put("evictedCount", evictedCount.get());
+        metrics.put("timeoutCount", timeoutCount.get());
+        metrics.put("averageWaitMs", borrows > 0 ? totalWaitNanos.get() / borrows / 1_000_000.0 : 0.0);
+        metrics.put("maxWaitMs", maxWaitNanos.get() / 1_000_000.0);
+        metrics.put("currentUtilization", poolSize > 0 ? (double) inUse / poolSize : 0.0);
+        metrics.put("averageUtilization", (double) totalBusyNanos.get() / ((double) uptime * poolSize));
+        return metrics;
+    }
+
+    private PooledEngine takeIdleOrCreate(EngineKey key) {
+        synchronized (idleEngines) {
+            Deque<PooledEngine> idle = idleEngines.get(key);
+            if (idle != null && !idle.isEmpty()) {
+                return idle.pollFirst();
+            }
+
+            // 已持有许可，说明借出的句柄少于 poolSize；若总数已满，其他分组中必然有空闲句柄可淘汰
+            if (totalEngines >= poolSize) {
+                evictOneIdle();
+            }
+            totalEngines++;
+        }
+
+        try {
+            PooledEngine engine = new PooledEngine(key, this);
+            createdCount.incrementAndGet();
+            return engine;
+        } catch (RuntimeException | Error e) {
+            synchronized (idleEngines) {
+                totalEngines--;
+            }
+            throw e;
+        }
+    }
+
+    private void evictOneIdle() {
+        for (Iterator<Map.Entry<EngineKey, Deque<PooledEngine>>> it = idleEngines.entrySet().iterator(); it.hasNext(); ) {
+            Deque<PooledEngine> engines = it.next().getValue();
+            PooledEngine victim = engines.pollLast();
+            if (engines.isEmpty()) {
+                it.remove();
+            }
+            if (victim != null) {
+                victim.destroy();
+                totalEngines--;
+                evictedCount.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void release(PooledEngine engine) {
+        totalBusyNanos.addAndGet(System.nanoTime() - engine.borrowedAt);
+        if (!engine.broken) {
+            try {
+                // 清除上一张图像及其识别结果，句柄本身（已加载的语言数据）保留复用
+                TessAPI1.TessBaseAPIClear(engine.handle);
+            } catch (Throwable t) {
+                engine.broken = true;
+            }
+        }
+        synchronized (idleEngines) {
+            if (engine.broken) {
+                engine.destroy();
+                totalEngines--;
+            } else {
+                idleEngines.computeIfAbsent(engine.getKey(), k -> new ArrayDeque<>()).addFirst(engine);
+            }
+        }
+        permits.release();
+    }
+
+    /**
+     * 准备 Tesseract 数据目录
+     *
+     * 解决中文路径兼容性问题：如果项目路径包含中文，Tesseract 原生库可能无法加载。
+     * 方案：将训练数据复制到系统临时目录（通常不含中文），整个进程只复制一次。
+     */
+    private String prepareDatapath() {
+        File sourceFolder = new File(ocrProperties.getTessdataPath());
+        if (!sourceFolder.exists()) {
+            System.err.println("源 Tessdata 目录不存在: " + sourceFolder.getAbsolutePath());
+            return sourceFolder.getAbsolutePath();
+        }
+
+        File tempFolder = new File(System.getProperty("java.io.tmpdir"), "readingapp_tessdata");
+        if (!tempFolder.exists()) {
+            tempFolder.mkdirs();
+        }
+
+        File[] langFiles = sourceFolder.listFiles((dir, name) -> name.endsWith(".traineddata"));
+        if (langFiles != null) {
+            for (File srcFile : langFiles) {
+                File destFile = new File(tempFolder, srcFile.getName());
+                try {
+                    if (!destFile.exists() || srcFile.length() != destFile.length()) {
+                        System.out.println("INFO: Copying " + srcFile.getName() + " to temp directory...");
+                        Files.copy(srcFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (Exception e) {
+                    System.err.println("复制训练数据失败: " + srcFile.getName() + ", 错误: " + e.getMessage());
+                }
+            }
+        }
+        return tempFolder.getAbsolutePath();
+    }
+
+    private int parseInt(Object value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 引擎配置：语言、页面分割模式（PSM）、引擎模式（OEM）
+     */
+    public static final class EngineKey {
+        private final String language;
+        private final int pageSegMode;
+        private final int ocrEngineMode;
+
+        public EngineKey(String language, int pageSegMode, int ocrEngineMode) {
+            this.language = language;
+            this.pageSegMode = pageSegMode;
+            this.ocrEngineMode = ocrEngineMode;
+        }
+
+        public String getLanguage() { return language; }
+        public int getPageSegMode() { return pageSegMode; }
+        public int getOcrEngineMode() { return ocrEngineMode; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof EngineKey)) return false;
+            EngineKey other = (EngineKey) o;
+            return pageSegMode == other.pageSegMode
+                    && ocrEngineMode == other.ocrEngineMode
+                    && language.equals(other.language);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(language, pageSegMode, ocrEngineMode);
+        }
+
+        @Override
+        public String toString() {
+            return language + "/psm" + pageSegMode + "/oem" + ocrEngineMode;
+        }
+    }
+
+    /**
+     * 池中的一个已初始化的 Tesseract 原生句柄，同一时刻只会被一个线程持有
+     */
+    public static final class PooledEngine implements AutoCloseable {
+        private final EngineKey key;
+        private final TesseractEnginePool pool;
+        private final TessBaseAPI handle;
+        private long borrowedAt;
+        private boolean broken;
+        private boolean released;
+
+        private PooledEngine(EngineKey key, TesseractEnginePool pool) {
+            this.key = key;
+            this.pool = pool;
+            this.handle = TessAPI1.TessBaseAPICreate();
+            int rc = TessAPI1.TessBaseAPIInit2(handle, pool.datapath, key.getLanguage(), key.getOcrEngineMode());
+            if (rc != 0) {
+                TessAPI1.TessBaseAPIDelete(handle);
+                throw new OcrProcessingException("Tesseract初始化失败，语言: " + key.getLanguage());
+            }
+            TessAPI1.TessBaseAPISetPageSegMode(handle, key.getPageSegMode());
+        }
+
+        public EngineKey getKey() { return key; }
+
+        /**
+         * 设置待识别图像，后续可以调用 getText() 等方法读取识别结果
+         */
+        public void setImage(BufferedImage image) {
+            ByteBuffer buffer = ImageIOHelper.convertImageData(image);
+            int bitsPerPixel = image.getColorModel().getPixelSize();
+            int bytesPerPixel = bitsPerPixel / 8;
+            int bytesPerLine = (int) Math.ceil(image.getWidth() * bitsPerPixel / 8.0);
+            TessAPI1.TessBaseAPISetImage(handle, buffer, image.getWidth(), image.getHeight(), bytesPerPixel, bytesPerLine);
+        }
+
+        /**
+         * 识别图像并返回全文，识别结果在归还前仍可通过 getMeanConfidence() 等方法读取
+         */
+        public String recognizeText(BufferedImage image) {
+            try {
+                setImage(image);
+                return getText();
+            } catch (RuntimeException | Error e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        /**
+         * 读取当前图像的识别文本（未识别时会自动触发识别）
+         */
+        public String getText() {
+            Pointer textPointer = TessAPI1.TessBaseAPIGetUTF8Text(handle);
+            if (textPointer == null) {
+                return "";
+            }
+            try {
+                return textPointer.getString(0, StandardCharsets.UTF_8.name());
+            } finally {
+                TessAPI1.TessDeleteText(textPointer);
+            }
+        }
+
+        /**
+         * 当前图像识别结果的平均置信度（0-100）
+         */
+        public int getMeanConfidence() {
+            return TessAPI1.TessBaseAPIMeanTextConf(handle);
+        }
+
+        /**
+         * 读取当前图像识别结果的行和单词（含 Tesseract 给出的置信度和像素坐标），需在识别之后调用
+         */
+        public List<OcrResult.LineInfo> getLines() {
+            try {
+                return readLines();
+            } catch (RuntimeException | Error e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        private List<OcrResult.LineInfo> readLines() {
+            List<OcrResult.LineInfo> lines = new ArrayList<>();
+            TessResultIterator ri = TessAPI1.TessBaseAPIGetIterator(handle);
+            if (ri == null) {
+                return lines;
+            }
+            try {
+                TessPageIterator pi = TessAPI1.TessResultIteratorGetPageIterator(ri);
+                TessAPI1.TessPageIteratorBegin(pi);
+                List<OcrResult.WordInfo> lineWords = null;
+                do {
+                    // 按单词遍历，遇到新的一行时先读取整行的文本、置信度和位置
+                    if (lineWords == null || TessAPI1.TessPageIteratorIsAtBeginningOf(pi, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE) == ITessAPI.TRUE) {
+                        String lineText = iteratorText(ri, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE);
+                        lineWords = new ArrayList<>();
+                        lines.add(OcrResult.LineInfo.builder()
+                                .text(lineText != null ? lineText.trim() : "")
+                                .confidence(TessAPI1.TessResultIteratorConfidence(ri, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE))
+                                .bbox(boundingBox(pi, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE))
+                                .words(lineWords)
+                                .build());
+                    }
+                    String wordText = iteratorText(ri, ITessAPI.TessPageIteratorLevel.RIL_WORD);
+                    if (wordText == null || wordText.trim().isEmpty()) {
+                        continue;
+                    }
+                    lineWords.add(OcrResult.WordInfo.builder()
+                            .text(wordText.trim())
+                            .confidence(TessAPI1.TessResultIteratorConfidence(ri, ITessAPI.TessPageIteratorLevel.RIL_WORD))
+                            .bbox(boundingBox(pi, ITessAPI.TessPageIteratorLevel.RIL_WORD))
+                            .build());
+                } while (TessAPI1.TessPageIteratorNext(pi, ITessAPI.TessPageIteratorLevel.RIL_WORD) == ITessAPI.TRUE);
+            } finally {
+                TessAPI1.TessResultIteratorDelete(ri);
+            }
+            return lines;
+        }
+
+        private static String iteratorText(TessResultIterator ri, int level) {
+            Pointer pointer = TessAPI1.TessResultIteratorGetUTF8Text(ri, level);
+            if (pointer == null) {
+                return null;
+            }
+            try {
+                return pointer.getString(0, StandardCharsets.UTF_8.name());
+            } finally {
+                TessAPI1.TessDeleteText(pointer);
+            }
+        }
+
+        private static OcrResult.BoundingBox boundingBox(TessPageIterator pi, int level) {
+            IntBuffer left = IntBuffer.allocate(1);
+            IntBuffer top = IntBuffer.allocate(1);
+            IntBuffer right = IntBuffer.allocate(1);
+            IntBuffer bottom = IntBuffer.allocate(1);
+            TessAPI1.TessPageIteratorBoundingBox(pi, level, left, top, right, bottom);
+            return OcrResult.BoundingBox.builder()
+                    .x0(left.get(0))
+                    .y0(top.get(0))
+                    .x1(right.get(0))
+                    .y1(bottom.get(0))
+                    .build();
+        }
+
+        TessBaseAPI getHandle() { return handle; }
+
+        private void destroy() {
+            try {
+                TessAPI1.TessBaseAPIEnd(handle);
+                TessAPI1.TessBaseAPIDelete(handle);
+            } catch (Throwable t) {
+                System.err.println("释放Tesseract句柄失败: " + t.getMessage());
+            }
+        }
+
+        /**
+         * 归还到池中
+         */
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            pool.release(this);
+        }
+    }
+}
@@ -1,154 +1,454 @@
 package com.vue.readingapp.ocr.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.awt.image.BufferedImage;
-import java.awt.Color;
-import java.awt.Graphics2D;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * 图像预处理：灰度化 → 二值化（固定阈值 / Otsu / 自适应）→ 中值滤波去噪 →（可选）锐化
+ *
+ * 所有阶段都直接读写栅格底层的 byte[] / int[]，不经过 getRGB/setRGB 和 Color 对象；
+ * 整页只分配两块灰度缓冲区（两张 TYPE_BYTE_GRAY 图像的底层数组），各阶段在两者之间交替读写。
+ * 每个阶段按行切分成若干条带，通过 fork-join 并行执行。
+ */
 @Component
 public class ImagePreprocessor {
 
+    // fork-join 并行度，<= 0 时使用公共 ForkJoinPool
+    @Value("${app.ocr.preprocess.parallelism:0}")
+    private int parallelism;
+
+    // 每个并行条带的行数
+    @Value("${app.ocr.preprocess.tile-rows:64}")
+    private int tileRows;
+
+    private ForkJoinPool pool;
+
+    // 自适应阈值每个条带使用的积分图缓冲区，按线程复用
+    private final ThreadLocal<int[]> integralBuffer = ThreadLocal.withInitial(() -> new int[0]);
+
+    @PostConstruct
+    public void init() {
+        pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+        if (tileRows <= 0) {
+            tileRows = 64;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null && pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
     /**
      * 图像预处理
+     *
+     * 支持的选项：
+     *   preprocess   是否启用预处理（必须为 true）
+     *   threshold    固定阈值；指定后等价于 binarization=fixed
+     *   binarization 二值化方式：otsu（默认）/ adaptive / fixed
+     *   windowSize   自适应阈值的窗口边长（默认 31）
+     *   adaptiveC    自适应阈值的百分比偏移，像素低于局部均值的 (100 - C)% 视为前景（默认 15）
+     *   kernelSize   中值滤波窗口边长（默认 3，<= 1 时跳过去噪）
+     *   sharpen      是否锐化
      */
     public BufferedImage preprocess(BufferedImage image, Map<String, Object> options) {
         if (options == null || !Boolean.TRUE.equals(options.get("preprocess"))) {
             return image;
         }
 
-        // 转换为灰度图
-        BufferedImage grayImage = convertToGrayScale(image);
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        BufferedImage front = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage back = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] frontPixels = ((DataBufferByte) front.getRaster().getDataBuffer()).getData();
+        byte[] backPixels = ((DataBufferByte) back.getRaster().getDataBuffer()).getData();
+
+        // 灰度化
+        convertToGrayScale(image, frontPixels);
 
         // 二值化
-        BufferedImage binaryImage = applyBinarization(grayImage, options);
+        applyBinarization(frontPixels, backPixels, width, height, options);
+        BufferedImage current = back;
+        byte[] src = backPixels;
+        byte[] dst = frontPixels;
 
         // 去噪
-        BufferedImage denoisedImage = applyDenoising(binaryImage, options);
+        int kernelSize = intOption(options, "kernelSize", 3);
+        if (kernelSize > 1) {
+            applyMedianFilter(src, dst, width, height, kernelSize);
+            current = current == back ? front : back;
+            byte[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
 
         // 锐化（可选）
-        if (options.containsKey("sharpen") && Boolean.TRUE.equals(options.get("sharpen"))) {
-            return applySharpening(denoisedImage);
+        if (Boolean.TRUE.equals(options.get("sharpen"))) {
+            applySharpening(src, dst, width, height);
+            current = current == back ? front : back;
         }
 
-        return denoisedImage;
+        return current;
     }
 
-    private BufferedImage convertToGrayScale(BufferedImage image) {
-        BufferedImage grayImage = new BufferedImage(
-                image.getWidth(),
-                image.getHeight(),
-                BufferedImage.TYPE_BYTE_GRAY
-        );
+    // ========== 灰度化 ==========
 
-        Graphics2D g = grayImage.createGraphics();
-        g.drawImage(image, 0, 0, null);
-        g.dispose();
+    private void convertToGrayScale(BufferedImage image, byte[] gray) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int type = image.getType();
+        int tx = -raster.getSampleModelTranslateX();
+        int ty = -raster.getSampleModelTranslateY();
 
-        return grayImage;
-    }
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && dataBuffer instanceof DataBufferInt && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            // 0x(AA)RRGGBB
+            int[] data = ((DataBufferInt) dataBuffer).getData();
+            int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            int base = dataBuffer.getOffset() + ty * stride + tx;
+            forEachStrip(height, (y0, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    int in = base + y * stride;
+                    int out = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int rgb = data[in + x];
+                        gray[out + x] = (byte) luminance((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+                    }
+                }
+            });
+            return;
+        }
+
+        if ((type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && dataBuffer instanceof DataBufferByte && raster.getSampleModel() instanceof ComponentSampleModel) {
+            byte[] data = ((DataBufferByte) dataBuffer).getData();
+            ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+            int stride = sampleModel.getScanlineStride();
+            int pixelStride = sampleModel.getPixelStride();
+            int[] bandOffsets = sampleModel.getBandOffsets();
+            int base = dataBuffer.getOffset() + ty * stride + tx * pixelStride;
 
-    private BufferedImage applyBinarization(BufferedImage image, Map<String, Object> options) {
-        int threshold = options.containsKey("threshold") ?
-                Integer.parseInt(options.get("threshold").toString()) : 128;
-
-        BufferedImage binaryImage = new BufferedImage(
-                image.getWidth(),
-                image.getHeight(),
-                BufferedImage.TYPE_BYTE_BINARY
-        );
-
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                Color color = new Color(image.getRGB(x, y));
-                int gray = (color.getRed() + color.getGreen() + color.getBlue()) / 3;
-                int newColor = gray > threshold ? Color.WHITE.getRGB() : Color.BLACK.getRGB();
-                binaryImage.setRGB(x, y, newColor);
+            if (type == BufferedImage.TYPE_BYTE_GRAY) {
+                int band = bandOffsets[0];
+                forEachStrip(height, (y0, y1) -> {
+                    for (int y = y0; y < y1; y++) {
+                        int in = base + y * stride + band;
+                        int out = y * width;
+                        for (int x = 0; x < width; x++, in += pixelStride) {
+                            gray[out + x] = data[in];
+                        }
+                    }
+                });
+            } else {
+                // 波段 0/1/2 依次为 R/G/B，偏移量由 sample model 给出（BGR/ABGR 在内存中是倒序的）
+                int rOffset = bandOffsets[0];
+                int gOffset = bandOffsets[1];
+                int bOffset = bandOffsets[2];
+                forEachStrip(height, (y0, y1) -> {
+                    for (int y = y0; y < y1; y++) {
+                        int in = base + y * stride;
+                        int out = y * width;
+                        for (int x = 0; x < width; x++, in += pixelStride) {
+                            gray[out + x] = (byte) luminance(data[in + rOffset] & 0xFF, data[in + gOffset] & 0xFF, data[in + bOffset] & 0xFF);
+                        }
+                    }
+                });
             }
+            return;
         }
 
-        return binaryImage;
+        // 其他格式（索引色、16 位等）：按整行批量 getRGB，每个条带只分配一行缓冲
+        forEachStrip(height, (y0, y1) -> {
+            int[] row = new int[width];
+            for (int y = y0; y < y1; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                int out = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    gray[out + x] = (byte) luminance((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+                }
+            }
+        });
     }
 
-    private BufferedImage applyDenoising(BufferedImage image, Map<String, Object> options) {
-        // 简单的去噪：中值滤波
-        int kernelSize = options.containsKey("kernelSize") ?
-                Integer.parseInt(options.get("kernelSize").toString()) : 3;
-
-        BufferedImage result = new BufferedImage(
-                image.getWidth(),
-                image.getHeight(),
-                image.getType()
-        );
-
-        int halfKernel = kernelSize / 2;
-
-        for (int y = halfKernel; y < image.getHeight() - halfKernel; y++) {
-            for (int x = halfKernel; x < image.getWidth() - halfKernel; x++) {
-                // 收集邻域像素
-                List<Integer> neighbors = new ArrayList<>();
-                for (int ky = -halfKernel; ky <= halfKernel; ky++) {
-                    for (int kx = -halfKernel; kx <= halfKernel; kx++) {
-                        neighbors.add(image.getRGB(x + kx, y + ky) & 0xFF);
-                    }
-                }
+    private static int luminance(int r, int g, int b) {
+        // ITU-R BT.601 定点近似：0.299 R + 0.587 G + 0.114 B
+        return (r * 77 + g * 150 + b * 29 + 128) >> 8;
+    }
+
+    // ========== 二值化 ==========
 
-                // 中值
-                neighbors.sort(Integer::compareTo);
-                int median = neighbors.get(neighbors.size() / 2);
+    private void applyBinarization(byte[] gray, byte[] binary, int width, int height, Map<String, Object> options) {
+        String method = options.containsKey("threshold") ? "fixed"
+                : String.valueOf(options.getOrDefault("binarization", "otsu")).toLowerCase();
 
-                // 设置结果像素
-                int newColor = (median << 16) | (median << 8) | median;
-                result.setRGB(x, y, newColor);
+        if ("adaptive".equals(method)) {
+            int windowSize = Math.max(3, intOption(options, "windowSize", 31));
+            int c = intOption(options, "adaptiveC", 15);
+            applyAdaptiveThreshold(gray, binary, width, height, windowSize / 2, c);
+            return;
+        }
+
+        int threshold = "fixed".equals(method) ? intOption(options, "threshold", 128) : otsuThreshold(gray);
+        forEachStrip(height, (y0, y1) -> {
+            for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                binary[i] = (gray[i] & 0xFF) > threshold ? (byte) 0xFF : 0;
             }
+        });
+    }
+
+    /**
+     * Otsu 全局阈值：取使类间方差最大的灰度级
+     */
+    private int otsuThreshold(byte[] gray) {
+        int[] histogram = new int[256];
+        for (byte value : gray) {
+            histogram[value & 0xFF]++;
         }
 
-        return result;
+        long total = gray.length;
+        long sumAll = 0;
+        for (int i = 0; i < 256; i++) {
+            sumAll += (long) i * histogram[i];
+        }
+
+        long weightBackground = 0;
+        long sumBackground = 0;
+        double maxVariance = -1;
+        int threshold = 128;
+        for (int t = 0; t < 256; t++) {
+            weightBackground += histogram[t];
+            if (weightBackground == 0) {
+                continue;
+            }
+            long weightForeground = total - weightBackground;
+            if (weightForeground == 0) {
+                break;
+            }
+            sumBackground += (long) t * histogram[t];
+            double meanBackground = (double) sumBackground / weightBackground;
+            double meanForeground = (double) (sumAll - sumBackground) / weightForeground;
+            double diff = meanBackground - meanForeground;
+            double variance = (double) weightBackground * weightForeground * diff * diff;
+            if (variance > maxVariance) {
+                maxVariance = variance;
+                threshold = t;
+            }
+        }
+        return threshold;
     }
 
-    private BufferedImage applySharpening(BufferedImage image) {
-        // 简单的锐化：拉普拉斯算子
-        int[][] kernel = {
-                {0, -1, 0},
-                {-1, 5, -1},
-                {0, -1, 0}
-        };
+    /**
+     * 自适应阈值（Bradley 局部均值法）：像素灰度低于邻域均值的 (100 - c)% 时视为前景。
+     * 每个条带在自己的行范围（上下各扩展 radius 行）上构建积分图，条带内的求和都不会溢出 int。
+     */
+    private void applyAdaptiveThreshold(byte[] gray, byte[] binary, int width, int height, int radius, int c) {
+        forEachStrip(height, (y0, y1) -> {
+            int top = Math.max(0, y0 - radius);
+            int bottom = Math.min(height, y1 + radius);
+            int rows = bottom - top;
+            int stride = width + 1;
+            int size = (rows + 1) * stride;
+
+            int[] integral = integralBuffer.get();
+            if (integral.length < size) {
+                integral = new int[size];
+                integralBuffer.set(integral);
+            }
 
-        return applyConvolution(image, kernel);
+            // integral[(r + 1) * stride + (x + 1)] = 条带内 [top, top + r] × [0, x] 的灰度和
+            for (int x = 0; x <= width; x++) {
+                integral[x] = 0;
+            }
+            for (int r = 0; r < rows; r++) {
+                int rowSum = 0;
+                int in = (top + r) * width;
+                int out = (r + 1) * stride;
+                integral[out] = 0;
+                for (int x = 0; x < width; x++) {
+                    rowSum += gray[in + x] & 0xFF;
+                    integral[out + x + 1] = integral[out - stride + x + 1] + rowSum;
+                }
+            }
+
+            for (int y = y0; y < y1; y++) {
+                int ya = Math.max(top, y - radius) - top;
+                int yb = Math.min(bottom - 1, y + radius) - top + 1;
+                int out = y * width;
+                for (int x = 0; x < width; x++) {
+                    int xa = Math.max(0, x - radius);
+                    int xb = Math.min(width - 1, x + radius) + 1;
+                    int count = (yb - ya) * (xb - xa);
+                    int sum = integral[yb * stride + xb] - integral[ya * stride + xb]
+                            - integral[yb * stride + xa] + integral[ya * stride + xa];
+                    long value = (long) (gray[out + x] & 0xFF) * count * 100;
+                    binary[out + x] = value <= (long) sum * (100 - c) ? 0 : (byte) 0xFF;
+                }
+            }
+        });
     }
 
-    private BufferedImage applyConvolution(BufferedImage image, int[][] kernel) {
-        BufferedImage result = new BufferedImage(
-                image.getWidth(),
-                image.getHeight(),
-                image.getType()
-        );
-
-        int kernelSize = kernel.length;
-        int halfKernel = kernelSize / 2;
-
-        for (int y = halfKernel; y < image.getHeight() - halfKernel; y++) {
-            for (int x = halfKernel; x < image.getWidth() - halfKernel; x++) {
-                int sum = 0;
-
-                for (int ky = -halfKernel; ky <= halfKernel; ky++) {
-                    for (int kx = -halfKernel; kx <= halfKernel; kx++) {
-                        int pixel = image.getRGB(x + kx, y + ky) & 0xFF;
-                        int weight = kernel[ky + halfKernel][kx + halfKernel];
-                        sum += pixel * weight;
+    // ========== 去噪 ==========
+
+    /**
+     * 中值滤波（Huang 滑动直方图）：每行从左到右移动窗口时只移出/移入一列像素，
+     * 并维护"小于当前中值的像素个数"来增量调整中值，单像素代价为 O(k) 而不是排序的 O(k² log k)。
+     * 边界按最近像素复制处理。
+     */
+    private void applyMedianFilter(byte[] src, byte[] dst, int width, int height, int kernelSize) {
+        int half = kernelSize / 2;
+        int window = (2 * half + 1) * (2 * half + 1);
+        int medianRank = window / 2;
+
+        forEachStrip(height, (y0, y1) -> {
+            int[] histogram = new int[256];
+            for (int y = y0; y < y1; y++) {
+                Arrays.fill(histogram, 0);
+                for (int ky = -half; ky <= half; ky++) {
+                    int row = clamp(y + ky, height) * width;
+                    for (int kx = -half; kx <= half; kx++) {
+                        histogram[src[row + clamp(kx, width)] & 0xFF]++;
                     }
                 }
 
-                // 限制范围
-                sum = Math.max(0, Math.min(255, sum));
+                int median = 0;
+                int below = 0;
+                while (below + histogram[median] <= medianRank) {
+                    below += histogram[median];
+                    median++;
+                }
+                int out = y * width;
+                dst[out] = (byte) median;
+
+                for (int x = 1; x < width; x++) {
+                    int removeX = clamp(x - half - 1, width);
+                    int addX = clamp(x + half, width);
+                    for (int ky = -half; ky <= half; ky++) {
+                        int row = clamp(y + ky, height) * width;
+                        int removed = src[row + removeX] & 0xFF;
+                        histogram[removed]--;
+                        if (removed < median) {
+                            below--;
+                        }
+                        int added = src[row + addX] & 0xFF;
+                        histogram[added]++;
+                        if (added < median) {
+                            below++;
+                        }
+                    }
+                    while (below > medianRank) {
+                        median--;
+                        below -= histogram[median];
+                    }
+                    while (below + histogram[median] <= medianRank) {
+                        below += histogram[median];
+                        median++;
+                    }
+                    dst[out + x] = (byte) median;
+                }
+            }
+        });
+    }
+
+    // ========== 锐化 ==========
+
+    /**
+     * 拉普拉斯锐化：5 * 中心 - 上下左右
+     */
+    private void applySharpening(byte[] src, byte[] dst, int width, int height) {
+        forEachStrip(height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                int up = clamp(y - 1, height) * width;
+                int down = clamp(y + 1, height) * width;
+                for (int x = 0; x < width; x++) {
+                    int left = clamp(x - 1, width);
+                    int right = clamp(x + 1, width);
+                    int sum = 5 * (src[row + x] & 0xFF)
+                            - (src[up + x] & 0xFF) - (src[down + x] & 0xFF)
+                            - (src[row + left] & 0xFF) - (src[row + right] & 0xFF);
+                    dst[row + x] = (byte) Math.max(0, Math.min(255, sum));
+                }
+            }
+        });
+    }
+
+    // ========== 并行执行 ==========
 
-                int newColor = (sum << 16) | (sum << 8) | sum;
-                result.setRGB(x, y, newColor);
+    /**
+     * 处理 [y0, y1) 行的条带操作
+     */
+    private interface StripOperation {
+        void apply(int y0, int y1);
+    }
+
+    private void forEachStrip(int height, StripOperation operation) {
+        if (height <= tileRows) {
+            operation.apply(0, height);
+            return;
+        }
+        pool.invoke(new StripTask(0, height, tileRows, operation));
+    }
+
+    private static class StripTask extends RecursiveAction {
+        private final int y0;
+        private final int y1;
+        private final int tileRows;
+        private final StripOperation operation;
+
+        StripTask(int y0, int y1, int tileRows, StripOperation operation) {
+            this.y0 = y0;
+            this.y1 = y1;
+            this.tileRows = tileRows;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= tileRows) {
+                operation.apply(y0, y1);
+                return;
+            }
+            int mid = y0 + ((y1 - y0) / tileRows / 2) * tileRows;
+            if (mid <= y0) {
+                mid = y0 + tileRows;
             }
+            invokeAll(new StripTask(y0, mid, tileRows, operation), new StripTask(mid, y1, tileRows, operation));
         }
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : (value >= size ? size - 1 : value);
+    }
 
-        return result;
+    private static int intOption(Map<String, Object> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
-}
\ No newline at end of file
+}
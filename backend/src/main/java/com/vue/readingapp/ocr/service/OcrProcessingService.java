@@ -2,6 +2,7 @@ package com.vue.readingapp.ocr.service;
 
 import com.vue.readingapp.ocr.core.OcrEngine;
 import com.vue.readingapp.ocr.core.OcrResult;
+import com.vue.readingapp.ocr.core.TesseractEnginePool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.awt.image.BufferedImage;
@@ -22,6 +23,9 @@ public class OcrProcessingService {
     @Autowired
     private ImagePreprocessor imagePreprocessor;
 
+    @Autowired
+    private TesseractEnginePool enginePool;
+
     /**
      * 处理图像OCR
      */
@@ -85,6 +89,7 @@ public class OcrProcessingService {
         info.put("engineName", ocrEngine.getEngineName());
         info.put("supportedLanguages", ocrEngine.getSupportedLanguages());
         info.put("version", "Tesseract 4.1.1");
+        info.put("enginePool", enginePool.getMetrics());
         return info;
     }
 
@@ -0,0 +1,323 @@
+package com.vue.readingapp.ocr.service;
+
+import com.vue.readingapp.ocr.core.OcrEngine;
+import com.vue.readingapp.ocr.core.OcrResult;
+import com.vue.readingapp.ocr.core.TesseractEnginePool;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.reader.ReaderPageCache;
+import com.vue.readingapp.reader.index.DocumentTextIndexService;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PDF 分页并行 OCR 流水线
+ *
+ * 四个阶段：
+ *   0. 文本层提取：先用 PDFTextStripper 读取该页文本，质量合格的页面直接进入持久化，不渲染也不 OCR；
+ *   1. 渲染：PDDocument 不是线程安全的，由调用线程按顺序逐页渲染；
+ *   2. 识别：渲染好的页面交给识别线程池并行 OCR（每个线程从引擎池借用 Tesseract 句柄）；
+ *      先按较低的 initial-dpi 渲染识别，识别出文字但平均置信度低于阈值的页面再由调用线程按 render-dpi 重新渲染、重新识别，
+ *      两次结果取置信度较高的一次；清晰的扫描件只需一次低分辨率识别，质量差的页面仍然得到高分辨率的结果，
+ *      空白页、分隔页和纯插图页没有识别出文字（置信度为 0），不再重新识别；
+ *   3. 持久化：识别完成的页面攒够一批后用 JDBC 批量写入 document_pages，并更新 ocr_tasks.progress。
+ *
+ * 背压：同时存在的已渲染页面数量不超过 maxInFlightPages，
+ * 500 页的 PDF 也只会在内存中保留少量整页 BufferedImage。
+ * 取消：任务被取消时执行线程收到中断，每处理一页前检查一次，取消所有在途识别后抛出 CancellationException。
+ */
+@Component
+public class PdfOcrPipeline {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OcrEngine ocrEngine;
+
+    @Autowired
+    private TesseractEnginePool enginePool;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private DocumentTextIndexService documentTextIndexService;
+
+    @Autowired
+    private PdfTextLayerExtractor textLayerExtractor;
+
+    // 渲染 DPI（低置信度页面重新识别时使用）
+    @Value("${app.ocr.pipeline.render-dpi:300}")
+    private int renderDpi;
+
+    // 首次识别的渲染 DPI，<= 0 或不低于 render-dpi 时不做两级识别，直接按 render-dpi 渲染
+    @Value("${app.ocr.pipeline.initial-dpi:200}")
+    private int initialDpi;
+
+    // 首次识别出了文字、但平均置信度低于该值（0-100）时按 render-dpi 重新识别
+    @Value("${app.ocr.pipeline.retry-below-confidence:70}")
+    private float retryBelowConfidence;
+
+    // 同时处于"已渲染/识别中"状态的最大页数，<= 0 时为识别线程数的 2 倍
+    @Value("${app.ocr.pipeline.max-in-flight-pages:0}")
+    private int configuredMaxInFlight;
+
+    // 每批写入 document_pages 的页数
+    @Value("${app.ocr.pipeline.persist-batch-size:10}")
+    private int persistBatchSize;
+
+    private ExecutorService recognitionExecutor;
+    private int maxInFlightPages;
+
+    @PostConstruct
+    public void init() {
+        int workers = enginePool.getPoolSize();
+        maxInFlightPages = configuredMaxInFlight > 0 ? configuredMaxInFlight : workers * 2;
+        AtomicInteger threadIndex = new AtomicInteger();
+        recognitionExecutor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "ocr-recognize-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recognitionExecutor.shutdownNow();
+    }
+
+    /**
+     * 识别后的单页结果
+     */
+    private static class PageResult {
+        private final int pageNumber;
+        private final String text;
+        private final float confidence;
+        // 识别出的单词数，文本层提取的页面为 -1
+        private final int wordCount;
+        // 识别时的渲染 DPI，文本层提取的页面为 0
+        private final int dpi;
+
+        PageResult(int pageNumber, String text, float confidence, int wordCount, int dpi) {
+            this.pageNumber = pageNumber;
+            this.text = text;
+            this.confidence = confidence;
+            this.wordCount = wordCount;
+            this.dpi = dpi;
+        }
+    }
+
+    /**
+     * 整份 PDF 的处理结果
+     */
+    public static class PdfResult {
+        private final List<String> pageTexts;
+        private final int textLayerPages;
+        private final int ocrPages;
+        private final int highDpiRetryPages;
+        private final float meanConfidence;
+
+        PdfResult(List<String> pageTexts, int textLayerPages, int ocrPages, int highDpiRetryPages, float meanConfidence) {
+            this.pageTexts = pageTexts;
+            this.textLayerPages = textLayerPages;
+            this.ocrPages = ocrPages;
+            this.highDpiRetryPages = highDpiRetryPages;
+            this.meanConfidence = meanConfidence;
+        }
+
+        /** 每一页的文本（下标 0 对应第 1 页） */
+        public List<String> getPageTexts() { return pageTexts; }
+        /** 直接使用文本层的页数 */
+        public int getTextLayerPages() { return textLayerPages; }
+        /** 经过 OCR 识别的页数 */
+        public int getOcrPages() { return ocrPages; }
+        /** 因首次识别置信度过低而按高 DPI 重新识别的页数 */
+        public int getHighDpiRetryPages() { return highDpiRetryPages; }
+        /** 各页置信度的平均值，文本层提取的页面按 100 计 */
+        public float getMeanConfidence() { return meanConfidence; }
+    }
+
+    /**
+     * 处理整份 PDF：有可用文本层的页面直接提取，其余页面 OCR，逐批写入 document_pages
+     *
+     * @param documentId 文档ID
+     * @param pdfFile PDF 文件
+     * @param ocrOptions OCR 选项（语言、PSM 等）
+     * @param taskId ocr_tasks 中的任务ID，用于汇报进度
+     * @return 按页码排列的文本，以及提取 / OCR 的页数
+     * @throws CancellationException 执行线程被中断（任务已取消）
+     */
+    public PdfResult process(Integer documentId, File pdfFile, Map<String, Object> ocrOptions, String taskId) throws Exception {
+        try (PDDocument document = PDDocument.load(pdfFile)) {
+            int totalPages = document.getNumberOfPages();
+            PDFRenderer renderer = new PDFRenderer(document);
+            PDFTextStripper stripper = textLayerExtractor.isEnabled() ? textLayerExtractor.newStripper() : null;
+            String[] pageTexts = new String[totalPages];
+            int textLayerPages = 0;
+            int ocrPages = 0;
+            int highDpiRetryPages = 0;
+            float confidenceSum = 0;
+            int firstPassDpi = initialDpi > 0 && initialDpi < renderDpi ? initialDpi : renderDpi;
+
+            CompletionService<PageResult> completionService = new ExecutorCompletionService<>(recognitionExecutor);
+            List<Future<PageResult>> futures = new ArrayList<>();
+            List<PageResult> pendingWrites = new ArrayList<>();
+            // 正在按高 DPI 重新识别的页面的首次识别结果
+            Map<Integer, PageResult> firstPassResults = new HashMap<>();
+            int nextPageIndex = 0;
+            int inFlight = 0;
+            int persisted = 0;
+
+            try {
+                while (persisted + pendingWrites.size() < totalPages) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException("OCR 任务 " + taskId + " 已取消，已处理 " + persisted + "/" + totalPages + " 页");
+                    }
+                    // 渲染阶段：未达到在途上限时继续处理下一页
+                    Future<PageResult> done;
+                    if (nextPageIndex < totalPages && inFlight < maxInFlightPages) {
+                        final int pageNumber = nextPageIndex + 1;
+                        PdfTextLayerExtractor.PageText pageText = stripper != null
+                                ? textLayerExtractor.extractPage(document, stripper, pageNumber) : null;
+                        if (pageText != null && pageText.isUsable()) {
+                            // 文本层可用：不占用识别线程，直接等待写入
+                            pendingWrites.add(new PageResult(pageNumber, pageText.getText(), 100.0f, -1, 0));
+                            textLayerPages++;
+                        } else {
+                            futures.add(submitPage(completionService, renderer, pageNumber, firstPassDpi, ocrOptions));
+                            inFlight++;
+                            ocrPages++;
+                        }
+                        nextPageIndex++;
+
+                        // 非阻塞地收集已完成的页面，避免渲染太快时结果积压
+                        done = completionService.poll();
+                    } else {
+                        // 达到在途上限或已全部渲染：阻塞等待识别线程完成一页
+                        done = completionService.take();
+                    }
+
+                    while (done != null) {
+                        inFlight--;
+                        PageResult result = done.get();
+                        PageResult firstPass = firstPassResults.remove(result.pageNumber);
+                        if (firstPass != null) {
+                            // 高 DPI 结果不一定更好（例如噪点被放大），保留置信度较高的一次
+                            pendingWrites.add(result.confidence >= firstPass.confidence ? result : firstPass);
+                        } else if (result.dpi < renderDpi && result.wordCount > 0 && result.confidence < retryBelowConfidence) {
+                            // 低分辨率识别质量不够：由持有 PDDocument 的当前线程按高 DPI 重新渲染后再识别
+                            firstPassResults.put(result.pageNumber, result);
+                            futures.add(submitPage(completionService, renderer, result.pageNumber, renderDpi, ocrOptions));
+                            inFlight++;
+                            highDpiRetryPages++;
+                        } else {
+                            pendingWrites.add(result);
+                        }
+                        done = completionService.poll();
+                    }
+
+                    // 持久化阶段：攒够一批或全部完成时批量写入
+                    boolean allDone = persisted + pendingWrites.size() == totalPages;
+                    if (pendingWrites.size() >= persistBatchSize || (allDone && !pendingWrites.isEmpty())) {
+                        persistBatch(documentId, pendingWrites);
+                        for (PageResult result : pendingWrites) {
+                            pageTexts[result.pageNumber - 1] = result.text;
+                            confidenceSum += result.confidence;
+                        }
+                        persisted += pendingWrites.size();
+                        pendingWrites.clear();
+                        updateProgress(taskId, documentId, persisted, totalPages);
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new Exception("第 " + nextPageIndex + " 页附近识别失败: " + cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                // 等待识别结果时被取消
+                Thread.currentThread().interrupt();
+                throw new CancellationException("OCR 任务 " + taskId + " 已取消，已处理 " + persisted + "/" + totalPages + " 页");
+            } finally {
+                for (Future<PageResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+
+            System.out.println("INFO: [" + LocalDateTime.now() + "] PDF document " + documentId + ": " + totalPages + " pages, "
+                    + textLayerPages + " extracted from text layer, " + ocrPages + " OCR'd at " + firstPassDpi + " DPI, "
+                    + highDpiRetryPages + " re-OCR'd at " + renderDpi + " DPI");
+            float meanConfidence = totalPages > 0 ? confidenceSum / totalPages : 0.0f;
+            return new PdfResult(Arrays.asList(pageTexts), textLayerPages, ocrPages, highDpiRetryPages, meanConfidence);
+        }
+    }
+
+    // 在调用线程中渲染一页（PDDocument 不是线程安全的），识别交给识别线程池
+    private Future<PageResult> submitPage(CompletionService<PageResult> completionService, PDFRenderer renderer,
+                                          int pageNumber, int dpi, Map<String, Object> ocrOptions) throws IOException {
+        BufferedImage image = renderer.renderImageWithDPI(pageNumber - 1, dpi, ImageType.RGB);
+        return completionService.submit(() -> {
+            OcrResult result = ocrEngine.recognize(image, ocrOptions);
+            // 不提供单词列表的引擎按文本中的词数计算
+            String text = result.getText() != null ? result.getText().trim() : "";
+            int wordCount = result.getWords() != null ? result.getWords().size()
+                    : text.isEmpty() ? 0 : text.split("\\s+").length;
+            return new PageResult(pageNumber, result.getText(), result.getConfidence(), wordCount, dpi);
+        });
+    }
+
+    private void persistBatch(Integer documentId, List<PageResult> batch) throws Exception {
+        // 每批检查一次文档是否仍然存在，防止继续处理已删除的文档
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM documents WHERE document_id = ?", Integer.class, documentId);
+        if (count == null || count == 0) {
+            throw new Exception("文档 ID " + documentId + " 已不存在，停止 OCR 处理。");
+        }
+
+        String sql = "INSERT INTO document_pages (page_id, document_id, page_number, content, word_count, character_count, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, NOW(), NOW()) " +
+                "ON DUPLICATE KEY UPDATE content = VALUES(content), word_count = VALUES(word_count), " +
+                "character_count = VALUES(character_count), updated_at = NOW()";
+
+        List<Object[]> args = new ArrayList<>();
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        for (PageResult result : batch) {
+            String content = result.text;
+            int wordCount = content != null ? content.split("\\s+").length : 0;
+            int charCount = content != null ? content.length() : 0;
+            args.add(new Object[]{"page_" + documentId + "_" + result.pageNumber, documentId, result.pageNumber,
+                    content, wordCount, charCount});
+            pages.put(result.pageNumber, content);
+        }
+        jdbcTemplate.batchUpdate(sql, args);
+        searchIndexService.onPagesWritten(documentId, pages);
+        readerPageCache.invalidateDocument(documentId);
+        documentTextIndexService.invalidate(documentId);
+        System.out.println("INFO: 批量保存 " + batch.size() + " 页到 document_pages, documentId=" + documentId);
+    }
+
+    private void updateProgress(String taskId, Integer documentId, int done, int total) {
+        int progress = total > 0 ? done * 100 / total : 100;
+        // 100% 由调用方在写入最终结果时设置
+        progress = Math.min(progress, 99);
+        jdbcTemplate.update("UPDATE ocr_tasks SET progress = ?, updated_at = ? WHERE task_id = ?",
+                progress, LocalDateTime.now(), taskId);
+        jdbcTemplate.update("UPDATE documents SET processing_progress = ? WHERE document_id = ?", progress, documentId);
+    }
+}
@@ -0,0 +1,264 @@
+package com.vue.readingapp.ocr.service;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.util.Matrix;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * PDF 文本层提取
+ *
+ * 电子版 PDF（教材、论文导出的 PDF）本身带有文本层，直接用 PDFTextStripper 读取即可，
+ * 不需要按 300 DPI 渲染再交给 Tesseract。扫描件只有图片，或者字体缺少 ToUnicode 映射导致提取出乱码，
+ * 这两类页面仍然走 OCR。
+ *
+ * 判定按页进行：同一份 PDF 里正文是文字、插图页是扫描图的情况很常见。
+ * 扫描件上常有后加的文字（"Downloaded from … licensed to …"之类的页眉页脚、水印），
+ * 字数和质量都能过关，但正文仍在图片里。所以大部分面积被图片覆盖的页面，
+ * 文本层的字数还要与图片面积相称（扫描后带隐藏 OCR 文本层的 PDF 满足这一点），否则照常 OCR。
+ */
+@Component
+public class PdfTextLayerExtractor {
+
+    // 是否启用文本层提取；关闭后所有页面都走 OCR
+    @Value("${app.ocr.text-layer.enabled:true}")
+    private boolean enabled;
+
+    // 一页至少要有多少个非空白字符才认为有文本层（页眉页码之类的少量文字不算）
+    @Value("${app.ocr.text-layer.min-chars:30}")
+    private int minChars;
+
+    // 可读字符占非空白字符的最低比例，低于该值视为乱码
+    @Value("${app.ocr.text-layer.min-quality:0.85}")
+    private double minQuality;
+
+    // 图片覆盖的面积占页面的比例达到该值时，视为以图片为主的页面
+    @Value("${app.ocr.text-layer.image-page-coverage:0.5}")
+    private double imagePageCoverage;
+
+    // 以图片为主的页面，每平方英寸图片面积至少要有多少个非空白字符（正文页通常在 25 以上）
+    @Value("${app.ocr.text-layer.image-page-min-density:5}")
+    private double imagePageMinDensity;
+
+    /**
+     * 单页提取结果
+     */
+    public static class PageText {
+        private final String text;
+        private final double quality;
+        private final boolean usable;
+
+        PageText(String text, double quality, boolean usable) {
+            this.text = text;
+            this.quality = quality;
+            this.usable = usable;
+        }
+
+        public String getText() { return text; }
+        /** 文本质量评分（0 ~ 1） */
+        public double getQuality() { return quality; }
+        /** 文本层可以直接使用，不需要 OCR */
+        public boolean isUsable() { return usable; }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为一份文档创建提取器。PDFTextStripper 不是线程安全的，调用方按文档各自持有一个实例。
+     */
+    public PDFTextStripper newStripper() throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setLineSeparator("\n");
+        return stripper;
+    }
+
+    /**
+     * 提取一页的文本层并评估质量
+     *
+     * @param pageNumber 页码（从 1 开始）
+     */
+    public PageText extractPage(PDDocument document, PDFTextStripper stripper, int pageNumber) throws IOException {
+        stripper.setStartPage(pageNumber);
+        stripper.setEndPage(pageNumber);
+        String text = stripper.getText(document).trim();
+        double quality = score(text);
+        int chars = countNonWhitespace(text);
+        boolean usable = chars >= minChars && quality >= minQuality;
+        if (usable) {
+            usable = coversImages(document.getPage(pageNumber - 1), chars);
+        }
+        return new PageText(text, quality, usable);
+    }
+
+    /**
+     * 以图片为主的页面，文本层字数是否与图片面积相称；不是以图片为主的页面直接返回 true
+     */
+    private boolean coversImages(PDPage page, int chars) {
+        PDRectangle box = page.getCropBox();
+        double pageArea = (double) box.getWidth() * box.getHeight();
+        if (pageArea <= 0) {
+            return true;
+        }
+        double imageArea;
+        try {
+            ImageAreaCollector collector = new ImageAreaCollector(page);
+            collector.processPage(page);
+            imageArea = Math.min(collector.imageArea, pageArea);
+        } catch (Exception e) {
+            // 无法解析页面内容时按扫描页处理，交给 OCR
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to measure images on PDF page: " + e.getMessage());
+            return false;
+        }
+        if (imageArea < pageArea * imagePageCoverage) {
+            return true;
+        }
+        // PDF 用户空间单位为 1/72 英寸
+        double squareInches = imageArea / (72.0 * 72.0);
+        return chars >= imagePageMinDensity * squareInches;
+    }
+
+    /**
+     * 累计页面上绘制的图片面积（包括表单 XObject 中的图片和内联图片），不解码图片数据
+     */
+    static final class ImageAreaCollector extends PDFGraphicsStreamEngine {
+        double imageArea = 0;
+
+        ImageAreaCollector(PDPage page) {
+            super(page);
+        }
+
+        @Override
+        public void drawImage(PDImage pdImage) {
+            // 图片画在单位正方形上，当前变换矩阵的行列式就是它在页面上的面积
+            Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+            imageArea += Math.abs(ctm.getScaleX() * ctm.getScaleY() - ctm.getShearX() * ctm.getShearY());
+        }
+
+        @Override
+        public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) { }
+
+        @Override
+        public void clip(int windingRule) { }
+
+        @Override
+        public void moveTo(float x, float y) { }
+
+        @Override
+        public void lineTo(float x, float y) { }
+
+        @Override
+        public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) { }
+
+        @Override
+        public Point2D getCurrentPoint() {
+            return new Point2D.Float();
+        }
+
+        @Override
+        public void closePath() { }
+
+        @Override
+        public void endPath() { }
+
+        @Override
+        public void strokePath() { }
+
+        @Override
+        public void fillPath(int windingRule) { }
+
+        @Override
+        public void fillAndStrokePath(int windingRule) { }
+
+        @Override
+        public void shadingFill(COSName shadingName) { }
+    }
+
+    /**
+     * 文本质量评分
+     *
+     * 1. 字符层面：字母、数字（含中日韩文字）和常用标点算作可读字符，
+     *    U+FFFD 替换符、私有区字符、控制字符说明字体映射缺失；
+     * 2. 单词层面：拉丁文单词中不含元音的比例过高，通常是字体编码错位后的"乱码字母"。
+     */
+    static double score(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0.0;
+        }
+
+        int total = 0;
+        int readable = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
+                continue;
+            }
+            total++;
+            if (cp == 0xFFFD || Character.getType(cp) == Character.PRIVATE_USE || Character.isISOControl(cp)) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(cp) || isCommonPunctuation(cp)) {
+                readable++;
+            }
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+        double charScore = (double) readable / total;
+
+        int latinWords = 0;
+        int wordsWithVowel = 0;
+        for (String token : text.split("[^A-Za-z]+")) {
+            if (token.length() < 2) {
+                continue;
+            }
+            latinWords++;
+            if (token.matches(".*[AEIOUYaeiouy].*")) {
+                wordsWithVowel++;
+            }
+        }
+        // 单词太少时不做判断（公式页、目录页）
+        if (latinWords >= 10) {
+            double vowelRatio = (double) wordsWithVowel / latinWords;
+            if (vowelRatio < 0.6) {
+                charScore *= vowelRatio / 0.6;
+            }
+        }
+        return charScore;
+    }
+
+    private static boolean isCommonPunctuation(int cp) {
+        int type = Character.getType(cp);
+        return type == Character.OTHER_PUNCTUATION
+                || type == Character.DASH_PUNCTUATION
+                || type == Character.START_PUNCTUATION
+                || type == Character.END_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION
+                || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.CONNECTOR_PUNCTUATION
+                || type == Character.MATH_SYMBOL
+                || type == Character.CURRENCY_SYMBOL;
+    }
+
+    private static int countNonWhitespace(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
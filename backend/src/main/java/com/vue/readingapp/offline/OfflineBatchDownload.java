@@ -11,6 +11,9 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 @RestController
 @RequestMapping("/api/v1/offline")
@@ -19,6 +22,12 @@ public class OfflineBatchDownload {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到批量下载文档到离线请求 ===");
@@ -140,8 +149,7 @@ public class OfflineBatchDownload {
         }
 
         try {
-            String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return null;
@@ -246,26 +254,39 @@ public class OfflineBatchDownload {
                             "VALUES (?, ?, ?, ?, 'pending', 0, NOW(), ?)";
                     jdbcTemplate.update(insertDownloadSql, downloadId, userId, documentId, offlineDocId, batchId);
 
+                    // 提交异步下载任务（简化处理）：批量下载优先级低于单个文档下载，队列已满时该文档下载失败
+                    try {
+                        backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.SYNC, downloadId, BackgroundTaskExecutor.Priority.LOW, () -> {
+                            try {
+                                Thread.sleep(1000);
+                                // 已取消的下载不会被改为已完成
+                                String updateSql = "UPDATE offline_downloads SET status = 'completed', progress = 100, " +
+                                        "end_time = NOW() WHERE download_id = ? AND status = 'pending'";
+                                if (jdbcTemplate.update(updateSql, downloadId) == 0) {
+                                    return;
+                                }
+
+                                String updateOfflineSql = "UPDATE offline_documents SET is_synced = TRUE, updated_at = NOW() " +
+                                        "WHERE offline_doc_id = ?";
+                                jdbcTemplate.update(updateOfflineSql, offlineDocId);
+
+                            } catch (InterruptedException e) {
+                                System.out.println("下载任务已中断: " + downloadId);
+                            } catch (Exception e) {
+                                System.err.println("下载任务执行失败: " + e.getMessage());
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        String failSql = "UPDATE offline_downloads SET status = 'failed', error = ?, end_time = NOW() WHERE download_id = ?";
+                        jdbcTemplate.update(failSql, "下载队列已满", downloadId);
+                        results.add(new DownloadResult(documentId, false, "下载队列已满，请稍后再试", offlineDocId, downloadId));
+                        failCount++;
+                        continue;
+                    }
+
                     results.add(new DownloadResult(documentId, true, "下载任务已创建", offlineDocId, downloadId));
                     successCount++;
 
-                    // 启动异步下载任务（简化处理）
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(1000);
-                            String updateSql = "UPDATE offline_downloads SET status = 'completed', progress = 100, " +
-                                    "end_time = NOW() WHERE download_id = ?";
-                            jdbcTemplate.update(updateSql, downloadId);
-
-                            String updateOfflineSql = "UPDATE offline_documents SET is_synced = TRUE, updated_at = NOW() " +
-                                    "WHERE offline_doc_id = ?";
-                            jdbcTemplate.update(updateOfflineSql, offlineDocId);
-
-                        } catch (Exception e) {
-                            System.err.println("下载任务执行失败: " + e.getMessage());
-                        }
-                    }).start();
-
                 } catch (Exception e) {
                     results.add(new DownloadResult(documentId, false, "处理失败: " + e.getMessage(), null, null));
                     failCount++;
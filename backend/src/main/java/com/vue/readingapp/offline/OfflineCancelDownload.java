@@ -9,6 +9,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 @RestController
 @RequestMapping("/api/v1/offline")
@@ -17,6 +19,12 @@ public class OfflineCancelDownload {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到取消离线下载请求 ===");
@@ -62,8 +70,7 @@ public class OfflineCancelDownload {
         }
 
         try {
-            String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return null;
@@ -132,6 +139,9 @@ public class OfflineCancelDownload {
             printQueryResult("取消行数: " + rowsAffected);
 
             if (rowsAffected > 0) {
+                // 排队中的下载移出队列，执行中的下载被中断
+                backgroundTaskExecutor.cancel(downloadId);
+
                 CancelDownloadResponse response = new CancelDownloadResponse(true, "下载任务已取消");
                 printResponse(response);
 
@@ -9,6 +9,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 @RestController
 @RequestMapping("/api/v1/offline")
@@ -17,6 +19,12 @@ public class OfflineCancelSyncTask {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到取消同步任务请求 ===");
@@ -62,8 +70,7 @@ public class OfflineCancelSyncTask {
         }
 
         try {
-            String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return null;
@@ -132,6 +139,9 @@ public class OfflineCancelSyncTask {
             printQueryResult("取消行数: " + rowsAffected);
 
             if (rowsAffected > 0) {
+                // 排队中的同步任务移出队列，执行中的任务被中断
+                backgroundTaskExecutor.cancel(taskId);
+
                 // 5. 添加取消记录到历史表
                 addSyncHistory(userId, taskId, "cancelled", "用户取消");
 
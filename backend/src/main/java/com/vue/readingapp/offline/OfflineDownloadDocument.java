@@ -11,7 +11,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 @RestController
 @RequestMapping("/api/v1/offline")
@@ -20,6 +23,12 @@ public class OfflineDownloadDocument {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     private ObjectMapper objectMapper = new ObjectMapper();
 
     // 打印接收到的请求
@@ -134,8 +143,7 @@ public class OfflineDownloadDocument {
         }
 
         try {
-            String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return null;
@@ -219,39 +227,53 @@ public class OfflineDownloadDocument {
                     "offline_doc_id, status, progress, start_time) VALUES (?, ?, ?, ?, 'pending', 0, NOW())";
             jdbcTemplate.update(insertDownloadSql, downloadId, userId, documentId, offlineDocId);
 
-            // 6. 模拟下载过程（实际项目中应该是异步任务）
-            // 这里简单模拟，实际应该使用线程池或消息队列
-            new Thread(() -> {
-                try {
-                    // 更新状态为下载中
-                    String updateStatusSql = "UPDATE offline_downloads SET status = 'downloading', progress = 10 WHERE download_id = ?";
-                    jdbcTemplate.update(updateStatusSql, downloadId);
-
-                    Thread.sleep(1000); // 模拟下载时间
-
-                    // 更新进度
-                    updateStatusSql = "UPDATE offline_downloads SET progress = 50 WHERE download_id = ?";
-                    jdbcTemplate.update(updateStatusSql, downloadId);
-
-                    Thread.sleep(1000);
-
-                    // 完成下载
-                    updateStatusSql = "UPDATE offline_downloads SET status = 'completed', progress = 100, " +
-                            "end_time = NOW() WHERE download_id = ?";
-                    jdbcTemplate.update(updateStatusSql, downloadId);
-
-                    // 更新离线文档状态
-                    String updateOfflineSql = "UPDATE offline_documents SET is_synced = TRUE, updated_at = NOW() " +
-                            "WHERE offline_doc_id = ?";
-                    jdbcTemplate.update(updateOfflineSql, offlineDocId);
-
-                } catch (InterruptedException e) {
-                    // 下载失败
-                    String updateStatusSql = "UPDATE offline_downloads SET status = 'failed', error = ?, " +
-                            "end_time = NOW() WHERE download_id = ?";
-                    jdbcTemplate.update(updateStatusSql, "下载中断", downloadId);
-                }
-            }).start();
+            // 6. 模拟下载过程：提交到离线同步线程池，任务键为 download_id，取消接口据此中断
+            // 状态更新都带上当前状态条件，已取消的下载不会被改回下载中或已完成
+            try {
+                backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.SYNC, downloadId, BackgroundTaskExecutor.Priority.NORMAL, () -> {
+                    try {
+                        // 更新状态为下载中
+                        String updateStatusSql = "UPDATE offline_downloads SET status = 'downloading', progress = 10 " +
+                                "WHERE download_id = ? AND status = 'pending'";
+                        if (jdbcTemplate.update(updateStatusSql, downloadId) == 0) {
+                            return;
+                        }
+
+                        Thread.sleep(1000); // 模拟下载时间
+
+                        // 更新进度
+                        updateStatusSql = "UPDATE offline_downloads SET progress = 50 WHERE download_id = ? AND status = 'downloading'";
+                        jdbcTemplate.update(updateStatusSql, downloadId);
+
+                        Thread.sleep(1000);
+
+                        // 完成下载
+                        updateStatusSql = "UPDATE offline_downloads SET status = 'completed', progress = 100, " +
+                                "end_time = NOW() WHERE download_id = ? AND status = 'downloading'";
+                        if (jdbcTemplate.update(updateStatusSql, downloadId) == 0) {
+                            return;
+                        }
+
+                        // 更新离线文档状态
+                        String updateOfflineSql = "UPDATE offline_documents SET is_synced = TRUE, updated_at = NOW() " +
+                                "WHERE offline_doc_id = ?";
+                        jdbcTemplate.update(updateOfflineSql, offlineDocId);
+
+                    } catch (InterruptedException e) {
+                        // 下载中断（用户取消时状态已是 cancelled，不会被覆盖）
+                        String updateStatusSql = "UPDATE offline_downloads SET status = 'failed', error = ?, " +
+                                "end_time = NOW() WHERE download_id = ? AND status IN ('pending', 'downloading')";
+                        jdbcTemplate.update(updateStatusSql, "下载中断", downloadId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                String updateStatusSql = "UPDATE offline_downloads SET status = 'failed', error = ?, " +
+                        "end_time = NOW() WHERE download_id = ?";
+                jdbcTemplate.update(updateStatusSql, "下载队列已满", downloadId);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                        new DownloadDocumentResponse(false, "下载任务过多，请稍后再试", null)
+                );
+            }
 
             // 7. 准备响应数据
             DownloadDocumentData data = new DownloadDocumentData(offlineDocId, downloadId, "pending", 0);
@@ -10,7 +10,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import java.time.LocalDateTime;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 
 @RestController
 @RequestMapping("/api/v1/offline")
@@ -19,6 +22,12 @@ public class OfflineStartSyncTask {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到开始同步任务请求 ===");
@@ -130,8 +139,7 @@ public class OfflineStartSyncTask {
         }
 
         try {
-            String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return null;
@@ -206,38 +214,48 @@ public class OfflineStartSyncTask {
             printQueryResult("创建任务行数: " + rowsAffected);
 
             if (rowsAffected > 0) {
-                // 6. 启动异步同步任务（简化处理）
-                new Thread(() -> {
-                    try {
-                        // 模拟同步过程
-                        Thread.sleep(2000);
-
-                        // 更新任务进度
-                        String updateProgressSql = "UPDATE offline_sync_tasks SET progress = 50, " +
-                                "completed_operations = 5, total_operations = 10 " +
-                                "WHERE task_id = ? AND user_id = ?";
-                        jdbcTemplate.update(updateProgressSql, taskId, userId);
-
-                        Thread.sleep(2000);
-
-                        // 完成任务
-                        String completeSql = "UPDATE offline_sync_tasks SET status = 'completed', progress = 100, " +
-                                "completed_operations = 10, failed_operations = 0, " +
-                                "end_time = NOW() WHERE task_id = ? AND user_id = ?";
-                        jdbcTemplate.update(completeSql, taskId, userId);
-
-                        // 将同步记录添加到历史表
-                        addSyncHistory(userId, taskId, taskType, "completed", 10, 0, 4.0);
-
-                    } catch (InterruptedException e) {
-                        // 任务失败
-                        String failSql = "UPDATE offline_sync_tasks SET status = 'failed', end_time = NOW(), " +
-                                "error = '同步任务被中断' WHERE task_id = ? AND user_id = ?";
-                        jdbcTemplate.update(failSql, taskId, userId);
-
-                        addSyncHistory(userId, taskId, taskType, "failed", 0, 10, 4.0);
-                    }
-                }).start();
+                // 6. 提交异步同步任务（简化处理）：任务键为 task_id，取消接口据此中断
+                // 状态更新只作用于 running 的任务，已取消的任务不会被改为完成或失败
+                try {
+                    backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.SYNC, taskId, BackgroundTaskExecutor.Priority.NORMAL, () -> {
+                        try {
+                            // 模拟同步过程
+                            Thread.sleep(2000);
+
+                            // 更新任务进度
+                            String updateProgressSql = "UPDATE offline_sync_tasks SET progress = 50, " +
+                                    "completed_operations = 5, total_operations = 10 " +
+                                    "WHERE task_id = ? AND user_id = ? AND status = 'running'";
+                            jdbcTemplate.update(updateProgressSql, taskId, userId);
+
+                            Thread.sleep(2000);
+
+                            // 完成任务
+                            String completeSql = "UPDATE offline_sync_tasks SET status = 'completed', progress = 100, " +
+                                    "completed_operations = 10, failed_operations = 0, " +
+                                    "end_time = NOW() WHERE task_id = ? AND user_id = ? AND status = 'running'";
+                            if (jdbcTemplate.update(completeSql, taskId, userId) > 0) {
+                                // 将同步记录添加到历史表
+                                addSyncHistory(userId, taskId, taskType, "completed", 10, 0, 4.0);
+                            }
+
+                        } catch (InterruptedException e) {
+                            // 任务失败（用户取消时取消接口已写入状态和历史）
+                            String failSql = "UPDATE offline_sync_tasks SET status = 'failed', end_time = NOW(), " +
+                                    "error = '同步任务被中断' WHERE task_id = ? AND user_id = ? AND status = 'running'";
+                            if (jdbcTemplate.update(failSql, taskId, userId) > 0) {
+                                addSyncHistory(userId, taskId, taskType, "failed", 0, 10, 4.0);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    String failSql = "UPDATE offline_sync_tasks SET status = 'failed', end_time = NOW(), " +
+                            "error = '同步队列已满' WHERE task_id = ? AND user_id = ?";
+                    jdbcTemplate.update(failSql, taskId, userId);
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                            new StartSyncTaskResponse(false, "同步任务过多，请稍后再试", null)
+                    );
+                }
 
                 // 7. 准备响应数据
                 StartSyncTaskData data = new StartSyncTaskData(
@@ -7,6 +7,8 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
 
 @RestController
 @RequestMapping("/api/v1/reader")
@@ -15,6 +17,12 @@ public class ReaderAddNote {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到添加笔记请求 ===");
@@ -141,8 +149,7 @@ public class ReaderAddNote {
             String token = authHeader.substring(7);
 
             // 验证token：直接在SQL中检查有效期，确保时区一致性
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -226,6 +233,7 @@ public class ReaderAddNote {
             String lastIdSql = "SELECT LAST_INSERT_ID() as note_id";
             List<Map<String, Object>> lastIds = jdbcTemplate.queryForList(lastIdSql);
             int noteId = lastIds.isEmpty() ? 0 : ((Number) lastIds.get(0).get("note_id")).intValue();
+            searchIndexService.onNoteChanged(noteId);
 
             // 8. 获取完整的笔记数据
             String noteSql = "SELECT * FROM document_notes WHERE note_id = ?";
@@ -6,6 +6,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
 
 @RestController
 @RequestMapping("/api/v1/reader")
@@ -14,6 +16,12 @@ public class ReaderBatchUpdateHighlights {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到批量更新高亮请求 ===");
@@ -116,8 +124,7 @@ public class ReaderBatchUpdateHighlights {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -182,6 +189,12 @@ public class ReaderBatchUpdateHighlights {
                 );
             }
 
+            if (request.getNote() != null) {
+                for (Integer highlightId : request.getHighlightIds()) {
+                    searchIndexService.onHighlightChanged(highlightId);
+                }
+            }
+
             // 8. 获取更新后的高亮ID列表（验证哪些真的被更新了）
             String checkSql = "SELECT highlight_id FROM document_highlights " +
                     "WHERE highlight_id IN (" + placeholders + ") " +
@@ -6,6 +6,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
 
 @RestController
 @RequestMapping("/api/v1/reader")
@@ -14,6 +16,12 @@ public class ReaderDeleteHighlight {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到删除高亮请求 ===");
@@ -92,8 +100,7 @@ public class ReaderDeleteHighlight {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -117,6 +124,8 @@ public class ReaderDeleteHighlight {
             Map<String, Object> highlight = highlights.get(0);
 
             // 4. 删除关联的笔记（如果有外键约束会自动级联删除，这里显式删除）
+            List<Map<String, Object>> linkedNotes = jdbcTemplate.queryForList(
+                    "SELECT note_id FROM document_notes WHERE highlight_id = ? AND user_id = ?", highlightId, userId);
             String deleteNotesSql = "DELETE FROM document_notes WHERE highlight_id = ? AND user_id = ?";
             jdbcTemplate.update(deleteNotesSql, highlightId, userId);
 
@@ -130,6 +139,12 @@ public class ReaderDeleteHighlight {
                 );
             }
 
+            // 同步移除搜索索引中的高亮及其关联笔记
+            for (Map<String, Object> linkedNote : linkedNotes) {
+                searchIndexService.onNoteRemoved(userId, ((Number) linkedNote.get("note_id")).longValue());
+            }
+            searchIndexService.onHighlightRemoved(userId, highlightId);
+
             // 6. 构建响应数据
             DeleteData deleteData = new DeleteData();
             deleteData.setDeletedId(highlightId);
@@ -5,12 +5,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/reader")
@@ -19,6 +17,12 @@ public class ReaderGetDocumentPage {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到获取文档页面请求 ===");
@@ -152,8 +156,7 @@ public class ReaderGetDocumentPage {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -163,80 +166,62 @@ public class ReaderGetDocumentPage {
 
             int userId = (int) sessions.get(0).get("user_id");
 
-            // 2. 验证文档权限
-            String docSql = "SELECT d.*, dp.total_pages FROM documents d " +
-                    "LEFT JOIN (SELECT document_id, COUNT(*) as total_pages FROM document_pages GROUP BY document_id) dp " +
-                    "ON d.document_id = dp.document_id " +
-                    "WHERE d.document_id = ? AND (d.user_id = ? OR d.is_public = true)";
-
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(docSql, documentId, userId);
-            printQueryResult(documents);
-
-            if (documents.isEmpty()) {
+            // 2. 验证文档权限（文档元数据来自 ReaderPageCache）
+            ReaderPageCache.DocumentMeta document = readerPageCache.getDocument(documentId);
+            if (document == null || !document.canRead(userId)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(
                         new PageResponse(false, "没有权限查看此文档", null)
                 );
             }
-
-            Map<String, Object> document = documents.get(0);
-            Integer totalPages = document.get("total_pages") != null ?
-                    ((Number) document.get("total_pages")).intValue() : 0;
+            int totalPages = document.getTotalPages();
 
             // 3. 获取页面内容
-            System.out.println("[DEBUG] 正在查询页面: documentId=" + documentId + ", pageNumber=" + pageNumber);
-            
-            // 额外检查：该文档总共有多少页
-            String countSql = "SELECT COUNT(*) FROM document_pages WHERE document_id = ?";
-            Integer actualPageCount = jdbcTemplate.queryForObject(countSql, Integer.class, documentId);
-            System.out.println("[DEBUG] 文档 ID=" + documentId + " 在 document_pages 表中的实际记录数: " + actualPageCount);
-
-            String pageSql = "SELECT * FROM document_pages WHERE document_id = ? AND page_number = ?";
-            List<Map<String, Object>> pages = jdbcTemplate.queryForList(pageSql, documentId, pageNumber);
-
-            if (pages.isEmpty()) {
-                System.err.println("[ERROR] 404 诊断 - 文档ID: " + documentId + ", 请求页码: " + pageNumber);
-                System.err.println("[ERROR] 诊断信息 - 文档处理状态: " + document.get("processing_status"));
-                System.err.println("[ERROR] 诊断信息 - 文档处理错误: " + document.get("processing_error"));
-                
-                // 检查该文档是否有任何页面已入库
-                List<Map<String, Object>> allPages = jdbcTemplate.queryForList(
-                    "SELECT page_number FROM document_pages WHERE document_id = ?", documentId);
-                System.err.println("[ERROR] 诊断信息 - 该文档已存在的页码列表: " + allPages);
+            ReaderPageCache.CachedPage page = readerPageCache.getPage(documentId, pageNumber);
+            if (page == null) {
+                // 页面可能刚由 OCR 写入，元数据中的页数已过时，重新读取一次
+                ReaderPageCache.DocumentMeta latest = readerPageCache.refreshDocument(documentId);
+                int storedPages = latest != null ? latest.getTotalPages() : 0;
+                String processingStatus = latest != null ? latest.getProcessingStatus() : document.getProcessingStatus();
+                System.err.println("[ERROR] 404 诊断 - 文档ID: " + documentId + ", 请求页码: " + pageNumber
+                        + ", 处理状态: " + processingStatus + ", 已入库页数: " + storedPages
+                        + ", 处理错误: " + (latest != null ? latest.getProcessingError() : document.getProcessingError()));
 
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
-                        new PageResponse(false, "页面不存在。文档状态: " + document.get("processing_status") +
-                                        ". 已入库页数: " + allPages.size(), null)
+                        new PageResponse(false, "页面不存在。文档状态: " + processingStatus +
+                                        ". 已入库页数: " + storedPages, null)
                 );
             }
 
-            Map<String, Object> page = pages.get(0);
-
-            // 4. 获取该页面的高亮
-            String highlightSql = "SELECT * FROM document_highlights WHERE document_id = ? AND page = ? AND user_id = ?";
-            List<Map<String, Object>> highlights = jdbcTemplate.queryForList(highlightSql, documentId, pageNumber, userId);
-
-            // 5. 获取该页面的笔记（关联高亮信息）
-            String noteSql = "SELECT dn.*, dh.text as highlight_text, dh.color as highlight_color " +
-                    "FROM document_notes dn " +
-                    "LEFT JOIN document_highlights dh ON dn.highlight_id = dh.highlight_id " +
-                    "WHERE dn.document_id = ? AND dn.page = ? AND dn.user_id = ?";
-            List<Map<String, Object>> notes = jdbcTemplate.queryForList(noteSql, documentId, pageNumber, userId);
+            // 后台预取后续几页，用户翻页时直接命中缓存
+            readerPageCache.prefetchAfter(documentId, pageNumber, totalPages);
+
+            // 4. 一次查询获取该页面的高亮和笔记
+            String annotationSql = "SELECT 'highlight' AS kind, highlight_id AS id, document_id, page, text AS body, color, note, " +
+                    "NULL AS highlight_id, created_at, updated_at " +
+                    "FROM document_highlights WHERE document_id = ? AND page = ? AND user_id = ? " +
+                    "UNION ALL " +
+                    "SELECT 'note' AS kind, note_id AS id, document_id, page, content AS body, NULL AS color, NULL AS note, " +
+                    "highlight_id, created_at, updated_at " +
+                    "FROM document_notes WHERE document_id = ? AND page = ? AND user_id = ?";
+            List<Map<String, Object>> annotations = jdbcTemplate.queryForList(annotationSql,
+                    documentId, pageNumber, userId, documentId, pageNumber, userId);
+            printQueryResult(annotations.size() + " annotations");
 
             // 6. 构建响应数据
             PageData pageData = new PageData();
             pageData.setId("page_" + documentId + "_" + pageNumber);
             pageData.setDocumentId(documentId);
             pageData.setPageNumber(pageNumber);
-            pageData.setContent((String) page.get("content"));
-            pageData.setHtmlContent((String) page.get("html_content"));
-            pageData.setWordCount(page.get("word_count") != null ? ((Number) page.get("word_count")).intValue() : 0);
-            pageData.setCharacterCount(page.get("character_count") != null ? ((Number) page.get("character_count")).intValue() : 0);
-            pageData.setHasImages(page.get("has_images") != null && (boolean) page.get("has_images"));
+            pageData.setContent(page.getContent());
+            pageData.setHtmlContent(page.getHtmlContent());
+            pageData.setWordCount(page.getWordCount());
+            pageData.setCharacterCount(page.getCharacterCount());
+            pageData.setHasImages(page.isHasImages());
 
             // 设置图片
-            if (page.get("images") != null) {
+            if (page.getImages() != null) {
                 try {
-                    String imagesJson = (String) page.get("images");
+                    String imagesJson = page.getImages();
                     // 简单处理，实际应该解析JSON
                     if (imagesJson.startsWith("[") && imagesJson.endsWith("]")) {
                         // 这里简化处理，实际应该使用JSON解析器
@@ -250,37 +235,36 @@ public class ReaderGetDocumentPage {
                 }
             }
 
-            // 设置高亮
-            for (Map<String, Object> highlight : highlights) {
-                Map<String, Object> hl = new HashMap<>();
-                hl.put("id", highlight.get("highlight_id"));
-                hl.put("documentId", highlight.get("document_id"));
-                hl.put("text", highlight.get("text"));
-                hl.put("page", highlight.get("page"));
-                hl.put("color", highlight.get("color"));
-                hl.put("note", highlight.get("note"));
-                hl.put("createdAt", highlight.get("created_at"));
-                hl.put("updatedAt", highlight.get("updated_at"));
-                pageData.getHighlights().add(hl);
-            }
-
-            // 设置笔记
-            for (Map<String, Object> note : notes) {
-                Map<String, Object> nt = new HashMap<>();
-                nt.put("id", note.get("note_id"));
-                nt.put("documentId", note.get("document_id"));
-                nt.put("content", note.get("content"));
-                nt.put("page", note.get("page"));
-                nt.put("highlightId", note.get("highlight_id"));
-                nt.put("createdAt", note.get("created_at"));
-                nt.put("updatedAt", note.get("updated_at"));
-                pageData.getNotes().add(nt);
+            // 设置高亮和笔记
+            for (Map<String, Object> annotation : annotations) {
+                if ("highlight".equals(annotation.get("kind"))) {
+                    Map<String, Object> hl = new HashMap<>();
+                    hl.put("id", annotation.get("id"));
+                    hl.put("documentId", annotation.get("document_id"));
+                    hl.put("text", annotation.get("body"));
+                    hl.put("page", annotation.get("page"));
+                    hl.put("color", annotation.get("color"));
+                    hl.put("note", annotation.get("note"));
+                    hl.put("createdAt", annotation.get("created_at"));
+                    hl.put("updatedAt", annotation.get("updated_at"));
+                    pageData.getHighlights().add(hl);
+                } else {
+                    Map<String, Object> nt = new HashMap<>();
+                    nt.put("id", annotation.get("id"));
+                    nt.put("documentId", annotation.get("document_id"));
+                    nt.put("content", annotation.get("body"));
+                    nt.put("page", annotation.get("page"));
+                    nt.put("highlightId", annotation.get("highlight_id"));
+                    nt.put("createdAt", annotation.get("created_at"));
+                    nt.put("updatedAt", annotation.get("updated_at"));
+                    pageData.getNotes().add(nt);
+                }
             }
 
             // 设置元数据
-            pageData.getMetadata().put("title", document.get("title"));
-            pageData.getMetadata().put("author", document.get("author"));
-            pageData.getMetadata().put("language", document.get("language"));
+            pageData.getMetadata().put("title", document.getTitle());
+            pageData.getMetadata().put("author", document.getAuthor());
+            pageData.getMetadata().put("language", document.getLanguage());
 
             // 设置上下页
             if (pageNumber < totalPages) {
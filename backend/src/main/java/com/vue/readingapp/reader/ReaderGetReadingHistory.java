@@ -6,6 +6,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/reader")
@@ -14,6 +15,12 @@ public class ReaderGetReadingHistory {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReadingProgressBuffer readingProgressBuffer;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到获取阅读历史请求 ===");
@@ -162,8 +169,7 @@ public class ReaderGetReadingHistory {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -173,6 +179,9 @@ public class ReaderGetReadingHistory {
 
             int userId = (int) sessions.get(0).get("user_id");
 
+            // 先写入该用户缓冲中的阅读进度，保证读到最新的阅读历史
+            readingProgressBuffer.flushUser(userId);
+
             // 2. 验证文档权限
             String docSql = "SELECT * FROM documents WHERE document_id = ? AND (user_id = ? OR is_public = true)";
             List<Map<String, Object>> documents = jdbcTemplate.queryForList(docSql, documentId, userId);
@@ -7,6 +7,8 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.vocabulary.DictionaryCache;
 
 @RestController
 @RequestMapping("/api/v1/reader")
@@ -15,6 +17,12 @@ public class ReaderLookupWord {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private DictionaryCache dictionaryCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到查询单词请求 ===");
@@ -178,8 +186,7 @@ public class ReaderLookupWord {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -196,37 +203,25 @@ public class ReaderLookupWord {
                 );
             }
 
-            // 3. 查询单词基本信息
-            String wordSql = "SELECT * FROM words WHERE word = ? AND language = ?";
-            List<Map<String, Object>> words = jdbcTemplate.queryForList(wordSql, word.trim().toLowerCase(), language);
+            // 3. 从词典缓存查询单词（屈折形式会解析到原形），包含释义、例句和相关单词
+            DictionaryCache.Entry entry = dictionaryCache.lookup(word, language);
 
-            if (words.isEmpty()) {
+            if (entry == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
                         new LookupWordResponse(false, "单词未找到", null)
                 );
             }
 
-            Map<String, Object> wordInfo = words.get(0);
-            int wordId = ((Number) wordInfo.get("word_id")).intValue();
-
-            // 4. 查询单词释义
-            String definitionSql = "SELECT * FROM word_definitions WHERE word_id = ? ORDER BY order_index";
-            List<Map<String, Object>> definitions = jdbcTemplate.queryForList(definitionSql, wordId);
-
-            // 5. 查询单词例句
-            String exampleSql = "SELECT * FROM word_examples WHERE word_id = ? ORDER BY order_index";
-            List<Map<String, Object>> examples = jdbcTemplate.queryForList(exampleSql, wordId);
-
-            // 6. 查询相关单词
-            String relatedSql = "SELECT wr.*, w.word as related_word FROM word_relations wr " +
-                    "JOIN words w ON wr.related_word_id = w.word_id " +
-                    "WHERE wr.word_id = ?";
-            List<Map<String, Object>> relatedWords = jdbcTemplate.queryForList(relatedSql, wordId);
+            Map<String, Object> wordInfo = entry.getWordRow();
+            int wordId = (int) entry.getWordId();
+            List<Map<String, Object>> definitions = entry.getDefinitions();
+            List<Map<String, Object>> examples = entry.getExamples();
+            List<Map<String, Object>> relatedWords = entry.getRelations();
 
             printQueryResult("单词ID: " + wordId + ", 释义数: " + definitions.size() +
                     ", 例句数: " + examples.size() + ", 相关词数: " + relatedWords.size());
 
-            // 7. 构建响应数据
+            // 4. 构建响应数据
             LookupData lookupData = new LookupData();
             lookupData.setWord(word);
             lookupData.setLanguage(language);
@@ -277,7 +272,7 @@ public class ReaderLookupWord {
                 lookupData.getRelatedWords().add(rw);
             }
 
-            // 8. 记录查询历史
+            // 5. 记录查询历史
             String historySql = "INSERT INTO word_lookup_history (user_id, word_id, created_at) VALUES (?, ?, NOW())";
             jdbcTemplate.update(historySql, userId, wordId);
 
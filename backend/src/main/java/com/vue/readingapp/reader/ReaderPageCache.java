@@ -0,0 +1,425 @@
+package com.vue.readingapp.reader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 阅读器翻页缓存（文档元数据 + 页面内容 + 预取）
+ *
+ * 以前每次翻页都要把 documents 和"按 document_id 对整张 document_pages 表 GROUP BY"的派生表做连接，
+ * 再 COUNT 一次页数、SELECT * 读取页面。现在：
+ *   - 文档元数据（所有者、是否公开、处理状态、页数）按文档缓存，默认 60 秒过期；
+ *   - 页面内容放在按字节数限制大小的 LRU 缓存中（默认 64MB）；
+ *   - 返回第 N 页后在后台用一次范围查询预取 N+1 ~ N+k 页，用户翻到下一页时直接命中缓存。
+ * OCR 写入页面、复用处理结果、修改或删除文档时调用 invalidateDocument，清除该文档的元数据和全部页面。
+ * 文档按 ID 映射到固定数量的版本号槽位，失效时槽位加一，失效后才完成的加载和预取不会把旧内容放回缓存；
+ * 槽位数固定，不会随文档数量增长（同一槽位的其他文档正在进行的加载只是少缓存一次）。
+ */
+@Component
+public class ReaderPageCache {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 页面缓存的字节数上限（按字符串长度估算）
+    @Value("${app.reader.page-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    // 文档元数据缓存条目上限
+    @Value("${app.reader.document-cache.max-size:10000}")
+    private int maxDocuments;
+
+    // 文档元数据最长缓存时间（处理状态、公开状态等没有失效通知的变化最多延迟这么久）
+    @Value("${app.reader.document-cache.max-age-ms:60000}")
+    private long documentMaxAgeMs;
+
+    // 每次翻页向后预取的页数，0 表示不预取
+    @Value("${app.reader.prefetch-pages:3}")
+    private int prefetchPages;
+
+    // 预取线程数
+    @Value("${app.reader.prefetch-threads:2}")
+    private int prefetchThreads;
+
+    /**
+     * 文档元数据
+     */
+    public static class DocumentMeta {
+        private final int documentId;
+        private final int ownerId;
+        private final boolean isPublic;
+        private final String title;
+        private final String author;
+        private final String language;
+        private final String processingStatus;
+        private final String processingError;
+        private final int totalPages;
+        private final long loadedAtMillis;
+
+        DocumentMeta(Map<String, Object> row) {
+            this.documentId = ((Number) row.get("document_id")).intValue();
+            this.ownerId = ((Number) row.get("user_id")).intValue();
+            Object isPublic = row.get("is_public");
+            this.isPublic = isPublic instanceof Boolean ? (Boolean) isPublic
+                    : isPublic instanceof Number && ((Number) isPublic).intValue() != 0;
+            this.title = (String) row.get("title");
+            this.author = (String) row.get("author");
+            this.language = (String) row.get("language");
+            this.processingStatus = (String) row.get("processing_status");
+            this.processingError = (String) row.get("processing_error");
+            this.totalPages = row.get("total_pages") != null ? ((Number) row.get("total_pages")).intValue() : 0;
+            this.loadedAtMillis = System.currentTimeMillis();
+        }
+
+        /** 文档所有者或公开文档可以阅读 */
+        public boolean canRead(int userId) {
+            return ownerId == userId || isPublic;
+        }
+
+        public int getDocumentId() { return documentId; }
+        public int getOwnerId() { return ownerId; }
+        public boolean isPublic() { return isPublic; }
+        public String getTitle() { return title; }
+        public String getAuthor() { return author; }
+        public String getLanguage() { return language; }
+        public String getProcessingStatus() { return processingStatus; }
+        public String getProcessingError() { return processingError; }
+        public int getTotalPages() { return totalPages; }
+    }
+
+    /**
+     * 一页的内容（不可变，多个请求共享）
+     */
+    public static class CachedPage {
+        private final int pageNumber;
+        private final String content;
+        private final String htmlContent;
+        private final int wordCount;
+        private final int characterCount;
+        private final boolean hasImages;
+        private final String images;
+        private final long sizeBytes;
+
+        CachedPage(Map<String, Object> row) {
+            this.pageNumber = ((Number) row.get("page_number")).intValue();
+            this.content = (String) row.get("content");
+            this.htmlContent = (String) row.get("html_content");
+            this.wordCount = row.get("word_count") != null ? ((Number) row.get("word_count")).intValue() : 0;
+            this.characterCount = row.get("character_count") != null ? ((Number) row.get("character_count")).intValue() : 0;
+            Object hasImages = row.get("has_images");
+            this.hasImages = hasImages instanceof Boolean ? (Boolean) hasImages
+                    : hasImages instanceof Number && ((Number) hasImages).intValue() != 0;
+            this.images = (String) row.get("images");
+            // Java 字符串按每字符 2 字节估算，另加对象开销
+            this.sizeBytes = 2L * (length(content) + length(htmlContent) + length(images)) + 128;
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+
+        public int getPageNumber() { return pageNumber; }
+        public String getContent() { return content; }
+        public String getHtmlContent() { return htmlContent; }
+        public int getWordCount() { return wordCount; }
+        public int getCharacterCount() { return characterCount; }
+        public boolean isHasImages() { return hasImages; }
+        public String getImages() { return images; }
+    }
+
+    private static final class PageKey {
+        private final int documentId;
+        private final int pageNumber;
+
+        PageKey(int documentId, int pageNumber) {
+            this.documentId = documentId;
+            this.pageNumber = pageNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PageKey)) return false;
+            PageKey other = (PageKey) o;
+            return documentId == other.documentId && pageNumber == other.pageNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * documentId + pageNumber;
+        }
+    }
+
+    // 版本号槽位数
+    private static final int VERSION_SLOTS = 4096;
+
+    private static final String PAGE_COLUMNS = "page_number, content, html_content, word_count, character_count, has_images, images";
+
+    private Map<Integer, DocumentMeta> documents;
+
+    // 按访问顺序排列，超出字节上限时从最久未访问的页面开始淘汰；所有访问都在 synchronized (pages) 中进行
+    private final LinkedHashMap<PageKey, CachedPage> pages = new LinkedHashMap<>(1024, 0.75f, true);
+    private long cachedBytes = 0;
+
+    // 文档版本号槽位，文档失效时所在槽位加一
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_SLOTS);
+    // 正在预取的文档，同一文档同时只有一个预取任务
+    private final Set<Integer> prefetching = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor prefetchExecutor;
+
+    // 统计信息
+    private final AtomicLong documentHits = new AtomicLong();
+    private final AtomicLong documentMisses = new AtomicLong();
+    private final AtomicLong pageHits = new AtomicLong();
+    private final AtomicLong pageMisses = new AtomicLong();
+    private final AtomicLong prefetchedPages = new AtomicLong();
+    private final AtomicLong evictedPages = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        documents = Collections.synchronizedMap(new LinkedHashMap<Integer, DocumentMeta>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DocumentMeta> eldest) {
+                return size() > maxDocuments;
+            }
+        });
+
+        int threads = Math.max(1, prefetchThreads);
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 队列满时直接丢弃预取任务，预取只是优化，不能拖慢翻页
+        prefetchExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(256), r -> {
+            Thread thread = new Thread(r, "reader-prefetch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * 读取文档元数据，文档不存在时返回 null
+     */
+    public DocumentMeta getDocument(int documentId) {
+        DocumentMeta meta = documents.get(documentId);
+        if (meta != null && System.currentTimeMillis() - meta.loadedAtMillis < documentMaxAgeMs) {
+            documentHits.incrementAndGet();
+            return meta;
+        }
+        documentMisses.incrementAndGet();
+
+        long version = version(documentId);
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT d.document_id, d.user_id, d.is_public, d.title, d.author, d.language, " +
+                        "d.processing_status, d.processing_error, " +
+                        "(SELECT COUNT(*) FROM document_pages dp WHERE dp.document_id = d.document_id) AS total_pages " +
+                        "FROM documents d WHERE d.document_id = ?",
+                documentId);
+        if (rows.isEmpty()) {
+            documents.remove(documentId);
+            return null;
+        }
+        meta = new DocumentMeta(rows.get(0));
+        if (version == version(documentId)) {
+            documents.put(documentId, meta);
+        }
+        return meta;
+    }
+
+    /**
+     * 丢弃缓存的元数据并重新读取，已缓存的页面保持不变
+     *
+     * 用于请求的页面不存在时核对页数：不能清除整个文档，否则越界请求（预取、客户端页数过时）会反复清空该文档的页面缓存。
+     */
+    public DocumentMeta refreshDocument(int documentId) {
+        documents.remove(documentId);
+        return getDocument(documentId);
+    }
+
+    /**
+     * 读取一页内容，页面尚未写入时返回 null（不缓存不存在的页面，OCR 写入后即可读到）
+     */
+    public CachedPage getPage(int documentId, int pageNumber) {
+        PageKey key = new PageKey(documentId, pageNumber);
+        synchronized (pages) {
+            CachedPage page = pages.get(key);
+            if (page != null) {
+                pageHits.incrementAndGet();
+                return page;
+            }
+        }
+        pageMisses.incrementAndGet();
+
+        long version = version(documentId);
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT " + PAGE_COLUMNS + " FROM document_pages WHERE document_id = ? AND page_number = ?",
+                documentId, pageNumber);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        CachedPage page = new CachedPage(rows.get(0));
+        putIfCurrent(documentId, version, Collections.singletonList(page));
+        return page;
+    }
+
+    /**
+     * 在后台预取第 pageNumber 页之后的几页
+     */
+    public void prefetchAfter(int documentId, int pageNumber, int totalPages) {
+        int from = pageNumber + 1;
+        int to = Math.min(totalPages, pageNumber + prefetchPages);
+        if (prefetchPages <= 0 || from > to) {
+            return;
+        }
+        // 后续页面都已缓存时不提交任务
+        synchronized (pages) {
+            boolean allCached = true;
+            for (int p = from; p <= to && allCached; p++) {
+                allCached = pages.containsKey(new PageKey(documentId, p));
+            }
+            if (allCached) {
+                return;
+            }
+        }
+        if (!prefetching.add(documentId)) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    prefetch(documentId, from, to);
+                } finally {
+                    prefetching.remove(documentId);
+                }
+            });
+        } catch (Exception e) {
+            prefetching.remove(documentId);
+        }
+    }
+
+    private void prefetch(int documentId, int from, int to) {
+        try {
+            long version = version(documentId);
+            List<CachedPage> loaded = new ArrayList<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList(
+                    "SELECT " + PAGE_COLUMNS + " FROM document_pages WHERE document_id = ? AND page_number BETWEEN ? AND ?",
+                    documentId, from, to)) {
+                loaded.add(new CachedPage(row));
+            }
+            prefetchedPages.addAndGet(putIfCurrent(documentId, version, loaded));
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to prefetch pages " + from + "-" + to
+                    + " of document " + documentId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 文档的页面或元数据发生变化：清除该文档的全部缓存
+     */
+    public void invalidateDocument(long documentId) {
+        int id = (int) documentId;
+        versions.incrementAndGet(Math.floorMod(id, VERSION_SLOTS));
+        documents.remove(id);
+        synchronized (pages) {
+            Iterator<Map.Entry<PageKey, CachedPage>> it = pages.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<PageKey, CachedPage> entry = it.next();
+                if (entry.getKey().documentId == id) {
+                    cachedBytes -= entry.getValue().sizeBytes;
+                    it.remove();
+                }
+            }
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * 用户注销：清除该用户全部文档的缓存
+     */
+    public void invalidateUser(long userId) {
+        List<Integer> owned = new ArrayList<>();
+        synchronized (documents) {
+            for (DocumentMeta meta : documents.values()) {
+                if (meta.ownerId == userId) {
+                    owned.add(meta.documentId);
+                }
+            }
+        }
+        for (Integer documentId : owned) {
+            invalidateDocument(documentId);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        long hits = pageHits.get();
+        long misses = pageMisses.get();
+        synchronized (pages) {
+            metrics.put("cachedPages", pages.size());
+            metrics.put("cachedBytes", cachedBytes);
+        }
+        metrics.put("maxBytes", maxBytes);
+        metrics.put("cachedDocuments", documents.size());
+        metrics.put("documentHits", documentHits.get());
+        metrics.put("documentMisses", documentMisses.get());
+        metrics.put("pageHits", hits);
+        metrics.put("pageMisses", misses);
+        metrics.put("pageHitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        metrics.put("prefetchedPages", prefetchedPages.get());
+        metrics.put("prefetchQueue", prefetchExecutor.getQueue().size());
+        metrics.put("evictedPages", evictedPages.get());
+        metrics.put("invalidations", invalidations.get());
+        return metrics;
+    }
+
+    private long version(int documentId) {
+        return versions.get(Math.floorMod(documentId, VERSION_SLOTS));
+    }
+
+    // 加载期间文档没有失效时才放入缓存，返回放入的页数
+    private int putIfCurrent(int documentId, long version, List<CachedPage> loaded) {
+        int added = 0;
+        synchronized (pages) {
+            if (version != version(documentId)) {
+                return 0;
+            }
+            for (CachedPage page : loaded) {
+                if (page.sizeBytes > maxBytes) {
+                    continue;
+                }
+                CachedPage previous = pages.put(new PageKey(documentId, page.pageNumber), page);
+                if (previous != null) {
+                    cachedBytes -= previous.sizeBytes;
+                } else {
+                    added++;
+                }
+                cachedBytes += page.sizeBytes;
+            }
+            Iterator<Map.Entry<PageKey, CachedPage>> it = pages.entrySet().iterator();
+            while (cachedBytes > maxBytes && it.hasNext()) {
+                cachedBytes -= it.next().getValue().sizeBytes;
+                it.remove();
+                evictedPages.incrementAndGet();
+            }
+        }
+        return added;
+    }
+}
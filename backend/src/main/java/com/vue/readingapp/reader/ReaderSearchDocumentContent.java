@@ -3,16 +3,34 @@ package com.vue.readingapp.reader;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.reader.index.DocumentTextIndex;
+import com.vue.readingapp.reader.index.DocumentTextIndexService;
+import com.vue.readingapp.reader.index.PositionalTokenizer;
 
 @RestController
 @RequestMapping("/api/v1/reader")
 public class ReaderSearchDocumentContent {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private DocumentTextIndexService documentTextIndexService;
+
+    // 单次搜索最多查找的命中数，超过后停止并在响应中标记 truncated
+    @Value("${app.reader.search.max-hits:1000}")
+    private int maxHits;
+
+    // 每页最多返回的结果数
+    @Value("${app.reader.search.max-page-size:100}")
+    private int maxPageSize;
 
     // 打印接收到的请求
     private void printRequest(Object request) {
@@ -60,6 +78,8 @@ public class ReaderSearchDocumentContent {
     public static class SearchData {
         private String query;
         private int total;
+        private boolean truncated;
+        private boolean indexing;
         private List<SearchMatch> matches;
 
         public SearchData() {
@@ -72,6 +92,12 @@ public class ReaderSearchDocumentContent {
         public int getTotal() { return total; }
         public void setTotal(int total) { this.total = total; }
 
+        public boolean isTruncated() { return truncated; }
+        public void setTruncated(boolean truncated) { this.truncated = truncated; }
+
+        public boolean isIndexing() { return indexing; }
+        public void setIndexing(boolean indexing) { this.indexing = indexing; }
+
         public List<SearchMatch> getMatches() { return matches; }
         public void setMatches(List<SearchMatch> matches) { this.matches = matches; }
     }
@@ -80,6 +106,8 @@ public class ReaderSearchDocumentContent {
         private int page;
         private String text;
         private String context;
+        private int startOffset;
+        private int endOffset;
         private List<String> highlights;
 
         public SearchMatch() {
@@ -95,10 +123,40 @@ public class ReaderSearchDocumentContent {
         public String getContext() { return context; }
         public void setContext(String context) { this.context = context; }
 
+        public int getStartOffset() { return startOffset; }
+        public void setStartOffset(int startOffset) { this.startOffset = startOffset; }
+
+        public int getEndOffset() { return endOffset; }
+        public void setEndOffset(int endOffset) { this.endOffset = endOffset; }
+
         public List<String> getHighlights() { return highlights; }
         public void setHighlights(List<String> highlights) { this.highlights = highlights; }
     }
 
+    private String pageContent(int documentId, int pageNumber, Map<Integer, String> contents) {
+        if (!contents.containsKey(pageNumber)) {
+            ReaderPageCache.CachedPage cached = readerPageCache.getPage(documentId, pageNumber);
+            contents.put(pageNumber, cached != null ? cached.getContent() : null);
+        }
+        return contents.get(pageNumber);
+    }
+
+    // 区分大小写时核对命中区间的原文：各词完全相同，最后一个词按前缀匹配时只比较前缀
+    private static boolean matchesExactly(String span, List<String> exactTerms, boolean lastIsPrefix) {
+        List<PositionalTokenizer.Token> spanTokens = PositionalTokenizer.tokenize(span, false);
+        if (spanTokens.size() != exactTerms.size()) {
+            return false;
+        }
+        for (int i = 0; i < exactTerms.size(); i++) {
+            String actual = spanTokens.get(i).getTerm();
+            boolean prefix = lastIsPrefix && i == exactTerms.size() - 1;
+            if (prefix ? !actual.startsWith(exactTerms.get(i)) : !actual.equals(exactTerms.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @GetMapping("/documents/{documentId}/search")
     public ResponseEntity<SearchResponse> searchDocumentContent(
             @PathVariable("documentId") int documentId,
@@ -131,8 +189,7 @@ public class ReaderSearchDocumentContent {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -143,10 +200,8 @@ public class ReaderSearchDocumentContent {
             int userId = (int) sessions.get(0).get("user_id");
 
             // 2. 验证文档权限
-            String docSql = "SELECT * FROM documents WHERE document_id = ? AND (user_id = ? OR is_public = true)";
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(docSql, documentId, userId);
-
-            if (documents.isEmpty()) {
+            ReaderPageCache.DocumentMeta document = readerPageCache.getDocument(documentId);
+            if (document == null || !document.canRead(userId)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(
                         new SearchResponse(false, "没有权限在此文档搜索", null)
                 );
@@ -159,73 +214,83 @@ public class ReaderSearchDocumentContent {
                 );
             }
 
-            // 4. 获取文档的所有页面
-            String pagesSql = "SELECT * FROM document_pages WHERE document_id = ? ORDER BY page_number";
-            List<Map<String, Object>> pages = jdbcTemplate.queryForList(pagesSql, documentId);
-
-            // 5. 执行搜索
-            List<SearchMatch> matches = new ArrayList<>();
+            // 4. 查询分词：多个词按短语匹配；输入过程中最后一个词按前缀匹配，wholeWord 或查询以分隔符结尾时按整词匹配
             String searchQuery = query.trim();
-
-            if (!caseSensitive) {
-                searchQuery = searchQuery.toLowerCase();
+            List<PositionalTokenizer.Token> queryTokens = PositionalTokenizer.tokenize(searchQuery, true);
+            List<String> terms = new ArrayList<>();
+            for (PositionalTokenizer.Token queryToken : queryTokens) {
+                terms.add(queryToken.getTerm());
             }
-
-            for (Map<String, Object> pageData : pages) {
-                int pageNumber = ((Number) pageData.get("page_number")).intValue();
-                String content = (String) pageData.get("content");
-
-                if (content == null) {
-                    continue;
+            boolean lastIsPrefix = !wholeWord && !queryTokens.isEmpty()
+                    && queryTokens.get(queryTokens.size() - 1).getEnd() == searchQuery.length();
+
+            // 5. 在文档的位置索引中查找，找到 maxHits 处后停止；索引还在后台构建时逐页扫描
+            DocumentTextIndex index = terms.isEmpty() ? null : documentTextIndexService.findIndex(documentId);
+            boolean indexing = !terms.isEmpty() && index == null;
+            DocumentTextIndex.SearchResult result = terms.isEmpty() ? null
+                    : index != null ? index.search(terms, lastIsPrefix, maxHits)
+                    : documentTextIndexService.scan(documentId, terms, lastIsPrefix, maxHits);
+            List<DocumentTextIndex.Hit> hits = result != null ? result.getHits() : new ArrayList<>();
+
+            // 命中的页面内容从阅读器缓存读取，只读取用到的页面
+            Map<Integer, String> contents = new HashMap<>();
+            if (caseSensitive) {
+                // 索引不区分大小写，按原文核对
+                List<String> exactTerms = new ArrayList<>();
+                for (PositionalTokenizer.Token queryToken : PositionalTokenizer.tokenize(searchQuery, false)) {
+                    exactTerms.add(queryToken.getTerm());
                 }
-
-                String searchContent = content;
-                if (!caseSensitive) {
-                    searchContent = content.toLowerCase();
-                }
-
-                // 简单的字符串搜索（实际项目中可能需要全文搜索）
-                int index = 0;
-                while ((index = searchContent.indexOf(searchQuery, index)) != -1) {
-                    SearchMatch match = new SearchMatch();
-                    match.setPage(pageNumber);
-
-                    // 提取匹配的文本
-                    int start = Math.max(0, index - 50);
-                    int end = Math.min(content.length(), index + searchQuery.length() + 50);
-                    String matchedText = content.substring(index, index + searchQuery.length());
-                    String contextText = content.substring(start, end);
-
-                    match.setText(matchedText);
-                    match.setContext(contextText);
-
-                    // 添加高亮标记
-                    List<String> highlights = new ArrayList<>();
-                    highlights.add(matchedText);
-                    match.setHighlights(highlights);
-
-                    matches.add(match);
-
-                    // 移动到下一个位置
-                    index += searchQuery.length();
+                List<DocumentTextIndex.Hit> exactHits = new ArrayList<>();
+                for (DocumentTextIndex.Hit hit : hits) {
+                    String content = pageContent(documentId, hit.getPage(), contents);
+                    if (content != null && hit.getEnd() <= content.length()
+                            && matchesExactly(content.substring(hit.getStart(), hit.getEnd()), exactTerms, lastIsPrefix)) {
+                        exactHits.add(hit);
+                    }
                 }
+                hits = exactHits;
             }
 
             // 6. 分页处理
-            int total = matches.size();
-            int totalPages = (int) Math.ceil((double) total / pageSize);
-            int offset = (page - 1) * pageSize;
-            int endIndex = Math.min(offset + pageSize, total);
+            int total = hits.size();
+            int size = Math.max(1, Math.min(pageSize, maxPageSize));
+            int offset = (int) Math.min(total, Math.max(0L, (page - 1L) * size));
+            int endIndex = Math.min(offset + size, total);
 
             List<SearchMatch> pagedMatches = new ArrayList<>();
-            if (offset < total) {
-                pagedMatches = matches.subList(offset, endIndex);
+            for (int i = offset; i < endIndex; i++) {
+                DocumentTextIndex.Hit hit = hits.get(i);
+                String content = pageContent(documentId, hit.getPage(), contents);
+                if (content == null || hit.getEnd() > content.length()) {
+                    // 页面在建索引之后被改写，跳过
+                    continue;
+                }
+                SearchMatch match = new SearchMatch();
+                match.setPage(hit.getPage());
+
+                // 提取匹配的文本
+                String matchedText = content.substring(hit.getStart(), hit.getEnd());
+                int contextStart = Math.max(0, hit.getStart() - 50);
+                int contextEnd = Math.min(content.length(), hit.getEnd() + 50);
+                match.setText(matchedText);
+                match.setContext(content.substring(contextStart, contextEnd));
+                match.setStartOffset(hit.getStart());
+                match.setEndOffset(hit.getEnd());
+
+                // 添加高亮标记
+                List<String> highlights = new ArrayList<>();
+                highlights.add(matchedText);
+                match.setHighlights(highlights);
+
+                pagedMatches.add(match);
             }
 
             // 7. 构建响应数据
             SearchData searchData = new SearchData();
             searchData.setQuery(query);
             searchData.setTotal(total);
+            searchData.setTruncated(result != null && result.isTruncated());
+            searchData.setIndexing(indexing);
             searchData.setMatches(pagedMatches);
 
             SearchResponse response = new SearchResponse(true, "搜索完成", searchData);
@@ -7,7 +7,14 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
-
+import com.vue.readingapp.config.SessionTokenCache;
+
+/**
+ * 更新阅读进度
+ *
+ * 阅读器每翻一页调用一次。进度先写入 ReadingProgressBuffer，由它合并同一文档的多次上报后定时批量写库；
+ * 请求中 sessionEnd 为 true 时立即写入。
+ */
 @RestController
 @RequestMapping("/api/v1/reader")
 public class ReaderUpdateReadingProgress {
@@ -15,6 +22,12 @@ public class ReaderUpdateReadingProgress {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReadingProgressBuffer readingProgressBuffer;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到更新阅读进度请求 ===");
@@ -41,6 +54,8 @@ public class ReaderUpdateReadingProgress {
         private int page;
         private Double percentage;
         private Integer readingTime;
+        // 阅读会话结束（关闭阅读器）时为 true，进度立即写入数据库
+        private Boolean sessionEnd;
 
         public int getPage() { return page; }
         public void setPage(int page) { this.page = page; }
@@ -50,6 +65,9 @@ public class ReaderUpdateReadingProgress {
 
         public Integer getReadingTime() { return readingTime; }
         public void setReadingTime(Integer readingTime) { this.readingTime = readingTime; }
+
+        public Boolean getSessionEnd() { return sessionEnd; }
+        public void setSessionEnd(Boolean sessionEnd) { this.sessionEnd = sessionEnd; }
     }
 
     // 响应DTO
@@ -121,8 +139,7 @@ public class ReaderUpdateReadingProgress {
             String token = authHeader.substring(7);
 
             // 验证token
-            String tokenSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, token);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -132,21 +149,28 @@ public class ReaderUpdateReadingProgress {
 
             int userId = (int) sessions.get(0).get("user_id");
 
-            // 2. 验证文档权限
-            String docSql = "SELECT * FROM documents WHERE document_id = ? AND user_id = ?";
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(docSql, documentId, userId);
-
-            if (documents.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(
-                        new ProgressResponse(false, "没有权限更新此文档的进度", null)
-                );
+            // 2. 验证文档权限并获取总页数（该文档有未写入的进度时已验证过，直接使用缓冲中的页数）
+            Integer totalPages = readingProgressBuffer.cachedTotalPages(userId, documentId);
+            if (totalPages == null) {
+                String docSql = "SELECT page_count FROM documents WHERE document_id = ? AND user_id = ?";
+                List<Map<String, Object>> documents = jdbcTemplate.queryForList(docSql, documentId, userId);
+
+                if (documents.isEmpty()) {
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(
+                            new ProgressResponse(false, "没有权限更新此文档的进度", null)
+                    );
+                }
+
+                // 3. 获取文档总页数（page_count 未填写时按页面数统计）
+                Object pageCount = documents.get(0).get("page_count");
+                totalPages = pageCount instanceof Number ? ((Number) pageCount).intValue() : 0;
+                if (totalPages <= 0) {
+                    String pageCountSql = "SELECT COUNT(*) as total_pages FROM document_pages WHERE document_id = ?";
+                    List<Map<String, Object>> pageCounts = jdbcTemplate.queryForList(pageCountSql, documentId);
+                    totalPages = pageCounts.isEmpty() ? 0 : ((Number) pageCounts.get(0).get("total_pages")).intValue();
+                }
             }
 
-            // 3. 获取文档总页数
-            String pageCountSql = "SELECT COUNT(*) as total_pages FROM document_pages WHERE document_id = ?";
-            List<Map<String, Object>> pageCounts = jdbcTemplate.queryForList(pageCountSql, documentId);
-            int totalPages = pageCounts.isEmpty() ? 0 : ((Number) pageCounts.get(0).get("total_pages")).intValue();
-
             // 4. 计算进度百分比
             double progressPercentage;
             if (request.getPercentage() != null) {
@@ -156,42 +180,17 @@ public class ReaderUpdateReadingProgress {
                 progressPercentage = Math.min(100.0, Math.max(0.0, progressPercentage));
             }
 
-            // 5. 更新文档阅读进度
-            // 修复：将 read_progress 改为 reading_progress，与 DocumentsGet.java 保持一致
-            // 注意：documents 表中没有 current_page 列，已移除
-            String updateDocSql = "UPDATE documents SET reading_progress = ?, last_read_at = NOW() " +
-                    "WHERE document_id = ?";
-            jdbcTemplate.update(updateDocSql, progressPercentage, documentId);
-
-            // 6. 更新阅读历史
-            String historySql = "UPDATE reading_history SET page = ?, end_time = NOW() " +
-                    "WHERE user_id = ? AND document_id = ? AND end_time IS NULL";
-            int updated = jdbcTemplate.update(historySql, request.getPage(), userId, documentId);
-
-            if (updated == 0) {
-                // 如果没有正在进行的阅读历史，创建新的
-                String insertHistorySql = "INSERT INTO reading_history (user_id, document_id, page, start_time) " +
-                        "VALUES (?, ?, ?, NOW())";
-                jdbcTemplate.update(insertHistorySql, userId, documentId, request.getPage());
-            }
-
-            // 7. 更新每日学习统计
-            LocalDateTime now = LocalDateTime.now();
-            String dateStr = now.toLocalDate().toString();
+            // 5. 写入缓冲：文档进度、阅读历史和每日学习统计由 ReadingProgressBuffer 合并后批量写入
+            int readingTime = request.getReadingTime() != null ? request.getReadingTime() : 0;
+            readingProgressBuffer.record(new ReadingProgressBuffer.Heartbeat(
+                    userId, documentId, request.getPage(), progressPercentage, readingTime, totalPages));
 
+            // 6. 阅读会话结束时立即写入
+            if (Boolean.TRUE.equals(request.getSessionEnd())) {
+                readingProgressBuffer.flushUser(userId);
+            }
 
-            String statsSql = "INSERT INTO daily_learning_stats (user_id, date, documents_read, pages_read, reading_time) " +
-                    "VALUES (?, ?, 1, 1, ?) " +
-                    "ON DUPLICATE KEY UPDATE " +
-                    "documents_read = documents_read + 1, " +
-                    "pages_read = pages_read + 1, " +
-                    "reading_time = reading_time + COALESCE(?, 0)";
-
-            jdbcTemplate.update(statsSql, userId, dateStr,
-                    request.getReadingTime() != null ? request.getReadingTime() : 0,
-                    request.getReadingTime() != null ? request.getReadingTime() : 0);
-
-            // 8. 构建响应数据
+            // 7. 构建响应数据
             ProgressData progressData = new ProgressData();
             progressData.setDocumentId(documentId);
             progressData.setCurrentPage(request.getPage());
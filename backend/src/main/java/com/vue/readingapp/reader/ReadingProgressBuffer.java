@@ -0,0 +1,387 @@
+package com.vue.readingapp.reader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 阅读进度的合并写缓冲（write-behind）
+ *
+ * 阅读器每翻一页就上报一次进度，以前每次上报都要更新 documents、reading_history 和 daily_learning_stats，
+ * 上课时段这是写入量最大的接口。现在上报只更新内存中的条目：
+ *   - 同一用户同一文档只保留最新的页码和百分比；
+ *   - 每日统计按 (用户, 日期) 累加翻页次数和阅读时长；
+ * 定时任务（默认每 5 秒）在一个事务中用 JDBC 批量写入，写入失败时条目放回缓冲，下次重试。
+ * 阅读会话结束（客户端标记 sessionEnd、用户登出）时立即写入该用户的条目，应用正常关闭时写入全部条目。
+ */
+@Component
+public class ReadingProgressBuffer {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 缓冲条目上限，超过后由上报线程立即写入，避免积压过多
+    @Value("${app.reader.progress-buffer-max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<ProgressKey, PendingProgress> pendingProgress = new ConcurrentHashMap<>();
+    private final Map<StatsKey, PendingStats> pendingStats = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile boolean closed = false;
+
+    // 统计信息
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong flushedEntries = new AtomicLong();
+    private volatile int lastBatchSize = 0;
+    private volatile int maxBatchSize = 0;
+    private volatile long lastFlushLagMs = 0;
+    private volatile long maxFlushLagMs = 0;
+    private volatile long lastFlushDurationMs = 0;
+    private volatile LocalDateTime lastFlushAt;
+
+    /**
+     * 一次上报的进度
+     */
+    public static class Heartbeat {
+        private final int userId;
+        private final int documentId;
+        private final int page;
+        private final double percentage;
+        private final int readingTime;
+        private final Integer totalPages;
+
+        public Heartbeat(int userId, int documentId, int page, double percentage, int readingTime, Integer totalPages) {
+            this.userId = userId;
+            this.documentId = documentId;
+            this.page = page;
+            this.percentage = percentage;
+            this.readingTime = readingTime;
+            this.totalPages = totalPages;
+        }
+    }
+
+    private static final class ProgressKey {
+        private final int userId;
+        private final int documentId;
+
+        ProgressKey(int userId, int documentId) {
+            this.userId = userId;
+            this.documentId = documentId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ProgressKey)) return false;
+            ProgressKey other = (ProgressKey) o;
+            return userId == other.userId && documentId == other.documentId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * userId + documentId;
+        }
+    }
+
+    private static final class StatsKey {
+        private final int userId;
+        private final LocalDate date;
+
+        StatsKey(int userId, LocalDate date) {
+            this.userId = userId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StatsKey)) return false;
+            StatsKey other = (StatsKey) o;
+            return userId == other.userId && date.equals(other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * userId + date.hashCode();
+        }
+    }
+
+    // 一个 (用户, 文档) 尚未写入的最新进度
+    private static final class PendingProgress {
+        private int page;
+        private double percentage;
+        private Integer totalPages;
+        private LocalDateTime firstReadAt;
+        private LocalDateTime lastReadAt;
+        private long bufferedAtNanos;
+    }
+
+    // 一个 (用户, 日期) 尚未写入的统计增量
+    private static final class PendingStats {
+        private int pagesRead;
+        private long readingTime;
+    }
+
+    /**
+     * 文档总页数：该文档有未写入的进度时直接返回缓冲中记录的值（上报时已验证过文档权限），否则返回 null
+     */
+    public Integer cachedTotalPages(int userId, int documentId) {
+        PendingProgress progress = pendingProgress.get(new ProgressKey(userId, documentId));
+        return progress != null ? progress.totalPages : null;
+    }
+
+    /**
+     * 记录一次进度上报
+     */
+    public void record(Heartbeat heartbeat) {
+        LocalDateTime now = LocalDateTime.now();
+        heartbeats.incrementAndGet();
+
+        pendingProgress.compute(new ProgressKey(heartbeat.userId, heartbeat.documentId), (key, progress) -> {
+            if (progress == null) {
+                progress = new PendingProgress();
+                progress.firstReadAt = now;
+                progress.bufferedAtNanos = System.nanoTime();
+            }
+            progress.page = heartbeat.page;
+            progress.percentage = heartbeat.percentage;
+            progress.totalPages = heartbeat.totalPages;
+            progress.lastReadAt = now;
+            return progress;
+        });
+
+        pendingStats.compute(new StatsKey(heartbeat.userId, now.toLocalDate()), (key, stats) -> {
+            if (stats == null) {
+                stats = new PendingStats();
+            }
+            stats.pagesRead++;
+            stats.readingTime += Math.max(0, heartbeat.readingTime);
+            return stats;
+        });
+
+        if (closed || pendingProgress.size() >= maxEntries) {
+            flush();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.reader.progress-flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 写入某个用户的全部缓冲条目（阅读会话结束、登出）
+     */
+    public void flushUser(int userId) {
+        drainAndWrite(key -> key.userId == userId, key -> key.userId == userId);
+    }
+
+    /**
+     * 写入全部缓冲条目
+     */
+    public void flush() {
+        drainAndWrite(key -> true, key -> true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        flush();
+        if (!pendingProgress.isEmpty() || !pendingStats.isEmpty()) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] " + pendingProgress.size()
+                    + " reading progress entries could not be written before shutdown");
+        } else {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Reading progress buffer flushed on shutdown");
+        }
+    }
+
+    private void drainAndWrite(Predicate<ProgressKey> progressFilter,
+                               Predicate<StatsKey> statsFilter) {
+        flushLock.lock();
+        try {
+            // 逐个移除条目：移除之后到达的上报会创建新条目，留给下一次写入，不会丢失
+            Map<ProgressKey, PendingProgress> progressBatch = new LinkedHashMap<>();
+            for (ProgressKey key : new ArrayList<>(pendingProgress.keySet())) {
+                if (progressFilter.test(key)) {
+                    PendingProgress progress = pendingProgress.remove(key);
+                    if (progress != null) {
+                        progressBatch.put(key, progress);
+                    }
+                }
+            }
+            Map<StatsKey, PendingStats> statsBatch = new LinkedHashMap<>();
+            for (StatsKey key : new ArrayList<>(pendingStats.keySet())) {
+                if (statsFilter.test(key)) {
+                    PendingStats stats = pendingStats.remove(key);
+                    if (stats != null) {
+                        statsBatch.put(key, stats);
+                    }
+                }
+            }
+            if (progressBatch.isEmpty() && statsBatch.isEmpty()) {
+                return;
+            }
+
+            long startedAt = System.nanoTime();
+            long oldest = startedAt;
+            for (PendingProgress progress : progressBatch.values()) {
+                oldest = Math.min(oldest, progress.bufferedAtNanos);
+            }
+
+            try {
+                transactionTemplate.execute(status -> {
+                    writeProgress(progressBatch);
+                    writeStats(statsBatch);
+                    return null;
+                });
+            } catch (Exception e) {
+                failedFlushCount.incrementAndGet();
+                requeue(progressBatch, statsBatch);
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to flush " + progressBatch.size()
+                        + " reading progress entries, will retry: " + e.getMessage());
+                return;
+            }
+
+            int batchSize = progressBatch.size();
+            long lagMs = (System.nanoTime() - oldest) / 1_000_000;
+            flushCount.incrementAndGet();
+            flushedEntries.addAndGet(batchSize);
+            lastBatchSize = batchSize;
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+            lastFlushLagMs = lagMs;
+            maxFlushLagMs = Math.max(maxFlushLagMs, lagMs);
+            lastFlushDurationMs = (System.nanoTime() - startedAt) / 1_000_000;
+            lastFlushAt = LocalDateTime.now();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeProgress(Map<ProgressKey, PendingProgress> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ProgressKey> keys = new ArrayList<>(batch.keySet());
+
+        // 1. 文档阅读进度
+        List<Object[]> documentArgs = new ArrayList<>();
+        for (ProgressKey key : keys) {
+            PendingProgress progress = batch.get(key);
+            documentArgs.add(new Object[]{progress.percentage, Timestamp.valueOf(progress.lastReadAt), key.documentId, key.userId});
+        }
+        jdbcTemplate.batchUpdate("UPDATE documents SET reading_progress = ?, last_read_at = ? " +
+                "WHERE document_id = ? AND user_id = ?", documentArgs);
+
+        // 2. 阅读历史：更新正在进行的记录，没有则新建（缓冲期间文档可能已被删除，新建时再核对一次）
+        List<Object[]> historyArgs = new ArrayList<>();
+        for (ProgressKey key : keys) {
+            PendingProgress progress = batch.get(key);
+            historyArgs.add(new Object[]{progress.page, Timestamp.valueOf(progress.lastReadAt), key.userId, key.documentId});
+        }
+        int[] updated = jdbcTemplate.batchUpdate("UPDATE reading_history SET page = ?, end_time = ? " +
+                "WHERE user_id = ? AND document_id = ? AND end_time IS NULL", historyArgs);
+
+        List<Object[]> insertArgs = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                ProgressKey key = keys.get(i);
+                PendingProgress progress = batch.get(key);
+                insertArgs.add(new Object[]{key.userId, key.documentId, progress.page,
+                        Timestamp.valueOf(progress.firstReadAt), key.documentId, key.userId});
+            } else if (updated[i] == Statement.EXECUTE_FAILED) {
+                throw new IllegalStateException("reading_history 批量更新失败");
+            }
+        }
+        if (!insertArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO reading_history (user_id, document_id, page, start_time) " +
+                    "SELECT ?, ?, ?, ? FROM documents WHERE document_id = ? AND user_id = ?", insertArgs);
+        }
+    }
+
+    private void writeStats(Map<StatsKey, PendingStats> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // 与逐次写入的累计结果一致：每次上报计 1 次文档阅读、1 页
+        List<Object[]> statsArgs = new ArrayList<>();
+        for (Map.Entry<StatsKey, PendingStats> entry : batch.entrySet()) {
+            PendingStats stats = entry.getValue();
+            statsArgs.add(new Object[]{entry.getKey().userId, entry.getKey().date.toString(),
+                    stats.pagesRead, stats.pagesRead, stats.readingTime});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO daily_learning_stats (user_id, date, documents_read, pages_read, reading_time) " +
+                "VALUES (?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE " +
+                "documents_read = documents_read + VALUES(documents_read), " +
+                "pages_read = pages_read + VALUES(pages_read), " +
+                "reading_time = reading_time + VALUES(reading_time)", statsArgs);
+    }
+
+    // 写入失败：放回缓冲，与期间新到的条目合并（进度以较新的为准，统计累加）
+    private void requeue(Map<ProgressKey, PendingProgress> progressBatch, Map<StatsKey, PendingStats> statsBatch) {
+        for (Map.Entry<ProgressKey, PendingProgress> entry : progressBatch.entrySet()) {
+            PendingProgress failed = entry.getValue();
+            pendingProgress.merge(entry.getKey(), failed, (newer, older) -> {
+                newer.firstReadAt = older.firstReadAt;
+                newer.bufferedAtNanos = older.bufferedAtNanos;
+                return newer;
+            });
+        }
+        for (Map.Entry<StatsKey, PendingStats> entry : statsBatch.entrySet()) {
+            pendingStats.merge(entry.getKey(), entry.getValue(), (newer, older) -> {
+                newer.pagesRead += older.pagesRead;
+                newer.readingTime += older.readingTime;
+                return newer;
+            });
+        }
+    }
+
+    /**
+     * 获取缓冲统计信息
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        long now = System.nanoTime();
+        long oldest = now;
+        for (PendingProgress progress : pendingProgress.values()) {
+            oldest = Math.min(oldest, progress.bufferedAtNanos);
+        }
+        long flushes = flushCount.get();
+        long flushed = flushedEntries.get();
+
+        metrics.put("pendingEntries", pendingProgress.size());
+        metrics.put("pendingStatsEntries", pendingStats.size());
+        metrics.put("oldestPendingMs", (now - oldest) / 1_000_000);
+        metrics.put("heartbeats", heartbeats.get());
+        metrics.put("flushCount", flushes);
+        metrics.put("failedFlushCount", failedFlushCount.get());
+        metrics.put("flushedEntries", flushed);
+        metrics.put("lastBatchSize", lastBatchSize);
+        metrics.put("maxBatchSize", maxBatchSize);
+        metrics.put("averageBatchSize", flushes > 0 ? (double) flushed / flushes : 0.0);
+        metrics.put("lastFlushLagMs", lastFlushLagMs);
+        metrics.put("maxFlushLagMs", maxFlushLagMs);
+        metrics.put("lastFlushDurationMs", lastFlushDurationMs);
+        metrics.put("lastFlushAt", lastFlushAt != null ? lastFlushAt.toString() : null);
+        return metrics;
+    }
+}
@@ -0,0 +1,393 @@
+package com.vue.readingapp.reader.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 单个文档的位置倒排索引（不可变）
+ *
+ * 词表按字典序排列，前缀查询用二分查找定位词表区间。每个词的倒排表依次记录出现位置
+ * (页码, 词序号, 起始偏移, 长度)，按页码、词序号递增排列，用变长整数编码：
+ *   - 页码记录与上一条的差值（+1 后写入，同一页为 0）；
+ *   - 同一页内词序号和起始偏移也记录差值，换页时记录绝对值；
+ *   - 长度直接写入。
+ * 所有倒排表连续存放在一个 byte[] 中，postingStarts[i] 为第 i 个词的起始下标。
+ * 查询时按顺序解码，短语查询对各个词的倒排表做有序归并求交，收集到足够的命中即停止，
+ * 耗时取决于查询词的出现次数，与文档长度无关。
+ */
+public class DocumentTextIndex {
+
+    private final String[] terms;
+    private final int[] postingStarts;
+    private final byte[] postings;
+    private final int pageCount;
+    private final int tokenCount;
+
+    // 前缀查询最多展开的词数，避免单个字母的前缀展开成整个词表
+    private static final int MAX_PREFIX_TERMS = 512;
+
+    private DocumentTextIndex(String[] terms, int[] postingStarts, byte[] postings, int pageCount, int tokenCount) {
+        this.terms = terms;
+        this.postingStarts = postingStarts;
+        this.postings = postings;
+        this.pageCount = pageCount;
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * 一处命中
+     */
+    public static class Hit {
+        private final int page;
+        private final int start;
+        private final int end;
+
+        Hit(int page, int start, int end) {
+            this.page = page;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getPage() { return page; }
+        /** 命中在页面原文中的起始字符偏移（含） */
+        public int getStart() { return start; }
+        /** 命中在页面原文中的结束字符偏移（不含） */
+        public int getEnd() { return end; }
+    }
+
+    /**
+     * 查询结果
+     */
+    public static class SearchResult {
+        private final List<Hit> hits;
+        private final boolean truncated;
+
+        SearchResult(List<Hit> hits, boolean truncated) {
+            this.hits = hits;
+            this.truncated = truncated;
+        }
+
+        public List<Hit> getHits() { return hits; }
+        /** 命中数超过上限，后面的命中没有继续查找 */
+        public boolean isTruncated() { return truncated; }
+    }
+
+    public int getPageCount() { return pageCount; }
+    public int getTokenCount() { return tokenCount; }
+    public int getTermCount() { return terms.length; }
+
+    /** 估算占用的内存字节数 */
+    public long sizeBytes() {
+        long size = postings.length + 4L * postingStarts.length + 64;
+        for (String term : terms) {
+            size += 48 + 2L * term.length();
+        }
+        return size;
+    }
+
+    // ===== 建索引 =====
+
+    /**
+     * 按页码顺序逐页添加内容
+     */
+    public static class Builder {
+        private final Map<String, PostingWriter> writers = new HashMap<>();
+        private int pageCount = 0;
+        private int tokenCount = 0;
+        private int lastPage = Integer.MIN_VALUE;
+
+        public Builder addPage(int pageNumber, String content) {
+            if (pageNumber <= lastPage) {
+                throw new IllegalArgumentException("Pages must be added in ascending order: " + pageNumber);
+            }
+            lastPage = pageNumber;
+            pageCount++;
+            for (PositionalTokenizer.Token token : PositionalTokenizer.tokenize(content, true)) {
+                writers.computeIfAbsent(token.getTerm(), key -> new PostingWriter())
+                        .add(pageNumber, token.getPosition(), token.getStart(), token.getEnd() - token.getStart());
+                tokenCount++;
+            }
+            return this;
+        }
+
+        public DocumentTextIndex build() {
+            String[] terms = writers.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            int[] starts = new int[terms.length + 1];
+            int total = 0;
+            for (int i = 0; i < terms.length; i++) {
+                starts[i] = total;
+                total += writers.get(terms[i]).size;
+            }
+            starts[terms.length] = total;
+            byte[] postings = new byte[total];
+            for (int i = 0; i < terms.length; i++) {
+                PostingWriter writer = writers.get(terms[i]);
+                System.arraycopy(writer.bytes, 0, postings, starts[i], writer.size);
+            }
+            return new DocumentTextIndex(terms, starts, postings, pageCount, tokenCount);
+        }
+    }
+
+    private static class PostingWriter {
+        private byte[] bytes = new byte[16];
+        private int size = 0;
+        private int lastPage = -1;
+        private int lastPosition = 0;
+        private int lastStart = 0;
+
+        void add(int page, int position, int start, int length) {
+            if (page == lastPage) {
+                writeVarInt(0);
+                writeVarInt(position - lastPosition);
+                writeVarInt(start - lastStart);
+            } else {
+                writeVarInt(page - lastPage);
+                writeVarInt(position);
+                writeVarInt(start);
+            }
+            writeVarInt(length);
+            lastPage = page;
+            lastPosition = position;
+            lastStart = start;
+        }
+
+        private void writeVarInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+
+    // ===== 查询 =====
+
+    /**
+     * 短语 / 前缀查询
+     *
+     * @param queryTerms 查询词（已转小写），多个词时要求在同一页中依次相邻
+     * @param lastIsPrefix 最后一个词按前缀匹配（输入过程中的查询）
+     * @param limit 最多返回的命中数
+     */
+    public SearchResult search(List<String> queryTerms, boolean lastIsPrefix, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return new SearchResult(hits, false);
+        }
+
+        PostingStream[] streams = new PostingStream[queryTerms.size()];
+        for (int i = 0; i < streams.length; i++) {
+            boolean prefix = lastIsPrefix && i == streams.length - 1;
+            streams[i] = prefix ? prefixStream(queryTerms.get(i)) : termStream(queryTerms.get(i));
+            if (streams[i] == null || !streams[i].next()) {
+                return new SearchResult(hits, false);
+            }
+        }
+
+        PostingStream first = streams[0];
+        PostingStream last = streams[streams.length - 1];
+        while (true) {
+            // 第 i 个词对齐到 (页码, 词序号 - i)，所有流的对齐键相等即为一处短语命中
+            long target = key(first, 0);
+            boolean aligned = false;
+            while (!aligned) {
+                aligned = true;
+                for (int i = 0; i < streams.length; i++) {
+                    while (key(streams[i], i) < target) {
+                        if (!streams[i].next()) {
+                            return new SearchResult(hits, false);
+                        }
+                    }
+                    long current = key(streams[i], i);
+                    if (current > target) {
+                        target = current;
+                        aligned = false;
+                    }
+                }
+            }
+
+            if (hits.size() == limit) {
+                return new SearchResult(hits, true);
+            }
+            hits.add(new Hit(first.page(), first.start(), last.start() + last.length()));
+            if (!first.next()) {
+                return new SearchResult(hits, false);
+            }
+        }
+    }
+
+    private static long key(PostingStream stream, int offset) {
+        return ((long) stream.page() << 32) + stream.position() - offset;
+    }
+
+    private PostingStream termStream(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? new TermCursor(index) : null;
+    }
+
+    private PostingStream prefixStream(String prefix) {
+        int from = lowerBound(prefix);
+        List<TermCursor> cursors = new ArrayList<>();
+        for (int i = from; i < terms.length && terms[i].startsWith(prefix) && cursors.size() < MAX_PREFIX_TERMS; i++) {
+            cursors.add(new TermCursor(i));
+        }
+        if (cursors.isEmpty()) {
+            return null;
+        }
+        return cursors.size() == 1 ? cursors.get(0) : new MergedCursor(cursors);
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private interface PostingStream {
+        boolean next();
+        int page();
+        int position();
+        int start();
+        int length();
+    }
+
+    // 顺序解码一个词的倒排表
+    private class TermCursor implements PostingStream {
+        private int offset;
+        private final int end;
+        private int page = -1;
+        private int position = 0;
+        private int start = 0;
+        private int length = 0;
+
+        TermCursor(int termIndex) {
+            this.offset = postingStarts[termIndex];
+            this.end = postingStarts[termIndex + 1];
+        }
+
+        @Override
+        public boolean next() {
+            if (offset >= end) {
+                return false;
+            }
+            int pageDelta = readVarInt();
+            if (pageDelta == 0) {
+                position += readVarInt();
+                start += readVarInt();
+            } else {
+                page += pageDelta;
+                position = readVarInt();
+                start = readVarInt();
+            }
+            length = readVarInt();
+            return true;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        @Override public int page() { return page; }
+        @Override public int position() { return position; }
+        @Override public int start() { return start; }
+        @Override public int length() { return length; }
+    }
+
+    // 前缀展开后的多个词按 (页码, 词序号) 归并为一个流
+    private static class MergedCursor implements PostingStream {
+        private final PriorityQueue<TermCursor> queue = new PriorityQueue<>(
+                Comparator.comparingInt(TermCursor::page).thenComparingInt(TermCursor::position));
+        private final List<TermCursor> pending;
+        private TermCursor current;
+
+        MergedCursor(List<TermCursor> cursors) {
+            this.pending = cursors;
+        }
+
+        @Override
+        public boolean next() {
+            if (pending != null && current == null && queue.isEmpty()) {
+                for (TermCursor cursor : pending) {
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                pending.clear();
+            } else if (current != null && current.next()) {
+                queue.add(current);
+            }
+            current = queue.poll();
+            return current != null;
+        }
+
+        @Override public int page() { return current.page(); }
+        @Override public int position() { return current.position(); }
+        @Override public int start() { return current.start(); }
+        @Override public int length() { return current.length(); }
+    }
+
+    // ===== 序列化（document_text_index.index_data） =====
+
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(postings.length + terms.length * 12 + 64);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(pageCount);
+            out.writeInt(tokenCount);
+            out.writeInt(terms.length);
+            for (int i = 0; i < terms.length; i++) {
+                out.writeUTF(terms[i]);
+                out.writeInt(postingStarts[i + 1] - postingStarts[i]);
+            }
+            out.writeInt(postings.length);
+            out.write(postings);
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static DocumentTextIndex fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int pageCount = in.readInt();
+        int tokenCount = in.readInt();
+        int termCount = in.readInt();
+        String[] terms = new String[termCount];
+        int[] starts = new int[termCount + 1];
+        for (int i = 0; i < termCount; i++) {
+            terms[i] = in.readUTF();
+            starts[i + 1] = starts[i] + in.readInt();
+        }
+        byte[] postings = new byte[in.readInt()];
+        in.readFully(postings);
+        if (starts[termCount] != postings.length) {
+            throw new IOException("Corrupted text index: posting length mismatch");
+        }
+        return new DocumentTextIndex(terms, starts, postings, pageCount, tokenCount);
+    }
+}
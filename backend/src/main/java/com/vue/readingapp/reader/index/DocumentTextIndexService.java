@@ -0,0 +1,347 @@
+package com.vue.readingapp.reader.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 文档内搜索索引服务
+ *
+ * 以前阅读器里的搜索每次（客户端每输入一个字就请求一次）都要 SELECT * 读出文档全部页面，
+ * 逐页转小写后 indexOf 扫描。现在每个文档有一份位置倒排索引（见 DocumentTextIndex）：
+ *   - OCR 完成或复用处理结果后在后台建好，序列化存入 document_text_index 表；
+ *   - 查询时依次从内存缓存、document_text_index 表读取，都没有时提交后台构建，本次查询逐页扫描 document_pages，
+ *     不在请求线程上建索引；
+ *   - 内存缓存按字节数限制大小，按 LRU 淘汰；
+ *   - OCR 写入页面时删除该文档的索引，等处理完成后重建。
+ */
+@Component
+public class DocumentTextIndexService {
+
+    // 序列化格式版本，格式变化后旧数据会被忽略并重建
+    private static final int FORMAT_VERSION = 1;
+    // 版本号槽位数
+    private static final int VERSION_SLOTS = 4096;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 内存中索引的字节数上限
+    @Value("${app.reader.text-index.max-bytes:67108864}")
+    private long maxBytes;
+
+    // 按访问顺序排列，所有访问都在 synchronized (indexes) 中进行
+    private final LinkedHashMap<Integer, DocumentTextIndex> indexes = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes = 0;
+
+    // 文档版本号槽位，文档失效时所在槽位加一；失效前开始的构建结果不再保存
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_SLOTS);
+    // 已提交后台构建、尚未完成的文档
+    private final Set<Integer> pendingBuilds = ConcurrentHashMap.newKeySet();
+    // 同一文档同时只构建一次
+    private final Object[] buildLocks = new Object[64];
+    private ExecutorService builder;
+
+    // 统计信息
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong tableHits = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong buildMillis = new AtomicLong();
+    private final AtomicLong scans = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < buildLocks.length; i++) {
+            buildLocks[i] = new Object();
+        }
+        builder = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "reader-text-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        try {
+            Integer tableCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'document_text_index'",
+                    Integer.class);
+            if (tableCount == null || tableCount == 0) {
+                System.out.println("INFO: Creating table 'document_text_index'...");
+                jdbcTemplate.execute("CREATE TABLE document_text_index (" +
+                        "document_id INT NOT NULL PRIMARY KEY," +
+                        "format_version INT NOT NULL," +
+                        "page_count INT NOT NULL DEFAULT 0," +
+                        "token_count INT NOT NULL DEFAULT 0," +
+                        "index_data LONGBLOB NOT NULL," +
+                        "built_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                        "CONSTRAINT document_text_index_ibfk_1 FOREIGN KEY (document_id) REFERENCES documents (document_id) ON DELETE CASCADE" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to check text index schema: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询用：返回内存或表中已有的索引；都没有时提交后台构建并返回 null，调用方改用 scan
+     */
+    public DocumentTextIndex findIndex(int documentId) {
+        DocumentTextIndex index = fromMemory(documentId);
+        if (index != null) {
+            memoryHits.incrementAndGet();
+            return index;
+        }
+        if (!pendingBuilds.contains(documentId)) {
+            long version = version(documentId);
+            index = fromTable(documentId);
+            if (index != null) {
+                tableHits.incrementAndGet();
+                if (version == version(documentId)) {
+                    putMemory(documentId, index);
+                }
+                return index;
+            }
+        }
+        rebuildAsync(documentId);
+        return null;
+    }
+
+    /**
+     * 不使用索引，逐页扫描 document_pages 查找（索引尚未建好时使用），匹配规则与 DocumentTextIndex.search 相同
+     */
+    public DocumentTextIndex.SearchResult scan(int documentId, List<String> queryTerms, boolean lastIsPrefix, int limit) {
+        scans.incrementAndGet();
+        List<DocumentTextIndex.Hit> hits = new ArrayList<>();
+        boolean[] truncated = {false};
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return new DocumentTextIndex.SearchResult(hits, false);
+        }
+        // 逐行处理，不一次性持有所有页面内容；找到 limit 处后跳过剩余页面
+        jdbcTemplate.query("SELECT page_number, content FROM document_pages WHERE document_id = ? ORDER BY page_number",
+                (RowCallbackHandler) rs -> {
+                    if (!truncated[0]) {
+                        truncated[0] = scanPage(rs.getInt("page_number"), rs.getString("content"),
+                                queryTerms, lastIsPrefix, hits, limit);
+                    }
+                },
+                documentId);
+        return new DocumentTextIndex.SearchResult(hits, truncated[0]);
+    }
+
+    // 在一页中查找短语，命中数超过 limit 时返回 true
+    static boolean scanPage(int pageNumber, String content, List<String> queryTerms, boolean lastIsPrefix,
+                            List<DocumentTextIndex.Hit> hits, int limit) {
+        List<PositionalTokenizer.Token> tokens = PositionalTokenizer.tokenize(content, true);
+        int n = queryTerms.size();
+        for (int i = 0; i + n <= tokens.size(); i++) {
+            boolean matched = true;
+            for (int j = 0; j < n && matched; j++) {
+                PositionalTokenizer.Token token = tokens.get(i + j);
+                boolean prefix = lastIsPrefix && j == n - 1;
+                // 词序号必须连续（被跳过的超长词会占一个位置）
+                matched = token.getPosition() == tokens.get(i).getPosition() + j
+                        && (prefix ? token.getTerm().startsWith(queryTerms.get(j)) : token.getTerm().equals(queryTerms.get(j)));
+            }
+            if (matched) {
+                if (hits.size() == limit) {
+                    return true;
+                }
+                hits.add(new DocumentTextIndex.Hit(pageNumber, tokens.get(i).getStart(), tokens.get(i + n - 1).getEnd()));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取文档的搜索索引，没有时现建（后台构建线程使用）
+     */
+    public DocumentTextIndex getIndex(int documentId) {
+        DocumentTextIndex index = fromMemory(documentId);
+        if (index != null) {
+            memoryHits.incrementAndGet();
+            return index;
+        }
+
+        synchronized (buildLocks[Math.floorMod(documentId, buildLocks.length)]) {
+            index = fromMemory(documentId);
+            if (index != null) {
+                memoryHits.incrementAndGet();
+                return index;
+            }
+
+            long version = version(documentId);
+            index = fromTable(documentId);
+            if (index != null) {
+                tableHits.incrementAndGet();
+            } else {
+                index = build(documentId);
+                if (index.getPageCount() > 0 && version == version(documentId)) {
+                    save(documentId, index);
+                }
+            }
+            if (version == version(documentId)) {
+                putMemory(documentId, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 文档处理完成：在后台建好索引
+     */
+    public void rebuildAsync(long documentId) {
+        int id = (int) documentId;
+        if (!pendingBuilds.add(id)) {
+            return;
+        }
+        try {
+            builder.execute(() -> {
+                try {
+                    getIndex(id);
+                } catch (Exception e) {
+                    System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to build text index for document " + id + ": " + e.getMessage());
+                } finally {
+                    pendingBuilds.remove(id);
+                }
+            });
+        } catch (Exception e) {
+            pendingBuilds.remove(id);
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to schedule text index build for document " + id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 文档页面发生变化或文档被删除：删除内存中和表中的索引
+     */
+    public void invalidate(long documentId) {
+        int id = (int) documentId;
+        versions.incrementAndGet(Math.floorMod(id, VERSION_SLOTS));
+        synchronized (indexes) {
+            DocumentTextIndex removed = indexes.remove(id);
+            if (removed != null) {
+                cachedBytes -= removed.sizeBytes();
+            }
+        }
+        try {
+            jdbcTemplate.update("DELETE FROM document_text_index WHERE document_id = ?", id);
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to delete text index of document " + id + ": " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        synchronized (indexes) {
+            metrics.put("cachedDocuments", indexes.size());
+            metrics.put("cachedBytes", cachedBytes);
+        }
+        long buildCount = builds.get();
+        metrics.put("maxBytes", maxBytes);
+        metrics.put("memoryHits", memoryHits.get());
+        metrics.put("tableHits", tableHits.get());
+        metrics.put("builds", buildCount);
+        metrics.put("averageBuildMs", buildCount > 0 ? (double) buildMillis.get() / buildCount : 0.0);
+        metrics.put("pendingBuilds", pendingBuilds.size());
+        metrics.put("scans", scans.get());
+        return metrics;
+    }
+
+    private DocumentTextIndex fromMemory(int documentId) {
+        synchronized (indexes) {
+            return indexes.get(documentId);
+        }
+    }
+
+    private DocumentTextIndex fromTable(int documentId) {
+        try {
+            List<byte[]> rows = jdbcTemplate.query(
+                    "SELECT index_data FROM document_text_index WHERE document_id = ? AND format_version = ?",
+                    (rs, rowNum) -> rs.getBytes("index_data"), documentId, FORMAT_VERSION);
+            return rows.isEmpty() ? null : DocumentTextIndex.fromBytes(rows.get(0));
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to load text index of document " + documentId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 逐行读取页面建索引，不一次性持有所有页面内容
+    private DocumentTextIndex build(int documentId) {
+        long startedAt = System.currentTimeMillis();
+        DocumentTextIndex.Builder indexBuilder = new DocumentTextIndex.Builder();
+        jdbcTemplate.query("SELECT page_number, content FROM document_pages WHERE document_id = ? ORDER BY page_number",
+                (RowCallbackHandler) rs -> indexBuilder.addPage(rs.getInt("page_number"), rs.getString("content")),
+                documentId);
+        DocumentTextIndex index = indexBuilder.build();
+        long elapsed = System.currentTimeMillis() - startedAt;
+        builds.incrementAndGet();
+        buildMillis.addAndGet(elapsed);
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Built text index for document " + documentId + ": "
+                + index.getPageCount() + " pages, " + index.getTermCount() + " terms, " + index.getTokenCount() + " tokens in " + elapsed + "ms");
+        return index;
+    }
+
+    private void save(int documentId, DocumentTextIndex index) {
+        try {
+            jdbcTemplate.update("INSERT INTO document_text_index (document_id, format_version, page_count, token_count, index_data, built_at) " +
+                            "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE format_version = VALUES(format_version), " +
+                            "page_count = VALUES(page_count), token_count = VALUES(token_count), " +
+                            "index_data = VALUES(index_data), built_at = VALUES(built_at)",
+                    documentId, FORMAT_VERSION, index.getPageCount(), index.getTokenCount(), index.toBytes(),
+                    Timestamp.valueOf(LocalDateTime.now()));
+        } catch (Exception e) {
+            // 保存失败不影响本次查询，下次未命中内存时重建
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to save text index of document " + documentId + ": " + e.getMessage());
+        }
+    }
+
+    private void putMemory(int documentId, DocumentTextIndex index) {
+        long size = index.sizeBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (indexes) {
+            DocumentTextIndex previous = indexes.put(documentId, index);
+            if (previous != null) {
+                cachedBytes -= previous.sizeBytes();
+            }
+            cachedBytes += size;
+            Iterator<Map.Entry<Integer, DocumentTextIndex>> it = indexes.entrySet().iterator();
+            while (cachedBytes > maxBytes && it.hasNext()) {
+                cachedBytes -= it.next().getValue().sizeBytes();
+                it.remove();
+            }
+        }
+    }
+
+    private long version(int documentId) {
+        return versions.get(Math.floorMod(documentId, VERSION_SLOTS));
+    }
+}
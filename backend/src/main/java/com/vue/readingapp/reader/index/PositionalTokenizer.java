@@ -0,0 +1,92 @@
+package com.vue.readingapp.reader.index;
+
+import com.vue.readingapp.search.index.SearchTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带位置的分词器（文档内搜索用）
+ *
+ * 与 SearchTokenizer 的区别：这里要求能还原命中在原文中的字符区间，并支持短语匹配，因此
+ *   - 拉丁字母 / 数字按连续字母数字切词，每个词记录原文中的起止偏移；
+ *   - 中日韩文字每个字单独作为一个词，连续的字位置相邻，短语查询即可精确匹配任意长度的中文片段。
+ */
+public final class PositionalTokenizer {
+
+    // 超长的"词"（base64、URL 等）不建索引，但仍占一个位置，避免前后两个词被误认为相邻
+    private static final int MAX_TOKEN_LENGTH = 40;
+
+    private PositionalTokenizer() {
+    }
+
+    /**
+     * 一个词及其在原文中的位置
+     */
+    public static class Token {
+        private final String term;
+        private final int position;
+        private final int start;
+        private final int end;
+
+        Token(String term, int position, int start, int end) {
+            this.term = term;
+            this.position = position;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getTerm() { return term; }
+        /** 在本页中的词序号（从 0 开始） */
+        public int getPosition() { return position; }
+        /** 原文中的起始字符偏移（含） */
+        public int getStart() { return start; }
+        /** 原文中的结束字符偏移（不含） */
+        public int getEnd() { return end; }
+    }
+
+    /**
+     * @param lowercase 是否转小写（建索引和不区分大小写的查询为 true）
+     */
+    public static List<Token> tokenize(String text, boolean lowercase) {
+        List<Token> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        StringBuilder word = new StringBuilder();
+        int wordStart = -1;
+        int position = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+
+            if (SearchTokenizer.isCjk(codePoint)) {
+                position = flushWord(word, wordStart, i, position, tokens);
+                int cp = lowercase ? Character.toLowerCase(codePoint) : codePoint;
+                tokens.add(new Token(new String(Character.toChars(cp)), position++, i, next));
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                if (word.length() == 0) {
+                    wordStart = i;
+                }
+                word.appendCodePoint(lowercase ? Character.toLowerCase(codePoint) : codePoint);
+            } else {
+                position = flushWord(word, wordStart, i, position, tokens);
+            }
+            i = next;
+        }
+        flushWord(word, wordStart, text.length(), position, tokens);
+        return tokens;
+    }
+
+    private static int flushWord(StringBuilder word, int start, int end, int position, List<Token> tokens) {
+        if (word.length() == 0) {
+            return position;
+        }
+        if (word.length() <= MAX_TOKEN_LENGTH) {
+            tokens.add(new Token(word.toString(), position, start, end));
+        }
+        word.setLength(0);
+        return position + 1;
+    }
+}
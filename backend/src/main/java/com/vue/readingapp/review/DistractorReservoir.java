@@ -0,0 +1,251 @@
+package com.vue.readingapp.review;
+
+import com.vue.readingapp.config.RelationBatchLoader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 复习选择题的干扰项蓄水池
+ *
+ * 原来每次加载复习单词都执行一次 "SELECT ... FROM words ... ORDER BY RAND() LIMIT 50"，
+ * 还带一个逐行的 word_definitions 子查询，相当于每次都对整个词典做全表扫描加排序。
+ *
+ * 现在按语言在内存中维护干扰项样本：
+ *   - 每种语言一个总蓄水池，另按 (难度, 词性) 分层各一个蓄水池，容量固定；
+ *   - 用蓄水池抽样（Algorithm R）增量吸收新词：按 word_id 水位线只扫描新增的词条，
+ *     每个分层里保留的都是该分层全部词条的均匀样本；
+ *   - 取干扰项时优先从与待复习单词同难度、同词性的分层中抽取，不足时再从总蓄水池补齐，
+ *     每次抽样的代价是 O(k)，与词典大小无关。
+ * 词条被删除时样本中可能残留旧词，只影响干扰项本身，不影响复习结果。
+ */
+@Component
+public class DistractorReservoir {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
+    // 每种语言总蓄水池的容量
+    @Value("${app.review.distractors.language-capacity:2000}")
+    private int languageCapacity;
+
+    // 每个 (难度, 词性) 分层的容量
+    @Value("${app.review.distractors.stratum-capacity:200}")
+    private int stratumCapacity;
+
+    // 每次从 words 表扫描的行数
+    @Value("${app.review.distractors.scan-batch-size:5000}")
+    private int scanBatchSize;
+
+    /**
+     * 一个干扰项
+     */
+    static class Candidate {
+        final long id;
+        final String word;
+        final String definition;
+        final String phonetic;
+
+        Candidate(long id, String word, String definition, String phonetic) {
+            this.id = id;
+            this.word = word;
+            this.definition = definition;
+            this.phonetic = phonetic;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", id);
+            map.put("word", word);
+            map.put("definition", definition);
+            map.put("phonetic", phonetic);
+            return map;
+        }
+    }
+
+    /**
+     * 固定容量的蓄水池
+     */
+    static class Reservoir {
+        private final int capacity;
+        final List<Candidate> samples = new ArrayList<>();
+        private long seen = 0;
+
+        Reservoir(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        void offer(Candidate candidate) {
+            seen++;
+            if (samples.size() < capacity) {
+                samples.add(candidate);
+                return;
+            }
+            long slot = ThreadLocalRandom.current().nextLong(seen);
+            if (slot < capacity) {
+                samples.set((int) slot, candidate);
+            }
+        }
+
+        /**
+         * 随机抽取最多 k 个不重复、不在 exclude 中的干扰项，期望代价 O(k)
+         */
+        void sample(int k, Set<String> exclude, Map<String, Candidate> picked) {
+            int size = samples.size();
+            if (k <= 0 || size == 0) {
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int target = picked.size() + Math.min(k, size);
+            // 尝试次数有上限，避免蓄水池中大部分词被排除时空转
+            for (int attempts = 0; picked.size() < target && attempts < 3 * k + 10; attempts++) {
+                Candidate candidate = samples.get(random.nextInt(size));
+                String key = candidate.word.toLowerCase();
+                if (!exclude.contains(key)) {
+                    picked.putIfAbsent(key, candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一种语言的干扰项：总蓄水池 + 分层蓄水池
+     */
+    private class LanguagePool {
+        private final Reservoir all = new Reservoir(languageCapacity);
+        private final Map<String, Reservoir> strata = new HashMap<>();
+
+        synchronized void offer(Candidate candidate, String difficulty, String partOfSpeech) {
+            all.offer(candidate);
+            strata.computeIfAbsent(stratumKey(difficulty, partOfSpeech), k -> new Reservoir(stratumCapacity))
+                    .offer(candidate);
+        }
+
+        synchronized void sample(Map<String, Integer> quotas, int k, Set<String> exclude, Map<String, Candidate> picked) {
+            for (Map.Entry<String, Integer> quota : quotas.entrySet()) {
+                Reservoir stratum = strata.get(quota.getKey());
+                if (stratum != null) {
+                    stratum.sample(Math.min(quota.getValue(), k - picked.size()), exclude, picked);
+                }
+            }
+            all.sample(k - picked.size(), exclude, picked);
+        }
+
+        synchronized int size() {
+            return all.samples.size();
+        }
+    }
+
+    private final Map<String, LanguagePool> pools = new ConcurrentHashMap<>();
+
+    // 已经吸收到蓄水池中的最大 word_id，只由刷新任务修改
+    private long watermark = 0;
+
+    private static String stratumKey(String difficulty, String partOfSpeech) {
+        return (difficulty != null ? difficulty : "") + "|" + (partOfSpeech != null ? partOfSpeech : "");
+    }
+
+    /**
+     * 吸收 words 表中新增的词条。首次执行（应用启动时）会分批扫描整个词典，之后只扫描水位线之后的新词。
+     * 扫描期间不阻塞抽样：分批写入，每个语言池单独加锁。
+     */
+    @Scheduled(fixedDelayString = "${app.review.distractors.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        try {
+            int absorbed = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT word_id, word, language, phonetic, part_of_speech, difficulty FROM words " +
+                                "WHERE word_id > ? ORDER BY word_id LIMIT ?",
+                        watermark, Math.max(1, scanBatchSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+
+                List<Long> wordIds = new ArrayList<>();
+                for (Map<String, Object> row : rows) {
+                    wordIds.add(((Number) row.get("word_id")).longValue());
+                }
+                Map<Long, List<String>> definitions = relationBatchLoader.loadWordDefinitions(wordIds);
+
+                for (Map<String, Object> row : rows) {
+                    long wordId = ((Number) row.get("word_id")).longValue();
+                    String word = (String) row.get("word");
+                    List<String> wordDefinitions = definitions.get(wordId);
+                    if (word == null || word.isEmpty() || wordDefinitions == null || wordDefinitions.isEmpty()) {
+                        continue;
+                    }
+                    String language = row.get("language") != null ? (String) row.get("language") : "en";
+                    pools.computeIfAbsent(language, k -> new LanguagePool()).offer(
+                            new Candidate(wordId, word, wordDefinitions.get(0), (String) row.get("phonetic")),
+                            (String) row.get("difficulty"), (String) row.get("part_of_speech"));
+                    absorbed++;
+                }
+
+                watermark = wordIds.get(wordIds.size() - 1);
+                if (rows.size() < scanBatchSize) {
+                    break;
+                }
+            }
+            if (absorbed > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Distractor reservoir absorbed " + absorbed + " words, watermark=" + watermark);
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to refresh distractor reservoir: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 为一组待复习单词抽取干扰项
+     *
+     * 按待复习单词的 (难度, 词性) 分布分配名额，分层中不够时从该语言的总蓄水池补齐。
+     * 返回结构与原来的 SQL 结果一致：id、word、definition、phonetic。
+     *
+     * @param language 语言
+     * @param dueWords 待复习单词（需要 word、difficulty、part_of_speech 列）
+     * @param k        需要的干扰项数量
+     * @return 干扰项列表；该语言还没有样本（或应用刚启动、首次扫描尚未完成）时返回空列表
+     */
+    public List<Map<String, Object>> sample(String language, List<Map<String, Object>> dueWords, int k) {
+        LanguagePool pool = pools.get(language);
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (pool == null || pool.size() == 0 || k <= 0) {
+            return result;
+        }
+
+        Set<String> exclude = new HashSet<>();
+        Map<String, Integer> strata = new LinkedHashMap<>();
+        for (Map<String, Object> dueWord : dueWords) {
+            if (dueWord.get("word") != null) {
+                exclude.add(dueWord.get("word").toString().toLowerCase());
+            }
+            strata.merge(stratumKey((String) dueWord.get("difficulty"), (String) dueWord.get("part_of_speech")), 1, Integer::sum);
+        }
+
+        // 分层名额：一半按待复习单词的分层比例分配，另一半留给总蓄水池，保证干扰项有一定多样性
+        Map<String, Integer> quotas = new LinkedHashMap<>();
+        int stratified = k / 2;
+        for (Map.Entry<String, Integer> stratum : strata.entrySet()) {
+            quotas.put(stratum.getKey(), Math.max(1, stratified * stratum.getValue() / Math.max(1, dueWords.size())));
+        }
+
+        Map<String, Candidate> picked = new LinkedHashMap<>();
+        pool.sample(quotas, k, exclude, picked);
+
+        for (Candidate candidate : picked.values()) {
+            result.add(candidate.toMap());
+        }
+        Collections.shuffle(result);
+        return result;
+    }
+}
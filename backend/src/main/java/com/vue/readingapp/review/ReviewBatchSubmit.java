@@ -7,6 +7,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/review")
@@ -15,6 +16,12 @@ public class ReviewBatchSubmit {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReviewCommitService reviewCommitService;
+
     private void printRequest(Object request) {
         System.out.println("=== 收到批量提交复习结果请求 ===");
         System.out.println("请求数据: " + request);
@@ -162,11 +169,7 @@ public class ReviewBatchSubmit {
             }
 
             String token = authHeader.substring(7);
-            String userSql = "SELECT u.user_id FROM users u " +
-                    "JOIN user_sessions us ON u.user_id = us.user_id " +
-                    "WHERE us.access_token = ? AND us.expires_at > NOW()";
-
-            List<Map<String, Object>> users = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> users = sessionTokenCache.findSessions(token);
             if (users.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
                         new BatchSubmitResponse(false, "登录已过期，请重新登录", null)
@@ -189,79 +192,39 @@ public class ReviewBatchSubmit {
                 );
             }
 
-            // 3. 处理批量复习结果
-            int totalWords = request.getResults().size();
-            int correctWords = 0;
-            int totalResponseTime = 0;
-            int responseTimeCount = 0;
-            int updatedWordsCount = 0;
-            LocalDateTime now = LocalDateTime.now();
-
-            // 用于记录更新的单词
-            List<Map<String, Object>> updatedWords = new ArrayList<>();
-
+            // 3. 在一个事务中提交整次会话（词汇状态、会话记录、每日统计），同一会话ID重复提交只计入一次
+            List<ReviewCommitService.ReviewAnswer> answers = new ArrayList<>();
             for (BatchReviewResult result : request.getResults()) {
-                // 验证单词ID
-                if (result.getWord_id() == null || result.getWord_id().trim().isEmpty()) {
-                    continue;
-                }
-
-                // 统计正确单词数
-                if (result.isCorrect()) {
-                    correctWords++;
-                }
-
-                // 统计响应时间
-                if (result.getResponse_time() != null && result.getResponse_time() > 0) {
-                    totalResponseTime += result.getResponse_time();
-                    responseTimeCount++;
-                }
-
-                // 更新用户词汇状态
-                try {
-                    int userVocabId = Integer.parseInt(result.getWord_id());
-                    Map<String, Object> updatedWord = updateUserVocabularyBatch(userId, userVocabId, result.isCorrect(), now);
-                    if (updatedWord != null) {
-                        updatedWords.add(updatedWord);
-                        updatedWordsCount++;
-                    }
-                } catch (NumberFormatException e) {
-                    System.err.println("单词ID格式错误: " + result.getWord_id());
-                }
+                answers.add(new ReviewCommitService.ReviewAnswer(result.getWord_id(), result.isCorrect(), result.getResponse_time()));
             }
+            ReviewCommitService.CommitResult committed = reviewCommitService.commit(userId, request.getSession_id(), answers,
+                    request.getDuration() != null ? request.getDuration() : 0,
+                    request.getMode() != null ? request.getMode() : "review");
 
-            // 4. 计算统计数据
-            int incorrectWords = totalWords - correctWords;
-            double accuracy = totalWords > 0 ? (correctWords * 100.0 / totalWords) : 0;
-            double averageResponseTime = responseTimeCount > 0 ? (totalResponseTime * 1.0 / responseTimeCount) : 0;
-
-            // 5. 创建复习会话记录
-            createReviewSessionBatch(userId, request.getSession_id(), totalWords, correctWords,
-                    accuracy, request.getDuration() != null ? request.getDuration() : 0,
-                    request.getMode() != null ? request.getMode() : "review", now);
-
-            // 6. 更新每日学习统计
-            updateDailyLearningStatsBatch(userId, correctWords, incorrectWords, now);
-
-            // 7. 构建响应数据
+            // 4. 构建响应数据
             BatchResultData data = new BatchResultData(
-                    request.getSession_id(),
-                    totalWords,
-                    correctWords,
-                    incorrectWords,
-                    Math.round(accuracy * 100.0) / 100.0,
-                    request.getDuration() != null ? request.getDuration() : 0,
-                    Math.round(averageResponseTime * 100.0) / 100.0,
-                    updatedWordsCount,
-                    now.toString()
+                    committed.getSessionId(),
+                    committed.getTotalWords(),
+                    committed.getCorrectWords(),
+                    committed.getIncorrectWords(),
+                    Math.round(committed.getAccuracy() * 100.0) / 100.0,
+                    committed.getDuration(),
+                    Math.round(committed.getAverageResponseTime() * 100.0) / 100.0,
+                    committed.getUpdatedWords().size(),
+                    committed.getCommittedAt().toString()
             );
 
-            BatchSubmitResponse response = new BatchSubmitResponse(true, "批量提交复习结果成功", data);
+            BatchSubmitResponse response = new BatchSubmitResponse(true,
+                    committed.isReplayed() ? "该会话的复习结果已提交" : "批量提交复习结果成功", data);
 
             printResponse(response);
 
             return ResponseEntity.ok(response);
 
+        } catch (ReviewCommitService.SessionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                    new BatchSubmitResponse(false, e.getMessage(), null)
+            );
         } catch (Exception e) {
             System.err.println("批量提交复习结果过程中发生错误: " + e.getMessage());
             e.printStackTrace();
@@ -270,165 +233,4 @@ public class ReviewBatchSubmit {
             );
         }
     }
-
-    private Map<String, Object> updateUserVocabularyBatch(int userId, int userVocabId, boolean correct, LocalDateTime now) {
-        try {
-            // 1. 获取当前词汇状态
-            String selectSql = "SELECT uv.mastery_level, uv.review_count, w.word " +
-                    "FROM user_vocabulary uv " +
-                    "JOIN words w ON uv.word_id = w.word_id " +
-                    "WHERE uv.user_vocab_id = ? AND uv.user_id = ?";
-
-            List<Map<String, Object>> vocabList = jdbcTemplate.queryForList(selectSql, userVocabId, userId);
-            if (vocabList.isEmpty()) {
-                return null;
-            }
-
-            Map<String, Object> vocab = vocabList.get(0);
-            int currentMasteryLevel = ((Number) vocab.get("mastery_level")).intValue();
-            int currentReviewCount = ((Number) vocab.get("review_count")).intValue();
-            String word = (String) vocab.get("word");
-
-            // 2. 计算新的掌握等级（简单算法）
-            int newMasteryLevel = currentMasteryLevel;
-            if (correct) {
-                newMasteryLevel = Math.min(currentMasteryLevel + 1, 10); // 最大10级
-            } else {
-                newMasteryLevel = Math.max(currentMasteryLevel - 1, 0); // 最小0级
-            }
-
-            // 3. 计算下次复习时间（基于掌握等级的间隔重复算法）
-            int daysToAdd = calculateNextReviewDaysBatch(newMasteryLevel);
-            LocalDateTime nextReviewDate = now.plusDays(daysToAdd);
-
-            // 4. 更新数据库
-            String updateSql = "UPDATE user_vocabulary SET " +
-                    "mastery_level = ?, " +
-                    "review_count = review_count + 1, " +
-                    "last_reviewed_at = ?, " +
-                    "next_review_at = ? " +
-                    "WHERE user_vocab_id = ? AND user_id = ?";
-
-            int updated = jdbcTemplate.update(updateSql,
-                    newMasteryLevel,
-                    now,
-                    nextReviewDate,
-                    userVocabId,
-                    userId
-            );
-
-            if (updated > 0) {
-                Map<String, Object> result = new HashMap<>();
-                result.put("id", userVocabId);
-                result.put("word", word);
-                result.put("mastery_level", newMasteryLevel);
-                result.put("review_count", currentReviewCount + 1);
-                result.put("next_review_at", nextReviewDate.toString());
-                return result;
-            }
-
-            return null;
-
-        } catch (Exception e) {
-            System.err.println("批量更新用户词汇状态失败: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private int calculateNextReviewDaysBatch(int masteryLevel) {
-        // 简单的间隔重复算法
-        switch (masteryLevel) {
-            case 0: return 1;   // 第1级：1天后复习
-            case 1: return 2;   // 第2级：2天后复习
-            case 2: return 4;   // 第3级：4天后复习
-            case 3: return 7;   // 第4级：7天后复习
-            case 4: return 14;  // 第5级：14天后复习
-            case 5: return 30;  // 第6级：30天后复习
-            case 6: return 60;  // 第7级：60天后复习
-            case 7: return 90;  // 第8级：90天后复习
-            case 8: return 180; // 第9级：180天后复习
-            case 9: return 365; // 第10级：365天后复习
-            default: return 30; // 默认30天
-        }
-    }
-
-    private void createReviewSessionBatch(int userId, String sessionId, int totalWords,
-                                          int correctWords, double accuracy, int duration,
-                                          String mode, LocalDateTime now) {
-        try {
-            String sql = "INSERT INTO review_sessions " +
-                    "(session_id, user_id, total_words, correct_words, accuracy, " +
-                    "duration, mode, completed_at, created_at) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-            jdbcTemplate.update(sql,
-                    sessionId,
-                    userId,
-                    totalWords,
-                    correctWords,
-                    accuracy,
-                    duration,
-                    mode,
-                    now,
-                    now
-            );
-
-            System.out.println("批量创建复习会话记录成功: " + sessionId);
-
-        } catch (Exception e) {
-            System.err.println("批量创建复习会话记录失败: " + e.getMessage());
-        }
-    }
-
-    private void updateDailyLearningStatsBatch(int userId, int correctWords, int incorrectWords, LocalDateTime now) {
-        try {
-            String dateStr = now.toLocalDate().toString();
-
-            // 检查是否已有今日记录
-            String checkSql = "SELECT COUNT(*) FROM daily_learning_stats " +
-                    "WHERE user_id = ? AND learning_date = ?";
-
-            int count = jdbcTemplate.queryForObject(checkSql, Integer.class, userId, dateStr);
-
-            if (count > 0) {
-                // 更新现有记录
-                String updateSql = "UPDATE daily_learning_stats SET " +
-                        "words_reviewed = words_reviewed + ?, " +
-                        "words_correct = words_correct + ?, " +
-                        "words_incorrect = words_incorrect + ?, " +
-                        "updated_at = ? " +
-                        "WHERE user_id = ? AND learning_date = ?";
-
-                jdbcTemplate.update(updateSql,
-                        correctWords + incorrectWords,
-                        correctWords,
-                        incorrectWords,
-                        now,
-                        userId,
-                        dateStr
-                );
-            } else {
-                // 创建新记录
-                String insertSql = "INSERT INTO daily_learning_stats " +
-                        "(user_id, learning_date, words_reviewed, " +
-                        "words_correct, words_incorrect, created_at, updated_at) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-                jdbcTemplate.update(insertSql,
-                        userId,
-                        dateStr,
-                        correctWords + incorrectWords,
-                        correctWords,
-                        incorrectWords,
-                        now,
-                        now
-                );
-            }
-
-            System.out.println("批量更新每日学习统计成功");
-
-        } catch (Exception e) {
-            System.err.println("批量更新每日学习统计失败: " + e.getMessage());
-        }
-    }
-}
+}
\ No newline at end of file
@@ -0,0 +1,329 @@
+package com.vue.readingapp.review;
+
+import com.vue.readingapp.review.scheduling.CardState;
+import com.vue.readingapp.review.scheduling.ReviewScheduler;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 提交一次复习会话的结果
+ *
+ * 以前每个单词都要先 SELECT 再 UPDATE，最后再查一次、写一次 daily_learning_stats，且不在事务中，
+ * 200 个单词的会话要 400 多次数据库往返，中途失败还会留下一半已更新的词汇。
+ * 现在整次提交在一个事务中完成：
+ *   1. 插入会话记录，session_id 主键冲突说明是重复提交（客户端重试），直接返回已记录的结果；其他插入错误照常抛出并回滚；
+ *   2. 一次查询锁定并读取所有涉及的 user_vocabulary 行，在内存中按答题顺序计算新的掌握等级和复习时间；
+ *   3. 一次 JDBC 批量写回；
+ *   4. daily_learning_stats 用 ON DUPLICATE KEY UPDATE 累加。
+ * 下次复习时间由 ReviewScheduler 按配置的调度算法（FSRS / SM-2 / 阶梯）计算，算法状态一并写回。
+ */
+@Component
+public class ReviewCommitService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ReviewScheduler reviewScheduler;
+
+    @Autowired
+    private SystemStatsRollup statsRollup;
+
+    /**
+     * 单个单词的作答结果
+     */
+    public static class ReviewAnswer {
+        private final String wordId;
+        private final boolean correct;
+        private final Integer responseTime;
+
+        public ReviewAnswer(String wordId, boolean correct, Integer responseTime) {
+            this.wordId = wordId;
+            this.correct = correct;
+            this.responseTime = responseTime;
+        }
+
+        public String getWordId() { return wordId; }
+        public boolean isCorrect() { return correct; }
+        public Integer getResponseTime() { return responseTime; }
+    }
+
+    /**
+     * 更新后的单词状态
+     */
+    public static class UpdatedVocabulary {
+        private final int userVocabId;
+        private final String word;
+        private final int masteryLevel;
+        private final int reviewCount;
+        private final LocalDateTime nextReviewAt;
+
+        UpdatedVocabulary(int userVocabId, String word, int masteryLevel, int reviewCount, LocalDateTime nextReviewAt) {
+            this.userVocabId = userVocabId;
+            this.word = word;
+            this.masteryLevel = masteryLevel;
+            this.reviewCount = reviewCount;
+            this.nextReviewAt = nextReviewAt;
+        }
+
+        public int getUserVocabId() { return userVocabId; }
+        public String getWord() { return word; }
+        public int getMasteryLevel() { return masteryLevel; }
+        public int getReviewCount() { return reviewCount; }
+        public LocalDateTime getNextReviewAt() { return nextReviewAt; }
+    }
+
+    /**
+     * 提交结果
+     */
+    public static class CommitResult {
+        private String sessionId;
+        private int totalWords;
+        private int correctWords;
+        private double accuracy;
+        private int duration;
+        private double averageResponseTime;
+        private List<UpdatedVocabulary> updatedWords = new ArrayList<>();
+        private boolean replayed;
+        private LocalDateTime committedAt;
+
+        public String getSessionId() { return sessionId; }
+        public int getTotalWords() { return totalWords; }
+        public int getCorrectWords() { return correctWords; }
+        public int getIncorrectWords() { return totalWords - correctWords; }
+        public double getAccuracy() { return accuracy; }
+        public int getDuration() { return duration; }
+        public double getAverageResponseTime() { return averageResponseTime; }
+        public List<UpdatedVocabulary> getUpdatedWords() { return updatedWords; }
+        /** 该会话此前已提交过，本次没有重复计入 */
+        public boolean isReplayed() { return replayed; }
+        public LocalDateTime getCommittedAt() { return committedAt; }
+    }
+
+    // 一个词汇在本次提交中的状态
+    private static class VocabularyState {
+        private CardState card;
+        // 本次提交前的掌握等级和复习次数，用于维护系统统计
+        private int initialMasteryLevel;
+        private int initialReviewCount;
+        private String word;
+        private boolean changed;
+    }
+
+    /**
+     * 会话ID已被其他用户使用
+     */
+    public static class SessionConflictException extends RuntimeException {
+        public SessionConflictException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 在一个事务中提交整次复习会话
+     */
+    public CommitResult commit(int userId, String sessionId, List<ReviewAnswer> answers, int duration, String mode) {
+        LocalDateTime now = LocalDateTime.now();
+
+        // 统计口径与以前一致：总数为提交的结果数，正确数和响应时间只统计带单词ID的结果
+        CommitResult result = new CommitResult();
+        result.sessionId = sessionId;
+        result.totalWords = answers.size();
+        result.duration = duration;
+        result.committedAt = now;
+        long totalResponseTime = 0;
+        int responseTimeCount = 0;
+        List<int[]> validAnswers = new ArrayList<>();
+        Map<int[], Integer> responseTimes = new IdentityHashMap<>();
+        for (ReviewAnswer answer : answers) {
+            if (answer.getWordId() == null || answer.getWordId().trim().isEmpty()) {
+                continue;
+            }
+            if (answer.isCorrect()) {
+                result.correctWords++;
+            }
+            if (answer.getResponseTime() != null && answer.getResponseTime() > 0) {
+                totalResponseTime += answer.getResponseTime();
+                responseTimeCount++;
+            }
+            try {
+                int[] valid = new int[]{Integer.parseInt(answer.getWordId().trim()), answer.isCorrect() ? 1 : 0};
+                validAnswers.add(valid);
+                responseTimes.put(valid, answer.getResponseTime());
+            } catch (NumberFormatException e) {
+                System.err.println("单词ID格式错误: " + answer.getWordId());
+            }
+        }
+        result.accuracy = result.totalWords > 0 ? result.correctWords * 100.0 / result.totalWords : 0;
+        result.averageResponseTime = responseTimeCount > 0 ? totalResponseTime * 1.0 / responseTimeCount : 0;
+
+        // 系统统计的增量：[首次被复习的词汇数, 已掌握词汇数的变化]
+        int[] vocabularyDeltas = new int[2];
+        CommitResult committed = transactionTemplate.execute(status -> {
+            Timestamp timestamp = Timestamp.valueOf(now);
+
+            // 1. 会话记录兼作幂等键：同一 session_id 只会计入一次
+            try {
+                jdbcTemplate.update("INSERT INTO review_sessions " +
+                                "(session_id, user_id, total_words, correct_words, accuracy, duration, mode, status, completed_at, created_at) " +
+                                "VALUES (?, ?, ?, ?, ?, ?, ?, 'completed', ?, ?)",
+                        sessionId, userId, result.totalWords, result.correctWords, result.accuracy, duration, mode, timestamp, timestamp);
+            } catch (DuplicateKeyException e) {
+                return replay(userId, sessionId, validAnswers, result);
+            }
+
+            if (!validAnswers.isEmpty()) {
+                // 2. 一次查询读取并锁定涉及的词汇
+                Map<Integer, VocabularyState> states = loadStates(userId, validAnswers, true);
+
+                // 3. 按答题顺序在内存中计算（同一会话中重复出现的单词会连续升降级）
+                for (int[] answer : validAnswers) {
+                    VocabularyState state = states.get(answer[0]);
+                    if (state == null) {
+                        continue;
+                    }
+                    state.card = reviewScheduler.schedule(state.card, answer[1] == 1, responseTimes.get(answer), now);
+                    state.changed = true;
+                    result.updatedWords.add(toUpdated(answer[0], state));
+                }
+
+                // 4. 一次批量写回每个单词的最终状态
+                List<Object[]> batchArgs = new ArrayList<>();
+                for (Map.Entry<Integer, VocabularyState> entry : states.entrySet()) {
+                    VocabularyState state = entry.getValue();
+                    if (!state.changed) {
+                        continue;
+                    }
+                    CardState card = state.card;
+                    if (state.initialReviewCount <= 0 && card.getReviewCount() > 0) {
+                        vocabularyDeltas[0]++;
+                    }
+                    boolean wasMastered = state.initialMasteryLevel >= SystemStatsRollup.MASTERED_LEVEL;
+                    boolean isMastered = card.getMasteryLevel() >= SystemStatsRollup.MASTERED_LEVEL;
+                    if (wasMastered != isMastered) {
+                        vocabularyDeltas[1] += isMastered ? 1 : -1;
+                    }
+                    batchArgs.add(new Object[]{card.getMasteryLevel(), card.getReviewCount(), timestamp,
+                            Timestamp.valueOf(card.getNextReviewAt()), card.getStability(), card.getDifficulty(), card.getEase(),
+                            entry.getKey(), userId});
+                }
+                if (!batchArgs.isEmpty()) {
+                    jdbcTemplate.batchUpdate("UPDATE user_vocabulary SET mastery_level = ?, review_count = ?, " +
+                            "last_reviewed_at = ?, next_review_at = ?, srs_stability = ?, srs_difficulty = ?, srs_ease = ? " +
+                            "WHERE user_vocab_id = ? AND user_id = ?", batchArgs);
+                }
+            }
+
+            // 5. 累加每日学习统计
+            jdbcTemplate.update("INSERT INTO daily_learning_stats " +
+                            "(user_id, date, words_reviewed, words_correct, words_incorrect, created_at, updated_at) " +
+                            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                            "ON DUPLICATE KEY UPDATE words_reviewed = words_reviewed + VALUES(words_reviewed), " +
+                            "words_correct = words_correct + VALUES(words_correct), " +
+                            "words_incorrect = words_incorrect + VALUES(words_incorrect), updated_at = VALUES(updated_at)",
+                    userId, now.toLocalDate().toString(), result.totalWords, result.correctWords, result.getIncorrectWords(),
+                    timestamp, timestamp);
+
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Review session " + sessionId + " committed: "
+                    + result.updatedWords.size() + " words updated for user " + userId);
+            return result;
+        });
+
+        // 事务提交后再计入系统统计，回滚的提交不会产生偏差
+        if (committed != null && !committed.replayed) {
+            statsRollup.reviewCommitted(committed.totalWords, committed.correctWords, committed.duration,
+                    vocabularyDeltas[0], vocabularyDeltas[1]);
+        }
+        return committed;
+    }
+
+    // 重复提交：返回第一次提交时记录的统计和单词的当前状态，不再改动任何数据
+    private CommitResult replay(int userId, String sessionId, List<int[]> validAnswers, CommitResult result) {
+        List<Map<String, Object>> sessions = jdbcTemplate.queryForList(
+                "SELECT user_id, total_words, correct_words, accuracy, duration, completed_at FROM review_sessions WHERE session_id = ?",
+                sessionId);
+        if (sessions.isEmpty() || ((Number) sessions.get(0).get("user_id")).intValue() != userId) {
+            throw new SessionConflictException("会话ID已被使用: " + sessionId);
+        }
+        Map<String, Object> session = sessions.get(0);
+        result.replayed = true;
+        result.totalWords = ((Number) session.get("total_words")).intValue();
+        result.correctWords = ((Number) session.get("correct_words")).intValue();
+        result.accuracy = session.get("accuracy") != null ? ((Number) session.get("accuracy")).doubleValue() : 0;
+        result.duration = session.get("duration") != null ? ((Number) session.get("duration")).intValue() : 0;
+        if (session.get("completed_at") instanceof Timestamp) {
+            result.committedAt = ((Timestamp) session.get("completed_at")).toLocalDateTime();
+        }
+
+        if (!validAnswers.isEmpty()) {
+            Map<Integer, VocabularyState> states = loadStates(userId, validAnswers, false);
+            for (Map.Entry<Integer, VocabularyState> entry : states.entrySet()) {
+                result.updatedWords.add(toUpdated(entry.getKey(), entry.getValue()));
+            }
+        }
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Review session " + sessionId + " already committed, returning recorded result");
+        return result;
+    }
+
+    /**
+     * 读取词汇的当前状态，key 为 user_vocab_id；forUpdate 时锁定这些行直到事务结束
+     */
+    private Map<Integer, VocabularyState> loadStates(int userId, List<int[]> answers, boolean forUpdate) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (int[] answer : answers) {
+            ids.add(answer[0]);
+        }
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.addAll(ids);
+        String sql = "SELECT uv.user_vocab_id, uv.mastery_level, uv.review_count, uv.last_reviewed_at, uv.next_review_at, " +
+                "uv.srs_stability, uv.srs_difficulty, uv.srs_ease, w.word " +
+                "FROM user_vocabulary uv " +
+                "JOIN words w ON uv.word_id = w.word_id " +
+                "WHERE uv.user_id = ? AND uv.user_vocab_id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")" +
+                (forUpdate ? " FOR UPDATE" : "");
+
+        Map<Integer, VocabularyState> states = new LinkedHashMap<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sql, params.toArray())) {
+            CardState card = new CardState();
+            card.setMasteryLevel(row.get("mastery_level") != null ? ((Number) row.get("mastery_level")).intValue() : 0);
+            card.setReviewCount(row.get("review_count") != null ? ((Number) row.get("review_count")).intValue() : 0);
+            card.setLastReviewedAt(toLocalDateTime(row.get("last_reviewed_at")));
+            card.setNextReviewAt(toLocalDateTime(row.get("next_review_at")));
+            card.setStability(toDouble(row.get("srs_stability")));
+            card.setDifficulty(toDouble(row.get("srs_difficulty")));
+            card.setEase(toDouble(row.get("srs_ease")));
+            VocabularyState state = new VocabularyState();
+            state.card = card;
+            state.initialMasteryLevel = card.getMasteryLevel();
+            state.initialReviewCount = card.getReviewCount();
+            state.word = (String) row.get("word");
+            states.put(((Number) row.get("user_vocab_id")).intValue(), state);
+        }
+        return states;
+    }
+
+    private static UpdatedVocabulary toUpdated(int userVocabId, VocabularyState state) {
+        return new UpdatedVocabulary(userVocabId, state.word, state.card.getMasteryLevel(),
+                state.card.getReviewCount(), state.card.getNextReviewAt());
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp ? ((Timestamp) value).toLocalDateTime() : null;
+    }
+
+    private static Double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+}
@@ -8,14 +8,27 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
 
 /**
  * 获取待复习单词的控制器
  * 
  * 负责根据艾宾浩斯遗忘曲线（间隔复习算法）筛选出用户当前需要复习的单词。
+ *
+ * 复习模式（mode）：
+ *   - spaced（默认）/ date：复习今天（或 date 参数指定日期）收藏的单词，按 (user_id, created_at) 索引做范围查询；
+ *   - due：到期队列，next_review_at 为空（新词）或不晚于当前时间，按 (user_id, next_review_at) 索引做范围查询，
+ *     到期时间由 ReviewScheduler 在提交复习时写入；
+ *   - all：全部未掌握的单词，沿 (user_id, next_review_at) 索引按到期先后读取前 limit 条。
+ * 过滤条件都写成可用索引的范围比较（不用 DATE(created_at) 之类的函数），排序直接使用索引顺序，
+ * 到期原因和优先级在内存中计算，不再由 SQL 中的 CASE 表达式排序。
  */
 @RestController
 @RequestMapping("/api/v1/review")
@@ -24,6 +37,18 @@ public class ReviewGetDueWords {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
+    @Autowired
+    private DistractorReservoir distractorReservoir;
+
+    // 每次返回的干扰项数量
+    private static final int DISTRACTOR_COUNT = 50;
+
     /**
      * 辅助方法：打印请求参数
      */
@@ -214,11 +239,7 @@ public class ReviewGetDueWords {
             }
 
             String token = authHeader.substring(7);
-            String userSql = "SELECT u.user_id FROM users u " +
-                    "JOIN user_sessions us ON u.user_id = us.user_id " +
-                    "WHERE us.access_token = ? AND us.expires_at > NOW()";
-
-            List<Map<String, Object>> users = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> users = sessionTokenCache.findSessions(token);
             if (users.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
                         new DueWordsResponse(false, "登录已过期，请重新登录", null)
@@ -227,38 +248,51 @@ public class ReviewGetDueWords {
 
             int userId = ((Number) users.get(0).get("user_id")).intValue();
 
-            // 2. 动态构建 SQL 查询语句
+            // 2. 解析复习模式和日期
+            String reviewMode = mode == null ? "spaced" : mode.trim().toLowerCase();
+            boolean dayMode = !"all".equals(reviewMode) && !"due".equals(reviewMode);
+            LocalDate reviewDate = LocalDate.now();
+            if ("date".equals(reviewMode) && date != null && !date.trim().isEmpty()) {
+                try {
+                    reviewDate = LocalDate.parse(date.trim());
+                } catch (DateTimeParseException e) {
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                            new DueWordsResponse(false, "日期格式错误，应为 yyyy-MM-dd", null)
+                    );
+                }
+            }
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp dayStart = Timestamp.valueOf(reviewDate.atStartOfDay());
+            Timestamp dayEnd = Timestamp.valueOf(reviewDate.plusDays(1).atStartOfDay());
+
+            // 3. 动态构建 SQL 查询语句
             StringBuilder sqlBuilder = new StringBuilder();
             List<Object> params = new ArrayList<>();
 
             sqlBuilder.append("SELECT uv.user_vocab_id, uv.word, uv.language, ");
             sqlBuilder.append("uv.definition, uv.example, uv.phonetic, w.part_of_speech, ");
             sqlBuilder.append("uv.mastery_level, uv.review_count, uv.last_reviewed_at, ");
-            sqlBuilder.append("uv.next_review_at, w.difficulty, uv.source, ");
-            // 计算到期原因：超过当前时间为“已过期”，24小时内到期为“今日到期”
-            sqlBuilder.append("CASE ");
-            sqlBuilder.append("  WHEN uv.next_review_at <= NOW() THEN 'overdue' ");
-            sqlBuilder.append("  WHEN uv.next_review_at <= DATE_ADD(NOW(), INTERVAL 1 DAY) THEN 'due_today' ");
-            sqlBuilder.append("  ELSE 'scheduled' ");
-            sqlBuilder.append("END as due_reason, ");
-            // 设置优先级：已过期的最优先复习
-            sqlBuilder.append("CASE ");
-            sqlBuilder.append("  WHEN uv.next_review_at <= NOW() THEN 1 ");
-            sqlBuilder.append("  WHEN uv.next_review_at <= DATE_ADD(NOW(), INTERVAL 1 DAY) THEN 2 ");
-            sqlBuilder.append("  ELSE 3 ");
-            sqlBuilder.append("END as priority ");
+            sqlBuilder.append("uv.next_review_at, w.difficulty, uv.source ");
             sqlBuilder.append("FROM user_vocabulary uv ");
             sqlBuilder.append("JOIN words w ON uv.word_id = w.word_id ");
             sqlBuilder.append("WHERE uv.user_id = ? ");
-            // 修改为只复习今天收藏的单词
-            sqlBuilder.append("AND DATE(uv.created_at) = CURDATE() ");
-            // 依然排除已完全掌握的单词（可选，但通常今天收藏的不会是 mastered）
+            params.add(userId);
+
+            if (dayMode) {
+                // 只复习指定日期收藏的单词（半开区间，走 idx_user_created）
+                sqlBuilder.append("AND uv.created_at >= ? AND uv.created_at < ? ");
+                params.add(dayStart);
+                params.add(dayEnd);
+            } else if ("due".equals(reviewMode)) {
+                // 新词和已到期的单词（走 idx_user_next_review）
+                sqlBuilder.append("AND (uv.next_review_at IS NULL OR uv.next_review_at <= ?) ");
+                params.add(Timestamp.valueOf(now));
+            }
+            // 依然排除已完全掌握的单词
             sqlBuilder.append("AND uv.status != 'mastered' ");
             // 只复习有来源的单词（即阅读时收藏的单词）
             sqlBuilder.append("AND uv.source IS NOT NULL AND uv.source != '' ");
 
-            params.add(userId);
-
             // 动态添加筛选条件
             if (language != null && !language.trim().isEmpty()) {
                 sqlBuilder.append("AND uv.language = ? ");
@@ -270,19 +304,20 @@ public class ReviewGetDueWords {
                 params.add(difficulty);
             }
 
-            // 排序：按优先级升序，同优先级按到期时间升序
-            sqlBuilder.append("ORDER BY priority ASC, uv.next_review_at ASC ");
+            // 排序：按到期时间升序（新词的 next_review_at 为空，排在最前），与索引顺序一致
+            sqlBuilder.append("ORDER BY uv.next_review_at ASC ");
 
             // 限制返回数量
             sqlBuilder.append("LIMIT ?");
             params.add(Math.min(limit, 100));
 
-            // 3. 执行查询
+            // 4. 执行查询
             List<Map<String, Object>> dueWordsList = jdbcTemplate.queryForList(
                     sqlBuilder.toString(), params.toArray());
 
-            // 4. 封装查询结果
+            // 5. 封装查询结果
             List<DueWord> dueWords = new ArrayList<>();
+            Map<Long, List<String>> tagsByVocabId = getTagsForUserVocabulary(dueWordsList);
             for (Map<String, Object> row : dueWordsList) {
                 DueWord dueWord = new DueWord();
                 dueWord.setId(((Number) row.get("user_vocab_id")).intValue());
@@ -304,44 +339,69 @@ public class ReviewGetDueWords {
 
                 dueWord.setDifficulty((String) row.get("difficulty"));
                 dueWord.setSource((String) row.get("source"));
-                dueWord.setDue_reason((String) row.get("due_reason"));
-                dueWord.setPriority(((Number) row.get("priority")).intValue());
+                // 到期原因和优先级：已过期的最优先复习，24小时内到期为"今日到期"
+                LocalDateTime nextReviewAt = row.get("next_review_at") instanceof Timestamp
+                        ? ((Timestamp) row.get("next_review_at")).toLocalDateTime() : null;
+                if (nextReviewAt != null && !nextReviewAt.isAfter(now)) {
+                    dueWord.setDue_reason("overdue");
+                    dueWord.setPriority(1);
+                } else if (nextReviewAt != null && !nextReviewAt.isAfter(now.plusDays(1))) {
+                    dueWord.setDue_reason("due_today");
+                    dueWord.setPriority(2);
+                } else {
+                    dueWord.setDue_reason("scheduled");
+                    dueWord.setPriority(3);
+                }
 
                 // 获取该单词关联的标签
-                List<String> tags = getTagsForUserVocabulary(((Number) row.get("user_vocab_id")).intValue());
+                List<String> tags = tagsByVocabId.getOrDefault(((Number) row.get("user_vocab_id")).longValue(), new ArrayList<>());
                 dueWord.setTags(tags);
 
                 dueWords.add(dueWord);
             }
 
-            // 5. 获取干扰项池：从全局词典中随机抽取真实单词作为干扰项
-            String distractorSql = "SELECT w.word_id as id, w.word, " +
-                    "(SELECT definition FROM word_definitions WHERE word_id = w.word_id LIMIT 1) as definition, " +
-                    "w.phonetic FROM words w " +
-                    "WHERE w.word IS NOT NULL AND w.word != '' " +
-                    "AND EXISTS (SELECT 1 FROM word_definitions WHERE word_id = w.word_id) " +
-                    "ORDER BY RAND() LIMIT 50";
-            List<Map<String, Object>> distractorPool = jdbcTemplate.queryForList(distractorSql);
+            // 6. 获取干扰项池：从内存蓄水池中按待复习单词的难度、词性抽取真实单词作为干扰项
+            String distractorLanguage = language;
+            if (distractorLanguage == null || distractorLanguage.trim().isEmpty()) {
+                distractorLanguage = !dueWordsList.isEmpty() && dueWordsList.get(0).get("language") != null
+                        ? (String) dueWordsList.get(0).get("language") : "en";
+            }
+            List<Map<String, Object>> distractorPool = distractorReservoir.sample(distractorLanguage, dueWordsList, DISTRACTOR_COUNT);
 
-            // 兜底：如果全局词典为空，从用户已有的生词本中获取干扰项
+            // 兜底：如果全局词典为空，从用户自己的生词本中获取干扰项（按索引取有限行，在内存中打乱）
             if (distractorPool.isEmpty()) {
                 String fallbackSql = "SELECT user_vocab_id as id, word, definition, phonetic FROM user_vocabulary " +
-                        "WHERE definition IS NOT NULL AND definition != '' " +
-                        "ORDER BY RAND() LIMIT 50";
-                distractorPool = jdbcTemplate.queryForList(fallbackSql);
+                        "WHERE user_id = ? AND definition IS NOT NULL AND definition != '' " +
+                        "LIMIT ?";
+                distractorPool = new ArrayList<>(jdbcTemplate.queryForList(fallbackSql, userId, DISTRACTOR_COUNT * 4));
+                Collections.shuffle(distractorPool);
+                if (distractorPool.size() > DISTRACTOR_COUNT) {
+                    distractorPool = new ArrayList<>(distractorPool.subList(0, DISTRACTOR_COUNT));
+                }
             }
 
-            // 6. 获取全局统计数据
-            // 统计生词本中今天收藏且未掌握的总数
-            String countSql = "SELECT COUNT(*) as total FROM user_vocabulary WHERE user_id = ? AND DATE(created_at) = CURDATE() AND status != 'mastered' AND source IS NOT NULL AND source != ''";
-            int total = jdbcTemplate.queryForObject(countSql, Integer.class, userId);
-
-            // 统计当前已经到期（需立即复习）的数量 - 这里也改为今天收藏的数量
-            String dueCountSql = "SELECT COUNT(*) as due_count FROM user_vocabulary " +
-                    "WHERE user_id = ? AND DATE(created_at) = CURDATE() AND status != 'mastered' AND source IS NOT NULL AND source != ''";
-            int dueCount = jdbcTemplate.queryForObject(dueCountSql, Integer.class, userId);
+            // 7. 获取全局统计数据
+            int total;
+            int dueCount;
+            if (dayMode) {
+                // 统计该日收藏且未掌握的总数，日期模式下全部视为待复习
+                String countSql = "SELECT COUNT(*) as total FROM user_vocabulary WHERE user_id = ? " +
+                        "AND created_at >= ? AND created_at < ? AND status != 'mastered' AND source IS NOT NULL AND source != ''";
+                total = jdbcTemplate.queryForObject(countSql, Integer.class, userId, dayStart, dayEnd);
+                dueCount = total;
+            } else {
+                // 统计生词本中未掌握的总数
+                String countSql = "SELECT COUNT(*) as total FROM user_vocabulary WHERE user_id = ? " +
+                        "AND status != 'mastered' AND source IS NOT NULL AND source != ''";
+                total = jdbcTemplate.queryForObject(countSql, Integer.class, userId);
+
+                // 统计当前已经到期（需立即复习）的数量
+                String dueCountSql = "SELECT COUNT(*) as due_count FROM user_vocabulary WHERE user_id = ? " +
+                        "AND (next_review_at IS NULL OR next_review_at <= ?) AND status != 'mastered' AND source IS NOT NULL AND source != ''";
+                dueCount = jdbcTemplate.queryForObject(dueCountSql, Integer.class, userId, Timestamp.valueOf(now));
+            }
 
-            // 7. 返回响应
+            // 8. 返回响应
             DueWordsData data = new DueWordsData(dueWords, distractorPool, total, dueCount);
             DueWordsResponse response = new DueWordsResponse(true, "获取待复习单词成功", data);
             printResponse(response);
@@ -357,22 +417,16 @@ public class ReviewGetDueWords {
     }
 
     /**
-     * 辅助方法：获取某个生词的所有标签
+     * 辅助方法：一次查出本页所有生词的标签（user_vocab_id -> 标签名）
      */
-    private List<String> getTagsForUserVocabulary(int userVocabId) {
+    private Map<Long, List<String>> getTagsForUserVocabulary(List<Map<String, Object>> rows) {
         try {
-            String sql = "SELECT vt.tag_name " +
-                    "FROM user_vocabulary_tags uvt " +
-                    "JOIN vocabulary_tags vt ON uvt.tag_id = vt.tag_id " +
-                    "WHERE uvt.user_vocab_id = ?";
-
-            List<Map<String, Object>> tagsList = jdbcTemplate.queryForList(sql, userVocabId);
-
-            return tagsList.stream()
-                    .map(row -> (String) row.get("tag_name"))
-                    .collect(Collectors.toList());
+            return relationBatchLoader.loadUserVocabularyTagNames(rows.stream()
+                    .map(row -> (Number) row.get("user_vocab_id"))
+                    .collect(Collectors.toList()));
         } catch (Exception e) {
-            return new ArrayList<>();
+            System.err.println("获取标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
     }
 }
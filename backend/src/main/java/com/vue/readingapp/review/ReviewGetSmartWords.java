@@ -9,6 +9,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/review")
@@ -17,6 +19,12 @@ public class ReviewGetSmartWords {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
     private void printRequest(Object request) {
         System.out.println("=== 收到获取智能复习单词请求 ===");
         System.out.println("请求参数: " + request);
@@ -172,11 +180,7 @@ public class ReviewGetSmartWords {
             }
 
             String token = authHeader.substring(7);
-            String userSql = "SELECT u.user_id FROM users u " +
-                    "JOIN user_sessions us ON u.user_id = us.user_id " +
-                    "WHERE us.access_token = ? AND us.expires_at > NOW()";
-
-            List<Map<String, Object>> users = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> users = sessionTokenCache.findSessions(token);
             if (users.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
                         new SmartWordsResponse(false, "登录已过期，请重新登录", null)
@@ -249,6 +253,7 @@ public class ReviewGetSmartWords {
             // 4. 处理查询结果
             List<SmartWord> smartWords = new ArrayList<>();
             int order = 1;
+            Map<Long, List<String>> tagsByVocabId = getTagsForUserVocabulary(smartWordsList);
 
             for (Map<String, Object> row : smartWordsList) {
                 SmartWord smartWord = new SmartWord();
@@ -277,7 +282,7 @@ public class ReviewGetSmartWords {
                 smartWord.setRecommended_order(order++);
 
                 // 获取标签
-                List<String> tags = getTagsForUserVocabulary((int) row.get("user_vocab_id"));
+                List<String> tags = tagsByVocabId.getOrDefault(((Number) row.get("user_vocab_id")).longValue(), new ArrayList<>());
                 smartWord.setTags(tags);
 
                 smartWords.add(smartWord);
@@ -300,21 +305,15 @@ public class ReviewGetSmartWords {
         }
     }
 
-    private List<String> getTagsForUserVocabulary(int userVocabId) {
+    // 批量获取生词本条目的标签：user_vocab_id -> 标签名
+    private Map<Long, List<String>> getTagsForUserVocabulary(List<Map<String, Object>> rows) {
         try {
-            String sql = "SELECT vt.tag_name " +
-                    "FROM user_vocabulary_tags uvt " +
-                    "JOIN vocabulary_tags vt ON uvt.tag_id = vt.tag_id " +
-                    "WHERE uvt.user_vocab_id = ?";
-
-            List<Map<String, Object>> tagsList = jdbcTemplate.queryForList(sql, userVocabId);
-
-            return tagsList.stream()
-                    .map(row -> (String) row.get("tag_name"))
-                    .collect(Collectors.toList());
+            return relationBatchLoader.loadUserVocabularyTagNames(rows.stream()
+                    .map(row -> (Number) row.get("user_vocab_id"))
+                    .collect(Collectors.toList()));
         } catch (Exception e) {
             System.err.println("获取标签失败: " + e.getMessage());
-            return new ArrayList<>();
+            return new HashMap<>();
         }
     }
 }
\ No newline at end of file
@@ -7,7 +7,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/review")
@@ -16,6 +16,12 @@ public class ReviewSubmit {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private ReviewCommitService reviewCommitService;
+
     private void printRequest(Object request) {
         System.out.println("=== 收到提交复习结果请求 ===");
         System.out.println("请求数据: " + request);
@@ -195,11 +201,7 @@ public class ReviewSubmit {
             }
 
             String token = authHeader.substring(7);
-            String userSql = "SELECT u.user_id FROM users u " +
-                    "JOIN user_sessions us ON u.user_id = us.user_id " +
-                    "WHERE us.access_token = ? AND us.expires_at > NOW()";
-
-            List<Map<String, Object>> users = jdbcTemplate.queryForList(userSql, token);
+            List<Map<String, Object>> users = sessionTokenCache.findSessions(token);
             if (users.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
                         new SubmitReviewResponse(false, "登录已过期，请重新登录", null)
@@ -222,75 +224,50 @@ public class ReviewSubmit {
                 );
             }
 
-            // 3. 处理每个复习结果
-            int totalWords = request.getResults().size();
-            int correctWords = 0;
-            int totalResponseTime = 0;
-            int responseTimeCount = 0;
-            List<UpdatedWord> updatedWords = new ArrayList<>();
-            LocalDateTime now = LocalDateTime.now();
-
+            // 3. 在一个事务中提交整次会话（词汇状态、会话记录、每日统计），同一会话ID重复提交只计入一次
+            List<ReviewCommitService.ReviewAnswer> answers = new ArrayList<>();
             for (ReviewResult result : request.getResults()) {
-                // 验证单词ID
-                if (result.getWordId() == null || result.getWordId().trim().isEmpty()) {
-                    continue;
-                }
-
-                // 统计正确单词数
-                if (result.isCorrect()) {
-                    correctWords++;
-                }
-
-                // 统计响应时间
-                if (result.getResponseTime() != null && result.getResponseTime() > 0) {
-                    totalResponseTime += result.getResponseTime();
-                    responseTimeCount++;
-                }
-
-                // 更新用户词汇状态
-                try {
-                    int userVocabId = Integer.parseInt(result.getWordId());
-                    UpdatedWord updatedWord = updateUserVocabulary(userId, userVocabId, result.isCorrect(), now);
-                    if (updatedWord != null) {
-                        updatedWords.add(updatedWord);
-                    }
-                } catch (NumberFormatException e) {
-                    System.err.println("单词ID格式错误: " + result.getWordId());
-                }
+                answers.add(new ReviewCommitService.ReviewAnswer(result.getWordId(), result.isCorrect(), result.getResponseTime()));
             }
+            ReviewCommitService.CommitResult committed = reviewCommitService.commit(userId, request.getSessionId(), answers,
+                    request.getDuration() != null ? request.getDuration() : 0,
+                    request.getMode() != null ? request.getMode() : "review");
 
-            // 4. 计算统计数据
-            int incorrectWords = totalWords - correctWords;
-            double accuracy = totalWords > 0 ? (correctWords * 100.0 / totalWords) : 0;
-            double averageResponseTime = responseTimeCount > 0 ? (totalResponseTime * 1.0 / responseTimeCount) : 0;
-
-            // 5. 创建复习会话记录
-            createReviewSession(userId, request.getSessionId(), totalWords, correctWords,
-                    accuracy, request.getDuration() != null ? request.getDuration() : 0,
-                    request.getMode() != null ? request.getMode() : "review", now);
-
-            // 6. 更新每日学习统计
-            updateDailyLearningStats(userId, correctWords, incorrectWords, now);
+            List<UpdatedWord> updatedWords = new ArrayList<>();
+            for (ReviewCommitService.UpdatedVocabulary updated : committed.getUpdatedWords()) {
+                updatedWords.add(new UpdatedWord(
+                        updated.getUserVocabId(),
+                        updated.getWord(),
+                        updated.getMasteryLevel(),
+                        updated.getReviewCount(),
+                        updated.getNextReviewAt() != null ? updated.getNextReviewAt().toString() : null
+                ));
+            }
 
-            // 7. 构建响应数据
+            // 4. 构建响应数据
             ReviewResultData data = new ReviewResultData(
-                    request.getSessionId(),
-                    totalWords,
-                    correctWords,
-                    incorrectWords,
-                    Math.round(accuracy * 100.0) / 100.0,
-                    request.getDuration() != null ? request.getDuration() : 0,
-                    Math.round(averageResponseTime * 100.0) / 100.0,
+                    committed.getSessionId(),
+                    committed.getTotalWords(),
+                    committed.getCorrectWords(),
+                    committed.getIncorrectWords(),
+                    Math.round(committed.getAccuracy() * 100.0) / 100.0,
+                    committed.getDuration(),
+                    Math.round(committed.getAverageResponseTime() * 100.0) / 100.0,
                     updatedWords,
-                    now.toString()
+                    committed.getCommittedAt().toString()
             );
 
-            SubmitReviewResponse response = new SubmitReviewResponse(true, "复习结果提交成功", data);
+            SubmitReviewResponse response = new SubmitReviewResponse(true,
+                    committed.isReplayed() ? "该会话的复习结果已提交" : "复习结果提交成功", data);
 
             printResponse(response);
 
             return ResponseEntity.ok(response);
 
+        } catch (ReviewCommitService.SessionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                    new SubmitReviewResponse(false, e.getMessage(), null)
+            );
         } catch (Exception e) {
             System.err.println("提交复习结果过程中发生错误: " + e.getMessage());
             e.printStackTrace();
@@ -299,165 +276,4 @@ public class ReviewSubmit {
             );
         }
     }
-
-    private UpdatedWord updateUserVocabulary(int userId, int userVocabId, boolean correct, LocalDateTime now) {
-        try {
-            // 1. 获取当前词汇状态
-            String selectSql = "SELECT uv.mastery_level, uv.review_count, w.word " +
-                    "FROM user_vocabulary uv " +
-                    "JOIN words w ON uv.word_id = w.word_id " +
-                    "WHERE uv.user_vocab_id = ? AND uv.user_id = ?";
-
-            List<Map<String, Object>> vocabList = jdbcTemplate.queryForList(selectSql, userVocabId, userId);
-            if (vocabList.isEmpty()) {
-                return null;
-            }
-
-            Map<String, Object> vocab = vocabList.get(0);
-            int currentMasteryLevel = (int) vocab.get("mastery_level");
-            int currentReviewCount = (int) vocab.get("review_count");
-            String word = (String) vocab.get("word");
-
-            // 2. 计算新的掌握等级（简单算法）
-            int newMasteryLevel = currentMasteryLevel;
-            if (correct) {
-                newMasteryLevel = Math.min(currentMasteryLevel + 1, 10); // 最大10级
-            } else {
-                newMasteryLevel = Math.max(currentMasteryLevel - 1, 0); // 最小0级
-            }
-
-            // 3. 计算下次复习时间（基于掌握等级的间隔重复算法）
-            int daysToAdd = calculateNextReviewDays(newMasteryLevel);
-            LocalDateTime nextReviewDate = now.plusDays(daysToAdd);
-
-            // 4. 更新数据库
-            String updateSql = "UPDATE user_vocabulary SET " +
-                    "mastery_level = ?, " +
-                    "review_count = review_count + 1, " +
-                    "last_reviewed_at = ?, " +
-                    "next_review_at = ? " +
-                    "WHERE user_vocab_id = ? AND user_id = ?";
-
-            int updated = jdbcTemplate.update(updateSql,
-                    newMasteryLevel,
-                    now,
-                    nextReviewDate,
-                    userVocabId,
-                    userId
-            );
-
-            if (updated > 0) {
-                return new UpdatedWord(
-                        userVocabId,
-                        word,
-                        newMasteryLevel,
-                        currentReviewCount + 1,
-                        nextReviewDate.toString()
-                );
-            }
-
-            return null;
-
-        } catch (Exception e) {
-            System.err.println("更新用户词汇状态失败: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private int calculateNextReviewDays(int masteryLevel) {
-        // 简单的间隔重复算法
-        switch (masteryLevel) {
-            case 0: return 1;   // 第1级：1天后复习
-            case 1: return 2;   // 第2级：2天后复习
-            case 2: return 4;   // 第3级：4天后复习
-            case 3: return 7;   // 第4级：7天后复习
-            case 4: return 14;  // 第5级：14天后复习
-            case 5: return 30;  // 第6级：30天后复习
-            case 6: return 60;  // 第7级：60天后复习
-            case 7: return 90;  // 第8级：90天后复习
-            case 8: return 180; // 第9级：180天后复习
-            case 9: return 365; // 第10级：365天后复习
-            default: return 30; // 默认30天
-        }
-    }
-
-    private void createReviewSession(int userId, String sessionId, int totalWords,
-                                     int correctWords, double accuracy, int duration,
-                                     String mode, LocalDateTime now) {
-        try {
-            String sql = "INSERT INTO review_sessions " +
-                    "(session_id, user_id, total_words, correct_words, accuracy, " +
-                    "duration, mode, completed_at, created_at) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-            jdbcTemplate.update(sql,
-                    sessionId,
-                    userId,
-                    totalWords,
-                    correctWords,
-                    accuracy,
-                    duration,
-                    mode,
-                    now,
-                    now
-            );
-
-            System.out.println("创建复习会话记录成功: " + sessionId);
-
-        } catch (Exception e) {
-            System.err.println("创建复习会话记录失败: " + e.getMessage());
-        }
-    }
-
-    private void updateDailyLearningStats(int userId, int correctWords, int incorrectWords, LocalDateTime now) {
-        try {
-            String dateStr = now.toLocalDate().toString();
-
-            // 检查是否已有今日记录
-            String checkSql = "SELECT COUNT(*) FROM daily_learning_stats " +
-                    "WHERE user_id = ? AND date = ?";
-
-            int count = jdbcTemplate.queryForObject(checkSql, Integer.class, userId, dateStr);
-
-            if (count > 0) {
-                // 更新现有记录
-                String updateSql = "UPDATE daily_learning_stats SET " +
-                        "words_reviewed = words_reviewed + ?, " +
-                        "words_correct = words_correct + ?, " +
-                        "words_incorrect = words_incorrect + ?, " +
-                        "updated_at = ? " +
-                        "WHERE user_id = ? AND date = ?";
-
-                jdbcTemplate.update(updateSql,
-                        correctWords + incorrectWords,
-                        correctWords,
-                        incorrectWords,
-                        now,
-                        userId,
-                        dateStr
-                );
-            } else {
-                // 创建新记录
-                String insertSql = "INSERT INTO daily_learning_stats " +
-                        "(user_id, date, words_reviewed, " +
-                        "words_correct, words_incorrect, created_at, updated_at) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-                jdbcTemplate.update(insertSql,
-                        userId,
-                        dateStr,
-                        correctWords + incorrectWords,
-                        correctWords,
-                        incorrectWords,
-                        now,
-                        now
-                );
-            }
-
-            System.out.println("更新每日学习统计成功");
-
-        } catch (Exception e) {
-            System.err.println("更新每日学习统计失败: " + e.getMessage());
-        }
-    }
-}
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.vue.readingapp.review.scheduling;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一张复习卡片（user_vocabulary 中的一行）的调度状态
+ *
+ * mastery_level / review_count 供界面展示和统计使用，与调度算法无关；
+ * stability / difficulty / ease 由各调度算法按需读写，未使用该算法复习过的卡片为 null。
+ */
+public class CardState {
+    private int masteryLevel;
+    private int reviewCount;
+    // 记忆稳定性（天）：FSRS 的 S，SM-2 和阶梯算法记录当前间隔
+    private Double stability;
+    // FSRS 难度（1-10）
+    private Double difficulty;
+    // SM-2 易度因子（>= 1.3）
+    private Double ease;
+    private LocalDateTime lastReviewedAt;
+    private LocalDateTime nextReviewAt;
+
+    public CardState copy() {
+        CardState copy = new CardState();
+        copy.masteryLevel = masteryLevel;
+        copy.reviewCount = reviewCount;
+        copy.stability = stability;
+        copy.difficulty = difficulty;
+        copy.ease = ease;
+        copy.lastReviewedAt = lastReviewedAt;
+        copy.nextReviewAt = nextReviewAt;
+        return copy;
+    }
+
+    /** 从未复习过（或学习状态已被重置）的卡片 */
+    public boolean isNew() {
+        return reviewCount <= 0;
+    }
+
+    public int getMasteryLevel() { return masteryLevel; }
+    public void setMasteryLevel(int masteryLevel) { this.masteryLevel = masteryLevel; }
+
+    public int getReviewCount() { return reviewCount; }
+    public void setReviewCount(int reviewCount) { this.reviewCount = reviewCount; }
+
+    public Double getStability() { return stability; }
+    public void setStability(Double stability) { this.stability = stability; }
+
+    public Double getDifficulty() { return difficulty; }
+    public void setDifficulty(Double difficulty) { this.difficulty = difficulty; }
+
+    public Double getEase() { return ease; }
+    public void setEase(Double ease) { this.ease = ease; }
+
+    public LocalDateTime getLastReviewedAt() { return lastReviewedAt; }
+    public void setLastReviewedAt(LocalDateTime lastReviewedAt) { this.lastReviewedAt = lastReviewedAt; }
+
+    public LocalDateTime getNextReviewAt() { return nextReviewAt; }
+    public void setNextReviewAt(LocalDateTime nextReviewAt) { this.nextReviewAt = nextReviewAt; }
+}
@@ -0,0 +1,109 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * FSRS（Free Spaced Repetition Scheduler，v4.5 公式与默认参数）
+ *
+ * 每张卡片保存记忆稳定性 S（天）和难度 D（1-10）：
+ *   - 可提取性 R(t, S) = (1 + FACTOR × t / S) ^ DECAY，t 为距上次复习的天数；
+ *   - 答对：S' = S × (e^w8 × (11 - D) × S^-w9 × (e^(w10 × (1 - R)) - 1) × 困难惩罚 × 简单奖励 + 1)；
+ *   - 答错：S' = w11 × D^-w12 × ((S + 1)^w13 - 1) × e^(w14 × (1 - R))；
+ *   - 难度按评分调整后向初始难度均值回归；
+ *   - 下次间隔为 R 下降到目标保持率（默认 0.9）所需的天数。
+ */
+@Component
+public class FsrsSchedulingEngine implements SchedulingEngine {
+
+    private static final double[] W = {
+            0.4872, 1.4003, 3.7145, 13.8206, 5.1618, 1.2298, 0.8975, 0.031, 1.6474,
+            0.1367, 1.0461, 2.1072, 0.0793, 0.3246, 1.587, 0.2272, 2.8755
+    };
+    private static final double DECAY = -0.5;
+    private static final double FACTOR = 19.0 / 81.0;
+
+    // 目标记忆保持率：越高复习越频繁
+    @Value("${app.review.fsrs.desired-retention:0.9}")
+    private double desiredRetention;
+
+    // 最长复习间隔（天）
+    @Value("${app.review.max-interval-days:36500}")
+    private int maxIntervalDays;
+
+    @Override
+    public String getName() {
+        return "fsrs";
+    }
+
+    @Override
+    public void schedule(CardState previous, CardState next, ReviewGrade grade, LocalDateTime now) {
+        int g = grade.getValue();
+        double stability;
+        double difficulty;
+
+        if (previous.isNew() || previous.getStability() == null || previous.getDifficulty() == null) {
+            // 首次复习（或在启用 FSRS 之前复习过、没有 S/D 的卡片）
+            stability = initialStability(g);
+            difficulty = initialDifficulty(g);
+        } else {
+            double s = Math.max(0.1, previous.getStability());
+            double d = previous.getDifficulty();
+            double elapsedDays = previous.getLastReviewedAt() != null
+                    ? Math.max(0, Duration.between(previous.getLastReviewedAt(), now).toMinutes() / 1440.0) : 0;
+            double r = retrievability(elapsedDays, s);
+
+            difficulty = nextDifficulty(d, g);
+            stability = g == 1 ? forgetStability(d, s, r) : recallStability(d, s, r, g);
+        }
+
+        long interval = nextInterval(stability);
+        next.setStability(stability);
+        next.setDifficulty(difficulty);
+        next.setNextReviewAt(now.plusDays(interval));
+    }
+
+    private static double initialStability(int g) {
+        return Math.max(W[g - 1], 0.1);
+    }
+
+    private static double initialDifficulty(int g) {
+        return clampDifficulty(W[4] - (g - 3) * W[5]);
+    }
+
+    private static double retrievability(double elapsedDays, double stability) {
+        return Math.pow(1 + FACTOR * elapsedDays / stability, DECAY);
+    }
+
+    private static double nextDifficulty(double d, int g) {
+        double adjusted = d - W[6] * (g - 3);
+        // 向"按 GOOD 初始化"的难度均值回归
+        return clampDifficulty(W[7] * initialDifficulty(3) + (1 - W[7]) * adjusted);
+    }
+
+    private static double recallStability(double d, double s, double r, int g) {
+        double hardPenalty = g == 2 ? W[15] : 1;
+        double easyBonus = g == 4 ? W[16] : 1;
+        return s * (Math.exp(W[8]) * (11 - d) * Math.pow(s, -W[9]) * (Math.exp(W[10] * (1 - r)) - 1)
+                * hardPenalty * easyBonus + 1);
+    }
+
+    private static double forgetStability(double d, double s, double r) {
+        double forgotten = W[11] * Math.pow(d, -W[12]) * (Math.pow(s + 1, W[13]) - 1) * Math.exp(W[14] * (1 - r));
+        // 遗忘后的稳定性不应高于遗忘前
+        return Math.max(0.1, Math.min(forgotten, s));
+    }
+
+    private long nextInterval(double stability) {
+        double retention = Math.min(0.99, Math.max(0.7, desiredRetention));
+        double interval = stability / FACTOR * (Math.pow(retention, 1 / DECAY) - 1);
+        return Math.max(1, Math.min(maxIntervalDays, Math.round(interval)));
+    }
+
+    private static double clampDifficulty(double d) {
+        return Math.max(1, Math.min(10, d));
+    }
+}
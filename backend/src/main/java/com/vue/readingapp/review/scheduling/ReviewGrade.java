@@ -0,0 +1,41 @@
+package com.vue.readingapp.review.scheduling;
+
+/**
+ * 作答评分（与 FSRS / Anki 的四档评分一致）
+ *
+ * 复习界面只提交对错和响应时间，评分由两者推算：答错为 AGAIN，答对时按响应时间分为 HARD / GOOD / EASY。
+ */
+public enum ReviewGrade {
+    AGAIN(1),
+    HARD(2),
+    GOOD(3),
+    EASY(4);
+
+    // 答对但思考超过该时间（毫秒）视为吃力
+    private static final int HARD_RESPONSE_MS = 10000;
+    // 答对且在该时间（毫秒）内作答视为轻松
+    private static final int EASY_RESPONSE_MS = 2000;
+
+    private final int value;
+
+    ReviewGrade(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public static ReviewGrade fromAnswer(boolean correct, Integer responseTimeMs) {
+        if (!correct) {
+            return AGAIN;
+        }
+        if (responseTimeMs == null || responseTimeMs <= 0) {
+            return GOOD;
+        }
+        if (responseTimeMs >= HARD_RESPONSE_MS) {
+            return HARD;
+        }
+        return responseTimeMs <= EASY_RESPONSE_MS ? EASY : GOOD;
+    }
+}
@@ -0,0 +1,109 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 复习调度入口
+ *
+ * 按 app.review.scheduler 选择调度算法（fsrs / sm2 / step），统一处理掌握等级、复习次数等与算法无关的字段。
+ * 调度结果写入 user_vocabulary.next_review_at，待复习队列通过 (user_id, next_review_at) 索引按范围读取。
+ */
+@Component
+public class ReviewScheduler {
+
+    private static final int MAX_MASTERY_LEVEL = 10;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private List<SchedulingEngine> engines;
+
+    // 调度算法：fsrs、sm2 或 step（原有的按掌握等级查表）
+    @Value("${app.review.scheduler:fsrs}")
+    private String schedulerName;
+
+    private SchedulingEngine engine;
+
+    @PostConstruct
+    public void init() {
+        engine = findEngine(schedulerName);
+        if (engine == null) {
+            System.err.println("WARN: [" + LocalDateTime.now() + "] Unknown review scheduler '" + schedulerName + "', falling back to fsrs");
+            engine = findEngine("fsrs");
+        }
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Review scheduler: " + engine.getName());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        try {
+            List<String> columns = jdbcTemplate.queryForList(
+                    "SELECT COLUMN_NAME FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'user_vocabulary'",
+                    String.class);
+            for (String column : new String[]{"srs_stability", "srs_difficulty", "srs_ease"}) {
+                if (!columns.contains(column)) {
+                    System.out.println("INFO: Adding column '" + column + "' to 'user_vocabulary'");
+                    jdbcTemplate.execute("ALTER TABLE user_vocabulary ADD COLUMN " + column + " DOUBLE NULL AFTER next_review_at");
+                }
+            }
+
+            List<String> indexes = jdbcTemplate.queryForList(
+                    "SELECT DISTINCT INDEX_NAME FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'user_vocabulary'",
+                    String.class);
+            if (!indexes.contains("idx_user_next_review")) {
+                System.out.println("INFO: Adding index 'idx_user_next_review' to 'user_vocabulary'");
+                jdbcTemplate.execute("ALTER TABLE user_vocabulary ADD INDEX idx_user_next_review (user_id, next_review_at)");
+            }
+            if (!indexes.contains("idx_user_created")) {
+                System.out.println("INFO: Adding index 'idx_user_created' to 'user_vocabulary'");
+                jdbcTemplate.execute("ALTER TABLE user_vocabulary ADD INDEX idx_user_created (user_id, created_at)");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to check review scheduling schema: " + e.getMessage());
+        }
+    }
+
+    public String getEngineName() {
+        return engine.getName();
+    }
+
+    /**
+     * 根据一次作答计算卡片的新状态
+     *
+     * @param current        作答前的状态（不会被修改）
+     * @param correct        是否答对
+     * @param responseTimeMs 响应时间（毫秒），用于区分 HARD / GOOD / EASY
+     * @param now            作答时间
+     */
+    public CardState schedule(CardState current, boolean correct, Integer responseTimeMs, LocalDateTime now) {
+        CardState next = current.copy();
+        next.setMasteryLevel(correct
+                ? Math.min(current.getMasteryLevel() + 1, MAX_MASTERY_LEVEL)
+                : Math.max(current.getMasteryLevel() - 1, 0));
+
+        engine.schedule(current, next, ReviewGrade.fromAnswer(correct, responseTimeMs), now);
+
+        next.setReviewCount(current.getReviewCount() + 1);
+        next.setLastReviewedAt(now);
+        return next;
+    }
+
+    private SchedulingEngine findEngine(String name) {
+        for (SchedulingEngine candidate : engines) {
+            if (candidate.getName().equalsIgnoreCase(name == null ? "" : name.trim())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
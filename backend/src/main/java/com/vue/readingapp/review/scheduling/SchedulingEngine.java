@@ -0,0 +1,26 @@
+package com.vue.readingapp.review.scheduling;
+
+import java.time.LocalDateTime;
+
+/**
+ * 间隔重复调度算法
+ *
+ * 实现类注册为 Spring 组件，由 ReviewScheduler 按 app.review.scheduler 选择。
+ */
+public interface SchedulingEngine {
+
+    /**
+     * 算法名称，对应 app.review.scheduler 的取值
+     */
+    String getName();
+
+    /**
+     * 根据一次作答计算下次复习时间
+     *
+     * @param previous 作答前的状态（不会被修改）
+     * @param next     作答后的状态，调用时已更新 masteryLevel，由实现填写 stability / difficulty / ease / nextReviewAt
+     * @param grade    作答评分
+     * @param now      作答时间
+     */
+    void schedule(CardState previous, CardState next, ReviewGrade grade, LocalDateTime now);
+}
@@ -0,0 +1,55 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * SM-2 算法
+ *
+ * 每张卡片保存易度因子 EF（ease）和当前间隔（stability，天）：
+ *   - 答错：间隔回到 1 天；
+ *   - 答对：首次 1 天，第二次 6 天，之后为上次间隔 × EF；
+ *   - EF' = EF + (0.1 - (5 - q) × (0.08 + (5 - q) × 0.02))，不低于 1.3。
+ * 四档评分对应 SM-2 的 q：AGAIN=1，HARD=3，GOOD=4，EASY=5。
+ */
+@Component
+public class Sm2SchedulingEngine implements SchedulingEngine {
+
+    private static final double INITIAL_EASE = 2.5;
+    private static final double MIN_EASE = 1.3;
+
+    // 最长复习间隔（天）
+    @Value("${app.review.max-interval-days:36500}")
+    private int maxIntervalDays;
+
+    @Override
+    public String getName() {
+        return "sm2";
+    }
+
+    @Override
+    public void schedule(CardState previous, CardState next, ReviewGrade grade, LocalDateTime now) {
+        int q = grade == ReviewGrade.AGAIN ? 1 : grade.getValue() + 1;
+        double ease = previous.isNew() || previous.getEase() == null ? INITIAL_EASE : previous.getEase();
+        ease = Math.max(MIN_EASE, ease + (0.1 - (5 - q) * (0.08 + (5 - q) * 0.02)));
+
+        Double lastInterval = previous.isNew() ? null : previous.getStability();
+        double interval;
+        if (q < 3) {
+            interval = 1;
+        } else if (lastInterval == null || lastInterval < 1) {
+            interval = 1;
+        } else if (lastInterval < 6) {
+            interval = 6;
+        } else {
+            interval = Math.round(lastInterval * ease);
+        }
+        interval = Math.min(interval, maxIntervalDays);
+
+        next.setEase(ease);
+        next.setStability(interval);
+        next.setNextReviewAt(now.plusDays((long) interval));
+    }
+}
@@ -0,0 +1,41 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 按掌握等级查表的阶梯算法（原有算法，保留用于回退）
+ */
+@Component
+public class StepSchedulingEngine implements SchedulingEngine {
+
+    @Override
+    public String getName() {
+        return "step";
+    }
+
+    @Override
+    public void schedule(CardState previous, CardState next, ReviewGrade grade, LocalDateTime now) {
+        int days = calculateNextReviewDays(next.getMasteryLevel());
+        next.setStability((double) days);
+        next.setNextReviewAt(now.plusDays(days));
+    }
+
+    private int calculateNextReviewDays(int masteryLevel) {
+        // 简单的间隔重复算法
+        switch (masteryLevel) {
+            case 0: return 1;   // 第1级：1天后复习
+            case 1: return 2;   // 第2级：2天后复习
+            case 2: return 4;   // 第3级：4天后复习
+            case 3: return 7;   // 第4级：7天后复习
+            case 4: return 14;  // 第5级：14天后复习
+            case 5: return 30;  // 第6级：30天后复习
+            case 6: return 60;  // 第7级：60天后复习
+            case 7: return 90;  // 第8级：90天后复习
+            case 8: return 180; // 第9级：180天后复习
+            case 9: return 365; // 第10级：365天后复习
+            default: return 30; // 默认30天
+        }
+    }
+}
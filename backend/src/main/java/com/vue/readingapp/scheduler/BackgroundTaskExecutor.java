@@ -0,0 +1,630 @@
+package com.vue.readingapp.scheduler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台任务执行器
+ *
+ * 接口触发的后台工作（页面 / 批量 OCR、导出、离线下载与同步、通知推送、联合搜索的各数据源）统一提交到这里，
+ * 按负载类型分成几个命名线程池，不再每个请求 new Thread：
+ *   - 每个池的线程数和排队上限固定，突发请求只会排队，不会创建大量线程（每个线程可能持有整页图片）；
+ *   - 队列按优先级出队，同一优先级先提交先执行；
+ *   - 队列满时按池的拒绝策略处理：abort 抛出 RejectedExecutionException（调用方返回"繁忙"），
+ *     caller-runs 在提交线程中直接执行，discard 丢弃并记录；
+ *   - 提交时可以指定任务键（通常是任务 ID），取消接口据此取消：排队中的任务直接移出队列，
+ *     执行中的任务收到中断，由任务自己在检查点停止；
+ *   - 每个池统计提交、完成、失败、取消、拒绝次数和平均排队 / 执行时间。
+ * 以 I/O 等待为主的池（sync、notification）可以配置使用虚拟线程：不再复用固定数量的线程，
+ * 每个任务启动一个新的虚拟线程，同时执行的任务数由 virtual-max-concurrency 限制，超出的任务照常在有界优先级队列中等待。
+ * 运行时不支持虚拟线程（Java 21 以下）时退回普通线程池。
+ */
+@Component
+public class BackgroundTaskExecutor {
+
+    /**
+     * 负载类型（线程池）
+     */
+    public enum Pool {
+        OCR("ocr", false),
+        EXPORT("export", false),
+        SYNC("sync", true),
+        NOTIFICATION("notification", true),
+        SEARCH("search", false);
+
+        final String code;
+        // 是否以 I/O 等待为主（允许使用虚拟线程）
+        final boolean ioBound;
+
+        Pool(String code, boolean ioBound) {
+            this.code = code;
+            this.ioBound = ioBound;
+        }
+    }
+
+    /**
+     * 任务优先级，数值小的先执行
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * 队列满时的处理方式
+     */
+    public enum RejectionPolicy {
+        ABORT, CALLER_RUNS, DISCARD;
+
+        static RejectionPolicy of(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (Exception e) {
+                return ABORT;
+            }
+        }
+    }
+
+    @Value("${app.tasks.ocr.threads:2}")
+    private int ocrThreads;
+
+    @Value("${app.tasks.ocr.queue-capacity:100}")
+    private int ocrQueueCapacity;
+
+    @Value("${app.tasks.ocr.rejection-policy:abort}")
+    private String ocrRejectionPolicy;
+
+    // 导出池沿用原有的 app.export.jobs.* 配置作为默认值
+    @Value("${app.tasks.export.threads:${app.export.jobs.worker-threads:2}}")
+    private int exportThreads;
+
+    @Value("${app.tasks.export.queue-capacity:${app.export.jobs.queue-capacity:50}}")
+    private int exportQueueCapacity;
+
+    @Value("${app.tasks.export.rejection-policy:abort}")
+    private String exportRejectionPolicy;
+
+    @Value("${app.tasks.sync.threads:4}")
+    private int syncThreads;
+
+    @Value("${app.tasks.sync.queue-capacity:500}")
+    private int syncQueueCapacity;
+
+    @Value("${app.tasks.sync.rejection-policy:abort}")
+    private String syncRejectionPolicy;
+
+    @Value("${app.tasks.sync.virtual-threads:false}")
+    private boolean syncVirtualThreads;
+
+    // 虚拟线程模式下同时执行的同步任务数上限（不再受 threads 限制）
+    @Value("${app.tasks.sync.virtual-max-concurrency:256}")
+    private int syncVirtualMaxConcurrency;
+
+    // 通知推送必须保持单线程，保证同一连接上的事件按顺序发送
+    @Value("${app.tasks.notification.queue-capacity:10000}")
+    private int notificationQueueCapacity;
+
+    @Value("${app.tasks.notification.rejection-policy:discard}")
+    private String notificationRejectionPolicy;
+
+    @Value("${app.tasks.notification.virtual-threads:false}")
+    private boolean notificationVirtualThreads;
+
+    // 联合搜索的数据源查询，默认沿用 app.search.federated.threads；队列满时由请求线程自己执行
+    @Value("${app.tasks.search.threads:${app.search.federated.threads:4}}")
+    private int searchThreads;
+
+    @Value("${app.tasks.search.queue-capacity:200}")
+    private int searchQueueCapacity;
+
+    @Value("${app.tasks.search.rejection-policy:caller-runs}")
+    private String searchRejectionPolicy;
+
+    // 关闭时等待正在执行的任务结束的时间
+    @Value("${app.tasks.shutdown-timeout-seconds:10}")
+    private int shutdownTimeoutSeconds;
+
+    private final Map<Pool, PoolState> pools = new EnumMap<>(Pool.class);
+
+    // 任务键 -> 排队中或执行中的任务
+    private final Map<String, ManagedTask> keyedTasks = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        pools.put(Pool.OCR, new PoolState(Pool.OCR, ocrThreads, ocrQueueCapacity,
+                RejectionPolicy.of(ocrRejectionPolicy), false, 0));
+        pools.put(Pool.EXPORT, new PoolState(Pool.EXPORT, exportThreads, exportQueueCapacity,
+                RejectionPolicy.of(exportRejectionPolicy), false, 0));
+        pools.put(Pool.SYNC, new PoolState(Pool.SYNC, syncThreads, syncQueueCapacity,
+                RejectionPolicy.of(syncRejectionPolicy), syncVirtualThreads, syncVirtualMaxConcurrency));
+        // 通知推送在虚拟线程模式下同样一次只执行一个任务
+        pools.put(Pool.NOTIFICATION, new PoolState(Pool.NOTIFICATION, 1, notificationQueueCapacity,
+                RejectionPolicy.of(notificationRejectionPolicy), notificationVirtualThreads, 1));
+        pools.put(Pool.SEARCH, new PoolState(Pool.SEARCH, searchThreads, searchQueueCapacity,
+                RejectionPolicy.of(searchRejectionPolicy), false, 0));
+
+        StringBuilder summary = new StringBuilder();
+        for (PoolState state : pools.values()) {
+            summary.append(' ').append(state.pool.code).append('=').append(state.threads)
+                    .append('/').append(state.queueCapacity).append(state.virtual ? "(virtual)" : "");
+        }
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Background task pools started (threads/queue):" + summary);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PoolState state : pools.values()) {
+            state.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, shutdownTimeoutSeconds));
+        for (PoolState state : pools.values()) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !state.awaitTermination(remaining)) {
+                    int dropped = state.shutdownNow();
+                    System.err.println("ERROR: [" + LocalDateTime.now() + "] Background pool '" + state.pool.code
+                            + "' did not finish in time, interrupted running tasks and dropped " + dropped + " queued tasks");
+                }
+            } catch (InterruptedException e) {
+                state.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 提交一个普通优先级、不需要取消的任务
+     */
+    public Future<?> execute(Pool pool, Runnable task) {
+        return submit(pool, null, Priority.NORMAL, task);
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param key 任务键（用于取消），可以为 null
+     * @return 任务的 Future；discard 策略下被丢弃的任务返回已取消的 Future
+     * @throws RejectedExecutionException 队列已满且拒绝策略为 abort，或执行器已关闭
+     */
+    public Future<?> submit(Pool pool, String key, Priority priority, Runnable task) {
+        PoolState state = pools.get(pool);
+        ManagedTask managed = new ManagedTask(state, key, priority != null ? priority : Priority.NORMAL, task);
+        if (key != null) {
+            keyedTasks.put(key, managed);
+        }
+        state.submitted.incrementAndGet();
+        try {
+            state.execute(managed);
+            return managed;
+        } catch (RejectedExecutionException e) {
+            state.rejected.incrementAndGet();
+            if (state.isShutdown() || state.rejectionPolicy == RejectionPolicy.ABORT) {
+                managed.discard();
+                throw e;
+            }
+            if (state.rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+                state.callerRuns.incrementAndGet();
+                managed.run();
+                return managed;
+            }
+            managed.discard();
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Background pool '" + pool.code
+                    + "' queue is full, discarded task" + (key != null ? " " + key : ""));
+            return managed;
+        }
+    }
+
+    /**
+     * 按任务键取消任务：排队中的任务移出队列，执行中的任务被中断
+     *
+     * @return 找到并取消了任务时返回 true
+     */
+    public boolean cancel(String key) {
+        if (key == null) {
+            return false;
+        }
+        ManagedTask task = keyedTasks.get(key);
+        if (task == null) {
+            return false;
+        }
+        boolean cancelled = task.cancel(true);
+        // 释放队列位置
+        task.state.remove(task);
+        if (cancelled) {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Cancelled background task " + key + " in pool '" + task.state.pool.code + "'");
+        }
+        return cancelled;
+    }
+
+    /**
+     * 任务是否仍在排队或执行
+     */
+    public boolean isActive(String key) {
+        return key != null && keyedTasks.containsKey(key);
+    }
+
+    public int getQueueCapacity(Pool pool) {
+        return pools.get(pool).queueCapacity;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (PoolState state : pools.values()) {
+            metrics.put(state.pool.code, state.getMetrics());
+        }
+        metrics.put("keyedTasks", keyedTasks.size());
+        return metrics;
+    }
+
+    // ===== 内部实现 =====
+
+    /**
+     * 一个线程池及其统计
+     */
+    private final class PoolState {
+        final Pool pool;
+        final int threads;
+        final int queueCapacity;
+        final RejectionPolicy rejectionPolicy;
+        final boolean virtual;
+        // 普通线程池；虚拟线程模式下为 null，由 virtualExecutor 为每个任务启动虚拟线程
+        final ThreadPoolExecutor executor;
+        final VirtualTaskExecutor virtualExecutor;
+
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong callerRuns = new AtomicLong();
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong queueWaitNanos = new AtomicLong();
+        final AtomicLong finished = new AtomicLong();
+        final AtomicLong runNanos = new AtomicLong();
+
+        /**
+         * @param virtualConcurrency 虚拟线程模式下同时执行的任务数上限
+         */
+        PoolState(Pool pool, int threads, int queueCapacity, RejectionPolicy rejectionPolicy, boolean virtualThreads,
+                  int virtualConcurrency) {
+            this.pool = pool;
+            this.queueCapacity = Math.max(1, queueCapacity);
+            this.rejectionPolicy = rejectionPolicy;
+
+            ThreadFactory factory = null;
+            if (virtualThreads && pool.ioBound) {
+                factory = virtualThreadFactory("task-" + pool.code + "-");
+            } else if (virtualThreads) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Virtual threads are not used for CPU-bound pool '" + pool.code + "'");
+            }
+            this.virtual = factory != null;
+            if (virtual) {
+                this.threads = Math.max(1, virtualConcurrency);
+                this.executor = null;
+                this.virtualExecutor = new VirtualTaskExecutor(pool.code, factory, this.threads, this.queueCapacity);
+                return;
+            }
+            this.threads = Math.max(1, threads);
+            this.virtualExecutor = null;
+            if (factory == null) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                factory = r -> {
+                    Thread thread = new Thread(r, "task-" + pool.code + "-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+            }
+            // 线程数固定，超过排队上限时 offer 返回 false，由 submit 按拒绝策略处理
+            this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                    new BoundedPriorityQueue(this.queueCapacity), factory, (r, e) -> {
+                throw new RejectedExecutionException("Background pool '" + pool.code + "' is "
+                        + (e.isShutdown() ? "shut down" : "full (" + this.queueCapacity + " queued)"));
+            });
+        }
+
+        void execute(ManagedTask task) {
+            if (virtual) {
+                virtualExecutor.execute(task);
+            } else {
+                executor.execute(task);
+            }
+        }
+
+        boolean isShutdown() {
+            return virtual ? virtualExecutor.isShutdown() : executor.isShutdown();
+        }
+
+        void remove(ManagedTask task) {
+            if (virtual) {
+                virtualExecutor.remove(task);
+            } else {
+                executor.remove(task);
+            }
+        }
+
+        void shutdown() {
+            if (virtual) {
+                virtualExecutor.shutdown();
+            } else {
+                executor.shutdown();
+            }
+        }
+
+        boolean awaitTermination(long nanos) throws InterruptedException {
+            return virtual ? virtualExecutor.awaitTermination(nanos) : executor.awaitTermination(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        // 中断执行中的任务，返回丢弃的排队任务数
+        int shutdownNow() {
+            return virtual ? virtualExecutor.shutdownNow().size() : executor.shutdownNow().size();
+        }
+
+        Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            long startedCount = started.get();
+            long finishedCount = finished.get();
+            metrics.put("threads", threads);
+            metrics.put("virtualThreads", virtual);
+            metrics.put("activeThreads", virtual ? virtualExecutor.getActiveCount() : executor.getActiveCount());
+            metrics.put("queued", virtual ? virtualExecutor.getQueuedCount() : executor.getQueue().size());
+            metrics.put("queueCapacity", queueCapacity);
+            metrics.put("rejectionPolicy", rejectionPolicy.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+            metrics.put("submitted", submitted.get());
+            metrics.put("completed", completed.get());
+            metrics.put("failed", failed.get());
+            metrics.put("cancelled", cancelled.get());
+            metrics.put("rejected", rejected.get());
+            metrics.put("callerRuns", callerRuns.get());
+            metrics.put("averageQueueWaitMs", startedCount == 0 ? 0.0 : queueWaitNanos.get() / 1_000_000.0 / startedCount);
+            metrics.put("averageRunMs", finishedCount == 0 ? 0.0 : runNanos.get() / 1_000_000.0 / finishedCount);
+            return metrics;
+        }
+    }
+
+    /**
+     * 有排队上限的优先级队列
+     */
+    private static final class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable> {
+        private final int capacity;
+
+        BoundedPriorityQueue(int capacity) {
+            super(Math.min(capacity, 64));
+            this.capacity = capacity;
+        }
+
+        @Override
+        public synchronized boolean offer(Runnable task) {
+            return size() < capacity && super.offer(task);
+        }
+    }
+
+    /**
+     * 虚拟线程模式的执行器：每个任务启动一个新线程，不复用线程
+     *
+     * 同时执行的任务数由信号量限制，拿不到许可的任务进入有界优先级队列（队列满时抛出 RejectedExecutionException，
+     * 与线程池一致），任务结束时由该线程从队列中取下一个任务启动。
+     * 线程工厂由调用方提供，本身不依赖虚拟线程。
+     */
+    static final class VirtualTaskExecutor {
+        private final String code;
+        private final ThreadFactory factory;
+        private final int maxConcurrency;
+        private final Semaphore permits;
+        private final int queueCapacity;
+        private final BoundedPriorityQueue queue;
+        private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+        private volatile boolean shutdown = false;
+
+        VirtualTaskExecutor(String code, ThreadFactory factory, int maxConcurrency, int queueCapacity) {
+            this.code = code;
+            this.factory = factory;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.permits = new Semaphore(this.maxConcurrency);
+            this.queueCapacity = Math.max(1, queueCapacity);
+            this.queue = new BoundedPriorityQueue(this.queueCapacity);
+        }
+
+        void execute(Runnable task) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Background pool '" + code + "' is shut down");
+            }
+            if (permits.tryAcquire()) {
+                start(task);
+                return;
+            }
+            if (!queue.offer(task)) {
+                throw new RejectedExecutionException("Background pool '" + code + "' is full (" + queueCapacity + " queued)");
+            }
+            // 入队前可能恰好有任务结束并释放了许可
+            drain();
+        }
+
+        private void start(Runnable task) {
+            Thread thread;
+            try {
+                thread = factory.newThread(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.remove(Thread.currentThread());
+                        permits.release();
+                        drain();
+                    }
+                });
+                running.add(thread);
+                thread.start();
+            } catch (RuntimeException | Error e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        // 有空闲许可时启动排队中的任务；关闭后排队的任务仍会执行，与 ThreadPoolExecutor.shutdown 一致
+        private void drain() {
+            while (!queue.isEmpty() && permits.tryAcquire()) {
+                Runnable next = queue.poll();
+                if (next == null) {
+                    permits.release();
+                    return;
+                }
+                start(next);
+            }
+        }
+
+        boolean remove(Runnable task) {
+            return queue.remove(task);
+        }
+
+        boolean isShutdown() {
+            return shutdown;
+        }
+
+        void shutdown() {
+            shutdown = true;
+        }
+
+        List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> dropped = new ArrayList<>();
+            queue.drainTo(dropped);
+            for (Thread thread : running) {
+                thread.interrupt();
+            }
+            return dropped;
+        }
+
+        boolean awaitTermination(long nanos) throws InterruptedException {
+            long deadline = System.nanoTime() + nanos;
+            // 许可在线程结束时才归还，比 running 更早反映刚从队列取出、尚未启动的任务
+            while (permits.availablePermits() < maxConcurrency || !queue.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)));
+            }
+            return true;
+        }
+
+        int getActiveCount() {
+            return running.size();
+        }
+
+        int getQueuedCount() {
+            return queue.size();
+        }
+    }
+
+    /**
+     * 提交到线程池的任务：按优先级、提交顺序排序，结束时更新统计并注销任务键
+     */
+    private final class ManagedTask extends FutureTask<Void> implements Comparable<ManagedTask> {
+        final PoolState state;
+        final String key;
+        final Priority priority;
+        final long order = sequence.incrementAndGet();
+        final long submittedAt = System.nanoTime();
+        private volatile long startedAt = 0;
+        private volatile boolean failed = false;
+        private volatile boolean discarded = false;
+
+        ManagedTask(PoolState state, String key, Priority priority, Runnable task) {
+            super(task, null);
+            this.state = state;
+            this.key = key;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            if (!isDone()) {
+                startedAt = System.nanoTime();
+                state.started.incrementAndGet();
+                state.queueWaitNanos.addAndGet(startedAt - submittedAt);
+            }
+            super.run();
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed = true;
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Background task " + (key != null ? key + " " : "")
+                    + "in pool '" + state.pool.code + "' failed: " + t.getMessage());
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            if (key != null) {
+                keyedTasks.remove(key, this);
+            }
+            if (startedAt != 0) {
+                state.finished.incrementAndGet();
+                state.runNanos.addAndGet(System.nanoTime() - startedAt);
+            }
+            if (discarded) {
+                return;
+            }
+            if (isCancelled()) {
+                state.cancelled.incrementAndGet();
+            } else if (failed) {
+                state.failed.incrementAndGet();
+            } else {
+                state.completed.incrementAndGet();
+            }
+        }
+
+        // 被拒绝的任务：注销任务键，不计入取消次数
+        void discard() {
+            if (key != null) {
+                keyedTasks.remove(key, this);
+            }
+            discarded = true;
+            cancel(false);
+        }
+
+        @Override
+        public int compareTo(ManagedTask other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    // 通过反射创建虚拟线程工厂（Thread.ofVirtual().name(prefix, 1).factory()），运行时不支持时返回 null
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (Exception | LinkageError e) {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Virtual threads are not available on this runtime, using platform threads for " + prefix + "*");
+            return null;
+        }
+    }
+}
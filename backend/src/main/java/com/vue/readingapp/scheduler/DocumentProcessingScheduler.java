@@ -1,133 +1,259 @@
 package com.vue.readingapp.scheduler;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import com.vue.readingapp.ocr.OcrService; // 假设 OcrService 在这个包下
+import org.springframework.transaction.support.TransactionTemplate;
+import com.vue.readingapp.ocr.OcrService;
+import com.vue.readingapp.documents.storage.ProcessedContentCloner;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.time.LocalDateTime;
 
+/**
+ * 文档处理队列（基于租约的并发工作队列）
+ *
+ * - 认领：在事务中用 SELECT ... FOR UPDATE SKIP LOCKED 取出一条 pending 记录并写入租约
+ *   （lease_owner / lease_expires_at），多个工作线程、多个应用实例之间不会重复认领；
+ * - 心跳：定期延长本实例持有的租约，OCR 耗时再长也不会被误判为卡死；
+ * - 回收：租约过期仍处于 processing 的记录（实例崩溃、进程被杀）重新放回 pending，
+ *   超过最大尝试次数的标记为 failed；
+ * - 唤醒：上传接口入队后调用 wakeUp()，空闲的工作线程立即开始处理，
+ *   定时轮询只作为兜底（例如其他实例入队的任务）。
+ */
 @Component
 public class DocumentProcessingScheduler {
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Autowired
     private OcrService ocrService;
 
-    // 每30秒执行一次
-    @Scheduled(fixedDelay = 30000)
-    public void processDocumentQueue() {
-        System.out.println("INFO: [" + LocalDateTime.now() + "] Checking for documents to process...");
+    @Autowired
+    private ProcessedContentCloner processedContentCloner;
 
-        try {
-            // 1. 确保必要的数据库表存在
-            ensureTablesExist();
+    // 同时处理的文档数（工作线程数）
+    @Value("${app.document-queue.concurrency:2}")
+    private int concurrency;
+
+    // 租约时长（秒），心跳会在到期前续约
+    @Value("${app.document-queue.lease-seconds:300}")
+    private int leaseSeconds;
+
+    // 空闲工作线程的兜底轮询间隔（毫秒）
+    @Value("${app.document-queue.poll-interval-ms:30000}")
+    private long pollIntervalMs;
+
+    // 单个队列项的最大尝试次数（租约过期被回收也计一次）
+    @Value("${app.document-queue.max-attempts:3}")
+    private int maxAttempts;
+
+    // 本实例的租约持有者标识
+    private final String workerId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
 
-            // 2. 查询待处理的文档队列
-            //    - 优先处理 priority 较高的任务
-            //    - 对于相同 priority 的任务，优先处理创建时间较早的
-            //    - 限制每次处理的数量，避免一次性加载过多任务
-            //    - 注意：这里的 sql 语句假设 queue_id 是数字类型，但会增加类型转换的健壮性
-            String sql = "SELECT queue_id, document_id FROM document_processing_queue WHERE status = 'pending' ORDER BY priority DESC, created_at ASC LIMIT 200";
+    // 本实例当前持有租约的 queue_id
+    private final Set<Integer> heldLeases = ConcurrentHashMap.newKeySet();
 
-            List<Map<String, Object>> pendingTasks = jdbcTemplate.queryForList(sql);
+    // 入队信号：每次 wakeUp() 释放一个许可，空闲工作线程据此立即醒来
+    private final Semaphore wakeUpSignal = new Semaphore(0);
 
-            if (pendingTasks.isEmpty()) {
-                System.out.println("INFO: [" + LocalDateTime.now() + "] No pending documents to process.");
-                return;
+    private ExecutorService workers;
+    private volatile boolean running = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // 表结构只需在启动时检查一次
+        ensureTablesExist();
+
+        running = true;
+        int workerCount = Math.max(1, concurrency);
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "document-queue-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::workerLoop);
+        }
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Document processing queue started, workerId=" + workerId + ", concurrency=" + workerCount);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        // 把本实例未完成的任务放回队列，其他实例无需等到租约过期即可接手
+        for (Integer queueId : new ArrayList<>(heldLeases)) {
+            try {
+                jdbcTemplate.update("UPDATE document_processing_queue SET status = 'pending', lease_owner = NULL, lease_expires_at = NULL, " +
+                        "attempts = GREATEST(attempts - 1, 0), updated_at = ? WHERE queue_id = ? AND lease_owner = ?",
+                        LocalDateTime.now(), queueId, workerId);
+            } catch (Exception e) {
+                System.err.println("ERROR: Failed to release lease for queue_id " + queueId + ": " + e.getMessage());
             }
+        }
+        heldLeases.clear();
+    }
 
-            System.out.println("INFO: [" + LocalDateTime.now() + "] Found " + pendingTasks.size() + " pending documents to process.");
-
-            for (Map<String, Object> task : pendingTasks) {
-                // --- 健壮的 queue_id 类型处理 ---
-                Object queueIdObject = task.get("queue_id");
-                Integer queueId = null;
-
-                if (queueIdObject instanceof Integer) {
-                    queueId = (Integer) queueIdObject;
-                    System.out.println("DEBUG: [" + LocalDateTime.now() + "] Got queue_id as Integer: " + queueId);
-                } else if (queueIdObject instanceof Long) {
-                    queueId = ((Long) queueIdObject).intValue(); // 尝试转换为 Integer
-                    System.out.println("DEBUG: [" + LocalDateTime.now() + "] Got queue_id as Long, converted to Integer: " + queueId);
-                } else if (queueIdObject instanceof String) {
-                    try {
-                        queueId = Integer.parseInt((String) queueIdObject); // 尝试从 String 解析
-                        System.out.println("DEBUG: [" + LocalDateTime.now() + "] Got queue_id as String, parsed to Integer: " + queueId);
-                    } catch (NumberFormatException e) {
-                        System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to parse queue_id '" + queueIdObject + "' as Integer. Skipping task.");
-                        continue; // 跳过此任务，继续下一个
-                    }
-                } else if (queueIdObject != null) {
-                    // 如果是其他未预期的数字类型（如 BigInteger），尝试转换为 int
-                    try {
-                        queueId = ((Number) queueIdObject).intValue();
-                        System.out.println("DEBUG: [" + LocalDateTime.now() + "] Got queue_id as unexpected Number type, converted to Integer: " + queueId);
-                    } catch (Exception e) {
-                        System.err.println("ERROR: [" + LocalDateTime.now() + "] Unexpected type for queue_id: " + queueIdObject.getClass().getName() + ". Skipping task.");
-                        continue; // 跳过此任务
-                    }
-                }
+    /**
+     * 通知队列有新任务入队，空闲的工作线程会立即尝试认领
+     */
+    public void wakeUp() {
+        wakeUpSignal.release();
+    }
 
-                if (queueId == null) {
-                    System.err.println("ERROR: [" + LocalDateTime.now() + "] queue_id is null or could not be determined. Skipping task.");
-                    continue; // 如果 queueId 仍然是 null，跳过此任务
+    private void workerLoop() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                Map<String, Object> task = claimNext();
+                if (task == null) {
+                    // 没有可认领的任务：等待入队信号，超时后兜底再查一次
+                    wakeUpSignal.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                processTask(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Document queue worker error: " + e.getMessage());
+                e.printStackTrace();
+                try {
+                    // 数据库不可用等情况下避免空转
+                    Thread.sleep(Math.min(pollIntervalMs, 5000));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
                 }
-                // --- queue_id 类型处理结束 ---
+            }
+        }
+    }
 
-                // 明确将 document_id 作为字符串处理，以适配 VARCHAR 类型的数据库字段
-                String documentId = task.get("document_id").toString();
+    /**
+     * 认领一条待处理任务：优先级高的优先，同优先级按创建时间先后。
+     * 被其他事务锁住的行直接跳过，因此并发认领不会互相阻塞，也不会重复处理。
+     */
+    private Map<String, Object> claimNext() {
+        return transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT queue_id, document_id FROM document_processing_queue WHERE status = 'pending' " +
+                    "ORDER BY priority DESC, created_at ASC LIMIT 1 FOR UPDATE SKIP LOCKED");
+            if (rows.isEmpty()) {
+                return null;
+            }
+            Map<String, Object> task = rows.get(0);
+            Integer queueId = ((Number) task.get("queue_id")).intValue();
+            jdbcTemplate.update("UPDATE document_processing_queue SET status = 'processing', lease_owner = ?, " +
+                    "lease_expires_at = DATE_ADD(NOW(), INTERVAL ? SECOND), attempts = attempts + 1, updated_at = ? WHERE queue_id = ?",
+                    workerId, leaseSeconds, LocalDateTime.now(), queueId);
+            heldLeases.add(queueId);
+            return task;
+        });
+    }
 
-                System.out.println("INFO: [" + LocalDateTime.now() + "] Processing document with document_id: '" + documentId + "' (queue_id: " + queueId + ")");
+    private void processTask(Map<String, Object> task) {
+        Integer queueId = ((Number) task.get("queue_id")).intValue();
+        Integer documentId = Integer.valueOf(task.get("document_id").toString());
 
-                try {
-                    // 3. 更新状态为 'processing'，标记为正在处理
-                    //    - 同时更新 updated_at 字段
-                    String updateSql = "UPDATE document_processing_queue SET status = 'processing', updated_at = ? WHERE queue_id = ?";
-                    jdbcTemplate.update(updateSql, LocalDateTime.now(), queueId);
-
-                    // 4. 调用 OcrService 处理文档
-                    //    - 假设 ocrService.processDocument(String documentId) 返回一个布尔值表示是否成功
-                    boolean success = ocrService.processDocument(Integer.valueOf(documentId));
-
-                    if (success) {
-                        // 5. 如果处理成功，更新状态为 'completed'
-                        String completeSql = "UPDATE document_processing_queue SET status = 'completed', updated_at = ? WHERE queue_id = ?";
-                        jdbcTemplate.update(completeSql, LocalDateTime.now(), queueId);
-                        System.out.println("INFO: [" + LocalDateTime.now() + "] Document '" + documentId + "' processed successfully.");
-                    } else {
-                        // 6. 如果 OCR 服务返回处理失败，更新状态为 'failed'
-                        String failSql = "UPDATE document_processing_queue SET status = 'failed', error_message = ?, updated_at = ? WHERE queue_id = ?";
-                        jdbcTemplate.update(failSql, "OCR processing returned false", LocalDateTime.now(), queueId);
-                        System.out.println("ERROR: [" + LocalDateTime.now() + "] Document '" + documentId + "' processing returned false.");
-                    }
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Processing document " + documentId + " (queue_id: " + queueId + ", worker: " + Thread.currentThread().getName() + ")");
 
-                } catch (Exception e) {
-                    // 7. 捕获处理过程中可能发生的任何异常
-                    System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to process document '" + documentId + "' (queue_id: " + queueId + "): " + e.getMessage());
-                    e.printStackTrace(); // 打印详细堆栈信息以便调试
+        try {
+            // 同一文件被多次上传时，排在后面的任务可以直接复用先处理完的结果
+            if (!processedContentCloner.cloneFromProcessed(documentId)) {
+                ocrService.runDocumentOcr(documentId);
+            }
+            finish(queueId, "completed", null);
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Document " + documentId + " processed successfully.");
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to process document " + documentId + " (queue_id: " + queueId + "): " + e.getMessage());
+            finish(queueId, "failed", e.getMessage());
+        } finally {
+            heldLeases.remove(queueId);
+        }
+    }
 
-                    // 更新状态为 'failed'，并记录错误信息
-                    String failSql = "UPDATE document_processing_queue SET status = 'failed', error_message = ?, updated_at = ? WHERE queue_id = ?";
-                    jdbcTemplate.update(failSql, e.getMessage(), LocalDateTime.now(), queueId);
+    /**
+     * 结束任务。只更新仍由本实例持有租约的行：若租约已过期并被其他实例接手，这里不会覆盖对方的状态。
+     */
+    private void finish(Integer queueId, String status, String errorMessage) {
+        int rows = jdbcTemplate.update("UPDATE document_processing_queue SET status = ?, error_message = ?, lease_owner = NULL, " +
+                "lease_expires_at = NULL, updated_at = ? WHERE queue_id = ? AND lease_owner = ?",
+                status, errorMessage, LocalDateTime.now(), queueId, workerId);
+        if (rows == 0) {
+            System.err.println("WARNING: [" + LocalDateTime.now() + "] Lease for queue_id " + queueId + " was lost before completion, result not recorded.");
+        }
+    }
+
+    /**
+     * 心跳：延长本实例正在处理的任务的租约
+     */
+    @Scheduled(fixedDelayString = "${app.document-queue.heartbeat-interval-ms:60000}")
+    public void renewLeases() {
+        if (!running || heldLeases.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>();
+        for (Integer queueId : heldLeases) {
+            args.add(new Object[]{leaseSeconds, queueId, workerId});
+        }
+        try {
+            jdbcTemplate.batchUpdate("UPDATE document_processing_queue SET lease_expires_at = DATE_ADD(NOW(), INTERVAL ? SECOND) " +
+                    "WHERE queue_id = ? AND lease_owner = ? AND status = 'processing'", args);
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to renew document queue leases: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 回收租约已过期的任务（持有者崩溃或失联）。旧版本遗留的没有租约的 processing 记录同样会被回收。
+     */
+    @Scheduled(fixedDelayString = "${app.document-queue.reclaim-interval-ms:60000}")
+    public void reclaimExpiredLeases() {
+        if (!running) {
+            return;
+        }
+        try {
+            int failed = jdbcTemplate.update("UPDATE document_processing_queue SET status = 'failed', " +
+                    "error_message = 'Lease expired too many times', lease_owner = NULL, lease_expires_at = NULL " +
+                    "WHERE status = 'processing' AND (lease_expires_at IS NULL OR lease_expires_at < NOW()) AND attempts >= ?",
+                    maxAttempts);
+            int requeued = jdbcTemplate.update("UPDATE document_processing_queue SET status = 'pending', lease_owner = NULL, lease_expires_at = NULL " +
+                    "WHERE status = 'processing' AND (lease_expires_at IS NULL OR lease_expires_at < NOW())");
+            if (failed > 0 || requeued > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Reclaimed expired document queue leases: requeued=" + requeued + ", failed=" + failed);
+                for (int i = 0; i < requeued; i++) {
+                    wakeUp();
                 }
             }
-
         } catch (Exception e) {
-            // 捕获查询待处理任务过程中可能发生的异常
-            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to fetch pending tasks: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to reclaim expired leases: " + e.getMessage());
         }
     }
 
     /**
-     * 确保 'document_processing_queue' 和 'ocr_tasks' 表存在。
-     * 如果不存在，则创建它们。
-     * 这有助于在首次启动应用或数据库为空时自动初始化表结构。
+     * 确保 'document_processing_queue' 和 'ocr_tasks' 表存在，并补齐租约相关的列和认领索引。
+     * 只在应用启动时执行一次。
      */
     private void ensureTablesExist() {
         try {
@@ -145,10 +271,13 @@ public class DocumentProcessingScheduler {
                         "status VARCHAR(50) NOT NULL DEFAULT 'pending'," +
                         "priority INT DEFAULT 1," +
                         "error_message TEXT," +
+                        "lease_owner VARCHAR(100) NULL," +
+                        "lease_expires_at DATETIME NULL," +
+                        "attempts INT NOT NULL DEFAULT 0," +
                         "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
                         "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
                         "INDEX idx_document_id (document_id)," +
-                        "INDEX idx_status (status)" +
+                        "INDEX idx_status_priority_created (status, priority, created_at)" +
                         ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
                 jdbcTemplate.execute(createQueueTableSql);
                 System.out.println("INFO: Table 'document_processing_queue' created successfully.");
@@ -157,25 +286,37 @@ public class DocumentProcessingScheduler {
                 try {
                     String checkColumnSql = "SELECT COLUMN_NAME FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'document_processing_queue'";
                     List<String> existingColumns = jdbcTemplate.queryForList(checkColumnSql, String.class);
-                    
+
                     if (!existingColumns.contains("error_message")) {
                         System.out.println("INFO: Adding missing column 'error_message' to 'document_processing_queue'");
                         jdbcTemplate.execute("ALTER TABLE document_processing_queue ADD COLUMN error_message TEXT AFTER priority");
                     }
-                    
+
                     if (!existingColumns.contains("updated_at")) {
                         System.out.println("INFO: Adding missing column 'updated_at' to 'document_processing_queue'");
                         jdbcTemplate.execute("ALTER TABLE document_processing_queue ADD COLUMN updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP AFTER created_at");
                     }
 
-                    // 确保 status 长度足够
-                    jdbcTemplate.execute("ALTER TABLE document_processing_queue MODIFY COLUMN status VARCHAR(50) NOT NULL DEFAULT 'pending'");
+                    if (!existingColumns.contains("lease_owner")) {
+                        System.out.println("INFO: Adding lease columns to 'document_processing_queue'");
+                        jdbcTemplate.execute("ALTER TABLE document_processing_queue ADD COLUMN lease_owner VARCHAR(100) NULL AFTER error_message, " +
+                                "ADD COLUMN lease_expires_at DATETIME NULL AFTER lease_owner, " +
+                                "ADD COLUMN attempts INT NOT NULL DEFAULT 0 AFTER lease_expires_at");
+                    }
+
+                    String checkIndexSql = "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() " +
+                            "AND table_name = 'document_processing_queue' AND index_name = 'idx_status_priority_created'";
+                    Integer indexCount = jdbcTemplate.queryForObject(checkIndexSql, Integer.class);
+                    if (indexCount == null || indexCount == 0) {
+                        System.out.println("INFO: Adding claim index to 'document_processing_queue'");
+                        jdbcTemplate.execute("ALTER TABLE document_processing_queue ADD INDEX idx_status_priority_created (status, priority, created_at)");
+                    }
                 } catch (Exception e) {
                     System.err.println("ERROR: Failed to check or alter table columns: " + e.getMessage());
                 }
             }
 
-            // 检查 ocr_tasks 表是否存在 (假设 OcrService 使用这个表)
+            // 检查 ocr_tasks 表是否存在 (OcrService 使用这个表)
             String checkTaskTableSql = "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'ocr_tasks'";
             Integer taskTableCount = jdbcTemplate.queryForObject(checkTaskTableSql, Integer.class);
 
@@ -200,14 +341,11 @@ public class DocumentProcessingScheduler {
                         ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
                 jdbcTemplate.execute(createTaskTableSql);
                 System.out.println("INFO: Table 'ocr_tasks' created successfully.");
-            } else {
-                // System.out.println("INFO: Table 'ocr_tasks' already exists.");
             }
 
         } catch (Exception e) {
             System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to ensure tables exist: " + e.getMessage());
             e.printStackTrace();
-            // 在这里可以考虑抛出更严重的异常，或者标记应用为不可用，因为数据库表是核心依赖
         }
     }
-}
\ No newline at end of file
+}
@@ -5,7 +5,15 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import java.util.*;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.federated.FederatedSearchExecutor;
+import com.vue.readingapp.search.federated.SearchCursor;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.index.SearchTokenizer;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -14,6 +22,25 @@ public class SearchAdvanced {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private FederatedSearchExecutor federatedSearchExecutor;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
+    // 词汇按相关性排序时从 SQL 取的候选上限
+    @Value("${app.search.federated.max-vocabulary-candidates:500}")
+    private int maxVocabularyCandidates;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到高级搜索请求 ===");
@@ -43,6 +70,7 @@ public class SearchAdvanced {
         private Integer pageSize = 20;
         private String sortBy = "relevance";
         private String sortOrder = "desc";
+        private String cursor;
 
         public Map<String, Object> getFilters() { return filters; }
         public void setFilters(Map<String, Object> filters) { this.filters = filters; }
@@ -61,6 +89,9 @@ public class SearchAdvanced {
 
         public String getSortOrder() { return sortOrder; }
         public void setSortOrder(String sortOrder) { this.sortOrder = sortOrder; }
+
+        public String getCursor() { return cursor; }
+        public void setCursor(String cursor) { this.cursor = cursor; }
     }
 
     // 响应DTO
@@ -94,6 +125,8 @@ public class SearchAdvanced {
         private Map<String, Object> facets;
         private long queryTime;
         private String type;
+        private String nextCursor;
+        private List<String> failedSources = new ArrayList<>();
 
         public AdvancedSearchData(int total, int page, int pageSize, int totalPages,
                                   List<AdvancedSearchItem> items, Map<String, Object> facets,
@@ -131,6 +164,13 @@ public class SearchAdvanced {
 
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
+
+        public String getNextCursor() { return nextCursor; }
+        public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+        // 超时或出错、结果未包含在本次响应中的数据源
+        public List<String> getFailedSources() { return failedSources; }
+        public void setFailedSources(List<String> failedSources) { this.failedSources = failedSources; }
     }
 
     public static class AdvancedSearchItem {
@@ -278,67 +318,76 @@ public class SearchAdvanced {
             // 2. 获取当前用户ID
             Long userId = getUserIdFromToken(authHeader);
 
-            // 3. 根据类型执行搜索
-            List<AdvancedSearchItem> allResults = new ArrayList<>();
+            // 3. 解析分页游标：带游标时从游标之后取一页，否则按页码取前 page * pageSize 条
+            SearchCursor after = null;
+            if (request.getCursor() != null && !request.getCursor().isEmpty()) {
+                try {
+                    after = SearchCursor.decode(request.getCursor());
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(
+                            new AdvancedSearchResponse(false, "无效的分页游标", null)
+                    );
+                }
+            }
 
-            if ("all".equals(request.getType()) || "documents".equals(request.getType())) {
-                List<AdvancedSearchItem> documentResults = searchDocumentsAdvanced(request.getFilters(), userId,
-                        request.getPage(), request.getPageSize());
-                allResults.addAll(documentResults);
+            // 没有关键词时相关性都为 0，按相关性排序等同于按创建时间倒序
+            String sortBy = request.getSortBy();
+            String sortOrder = request.getSortOrder();
+            Object queryFilter = request.getFilters().get("query");
+            if (!"createdAt".equals(sortBy) && (queryFilter == null || queryFilter.toString().trim().isEmpty())) {
+                sortBy = "createdAt";
+                sortOrder = "desc";
             }
 
-            if ("all".equals(request.getType()) || "vocabulary".equals(request.getType())) {
-                List<AdvancedSearchItem> vocabularyResults = searchVocabularyAdvanced(request.getFilters(), userId,
-                        request.getPage(), request.getPageSize());
-                allResults.addAll(vocabularyResults);
+            // 每页条数有上限；按页码访问最多翻到 max-window 条，更深的结果需要用游标
+            request.setPage(Math.max(1, request.getPage() != null ? request.getPage() : 1));
+            request.setPageSize(federatedSearchExecutor.clampPageSize(request.getPageSize()));
+            if (after == null && federatedSearchExecutor.exceedsWindow(request.getPage(), request.getPageSize())) {
+                return ResponseEntity.badRequest().body(
+                        new AdvancedSearchResponse(false, "页码超出范围：按页码最多访问前 " + federatedSearchExecutor.getMaxWindow()
+                                + " 条结果，之后请使用 cursor 翻页", null)
+                );
             }
+            int limit = after != null ? request.getPageSize() : request.getPage() * request.getPageSize();
+            FederatedSearchExecutor.Window window = new FederatedSearchExecutor.Window(sortBy, sortOrder, after, limit);
 
+            // 4. 并行执行各类搜索，合并为一个有序结果
+            Map<String, Object> filters = request.getFilters();
+            Map<String, FederatedSearchExecutor.Source<AdvancedSearchItem>> sources = new LinkedHashMap<>();
+            if ("all".equals(request.getType()) || "documents".equals(request.getType())) {
+                sources.put("documents", w -> searchDocumentsAdvanced(filters, userId, w));
+            }
+            if ("all".equals(request.getType()) || "vocabulary".equals(request.getType())) {
+                sources.put("vocabulary", w -> searchVocabularyAdvanced(filters, userId, w));
+            }
             if ("all".equals(request.getType()) || "notes".equals(request.getType())) {
-                List<AdvancedSearchItem> noteResults = searchNotesAdvanced(request.getFilters(), userId,
-                        request.getPage(), request.getPageSize());
-                allResults.addAll(noteResults);
+                sources.put("notes", w -> searchNotesAdvanced(filters, userId, w));
             }
-
             if ("all".equals(request.getType()) || "highlights".equals(request.getType())) {
-                List<AdvancedSearchItem> highlightResults = searchHighlightsAdvanced(request.getFilters(), userId,
-                        request.getPage(), request.getPageSize());
-                allResults.addAll(highlightResults);
+                sources.put("highlights", w -> searchHighlightsAdvanced(filters, userId, w));
             }
 
-            // 4. 排序结果
-            if ("relevance".equals(request.getSortBy())) {
-                allResults.sort((a, b) -> {
-                    if ("desc".equalsIgnoreCase(request.getSortOrder())) {
-                        return Double.compare(b.getRelevance(), a.getRelevance());
-                    } else {
-                        return Double.compare(a.getRelevance(), b.getRelevance());
-                    }
-                });
-            } else if ("createdAt".equals(request.getSortBy())) {
-                allResults.sort((a, b) -> {
-                    if ("desc".equalsIgnoreCase(request.getSortOrder())) {
-                        return b.getCreatedAt().compareTo(a.getCreatedAt());
-                    } else {
-                        return a.getCreatedAt().compareTo(b.getCreatedAt());
-                    }
-                });
-            }
+            FederatedSearchExecutor.Result<AdvancedSearchItem> result = federatedSearchExecutor.execute(sources, window);
+            int totalResults = result.getTotal();
 
-            // 5. 分页处理
-            int startIndex = (request.getPage() - 1) * request.getPageSize();
-            int endIndex = Math.min(startIndex + request.getPageSize(), allResults.size());
-            List<AdvancedSearchItem> pagedResults = allResults.subList(startIndex, endIndex);
+            // 5. 分页处理：按页码访问时只保留最后一页
+            List<AdvancedSearchItem> pagedResults = result.getItems();
+            if (after == null) {
+                int startIndex = Math.min((request.getPage() - 1) * request.getPageSize(), pagedResults.size());
+                pagedResults = pagedResults.subList(startIndex, pagedResults.size());
+            }
 
-            // 6. 计算分页信息
-            int totalPages = (int) Math.ceil((double) allResults.size() / request.getPageSize());
+            // 6. 计算分页信息（只计入按页码可以访问到的页）
+            int totalPages = federatedSearchExecutor.totalPages(totalResults, request.getPageSize());
 
-            // 7. 构建facet数据
-            Map<String, Object> facets = new HashMap<>();
+            // 7. 构建facet数据：各类型的命中总数来自各数据源的聚合计数
+            Map<String, Object> facets = new HashMap<>(result.getFacets());
+            facets.put("type", result.getTotals());
 
             // 8. 记录搜索历史
             if (userId != null) {
                 String keyword = "高级搜索: " + request.getFilters().toString();
-                saveSearchHistory(userId, keyword, "advanced", allResults.size());
+                saveSearchHistory(userId, keyword, "advanced", totalResults);
             }
 
             // 9. 计算查询时间
@@ -346,7 +395,7 @@ public class SearchAdvanced {
 
             // 10. 准备响应数据
             AdvancedSearchData searchData = new AdvancedSearchData(
-                    allResults.size(),
+                    totalResults,
                     request.getPage(),
                     request.getPageSize(),
                     totalPages,
@@ -355,11 +404,13 @@ public class SearchAdvanced {
                     queryTime,
                     request.getType()
             );
+            searchData.setNextCursor(result.getNextCursor());
+            searchData.setFailedSources(result.getFailedSources());
 
             AdvancedSearchResponse response = new AdvancedSearchResponse(true, "高级搜索成功", searchData);
 
             // 打印查询结果
-            printQueryResult("找到 " + allResults.size() + " 个结果，返回 " + pagedResults.size() + " 个");
+            printQueryResult("找到 " + totalResults + " 个结果，返回 " + pagedResults.size() + " 个");
 
             // 打印返回数据
             printResponse(response);
@@ -375,467 +426,606 @@ public class SearchAdvanced {
         }
     }
 
-    // 高级文档搜索
-    private List<AdvancedSearchItem> searchDocumentsAdvanced(Map<String, Object> filters, Long userId,
-                                                             int page, int pageSize) {
-        List<AdvancedSearchItem> results = new ArrayList<>();
+    // 高级文档搜索：关键词走用户的全文索引，其余条件由 SQL 过滤；没有关键词时按创建时间键集分页，下推到 SQL
+    private FederatedSearchExecutor.SourceResult<AdvancedSearchItem> searchDocumentsAdvanced(Map<String, Object> filters, Long userId,
+                                                                                            FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<AdvancedSearchItem> result = FederatedSearchExecutor.SourceResult.empty();
+
+        // 关键词匹配
+        String query = filters.get("query") != null ? (String) filters.get("query") : "";
+        Map<Long, SearchIndexService.SearchHit> hitsById = null;
+        if (!query.trim().isEmpty()) {
+            if (userId == null) {
+                return result;
+            }
+            hitsById = indexHits(searchIndexService.searchDocuments(userId, query), true);
+            if (hitsById.isEmpty()) {
+                return result;
+            }
+        }
 
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT d.document_id, d.title, d.content, d.author, d.language, ");
-            sqlBuilder.append("d.word_count, d.difficulty, d.created_at, d.updated_at, ");
-            sqlBuilder.append("d.thumbnail_url, d.status ");
-            sqlBuilder.append("FROM documents d ");
-            sqlBuilder.append("WHERE d.status = 'processed' ");
+        StringBuilder where = new StringBuilder();
+        where.append("WHERE d.status = 'processed' AND d.deleted_at IS NULL ");
+        List<Object> whereParams = new ArrayList<>();
 
-            List<Object> params = new ArrayList<>();
+        // 添加用户过滤
+        if (userId != null) {
+            where.append("AND d.user_id = ? ");
+            whereParams.add(userId);
+        }
 
-            // 添加用户过滤
-            if (userId != null) {
-                sqlBuilder.append("AND d.user_id = ? ");
-                params.add(userId);
-            }
+        if (hitsById != null) {
+            where.append("AND d.document_id IN (").append(placeholders(hitsById.size())).append(") ");
+            whereParams.addAll(hitsById.keySet());
+        }
 
-            // 处理各种过滤器
-            if (filters.containsKey("query") && filters.get("query") != null) {
-                String query = (String) filters.get("query");
-                sqlBuilder.append("AND (d.title LIKE ? OR d.content LIKE ?) ");
-                params.add("%" + query + "%");
-                params.add("%" + query + "%");
-            }
+        // 处理各种过滤器（documents 表没有难度和字数列，difficulty / minWordCount / maxWordCount 不参与过滤）
+        if (filters.containsKey("language") && filters.get("language") != null) {
+            String language = (String) filters.get("language");
+            where.append("AND d.language = ? ");
+            whereParams.add(language);
+        }
 
-            if (filters.containsKey("language") && filters.get("language") != null) {
-                String language = (String) filters.get("language");
-                sqlBuilder.append("AND d.language = ? ");
-                params.add(language);
-            }
+        if (filters.containsKey("dateFrom") && filters.get("dateFrom") != null) {
+            String dateFrom = (String) filters.get("dateFrom");
+            where.append("AND DATE(d.created_at) >= ? ");
+            whereParams.add(dateFrom);
+        }
 
-            if (filters.containsKey("difficulty") && filters.get("difficulty") != null) {
-                String difficulty = (String) filters.get("difficulty");
-                sqlBuilder.append("AND d.difficulty = ? ");
-                params.add(difficulty);
-            }
+        if (filters.containsKey("dateTo") && filters.get("dateTo") != null) {
+            String dateTo = (String) filters.get("dateTo");
+            where.append("AND DATE(d.created_at) <= ? ");
+            whereParams.add(dateTo);
+        }
 
-            if (filters.containsKey("minWordCount") && filters.get("minWordCount") != null) {
-                Integer minWordCount = (Integer) filters.get("minWordCount");
-                sqlBuilder.append("AND d.word_count >= ? ");
-                params.add(minWordCount);
+        if (filters.containsKey("tags") && filters.get("tags") != null) {
+            List<String> tags = (List<String>) filters.get("tags");
+            if (!tags.isEmpty()) {
+                where.append("AND EXISTS (SELECT 1 FROM document_tag_relations r ");
+                where.append("INNER JOIN document_tags t ON r.tag_id = t.tag_id ");
+                where.append("WHERE r.document_id = d.document_id AND t.tag_name IN (");
+                where.append(placeholders(tags.size())).append(")) ");
+                whereParams.addAll(tags);
             }
+        }
 
-            if (filters.containsKey("maxWordCount") && filters.get("maxWordCount") != null) {
-                Integer maxWordCount = (Integer) filters.get("maxWordCount");
-                sqlBuilder.append("AND d.word_count <= ? ");
-                params.add(maxWordCount);
+        // 1. 聚合：总数 + 语言分面 + 标签分面
+        int total = 0;
+        Map<String, Integer> languages = new TreeMap<>();
+        String languageSql = "SELECT d.language, COUNT(*) AS cnt FROM documents d " + where + "GROUP BY d.language";
+        for (Map<String, Object> row : jdbcTemplate.queryForList(languageSql, whereParams.toArray())) {
+            int count = ((Number) row.get("cnt")).intValue();
+            total += count;
+            if (row.get("language") != null) {
+                languages.put((String) row.get("language"), count);
             }
+        }
+        result.setTotal(total);
+        result.putFacet("languages", languages);
+        if (total == 0) {
+            return result;
+        }
 
-            if (filters.containsKey("dateFrom") && filters.get("dateFrom") != null) {
-                String dateFrom = (String) filters.get("dateFrom");
-                sqlBuilder.append("AND DATE(d.created_at) >= ? ");
-                params.add(dateFrom);
+        Map<String, Integer> tagFacet = new TreeMap<>();
+        String tagSql = "SELECT t.tag_name, COUNT(*) AS cnt FROM document_tag_relations r " +
+                "INNER JOIN document_tags t ON r.tag_id = t.tag_id " +
+                "WHERE r.document_id IN (SELECT d.document_id FROM documents d " + where + ") GROUP BY t.tag_name";
+        for (Map<String, Object> row : jdbcTemplate.queryForList(tagSql, whereParams.toArray())) {
+            tagFacet.put((String) row.get("tag_name"), ((Number) row.get("cnt")).intValue());
+        }
+        result.putFacet("tags", tagFacet);
+
+        // 2. 取本页文档：有关键词时按索引得分在内存中分页，否则按创建时间在 SQL 中分页
+        StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("SELECT d.document_id, d.title, d.description, d.author, d.language, ");
+        sqlBuilder.append("d.created_at, d.updated_at, d.status ");
+        sqlBuilder.append("FROM documents d ").append(where);
+        List<Object> params = new ArrayList<>(whereParams);
+
+        if (hitsById == null) {
+            if (!window.appendKeyset(sqlBuilder, params, "document", "d.created_at", "d.document_id")) {
+                return result;
             }
+            sqlBuilder.append(window.keysetOrderBy("d.created_at", "d.document_id")).append("LIMIT ?");
+            params.add(window.getFetchSize());
+        }
 
-            if (filters.containsKey("dateTo") && filters.get("dateTo") != null) {
-                String dateTo = (String) filters.get("dateTo");
-                sqlBuilder.append("AND DATE(d.created_at) <= ? ");
-                params.add(dateTo);
+        Map<Long, Map<String, Object>> documents = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        for (Map<String, Object> doc : jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray())) {
+            long documentId = ((Number) doc.get("document_id")).longValue();
+            double relevance = hitsById != null ? hitsById.get(documentId).getRelevance() : 0.0;
+            documents.put(documentId, doc);
+            keys.add(SearchCursor.of(relevance, doc.get("created_at"), "document", documentId));
+        }
+
+        List<SearchCursor> page = window.page(keys);
+        Map<Long, String> pageContents = new HashMap<>();
+        if (hitsById != null) {
+            List<SearchIndexService.SearchHit> pageHits = new ArrayList<>();
+            for (SearchCursor key : page) {
+                pageHits.add(hitsById.get(key.getEntityId()));
             }
+            pageContents = searchIndexService.loadHitPageContents(pageHits);
+        }
 
-            if (filters.containsKey("tags") && filters.get("tags") != null) {
-                List<String> tags = (List<String>) filters.get("tags");
-                if (!tags.isEmpty()) {
-                    sqlBuilder.append("AND EXISTS (SELECT 1 FROM document_tag_relations r ");
-                    sqlBuilder.append("INNER JOIN document_tags t ON r.tag_id = t.tag_id ");
-                    sqlBuilder.append("WHERE r.document_id = d.document_id AND t.tag_name IN (");
-
-                    for (int i = 0; i < tags.size(); i++) {
-                        if (i > 0) sqlBuilder.append(", ");
-                        sqlBuilder.append("?");
-                        params.add(tags.get(i));
-                    }
-                    sqlBuilder.append(")) ");
-                }
+        // 本页文档的标签一次查出
+        List<Long> pageIds = new ArrayList<>();
+        for (SearchCursor key : page) {
+            pageIds.add(key.getEntityId());
+        }
+        Map<Long, List<String>> pageTags = getDocumentTags(pageIds);
+
+        for (SearchCursor key : page) {
+            Map<String, Object> doc = documents.get(key.getEntityId());
+            Long documentId = key.getEntityId();
+
+            AdvancedSearchItem item = new AdvancedSearchItem();
+            item.setId("doc_" + documentId);
+            item.setType("document");
+            item.setTitle((String) doc.get("title"));
+            item.setContent((String) doc.get("description"));
+
+            // 生成摘要：优先取命中页中包含关键词的片段，否则取描述
+            String content = pageContents.containsKey(documentId)
+                    ? pageContents.get(documentId) : (String) doc.get("description");
+            String excerpt = SearchTokenizer.excerpt(content, query, 200);
+            item.setExcerpt(excerpt);
+
+            item.setAuthor((String) doc.get("author"));
+            item.setLanguage((String) doc.get("language"));
+
+            // 相关性来自索引的 BM25 得分（归一化到 0~1）
+            item.setRelevance(key.getRelevance());
+            SearchIndexService.SearchHit hit = hitsById != null ? hitsById.get(documentId) : null;
+            if (hit != null && hit.getPageNumber() > 0) {
+                item.setPageNumber(hit.getPageNumber());
             }
 
-            // 添加排序和分页
-            sqlBuilder.append("ORDER BY d.created_at DESC LIMIT ? OFFSET ?");
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
+            // 构建高亮信息
+            Map<String, Object> highlight = new HashMap<>();
+            highlight.put("title", highlightText(query, (String) doc.get("title")));
+            highlight.put("content", highlightText(query, excerpt));
+            item.setHighlight(highlight);
 
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
+            item.setCreatedAt(doc.get("created_at") != null ? doc.get("created_at").toString() : null);
+            item.setUpdatedAt(doc.get("updated_at") != null ? doc.get("updated_at").toString() : null);
+            item.setUrl("/documents/" + documentId);
 
-            for (Map<String, Object> doc : documents) {
-                AdvancedSearchItem item = new AdvancedSearchItem();
-                item.setId("doc_" + doc.get("document_id"));
-                item.setType("document");
-                item.setTitle((String) doc.get("title"));
-                item.setContent((String) doc.get("content"));
+            item.setTags(pageTags.getOrDefault(documentId, new ArrayList<>()));
 
-                // 生成摘要
-                String content = (String) doc.get("content");
-                if (content != null && content.length() > 200) {
-                    item.setExcerpt(content.substring(0, 200) + "...");
-                } else {
-                    item.setExcerpt(content);
-                }
+            result.add(key, item);
+        }
 
-                item.setAuthor((String) doc.get("author"));
-                item.setLanguage((String) doc.get("language"));
-                item.setWordCount(doc.get("word_count") != null ? ((Number) doc.get("word_count")).intValue() : 0);
-                item.setDifficulty((String) doc.get("difficulty"));
+        return result;
+    }
 
-                // 计算相关性
-                String query = filters.containsKey("query") ? (String) filters.get("query") : "";
-                double relevance = calculateDocumentRelevance(query, (String) doc.get("title"), content);
-                item.setRelevance(relevance);
+    // 高级词汇搜索：词典是全局数据，仍由 SQL 匹配
+    private FederatedSearchExecutor.SourceResult<AdvancedSearchItem> searchVocabularyAdvanced(Map<String, Object> filters, Long userId,
+                                                                                             FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<AdvancedSearchItem> result = FederatedSearchExecutor.SourceResult.empty();
+
+        StringBuilder where = new StringBuilder();
+        where.append("WHERE 1=1 ");
+        List<Object> whereParams = new ArrayList<>();
+
+        // 处理各种过滤器
+        String query = filters.get("query") != null ? (String) filters.get("query") : "";
+        if (!query.trim().isEmpty()) {
+            where.append("AND (w.word LIKE ? OR w.translation_pos LIKE ? OR EXISTS (SELECT 1 FROM word_definitions wd ");
+            where.append("WHERE wd.word_id = w.word_id AND wd.definition LIKE ?)) ");
+            whereParams.add("%" + query + "%");
+            whereParams.add("%" + query + "%");
+            whereParams.add("%" + query + "%");
+        }
 
-                // 构建高亮信息
-                Map<String, Object> highlight = new HashMap<>();
-                highlight.put("title", highlightText(query, (String) doc.get("title")));
-                highlight.put("content", highlightText(query, content));
-                item.setHighlight(highlight);
+        if (filters.containsKey("language") && filters.get("language") != null) {
+            String language = (String) filters.get("language");
+            where.append("AND w.language = ? ");
+            whereParams.add(language);
+        }
 
-                item.setCreatedAt(doc.get("created_at") != null ? doc.get("created_at").toString() : null);
-                item.setUpdatedAt(doc.get("updated_at") != null ? doc.get("updated_at").toString() : null);
-                item.setThumbnail((String) doc.get("thumbnail_url"));
-                item.setUrl("/documents/" + doc.get("document_id"));
+        if (filters.containsKey("difficulty") && filters.get("difficulty") != null) {
+            String difficulty = (String) filters.get("difficulty");
+            where.append("AND w.difficulty = ? ");
+            whereParams.add(difficulty);
+        }
 
-                // 获取标签
-                List<String> tags = getDocumentTags(((Number) doc.get("document_id")).longValue());
-                item.setTags(tags);
+        if (filters.containsKey("tags") && filters.get("tags") != null) {
+            List<String> tags = (List<String>) filters.get("tags");
+            if (!tags.isEmpty()) {
+                // 词汇标签挂在用户生词本上，未登录时没有结果
+                if (userId == null) {
+                    return result;
+                }
+                where.append("AND EXISTS (SELECT 1 FROM user_vocabulary uv ");
+                where.append("INNER JOIN user_vocabulary_tags ut ON ut.user_vocab_id = uv.user_vocab_id ");
+                where.append("INNER JOIN vocabulary_tags vt ON ut.tag_id = vt.tag_id ");
+                where.append("WHERE uv.word_id = w.word_id AND uv.user_id = ? AND vt.tag_name IN (");
+                where.append(placeholders(tags.size())).append(")) ");
+                whereParams.add(userId);
+                whereParams.addAll(tags);
+            }
+        }
 
-                results.add(item);
+        // 1. 聚合：总数 + 词性分面
+        int total = 0;
+        Map<String, Integer> partsOfSpeech = new TreeMap<>();
+        String countSql = "SELECT w.part_of_speech, COUNT(*) AS cnt FROM words w " + where + "GROUP BY w.part_of_speech";
+        for (Map<String, Object> row : jdbcTemplate.queryForList(countSql, whereParams.toArray())) {
+            int count = ((Number) row.get("cnt")).intValue();
+            total += count;
+            if (row.get("part_of_speech") != null) {
+                partsOfSpeech.put((String) row.get("part_of_speech"), count);
             }
+        }
+        result.setTotal(total);
+        result.putFacet("partsOfSpeech", partsOfSpeech);
+        if (total == 0) {
+            return result;
+        }
 
-        } catch (Exception e) {
-            System.err.println("高级文档搜索时发生错误: " + e.getMessage());
+        // 2. 取候选词条
+        StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("SELECT w.word_id, w.word, w.phonetic, w.translation_pos AS translation, ");
+        sqlBuilder.append("w.audio AS audio_url, w.difficulty, w.language, ");
+        sqlBuilder.append("(SELECT wd.definition FROM word_definitions wd WHERE wd.word_id = w.word_id ");
+        sqlBuilder.append("ORDER BY wd.order_index LIMIT 1) AS definition ");
+        sqlBuilder.append("FROM words w ").append(where);
+        List<Object> params = new ArrayList<>(whereParams);
+
+        if (window.isSortedByCreatedAt() || query.trim().isEmpty()) {
+            // 词条没有创建时间，排在最后，按 word_id 键集分页下推到 SQL
+            if (!window.appendKeyset(sqlBuilder, params, "vocabulary", null, "w.word_id")) {
+                return result;
+            }
+            sqlBuilder.append(window.keysetOrderBy(null, "w.word_id")).append("LIMIT ?");
+            params.add(window.getFetchSize());
+        } else {
+            // 相关性在内存中计算，SQL 先按 完全匹配 > 前缀匹配 > 词长 取有限的候选
+            sqlBuilder.append("ORDER BY (w.word = ?) DESC, (w.word LIKE ?) DESC, CHAR_LENGTH(w.word), w.word_id LIMIT ?");
+            params.add(query);
+            params.add(query + "%");
+            params.add(maxVocabularyCandidates);
+            // 按相关性排序时只能翻到候选上限以内的词条，总数按候选集合计算，避免列出取不到结果的页
+            result.setTotal(Math.min(total, maxVocabularyCandidates));
         }
 
-        return results;
-    }
+        Map<Long, Map<String, Object>> words = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        for (Map<String, Object> word : jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray())) {
+            long wordId = ((Number) word.get("word_id")).longValue();
+            double relevance = query.trim().isEmpty() ? 0.0
+                    : calculateVocabularyRelevance(query, (String) word.get("word"), (String) word.get("definition"));
+            words.put(wordId, word);
+            keys.add(SearchCursor.of(relevance, null, "vocabulary", wordId));
+        }
 
-    // 高级词汇搜索
-    private List<AdvancedSearchItem> searchVocabularyAdvanced(Map<String, Object> filters, Long userId,
-                                                              int page, int pageSize) {
-        List<AdvancedSearchItem> results = new ArrayList<>();
+        // 本页词条的例句、标签、生词本状态各一次查询
+        List<SearchCursor> page = window.page(keys);
+        List<Long> pageIds = new ArrayList<>();
+        for (SearchCursor key : page) {
+            pageIds.add(key.getEntityId());
+        }
+        Map<Long, List<String>> pageExamples = getWordExamples(pageIds);
+        Map<Long, List<String>> pageTags = getWordTags(userId, pageIds);
+        Set<Long> inVocabularyIds = getWordIdsInVocabulary(userId, pageIds);
+
+        for (SearchCursor key : page) {
+            Map<String, Object> word = words.get(key.getEntityId());
+            Long wordId = key.getEntityId();
+
+            AdvancedSearchItem item = new AdvancedSearchItem();
+            item.setId("word_" + wordId);
+            item.setType("vocabulary");
+            item.setWord((String) word.get("word"));
+            item.setPhonetic((String) word.get("phonetic"));
+            item.setDefinition((String) word.get("definition"));
+            item.setTranslation((String) word.get("translation"));
+            item.setDifficulty((String) word.get("difficulty"));
+            item.setLanguage((String) word.get("language"));
+
+            item.setRelevance(key.getRelevance());
+
+            // 构建高亮信息
+            Map<String, Object> highlight = new HashMap<>();
+            highlight.put("word", highlightText(query, (String) word.get("word")));
+            highlight.put("definition", highlightText(query, (String) word.get("definition")));
+            highlight.put("translation", highlightText(query, (String) word.get("translation")));
+            item.setHighlight(highlight);
+
+            item.setAudioUrl((String) word.get("audio_url"));
+            item.setUrl("/vocabulary/" + wordId);
+
+            item.setExamples(pageExamples.getOrDefault(wordId, new ArrayList<>()));
+            item.setTags(pageTags.getOrDefault(wordId, new ArrayList<>()));
+            item.setInVocabulary(inVocabularyIds.contains(wordId));
+
+            result.add(key, item);
+        }
 
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT w.word_id, w.word, w.phonetic, wd.definition, wd.translation, ");
-            sqlBuilder.append("w.created_at, w.updated_at, w.audio_url, w.difficulty, w.language ");
-            sqlBuilder.append("FROM words w ");
-            sqlBuilder.append("LEFT JOIN word_definitions wd ON w.word_id = wd.word_id ");
-            sqlBuilder.append("WHERE 1=1 ");
-
-            List<Object> params = new ArrayList<>();
-
-            // 处理各种过滤器
-            if (filters.containsKey("query") && filters.get("query") != null) {
-                String query = (String) filters.get("query");
-                sqlBuilder.append("AND (w.word LIKE ? OR wd.definition LIKE ? OR wd.translation LIKE ?) ");
-                params.add("%" + query + "%");
-                params.add("%" + query + "%");
-                params.add("%" + query + "%");
-            }
+        return result;
+    }
 
-            if (filters.containsKey("language") && filters.get("language") != null) {
-                String language = (String) filters.get("language");
-                sqlBuilder.append("AND w.language = ? ");
-                params.add(language);
-            }
+    // 高级笔记搜索
+    private FederatedSearchExecutor.SourceResult<AdvancedSearchItem> searchNotesAdvanced(Map<String, Object> filters, Long userId,
+                                                                                        FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<AdvancedSearchItem> result = FederatedSearchExecutor.SourceResult.empty();
 
-            if (filters.containsKey("difficulty") && filters.get("difficulty") != null) {
-                String difficulty = (String) filters.get("difficulty");
-                sqlBuilder.append("AND w.difficulty = ? ");
-                params.add(difficulty);
-            }
+        if (userId == null) {
+            return result;
+        }
 
-            if (filters.containsKey("tags") && filters.get("tags") != null) {
-                List<String> tags = (List<String>) filters.get("tags");
-                if (!tags.isEmpty()) {
-                    sqlBuilder.append("AND EXISTS (SELECT 1 FROM user_vocabulary_tags ut ");
-                    sqlBuilder.append("INNER JOIN vocabulary_tags vt ON ut.tag_id = vt.tag_id ");
-                    sqlBuilder.append("WHERE ut.word_id = w.word_id AND vt.tag_name IN (");
-
-                    for (int i = 0; i < tags.size(); i++) {
-                        if (i > 0) sqlBuilder.append(", ");
-                        sqlBuilder.append("?");
-                        params.add(tags.get(i));
-                    }
-                    sqlBuilder.append(")) ");
-                }
+        // 关键词匹配
+        String query = filters.get("query") != null ? (String) filters.get("query") : "";
+        Map<Long, SearchIndexService.SearchHit> hitsById = null;
+        if (!query.trim().isEmpty()) {
+            hitsById = indexHits(searchIndexService.searchNotes(userId, query), false);
+            if (hitsById.isEmpty()) {
+                return result;
             }
+        }
 
-            // 添加排序和分页
-            sqlBuilder.append("ORDER BY w.word ASC LIMIT ? OFFSET ?");
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> words = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (Map<String, Object> word : words) {
-                AdvancedSearchItem item = new AdvancedSearchItem();
-                Long wordId = ((Number) word.get("word_id")).longValue();
-
-                item.setId("word_" + wordId);
-                item.setType("vocabulary");
-                item.setWord((String) word.get("word"));
-                item.setPhonetic((String) word.get("phonetic"));
-                item.setDefinition((String) word.get("definition"));
-                item.setTranslation((String) word.get("translation"));
-                item.setDifficulty((String) word.get("difficulty"));
-
-                // 计算相关性
-                String query = filters.containsKey("query") ? (String) filters.get("query") : "";
-                double relevance = calculateVocabularyRelevance(query, (String) word.get("word"),
-                        (String) word.get("definition"));
-                item.setRelevance(relevance);
-
-                // 构建高亮信息
-                Map<String, Object> highlight = new HashMap<>();
-                highlight.put("word", highlightText(query, (String) word.get("word")));
-                highlight.put("definition", highlightText(query, (String) word.get("definition")));
-                highlight.put("translation", highlightText(query, (String) word.get("translation")));
-                item.setHighlight(highlight);
-
-                item.setCreatedAt(word.get("created_at") != null ? word.get("created_at").toString() : null);
-                item.setUpdatedAt(word.get("updated_at") != null ? word.get("updated_at").toString() : null);
-                item.setAudioUrl((String) word.get("audio_url"));
-                item.setUrl("/vocabulary/" + wordId);
-
-                // 获取例句
-                List<String> examples = getWordExamples(wordId);
-                item.setExamples(examples);
-
-                // 获取标签
-                List<String> tags = getWordTags(wordId);
-                item.setTags(tags);
-
-                // 检查是否在用户生词本中
-                boolean inVocabulary = checkIfInVocabulary(userId, wordId);
-                item.setInVocabulary(inVocabulary);
-
-                results.add(item);
-            }
+        StringBuilder where = new StringBuilder();
+        where.append("WHERE n.user_id = ? ");
+        List<Object> whereParams = new ArrayList<>();
+        whereParams.add(userId);
 
-        } catch (Exception e) {
-            System.err.println("高级词汇搜索时发生错误: " + e.getMessage());
+        if (hitsById != null) {
+            where.append("AND n.note_id IN (").append(placeholders(hitsById.size())).append(") ");
+            whereParams.addAll(hitsById.keySet());
         }
 
-        return results;
-    }
+        // 处理各种过滤器
+        if (filters.containsKey("documentId") && filters.get("documentId") != null) {
+            Long documentId = Long.parseLong((String) filters.get("documentId"));
+            where.append("AND n.document_id = ? ");
+            whereParams.add(documentId);
+        }
 
-    // 高级笔记搜索
-    private List<AdvancedSearchItem> searchNotesAdvanced(Map<String, Object> filters, Long userId,
-                                                         int page, int pageSize) {
-        List<AdvancedSearchItem> results = new ArrayList<>();
+        if (filters.containsKey("dateFrom") && filters.get("dateFrom") != null) {
+            String dateFrom = (String) filters.get("dateFrom");
+            where.append("AND DATE(n.created_at) >= ? ");
+            whereParams.add(dateFrom);
+        }
 
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT n.note_id, n.content, n.created_at, n.updated_at, ");
-            sqlBuilder.append("d.document_id, d.title as document_title ");
-            sqlBuilder.append("FROM document_notes n ");
-            sqlBuilder.append("INNER JOIN documents d ON n.document_id = d.document_id ");
-            sqlBuilder.append("WHERE n.user_id = ? ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(userId);
-
-            // 处理各种过滤器
-            if (filters.containsKey("query") && filters.get("query") != null) {
-                String query = (String) filters.get("query");
-                sqlBuilder.append("AND n.content LIKE ? ");
-                params.add("%" + query + "%");
-            }
+        if (filters.containsKey("dateTo") && filters.get("dateTo") != null) {
+            String dateTo = (String) filters.get("dateTo");
+            where.append("AND DATE(n.created_at) <= ? ");
+            whereParams.add(dateTo);
+        }
 
-            if (filters.containsKey("documentId") && filters.get("documentId") != null) {
-                Long documentId = Long.parseLong((String) filters.get("documentId"));
-                sqlBuilder.append("AND n.document_id = ? ");
-                params.add(documentId);
-            }
+        // 1. 总数
+        String countSql = "SELECT COUNT(*) FROM document_notes n INNER JOIN documents d ON n.document_id = d.document_id " + where;
+        Integer total = jdbcTemplate.queryForObject(countSql, Integer.class, whereParams.toArray());
+        result.setTotal(total != null ? total : 0);
+        if (result.getTotal() == 0) {
+            return result;
+        }
 
-            if (filters.containsKey("dateFrom") && filters.get("dateFrom") != null) {
-                String dateFrom = (String) filters.get("dateFrom");
-                sqlBuilder.append("AND DATE(n.created_at) >= ? ");
-                params.add(dateFrom);
+        // 2. 取本页笔记
+        StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("SELECT n.note_id, n.content, n.created_at, n.updated_at, ");
+        sqlBuilder.append("d.document_id, d.title as document_title ");
+        sqlBuilder.append("FROM document_notes n ");
+        sqlBuilder.append("INNER JOIN documents d ON n.document_id = d.document_id ");
+        sqlBuilder.append(where);
+        List<Object> params = new ArrayList<>(whereParams);
+
+        if (hitsById == null) {
+            if (!window.appendKeyset(sqlBuilder, params, "note", "n.created_at", "n.note_id")) {
+                return result;
             }
+            sqlBuilder.append(window.keysetOrderBy("n.created_at", "n.note_id")).append("LIMIT ?");
+            params.add(window.getFetchSize());
+        }
 
-            if (filters.containsKey("dateTo") && filters.get("dateTo") != null) {
-                String dateTo = (String) filters.get("dateTo");
-                sqlBuilder.append("AND DATE(n.created_at) <= ? ");
-                params.add(dateTo);
-            }
+        Map<Long, Map<String, Object>> notes = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        for (Map<String, Object> note : jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray())) {
+            long noteId = ((Number) note.get("note_id")).longValue();
+            double relevance = hitsById != null ? hitsById.get(noteId).getRelevance() : 0.0;
+            notes.put(noteId, note);
+            keys.add(SearchCursor.of(relevance, note.get("created_at"), "note", noteId));
+        }
 
-            // 添加排序和分页
-            sqlBuilder.append("ORDER BY n.created_at DESC LIMIT ? OFFSET ?");
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> notes = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (Map<String, Object> note : notes) {
-                AdvancedSearchItem item = new AdvancedSearchItem();
-                Long noteId = ((Number) note.get("note_id")).longValue();
-                Long docId = ((Number) note.get("document_id")).longValue();
-
-                item.setId("note_" + noteId);
-                item.setType("note");
-                item.setContent((String) note.get("content"));
-                item.setDocumentTitle((String) note.get("document_title"));
-                item.setDocumentId(docId);
-
-                // 生成标题和摘要
-                String content = (String) note.get("content");
-                if (content != null) {
-                    // 取前50个字符作为标题
-                    if (content.length() > 50) {
-                        item.setTitle(content.substring(0, 50) + "...");
-                    } else {
-                        item.setTitle(content);
-                    }
-
-                    // 取前150个字符作为摘要
-                    if (content.length() > 150) {
-                        item.setExcerpt(content.substring(0, 150) + "...");
-                    } else {
-                        item.setExcerpt(content);
-                    }
+        for (SearchCursor key : window.page(keys)) {
+            Map<String, Object> note = notes.get(key.getEntityId());
+
+            AdvancedSearchItem item = new AdvancedSearchItem();
+            Long noteId = key.getEntityId();
+            Long docId = ((Number) note.get("document_id")).longValue();
+
+            item.setId("note_" + noteId);
+            item.setType("note");
+            item.setContent((String) note.get("content"));
+            item.setDocumentTitle((String) note.get("document_title"));
+            item.setDocumentId(docId);
+
+            // 生成标题和摘要
+            String content = (String) note.get("content");
+            if (content != null) {
+                // 取前50个字符作为标题
+                if (content.length() > 50) {
+                    item.setTitle(content.substring(0, 50) + "...");
+                } else {
+                    item.setTitle(content);
                 }
 
-                // 计算相关性
-                String query = filters.containsKey("query") ? (String) filters.get("query") : "";
-                double relevance = calculateNoteRelevance(query, content);
-                item.setRelevance(relevance);
+                // 摘要取包含关键词的片段
+                item.setExcerpt(SearchTokenizer.excerpt(content, query, 150));
+            }
 
-                // 构建高亮信息
-                Map<String, Object> highlight = new HashMap<>();
-                highlight.put("content", highlightText(query, content));
-                item.setHighlight(highlight);
+            item.setRelevance(key.getRelevance());
 
-                item.setCreatedAt(note.get("created_at") != null ? note.get("created_at").toString() : null);
-                item.setUpdatedAt(note.get("updated_at") != null ? note.get("updated_at").toString() : null);
-                item.setUrl("/reader/note/" + noteId + "?document=" + docId);
+            // 构建高亮信息
+            Map<String, Object> highlight = new HashMap<>();
+            highlight.put("content", highlightText(query, content));
+            item.setHighlight(highlight);
 
-                results.add(item);
-            }
+            item.setCreatedAt(note.get("created_at") != null ? note.get("created_at").toString() : null);
+            item.setUpdatedAt(note.get("updated_at") != null ? note.get("updated_at").toString() : null);
+            item.setUrl("/reader/note/" + noteId + "?document=" + docId);
 
-        } catch (Exception e) {
-            System.err.println("高级笔记搜索时发生错误: " + e.getMessage());
+            result.add(key, item);
         }
 
-        return results;
+        return result;
     }
 
     // 高级高亮搜索
-    private List<AdvancedSearchItem> searchHighlightsAdvanced(Map<String, Object> filters, Long userId,
-                                                              int page, int pageSize) {
-        List<AdvancedSearchItem> results = new ArrayList<>();
+    private FederatedSearchExecutor.SourceResult<AdvancedSearchItem> searchHighlightsAdvanced(Map<String, Object> filters, Long userId,
+                                                                                             FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<AdvancedSearchItem> result = FederatedSearchExecutor.SourceResult.empty();
 
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT h.highlight_id, h.selected_text, h.note, h.created_at, ");
-            sqlBuilder.append("h.page_number, d.document_id, d.title as document_title ");
-            sqlBuilder.append("FROM document_highlights h ");
-            sqlBuilder.append("INNER JOIN documents d ON h.document_id = d.document_id ");
-            sqlBuilder.append("WHERE h.user_id = ? ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(userId);
-
-            // 处理各种过滤器
-            if (filters.containsKey("query") && filters.get("query") != null) {
-                String query = (String) filters.get("query");
-                sqlBuilder.append("AND (h.selected_text LIKE ? OR h.note LIKE ?) ");
-                params.add("%" + query + "%");
-                params.add("%" + query + "%");
+        if (userId == null) {
+            return result;
+        }
+
+        // 关键词匹配
+        String query = filters.get("query") != null ? (String) filters.get("query") : "";
+        Map<Long, SearchIndexService.SearchHit> hitsById = null;
+        if (!query.trim().isEmpty()) {
+            hitsById = indexHits(searchIndexService.searchHighlights(userId, query), false);
+            if (hitsById.isEmpty()) {
+                return result;
             }
+        }
+
+        StringBuilder where = new StringBuilder();
+        where.append("WHERE h.user_id = ? ");
+        List<Object> whereParams = new ArrayList<>();
+        whereParams.add(userId);
+
+        if (hitsById != null) {
+            where.append("AND h.highlight_id IN (").append(placeholders(hitsById.size())).append(") ");
+            whereParams.addAll(hitsById.keySet());
+        }
+
+        // 处理各种过滤器
+        if (filters.containsKey("documentId") && filters.get("documentId") != null) {
+            Long documentId = Long.parseLong((String) filters.get("documentId"));
+            where.append("AND h.document_id = ? ");
+            whereParams.add(documentId);
+        }
+
+        if (filters.containsKey("dateFrom") && filters.get("dateFrom") != null) {
+            String dateFrom = (String) filters.get("dateFrom");
+            where.append("AND DATE(h.created_at) >= ? ");
+            whereParams.add(dateFrom);
+        }
+
+        if (filters.containsKey("dateTo") && filters.get("dateTo") != null) {
+            String dateTo = (String) filters.get("dateTo");
+            where.append("AND DATE(h.created_at) <= ? ");
+            whereParams.add(dateTo);
+        }
 
-            if (filters.containsKey("documentId") && filters.get("documentId") != null) {
-                Long documentId = Long.parseLong((String) filters.get("documentId"));
-                sqlBuilder.append("AND h.document_id = ? ");
-                params.add(documentId);
+        // 1. 总数
+        String countSql = "SELECT COUNT(*) FROM document_highlights h INNER JOIN documents d ON h.document_id = d.document_id " + where;
+        Integer total = jdbcTemplate.queryForObject(countSql, Integer.class, whereParams.toArray());
+        result.setTotal(total != null ? total : 0);
+        if (result.getTotal() == 0) {
+            return result;
+        }
+
+        // 2. 取本页高亮
+        StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("SELECT h.highlight_id, h.text, h.note, h.created_at, ");
+        sqlBuilder.append("h.page, d.document_id, d.title as document_title ");
+        sqlBuilder.append("FROM document_highlights h ");
+        sqlBuilder.append("INNER JOIN documents d ON h.document_id = d.document_id ");
+        sqlBuilder.append(where);
+        List<Object> params = new ArrayList<>(whereParams);
+
+        if (hitsById == null) {
+            if (!window.appendKeyset(sqlBuilder, params, "highlight", "h.created_at", "h.highlight_id")) {
+                return result;
             }
+            sqlBuilder.append(window.keysetOrderBy("h.created_at", "h.highlight_id")).append("LIMIT ?");
+            params.add(window.getFetchSize());
+        }
 
-            if (filters.containsKey("dateFrom") && filters.get("dateFrom") != null) {
-                String dateFrom = (String) filters.get("dateFrom");
-                sqlBuilder.append("AND DATE(h.created_at) >= ? ");
-                params.add(dateFrom);
+        Map<Long, Map<String, Object>> highlights = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        for (Map<String, Object> highlight : jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray())) {
+            long highlightId = ((Number) highlight.get("highlight_id")).longValue();
+            double relevance = hitsById != null ? hitsById.get(highlightId).getRelevance() : 0.0;
+            highlights.put(highlightId, highlight);
+            keys.add(SearchCursor.of(relevance, highlight.get("created_at"), "highlight", highlightId));
+        }
+
+        for (SearchCursor key : window.page(keys)) {
+            Map<String, Object> highlight = highlights.get(key.getEntityId());
+
+            AdvancedSearchItem item = new AdvancedSearchItem();
+            Long highlightId = key.getEntityId();
+            Long docId = ((Number) highlight.get("document_id")).longValue();
+
+            item.setId("highlight_" + highlightId);
+            item.setType("highlight");
+            item.setSelectedText((String) highlight.get("text"));
+            item.setNote((String) highlight.get("note"));
+            item.setDocumentTitle((String) highlight.get("document_title"));
+            item.setDocumentId(docId);
+            item.setPageNumber(highlight.get("page") != null ?
+                    ((Number) highlight.get("page")).intValue() : 0);
+
+            // 生成标题和摘要
+            String selectedText = (String) highlight.get("text");
+            String noteText = (String) highlight.get("note");
+
+            if (selectedText != null) {
+                // 取选中的文本作为标题
+                if (selectedText.length() > 60) {
+                    item.setTitle(selectedText.substring(0, 60) + "...");
+                } else {
+                    item.setTitle(selectedText);
+                }
             }
 
-            if (filters.containsKey("dateTo") && filters.get("dateTo") != null) {
-                String dateTo = (String) filters.get("dateTo");
-                sqlBuilder.append("AND DATE(h.created_at) <= ? ");
-                params.add(dateTo);
+            // 生成摘要：优先使用选中的文本，如果没有则使用笔记
+            String excerptSource = selectedText;
+            if (excerptSource == null || excerptSource.isEmpty()) {
+                excerptSource = noteText;
             }
+            item.setExcerpt(SearchTokenizer.excerpt(excerptSource, query, 120));
 
-            // 添加排序和分页
-            sqlBuilder.append("ORDER BY h.created_at DESC LIMIT ? OFFSET ?");
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> highlights = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (Map<String, Object> highlight : highlights) {
-                AdvancedSearchItem item = new AdvancedSearchItem();
-                Long highlightId = ((Number) highlight.get("highlight_id")).longValue();
-                Long docId = ((Number) highlight.get("document_id")).longValue();
-
-                item.setId("highlight_" + highlightId);
-                item.setType("highlight");
-                item.setSelectedText((String) highlight.get("selected_text"));
-                item.setNote((String) highlight.get("note"));
-                item.setDocumentTitle((String) highlight.get("document_title"));
-                item.setDocumentId(docId);
-                item.setPageNumber(highlight.get("page_number") != null ?
-                        ((Number) highlight.get("page_number")).intValue() : 0);
-
-                // 生成标题和摘要
-                String selectedText = (String) highlight.get("selected_text");
-                String noteText = (String) highlight.get("note");
-
-                if (selectedText != null) {
-                    // 取选中的文本作为标题
-                    if (selectedText.length() > 60) {
-                        item.setTitle(selectedText.substring(0, 60) + "...");
-                    } else {
-                        item.setTitle(selectedText);
-                    }
-
-                    // 生成摘要：优先使用选中的文本，如果没有则使用笔记
-                    String excerptSource = selectedText;
-                    if (excerptSource == null || excerptSource.isEmpty()) {
-                        excerptSource = noteText;
-                    }
-
-                    if (excerptSource != null && excerptSource.length() > 120) {
-                        item.setExcerpt(excerptSource.substring(0, 120) + "...");
-                    } else {
-                        item.setExcerpt(excerptSource);
-                    }
-                }
+            item.setRelevance(key.getRelevance());
 
-                // 计算相关性
-                String query = filters.containsKey("query") ? (String) filters.get("query") : "";
-                double relevance = calculateHighlightRelevance(query, selectedText, noteText);
-                item.setRelevance(relevance);
+            // 构建高亮信息
+            Map<String, Object> hl = new HashMap<>();
+            hl.put("selectedText", highlightText(query, selectedText));
+            hl.put("note", highlightText(query, noteText));
+            item.setHighlight(hl);
 
-                // 构建高亮信息
-                Map<String, Object> hl = new HashMap<>();
-                hl.put("selectedText", highlightText(query, selectedText));
-                hl.put("note", highlightText(query, noteText));
-                item.setHighlight(hl);
+            item.setCreatedAt(highlight.get("created_at") != null ?
+                    highlight.get("created_at").toString() : null);
+            item.setUrl("/reader/highlight/" + highlightId + "?document=" + docId);
 
-                item.setCreatedAt(highlight.get("created_at") != null ?
-                        highlight.get("created_at").toString() : null);
-                item.setUrl("/reader/highlight/" + highlightId + "?document=" + docId);
+            result.add(key, item);
+        }
 
-                results.add(item);
-            }
+        return result;
+    }
 
-        } catch (Exception e) {
-            System.err.println("高级高亮搜索时发生错误: " + e.getMessage());
+    // 索引命中按排名放入有序 Map：文档按 documentId，笔记 / 高亮按自身 id
+    private Map<Long, SearchIndexService.SearchHit> indexHits(List<SearchIndexService.SearchHit> hits, boolean byDocument) {
+        Map<Long, SearchIndexService.SearchHit> hitsById = new LinkedHashMap<>();
+        for (SearchIndexService.SearchHit hit : hits) {
+            hitsById.putIfAbsent(byDocument ? hit.getDocumentId() : hit.getId(), hit);
         }
+        return hitsById;
+    }
 
-        return results;
+    // 生成 IN (...) 的占位符
+    private String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("?");
+        }
+        return sb.toString();
     }
 
     // 从token获取用户ID
@@ -843,8 +1033,7 @@ public class SearchAdvanced {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
@@ -855,32 +1044,6 @@ public class SearchAdvanced {
         return null;
     }
 
-    // 计算文档相关性
-    private double calculateDocumentRelevance(String query, String title, String content) {
-        if (title == null) title = "";
-        if (content == null) content = "";
-
-        String lowerQuery = query.toLowerCase();
-        String lowerTitle = title.toLowerCase();
-        String lowerContent = content.toLowerCase();
-
-        double score = 0.0;
-
-        if (lowerTitle.contains(lowerQuery)) {
-            score += 0.7;
-        }
-
-        if (lowerContent.contains(lowerQuery)) {
-            score += 0.3;
-        }
-
-        if (title.contains(query) || content.contains(query)) {
-            score += 0.2;
-        }
-
-        return Math.min(score, 1.0);
-    }
-
     // 计算词汇相关性
     private double calculateVocabularyRelevance(String query, String word, String definition) {
         if (word == null) word = "";
@@ -907,52 +1070,6 @@ public class SearchAdvanced {
         return Math.min(score, 1.0);
     }
 
-    // 计算笔记相关性
-    private double calculateNoteRelevance(String query, String content) {
-        if (content == null) content = "";
-
-        String lowerQuery = query.toLowerCase();
-        String lowerContent = content.toLowerCase();
-
-        double score = 0.0;
-
-        if (lowerContent.contains(lowerQuery)) {
-            score += 1.0;
-        }
-
-        if (content.contains(query)) {
-            score += 0.3;
-        }
-
-        return Math.min(score, 1.0);
-    }
-
-    // 计算高亮相关性
-    private double calculateHighlightRelevance(String query, String selectedText, String note) {
-        if (selectedText == null) selectedText = "";
-        if (note == null) note = "";
-
-        String lowerQuery = query.toLowerCase();
-        String lowerSelectedText = selectedText.toLowerCase();
-        String lowerNote = note.toLowerCase();
-
-        double score = 0.0;
-
-        if (lowerSelectedText.contains(lowerQuery)) {
-            score += 0.7;
-        }
-
-        if (lowerNote.contains(lowerQuery)) {
-            score += 0.3;
-        }
-
-        if (selectedText.contains(query) || note.contains(query)) {
-            score += 0.2;
-        }
-
-        return Math.min(score, 1.0);
-    }
-
     // 高亮文本
     private String highlightText(String query, String text) {
         if (text == null || query == null || query.isEmpty()) {
@@ -962,75 +1079,54 @@ public class SearchAdvanced {
         return text.replaceAll("(?i)(" + query + ")", "<mark>$1</mark>");
     }
 
-    // 获取文档标签
-    private List<String> getDocumentTags(Long documentId) {
-        List<String> tags = new ArrayList<>();
+    // 批量获取文档标签：文档ID -> 标签名
+    private Map<Long, List<String>> getDocumentTags(Collection<Long> documentIds) {
         try {
-            String sql = "SELECT t.tag_name FROM document_tags t " +
-                    "INNER JOIN document_tag_relations r ON t.tag_id = r.tag_id " +
-                    "WHERE r.document_id = ?";
-            List<Map<String, Object>> tagList = jdbcTemplate.queryForList(sql, documentId);
-            for (Map<String, Object> tag : tagList) {
-                tags.add((String) tag.get("tag_name"));
-            }
+            return relationBatchLoader.loadDocumentTagNames(documentIds);
         } catch (Exception e) {
             System.err.println("获取文档标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return tags;
     }
 
-    // 获取单词例句
-    private List<String> getWordExamples(Long wordId) {
-        List<String> examples = new ArrayList<>();
+    // 批量获取单词例句：单词ID -> 最多 3 条例句
+    private Map<Long, List<String>> getWordExamples(Collection<Long> wordIds) {
         try {
-            String sql = "SELECT example_text FROM word_examples WHERE word_id = ? LIMIT 3";
-            List<Map<String, Object>> exampleList = jdbcTemplate.queryForList(sql, wordId);
-            for (Map<String, Object> example : exampleList) {
-                examples.add((String) example.get("example_text"));
-            }
+            return relationBatchLoader.loadWordExampleSentences(wordIds, 3);
         } catch (Exception e) {
             System.err.println("获取单词例句失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return examples;
     }
 
-    // 获取单词标签
-    private List<String> getWordTags(Long wordId) {
-        List<String> tags = new ArrayList<>();
+    // 批量获取用户给单词打的标签：单词ID -> 标签名
+    private Map<Long, List<String>> getWordTags(Long userId, Collection<Long> wordIds) {
+        if (userId == null) return new HashMap<>();
+
         try {
-            String sql = "SELECT vt.tag_name FROM vocabulary_tags vt " +
-                    "INNER JOIN user_vocabulary_tags ut ON vt.tag_id = ut.tag_id " +
-                    "WHERE ut.word_id = ?";
-            List<Map<String, Object>> tagList = jdbcTemplate.queryForList(sql, wordId);
-            for (Map<String, Object> tag : tagList) {
-                tags.add((String) tag.get("tag_name"));
-            }
+            return relationBatchLoader.loadWordTagNames(userId, wordIds);
         } catch (Exception e) {
             System.err.println("获取单词标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return tags;
     }
 
-    // 检查是否在用户生词本中
-    private boolean checkIfInVocabulary(Long userId, Long wordId) {
-        if (userId == null) return false;
+    // 批量检查单词是否在用户生词本中
+    private Set<Long> getWordIdsInVocabulary(Long userId, Collection<Long> wordIds) {
+        if (userId == null) return new HashSet<>();
 
         try {
-            String sql = "SELECT COUNT(*) FROM user_vocabulary WHERE user_id = ? AND word_id = ?";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId, wordId);
-            return count != null && count > 0;
+            return relationBatchLoader.loadWordIdsInVocabulary(userId, wordIds);
         } catch (Exception e) {
             System.err.println("检查生词本失败: " + e.getMessage());
-            return false;
+            return new HashSet<>();
         }
     }
 
     // 保存搜索历史
     private void saveSearchHistory(Long userId, String keyword, String searchType, int resultCount) {
         try {
-            String sql = "INSERT INTO search_history (user_id, keyword, search_type, result_count, timestamp) " +
-                    "VALUES (?, ?, ?, ?, NOW())";
-            jdbcTemplate.update(sql, userId, keyword, searchType, resultCount);
+            searchHistoryRecorder.record(userId, keyword, searchType, resultCount);
             System.out.println("已保存高级搜索历史: 用户=" + userId + ", 关键词=" + keyword);
         } catch (Exception e) {
             System.err.println("保存搜索历史失败: " + e.getMessage());
@@ -3,16 +3,20 @@ package com.vue.readingapp.search;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.suggest.SuggestionService;
 
 @RestController
 @RequestMapping("/api/v1/search")
 public class SearchAutocomplete {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
 
     // 打印接收到的请求
     private void printRequest(Object request) {
@@ -134,7 +138,7 @@ public class SearchAutocomplete {
                 items.addAll(getHistorySuggestions(query, userId, limit));
             }
 
-            // 4. 按相关性排序并限制数量
+            // 4. 按相关性排序并限制数量（排序是稳定的，相关性相同时保持联想服务给出的权重顺序）
             items.sort((a, b) -> Double.compare(b.getRelevance(), a.getRelevance()));
             if (items.size() > limit) {
                 items = items.subList(0, limit);
@@ -163,139 +167,54 @@ public class SearchAutocomplete {
     // 从文档标题获取联想
     private List<AutocompleteItem> getDocumentSuggestions(String query, Long userId, int limit) {
         List<AutocompleteItem> items = new ArrayList<>();
-
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT document_id, title FROM documents ");
-            sqlBuilder.append("WHERE title LIKE ? AND status = 'processed' ");
-
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-
-            if (userId != null) {
-                sqlBuilder.append("AND user_id = ? ");
-                params.add(userId);
-            }
-
-            sqlBuilder.append("ORDER BY created_at DESC LIMIT ?");
-            params.add(limit);
-
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (int i = 0; i < documents.size(); i++) {
-                Map<String, Object> doc = documents.get(i);
-                String title = (String) doc.get("title");
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, title, null);
-
-                // 构建联想项
-                AutocompleteItem item = new AutocompleteItem(
-                        "doc_" + doc.get("document_id"),
-                        title,
-                        "document",
-                        relevance,
-                        "",
-                        ""
-                );
-                items.add(item);
-            }
-
-        } catch (Exception e) {
-            System.err.println("获取文档联想失败: " + e.getMessage());
+        for (SuggestionService.Suggestion suggestion : suggestionService.suggest(
+                userId, query, SuggestionService.SOURCE_DOCUMENTS, null, limit)) {
+            items.add(new AutocompleteItem(
+                    "doc_" + suggestion.getRefId(),
+                    suggestion.getText(),
+                    "document",
+                    calculateRelevance(query, suggestion.getText(), null),
+                    "",
+                    ""
+            ));
         }
-
         return items;
     }
 
     // 从词汇获取联想
     private List<AutocompleteItem> getVocabularySuggestions(String query, Long userId, int limit) {
         List<AutocompleteItem> items = new ArrayList<>();
-
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT word_id, word FROM words ");
-            sqlBuilder.append("WHERE word LIKE ? ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(query + "%");
-
-            sqlBuilder.append("ORDER BY word ASC LIMIT ?");
-            params.add(limit);
-
-            List<Map<String, Object>> words = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (int i = 0; i < words.size(); i++) {
-                Map<String, Object> word = words.get(i);
-                String wordText = (String) word.get("word");
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, wordText, null);
-
-                // 构建联想项
-                AutocompleteItem item = new AutocompleteItem(
-                        "word_" + word.get("word_id"),
-                        wordText,
-                        "vocabulary",
-                        relevance,
-                        "",
-                        ""
-                );
-                items.add(item);
-            }
-
-        } catch (Exception e) {
-            System.err.println("获取词汇联想失败: " + e.getMessage());
+        for (SuggestionService.Suggestion suggestion : suggestionService.suggest(
+                userId, query, SuggestionService.SOURCE_VOCABULARY, null, limit)) {
+            items.add(new AutocompleteItem(
+                    "word_" + suggestion.getRefId(),
+                    suggestion.getText(),
+                    "vocabulary",
+                    calculateRelevance(query, suggestion.getText(), null),
+                    "",
+                    ""
+            ));
         }
-
         return items;
     }
 
-    // 从搜索历史获取联想
+    // 从搜索历史获取联想（同一关键词的不同搜索类型只保留一条）
     private List<AutocompleteItem> getHistorySuggestions(String query, Long userId, int limit) {
         List<AutocompleteItem> items = new ArrayList<>();
-
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT DISTINCT keyword FROM search_history ");
-            sqlBuilder.append("WHERE keyword LIKE ? ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(query + "%");
-
-            if (userId != null) {
-                sqlBuilder.append("AND user_id = ? ");
-                params.add(userId);
-            }
-
-            sqlBuilder.append("ORDER BY MAX(timestamp) DESC LIMIT ?");
-            params.add(limit);
-
-            List<Map<String, Object>> history = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (int i = 0; i < history.size(); i++) {
-                Map<String, Object> record = history.get(i);
-                String keyword = (String) record.get("keyword");
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, keyword, null);
-
-                // 构建联想项
-                AutocompleteItem item = new AutocompleteItem(
-                        "history_" + i,
-                        keyword,
+        Set<String> keywords = new HashSet<>();
+        for (SuggestionService.Suggestion suggestion : suggestionService.suggest(
+                userId, query, SuggestionService.SOURCE_HISTORY, null, limit * 2)) {
+            if (items.size() < limit && keywords.add(suggestion.getText().toLowerCase())) {
+                items.add(new AutocompleteItem(
+                        "history_" + items.size(),
+                        suggestion.getText(),
                         "history",
-                        relevance,
+                        calculateRelevance(query, suggestion.getText(), null),
                         "",
                         ""
-                );
-                items.add(item);
+                ));
             }
-
-        } catch (Exception e) {
-            System.err.println("获取历史联想失败: " + e.getMessage());
         }
-
         return items;
     }
 
@@ -333,8 +252,7 @@ public class SearchAutocomplete {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
@@ -7,6 +7,11 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.index.SearchTokenizer;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -15,6 +20,18 @@ public class SearchDocuments {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到文档搜索请求 ===");
@@ -247,141 +264,134 @@ public class SearchDocuments {
             // 2. 获取当前用户ID
             Long userId = getUserIdFromToken(authHeader);
 
-            // 3. 构建SQL查询
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT d.document_id, d.title, d.content, d.author, d.language, ");
-            sqlBuilder.append("d.word_count, d.difficulty, d.created_at, d.updated_at, ");
-            sqlBuilder.append("d.thumbnail_url, d.status, d.user_id ");
-            sqlBuilder.append("FROM documents d ");
-            sqlBuilder.append("WHERE (d.title LIKE ? OR d.content LIKE ?) ");
-            sqlBuilder.append("AND d.status = 'processed' ");
-
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-            params.add("%" + query + "%");
-
-            // 添加用户过滤（只能搜索自己的文档）
-            if (userId != null) {
-                sqlBuilder.append("AND d.user_id = ? ");
-                params.add(userId);
-            }
-
-            // 添加语言过滤
-            if (language != null && !language.isEmpty()) {
-                sqlBuilder.append("AND d.language = ? ");
-                params.add(language);
+            // 3. 从全文索引中查找命中的文档（BM25 排序）；索引按用户划分，未登录时没有可搜索的文档
+            List<SearchIndexService.SearchHit> hits = userId != null
+                    ? searchIndexService.searchDocuments(userId, query)
+                    : new ArrayList<>();
+            Map<Long, SearchIndexService.SearchHit> hitsByDocument = new HashMap<>();
+            for (SearchIndexService.SearchHit hit : hits) {
+                hitsByDocument.put(hit.getDocumentId(), hit);
             }
 
-            // 添加难度过滤
-            if (difficulty != null && !difficulty.isEmpty()) {
-                sqlBuilder.append("AND d.difficulty = ? ");
-                params.add(difficulty);
-            }
+            // 4. 按主键回表读取命中的文档并应用过滤条件
+            //    documents 表没有 difficulty / word_count 列，这两类过滤条件不生效
+            List<Map<String, Object>> documents = new ArrayList<>();
+            if (!hits.isEmpty()) {
+                StringBuilder sqlBuilder = new StringBuilder();
+                sqlBuilder.append("SELECT d.document_id, d.title, d.description, d.author, d.language, ");
+                sqlBuilder.append("d.page_count, d.created_at, d.updated_at, d.status, d.user_id ");
+                sqlBuilder.append("FROM documents d WHERE d.document_id IN (");
+
+                List<Object> params = new ArrayList<>();
+                for (int i = 0; i < hits.size(); i++) {
+                    if (i > 0) sqlBuilder.append(", ");
+                    sqlBuilder.append("?");
+                    params.add(hits.get(i).getDocumentId());
+                }
+                sqlBuilder.append(") AND d.deleted_at IS NULL ");
 
-            // 添加标签过滤
-            if (tag != null && !tag.isEmpty()) {
-                sqlBuilder.append("AND EXISTS (SELECT 1 FROM document_tag_relations r ");
-                sqlBuilder.append("INNER JOIN document_tags t ON r.tag_id = t.tag_id ");
-                sqlBuilder.append("WHERE r.document_id = d.document_id AND t.tag_name = ?) ");
-                params.add(tag);
-            }
+                // 添加语言过滤
+                if (language != null && !language.isEmpty()) {
+                    sqlBuilder.append("AND d.language = ? ");
+                    params.add(language);
+                }
 
-            // 添加单词数过滤
-            if (minWordCount != null) {
-                sqlBuilder.append("AND d.word_count >= ? ");
-                params.add(minWordCount);
-            }
+                // 添加标签过滤
+                if (tag != null && !tag.isEmpty()) {
+                    sqlBuilder.append("AND EXISTS (SELECT 1 FROM document_tag_relations r ");
+                    sqlBuilder.append("INNER JOIN document_tags t ON r.tag_id = t.tag_id ");
+                    sqlBuilder.append("WHERE r.document_id = d.document_id AND t.tag_name = ?) ");
+                    params.add(tag);
+                }
 
-            if (maxWordCount != null) {
-                sqlBuilder.append("AND d.word_count <= ? ");
-                params.add(maxWordCount);
-            }
+                // 添加日期过滤
+                if (dateFrom != null && !dateFrom.isEmpty()) {
+                    sqlBuilder.append("AND DATE(d.created_at) >= ? ");
+                    params.add(dateFrom);
+                }
 
-            // 添加日期过滤
-            if (dateFrom != null && !dateFrom.isEmpty()) {
-                sqlBuilder.append("AND DATE(d.created_at) >= ? ");
-                params.add(dateFrom);
-            }
+                if (dateTo != null && !dateTo.isEmpty()) {
+                    sqlBuilder.append("AND DATE(d.created_at) <= ? ");
+                    params.add(dateTo);
+                }
 
-            if (dateTo != null && !dateTo.isEmpty()) {
-                sqlBuilder.append("AND DATE(d.created_at) <= ? ");
-                params.add(dateTo);
+                documents = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
             }
-
-            // 4. 获取总数
-            String countSql = "SELECT COUNT(*) FROM (" + sqlBuilder.toString() + ") AS count_table";
-            int total = jdbcTemplate.queryForObject(countSql, Integer.class, params.toArray());
-
-            // 5. 添加排序和分页
-            if ("relevance".equals(sortBy)) {
-                // 简单相关性排序：标题匹配优先
-                sqlBuilder.append("ORDER BY CASE WHEN d.title LIKE ? THEN 1 ELSE 0 END DESC, ");
-                sqlBuilder.append("d.created_at DESC ");
-                params.add("%" + query + "%");
-            } else if ("createdAt".equals(sortBy)) {
-                sqlBuilder.append("ORDER BY d.created_at ");
-                sqlBuilder.append("desc".equalsIgnoreCase(sortOrder) ? "DESC " : "ASC ");
-            } else if ("wordCount".equals(sortBy)) {
-                sqlBuilder.append("ORDER BY d.word_count ");
-                sqlBuilder.append("desc".equalsIgnoreCase(sortOrder) ? "DESC " : "ASC ");
+            int total = documents.size();
+
+            // 5. 排序：默认按索引相关性，也支持按创建时间
+            boolean descending = !"asc".equalsIgnoreCase(sortOrder);
+            if ("createdAt".equals(sortBy)) {
+                documents.sort((a, b) -> {
+                    String timeA = a.get("created_at") != null ? a.get("created_at").toString() : "";
+                    String timeB = b.get("created_at") != null ? b.get("created_at").toString() : "";
+                    return descending ? timeB.compareTo(timeA) : timeA.compareTo(timeB);
+                });
             } else {
-                sqlBuilder.append("ORDER BY d.created_at DESC ");
+                documents.sort((a, b) -> {
+                    double scoreA = hitsByDocument.get(((Number) a.get("document_id")).longValue()).getScore();
+                    double scoreB = hitsByDocument.get(((Number) b.get("document_id")).longValue()).getScore();
+                    return descending ? Double.compare(scoreB, scoreA) : Double.compare(scoreA, scoreB);
+                });
             }
 
-            sqlBuilder.append("LIMIT ? OFFSET ?");
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            // 6. 执行查询
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-            printQueryResult("找到 " + total + " 个文档，返回 " + documents.size() + " 个");
+            // 6. 分页
+            int fromIndex = Math.min((page - 1) * pageSize, total);
+            int toIndex = Math.min(fromIndex + pageSize, total);
+            List<Map<String, Object>> pagedDocuments = documents.subList(fromIndex, toIndex);
+            printQueryResult("找到 " + total + " 个文档，返回 " + pagedDocuments.size() + " 个");
+
+            // 只为当前页的文档读取命中页正文（用于生成摘要）和标签
+            List<SearchIndexService.SearchHit> pagedHits = new ArrayList<>();
+            List<Long> pagedDocumentIds = new ArrayList<>();
+            for (Map<String, Object> doc : pagedDocuments) {
+                long documentId = ((Number) doc.get("document_id")).longValue();
+                pagedHits.add(hitsByDocument.get(documentId));
+                pagedDocumentIds.add(documentId);
+            }
+            Map<Long, String> pageContents = searchIndexService.loadHitPageContents(pagedHits);
+            Map<Long, List<String>> pageTags = getDocumentTags(pagedDocumentIds);
 
             // 7. 处理结果
             List<DocumentItem> items = new ArrayList<>();
-            for (Map<String, Object> doc : documents) {
+            for (Map<String, Object> doc : pagedDocuments) {
+                Long documentId = ((Number) doc.get("document_id")).longValue();
+                SearchIndexService.SearchHit hit = hitsByDocument.get(documentId);
+
                 DocumentItem item = new DocumentItem();
-                item.setId("doc_" + doc.get("document_id"));
+                item.setId("doc_" + documentId);
                 item.setTitle((String) doc.get("title"));
-                item.setContent((String) doc.get("content"));
-
-                // 生成摘要
-                String content = (String) doc.get("content");
-                if (content != null && content.length() > 200) {
-                    item.setExcerpt(content.substring(0, 200) + "...");
-                } else {
-                    item.setExcerpt(content);
-                }
+                item.setContent((String) doc.get("description"));
+
+                // 生成摘要：优先取命中页中包含关键词的片段，否则取描述
+                String content = pageContents.containsKey(documentId) ? pageContents.get(documentId) : (String) doc.get("description");
+                item.setExcerpt(SearchTokenizer.excerpt(content, query, 200));
 
                 item.setAuthor((String) doc.get("author"));
                 item.setLanguage((String) doc.get("language"));
-                item.setWordCount(doc.get("word_count") != null ? ((Number) doc.get("word_count")).intValue() : 0);
-                item.setDifficulty((String) doc.get("difficulty"));
                 item.setStatus((String) doc.get("status"));
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, (String) doc.get("title"), content);
-                item.setRelevance(relevance);
+                item.setRelevance(hit.getRelevance());
 
                 // 构建高亮信息
                 Map<String, Object> highlight = new HashMap<>();
                 highlight.put("title", highlightText(query, (String) doc.get("title")));
-                highlight.put("content", highlightText(query, content));
+                highlight.put("content", highlightText(query, item.getExcerpt()));
+                if (hit.getPageNumber() > 0) {
+                    highlight.put("pageNumber", hit.getPageNumber());
+                }
                 item.setHighlight(highlight);
 
                 item.setCreatedAt(doc.get("created_at") != null ? doc.get("created_at").toString() : null);
                 item.setUpdatedAt(doc.get("updated_at") != null ? doc.get("updated_at").toString() : null);
-                item.setThumbnail((String) doc.get("thumbnail_url"));
-                item.setUrl("/documents/" + doc.get("document_id"));
+                item.setUrl("/documents/" + documentId);
 
-                // 获取标签
-                List<String> tags = getDocumentTags(((Number) doc.get("document_id")).longValue());
-                item.setTags(tags);
+                item.setTags(pageTags.getOrDefault(documentId, new ArrayList<>()));
 
                 items.add(item);
             }
 
-            // 8. 构建facet数据
-            Map<String, Object> facets = buildDocumentFacets(query, userId, filters);
+            // 8. 构建facet数据（基于过滤后的全部命中文档）
+            Map<String, Object> facets = buildDocumentFacets(documents);
 
             // 9. 记录搜索历史
             if (userId != null) {
@@ -420,8 +430,7 @@ public class SearchDocuments {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
@@ -432,35 +441,6 @@ public class SearchDocuments {
         return null;
     }
 
-    // 计算相关性
-    private double calculateRelevance(String query, String title, String content) {
-        if (title == null) title = "";
-        if (content == null) content = "";
-
-        String lowerQuery = query.toLowerCase();
-        String lowerTitle = title.toLowerCase();
-        String lowerContent = content.toLowerCase();
-
-        double score = 0.0;
-
-        // 标题匹配权重更高
-        if (lowerTitle.contains(lowerQuery)) {
-            score += 0.7;
-        }
-
-        // 内容匹配
-        if (lowerContent.contains(lowerQuery)) {
-            score += 0.3;
-        }
-
-        // 精确匹配加分
-        if (title.contains(query) || content.contains(query)) {
-            score += 0.2;
-        }
-
-        return Math.min(score, 1.0);
-    }
-
     // 高亮文本
     private String highlightText(String query, String text) {
         if (text == null || query == null || query.isEmpty()) {
@@ -470,82 +450,54 @@ public class SearchDocuments {
         return text.replaceAll("(?i)(" + query + ")", "<mark>$1</mark>");
     }
 
-    // 获取文档标签
-    private List<String> getDocumentTags(Long documentId) {
-        List<String> tags = new ArrayList<>();
+    // 批量获取文档标签：文档ID -> 标签名
+    private Map<Long, List<String>> getDocumentTags(Collection<Long> documentIds) {
         try {
-            String sql = "SELECT t.tag_name FROM document_tags t " +
-                    "INNER JOIN document_tag_relations r ON t.tag_id = r.tag_id " +
-                    "WHERE r.document_id = ?";
-            List<Map<String, Object>> tagList = jdbcTemplate.queryForList(sql, documentId);
-            for (Map<String, Object> tag : tagList) {
-                tags.add((String) tag.get("tag_name"));
-            }
+            return relationBatchLoader.loadDocumentTagNames(documentIds);
         } catch (Exception e) {
             System.err.println("获取文档标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return tags;
     }
 
-    // 构建文档facet数据
-    private Map<String, Object> buildDocumentFacets(String query, Long userId, Map<String, Object> filters) {
+    // 构建文档facet数据：语言在内存中统计，标签按命中文档ID聚合
+    private Map<String, Object> buildDocumentFacets(List<Map<String, Object>> documents) {
         Map<String, Object> facets = new HashMap<>();
 
         try {
             // 语言facet
-            String languageSql = "SELECT d.language, COUNT(*) as count FROM documents d " +
-                    "WHERE (d.title LIKE ? OR d.content LIKE ?) AND d.status = 'processed' ";
-
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-            params.add("%" + query + "%");
-
-            if (userId != null) {
-                languageSql += "AND d.user_id = ? ";
-                params.add(userId);
+            Map<String, Integer> languageCounts = new LinkedHashMap<>();
+            for (Map<String, Object> doc : documents) {
+                languageCounts.merge(String.valueOf(doc.get("language")), 1, Integer::sum);
             }
-
-            languageSql += "GROUP BY d.language ORDER BY count DESC";
-
-            List<Map<String, Object>> languageFacet = jdbcTemplate.queryForList(languageSql, params.toArray());
-            facets.put("languages", languageFacet);
-
-            // 难度facet
-            String difficultySql = "SELECT d.difficulty, COUNT(*) as count FROM documents d " +
-                    "WHERE (d.title LIKE ? OR d.content LIKE ?) AND d.status = 'processed' ";
-
-            List<Object> difficultyParams = new ArrayList<>();
-            difficultyParams.add("%" + query + "%");
-            difficultyParams.add("%" + query + "%");
-
-            if (userId != null) {
-                difficultySql += "AND d.user_id = ? ";
-                difficultyParams.add(userId);
+            List<Map<String, Object>> languageFacet = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : languageCounts.entrySet()) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("language", entry.getKey());
+                row.put("count", entry.getValue());
+                languageFacet.add(row);
             }
+            languageFacet.sort((a, b) -> Integer.compare((Integer) b.get("count"), (Integer) a.get("count")));
+            facets.put("languages", languageFacet);
 
-            difficultySql += "GROUP BY d.difficulty ORDER BY count DESC";
-
-            List<Map<String, Object>> difficultyFacet = jdbcTemplate.queryForList(difficultySql, difficultyParams.toArray());
-            facets.put("difficulties", difficultyFacet);
+            // 难度facet（documents 表没有难度字段）
+            facets.put("difficulties", new ArrayList<>());
 
             // 标签facet
-            String tagSql = "SELECT t.tag_name, COUNT(*) as count FROM document_tags t " +
-                    "INNER JOIN document_tag_relations r ON t.tag_id = r.tag_id " +
-                    "INNER JOIN documents d ON r.document_id = d.document_id " +
-                    "WHERE (d.title LIKE ? OR d.content LIKE ?) AND d.status = 'processed' ";
-
-            List<Object> tagParams = new ArrayList<>();
-            tagParams.add("%" + query + "%");
-            tagParams.add("%" + query + "%");
-
-            if (userId != null) {
-                tagSql += "AND d.user_id = ? ";
-                tagParams.add(userId);
+            List<Map<String, Object>> tagFacet = new ArrayList<>();
+            if (!documents.isEmpty()) {
+                StringBuilder tagSql = new StringBuilder("SELECT t.tag_name, COUNT(*) as count FROM document_tags t " +
+                        "INNER JOIN document_tag_relations r ON t.tag_id = r.tag_id " +
+                        "WHERE r.document_id IN (");
+                List<Object> tagParams = new ArrayList<>();
+                for (int i = 0; i < documents.size(); i++) {
+                    if (i > 0) tagSql.append(", ");
+                    tagSql.append("?");
+                    tagParams.add(documents.get(i).get("document_id"));
+                }
+                tagSql.append(") GROUP BY t.tag_id, t.tag_name ORDER BY count DESC LIMIT 20");
+                tagFacet = jdbcTemplate.queryForList(tagSql.toString(), tagParams.toArray());
             }
-
-            tagSql += "GROUP BY t.tag_id, t.tag_name ORDER BY count DESC LIMIT 20";
-
-            List<Map<String, Object>> tagFacet = jdbcTemplate.queryForList(tagSql, tagParams.toArray());
             facets.put("tags", tagFacet);
 
         } catch (Exception e) {
@@ -558,9 +510,7 @@ public class SearchDocuments {
     // 保存搜索历史
     private void saveSearchHistory(Long userId, String keyword, String searchType, int resultCount) {
         try {
-            String sql = "INSERT INTO search_history (user_id, keyword, search_type, result_count, timestamp) " +
-                    "VALUES (?, ?, ?, ?, NOW())";
-            jdbcTemplate.update(sql, userId, keyword, searchType, resultCount);
+            searchHistoryRecorder.record(userId, keyword, searchType, resultCount);
             System.out.println("已保存文档搜索历史: 用户=" + userId + ", 关键词=" + keyword);
         } catch (Exception e) {
             System.err.println("保存搜索历史失败: " + e.getMessage());
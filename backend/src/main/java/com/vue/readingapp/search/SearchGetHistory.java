@@ -6,6 +6,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -14,6 +16,12 @@ public class SearchGetHistory {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到获取搜索历史请求 ===");
@@ -163,6 +171,9 @@ public class SearchGetHistory {
                 );
             }
 
+            // 读取前先写入缓冲中的本人搜索记录
+            searchHistoryRecorder.flushUser(userId);
+
             // 2. 构建SQL查询
             StringBuilder sqlBuilder = new StringBuilder();
             sqlBuilder.append("SELECT search_id, keyword, search_type, result_count, timestamp ");
@@ -263,8 +274,7 @@ public class SearchGetHistory {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
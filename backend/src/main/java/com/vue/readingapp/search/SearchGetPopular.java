@@ -5,7 +5,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import java.sql.Timestamp;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
+import com.vue.readingapp.search.popular.PopularSearchTracker;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -14,6 +18,15 @@ public class SearchGetPopular {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private PopularSearchTracker popularSearchTracker;
+
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到获取热门搜索请求 ===");
@@ -133,71 +146,18 @@ public class SearchGetPopular {
             // 1. 获取当前用户ID（可选，用于个性化推荐）
             Long userId = getUserIdFromToken(authHeader);
 
-            // 2. 根据时间范围构建日期条件
-            String dateCondition = getDateCondition(timeRange);
-
-            // 3. 构建SQL查询
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT keyword, search_type, COUNT(*) as search_count, ");
-            sqlBuilder.append("MAX(timestamp) as last_searched ");
-            sqlBuilder.append("FROM search_history ");
-            sqlBuilder.append("WHERE 1=1 ");
-
-            List<Object> params = new ArrayList<>();
-
-            // 添加日期条件
-            if (dateCondition != null) {
-                sqlBuilder.append("AND timestamp >= ? ");
-                params.add(dateCondition);
-            }
-
-            // 添加类型过滤
-            if (type != null && !type.isEmpty() && !"all".equals(type)) {
-                sqlBuilder.append("AND search_type = ? ");
-                params.add(type);
-            }
-
-            // 添加用户过滤（如果提供用户ID，可以只统计该用户的搜索）
-            if (userId != null) {
-                sqlBuilder.append("AND user_id = ? ");
-                params.add(userId);
-            }
-
-            sqlBuilder.append("GROUP BY keyword, search_type ");
-            sqlBuilder.append("ORDER BY search_count DESC ");
-            sqlBuilder.append("LIMIT ?");
-            params.add(limit);
-
-            // 4. 执行查询
-            List<Map<String, Object>> popularSearches = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-            printQueryResult("找到 " + popularSearches.size() + " 个热门搜索");
-
-            // 5. 处理结果
-            List<PopularItem> items = new ArrayList<>();
-            for (int i = 0; i < popularSearches.size(); i++) {
-                Map<String, Object> search = popularSearches.get(i);
-
-                // 生成趋势（简单实现：根据排名变化）
-                String trend = calculateTrend(i, (String) search.get("keyword"), timeRange);
-
-                PopularItem item = new PopularItem(
-                        (long) (i + 1), // 使用排名作为ID
-                        (String) search.get("keyword"),
-                        (String) search.get("search_type"),
-                        ((Number) search.get("search_count")).intValue(),
-                        trend,
-                        search.get("last_searched").toString()
-                );
-                items.add(item);
-            }
+            // 2. 查询热门搜索：登录用户统计本人的搜索记录，未登录时读取全站统计
+            List<PopularItem> items = userId != null
+                    ? getUserPopularSearches(userId, timeRange, type, limit)
+                    : getGlobalPopularSearches(timeRange, type, limit);
 
-            // 6. 获取总搜索次数
+            // 3. 获取总搜索次数
             int totalCount = 0;
-            for (Map<String, Object> search : popularSearches) {
-                totalCount += ((Number) search.get("search_count")).intValue();
+            for (PopularItem item : items) {
+                totalCount += item.getSearchCount();
             }
 
-            // 7. 准备响应数据
+            // 4. 准备响应数据
             GetPopularData data = new GetPopularData(items, timeRange, totalCount);
             GetPopularResponse response = new GetPopularResponse(true, "获取热门搜索成功", data);
 
@@ -215,13 +175,84 @@ public class SearchGetPopular {
         }
     }
 
+    // 全站热门搜索：由 PopularSearchTracker 的内存统计提供，不扫描 search_history
+    private List<PopularItem> getGlobalPopularSearches(String timeRange, String type, int limit) {
+        List<PopularSearchTracker.PopularSearch> popularSearches = popularSearchTracker.top(timeRange, type, limit);
+        printQueryResult("找到 " + popularSearches.size() + " 个热门搜索");
+
+        List<PopularItem> items = new ArrayList<>();
+        for (int i = 0; i < popularSearches.size(); i++) {
+            PopularSearchTracker.PopularSearch search = popularSearches.get(i);
+            items.add(new PopularItem(
+                    (long) (i + 1), // 使用排名作为ID
+                    search.getKeyword(),
+                    search.getType(),
+                    (int) Math.min(Integer.MAX_VALUE, search.getCount()),
+                    search.getTrend(),
+                    new Timestamp(search.getLastSearched()).toString()
+            ));
+        }
+        return items;
+    }
+
+    // 本人热门搜索：按 user_id 查询 search_history，趋势取全站统计中的趋势
+    private List<PopularItem> getUserPopularSearches(Long userId, String timeRange, String type, int limit) {
+        // 先写入缓冲中的本人搜索记录
+        searchHistoryRecorder.flushUser(userId);
+
+        StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("SELECT keyword, search_type, COUNT(*) as search_count, ");
+        sqlBuilder.append("MAX(timestamp) as last_searched ");
+        sqlBuilder.append("FROM search_history ");
+        sqlBuilder.append("WHERE user_id = ? AND timestamp >= ? ");
+
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(getDateCondition(timeRange));
+
+        // 添加类型过滤
+        if (type != null && !type.isEmpty() && !"all".equals(type)) {
+            sqlBuilder.append("AND search_type = ? ");
+            params.add(type);
+        }
+
+        sqlBuilder.append("GROUP BY keyword, search_type ");
+        sqlBuilder.append("ORDER BY search_count DESC ");
+        sqlBuilder.append("LIMIT ?");
+        params.add(limit);
+
+        List<Map<String, Object>> popularSearches = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
+        printQueryResult("找到 " + popularSearches.size() + " 个热门搜索");
+
+        List<String> keywords = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (Map<String, Object> search : popularSearches) {
+            keywords.add((String) search.get("keyword"));
+            types.add((String) search.get("search_type"));
+        }
+        List<String> trends = popularSearchTracker.trendsOf(timeRange, keywords, types);
+
+        List<PopularItem> items = new ArrayList<>();
+        for (int i = 0; i < popularSearches.size(); i++) {
+            Map<String, Object> search = popularSearches.get(i);
+            items.add(new PopularItem(
+                    (long) (i + 1), // 使用排名作为ID
+                    keywords.get(i),
+                    types.get(i),
+                    ((Number) search.get("search_count")).intValue(),
+                    trends.get(i),
+                    search.get("last_searched").toString()
+            ));
+        }
+        return items;
+    }
+
     // 从token获取用户ID
     private Long getUserIdFromToken(String authHeader) {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
@@ -237,6 +268,9 @@ public class SearchGetPopular {
         Calendar calendar = Calendar.getInstance();
 
         switch (timeRange) {
+            case "hour":
+                calendar.add(Calendar.HOUR_OF_DAY, -1);
+                break;
             case "day":
                 calendar.add(Calendar.DAY_OF_MONTH, -1);
                 break;
@@ -262,22 +296,4 @@ public class SearchGetPopular {
         java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         return sdf.format(calendar.getTime());
     }
-
-    // 计算趋势（简单实现）
-    private String calculateTrend(int currentRank, String keyword, String timeRange) {
-        // 这里应该查询历史排名数据，但为了简化，我们随机生成趋势
-        Random random = new Random(keyword.hashCode() + timeRange.hashCode());
-        int trendValue = random.nextInt(3);
-
-        switch (trendValue) {
-            case 0:
-                return "rising";
-            case 1:
-                return "falling";
-            case 2:
-                return "stable";
-            default:
-                return "stable";
-        }
-    }
 }
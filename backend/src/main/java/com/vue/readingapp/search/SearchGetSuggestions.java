@@ -3,16 +3,20 @@ package com.vue.readingapp.search;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.suggest.SuggestionService;
 
 @RestController
 @RequestMapping("/api/v1/search")
 public class SearchGetSuggestions {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
 
     // 打印接收到的请求
     private void printRequest(Object request) {
@@ -123,7 +127,7 @@ public class SearchGetSuggestions {
             // 2. 获取当前用户ID
             Long userId = getUserIdFromToken(authHeader);
 
-            // 3. 构建SQL查询获取搜索建议
+            // 3. 从联想服务获取搜索建议
             List<SuggestionItem> suggestions = new ArrayList<>();
 
             // 从搜索历史获取建议
@@ -168,146 +172,55 @@ public class SearchGetSuggestions {
     // 从搜索历史获取建议
     private List<SuggestionItem> getSuggestionsFromHistory(String query, Long userId, String type, int limit) {
         List<SuggestionItem> suggestions = new ArrayList<>();
-
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT keyword, search_type, COUNT(*) as count, MAX(timestamp) as last_time ");
-            sqlBuilder.append("FROM search_history ");
-            sqlBuilder.append("WHERE keyword LIKE ? ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(query + "%");
-
-            if (userId != null) {
-                sqlBuilder.append("AND user_id = ? ");
-                params.add(userId);
-            }
-
-            if (type != null && !"all".equals(type)) {
-                sqlBuilder.append("AND search_type = ? ");
-                params.add(type);
-            }
-
-            sqlBuilder.append("GROUP BY keyword, search_type ");
-            sqlBuilder.append("ORDER BY count DESC, last_time DESC ");
-            sqlBuilder.append("LIMIT ?");
-            params.add(limit);
-
-            List<Map<String, Object>> history = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (Map<String, Object> record : history) {
-                String keyword = (String) record.get("keyword");
-                String searchType = (String) record.get("search_type");
-                int count = ((Number) record.get("count")).intValue();
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, keyword);
-
-                // 获取图标
-                String icon = getSuggestionIcon(searchType);
-
-                SuggestionItem item = new SuggestionItem(
-                        "history_" + keyword.hashCode(),
-                        keyword,
-                        searchType,
-                        count,
-                        relevance,
-                        icon
-                );
-                suggestions.add(item);
-            }
-
-        } catch (Exception e) {
-            System.err.println("从搜索历史获取建议失败: " + e.getMessage());
+        for (SuggestionService.Suggestion suggestion : suggestionService.suggest(
+                userId, query, SuggestionService.SOURCE_HISTORY, type, limit)) {
+            String keyword = suggestion.getText();
+            String searchType = suggestion.getSearchType();
+            suggestions.add(new SuggestionItem(
+                    "history_" + keyword.hashCode(),
+                    keyword,
+                    searchType,
+                    suggestion.getCount(),
+                    calculateRelevance(query, keyword),
+                    getSuggestionIcon(searchType)
+            ));
         }
-
         return suggestions;
     }
 
     // 从文档获取建议
     private List<SuggestionItem> getSuggestionsFromDocuments(String query, Long userId, int limit) {
         List<SuggestionItem> suggestions = new ArrayList<>();
-
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT title FROM documents ");
-            sqlBuilder.append("WHERE title LIKE ? AND status = 'processed' ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(query + "%");
-
-            if (userId != null) {
-                sqlBuilder.append("AND user_id = ? ");
-                params.add(userId);
-            }
-
-            sqlBuilder.append("ORDER BY created_at DESC LIMIT ?");
-            params.add(limit);
-
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (Map<String, Object> doc : documents) {
-                String title = (String) doc.get("title");
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, title);
-
-                SuggestionItem item = new SuggestionItem(
-                        "doc_" + title.hashCode(),
-                        title,
-                        "documents",
-                        1,
-                        relevance,
-                        "document-text"
-                );
-                suggestions.add(item);
-            }
-
-        } catch (Exception e) {
-            System.err.println("从文档获取建议失败: " + e.getMessage());
+        for (SuggestionService.Suggestion suggestion : suggestionService.suggest(
+                userId, query, SuggestionService.SOURCE_DOCUMENTS, null, limit)) {
+            String title = suggestion.getText();
+            suggestions.add(new SuggestionItem(
+                    "doc_" + title.hashCode(),
+                    title,
+                    "documents",
+                    1,
+                    calculateRelevance(query, title),
+                    "document-text"
+            ));
         }
-
         return suggestions;
     }
 
     // 从词汇获取建议
     private List<SuggestionItem> getSuggestionsFromVocabulary(String query, Long userId, int limit) {
         List<SuggestionItem> suggestions = new ArrayList<>();
-
-        try {
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("SELECT word FROM words ");
-            sqlBuilder.append("WHERE word LIKE ? ");
-
-            List<Object> params = new ArrayList<>();
-            params.add(query + "%");
-
-            sqlBuilder.append("ORDER BY word ASC LIMIT ?");
-            params.add(limit);
-
-            List<Map<String, Object>> words = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
-
-            for (Map<String, Object> word : words) {
-                String wordText = (String) word.get("word");
-
-                // 计算相关性
-                double relevance = calculateRelevance(query, wordText);
-
-                SuggestionItem item = new SuggestionItem(
-                        "word_" + wordText.hashCode(),
-                        wordText,
-                        "vocabulary",
-                        1,
-                        relevance,
-                        "book-open"
-                );
-                suggestions.add(item);
-            }
-
-        } catch (Exception e) {
-            System.err.println("从词汇获取建议失败: " + e.getMessage());
+        for (SuggestionService.Suggestion suggestion : suggestionService.suggest(
+                userId, query, SuggestionService.SOURCE_VOCABULARY, null, limit)) {
+            String wordText = suggestion.getText();
+            suggestions.add(new SuggestionItem(
+                    "word_" + wordText.hashCode(),
+                    wordText,
+                    "vocabulary",
+                    1,
+                    calculateRelevance(query, wordText),
+                    "book-open"
+            ));
         }
-
         return suggestions;
     }
 
@@ -350,8 +263,8 @@ public class SearchGetSuggestions {
 
     // 去重和排序
     private List<SuggestionItem> deduplicateAndSort(List<SuggestionItem> suggestions, int limit) {
-        // 使用Map去重，以keyword为键
-        Map<String, SuggestionItem> uniqueMap = new HashMap<>();
+        // 使用Map去重，以keyword为键；LinkedHashMap 保持联想服务给出的权重顺序，相关性相同时按权重排列
+        Map<String, SuggestionItem> uniqueMap = new LinkedHashMap<>();
 
         for (SuggestionItem item : suggestions) {
             String key = item.getKeyword() + "_" + item.getType();
@@ -390,8 +303,7 @@ public class SearchGetSuggestions {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
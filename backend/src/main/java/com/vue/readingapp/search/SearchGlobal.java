@@ -6,11 +6,20 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.federated.FederatedSearchExecutor;
+import com.vue.readingapp.search.federated.SearchCursor;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.index.SearchTokenizer;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
+import com.vue.readingapp.vocabulary.DictionaryCache;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -19,6 +28,28 @@ public class SearchGlobal {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private FederatedSearchExecutor federatedSearchExecutor;
+
+    @Autowired
+    private DictionaryCache dictionaryCache;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
+    // 词汇搜索取的候选词条上限，也是词汇结果总数的上限
+    @Value("${app.search.federated.max-vocabulary-candidates:500}")
+    private int maxVocabularyCandidates;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到全局搜索请求 ===");
@@ -103,6 +134,8 @@ public class SearchGlobal {
         private Map<String, Object> facets;
         private long queryTime;
         private String type;
+        private String nextCursor;
+        private List<String> failedSources = new ArrayList<>();
 
         public SearchData(int total, int page, int pageSize, int totalPages,
                           List<SearchItem> items, Map<String, Object> facets,
@@ -140,6 +173,13 @@ public class SearchGlobal {
 
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
+
+        public String getNextCursor() { return nextCursor; }
+        public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+        // 超时或出错、结果未包含在本次响应中的数据源
+        public List<String> getFailedSources() { return failedSources; }
+        public void setFailedSources(List<String> failedSources) { this.failedSources = failedSources; }
     }
 
     // 搜索项DTO - 合并所有字段
@@ -304,6 +344,7 @@ public class SearchGlobal {
             @RequestParam(required = false, defaultValue = "20") Integer pageSize,
             @RequestParam(required = false, defaultValue = "relevance") String sortBy,
             @RequestParam(required = false, defaultValue = "desc") String sortOrder,
+            @RequestParam(required = false) String cursor,
             @RequestHeader(value = "Authorization", required = false) String authHeader) {
 
         long startTime = System.currentTimeMillis();
@@ -348,8 +389,7 @@ public class SearchGlobal {
                 String token = authHeader.substring(7);
                 // 简单解析token获取用户ID（课设简化处理）
                 try {
-                    String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                    List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                    List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                     if (!sessions.isEmpty()) {
                         userId = ((Number) sessions.get(0).get("user_id")).longValue();
                     }
@@ -358,75 +398,61 @@ public class SearchGlobal {
                 }
             }
 
-            // 3. 根据类型执行搜索
-            List<SearchItem> allResults = new ArrayList<>();
-            int totalResults = 0;
+            // 3. 解析分页游标：带游标时从游标之后取一页，否则按页码取前 page * pageSize 条
+            SearchCursor after = null;
+            if (cursor != null && !cursor.isEmpty()) {
+                try {
+                    after = SearchCursor.decode(cursor);
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(
+                            new SearchResponse(false, "无效的分页游标", null)
+                    );
+                }
+            }
+            // 每页条数有上限；按页码访问最多翻到 max-window 条，更深的结果需要用游标
+            page = Math.max(1, page != null ? page : 1);
+            pageSize = federatedSearchExecutor.clampPageSize(pageSize);
+            if (after == null && federatedSearchExecutor.exceedsWindow(page, pageSize)) {
+                return ResponseEntity.badRequest().body(
+                        new SearchResponse(false, "页码超出范围：按页码最多访问前 " + federatedSearchExecutor.getMaxWindow()
+                                + " 条结果，之后请使用 cursor 翻页", null)
+                );
+            }
+            int limit = after != null ? pageSize : page * pageSize;
+            FederatedSearchExecutor.Window window = new FederatedSearchExecutor.Window(sortBy, sortOrder, after, limit);
 
+            // 4. 并行执行各类搜索，合并为一个有序结果
+            final Long searchUserId = userId;
+            Map<String, FederatedSearchExecutor.Source<SearchItem>> sources = new LinkedHashMap<>();
             if ("all".equals(type) || "documents".equals(type)) {
-                // 搜索文档
-                List<SearchItem> documentResults = searchDocuments(query, userId, page, pageSize);
-                allResults.addAll(documentResults);
-                totalResults += documentResults.size();
+                sources.put("documents", w -> searchDocuments(query, searchUserId, w));
             }
-
             if ("all".equals(type) || "vocabulary".equals(type)) {
-                // 搜索词汇
-                List<SearchItem> vocabularyResults = searchVocabulary(query, userId, page, pageSize);
-                allResults.addAll(vocabularyResults);
-                totalResults += vocabularyResults.size();
+                sources.put("vocabulary", w -> searchVocabulary(query, searchUserId, w));
             }
-
             if ("all".equals(type) || "notes".equals(type)) {
-                // 搜索笔记
-                List<SearchItem> noteResults = searchNotes(query, userId, page, pageSize);
-                allResults.addAll(noteResults);
-                totalResults += noteResults.size();
+                sources.put("notes", w -> searchNotes(query, searchUserId, w));
             }
-
             if ("all".equals(type) || "highlights".equals(type)) {
-                // 搜索高亮
-                List<SearchItem> highlightResults = searchHighlights(query, userId, page, pageSize);
-                allResults.addAll(highlightResults);
-                totalResults += highlightResults.size();
-            }
-
-            // 4. 排序结果（根据相关性）
-            if ("relevance".equals(sortBy)) {
-                allResults.sort((a, b) -> {
-                    if ("desc".equals(sortOrder)) {
-                        return Double.compare(b.getRelevance(), a.getRelevance());
-                    } else {
-                        return Double.compare(a.getRelevance(), b.getRelevance());
-                    }
-                });
-            } else if ("createdAt".equals(sortBy)) {
-                allResults.sort((a, b) -> {
-                    if ("desc".equals(sortOrder)) {
-                        return b.getCreatedAt().compareTo(a.getCreatedAt());
-                    } else {
-                        return a.getCreatedAt().compareTo(b.getCreatedAt());
-                    }
-                });
+                sources.put("highlights", w -> searchHighlights(query, searchUserId, w));
             }
 
-            // 5. 分页处理
-            int startIndex = (page - 1) * pageSize;
-            int endIndex = Math.min(startIndex + pageSize, allResults.size());
-            List<SearchItem> pagedResults = allResults.subList(startIndex, endIndex);
+            FederatedSearchExecutor.Result<SearchItem> result = federatedSearchExecutor.execute(sources, window);
+            int totalResults = result.getTotal();
 
-            // 6. 计算分页信息
-            int totalPages = (int) Math.ceil((double) allResults.size() / pageSize);
-
-            // 7. 构建facet数据
-            Map<String, Object> facets = new HashMap<>();
-            Map<String, Long> typeFacet = new HashMap<>();
+            // 5. 分页处理：按页码访问时只保留最后一页
+            List<SearchItem> pagedResults = result.getItems();
+            if (after == null) {
+                int startIndex = Math.min((page - 1) * pageSize, pagedResults.size());
+                pagedResults = pagedResults.subList(startIndex, pagedResults.size());
+            }
 
-            typeFacet.put("documents", allResults.stream().filter(item -> "document".equals(item.getType())).count());
-            typeFacet.put("vocabulary", allResults.stream().filter(item -> "vocabulary".equals(item.getType())).count());
-            typeFacet.put("notes", allResults.stream().filter(item -> "note".equals(item.getType())).count());
-            typeFacet.put("highlights", allResults.stream().filter(item -> "highlight".equals(item.getType())).count());
+            // 6. 计算分页信息（只计入按页码可以访问到的页）
+            int totalPages = federatedSearchExecutor.totalPages(totalResults, pageSize);
 
-            facets.put("type", typeFacet);
+            // 7. 构建facet数据：各类型的命中总数来自各数据源的聚合计数
+            Map<String, Object> facets = new HashMap<>(result.getFacets());
+            facets.put("type", result.getTotals());
 
             // 8. 记录搜索历史
             if (userId != null) {
@@ -438,7 +464,7 @@ public class SearchGlobal {
 
             // 10. 准备响应数据
             SearchData searchData = new SearchData(
-                    allResults.size(),
+                    totalResults,
                     page,
                     pageSize,
                     totalPages,
@@ -447,11 +473,13 @@ public class SearchGlobal {
                     queryTime,
                     type
             );
+            searchData.setNextCursor(result.getNextCursor());
+            searchData.setFailedSources(result.getFailedSources());
 
             SearchResponse response = new SearchResponse(true, "搜索成功", searchData);
 
             // 打印查询结果
-            printQueryResult("找到 " + allResults.size() + " 个结果，返回 " + pagedResults.size() + " 个");
+            printQueryResult("找到 " + totalResults + " 个结果，返回 " + pagedResults.size() + " 个");
 
             // 打印返回数据
             printResponse(response);
@@ -467,357 +495,430 @@ public class SearchGlobal {
         }
     }
 
-    // 搜索文档
-    private List<SearchItem> searchDocuments(String query, Long userId, int page, int pageSize) {
-        List<SearchItem> results = new ArrayList<>();
+    // 搜索文档：从用户的全文索引取命中（BM25 排序），按排序键分页后再回表读取展示字段
+    private FederatedSearchExecutor.SourceResult<SearchItem> searchDocuments(String query, Long userId,
+                                                                               FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<SearchItem> result = FederatedSearchExecutor.SourceResult.empty();
 
-        try {
-            // 修正：documents 表没有 content 字段，内容在 description 中，或者需要关联查询
-            String sql = "SELECT d.document_id, d.title, d.description as content, d.author, d.language, " +
-                    "d.created_at, d.updated_at, d.status " +
-                    "FROM documents d " +
-                    "WHERE (d.title LIKE ? OR d.description LIKE ?) ";
-
-            if (userId != null) {
-                sql += "AND d.user_id = ? ";
-            }
+        // 索引按用户划分，未登录时没有可搜索的文档
+        if (userId == null) {
+            return result;
+        }
 
-            sql += "ORDER BY d.created_at DESC LIMIT ? OFFSET ?";
+        Map<Long, SearchIndexService.SearchHit> hitsById = new LinkedHashMap<>();
+        for (SearchIndexService.SearchHit hit : searchIndexService.searchDocuments(userId, query)) {
+            hitsById.put(hit.getDocumentId(), hit);
+        }
+        if (hitsById.isEmpty()) {
+            return result;
+        }
 
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-            params.add("%" + query + "%");
-            if (userId != null) {
-                params.add(userId);
+        // 1. 取全部命中文档的排序键，同时得到总数和语言分面
+        String keySql = "SELECT d.document_id, d.created_at, d.language FROM documents d " +
+                "WHERE d.document_id IN (" + placeholders(hitsById.size()) + ") AND d.user_id = ? AND d.deleted_at IS NULL";
+        List<Object> keyParams = new ArrayList<>(hitsById.keySet());
+        keyParams.add(userId);
+
+        List<SearchCursor> keys = new ArrayList<>();
+        Map<String, Integer> languages = new TreeMap<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(keySql, keyParams.toArray())) {
+            long documentId = ((Number) row.get("document_id")).longValue();
+            keys.add(SearchCursor.of(hitsById.get(documentId).getRelevance(), row.get("created_at"), "document", documentId));
+            if (row.get("language") != null) {
+                languages.merge((String) row.get("language"), 1, Integer::sum);
             }
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> documents = jdbcTemplate.queryForList(sql, params.toArray());
-
-            for (Map<String, Object> doc : documents) {
-                SearchItem item = new SearchItem();
-                item.setId("doc_" + doc.get("document_id"));
-                item.setType("document");
-                item.setTitle((String) doc.get("title"));
-                item.setContent((String) doc.get("content"));
-
-                // 生成摘要
-                String content = (String) doc.get("content");
-                if (content != null && content.length() > 200) {
-                    item.setExcerpt(content.substring(0, 200) + "...");
-                } else {
-                    item.setExcerpt(content != null ? content : "");
-                }
+        }
+        result.setTotal(keys.size());
+        result.putFacet("languages", languages);
+        result.putFacet("tags", countDocumentTags(keys));
+
+        // 2. 只为本页读取展示字段
+        List<SearchCursor> page = window.page(keys);
+        if (page.isEmpty()) {
+            return result;
+        }
 
-                item.setAuthor((String) doc.get("author"));
-                item.setLanguage((String) doc.get("language"));
-                item.setWordCount(doc.get("word_count") != null ? ((Number) doc.get("word_count")).intValue() : 0);
-                item.setDifficulty((String) doc.get("difficulty"));
+        List<Object> ids = new ArrayList<>();
+        List<SearchIndexService.SearchHit> pageHits = new ArrayList<>();
+        for (SearchCursor key : page) {
+            ids.add(key.getEntityId());
+            pageHits.add(hitsById.get(key.getEntityId()));
+        }
 
-                // 计算相关性（简单实现）
-                double relevance = calculateRelevance(query, (String) doc.get("title"), (String) doc.get("content"));
-                item.setRelevance(relevance);
+        String sql = "SELECT d.document_id, d.title, d.description, d.author, d.language, " +
+                "d.created_at, d.updated_at, d.status " +
+                "FROM documents d " +
+                "WHERE d.document_id IN (" + placeholders(ids.size()) + ")";
 
-                // 构建高亮信息
-                Map<String, Object> highlight = new HashMap<>();
-                highlight.put("title", highlightText(query, (String) doc.get("title")));
-                highlight.put("content", highlightText(query, content));
-                item.setHighlight(highlight);
+        Map<Long, Map<String, Object>> documents = new HashMap<>();
+        for (Map<String, Object> doc : jdbcTemplate.queryForList(sql, ids.toArray())) {
+            documents.put(((Number) doc.get("document_id")).longValue(), doc);
+        }
+        Map<Long, String> pageContents = searchIndexService.loadHitPageContents(pageHits);
+        Map<Long, List<String>> pageTags = getDocumentTags(documents.keySet());
 
-                item.setCreatedAt(doc.get("created_at") != null ? doc.get("created_at").toString() : null);
-                item.setUpdatedAt(doc.get("updated_at") != null ? doc.get("updated_at").toString() : null);
-                item.setThumbnail((String) doc.get("thumbnail_url"));
-                item.setUrl("/documents/" + doc.get("document_id"));
+        for (SearchCursor key : page) {
+            Map<String, Object> doc = documents.get(key.getEntityId());
+            if (doc == null) {
+                continue;
+            }
+            SearchIndexService.SearchHit hit = hitsById.get(key.getEntityId());
+
+            SearchItem item = new SearchItem();
+            item.setId("doc_" + doc.get("document_id"));
+            item.setType("document");
+            item.setTitle((String) doc.get("title"));
+            item.setContent((String) doc.get("description"));
+
+            // 生成摘要：优先取命中页中包含关键词的片段，否则取描述
+            String content = pageContents.containsKey(key.getEntityId())
+                    ? pageContents.get(key.getEntityId()) : (String) doc.get("description");
+            String excerpt = SearchTokenizer.excerpt(content, query, 200);
+            item.setExcerpt(excerpt != null ? excerpt : "");
+
+            item.setAuthor((String) doc.get("author"));
+            item.setLanguage((String) doc.get("language"));
+
+            // 相关性来自索引的 BM25 得分（归一化到 0~1）
+            item.setRelevance(hit.getRelevance());
+
+            // 构建高亮信息
+            Map<String, Object> highlight = new HashMap<>();
+            highlight.put("title", highlightText(query, (String) doc.get("title")));
+            highlight.put("content", highlightText(query, excerpt));
+            if (hit.getPageNumber() > 0) {
+                highlight.put("pageNumber", hit.getPageNumber());
+            }
+            item.setHighlight(highlight);
 
-                // 获取标签
-                List<String> tags = getDocumentTags(((Number) doc.get("document_id")).longValue());
-                item.setTags(tags);
+            item.setCreatedAt(doc.get("created_at") != null ? doc.get("created_at").toString() : null);
+            item.setUpdatedAt(doc.get("updated_at") != null ? doc.get("updated_at").toString() : null);
+            item.setUrl("/documents/" + doc.get("document_id"));
 
-                results.add(item);
-            }
+            item.setTags(pageTags.getOrDefault(key.getEntityId(), new ArrayList<>()));
 
-        } catch (Exception e) {
-            System.err.println("搜索文档时发生错误: " + e.getMessage());
+            result.add(key, item);
         }
 
-        return results;
+        return result;
     }
 
-    // 搜索词汇
-    private List<SearchItem> searchVocabulary(String query, Long userId, int page, int pageSize) {
-        List<SearchItem> results = new ArrayList<>();
-
-        try {
-            String sql = "SELECT w.word_id, w.word, w.phonetic, wd.definition, w.translation_pos AS translation, " +
-                    "w.created_at, w.updated_at, w.audio_url " +
-                    "FROM words w " +
-                    "LEFT JOIN word_definitions wd ON w.word_id = wd.word_id " +
-                    "WHERE w.word LIKE ? OR wd.definition LIKE ? OR w.translation_pos LIKE ? " +
-                    "ORDER BY w.word ASC LIMIT ? OFFSET ?";
-
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-            params.add("%" + query + "%");
-            params.add("%" + query + "%");
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> words = jdbcTemplate.queryForList(sql, params.toArray());
-
-            for (Map<String, Object> word : words) {
-                SearchItem item = new SearchItem();
-                Long wordId = ((Number) word.get("word_id")).longValue();
-
-                item.setId("word_" + wordId);
-                item.setType("vocabulary");
-                item.setTitle((String) word.get("word"));
-                item.setWord((String) word.get("word"));
-                item.setPhonetic((String) word.get("phonetic"));
-                item.setDefinition((String) word.get("definition"));
-                item.setTranslation((String) word.get("translation"));
-
-                // 生成摘要
-                String definition = (String) word.get("definition");
-                if (definition != null && definition.length() > 100) {
-                    item.setExcerpt(definition.substring(0, 100) + "...");
-                } else {
-                    item.setExcerpt(definition);
-                }
+    // 统计命中文档的标签分布
+    private Map<String, Integer> countDocumentTags(List<SearchCursor> keys) {
+        Map<String, Integer> tags = new TreeMap<>();
+        if (keys.isEmpty()) {
+            return tags;
+        }
+        List<Object> ids = new ArrayList<>();
+        for (SearchCursor key : keys) {
+            ids.add(key.getEntityId());
+        }
+        String sql = "SELECT t.tag_name, COUNT(*) AS cnt FROM document_tag_relations r " +
+                "INNER JOIN document_tags t ON r.tag_id = t.tag_id " +
+                "WHERE r.document_id IN (" + placeholders(ids.size()) + ") GROUP BY t.tag_name";
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sql, ids.toArray())) {
+            tags.put((String) row.get("tag_name"), ((Number) row.get("cnt")).intValue());
+        }
+        return tags;
+    }
 
-                // 计算相关性
-                double relevance = calculateRelevance(query, (String) word.get("word"), definition);
-                item.setRelevance(relevance);
+    // 搜索词汇：词典是全局数据，不对整个词典做 COUNT，只取有限的候选：
+    //   1. 词头前缀匹配走内存中的词典前缀树（DictionaryCache），前缀树加载完成前用 words.word 唯一索引的范围扫描；
+    //   2. 不足上限时再补充词头中间、翻译、释义包含关键词的词条，各查询带 LIMIT，凑够即停止扫描。
+    //      释义和翻译没有放进 BM25 全文索引：索引按用户划分，整部词典的释义常驻内存代价太大。
+    // 总数和词性分面按候选集合计算，列出的页都能取到结果。
+    private FederatedSearchExecutor.SourceResult<SearchItem> searchVocabulary(String query, Long userId,
+                                                                                FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<SearchItem> result = FederatedSearchExecutor.SourceResult.empty();
+
+        // 1. 候选词条ID：前缀匹配优先
+        List<Long> prefixIds = dictionaryCache.prefixWordIds(query, maxVocabularyCandidates);
+        if (prefixIds == null) {
+            prefixIds = jdbcTemplate.queryForList("SELECT word_id FROM words WHERE word LIKE ? ORDER BY word LIMIT ?",
+                    Long.class, query + "%", maxVocabularyCandidates);
+        }
+        Set<Long> candidateIds = new LinkedHashSet<>(prefixIds);
+        if (candidateIds.size() < maxVocabularyCandidates) {
+            String pattern = "%" + query + "%";
+            candidateIds.addAll(jdbcTemplate.queryForList(
+                    "SELECT word_id FROM words WHERE word LIKE ? OR translation_pos LIKE ? LIMIT ?",
+                    Long.class, pattern, pattern, maxVocabularyCandidates));
+        }
+        if (candidateIds.size() < maxVocabularyCandidates) {
+            candidateIds.addAll(jdbcTemplate.queryForList(
+                    "SELECT DISTINCT word_id FROM word_definitions WHERE definition LIKE ? LIMIT ?",
+                    Long.class, "%" + query + "%", maxVocabularyCandidates));
+        }
+        List<Long> ids = new ArrayList<>(candidateIds);
+        if (ids.size() > maxVocabularyCandidates) {
+            ids = ids.subList(0, maxVocabularyCandidates);
+        }
+        if (ids.isEmpty()) {
+            result.putFacet("partsOfSpeech", new TreeMap<String, Integer>());
+            return result;
+        }
 
-                // 构建高亮信息
-                Map<String, Object> highlight = new HashMap<>();
-                highlight.put("word", highlightText(query, (String) word.get("word")));
-                highlight.put("definition", highlightText(query, definition));
-                item.setHighlight(highlight);
+        // 2. 读取候选词条，计算相关性和词性分面
+        String sql = "SELECT w.word_id, w.word, w.phonetic, w.translation_pos AS translation, w.audio AS audio_url, " +
+                "w.part_of_speech, (SELECT wd.definition FROM word_definitions wd WHERE wd.word_id = w.word_id " +
+                "ORDER BY wd.order_index LIMIT 1) AS definition " +
+                "FROM words w WHERE w.word_id IN (" + placeholders(ids.size()) + ")";
+
+        Map<Long, Map<String, Object>> words = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        Map<String, Integer> partsOfSpeech = new TreeMap<>();
+        for (Map<String, Object> word : jdbcTemplate.queryForList(sql, ids.toArray())) {
+            long wordId = ((Number) word.get("word_id")).longValue();
+            double relevance = calculateRelevance(query, (String) word.get("word"), (String) word.get("definition"));
+            words.put(wordId, word);
+            keys.add(SearchCursor.of(relevance, null, "vocabulary", wordId));
+            if (word.get("part_of_speech") != null) {
+                partsOfSpeech.merge((String) word.get("part_of_speech"), 1, Integer::sum);
+            }
+        }
+        result.setTotal(keys.size());
+        result.putFacet("partsOfSpeech", partsOfSpeech);
+
+        // 本页词条的例句、标签各一次查询
+        List<SearchCursor> page = window.page(keys);
+        List<Long> pageIds = new ArrayList<>();
+        for (SearchCursor key : page) {
+            pageIds.add(key.getEntityId());
+        }
+        Map<Long, List<String>> pageExamples = getWordExamples(pageIds);
+        Map<Long, List<String>> pageTags = getWordTags(userId, pageIds);
+
+        for (SearchCursor key : page) {
+            Map<String, Object> word = words.get(key.getEntityId());
+            Long wordId = key.getEntityId();
+
+            SearchItem item = new SearchItem();
+            item.setId("word_" + wordId);
+            item.setType("vocabulary");
+            item.setTitle((String) word.get("word"));
+            item.setWord((String) word.get("word"));
+            item.setPhonetic((String) word.get("phonetic"));
+            item.setDefinition((String) word.get("definition"));
+            item.setTranslation((String) word.get("translation"));
+
+            // 生成摘要
+            String definition = (String) word.get("definition");
+            if (definition != null && definition.length() > 100) {
+                item.setExcerpt(definition.substring(0, 100) + "...");
+            } else {
+                item.setExcerpt(definition);
+            }
 
-                item.setCreatedAt(word.get("created_at") != null ? word.get("created_at").toString() : null);
-                item.setUpdatedAt(word.get("updated_at") != null ? word.get("updated_at").toString() : null);
-                item.setAudioUrl((String) word.get("audio_url"));
-                item.setUrl("/vocabulary/" + wordId);
+            item.setRelevance(key.getRelevance());
 
-                // 获取例句
-                List<String> examples = getWordExamples(wordId);
-                item.setExamples(examples);
+            // 构建高亮信息
+            Map<String, Object> highlight = new HashMap<>();
+            highlight.put("word", highlightText(query, (String) word.get("word")));
+            highlight.put("definition", highlightText(query, definition));
+            item.setHighlight(highlight);
 
-                // 获取标签
-                List<String> tags = getWordTags(wordId);
-                item.setTags(tags);
+            item.setAudioUrl((String) word.get("audio_url"));
+            item.setUrl("/vocabulary/" + wordId);
 
-                results.add(item);
-            }
+            item.setExamples(pageExamples.getOrDefault(wordId, new ArrayList<>()));
+            item.setTags(pageTags.getOrDefault(wordId, new ArrayList<>()));
 
-        } catch (Exception e) {
-            System.err.println("搜索词汇时发生错误: " + e.getMessage());
+            result.add(key, item);
         }
 
-        return results;
+        return result;
     }
 
     // 搜索笔记
-    private List<SearchItem> searchNotes(String query, Long userId, int page, int pageSize) {
-        List<SearchItem> results = new ArrayList<>();
+    private FederatedSearchExecutor.SourceResult<SearchItem> searchNotes(String query, Long userId,
+                                                                           FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<SearchItem> result = FederatedSearchExecutor.SourceResult.empty();
 
-        try {
-            String sql = "SELECT n.note_id, n.document_id, n.content, n.created_at, n.updated_at, " +
-                    "d.title as document_title " +
-                    "FROM document_notes n " +
-                    "LEFT JOIN documents d ON n.document_id = d.document_id " +
-                    "WHERE n.content LIKE ? ";
+        if (userId == null) {
+            return result;
+        }
 
-            if (userId != null) {
-                sql += "AND n.user_id = ? ";
-            }
+        Map<Long, SearchIndexService.SearchHit> hitsById = new LinkedHashMap<>();
+        for (SearchIndexService.SearchHit hit : searchIndexService.searchNotes(userId, query)) {
+            hitsById.put(hit.getId(), hit);
+        }
+        if (hitsById.isEmpty()) {
+            return result;
+        }
 
-            sql += "ORDER BY n.created_at DESC LIMIT ? OFFSET ?";
+        String sql = "SELECT n.note_id, n.document_id, n.content, n.created_at, n.updated_at, " +
+                "d.title as document_title " +
+                "FROM document_notes n " +
+                "LEFT JOIN documents d ON n.document_id = d.document_id " +
+                "WHERE n.note_id IN (" + placeholders(hitsById.size()) + ") AND n.user_id = ?";
+
+        List<Object> params = new ArrayList<>(hitsById.keySet());
+        params.add(userId);
+
+        Map<Long, Map<String, Object>> notes = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        for (Map<String, Object> note : jdbcTemplate.queryForList(sql, params.toArray())) {
+            long noteId = ((Number) note.get("note_id")).longValue();
+            notes.put(noteId, note);
+            keys.add(SearchCursor.of(hitsById.get(noteId).getRelevance(), note.get("created_at"), "note", noteId));
+        }
+        result.setTotal(keys.size());
 
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-            if (userId != null) {
-                params.add(userId);
-            }
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> notes = jdbcTemplate.queryForList(sql, params.toArray());
-
-            for (Map<String, Object> note : notes) {
-                SearchItem item = new SearchItem();
-                Long noteId = ((Number) note.get("note_id")).longValue();
-                Long docId = ((Number) note.get("document_id")).longValue();
-
-                item.setId("note_" + noteId);
-                item.setType("note");
-                item.setTitle("笔记 - " + note.get("document_title"));
-                item.setContent((String) note.get("content"));
-                item.setDocumentTitle((String) note.get("document_title"));
-                item.setDocumentId(docId);
-
-                // 生成摘要
-                String content = (String) note.get("content");
-                if (content != null && content.length() > 150) {
-                    item.setExcerpt(content.substring(0, 150) + "...");
-                } else {
-                    item.setExcerpt(content);
-                }
+        for (SearchCursor key : window.page(keys)) {
+            Map<String, Object> note = notes.get(key.getEntityId());
 
-                // 计算相关性
-                double relevance = calculateRelevance(query, content, content);
-                item.setRelevance(relevance);
+            SearchItem item = new SearchItem();
+            Long noteId = key.getEntityId();
+            Long docId = ((Number) note.get("document_id")).longValue();
 
-                // 构建高亮信息
-                Map<String, Object> highlight = new HashMap<>();
-                highlight.put("content", highlightText(query, content));
-                item.setHighlight(highlight);
+            item.setId("note_" + noteId);
+            item.setType("note");
+            item.setTitle("笔记 - " + note.get("document_title"));
+            item.setContent((String) note.get("content"));
+            item.setDocumentTitle((String) note.get("document_title"));
+            item.setDocumentId(docId);
 
-                item.setCreatedAt(note.get("created_at") != null ? note.get("created_at").toString() : null);
-                item.setUpdatedAt(note.get("updated_at") != null ? note.get("updated_at").toString() : null);
-                item.setUrl("/reader/note/" + noteId);
+            // 生成摘要
+            String content = (String) note.get("content");
+            item.setExcerpt(SearchTokenizer.excerpt(content, query, 150));
 
-                results.add(item);
-            }
+            item.setRelevance(key.getRelevance());
 
-        } catch (Exception e) {
-            System.err.println("搜索笔记时发生错误: " + e.getMessage());
+            // 构建高亮信息
+            Map<String, Object> highlight = new HashMap<>();
+            highlight.put("content", highlightText(query, content));
+            item.setHighlight(highlight);
+
+            item.setCreatedAt(note.get("created_at") != null ? note.get("created_at").toString() : null);
+            item.setUpdatedAt(note.get("updated_at") != null ? note.get("updated_at").toString() : null);
+            item.setUrl("/reader/note/" + noteId);
+
+            result.add(key, item);
         }
 
-        return results;
+        return result;
     }
 
     // 搜索高亮
-    private List<SearchItem> searchHighlights(String query, Long userId, int page, int pageSize) {
-        List<SearchItem> results = new ArrayList<>();
+    private FederatedSearchExecutor.SourceResult<SearchItem> searchHighlights(String query, Long userId,
+                                                                                FederatedSearchExecutor.Window window) {
+        FederatedSearchExecutor.SourceResult<SearchItem> result = FederatedSearchExecutor.SourceResult.empty();
 
-        try {
-            String sql = "SELECT h.highlight_id, h.document_id, h.text, h.note, h.created_at, " +
-                    "d.title as document_title " +
-                    "FROM document_highlights h " +
-                    "LEFT JOIN documents d ON h.document_id = d.document_id " +
-                    "WHERE h.text LIKE ? OR h.note LIKE ? ";
+        if (userId == null) {
+            return result;
+        }
 
-            if (userId != null) {
-                sql += "AND h.user_id = ? ";
-            }
+        Map<Long, SearchIndexService.SearchHit> hitsById = new LinkedHashMap<>();
+        for (SearchIndexService.SearchHit hit : searchIndexService.searchHighlights(userId, query)) {
+            hitsById.put(hit.getId(), hit);
+        }
+        if (hitsById.isEmpty()) {
+            return result;
+        }
 
-            sql += "ORDER BY h.created_at DESC LIMIT ? OFFSET ?";
+        String sql = "SELECT h.highlight_id, h.document_id, h.text, h.note, h.created_at, " +
+                "d.title as document_title " +
+                "FROM document_highlights h " +
+                "LEFT JOIN documents d ON h.document_id = d.document_id " +
+                "WHERE h.highlight_id IN (" + placeholders(hitsById.size()) + ") AND h.user_id = ?";
+
+        List<Object> params = new ArrayList<>(hitsById.keySet());
+        params.add(userId);
+
+        Map<Long, Map<String, Object>> highlights = new HashMap<>();
+        List<SearchCursor> keys = new ArrayList<>();
+        for (Map<String, Object> highlight : jdbcTemplate.queryForList(sql, params.toArray())) {
+            long highlightId = ((Number) highlight.get("highlight_id")).longValue();
+            highlights.put(highlightId, highlight);
+            keys.add(SearchCursor.of(hitsById.get(highlightId).getRelevance(), highlight.get("created_at"), "highlight", highlightId));
+        }
+        result.setTotal(keys.size());
 
-            List<Object> params = new ArrayList<>();
-            params.add("%" + query + "%");
-            params.add("%" + query + "%");
-            if (userId != null) {
-                params.add(userId);
-            }
-            params.add(pageSize);
-            params.add((page - 1) * pageSize);
-
-            List<Map<String, Object>> highlights = jdbcTemplate.queryForList(sql, params.toArray());
-
-            for (Map<String, Object> highlight : highlights) {
-                SearchItem item = new SearchItem();
-                Long highlightId = ((Number) highlight.get("highlight_id")).longValue();
-                Long docId = ((Number) highlight.get("document_id")).longValue();
-
-                item.setId("highlight_" + highlightId);
-                item.setType("highlight");
-                item.setTitle("高亮 - " + highlight.get("document_title"));
-                item.setSelectedText((String) highlight.get("text"));
-                item.setNote((String) highlight.get("note"));
-                item.setDocumentTitle((String) highlight.get("document_title"));
-                item.setDocumentId(docId);
-
-                // 生成摘要
-                String text = (String) highlight.get("text");
-                if (text != null && text.length() > 100) {
-                    item.setExcerpt(text.substring(0, 100) + "...");
-                } else {
-                    item.setExcerpt(text);
-                }
+        for (SearchCursor key : window.page(keys)) {
+            Map<String, Object> highlight = highlights.get(key.getEntityId());
 
-                // 计算相关性
-                double relevance = calculateRelevance(query, text, text);
-                item.setRelevance(relevance);
+            SearchItem item = new SearchItem();
+            Long highlightId = key.getEntityId();
+            Long docId = ((Number) highlight.get("document_id")).longValue();
 
-                // 构建高亮信息
-                Map<String, Object> hl = new HashMap<>();
-                hl.put("text", highlightText(query, text));
-                item.setHighlight(hl);
+            item.setId("highlight_" + highlightId);
+            item.setType("highlight");
+            item.setTitle("高亮 - " + highlight.get("document_title"));
+            item.setSelectedText((String) highlight.get("text"));
+            item.setNote((String) highlight.get("note"));
+            item.setDocumentTitle((String) highlight.get("document_title"));
+            item.setDocumentId(docId);
 
-                item.setCreatedAt(highlight.get("created_at") != null ? highlight.get("created_at").toString() : null);
-                item.setUrl("/reader/highlight/" + highlightId);
+            // 生成摘要
+            String text = (String) highlight.get("text");
+            item.setExcerpt(SearchTokenizer.excerpt(text, query, 100));
 
-                results.add(item);
-            }
+            item.setRelevance(key.getRelevance());
 
-        } catch (Exception e) {
-            System.err.println("搜索高亮时发生错误: " + e.getMessage());
+            // 构建高亮信息
+            Map<String, Object> hl = new HashMap<>();
+            hl.put("text", highlightText(query, text));
+            item.setHighlight(hl);
+
+            item.setCreatedAt(highlight.get("created_at") != null ? highlight.get("created_at").toString() : null);
+            item.setUrl("/reader/highlight/" + highlightId);
+
+            result.add(key, item);
         }
 
-        return results;
+        return result;
+    }
+
+    // 生成 IN (...) 的占位符
+    private String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("?");
+        }
+        return sb.toString();
     }
 
     // 保存搜索历史
     private void saveSearchHistory(Long userId, String keyword, String searchType, int resultCount) {
         try {
-            String sql = "INSERT INTO search_history (user_id, keyword, search_type, result_count, timestamp) " +
-                    "VALUES (?, ?, ?, ?, NOW())";
-            jdbcTemplate.update(sql, userId, keyword, searchType, resultCount);
+            searchHistoryRecorder.record(userId, keyword, searchType, resultCount);
             System.out.println("已保存搜索历史: 用户=" + userId + ", 关键词=" + keyword);
         } catch (Exception e) {
             System.err.println("保存搜索历史失败: " + e.getMessage());
         }
     }
 
-    // 获取文档标签
-    private List<String> getDocumentTags(Long documentId) {
-        List<String> tags = new ArrayList<>();
+    // 批量获取文档标签：文档ID -> 标签名
+    private Map<Long, List<String>> getDocumentTags(Collection<Long> documentIds) {
         try {
-            String sql = "SELECT t.tag_name FROM document_tags t " +
-                    "INNER JOIN document_tag_relations r ON t.tag_id = r.tag_id " +
-                    "WHERE r.document_id = ?";
-            List<Map<String, Object>> tagList = jdbcTemplate.queryForList(sql, documentId);
-            for (Map<String, Object> tag : tagList) {
-                tags.add((String) tag.get("tag_name"));
-            }
+            return relationBatchLoader.loadDocumentTagNames(documentIds);
         } catch (Exception e) {
             System.err.println("获取文档标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return tags;
     }
 
-    // 获取单词例句
-    private List<String> getWordExamples(Long wordId) {
-        List<String> examples = new ArrayList<>();
+    // 批量获取单词例句：单词ID -> 最多 3 条例句
+    private Map<Long, List<String>> getWordExamples(Collection<Long> wordIds) {
         try {
-            String sql = "SELECT example_sentence FROM word_examples WHERE word_id = ? LIMIT 3";
-            List<Map<String, Object>> exampleList = jdbcTemplate.queryForList(sql, wordId);
-            for (Map<String, Object> example : exampleList) {
-                examples.add((String) example.get("example_sentence"));
-            }
+            return relationBatchLoader.loadWordExampleSentences(wordIds, 3);
         } catch (Exception e) {
             System.err.println("获取单词例句失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return examples;
     }
 
-    // 获取单词标签
-    private List<String> getWordTags(Long wordId) {
-        List<String> tags = new ArrayList<>();
+    // 批量获取用户给单词打的标签：单词ID -> 标签名
+    private Map<Long, List<String>> getWordTags(Long userId, Collection<Long> wordIds) {
+        if (userId == null) return new HashMap<>();
+
         try {
-            String sql = "SELECT t.tag_name FROM vocabulary_tags t " +
-                    "INNER JOIN user_vocabulary_tags r ON t.tag_id = r.tag_id " +
-                    "WHERE r.word_id = ?";
-            List<Map<String, Object>> tagList = jdbcTemplate.queryForList(sql, wordId);
-            for (Map<String, Object> tag : tagList) {
-                tags.add((String) tag.get("tag_name"));
-            }
+            return relationBatchLoader.loadWordTagNames(userId, wordIds);
         } catch (Exception e) {
             System.err.println("获取单词标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return tags;
     }
 
     // 计算相关性（简单实现）
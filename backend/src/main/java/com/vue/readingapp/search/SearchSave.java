@@ -6,6 +6,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
+import com.vue.readingapp.search.suggest.SuggestionService;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -14,6 +17,15 @@ public class SearchSave {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到保存搜索记录请求 ===");
@@ -120,6 +132,7 @@ public class SearchSave {
             }
 
             // 3. 检查是否已存在相同的搜索记录（同一用户、同一关键词、同一类型）
+            searchHistoryRecorder.flushUser(userId);
             String checkSql = "SELECT search_id, timestamp FROM search_history " +
                     "WHERE user_id = ? AND keyword = ? AND search_type = ? " +
                     "ORDER BY timestamp DESC LIMIT 1";
@@ -132,6 +145,7 @@ public class SearchSave {
                 Long existingId = ((Number) existingRecords.get(0).get("search_id")).longValue();
                 String updateSql = "UPDATE search_history SET timestamp = NOW() WHERE search_id = ?";
                 jdbcTemplate.update(updateSql, existingId);
+                suggestionService.onSearch(userId, request.getQuery(), request.getSearch_type());
 
                 // 获取更新后的记录
                 String getSql = "SELECT search_id, keyword, search_type, timestamp FROM search_history WHERE search_id = ?";
@@ -157,6 +171,7 @@ public class SearchSave {
                     "VALUES (?, ?, ?, 0, NOW())";
 
             jdbcTemplate.update(insertSql, userId, request.getQuery(), request.getSearch_type());
+            searchHistoryRecorder.recordPersisted(userId, request.getQuery(), request.getSearch_type());
 
             // 5. 获取刚插入的记录ID
             String lastIdSql = "SELECT LAST_INSERT_ID() as id";
@@ -199,8 +214,7 @@ public class SearchSave {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
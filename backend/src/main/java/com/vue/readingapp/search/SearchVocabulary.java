@@ -6,6 +6,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
+import com.vue.readingapp.config.RelationBatchLoader;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
 
 @RestController
 @RequestMapping("/api/v1/search")
@@ -14,6 +17,15 @@ public class SearchVocabulary {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到词汇搜索请求 ===");
@@ -298,6 +310,15 @@ public class SearchVocabulary {
             List<Map<String, Object>> words = jdbcTemplate.queryForList(sqlBuilder.toString(), params.toArray());
             printQueryResult("找到 " + total + " 个词汇，返回 " + words.size() + " 个");
 
+            // 本页词条的例句、标签、生词本状态各一次查询
+            List<Long> pageWordIds = new ArrayList<>();
+            for (Map<String, Object> word : words) {
+                pageWordIds.add(((Number) word.get("word_id")).longValue());
+            }
+            Map<Long, List<String>> pageExamples = getWordExamples(pageWordIds);
+            Map<Long, List<String>> pageTags = getWordTags(userId, pageWordIds);
+            Set<Long> inVocabularyIds = getWordIdsInVocabulary(userId, pageWordIds);
+
             // 7. 处理结果
             List<VocabularyItem> items = new ArrayList<>();
             for (Map<String, Object> word : words) {
@@ -328,17 +349,9 @@ public class SearchVocabulary {
                 item.setAudioUrl((String) word.get("audio_url"));
                 item.setUrl("/vocabulary/" + wordId);
 
-                // 获取例句
-                List<String> examples = getWordExamples(wordId);
-                item.setExamples(examples);
-
-                // 获取标签
-                List<String> tags = getWordTags(wordId);
-                item.setTags(tags);
-
-                // 检查是否在用户生词本中
-                boolean inVocabulary = checkIfInVocabulary(userId, wordId);
-                item.setInVocabulary(inVocabulary);
+                item.setExamples(pageExamples.getOrDefault(wordId, new ArrayList<>()));
+                item.setTags(pageTags.getOrDefault(wordId, new ArrayList<>()));
+                item.setInVocabulary(inVocabularyIds.contains(wordId));
 
                 items.add(item);
             }
@@ -383,8 +396,7 @@ public class SearchVocabulary {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String sql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-                List<Map<String, Object>> sessions = jdbcTemplate.queryForList(sql, token);
+                List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
                 if (!sessions.isEmpty()) {
                     return ((Number) sessions.get(0).get("user_id")).longValue();
                 }
@@ -432,50 +444,37 @@ public class SearchVocabulary {
         return text.replaceAll("(?i)(" + query + ")", "<mark>$1</mark>");
     }
 
-    // 获取单词例句
-    private List<String> getWordExamples(Long wordId) {
-        List<String> examples = new ArrayList<>();
+    // 批量获取单词例句：单词ID -> 最多 3 条例句
+    private Map<Long, List<String>> getWordExamples(Collection<Long> wordIds) {
         try {
-            String sql = "SELECT example_sentence FROM word_examples WHERE word_id = ? LIMIT 3";
-            List<Map<String, Object>> exampleList = jdbcTemplate.queryForList(sql, wordId);
-            for (Map<String, Object> example : exampleList) {
-                examples.add((String) example.get("example_sentence"));
-            }
+            return relationBatchLoader.loadWordExampleSentences(wordIds, 3);
         } catch (Exception e) {
             System.err.println("获取单词例句失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return examples;
     }
 
-    // 获取单词标签
-    private List<String> getWordTags(Long wordId) {
-        List<String> tags = new ArrayList<>();
+    // 批量获取用户给单词打的标签：单词ID -> 标签名
+    private Map<Long, List<String>> getWordTags(Long userId, Collection<Long> wordIds) {
+        if (userId == null) return new HashMap<>();
+
         try {
-            String sql = "SELECT vt.tag_name FROM vocabulary_tags vt " +
-                    "INNER JOIN user_vocabulary_tags ut ON vt.tag_id = ut.tag_id " +
-                    "INNER JOIN user_vocabulary uv ON ut.user_vocab_id = uv.user_vocab_id " +
-                    "WHERE uv.word_id = ?";
-            List<Map<String, Object>> tagList = jdbcTemplate.queryForList(sql, wordId);
-            for (Map<String, Object> tag : tagList) {
-                tags.add((String) tag.get("tag_name"));
-            }
+            return relationBatchLoader.loadWordTagNames(userId, wordIds);
         } catch (Exception e) {
             System.err.println("获取单词标签失败: " + e.getMessage());
+            return new HashMap<>();
         }
-        return tags;
     }
 
-    // 检查是否在用户生词本中
-    private boolean checkIfInVocabulary(Long userId, Long wordId) {
-        if (userId == null) return false;
+    // 批量检查单词是否在用户生词本中
+    private Set<Long> getWordIdsInVocabulary(Long userId, Collection<Long> wordIds) {
+        if (userId == null) return new HashSet<>();
 
         try {
-            String sql = "SELECT COUNT(*) FROM user_vocabulary WHERE user_id = ? AND word_id = ?";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId, wordId);
-            return count != null && count > 0;
+            return relationBatchLoader.loadWordIdsInVocabulary(userId, wordIds);
         } catch (Exception e) {
             System.err.println("检查生词本失败: " + e.getMessage());
-            return false;
+            return new HashSet<>();
         }
     }
 
@@ -528,9 +527,7 @@ public class SearchVocabulary {
     // 保存搜索历史
     private void saveSearchHistory(Long userId, String keyword, String searchType, int resultCount) {
         try {
-            String sql = "INSERT INTO search_history (user_id, keyword, search_type, result_count, timestamp) " +
-                    "VALUES (?, ?, ?, ?, NOW())";
-            jdbcTemplate.update(sql, userId, keyword, searchType, resultCount);
+            searchHistoryRecorder.record(userId, keyword, searchType, resultCount);
             System.out.println("已保存词汇搜索历史: 用户=" + userId + ", 关键词=" + keyword);
         } catch (Exception e) {
             System.err.println("保存搜索历史失败: " + e.getMessage());
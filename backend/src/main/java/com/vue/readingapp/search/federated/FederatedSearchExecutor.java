@@ -0,0 +1,324 @@
+package com.vue.readingapp.search.federated;
+
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 联合搜索执行器
+ *
+ * 全局搜索 / 高级搜索要同时查文档、词汇、笔记、高亮四类数据。原来每类各查一页再拼接、
+ * 排序、按同样的偏移量再截一次，第 2 页以后的结果是错的，total 也只是本页条数。
+ * 现在的做法：
+ *   1. 各数据源并行执行，每个数据源只返回游标之后排序最靠前的 limit + 1 条，以及命中总数和分面统计；
+ *   2. 用大小为 limit + 1 的有界堆合并，堆顶是当前保留结果中最靠后的一条，超出时直接丢弃；
+ *   3. 多出来的那一条只用来判断是否还有下一页，返回的游标是本页最后一条的排序键。
+ * 某个数据源超时或出错时只丢弃该数据源的结果，其他结果照常返回，失败的数据源列在 failedSources 中。
+ * 各数据源在后台任务执行器的 search 池中执行（线程数和排队上限固定），池已满时由请求线程自己执行。
+ */
+@Component
+public class FederatedSearchExecutor {
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
+    @Value("${app.search.federated.timeout-ms:5000}")
+    private long timeoutMs;
+
+    // 每页最多条数
+    @Value("${app.search.federated.max-page-size:100}")
+    private int maxPageSize;
+
+    // 按页码访问时最多能翻到的结果条数（page * pageSize），更深的结果用游标翻页
+    @Value("${app.search.federated.max-window:1000}")
+    private int maxWindow;
+
+    /**
+     * 一次查询的分页窗口：排序方式、游标和本次需要的条数
+     */
+    public static class Window {
+        private final String sortBy;
+        private final boolean ascending;
+        private final Comparator<SearchCursor> order;
+        private final SearchCursor after;
+        private final int limit;
+
+        public Window(String sortBy, String sortOrder, SearchCursor after, int limit) {
+            this.sortBy = sortBy;
+            this.ascending = "asc".equalsIgnoreCase(sortOrder);
+            this.order = SearchCursor.order(sortBy, sortOrder);
+            this.after = after;
+            this.limit = limit;
+        }
+
+        public Comparator<SearchCursor> getOrder() { return order; }
+        public SearchCursor getAfter() { return after; }
+        public int getLimit() { return limit; }
+
+        /** 每个数据源需要返回的条数：多取一条用于判断是否还有下一页 */
+        public int getFetchSize() { return limit + 1; }
+
+        public boolean isSortedByCreatedAt() { return "createdAt".equals(sortBy); }
+
+        /** 排序键是否在游标之后 */
+        public boolean accepts(SearchCursor key) {
+            return after == null || order.compare(key, after) > 0;
+        }
+
+        /**
+         * 对候选排序键排序，去掉游标及之前的部分，截取 fetchSize 条。
+         * 用于相关性在内存中计算、无法下推到 SQL 的数据源。
+         */
+        public List<SearchCursor> page(Collection<SearchCursor> candidates) {
+            List<SearchCursor> keys = new ArrayList<>();
+            for (SearchCursor key : candidates) {
+                if (accepts(key)) {
+                    keys.add(key);
+                }
+            }
+            keys.sort(order);
+            return keys.size() > getFetchSize() ? new ArrayList<>(keys.subList(0, getFetchSize())) : keys;
+        }
+
+        /**
+         * 按创建时间排序时，把游标条件下推为 SQL 的键集条件（追加到 WHERE 之后）
+         *
+         * @param createdAtColumn 创建时间列，数据源没有创建时间时传 null
+         * @return false 表示该数据源在游标之后已没有结果，可以直接跳过查询
+         */
+        public boolean appendKeyset(StringBuilder sql, List<Object> params, String type,
+                                    String createdAtColumn, String idColumn) {
+            if (after == null) {
+                return true;
+            }
+            int typeCompare = type.compareTo(after.getType());
+
+            if (createdAtColumn == null) {
+                // 没有创建时间的结果排在最后
+                if (after.getCreatedAt() != null || typeCompare > 0) {
+                    return true;
+                }
+                if (typeCompare < 0) {
+                    return false;
+                }
+                sql.append("AND ").append(idColumn).append(" > ? ");
+                params.add(after.getEntityId());
+                return true;
+            }
+
+            if (after.getCreatedAt() == null) {
+                return false;
+            }
+
+            String op = ascending ? ">" : "<";
+            sql.append("AND (").append(createdAtColumn).append(" ").append(op).append(" ? ");
+            params.add(after.getCreatedAtTime());
+            if (typeCompare >= 0) {
+                sql.append("OR (").append(createdAtColumn).append(" = ?");
+                params.add(after.getCreatedAtTime());
+                if (typeCompare == 0) {
+                    sql.append(" AND ").append(idColumn).append(" > ?");
+                    params.add(after.getEntityId());
+                }
+                sql.append(")");
+            }
+            sql.append(") ");
+            return true;
+        }
+
+        /** 与 appendKeyset 配套的 ORDER BY 子句 */
+        public String keysetOrderBy(String createdAtColumn, String idColumn) {
+            if (createdAtColumn == null) {
+                return "ORDER BY " + idColumn + " ASC ";
+            }
+            return "ORDER BY " + createdAtColumn + (ascending ? " ASC, " : " DESC, ") + idColumn + " ASC ";
+        }
+    }
+
+    /**
+     * 数据源：在给定窗口内返回排序靠前的结果
+     */
+    public interface Source<T> {
+        SourceResult<T> fetch(Window window) throws Exception;
+    }
+
+    /**
+     * 单个数据源的结果
+     */
+    public static class SourceResult<T> {
+        private final List<SearchCursor> keys = new ArrayList<>();
+        private final List<T> items = new ArrayList<>();
+        private int total;
+        private final Map<String, Object> facets = new LinkedHashMap<>();
+
+        public static <T> SourceResult<T> empty() {
+            return new SourceResult<>();
+        }
+
+        public void add(SearchCursor key, T item) {
+            keys.add(key);
+            items.add(item);
+        }
+
+        public int getTotal() { return total; }
+        public void setTotal(int total) { this.total = total; }
+
+        public Map<String, Object> getFacets() { return facets; }
+        public void putFacet(String name, Object value) { facets.put(name, value); }
+    }
+
+    /**
+     * 合并后的结果
+     */
+    public static class Result<T> {
+        private final List<T> items;
+        private final int total;
+        private final Map<String, Integer> totals;
+        private final Map<String, Object> facets;
+        private final String nextCursor;
+        private final List<String> failedSources;
+
+        Result(List<T> items, int total, Map<String, Integer> totals, Map<String, Object> facets,
+               String nextCursor, List<String> failedSources) {
+            this.items = items;
+            this.total = total;
+            this.totals = totals;
+            this.facets = facets;
+            this.nextCursor = nextCursor;
+            this.failedSources = failedSources;
+        }
+
+        public List<T> getItems() { return items; }
+        public int getTotal() { return total; }
+        public Map<String, Integer> getTotals() { return totals; }
+        public Map<String, Object> getFacets() { return facets; }
+        public String getNextCursor() { return nextCursor; }
+        public List<String> getFailedSources() { return failedSources; }
+    }
+
+    private static class Entry<T> {
+        final SearchCursor key;
+        final T item;
+
+        Entry(SearchCursor key, T item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+
+    /**
+     * 把请求的每页条数限制在 1 ~ max-page-size
+     */
+    public int clampPageSize(Integer pageSize) {
+        return pageSize == null ? 20 : Math.max(1, Math.min(pageSize, maxPageSize));
+    }
+
+    /**
+     * 按页码访问时是否超出 max-window
+     */
+    public boolean exceedsWindow(int page, int pageSize) {
+        return (long) page * pageSize > maxWindow;
+    }
+
+    /**
+     * 按页码访问时可以翻到的总页数：不超过 max-window 范围内的页数
+     */
+    public int totalPages(int total, int pageSize) {
+        int pages = (int) Math.ceil((double) total / pageSize);
+        return Math.min(pages, Math.max(1, maxWindow / pageSize));
+    }
+
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /**
+     * 并行执行各数据源并合并
+     *
+     * @param sources 数据源名称 -> 数据源，名称同时作为 totals 的键
+     */
+    public <T> Result<T> execute(Map<String, Source<T>> sources, Window window) {
+        Map<String, CompletableFuture<SourceResult<T>>> futures = new LinkedHashMap<>();
+        Map<String, Future<?>> tasks = new HashMap<>();
+        for (Map.Entry<String, Source<T>> source : sources.entrySet()) {
+            CompletableFuture<SourceResult<T>> future = new CompletableFuture<>();
+            futures.put(source.getKey(), future);
+            try {
+                tasks.put(source.getKey(), backgroundTaskExecutor.submit(BackgroundTaskExecutor.Pool.SEARCH, null,
+                        BackgroundTaskExecutor.Priority.NORMAL, () -> {
+                            try {
+                                future.complete(source.getValue().fetch(window));
+                            } catch (Throwable t) {
+                                future.completeExceptionally(t);
+                            }
+                        }));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        Comparator<Entry<T>> entryOrder = (a, b) -> window.getOrder().compare(a.key, b.key);
+        // 有界堆：按排序逆序建堆，堆顶是保留结果中最靠后的一条
+        PriorityQueue<Entry<T>> heap = new PriorityQueue<>(window.getFetchSize() + 1, entryOrder.reversed());
+
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        Map<String, Object> facets = new LinkedHashMap<>();
+        List<String> failedSources = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        for (Map.Entry<String, CompletableFuture<SourceResult<T>>> future : futures.entrySet()) {
+            String name = future.getKey();
+            try {
+                SourceResult<T> result = future.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                totals.put(name, result.getTotal());
+                facets.putAll(result.getFacets());
+                for (int i = 0; i < result.items.size(); i++) {
+                    heap.offer(new Entry<>(result.keys.get(i), result.items.get(i)));
+                    if (heap.size() > window.getFetchSize()) {
+                        heap.poll();
+                    }
+                }
+            } catch (TimeoutException e) {
+                // 中断仍在执行的查询，仍在排队的任务出队后不再执行
+                Future<?> task = tasks.get(name);
+                if (task != null) {
+                    task.cancel(true);
+                }
+                System.err.println("联合搜索数据源超时: " + name);
+                failedSources.add(name);
+                totals.put(name, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedSources.add(name);
+                totals.put(name, 0);
+            } catch (ExecutionException e) {
+                System.err.println("联合搜索数据源失败: " + name + ", " + e.getCause());
+                failedSources.add(name);
+                totals.put(name, 0);
+            }
+        }
+
+        List<Entry<T>> merged = new ArrayList<>(heap);
+        merged.sort(entryOrder);
+        boolean hasMore = merged.size() > window.getLimit();
+        if (hasMore) {
+            merged = merged.subList(0, window.getLimit());
+        }
+
+        List<T> items = new ArrayList<>();
+        for (Entry<T> entry : merged) {
+            items.add(entry.item);
+        }
+        String nextCursor = hasMore && !merged.isEmpty() ? merged.get(merged.size() - 1).key.encode() : null;
+
+        int total = 0;
+        for (int count : totals.values()) {
+            total += count;
+        }
+        return new Result<>(items, total, totals, facets, nextCursor, failedSources);
+    }
+}
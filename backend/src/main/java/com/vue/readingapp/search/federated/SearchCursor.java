@@ -0,0 +1,123 @@
+package com.vue.readingapp.search.federated;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * 搜索结果的排序键，同时用作键集分页（keyset pagination）的游标
+ *
+ * 排序键由 (relevance, createdAt, type, entityId) 组成。type + entityId 跨类型唯一，
+ * 作为最后的比较字段保证合并后的顺序是全序：同一游标之后的结果不会重复也不会遗漏。
+ * 游标编码成 URL 安全的 Base64 字符串返回给前端，下一页原样带回。
+ */
+public final class SearchCursor {
+
+    private static final String SEPARATOR = "\t";
+
+    // 定长格式，字符串比较即时间比较
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private final double relevance;
+    private final String createdAt;
+    private final String type;
+    private final long entityId;
+
+    private SearchCursor(double relevance, String createdAt, String type, long entityId) {
+        this.relevance = relevance;
+        this.createdAt = createdAt;
+        this.type = type;
+        this.entityId = entityId;
+    }
+
+    /**
+     * @param createdAt 数据库返回的时间值（Timestamp / LocalDateTime），可以为 null
+     */
+    public static SearchCursor of(double relevance, Object createdAt, String type, long entityId) {
+        return new SearchCursor(relevance, formatTime(createdAt), type, entityId);
+    }
+
+    public double getRelevance() { return relevance; }
+    public String getCreatedAt() { return createdAt; }
+    public String getType() { return type; }
+    public long getEntityId() { return entityId; }
+
+    /**
+     * 创建时间转回 LocalDateTime，用于拼接 SQL 条件
+     */
+    public LocalDateTime getCreatedAtTime() {
+        return createdAt != null ? LocalDateTime.parse(createdAt, TIME_FORMAT) : null;
+    }
+
+    private static String formatTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().format(TIME_FORMAT);
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).format(TIME_FORMAT);
+        }
+        return Timestamp.valueOf(value.toString()).toLocalDateTime().format(TIME_FORMAT);
+    }
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = relevance + SEPARATOR + (createdAt != null ? createdAt : "") + SEPARATOR + type + SEPARATOR + entityId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串，格式不正确时抛出 IllegalArgumentException
+     */
+    public static SearchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, -1);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("游标格式错误");
+            }
+            String createdAt = parts[1].isEmpty() ? null : parts[1];
+            if (createdAt != null) {
+                LocalDateTime.parse(createdAt, TIME_FORMAT);
+            }
+            return new SearchCursor(Double.parseDouble(parts[0]), createdAt, parts[2], Long.parseLong(parts[3]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + token, e);
+        }
+    }
+
+    /**
+     * 根据排序字段和方向构建比较器
+     *
+     * relevance：相关性为主，创建时间倒序为次；
+     * createdAt：按创建时间。没有创建时间的结果（如词典词条）排在最后。
+     * 两种方式最后都按 (type, entityId) 升序，保证全序。
+     */
+    public static Comparator<SearchCursor> order(String sortBy, String sortOrder) {
+        boolean ascending = "asc".equalsIgnoreCase(sortOrder);
+
+        Comparator<SearchCursor> identity = Comparator.comparing(SearchCursor::getType)
+                .thenComparingLong(SearchCursor::getEntityId);
+
+        if ("createdAt".equals(sortBy)) {
+            return Comparator.comparing(SearchCursor::getCreatedAt,
+                    Comparator.nullsLast(ascending ? Comparator.<String>naturalOrder() : Comparator.<String>reverseOrder()))
+                    .thenComparing(identity);
+        }
+
+        Comparator<SearchCursor> byRelevance = Comparator.comparingDouble(SearchCursor::getRelevance);
+        if (!ascending) {
+            byRelevance = byRelevance.reversed();
+        }
+        return byRelevance
+                .thenComparing(SearchCursor::getCreatedAt, Comparator.nullsLast(Comparator.<String>reverseOrder()))
+                .thenComparing(identity);
+    }
+}
@@ -0,0 +1,246 @@
+package com.vue.readingapp.search.history;
+
+import com.vue.readingapp.search.popular.PopularSearchTracker;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 搜索历史记录器
+ *
+ * 以前每个搜索接口在返回结果前都要同步 INSERT 一行 search_history。现在搜索只在内存中登记：
+ *   - 立即计入热门搜索统计（PopularSearchTracker）和搜索联想（SuggestionService）；
+ *   - 原始记录进入写缓冲，定时任务（默认每 2 秒）用 JDBC 批量写入，写入失败时放回缓冲重试，
+ *     多次失败的记录丢弃（与以前插入失败只打印错误一致）；
+ *   - 缓冲已满（数据库长时间写不进去）时丢弃新记录并计数，搜索线程不等待写库；
+ * 读取或清空本人搜索历史的接口先调用 flushUser，保证能看到（删除）自己刚才的搜索；删除账户时丢弃缓冲中该用户的记录。
+ * 应用正常关闭时写入全部记录。
+ */
+@Component
+public class SearchHistoryRecorder {
+
+    // 单条记录最多尝试写入的次数
+    private static final int MAX_ATTEMPTS = 5;
+    // search_history.keyword 的长度上限（字符数）
+    private static final int MAX_KEYWORD_LENGTH = 255;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PopularSearchTracker popularSearchTracker;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    // 缓冲记录上限，超过后丢弃新记录
+    @Value("${app.search.history.buffer-max-entries:10000}")
+    private int maxEntries;
+
+    private final Queue<PendingSearch> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile boolean closed = false;
+
+    // 统计信息
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private volatile long lastFlushDurationMs = 0;
+    private volatile LocalDateTime lastFlushAt;
+
+    // 一条尚未写入的搜索记录
+    private static final class PendingSearch {
+        private final long userId;
+        private final String keyword;
+        private final String searchType;
+        private final int resultCount;
+        private final Timestamp timestamp;
+        private int attempts;
+
+        PendingSearch(long userId, String keyword, String searchType, int resultCount, Timestamp timestamp) {
+            this.userId = userId;
+            this.keyword = keyword;
+            this.searchType = searchType;
+            this.resultCount = resultCount;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 记录一次搜索（未登录用户不记录）
+     */
+    public void record(Long userId, String keyword, String searchType, int resultCount) {
+        if (userId == null || keyword == null || keyword.trim().isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // 按码点截断，不拆开代理对
+        String stored = keyword.codePointCount(0, keyword.length()) > MAX_KEYWORD_LENGTH
+                ? keyword.substring(0, keyword.offsetByCodePoints(0, MAX_KEYWORD_LENGTH)) : keyword;
+        recorded.incrementAndGet();
+        popularSearchTracker.record(stored, searchType, now);
+        suggestionService.onSearch(userId, stored, searchType);
+
+        if (pendingCount.incrementAndGet() > maxEntries) {
+            pendingCount.decrementAndGet();
+            if (dropped.incrementAndGet() % 1000 == 1) {
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Search history buffer is full (" + maxEntries
+                        + " entries), dropping new entries; " + dropped.get() + " dropped so far");
+            }
+            return;
+        }
+        pending.add(new PendingSearch(userId, stored, searchType, resultCount, new Timestamp(now)));
+        if (closed) {
+            flush();
+        }
+    }
+
+    /**
+     * 已由调用方直接写入 search_history 的搜索（保存搜索），只更新统计和联想
+     */
+    public void recordPersisted(Long userId, String keyword, String searchType) {
+        if (userId == null || keyword == null || keyword.trim().isEmpty()) {
+            return;
+        }
+        recorded.incrementAndGet();
+        popularSearchTracker.record(keyword, searchType, System.currentTimeMillis());
+        suggestionService.onSearch(userId, keyword, searchType);
+    }
+
+    /**
+     * 写入某个用户缓冲中的记录（读取搜索历史之前调用）
+     */
+    public void flushUser(long userId) {
+        for (PendingSearch search : pending) {
+            if (search.userId == userId) {
+                flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 丢弃某个用户缓冲中的记录（删除账户）
+     */
+    public void discardUser(long userId) {
+        flushLock.lock();
+        try {
+            int before = pending.size();
+            pending.removeIf(search -> search.userId == userId);
+            pendingCount.addAndGet(pending.size() - before);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.history.flush-interval-ms:2000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 写入全部缓冲记录
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<PendingSearch> batch = new ArrayList<>();
+            PendingSearch search;
+            while ((search = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.add(search);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            long startedAt = System.nanoTime();
+            // 缓冲期间用户可能已被删除，插入时再核对一次，避免外键错误导致整批失败
+            List<Object[]> args = new ArrayList<>();
+            for (PendingSearch item : batch) {
+                args.add(new Object[]{item.userId, item.keyword, item.searchType, item.resultCount, item.timestamp, item.userId});
+            }
+            try {
+                transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                        "INSERT INTO search_history (user_id, keyword, search_type, result_count, timestamp) " +
+                                "SELECT ?, ?, ?, ?, ? FROM users WHERE user_id = ?", args));
+            } catch (Exception e) {
+                failedFlushCount.incrementAndGet();
+                requeue(batch);
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to write " + batch.size()
+                        + " search history entries, will retry: " + e.getMessage());
+                return;
+            }
+
+            flushCount.incrementAndGet();
+            written.addAndGet(batch.size());
+            lastFlushDurationMs = (System.nanoTime() - startedAt) / 1_000_000;
+            lastFlushAt = LocalDateTime.now();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        flush();
+        if (!pending.isEmpty()) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] " + pending.size()
+                    + " search history entries could not be written before shutdown");
+        } else {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Search history buffer flushed on shutdown");
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pendingEntries", pendingCount.get());
+        metrics.put("recorded", recorded.get());
+        metrics.put("written", written.get());
+        metrics.put("dropped", dropped.get());
+        metrics.put("flushCount", flushCount.get());
+        metrics.put("failedFlushCount", failedFlushCount.get());
+        metrics.put("lastFlushDurationMs", lastFlushDurationMs);
+        metrics.put("lastFlushAt", lastFlushAt != null ? lastFlushAt.toString() : null);
+        metrics.put("popular", popularSearchTracker.getMetrics());
+        return metrics;
+    }
+
+    // 写入失败：放回缓冲，超过重试次数的记录丢弃
+    private void requeue(List<PendingSearch> batch) {
+        int droppedNow = 0;
+        for (PendingSearch search : batch) {
+            if (++search.attempts >= MAX_ATTEMPTS) {
+                droppedNow++;
+                continue;
+            }
+            pending.add(search);
+            pendingCount.incrementAndGet();
+        }
+        if (droppedNow > 0) {
+            dropped.addAndGet(droppedNow);
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Dropped " + droppedNow
+                    + " search history entries after " + MAX_ATTEMPTS + " failed attempts");
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.vue.readingapp.search.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 全文搜索索引服务
+ *
+ * 以前的搜索接口都对 documents / document_pages / document_notes / document_highlights
+ * 的 TEXT 列执行 LIKE '%q%'，只能全表扫描。这里为每个用户在内存中维护一份倒排索引：
+ *   - 用户第一次搜索时从数据库加载该用户的文档元数据、页面正文、笔记和高亮；
+ *   - OCR 写入 document_pages、文档和笔记/高亮增删改时增量更新（只更新已加载的用户）；
+ *   - 按 BM25 排序，中文按二元组切分（见 SearchTokenizer）；
+ *   - 已加载的用户数量有上限，超出后按 LRU 淘汰，被淘汰的用户下次搜索时重新加载。
+ *
+ * 查询只返回命中的 ID 和得分，展示字段由各接口按 ID 回表读取。
+ */
+@Component
+public class SearchIndexService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 同时保留在内存中的用户索引数量
+    @Value("${app.search.index.max-users:1000}")
+    private int maxUsers;
+
+    // 单次查询最多返回的命中数
+    @Value("${app.search.index.max-results:1000}")
+    private int maxResults;
+
+    /**
+     * 一条命中结果
+     */
+    public static class SearchHit {
+        private final long id;
+        private final long documentId;
+        private final int pageNumber;
+        private final double score;
+        private double relevance;
+
+        SearchHit(long id, long documentId, int pageNumber, double score) {
+            this.id = id;
+            this.documentId = documentId;
+            this.pageNumber = pageNumber;
+            this.score = score;
+        }
+
+        public long getId() { return id; }
+        public long getDocumentId() { return documentId; }
+        // 文档命中时为得分最高的页码，只命中标题等元数据时为 0
+        public int getPageNumber() { return pageNumber; }
+        public double getScore() { return score; }
+        // 归一化到 [0, 1] 的相关性（相对于本次查询的最高分）
+        public double getRelevance() { return relevance; }
+    }
+
+    private final Map<Long, UserSearchIndex> indexes = Collections.synchronizedMap(
+            new LinkedHashMap<Long, UserSearchIndex>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UserSearchIndex> eldest) {
+                    return size() > maxUsers;
+                }
+            });
+
+    // 已加载用户的 文档ID -> 用户ID，供只知道文档ID的更新（如 OCR 写页面）定位索引
+    private final Map<Long, Long> documentOwners = new ConcurrentHashMap<>();
+
+    // ========== 查询 ==========
+
+    /**
+     * 搜索用户的文档：标题/作者/描述/文件名与页面正文分别打分后按文档合并
+     */
+    public List<SearchHit> searchDocuments(long userId, String query) {
+        List<String> terms = SearchTokenizer.tokenizeQuery(query);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        UserSearchIndex index = getIndex(userId);
+        Map<Long, Double> documentScores = new HashMap<>();
+        Map<Long, Integer> bestPages = new HashMap<>();
+
+        index.getLock().readLock().lock();
+        try {
+            documentScores.putAll(index.score(UserSearchIndex.DOCUMENT, terms));
+
+            Map<Long, Double> bestPageScores = new HashMap<>();
+            for (Map.Entry<Long, Double> pageScore : index.score(UserSearchIndex.PAGE, terms).entrySet()) {
+                UserSearchIndex.Entry page = index.getEntry(UserSearchIndex.PAGE, pageScore.getKey());
+                Double best = bestPageScores.get(page.documentId);
+                if (best == null || pageScore.getValue() > best) {
+                    bestPageScores.put(page.documentId, pageScore.getValue());
+                    bestPages.put(page.documentId, page.pageNumber);
+                }
+            }
+            for (Map.Entry<Long, Double> pageScore : bestPageScores.entrySet()) {
+                documentScores.merge(pageScore.getKey(), pageScore.getValue(), Double::sum);
+            }
+        } finally {
+            index.getLock().readLock().unlock();
+        }
+
+        List<SearchHit> hits = new ArrayList<>();
+        for (Map.Entry<Long, Double> score : documentScores.entrySet()) {
+            long documentId = score.getKey();
+            hits.add(new SearchHit(documentId, documentId, bestPages.getOrDefault(documentId, 0), score.getValue()));
+        }
+        return rank(hits);
+    }
+
+    /**
+     * 搜索用户的笔记
+     */
+    public List<SearchHit> searchNotes(long userId, String query) {
+        return searchEntries(userId, UserSearchIndex.NOTE, query);
+    }
+
+    /**
+     * 搜索用户的高亮（高亮文本和附带的批注）
+     */
+    public List<SearchHit> searchHighlights(long userId, String query) {
+        return searchEntries(userId, UserSearchIndex.HIGHLIGHT, query);
+    }
+
+    private List<SearchHit> searchEntries(long userId, String type, String query) {
+        List<String> terms = SearchTokenizer.tokenizeQuery(query);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        UserSearchIndex index = getIndex(userId);
+        List<SearchHit> hits = new ArrayList<>();
+        index.getLock().readLock().lock();
+        try {
+            for (Map.Entry<Long, Double> score : index.score(type, terms).entrySet()) {
+                UserSearchIndex.Entry entry = index.getEntry(type, score.getKey());
+                hits.add(new SearchHit(entry.id, entry.documentId, entry.pageNumber, score.getValue()));
+            }
+        } finally {
+            index.getLock().readLock().unlock();
+        }
+        return rank(hits);
+    }
+
+    private List<SearchHit> rank(List<SearchHit> hits) {
+        hits.sort((a, b) -> Double.compare(b.score, a.score));
+        if (hits.size() > maxResults) {
+            hits = new ArrayList<>(hits.subList(0, maxResults));
+        }
+        double top = hits.isEmpty() ? 0 : hits.get(0).score;
+        for (SearchHit hit : hits) {
+            hit.relevance = top > 0 ? Math.round(hit.score / top * 1000) / 1000.0 : 0;
+        }
+        return hits;
+    }
+
+    /**
+     * 读取命中页的正文，供接口生成摘要：返回 文档ID -> 页面正文（只命中元数据的文档不在结果中）
+     */
+    public Map<Long, String> loadHitPageContents(List<SearchHit> hits) {
+        Map<Long, String> contents = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT document_id, content FROM document_pages WHERE (document_id, page_number) IN (");
+        List<Object> params = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            if (hit.getPageNumber() <= 0) {
+                continue;
+            }
+            if (!params.isEmpty()) {
+                sql.append(", ");
+            }
+            sql.append("(?, ?)");
+            params.add(hit.getDocumentId());
+            params.add(hit.getPageNumber());
+        }
+        if (params.isEmpty()) {
+            return contents;
+        }
+        sql.append(")");
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sql.toString(), params.toArray())) {
+            contents.put(((Number) row.get("document_id")).longValue(), (String) row.get("content"));
+        }
+        return contents;
+    }
+
+    // ========== 增量更新 ==========
+
+    /**
+     * 文档新建或元数据（标题、作者、描述、文件名）变化后调用
+     */
+    public void onDocumentChanged(long documentId) {
+        try {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT document_id, user_id, title, author, description, file_name, deleted_at FROM documents WHERE document_id = ?",
+                    documentId);
+            if (rows.isEmpty() || rows.get(0).get("deleted_at") != null) {
+                onDocumentRemoved(documentId);
+                return;
+            }
+            Map<String, Object> row = rows.get(0);
+            long userId = ((Number) row.get("user_id")).longValue();
+            UserSearchIndex index = getLoadedIndex(userId);
+            if (index == null) {
+                return;
+            }
+            documentOwners.put(documentId, userId);
+            index.getLock().writeLock().lock();
+            try {
+                index.put(UserSearchIndex.DOCUMENT, documentEntry(row));
+            } finally {
+                index.getLock().writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("更新文档搜索索引失败, documentId=" + documentId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 文档删除后调用：同时移除其页面、笔记和高亮（数据库中它们会被级联删除）
+     */
+    public void onDocumentRemoved(long documentId) {
+        Long userId = documentOwners.remove(documentId);
+        List<UserSearchIndex> targets = new ArrayList<>();
+        if (userId != null) {
+            UserSearchIndex index = getLoadedIndex(userId);
+            if (index != null) {
+                targets.add(index);
+            }
+        } else {
+            synchronized (indexes) {
+                targets.addAll(indexes.values());
+            }
+        }
+        for (UserSearchIndex index : targets) {
+            index.getLock().writeLock().lock();
+            try {
+                index.removeDocument(documentId);
+            } finally {
+                index.getLock().writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * OCR / 文本提取写入 document_pages 后调用
+     *
+     * @param pages 页码 -> 页面正文
+     */
+    public void onPagesWritten(long documentId, Map<Integer, String> pages) {
+        try {
+            Long userId = findOwner(documentId);
+            if (userId == null) {
+                return;
+            }
+            UserSearchIndex index = getLoadedIndex(userId);
+            if (index == null) {
+                return;
+            }
+            index.getLock().writeLock().lock();
+            try {
+                for (Map.Entry<Integer, String> page : pages.entrySet()) {
+                    long id = UserSearchIndex.pageEntryId(documentId, page.getKey());
+                    index.put(UserSearchIndex.PAGE, new UserSearchIndex.EntryBuilder()
+                            .field(page.getValue(), 1)
+                            .build(id, documentId, page.getKey()));
+                }
+            } finally {
+                index.getLock().writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("更新页面搜索索引失败, documentId=" + documentId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 笔记新建或修改后调用
+     */
+    public void onNoteChanged(long noteId) {
+        try {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT note_id, user_id, document_id, page, content FROM document_notes WHERE note_id = ?", noteId);
+            if (rows.isEmpty()) {
+                return;
+            }
+            Map<String, Object> row = rows.get(0);
+            UserSearchIndex index = getLoadedIndex(((Number) row.get("user_id")).longValue());
+            if (index == null) {
+                return;
+            }
+            index.getLock().writeLock().lock();
+            try {
+                index.put(UserSearchIndex.NOTE, noteEntry(row));
+            } finally {
+                index.getLock().writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("更新笔记搜索索引失败, noteId=" + noteId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 笔记删除后调用
+     */
+    public void onNoteRemoved(long userId, long noteId) {
+        removeEntry(userId, UserSearchIndex.NOTE, noteId);
+    }
+
+    /**
+     * 高亮新建或修改后调用
+     */
+    public void onHighlightChanged(long highlightId) {
+        try {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT highlight_id, user_id, document_id, page, text, note FROM document_highlights WHERE highlight_id = ?", highlightId);
+            if (rows.isEmpty()) {
+                return;
+            }
+            Map<String, Object> row = rows.get(0);
+            UserSearchIndex index = getLoadedIndex(((Number) row.get("user_id")).longValue());
+            if (index == null) {
+                return;
+            }
+            index.getLock().writeLock().lock();
+            try {
+                index.put(UserSearchIndex.HIGHLIGHT, highlightEntry(row));
+            } finally {
+                index.getLock().writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("更新高亮搜索索引失败, highlightId=" + highlightId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 高亮删除后调用
+     */
+    public void onHighlightRemoved(long userId, long highlightId) {
+        removeEntry(userId, UserSearchIndex.HIGHLIGHT, highlightId);
+    }
+
+    /**
+     * 丢弃某个用户的索引（如注销账号），下次搜索时会重新加载
+     */
+    public void dropUser(long userId) {
+        indexes.remove(userId);
+        documentOwners.values().removeIf(owner -> owner == userId);
+    }
+
+    /**
+     * 索引状态，供监控使用
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        List<UserSearchIndex> loaded;
+        synchronized (indexes) {
+            loaded = new ArrayList<>(indexes.values());
+        }
+        long entries = 0;
+        for (UserSearchIndex index : loaded) {
+            index.getLock().readLock().lock();
+            try {
+                entries += index.size();
+            } finally {
+                index.getLock().readLock().unlock();
+            }
+        }
+        stats.put("loadedUsers", loaded.size());
+        stats.put("maxUsers", maxUsers);
+        stats.put("entries", entries);
+        return stats;
+    }
+
+    private void removeEntry(long userId, String type, long id) {
+        UserSearchIndex index = getLoadedIndex(userId);
+        if (index == null) {
+            return;
+        }
+        index.getLock().writeLock().lock();
+        try {
+            index.remove(type, id);
+        } finally {
+            index.getLock().writeLock().unlock();
+        }
+    }
+
+    // ========== 加载 ==========
+
+    private UserSearchIndex getLoadedIndex(long userId) {
+        return indexes.get(userId);
+    }
+
+    /**
+     * 获取用户索引，尚未加载时从数据库构建。
+     * 先把空索引放入映射再持写锁加载：加载期间到达的增量更新会在写锁上等待，
+     * 加载完成后再应用，不会丢失。
+     */
+    private UserSearchIndex getIndex(long userId) {
+        UserSearchIndex index;
+        synchronized (indexes) {
+            index = indexes.get(userId);
+            if (index == null) {
+                index = new UserSearchIndex();
+                indexes.put(userId, index);
+            }
+        }
+
+        if (!index.isLoaded()) {
+            index.getLock().writeLock().lock();
+            try {
+                if (!index.isLoaded()) {
+                    load(userId, index);
+                    index.markLoaded();
+                }
+            } finally {
+                index.getLock().writeLock().unlock();
+            }
+        }
+        return index;
+    }
+
+    private void load(long userId, UserSearchIndex index) {
+        long start = System.currentTimeMillis();
+
+        jdbcTemplate.query("SELECT document_id, title, author, description, file_name FROM documents " +
+                "WHERE user_id = ? AND deleted_at IS NULL", rs -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("document_id", rs.getLong("document_id"));
+            row.put("title", rs.getString("title"));
+            row.put("author", rs.getString("author"));
+            row.put("description", rs.getString("description"));
+            row.put("file_name", rs.getString("file_name"));
+            index.put(UserSearchIndex.DOCUMENT, documentEntry(row));
+            documentOwners.put(rs.getLong("document_id"), userId);
+        }, userId);
+
+        // 页面正文可能很大，逐行处理，不一次性加载成 List
+        jdbcTemplate.query("SELECT p.document_id, p.page_number, p.content FROM document_pages p " +
+                "INNER JOIN documents d ON p.document_id = d.document_id " +
+                "WHERE d.user_id = ? AND d.deleted_at IS NULL", rs -> {
+            long documentId = rs.getLong("document_id");
+            int pageNumber = rs.getInt("page_number");
+            index.put(UserSearchIndex.PAGE, new UserSearchIndex.EntryBuilder()
+                    .field(rs.getString("content"), 1)
+                    .build(UserSearchIndex.pageEntryId(documentId, pageNumber), documentId, pageNumber));
+        }, userId);
+
+        jdbcTemplate.query("SELECT note_id, document_id, page, content FROM document_notes WHERE user_id = ?", rs -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("note_id", rs.getLong("note_id"));
+            row.put("document_id", rs.getLong("document_id"));
+            row.put("page", rs.getInt("page"));
+            row.put("content", rs.getString("content"));
+            index.put(UserSearchIndex.NOTE, noteEntry(row));
+        }, userId);
+
+        jdbcTemplate.query("SELECT highlight_id, document_id, page, text, note FROM document_highlights WHERE user_id = ?", rs -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("highlight_id", rs.getLong("highlight_id"));
+            row.put("document_id", rs.getLong("document_id"));
+            row.put("page", rs.getInt("page"));
+            row.put("text", rs.getString("text"));
+            row.put("note", rs.getString("note"));
+            index.put(UserSearchIndex.HIGHLIGHT, highlightEntry(row));
+        }, userId);
+
+        System.out.println("INFO: 已加载用户 " + userId + " 的搜索索引，条目数: " + index.size()
+                + "，耗时: " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private Long findOwner(long documentId) {
+        Long owner = documentOwners.get(documentId);
+        if (owner != null) {
+            return owner;
+        }
+        // 只有对应用户的索引已加载时才需要知道归属
+        if (indexes.isEmpty()) {
+            return null;
+        }
+        List<Long> rows = jdbcTemplate.queryForList("SELECT user_id FROM documents WHERE document_id = ?", Long.class, documentId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        if (indexes.containsKey(rows.get(0))) {
+            documentOwners.put(documentId, rows.get(0));
+        }
+        return rows.get(0);
+    }
+
+    // ========== 条目构建 ==========
+
+    private static UserSearchIndex.Entry documentEntry(Map<String, Object> row) {
+        long documentId = ((Number) row.get("document_id")).longValue();
+        return new UserSearchIndex.EntryBuilder()
+                .field((String) row.get("title"), 3)
+                .field((String) row.get("author"), 2)
+                .field((String) row.get("description"), 1)
+                .field((String) row.get("file_name"), 1)
+                .build(documentId, documentId, 0);
+    }
+
+    private static UserSearchIndex.Entry noteEntry(Map<String, Object> row) {
+        return new UserSearchIndex.EntryBuilder()
+                .field((String) row.get("content"), 1)
+                .build(((Number) row.get("note_id")).longValue(), ((Number) row.get("document_id")).longValue(),
+                        row.get("page") != null ? ((Number) row.get("page")).intValue() : 0);
+    }
+
+    private static UserSearchIndex.Entry highlightEntry(Map<String, Object> row) {
+        return new UserSearchIndex.EntryBuilder()
+                .field((String) row.get("text"), 2)
+                .field((String) row.get("note"), 1)
+                .build(((Number) row.get("highlight_id")).longValue(), ((Number) row.get("document_id")).longValue(),
+                        row.get("page") != null ? ((Number) row.get("page")).intValue() : 0);
+    }
+}
@@ -0,0 +1,141 @@
+package com.vue.readingapp.search.index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 搜索分词器
+ *
+ * 内容以 chi_sim+eng 为主，不引入词典分词：
+ *   - 拉丁字母 / 数字：按连续字母数字切词并转小写；
+ *   - 中日韩文字：输出单字和相邻两字的二元组（bigram）。
+ *     建索引时单字和二元组都写入，查询时长度 >= 2 的中文片段只用二元组，单个汉字才用单字，
+ *     这样 "阅读器" 查询会匹配 "阅读"、"读器" 两个二元组，而不会被高频单字拖低相关性。
+ */
+public final class SearchTokenizer {
+
+    // 超长的"词"（base64、URL 等）没有检索价值
+    private static final int MAX_TOKEN_LENGTH = 40;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 建索引用的分词：CJK 部分同时输出单字和二元组
+     */
+    public static List<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询用的分词（去重，保持出现顺序）
+     */
+    public static List<String> tokenizeQuery(String query) {
+        return new ArrayList<>(new LinkedHashSet<>(tokenize(query, false)));
+    }
+
+    private static List<String> tokenize(String text, boolean forIndex) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+        int cjkRunLength = 0;
+
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                if (forIndex) {
+                    tokens.add(new String(Character.toChars(codePoint)));
+                }
+                if (previousCjk >= 0) {
+                    tokens.add(new String(new int[]{previousCjk, codePoint}, 0, 2));
+                }
+                previousCjk = codePoint;
+                cjkRunLength++;
+            } else {
+                if (cjkRunLength == 1 && !forIndex) {
+                    tokens.add(new String(Character.toChars(previousCjk)));
+                }
+                previousCjk = -1;
+                cjkRunLength = 0;
+
+                if (Character.isLetterOrDigit(codePoint)) {
+                    word.appendCodePoint(Character.toLowerCase(codePoint));
+                } else {
+                    flushWord(word, tokens);
+                }
+            }
+        }
+
+        if (cjkRunLength == 1 && !forIndex) {
+            tokens.add(new String(Character.toChars(previousCjk)));
+        }
+        flushWord(word, tokens);
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.length() > 0) {
+            if (word.length() <= MAX_TOKEN_LENGTH) {
+                tokens.add(word.toString());
+            }
+            word.setLength(0);
+        }
+    }
+
+    public static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 生成摘要：截取第一个命中查询词的位置前后若干字符，没有命中时取开头
+     */
+    public static String excerpt(String text, String query, int maxLength) {
+        if (text == null) {
+            return null;
+        }
+        if (text.length() <= maxLength) {
+            return text;
+        }
+
+        String lowerText = text.toLowerCase();
+        int hit = -1;
+        Set<String> candidates = new LinkedHashSet<>();
+        if (query != null && !query.trim().isEmpty()) {
+            candidates.add(query.trim().toLowerCase());
+            candidates.addAll(tokenizeQuery(query));
+        }
+        for (String candidate : candidates) {
+            hit = lowerText.indexOf(candidate);
+            if (hit >= 0) {
+                break;
+            }
+        }
+
+        int start = hit < 0 ? 0 : Math.max(0, hit - maxLength / 3);
+        int end = Math.min(text.length(), start + maxLength);
+        start = Math.max(0, end - maxLength);
+
+        StringBuilder sb = new StringBuilder();
+        if (start > 0) {
+            sb.append("...");
+        }
+        sb.append(text, start, end);
+        if (end < text.length()) {
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+}
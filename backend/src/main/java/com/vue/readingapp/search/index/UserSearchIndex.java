@@ -0,0 +1,221 @@
+package com.vue.readingapp.search.index;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个用户的倒排索引
+ *
+ * 按实体类型分段（文档元数据、文档页面、笔记、高亮），每段独立维护文档频率和平均长度，
+ * 因此 BM25 的 IDF / 长度归一化只在同类内容之间比较。
+ * 读多写少，使用读写锁：查询并发执行，增量更新时短暂独占。
+ */
+class UserSearchIndex {
+
+    static final String DOCUMENT = "document";
+    static final String PAGE = "page";
+    static final String NOTE = "note";
+    static final String HIGHLIGHT = "highlight";
+
+    // BM25 参数
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * 索引中的一个条目
+     */
+    static class Entry {
+        final long id;
+        final long documentId;
+        final int pageNumber;
+        final Map<String, Integer> termFrequencies;
+        final int length;
+
+        Entry(long id, long documentId, int pageNumber, Map<String, Integer> termFrequencies) {
+            this.id = id;
+            this.documentId = documentId;
+            this.pageNumber = pageNumber;
+            this.termFrequencies = termFrequencies;
+            int total = 0;
+            for (int tf : termFrequencies.values()) {
+                total += tf;
+            }
+            this.length = total;
+        }
+    }
+
+    /**
+     * 构建条目的词频：每个字段按权重累加，用于标题等字段加权
+     */
+    static class EntryBuilder {
+        private final Map<String, Integer> termFrequencies = new HashMap<>();
+
+        EntryBuilder field(String text, int weight) {
+            for (String token : SearchTokenizer.tokenizeForIndex(text)) {
+                termFrequencies.merge(token, weight, Integer::sum);
+            }
+            return this;
+        }
+
+        Entry build(long id, long documentId, int pageNumber) {
+            return new Entry(id, documentId, pageNumber, termFrequencies);
+        }
+    }
+
+    /**
+     * 一个类型的索引段
+     */
+    private static class Segment {
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+        private long totalLength = 0;
+
+        void put(Entry entry) {
+            remove(entry.id);
+            entries.put(entry.id, entry);
+            for (Map.Entry<String, Integer> term : entry.termFrequencies.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), k -> new HashMap<>()).put(entry.id, term.getValue());
+            }
+            totalLength += entry.length;
+        }
+
+        void remove(long id) {
+            Entry old = entries.remove(id);
+            if (old == null) {
+                return;
+            }
+            for (String term : old.termFrequencies.keySet()) {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting != null) {
+                    posting.remove(id);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            totalLength -= old.length;
+        }
+
+        void removeByDocument(long documentId) {
+            List<Long> ids = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                if (entry.documentId == documentId) {
+                    ids.add(entry.id);
+                }
+            }
+            for (Long id : ids) {
+                remove(id);
+            }
+        }
+
+        /**
+         * BM25 打分。所有查询词都必须出现（与原来的 LIKE '%q%' 一样是"全部包含"语义），
+         * 从文档频率最低的词开始求交集，候选集合很快收敛。
+         */
+        Map<Long, Double> score(List<String> queryTerms) {
+            Map<Long, Double> scores = new HashMap<>();
+            if (queryTerms.isEmpty() || entries.isEmpty()) {
+                return scores;
+            }
+
+            List<Map<Long, Integer>> termPostings = new ArrayList<>();
+            for (String term : queryTerms) {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    return scores;
+                }
+                termPostings.add(posting);
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < termPostings.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparingInt(i -> termPostings.get(i).size()));
+
+            Set<Long> candidates = new HashSet<>(termPostings.get(order.get(0)).keySet());
+            for (int i = 1; i < order.size() && !candidates.isEmpty(); i++) {
+                candidates.retainAll(termPostings.get(order.get(i)).keySet());
+            }
+
+            int n = entries.size();
+            double averageLength = Math.max(1.0, (double) totalLength / n);
+            for (Long id : candidates) {
+                Entry entry = entries.get(id);
+                double lengthNorm = K1 * (1 - B + B * entry.length / averageLength);
+                double score = 0;
+                for (Map<Long, Integer> posting : termPostings) {
+                    int df = posting.size();
+                    double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                    int tf = posting.get(id);
+                    score += idf * tf * (K1 + 1) / (tf + lengthNorm);
+                }
+                scores.put(id, score);
+            }
+            return scores;
+        }
+    }
+
+    private final Map<String, Segment> segments = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean loaded = false;
+
+    UserSearchIndex() {
+        segments.put(DOCUMENT, new Segment());
+        segments.put(PAGE, new Segment());
+        segments.put(NOTE, new Segment());
+        segments.put(HIGHLIGHT, new Segment());
+    }
+
+    ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void markLoaded() {
+        loaded = true;
+    }
+
+    /** 调用方需持有写锁 */
+    void put(String type, Entry entry) {
+        segments.get(type).put(entry);
+    }
+
+    /** 调用方需持有写锁 */
+    void remove(String type, long id) {
+        segments.get(type).remove(id);
+    }
+
+    /** 调用方需持有写锁：删除与某个文档相关的所有条目（元数据、页面、笔记、高亮） */
+    void removeDocument(long documentId) {
+        for (Segment segment : segments.values()) {
+            segment.removeByDocument(documentId);
+        }
+    }
+
+    /** 调用方需持有读锁 */
+    Map<Long, Double> score(String type, List<String> queryTerms) {
+        return segments.get(type).score(queryTerms);
+    }
+
+    /** 调用方需持有读锁 */
+    Entry getEntry(String type, long id) {
+        return segments.get(type).entries.get(id);
+    }
+
+    /** 调用方需持有读锁 */
+    int size() {
+        int total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.entries.size();
+        }
+        return total;
+    }
+
+    static long pageEntryId(long documentId, int pageNumber) {
+        return (documentId << 20) | (pageNumber & 0xFFFFF);
+    }
+}
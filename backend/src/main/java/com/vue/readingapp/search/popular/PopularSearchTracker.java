@@ -0,0 +1,536 @@
+package com.vue.readingapp.search.popular;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 热门搜索统计
+ *
+ * 以前热门搜索接口每次都对整张 search_history 表做 COUNT(*) ... GROUP BY keyword，
+ * 表随使用时间不断增大。现在每次搜索在内存中计数：
+ *   - 时间按小时、天、周分桶（按服务器时区对齐，周从周一开始），每次搜索同时计入三个粒度的当前桶；
+ *   - 每个桶是一份 Space-Saving 摘要（见 SpaceSavingSummary），只保留固定数量的计数器；
+ *   - 查询时合并最近 N 个桶得到时间窗口内的排名：hour = 当前小时，day = 最近 24 个小时桶，
+ *     week / month = 最近 7 / 30 个天桶，quarter / year = 最近 13 / 52 个周桶；
+ *     趋势由同一窗口与上一个等长窗口的次数比较得出。
+ * 摘要定期保存到 search_popularity_snapshots 表，每个实例（node）各存一份：
+ *   - 重启后恢复本实例的快照，再用 search_history 补上本实例最后一次快照之后写入的搜索；
+ *     多实例部署时这段时间内其他实例的搜索也会被补入（最多约一个快照间隔的重复计数）；
+ *   - 其他实例的快照在每次保存后重新读取，查询时与本实例的桶合并，排名覆盖全部实例；
+ *   - 表为空（首次部署）时从 search_history 重建一次。
+ */
+@Component
+public class PopularSearchTracker {
+
+    private static final long HOUR_MILLIS = 3600_000L;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    /**
+     * 时间桶粒度，retention 为保留的桶数（最长窗口的两倍，用于计算趋势）
+     */
+    enum Granularity {
+        HOUR("hour", 48),
+        DAY("day", 62),
+        WEEK("week", 106);
+
+        final String code;
+        final int retention;
+
+        Granularity(String code, int retention) {
+            this.code = code;
+            this.retention = retention;
+        }
+    }
+
+    /**
+     * 一条热门搜索
+     */
+    public static class PopularSearch {
+        private final String keyword;
+        private final String type;
+        private final long count;
+        private final long previousCount;
+        private final long lastSearched;
+
+        PopularSearch(String keyword, String type, long count, long previousCount, long lastSearched) {
+            this.keyword = keyword;
+            this.type = type;
+            this.count = count;
+            this.previousCount = previousCount;
+            this.lastSearched = lastSearched;
+        }
+
+        public String getKeyword() { return keyword; }
+        public String getType() { return type; }
+        /** 窗口内的搜索次数（Space-Saving 估计值，可能略高） */
+        public long getCount() { return count; }
+        /** 上一个等长窗口内的搜索次数 */
+        public long getPreviousCount() { return previousCount; }
+        public long getLastSearched() { return lastSearched; }
+
+        /** rising / falling / stable */
+        public String getTrend() {
+            return trend(count, previousCount);
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 每个时间桶保留的计数器数量
+    @Value("${app.search.popular.summary-capacity:256}")
+    private int capacity;
+
+    // 首次部署时从 search_history 重建统计
+    @Value("${app.search.popular.bootstrap-from-history:true}")
+    private boolean bootstrapFromHistory;
+
+    // 本实例的标识，快照按实例分别保存；为空时使用主机名
+    @Value("${app.search.popular.node-id:}")
+    private String configuredNodeId;
+
+    private String nodeId;
+
+    // 粒度 -> (桶编号 -> 摘要)，只包含本实例的搜索；访问某个粒度的桶时在 synchronized (该 TreeMap) 中进行
+    private final Map<Granularity, TreeMap<Long, SpaceSavingSummary>> buckets = new HashMap<>();
+
+    // 其他实例（以及升级前未区分实例）的快照，按桶合并；每次保存快照后整体替换，只读
+    private volatile Map<Granularity, TreeMap<Long, SpaceSavingSummary>> peerBuckets = emptyBuckets();
+
+    // 启动时间之前的搜索由快照或 search_history 重建提供，之后的搜索由 record 计入
+    private final long startedAt = System.currentTimeMillis();
+
+    public PopularSearchTracker() {
+        buckets.putAll(emptyBuckets());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        nodeId = configuredNodeId != null && !configuredNodeId.trim().isEmpty() ? configuredNodeId.trim() : localHostName();
+        try {
+            Integer tableCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'search_popularity_snapshots'",
+                    Integer.class);
+            if (tableCount == null || tableCount == 0) {
+                System.out.println("INFO: Creating table 'search_popularity_snapshots'...");
+                jdbcTemplate.execute("CREATE TABLE search_popularity_snapshots (" +
+                        "granularity VARCHAR(8) NOT NULL," +
+                        "bucket BIGINT NOT NULL," +
+                        "node VARCHAR(100) NOT NULL DEFAULT ''," +
+                        "summary_data MEDIUMBLOB NOT NULL," +
+                        "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                        "PRIMARY KEY (granularity, bucket, node)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            } else {
+                List<String> columns = jdbcTemplate.queryForList(
+                        "SELECT COLUMN_NAME FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'search_popularity_snapshots'",
+                        String.class);
+                if (!columns.contains("node")) {
+                    // 升级前的快照 node 为空，作为其他实例的快照读取
+                    System.out.println("INFO: Adding column 'node' to 'search_popularity_snapshots'...");
+                    jdbcTemplate.execute("ALTER TABLE search_popularity_snapshots ADD COLUMN node VARCHAR(100) NOT NULL DEFAULT '' AFTER bucket, " +
+                            "DROP PRIMARY KEY, ADD PRIMARY KEY (granularity, bucket, node)");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to check popular search schema: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Map<Granularity, Long> lastSaved = new EnumMap<>(Granularity.class);
+            int restored = restoreSnapshots(lastSaved);
+            if (restored > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Restored " + restored + " popular search buckets of node " + nodeId + " from snapshots");
+            }
+            if (!lastSaved.isEmpty()) {
+                replayHistory(lastSaved);
+            }
+            if (loadPeerSnapshots() == 0 && restored == 0 && bootstrapFromHistory) {
+                bootstrap();
+            }
+            snapshot();
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to restore popular searches: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一次搜索
+     */
+    public void record(String keyword, String searchType, long time) {
+        String display = keyword != null ? keyword.trim() : "";
+        if (display.isEmpty()) {
+            return;
+        }
+        String type = searchType != null ? searchType : "all";
+        String key = key(display, type);
+        for (Granularity granularity : Granularity.values()) {
+            bucket(granularity, bucketOf(granularity, time)).offer(key, display, type, 1, time);
+        }
+    }
+
+    /**
+     * 时间窗口内的热门搜索，按次数降序
+     *
+     * @param timeRange hour / day / week / month / quarter / year，其他值按 week 处理
+     * @param type 搜索类型，null 或 "all" 表示不限
+     */
+    public List<PopularSearch> top(String timeRange, String type, int limit) {
+        Map<String, SpaceSavingSummary.Counter> current = window(timeRange, type, 0);
+        Map<String, SpaceSavingSummary.Counter> previous = window(timeRange, type, 1);
+
+        List<SpaceSavingSummary.Counter> counters = new ArrayList<>(current.values());
+        counters.sort((a, b) -> b.count != a.count ? Long.compare(b.count, a.count) : Long.compare(b.lastSeen, a.lastSeen));
+
+        List<PopularSearch> result = new ArrayList<>();
+        for (SpaceSavingSummary.Counter counter : counters) {
+            if (result.size() >= limit) {
+                break;
+            }
+            SpaceSavingSummary.Counter before = previous.get(key(counter.keyword, counter.type));
+            result.add(new PopularSearch(counter.keyword, counter.type, counter.count,
+                    before != null ? before.count : 0, counter.lastSeen));
+        }
+        return result;
+    }
+
+    /**
+     * 一组 (关键词, 搜索类型) 在时间窗口内的趋势，按输入顺序返回
+     */
+    public List<String> trendsOf(String timeRange, List<String> keywords, List<String> types) {
+        Map<String, SpaceSavingSummary.Counter> current = window(timeRange, null, 0);
+        Map<String, SpaceSavingSummary.Counter> previous = window(timeRange, null, 1);
+        List<String> trends = new ArrayList<>();
+        for (int i = 0; i < keywords.size(); i++) {
+            String key = key(keywords.get(i), types.get(i) != null ? types.get(i) : "all");
+            SpaceSavingSummary.Counter now = current.get(key);
+            SpaceSavingSummary.Counter before = previous.get(key);
+            trends.add(trend(now != null ? now.count : 0, before != null ? before.count : 0));
+        }
+        return trends;
+    }
+
+    /**
+     * 保存有变化的时间桶，并删除超出保留范围的快照
+     */
+    @Scheduled(fixedDelayString = "${app.search.popular.snapshot-interval-ms:300000}")
+    public synchronized void snapshot() {
+        if (nodeId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int saved = 0;
+        for (Granularity granularity : Granularity.values()) {
+            long current = bucketOf(granularity, now);
+            long oldest = current - granularity.retention + 1;
+            List<Long> bucketIds = new ArrayList<>();
+            List<SpaceSavingSummary> summaries = new ArrayList<>();
+            TreeMap<Long, SpaceSavingSummary> map = buckets.get(granularity);
+            // 当前桶没有变化也保存，updated_at 即为本实例最后一次保存快照的时间
+            bucket(granularity, current);
+            synchronized (map) {
+                map.headMap(oldest).clear();
+                for (Map.Entry<Long, SpaceSavingSummary> entry : map.entrySet()) {
+                    if (entry.getValue().isDirty() || entry.getKey() == current) {
+                        bucketIds.add(entry.getKey());
+                        summaries.add(entry.getValue());
+                    }
+                }
+            }
+
+            // 取序列化之前的时间，重启时从这个时间之后补入 search_history
+            Timestamp savedAt = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> args = new ArrayList<>();
+            for (int i = 0; i < bucketIds.size(); i++) {
+                args.add(new Object[]{granularity.code, bucketIds.get(i), nodeId, summaries.get(i).toBytes(), savedAt});
+            }
+            try {
+                if (!args.isEmpty()) {
+                    jdbcTemplate.batchUpdate("INSERT INTO search_popularity_snapshots (granularity, bucket, node, summary_data, updated_at) " +
+                            "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE summary_data = VALUES(summary_data), updated_at = VALUES(updated_at)", args);
+                    saved += args.size();
+                }
+                jdbcTemplate.update("DELETE FROM search_popularity_snapshots WHERE granularity = ? AND bucket < ?", granularity.code, oldest);
+            } catch (Exception e) {
+                for (SpaceSavingSummary summary : summaries) {
+                    summary.markDirty();
+                }
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to save popular search snapshots: " + e.getMessage());
+            }
+        }
+        if (saved > 0) {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Saved " + saved + " popular search buckets");
+        }
+        try {
+            loadPeerSnapshots();
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to load popular search snapshots of other nodes: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (Granularity granularity : Granularity.values()) {
+            TreeMap<Long, SpaceSavingSummary> map = buckets.get(granularity);
+            synchronized (map) {
+                SpaceSavingSummary current = map.get(bucketOf(granularity, now));
+                metrics.put(granularity.code + "Buckets", map.size());
+                metrics.put(granularity.code + "CurrentSearches", current != null ? current.getTotal() : 0L);
+                metrics.put(granularity.code + "CurrentKeywords", current != null ? current.size() : 0);
+            }
+        }
+        int peerBucketCount = 0;
+        for (TreeMap<Long, SpaceSavingSummary> map : peerBuckets.values()) {
+            peerBucketCount += map.size();
+        }
+        metrics.put("peerBuckets", peerBucketCount);
+        metrics.put("summaryCapacity", capacity);
+        metrics.put("node", nodeId);
+        return metrics;
+    }
+
+    // ===== 内部实现 =====
+
+    // 合并窗口内的桶；offset = 1 表示上一个等长窗口
+    private Map<String, SpaceSavingSummary.Counter> window(String timeRange, String type, int offset) {
+        Granularity granularity;
+        int size;
+        switch (timeRange != null ? timeRange : "week") {
+            case "hour": granularity = Granularity.HOUR; size = 1; break;
+            case "day": granularity = Granularity.HOUR; size = 24; break;
+            case "month": granularity = Granularity.DAY; size = 30; break;
+            case "quarter": granularity = Granularity.WEEK; size = 13; break;
+            case "year": granularity = Granularity.WEEK; size = 52; break;
+            default: granularity = Granularity.DAY; size = 7; break;
+        }
+        String typeFilter = type == null || type.isEmpty() || "all".equals(type) ? null : type;
+        long last = bucketOf(granularity, System.currentTimeMillis()) - (long) offset * size;
+
+        List<SpaceSavingSummary> summaries;
+        TreeMap<Long, SpaceSavingSummary> map = buckets.get(granularity);
+        synchronized (map) {
+            summaries = new ArrayList<>(map.subMap(last - size, false, last, true).values());
+        }
+        summaries.addAll(peerBuckets.get(granularity).subMap(last - size, false, last, true).values());
+        Map<String, SpaceSavingSummary.Counter> totals = new HashMap<>();
+        for (SpaceSavingSummary summary : summaries) {
+            summary.addTo(totals, typeFilter);
+        }
+        return totals;
+    }
+
+    private SpaceSavingSummary bucket(Granularity granularity, long bucketId) {
+        TreeMap<Long, SpaceSavingSummary> map = buckets.get(granularity);
+        synchronized (map) {
+            SpaceSavingSummary summary = map.get(bucketId);
+            if (summary == null) {
+                summary = new SpaceSavingSummary(capacity);
+                map.put(bucketId, summary);
+            }
+            return summary;
+        }
+    }
+
+    // 恢复本实例的快照，lastSaved 中记下每个粒度最后一次保存的时间
+    private int restoreSnapshots(Map<Granularity, Long> lastSaved) {
+        long now = System.currentTimeMillis();
+        int[] restored = {0};
+        jdbcTemplate.query("SELECT granularity, bucket, summary_data, updated_at FROM search_popularity_snapshots WHERE node = ?",
+                (RowCallbackHandler) rs -> {
+                    Granularity granularity = granularityOf(rs.getString("granularity"));
+                    long bucketId = rs.getLong("bucket");
+                    if (granularity == null) {
+                        return;
+                    }
+                    Timestamp updatedAt = rs.getTimestamp("updated_at");
+                    if (updatedAt != null) {
+                        lastSaved.merge(granularity, updatedAt.getTime(), Math::max);
+                    }
+                    if (bucketId <= bucketOf(granularity, now) - granularity.retention) {
+                        return;
+                    }
+                    try {
+                        SpaceSavingSummary saved = SpaceSavingSummary.fromBytes(rs.getBytes("summary_data"), capacity);
+                        bucket(granularity, bucketId).mergeFrom(saved);
+                        restored[0]++;
+                    } catch (Exception e) {
+                        System.err.println("ERROR: [" + LocalDateTime.now() + "] Skipping corrupted popular search snapshot "
+                                + granularity.code + "/" + bucketId + ": " + e.getMessage());
+                    }
+                }, nodeId);
+        return restored[0];
+    }
+
+    // 补入本实例最后一次快照之后、本次启动之前写入 search_history 的搜索（上次未正常关闭时丢失的部分）
+    private void replayHistory(Map<Granularity, Long> lastSaved) {
+        long from = startedAt;
+        for (Long time : lastSaved.values()) {
+            from = Math.min(from, time);
+        }
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT keyword, search_type, timestamp FROM search_history WHERE timestamp >= ? AND timestamp < ?",
+                (RowCallbackHandler) rs -> {
+                    String keyword = rs.getString("keyword");
+                    Timestamp timestamp = rs.getTimestamp("timestamp");
+                    if (keyword == null || keyword.trim().isEmpty() || timestamp == null) {
+                        return;
+                    }
+                    String type = rs.getString("search_type") != null ? rs.getString("search_type") : "all";
+                    long time = timestamp.getTime();
+                    for (Map.Entry<Granularity, Long> entry : lastSaved.entrySet()) {
+                        if (time >= entry.getValue()) {
+                            bucket(entry.getKey(), bucketOf(entry.getKey(), time))
+                                    .offer(key(keyword.trim(), type), keyword.trim(), type, 1, time);
+                        }
+                    }
+                    rows[0]++;
+                }, new Timestamp(from), new Timestamp(startedAt));
+        if (rows[0] > 0) {
+            System.out.println("INFO: [" + LocalDateTime.now() + "] Replayed " + rows[0] + " searches written after the last popular search snapshot");
+        }
+    }
+
+    // 重新读取其他实例的快照，同一个桶的多份快照合并为一份；返回读取的快照数
+    private int loadPeerSnapshots() {
+        long now = System.currentTimeMillis();
+        Map<Granularity, TreeMap<Long, SpaceSavingSummary>> loaded = emptyBuckets();
+        int[] count = {0};
+        jdbcTemplate.query("SELECT granularity, bucket, summary_data FROM search_popularity_snapshots WHERE node <> ?",
+                (RowCallbackHandler) rs -> {
+                    Granularity granularity = granularityOf(rs.getString("granularity"));
+                    long bucketId = rs.getLong("bucket");
+                    if (granularity == null || bucketId <= bucketOf(granularity, now) - granularity.retention) {
+                        return;
+                    }
+                    try {
+                        SpaceSavingSummary saved = SpaceSavingSummary.fromBytes(rs.getBytes("summary_data"), capacity);
+                        loaded.get(granularity).computeIfAbsent(bucketId, key -> new SpaceSavingSummary(capacity)).mergeFrom(saved);
+                        count[0]++;
+                    } catch (Exception e) {
+                        System.err.println("ERROR: [" + LocalDateTime.now() + "] Skipping corrupted popular search snapshot "
+                                + granularity.code + "/" + bucketId + ": " + e.getMessage());
+                    }
+                }, nodeId);
+        peerBuckets = loaded;
+        return count[0];
+    }
+
+    private static Map<Granularity, TreeMap<Long, SpaceSavingSummary>> emptyBuckets() {
+        Map<Granularity, TreeMap<Long, SpaceSavingSummary>> map = new EnumMap<>(Granularity.class);
+        for (Granularity granularity : Granularity.values()) {
+            map.put(granularity, new TreeMap<>());
+        }
+        return map;
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    // 首次部署：按天聚合 search_history 重建天、周桶，最近两天的记录逐条重建小时桶
+    private void bootstrap() {
+        long started = System.currentTimeMillis();
+        long from = startedAt - Granularity.WEEK.retention * 7 * DAY_MILLIS;
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT keyword, search_type, DATE(timestamp) AS day, COUNT(*) AS count, MAX(timestamp) AS last_time " +
+                        "FROM search_history WHERE timestamp >= ? AND timestamp < ? GROUP BY keyword, search_type, DATE(timestamp)",
+                (RowCallbackHandler) rs -> {
+                    String keyword = rs.getString("keyword");
+                    Timestamp lastTime = rs.getTimestamp("last_time");
+                    if (keyword == null || keyword.trim().isEmpty() || lastTime == null) {
+                        return;
+                    }
+                    String type = rs.getString("search_type") != null ? rs.getString("search_type") : "all";
+                    long time = lastTime.getTime();
+                    String key = key(keyword.trim(), type);
+                    long count = rs.getLong("count");
+                    bucket(Granularity.DAY, bucketOf(Granularity.DAY, time)).offer(key, keyword.trim(), type, count, time);
+                    bucket(Granularity.WEEK, bucketOf(Granularity.WEEK, time)).offer(key, keyword.trim(), type, count, time);
+                    rows[0]++;
+                }, new Timestamp(from), new Timestamp(startedAt));
+
+        jdbcTemplate.query("SELECT keyword, search_type, timestamp FROM search_history WHERE timestamp >= ? AND timestamp < ?",
+                (RowCallbackHandler) rs -> {
+                    String keyword = rs.getString("keyword");
+                    Timestamp timestamp = rs.getTimestamp("timestamp");
+                    if (keyword == null || keyword.trim().isEmpty() || timestamp == null) {
+                        return;
+                    }
+                    String type = rs.getString("search_type") != null ? rs.getString("search_type") : "all";
+                    long time = timestamp.getTime();
+                    bucket(Granularity.HOUR, bucketOf(Granularity.HOUR, time))
+                            .offer(key(keyword.trim(), type), keyword.trim(), type, 1, time);
+                }, new Timestamp(startedAt - Granularity.HOUR.retention * HOUR_MILLIS), new Timestamp(startedAt));
+
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Rebuilt popular searches from search_history: "
+                + rows[0] + " keyword-days in " + (System.currentTimeMillis() - started) + "ms");
+    }
+
+    private static Granularity granularityOf(String code) {
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity.code.equals(code)) {
+                return granularity;
+            }
+        }
+        return null;
+    }
+
+    // 按服务器时区对齐的桶编号
+    static long bucketOf(Granularity granularity, long time) {
+        long local = time + ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+        switch (granularity) {
+            case HOUR:
+                return Math.floorDiv(local, HOUR_MILLIS);
+            case DAY:
+                return Math.floorDiv(local, DAY_MILLIS);
+            default:
+                // 1970-01-01 是周四，加 3 天使每周从周一开始
+                return Math.floorDiv(Math.floorDiv(local, DAY_MILLIS) + 3, 7);
+        }
+    }
+
+    private static String key(String keyword, String type) {
+        return type + '\u0001' + keyword.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String trend(long count, long previousCount) {
+        if (count > previousCount * 1.2) {
+            return "rising";
+        }
+        if (count < previousCount * 0.8) {
+            return "falling";
+        }
+        return "stable";
+    }
+}
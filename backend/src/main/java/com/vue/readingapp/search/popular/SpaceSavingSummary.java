@@ -0,0 +1,192 @@
+package com.vue.readingapp.search.popular;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving 频繁项摘要（一个时间桶）
+ *
+ * 最多保留 capacity 个计数器。新的搜索词到达且计数器已满时，替换计数最小的计数器：
+ * 新计数 = 最小计数 + 本次次数，误差上限记为被替换的最小计数。
+ * 真实次数超过 总次数 / capacity 的搜索词一定在摘要中，计数的高估不超过误差上限。
+ * 多个时间桶的摘要按搜索词累加即可合并，用于组合出一天、一周等时间窗口；合并时误差上限一并累加。
+ */
+class SpaceSavingSummary {
+
+    /**
+     * 一个计数器
+     */
+    static class Counter {
+        final String keyword;
+        final String type;
+        long count;
+        long error;
+        long lastSeen;
+
+        Counter(String keyword, String type, long count, long error, long lastSeen) {
+            this.keyword = keyword;
+            this.type = type;
+            this.count = count;
+            this.error = error;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private long total = 0;
+    // 上次保存快照后是否有变化
+    private boolean dirty = false;
+
+    SpaceSavingSummary(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * 记录 count 次搜索
+     *
+     * @param key 分组键（搜索类型 + 规范化后的关键词）
+     */
+    void offer(String key, String keyword, String type, long count, long time) {
+        offer(key, keyword, type, count, 0, time);
+    }
+
+    // error 为 count 中可能高估的部分（合并其他摘要的计数器时带入）
+    private synchronized void offer(String key, String keyword, String type, long count, long error, long time) {
+        total += count;
+        dirty = true;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            counter.lastSeen = Math.max(counter.lastSeen, time);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(keyword, type, count, error, time));
+            return;
+        }
+
+        // 计数器已满：替换计数最小的一个（容量只有几百，直接扫描）
+        String minKey = null;
+        Counter min = null;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (min == null || entry.getValue().count < min.count) {
+                minKey = entry.getKey();
+                min = entry.getValue();
+            }
+        }
+        counters.remove(minKey);
+        counters.put(key, new Counter(keyword, type, min.count + count, min.count + error, time));
+    }
+
+    /**
+     * 累加到 totals 中（键为分组键）
+     */
+    synchronized void addTo(Map<String, Counter> totals, String typeFilter) {
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            if (typeFilter != null && !typeFilter.equals(counter.type)) {
+                continue;
+            }
+            Counter sum = totals.get(entry.getKey());
+            if (sum == null) {
+                totals.put(entry.getKey(), new Counter(counter.keyword, counter.type, counter.count, counter.error, counter.lastSeen));
+            } else {
+                sum.count += counter.count;
+                sum.error += counter.error;
+                sum.lastSeen = Math.max(sum.lastSeen, counter.lastSeen);
+            }
+        }
+    }
+
+    /**
+     * 合并另一份摘要（恢复快照、合并其他实例的快照）
+     */
+    void mergeFrom(SpaceSavingSummary other) {
+        List<Map.Entry<String, Counter>> entries;
+        synchronized (other) {
+            entries = new ArrayList<>(other.counters.entrySet());
+        }
+        for (Map.Entry<String, Counter> entry : entries) {
+            Counter counter = entry.getValue();
+            offer(entry.getKey(), counter.keyword, counter.type, counter.count, counter.error, counter.lastSeen);
+        }
+    }
+
+    synchronized long getTotal() {
+        return total;
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    // 快照写入失败，下次重新写入
+    synchronized void markDirty() {
+        dirty = true;
+    }
+
+    synchronized int size() {
+        return counters.size();
+    }
+
+    // ===== 序列化（search_popularity_snapshots.summary_data） =====
+
+    /**
+     * 序列化并清除变化标记
+     */
+    synchronized byte[] toBytes() {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + counters.size() * 48);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeLong(total);
+            out.writeInt(counters.size());
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                Counter counter = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(counter.keyword);
+                out.writeUTF(counter.type);
+                out.writeLong(counter.count);
+                out.writeLong(counter.error);
+                out.writeLong(counter.lastSeen);
+            }
+            out.flush();
+            dirty = false;
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static SpaceSavingSummary fromBytes(byte[] data, int capacity) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        SpaceSavingSummary summary = new SpaceSavingSummary(capacity);
+        long total = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            String keyword = in.readUTF();
+            String type = in.readUTF();
+            long count = in.readLong();
+            long error = in.readLong();
+            long lastSeen = in.readLong();
+            Counter counter = summary.counters.get(key);
+            if (counter == null && summary.counters.size() < summary.capacity) {
+                summary.counters.put(key, new Counter(keyword, type, count, error, lastSeen));
+            } else if (counter == null) {
+                summary.offer(key, keyword, type, count, error, lastSeen);
+            }
+        }
+        summary.total = total;
+        summary.dirty = false;
+        return summary;
+    }
+}
@@ -0,0 +1,455 @@
+package com.vue.readingapp.search.suggest;
+
+import com.vue.readingapp.search.index.SearchTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 搜索联想服务
+ *
+ * 以前搜索框每输入一个字，联想接口都要对 documents.title、words.word、search_history.keyword
+ * 各做一次 LIKE 查询（建议接口还要对搜索历史 GROUP BY）。现在联想全部在内存中完成：
+ *   - 词汇：全局一棵前缀树，应用启动后从 words 表分批加载，之后按 word_id 水位线吸收新词；
+ *     权重来自词频（words.frq）和用户搜索该词的次数；
+ *   - 文档标题、搜索历史：每个用户各一棵前缀树，第一次联想时从数据库加载一次，
+ *     之后由上传、改名、删除、搜索等事件增量更新；按最近使用的用户数量限制，超出按 LRU 淘汰。
+ * 权重按"前向衰减"计算：时间为 t 的事件贡献 2^((t - 启动时间) / 半衰期)，越新的事件贡献越大，
+ * 比较两个条目时等价于把所有事件按半衰期衰减到同一时刻，但已有条目的权重不需要随时间重新计算。
+ * 未登录用户只返回词汇联想，不再看到其他用户的文档标题和搜索历史。
+ */
+@Component
+public class SuggestionService {
+
+    public static final String SOURCE_DOCUMENTS = "documents";
+    public static final String SOURCE_VOCABULARY = "vocabulary";
+    public static final String SOURCE_HISTORY = "history";
+
+    // 键的最大长度；更长的查询先按前缀定位，再按全文过滤
+    private static final int MAX_KEY_LENGTH = 32;
+    // 一个文档标题最多挂载的键数（整个标题 + 各个词开头）
+    private static final int MAX_TITLE_KEYS = 8;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 每个浅层节点保存的候选数
+    @Value("${app.search.suggest.top-k:10}")
+    private int topK;
+
+    // 保存候选的节点深度（前缀长度）上限，更长的前缀遍历子树
+    @Value("${app.search.suggest.top-k-depth:4}")
+    private int topKDepth;
+
+    // 近期性权重的半衰期（天）
+    @Value("${app.search.suggest.half-life-days:14}")
+    private double halfLifeDays;
+
+    // 内存中保留文档标题和搜索历史的最大用户数
+    @Value("${app.search.suggest.max-users:5000}")
+    private int maxUsers;
+
+    // 加载用户搜索历史时只读取最近多少天
+    @Value("${app.search.suggest.history-days:180}")
+    private int historyDays;
+
+    // 是否在内存中维护词汇联想
+    @Value("${app.search.suggest.vocabulary.enabled:true}")
+    private boolean vocabularyEnabled;
+
+    // 加载词汇时每次从 words 表扫描的行数
+    @Value("${app.search.suggest.scan-batch-size:10000}")
+    private int scanBatchSize;
+
+    /**
+     * 一条联想结果
+     */
+    public static class Suggestion {
+        private final String text;
+        private final String source;
+        private final String searchType;
+        private final long refId;
+        private final int count;
+        private final double weight;
+
+        Suggestion(String text, String source, String searchType, long refId, int count, double weight) {
+            this.text = text;
+            this.source = source;
+            this.searchType = searchType;
+            this.refId = refId;
+            this.count = count;
+            this.weight = weight;
+        }
+
+        public String getText() { return text; }
+        /** 来源：documents / vocabulary / history */
+        public String getSource() { return source; }
+        /** 搜索历史的搜索类型，其他来源为 null */
+        public String getSearchType() { return searchType; }
+        /** 文档为 document_id，词汇为 word_id，搜索历史为 0 */
+        public long getRefId() { return refId; }
+        /** 搜索历史的搜索次数，其他来源为 1 */
+        public int getCount() { return count; }
+        public double getWeight() { return weight; }
+    }
+
+    // 单个用户的文档标题和搜索历史，修改在 synchronized (this) 中进行
+    private static class UserSuggestions {
+        volatile WeightedPrefixTrie documents;
+        volatile WeightedPrefixTrie history;
+    }
+
+    // 衰减的基准时间
+    private final long landmark = System.currentTimeMillis();
+
+    private volatile WeightedPrefixTrie vocabulary;
+    // 已吸收到词汇前缀树中的最大 word_id，只在 refreshVocabulary 中修改
+    private long watermark = 0;
+
+    // accessOrder = true 的 LinkedHashMap 即为 LRU 结构
+    private final Map<Long, UserSuggestions> users = Collections.synchronizedMap(
+            new LinkedHashMap<Long, UserSuggestions>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UserSuggestions> eldest) {
+                    return size() > maxUsers;
+                }
+            });
+
+    // 用户版本号，每次事件加一；加载期间发生过事件的加载结果需要重新加载
+    private final Map<Long, AtomicLong> userVersions = new ConcurrentHashMap<>();
+    // 同一用户同时只加载一次
+    private final Object[] loadLocks = new Object[64];
+
+    // 统计信息
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+    private final AtomicLong userLoads = new AtomicLong();
+
+    public SuggestionService() {
+        for (int i = 0; i < loadLocks.length; i++) {
+            loadLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 按前缀联想，结果按权重降序排列
+     *
+     * @param userId 当前用户，未登录为 null（只返回词汇联想）
+     * @param source documents / vocabulary / history
+     * @param searchType 只对搜索历史有效，null 或 "all" 表示不限
+     */
+    public List<Suggestion> suggest(Long userId, String query, String source, String searchType, int limit) {
+        long startedAt = System.nanoTime();
+        List<Suggestion> result = new ArrayList<>();
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return result;
+        }
+        // 超过 top-K 的数量只能遍历子树（访问节点数有上限），结果数不超过 top-K
+        limit = Math.min(limit, Math.max(1, topK));
+
+        WeightedPrefixTrie trie = null;
+        if (SOURCE_VOCABULARY.equals(source)) {
+            trie = vocabulary;
+        } else if (userId != null && (SOURCE_DOCUMENTS.equals(source) || SOURCE_HISTORY.equals(source))) {
+            UserSuggestions user = userSuggestions(userId);
+            trie = SOURCE_DOCUMENTS.equals(source) ? user.documents : user.history;
+        }
+        if (trie == null) {
+            return result;
+        }
+
+        String prefix = normalized.length() > MAX_KEY_LENGTH ? normalized.substring(0, MAX_KEY_LENGTH) : normalized;
+        boolean filterText = normalized.length() > MAX_KEY_LENGTH;
+        boolean filterType = SOURCE_HISTORY.equals(source) && searchType != null && !"all".equals(searchType);
+        List<WeightedPrefixTrie.Entry> entries = trie.top(prefix, limit, filterText || filterType
+                ? entry -> (!filterType || searchType.equals(entry.type))
+                        && (!filterText || normalize(entry.text).contains(normalized))
+                : null);
+        for (WeightedPrefixTrie.Entry entry : entries) {
+            result.add(new Suggestion(entry.text, source, SOURCE_HISTORY.equals(source) ? entry.type : null,
+                    entry.refId, SOURCE_HISTORY.equals(source) ? entry.count : 1, entry.weight));
+        }
+
+        queries.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - startedAt);
+        return result;
+    }
+
+    // ===== 增量更新 =====
+
+    /**
+     * 新建文档（上传、复制）
+     */
+    public void onDocumentCreated(long userId, long documentId, String title) {
+        saveDocument(userId, documentId, title, decay(System.currentTimeMillis()));
+    }
+
+    /**
+     * 修改文档标题，保留原来的权重
+     */
+    public void onDocumentRenamed(long userId, long documentId, String title) {
+        saveDocument(userId, documentId, title, 0.0);
+    }
+
+    private void saveDocument(long userId, long documentId, String title, double weightDelta) {
+        bumpVersion(userId);
+        UserSuggestions user = users.get(userId);
+        if (user == null || title == null) {
+            return;
+        }
+        synchronized (user) {
+            user.documents.add("d:" + documentId, title, SOURCE_DOCUMENTS, documentId, titleKeys(title), weightDelta, 0);
+        }
+    }
+
+    /**
+     * 删除文档
+     */
+    public void onDocumentRemoved(long userId, long documentId) {
+        bumpVersion(userId);
+        UserSuggestions user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        synchronized (user) {
+            user.documents.remove("d:" + documentId);
+            user.documents = user.documents.compactIfNeeded();
+        }
+    }
+
+    /**
+     * 记录一次搜索：计入用户的搜索历史，搜索词在词典中时同时提高该词的权重
+     */
+    public void onSearch(Long userId, String keyword, String searchType) {
+        String key = normalize(keyword);
+        if (userId == null || key.isEmpty()) {
+            return;
+        }
+        double weight = decay(System.currentTimeMillis());
+
+        WeightedPrefixTrie words = vocabulary;
+        if (words != null) {
+            words.bump("w:" + key, weight, 1);
+        }
+
+        bumpVersion(userId);
+        UserSuggestions user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        synchronized (user) {
+            addHistory(user.history, keyword.trim(), key, searchType, weight, 1);
+        }
+    }
+
+    /**
+     * 删除账户
+     */
+    public void onUserRemoved(long userId) {
+        bumpVersion(userId);
+        users.remove(userId);
+    }
+
+    /**
+     * 导入生词、新增词条后调用：立即吸收新增的词条
+     */
+    public void onWordsAdded() {
+        if (vocabularyEnabled && vocabulary != null) {
+            refreshVocabulary();
+        }
+    }
+
+    /**
+     * 吸收 words 表中新增的词条。首次执行（应用启动时）会分批扫描整个词典，
+     * 扫描完成后才替换为新的前缀树，加载期间词汇联想为空。
+     */
+    @Scheduled(fixedDelayString = "${app.search.suggest.vocabulary.refresh-interval-ms:300000}")
+    public synchronized void refreshVocabulary() {
+        if (!vocabularyEnabled) {
+            return;
+        }
+        try {
+            long startedAt = System.currentTimeMillis();
+            boolean initial = vocabulary == null;
+            WeightedPrefixTrie trie = initial ? new WeightedPrefixTrie(topK, topKDepth) : vocabulary;
+            int absorbed = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT word_id, word, frq FROM words WHERE word_id > ? ORDER BY word_id LIMIT ?",
+                        watermark, Math.max(1, scanBatchSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                for (Map<String, Object> row : rows) {
+                    String word = (String) row.get("word");
+                    String key = normalize(word);
+                    if (!key.isEmpty() && key.length() <= MAX_KEY_LENGTH) {
+                        Number frq = (Number) row.get("frq");
+                        trie.add("w:" + key, word.trim(), SOURCE_VOCABULARY, ((Number) row.get("word_id")).longValue(),
+                                Collections.singletonList(key), wordPopularity(frq != null ? frq.intValue() : 0), 0);
+                        absorbed++;
+                    }
+                }
+                watermark = ((Number) rows.get(rows.size() - 1).get("word_id")).longValue();
+                if (rows.size() < scanBatchSize) {
+                    break;
+                }
+            }
+            if (initial) {
+                vocabulary = trie;
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Suggestion vocabulary loaded: " + absorbed + " words, "
+                        + trie.getNodeCount() + " nodes in " + (System.currentTimeMillis() - startedAt) + "ms");
+            } else if (absorbed > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Suggestion vocabulary absorbed " + absorbed + " words, watermark=" + watermark);
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to refresh suggestion vocabulary: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        WeightedPrefixTrie words = vocabulary;
+        metrics.put("vocabularyLoaded", words != null);
+        metrics.put("vocabularyEntries", words != null ? words.getEntryCount() : 0);
+        metrics.put("vocabularyNodes", words != null ? words.getNodeCount() : 0);
+        metrics.put("cachedUsers", users.size());
+        metrics.put("maxUsers", maxUsers);
+        metrics.put("userLoads", userLoads.get());
+        long queryCount = queries.get();
+        metrics.put("queries", queryCount);
+        metrics.put("averageQueryMicros", queryCount > 0 ? queryNanos.get() / 1000.0 / queryCount : 0.0);
+        return metrics;
+    }
+
+    // ===== 内部实现 =====
+
+    private UserSuggestions userSuggestions(long userId) {
+        UserSuggestions user = users.get(userId);
+        if (user != null) {
+            return user;
+        }
+        synchronized (loadLocks[Math.floorMod(Long.hashCode(userId), loadLocks.length)]) {
+            user = users.get(userId);
+            if (user != null) {
+                return user;
+            }
+            // 加载期间有新事件时重新加载，避免漏掉加载开始后发生的变化
+            for (int attempt = 0; ; attempt++) {
+                long version = version(userId);
+                user = loadUser(userId);
+                synchronized (users) {
+                    if (version == version(userId) || attempt >= 2) {
+                        users.put(userId, user);
+                        return user;
+                    }
+                }
+            }
+        }
+    }
+
+    private UserSuggestions loadUser(long userId) {
+        long startedAt = System.currentTimeMillis();
+        UserSuggestions user = new UserSuggestions();
+        user.documents = new WeightedPrefixTrie(topK, topKDepth);
+        user.history = new WeightedPrefixTrie(topK, topKDepth);
+
+        jdbcTemplate.query("SELECT document_id, title, created_at FROM documents WHERE user_id = ? AND deleted_at IS NULL",
+                (RowCallbackHandler) rs -> {
+                    String title = rs.getString("title");
+                    Timestamp createdAt = rs.getTimestamp("created_at");
+                    if (title != null) {
+                        long documentId = rs.getLong("document_id");
+                        user.documents.add("d:" + documentId, title, SOURCE_DOCUMENTS, documentId, titleKeys(title),
+                                decay(createdAt != null ? createdAt.getTime() : landmark), 0);
+                    }
+                }, userId);
+
+        // 同一关键词的多次搜索合并为一条，权重按次数乘以最近一次搜索的衰减值近似
+        jdbcTemplate.query("SELECT keyword, search_type, COUNT(*) AS count, MAX(timestamp) AS last_time " +
+                        "FROM search_history WHERE user_id = ? AND timestamp >= ? GROUP BY keyword, search_type",
+                (RowCallbackHandler) rs -> {
+                    String keyword = rs.getString("keyword");
+                    String key = normalize(keyword);
+                    if (!key.isEmpty()) {
+                        int count = rs.getInt("count");
+                        Timestamp lastTime = rs.getTimestamp("last_time");
+                        addHistory(user.history, keyword.trim(), key, rs.getString("search_type"),
+                                count * decay(lastTime != null ? lastTime.getTime() : landmark), count);
+                    }
+                }, userId, Timestamp.valueOf(LocalDateTime.now().minusDays(Math.max(1, historyDays))));
+
+        userLoads.incrementAndGet();
+        System.out.println("INFO: [" + LocalDateTime.now() + "] Loaded suggestions for user " + userId + ": "
+                + user.documents.getEntryCount() + " documents, " + user.history.getEntryCount() + " history keywords in "
+                + (System.currentTimeMillis() - startedAt) + "ms");
+        return user;
+    }
+
+    private void addHistory(WeightedPrefixTrie history, String keyword, String key, String searchType, double weight, int count) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            key = key.substring(0, MAX_KEY_LENGTH);
+        }
+        String type = searchType != null ? searchType : "all";
+        history.add("h:" + type + ":" + key, keyword, type, 0, Collections.singletonList(key), weight, count);
+    }
+
+    private void bumpVersion(long userId) {
+        userVersions.computeIfAbsent(userId, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private long version(long userId) {
+        AtomicLong version = userVersions.get(userId);
+        return version != null ? version.get() : 0L;
+    }
+
+    // 前向衰减：越晚发生的事件贡献越大，每过一个半衰期翻倍
+    private double decay(long timeMillis) {
+        double halfLifeMillis = Math.max(1.0, halfLifeDays) * 24 * 3600 * 1000;
+        return Math.pow(2.0, (timeMillis - landmark) / halfLifeMillis);
+    }
+
+    // words.frq 为词频排名（越小越常用，0 或空表示未知）
+    private static double wordPopularity(int frq) {
+        return frq > 0 ? 1.0 + 10.0 / Math.log(frq + 2.0) : 1.0;
+    }
+
+    /**
+     * 标题的键：整个标题，以及标题中每个词（中日韩文字为每个字）开头的后缀，
+     * 这样输入标题中间的词也能联想到该文档
+     */
+    static List<String> titleKeys(String title) {
+        String normalized = normalize(title);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < normalized.length() && keys.size() < MAX_TITLE_KEYS; ) {
+            int codePoint = normalized.codePointAt(i);
+            boolean wordStart = i == 0 || SearchTokenizer.isCjk(codePoint)
+                    || (Character.isLetterOrDigit(codePoint) && !Character.isLetterOrDigit(normalized.codePointBefore(i)));
+            if (wordStart) {
+                String key = normalized.substring(i, Math.min(normalized.length(), i + MAX_KEY_LENGTH));
+                if (!keys.contains(key)) {
+                    keys.add(key);
+                }
+            }
+            i += Character.charCount(codePoint);
+        }
+        return keys;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,480 @@
+package com.vue.readingapp.search.suggest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 带权重的前缀树（搜索联想用）
+ *
+ * 节点结构与 WordTrie 相同：并行数组保存字符、第一个子节点、下一个兄弟节点，避免大量小对象。
+ * 每个条目可以挂在多个键下（例如文档标题的每个词开头），键的终点节点记录条目。
+ * 深度不超过 topKDepth 的节点额外保存子树中权重最高的 K 个条目（按权重降序）：
+ *   - 权重只增不减（近期性用"前向衰减"表示：越新的事件权重越大，旧条目不需要重新计算），
+ *     条目权重增加时只需沿它的键路径把它在各节点的 top-K 中上移；
+ *   - 短前缀（候选最多的情况）直接读取 top-K，不需要遍历子树；
+ *   - 更深的前缀子树很小，遍历子树后排序。
+ * 删除时条目本身只做标记（终点节点的链表中保留，遍历时跳过），但会立即从键路径上各节点的 top-K 中移除，
+ * 并用子节点的 top-K（最深一层的节点遍历其子树）补足，保证 top-K 中始终是有效条目；被删除的条目过多时整体重建。
+ * 读写由内部的读写锁保护。
+ */
+class WeightedPrefixTrie {
+
+    private static final int NONE = -1;
+
+    // 深层前缀遍历子树时最多访问的节点数，保证单次查询耗时有上限
+    private static final int MAX_VISITED_NODES = 20000;
+
+    /**
+     * 一个联想条目
+     */
+    static class Entry {
+        final String id;
+        final String text;
+        final String type;
+        final long refId;
+        final String[] keys;
+        double weight;
+        int count;
+        boolean removed;
+
+        Entry(String id, String text, String type, long refId, String[] keys) {
+            this.id = id;
+            this.text = text;
+            this.type = type;
+            this.refId = refId;
+            this.keys = keys;
+        }
+    }
+
+    private final int k;
+    private final int topKDepth;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private char[] labels = new char[256];
+    private int[] firstChild = new int[256];
+    private int[] nextSibling = new int[256];
+    // 以该节点为终点的条目链表头（指向 links）
+    private int[] terminalHead = new int[256];
+    // 该节点 top-K 在 topPool 中的起始下标，NONE 表示不保存
+    private int[] topStart = new int[256];
+    private int nodeCount = 0;
+
+    private int[] linkEntry = new int[256];
+    private int[] linkNext = new int[256];
+    private int linkCount = 0;
+
+    private int[] topPool = new int[1024];
+    private int topPoolSize = 0;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> entryIndex = new HashMap<>();
+    private int removedCount = 0;
+
+    WeightedPrefixTrie(int k, int topKDepth) {
+        this.k = Math.max(1, k);
+        this.topKDepth = Math.max(0, topKDepth);
+        newNode('\0', 0);
+    }
+
+    /**
+     * 新增条目或增加已有条目的权重
+     *
+     * 已有条目的文本或键发生变化（例如文档改名）时，旧条目标记删除，新条目继承原来的权重和次数。
+     *
+     * @param keys 条目挂载的键（已规范化）
+     * @param countDelta 使用次数的增量
+     */
+    void add(String id, String text, String type, long refId, List<String> keys, double weightDelta, int countDelta) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            String[] keyArray = keys.toArray(new String[0]);
+            Integer existing = entryIndex.get(id);
+            Entry previous = existing != null ? entries.get(existing) : null;
+            int entryId;
+            Entry entry;
+            if (previous != null && previous.text.equals(text) && Arrays.equals(previous.keys, keyArray)) {
+                entryId = existing;
+                entry = previous;
+                if (entry.removed) {
+                    entry.removed = false;
+                    removedCount--;
+                }
+            } else {
+                entry = new Entry(id, text, type, refId, keyArray);
+                if (previous != null && !previous.removed) {
+                    entry.weight = previous.weight;
+                    entry.count = previous.count;
+                    previous.removed = true;
+                    removedCount++;
+                    evict(existing);
+                }
+                entryId = entries.size();
+                entries.add(entry);
+                entryIndex.put(id, entryId);
+                for (String key : keyArray) {
+                    linkTerminal(insertPath(key), entryId);
+                }
+            }
+            entry.weight += Math.max(0.0, weightDelta);
+            entry.count += countDelta;
+            for (String key : entry.keys) {
+                promoteAlongPath(key, entryId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 增加已有条目的权重，条目不存在（或已删除）时返回 false
+     */
+    boolean bump(String id, double weightDelta, int countDelta) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = entryIndex.get(id);
+            if (existing == null || entries.get(existing).removed) {
+                return false;
+            }
+            Entry entry = entries.get(existing);
+            entry.weight += Math.max(0.0, weightDelta);
+            entry.count += countDelta;
+            for (String key : entry.keys) {
+                promoteAlongPath(key, existing);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除条目（标记删除）
+     */
+    void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = entryIndex.get(id);
+            if (existing != null && !entries.get(existing).removed) {
+                entries.get(existing).removed = true;
+                removedCount++;
+                evict(existing);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按权重降序返回以 prefix 开头的条目
+     */
+    List<Entry> top(String prefix, int limit, Predicate<Entry> filter) {
+        List<Entry> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            int node = 0;
+            for (int i = 0; i < prefix.length() && node != NONE; i++) {
+                node = child(node, prefix.charAt(i));
+            }
+            if (node == NONE) {
+                return result;
+            }
+
+            // 1. 浅层节点直接读取 top-K
+            int start = topStart[node];
+            if (start != NONE && limit <= k) {
+                for (int i = start; i < start + k && topPool[i] != NONE && result.size() < limit; i++) {
+                    Entry entry = entries.get(topPool[i]);
+                    if (!entry.removed && (filter == null || filter.test(entry))) {
+                        result.add(entry);
+                    }
+                }
+                // top-K 没有填满时它就是子树中的全部条目
+                boolean complete = topPool[start + k - 1] == NONE;
+                if (result.size() == limit || complete) {
+                    return result;
+                }
+                // top-K 中有被过滤的条目，遍历子树补足
+                result.clear();
+            }
+
+            // 2. 遍历子树
+            List<Entry> candidates = new ArrayList<>();
+            int[] stack = new int[64];
+            int depth = 0;
+            stack[depth++] = node;
+            int visited = 0;
+            Set<Integer> seen = new HashSet<>();
+            while (depth > 0 && visited < MAX_VISITED_NODES) {
+                int current = stack[--depth];
+                visited++;
+                for (int link = terminalHead[current]; link != NONE; link = linkNext[link]) {
+                    int entryId = linkEntry[link];
+                    Entry entry = entries.get(entryId);
+                    if (!entry.removed && (filter == null || filter.test(entry)) && seen.add(entryId)) {
+                        candidates.add(entry);
+                    }
+                }
+                for (int c = firstChild[current]; c != NONE; c = nextSibling[c]) {
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[depth++] = c;
+                }
+            }
+            candidates.sort((a, b) -> Double.compare(b.weight, a.weight));
+            return new ArrayList<>(candidates.subList(0, Math.min(limit, candidates.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 被删除的条目占比过高时重建，返回新的前缀树；否则返回自身
+     */
+    WeightedPrefixTrie compactIfNeeded() {
+        lock.readLock().lock();
+        try {
+            if (removedCount < 64 || removedCount * 4 < entries.size()) {
+                return this;
+            }
+            WeightedPrefixTrie rebuilt = new WeightedPrefixTrie(k, topKDepth);
+            for (Entry entry : entries) {
+                if (!entry.removed) {
+                    rebuilt.add(entry.id, entry.text, entry.type, entry.refId, Arrays.asList(entry.keys), entry.weight, entry.count);
+                }
+            }
+            return rebuilt;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int getEntryCount() {
+        lock.readLock().lock();
+        try {
+            return entries.size() - removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int getNodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== 内部结构 =====
+
+    private int newNode(char label, int depth) {
+        if (nodeCount == labels.length) {
+            int capacity = labels.length * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            terminalHead = Arrays.copyOf(terminalHead, capacity);
+            topStart = Arrays.copyOf(topStart, capacity);
+        }
+        int node = nodeCount++;
+        labels[node] = label;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        terminalHead[node] = NONE;
+        topStart[node] = NONE;
+        if (depth <= topKDepth) {
+            if (topPoolSize + k > topPool.length) {
+                topPool = Arrays.copyOf(topPool, Math.max(topPool.length * 2, topPoolSize + k));
+            }
+            Arrays.fill(topPool, topPoolSize, topPoolSize + k, NONE);
+            topStart[node] = topPoolSize;
+            topPoolSize += k;
+        }
+        return node;
+    }
+
+    private int child(int node, char label) {
+        for (int n = firstChild[node]; n != NONE && labels[n] <= label; n = nextSibling[n]) {
+            if (labels[n] == label) {
+                return n;
+            }
+        }
+        return NONE;
+    }
+
+    // 兄弟链表按字符升序插入
+    private int childOrCreate(int node, char label, int depth) {
+        int previous = NONE;
+        int n = firstChild[node];
+        while (n != NONE && labels[n] < label) {
+            previous = n;
+            n = nextSibling[n];
+        }
+        if (n != NONE && labels[n] == label) {
+            return n;
+        }
+        int created = newNode(label, depth);
+        nextSibling[created] = n;
+        if (previous == NONE) {
+            firstChild[node] = created;
+        } else {
+            nextSibling[previous] = created;
+        }
+        return created;
+    }
+
+    private int insertPath(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            node = childOrCreate(node, key.charAt(i), i + 1);
+        }
+        return node;
+    }
+
+    private void linkTerminal(int node, int entryId) {
+        if (linkCount == linkEntry.length) {
+            linkEntry = Arrays.copyOf(linkEntry, linkCount * 2);
+            linkNext = Arrays.copyOf(linkNext, linkCount * 2);
+        }
+        linkEntry[linkCount] = entryId;
+        linkNext[linkCount] = terminalHead[node];
+        terminalHead[node] = linkCount++;
+    }
+
+    // 条目权重增加后，在键路径上各个保存 top-K 的节点中上移
+    private void promoteAlongPath(String key, int entryId) {
+        int node = 0;
+        promote(node, entryId);
+        for (int i = 0; i < key.length() && i < topKDepth; i++) {
+            node = child(node, key.charAt(i));
+            if (node == NONE) {
+                return;
+            }
+            promote(node, entryId);
+        }
+    }
+
+    // 条目被删除后，从键路径上包含它的 top-K 中移除并补足。先处理深层节点，父节点补足时读取的子节点 top-K 已经更新
+    private void evict(int entryId) {
+        List<int[]> affected = new ArrayList<>();
+        Set<Integer> seenNodes = new HashSet<>();
+        for (String key : entries.get(entryId).keys) {
+            int node = 0;
+            for (int depth = 0; node != NONE; depth++) {
+                if (topContains(node, entryId) && seenNodes.add(node)) {
+                    affected.add(new int[]{node, depth});
+                }
+                if (depth >= key.length() || depth >= topKDepth) {
+                    break;
+                }
+                node = child(node, key.charAt(depth));
+            }
+        }
+        affected.sort((a, b) -> Integer.compare(b[1], a[1]));
+        for (int[] node : affected) {
+            refill(node[0]);
+        }
+    }
+
+    private boolean topContains(int node, int entryId) {
+        int start = topStart[node];
+        if (start == NONE) {
+            return false;
+        }
+        for (int i = start; i < start + k && topPool[i] != NONE; i++) {
+            if (topPool[i] == entryId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 重新计算节点的 top-K：子树中权重最高的 K 个条目一定在某个子节点子树的 top-K 中
+    private void refill(int node) {
+        List<Integer> candidates = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        collectTerminals(node, candidates, seen);
+        for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+            int start = topStart[c];
+            if (start != NONE) {
+                for (int i = start; i < start + k && topPool[i] != NONE; i++) {
+                    if (!entries.get(topPool[i]).removed && seen.add(topPool[i])) {
+                        candidates.add(topPool[i]);
+                    }
+                }
+            } else {
+                int[] stack = new int[64];
+                int depth = 0;
+                stack[depth++] = c;
+                while (depth > 0) {
+                    int current = stack[--depth];
+                    collectTerminals(current, candidates, seen);
+                    for (int d = firstChild[current]; d != NONE; d = nextSibling[d]) {
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[depth++] = d;
+                    }
+                }
+            }
+        }
+        candidates.sort((a, b) -> Double.compare(entries.get(b).weight, entries.get(a).weight));
+        int start = topStart[node];
+        for (int i = 0; i < k; i++) {
+            topPool[start + i] = i < candidates.size() ? candidates.get(i) : NONE;
+        }
+    }
+
+    private void collectTerminals(int node, List<Integer> candidates, Set<Integer> seen) {
+        for (int link = terminalHead[node]; link != NONE; link = linkNext[link]) {
+            int entryId = linkEntry[link];
+            if (!entries.get(entryId).removed && seen.add(entryId)) {
+                candidates.add(entryId);
+            }
+        }
+    }
+
+    private void promote(int node, int entryId) {
+        int start = topStart[node];
+        if (start == NONE) {
+            return;
+        }
+        double weight = entries.get(entryId).weight;
+        int end = start + k;
+
+        int slot = NONE;
+        for (int i = start; i < end; i++) {
+            if (topPool[i] == entryId || topPool[i] == NONE) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot == NONE) {
+            if (weight <= entries.get(topPool[end - 1]).weight) {
+                return;
+            }
+            slot = end - 1;
+        }
+        topPool[slot] = entryId;
+        while (slot > start && entries.get(topPool[slot - 1]).weight < weight) {
+            topPool[slot] = topPool[slot - 1];
+            topPool[slot - 1] = entryId;
+            slot--;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.vue.readingapp.system;
 
+import com.vue.readingapp.ocr.core.TesseractEnginePool;
+import com.vue.readingapp.reader.ReadingProgressBuffer;
+import com.vue.readingapp.scheduler.BackgroundTaskExecutor;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
@@ -19,6 +22,15 @@ public class SystemGetHealth {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TesseractEnginePool enginePool;
+
+    @Autowired
+    private ReadingProgressBuffer readingProgressBuffer;
+
+    @Autowired
+    private BackgroundTaskExecutor backgroundTaskExecutor;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到获取系统健康状态请求 ===");
@@ -141,7 +153,42 @@ public class SystemGetHealth {
             boolean apiHealthy = true;
             String apiDetails = "API服务运行正常";
 
-            // 5. 构建健康检查列表
+            // 5. 检查OCR引擎池（有线程在排队等待引擎时给出警告）
+            Map<String, Object> poolMetrics = enginePool.getMetrics();
+            int waitingThreads = ((Number) poolMetrics.get("waitingThreads")).intValue();
+            String ocrPoolDetails = String.format("使用中 %s/%s，排队 %d，平均等待 %.1fms，平均利用率 %.1f%%",
+                    poolMetrics.get("inUse"), poolMetrics.get("poolSize"), waitingThreads,
+                    ((Number) poolMetrics.get("averageWaitMs")).doubleValue(),
+                    ((Number) poolMetrics.get("averageUtilization")).doubleValue() * 100);
+
+            // 6. 检查阅读进度写缓冲（最早的未写入条目超过 1 分钟说明写库持续失败）
+            Map<String, Object> bufferMetrics = readingProgressBuffer.getMetrics();
+            long oldestPendingMs = ((Number) bufferMetrics.get("oldestPendingMs")).longValue();
+            String bufferDetails = String.format("待写入 %s，最早 %dms，上次批量 %s 条，上次延迟 %sms，失败 %s 次",
+                    bufferMetrics.get("pendingEntries"), oldestPendingMs, bufferMetrics.get("lastBatchSize"),
+                    bufferMetrics.get("lastFlushLagMs"), bufferMetrics.get("failedFlushCount"));
+
+            // 7. 检查后台任务线程池（任一池排队超过上限的 80% 时给出警告）
+            boolean taskPoolsHealthy = true;
+            StringBuilder taskPoolDetails = new StringBuilder();
+            for (Map.Entry<String, Object> entry : backgroundTaskExecutor.getMetrics().entrySet()) {
+                if (!(entry.getValue() instanceof Map)) {
+                    continue;
+                }
+                Map<?, ?> pool = (Map<?, ?>) entry.getValue();
+                int queued = ((Number) pool.get("queued")).intValue();
+                int queueCapacity = ((Number) pool.get("queueCapacity")).intValue();
+                if (queued * 5 >= queueCapacity * 4) {
+                    taskPoolsHealthy = false;
+                }
+                if (taskPoolDetails.length() > 0) {
+                    taskPoolDetails.append("；");
+                }
+                taskPoolDetails.append(String.format("%s 执行 %s/%s，排队 %d/%d，拒绝 %s 次",
+                        entry.getKey(), pool.get("activeThreads"), pool.get("threads"), queued, queueCapacity, pool.get("rejected")));
+            }
+
+            // 8. 构建健康检查列表
             List<HealthCheck> checks = new ArrayList<>();
 
             checks.add(new HealthCheck(
@@ -172,7 +219,28 @@ public class SystemGetHealth {
                     LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME)
             ));
 
-            // 6. 确定整体状态
+            checks.add(new HealthCheck(
+                    "ocr_engine_pool",
+                    waitingThreads == 0 ? "healthy" : "warning",
+                    ocrPoolDetails,
+                    LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME)
+            ));
+
+            checks.add(new HealthCheck(
+                    "reading_progress_buffer",
+                    oldestPendingMs < 60000 ? "healthy" : "warning",
+                    bufferDetails,
+                    LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME)
+            ));
+
+            checks.add(new HealthCheck(
+                    "background_task_pools",
+                    taskPoolsHealthy ? "healthy" : "warning",
+                    taskPoolDetails.toString(),
+                    LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME)
+            ));
+
+            // 9. 确定整体状态
             String overallStatus = "healthy";
             for (HealthCheck check : checks) {
                 if ("unhealthy".equals(check.getStatus())) {
@@ -183,7 +251,7 @@ public class SystemGetHealth {
                 }
             }
 
-            // 7. 构建响应数据
+            // 10. 构建响应数据
             HealthData healthData = new HealthData(
                     overallStatus,
                     checks,
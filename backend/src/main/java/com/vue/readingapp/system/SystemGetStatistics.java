@@ -4,7 +4,7 @@ package com.vue.readingapp.system;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
-import org.springframework.jdbc.core.JdbcTemplate;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -18,7 +18,7 @@ import java.util.ArrayList;
 public class SystemGetStatistics {
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private SystemStatsRollup statsRollup;
 
     // 打印接收到的请求
     private void printRequest(Object request) {
@@ -233,6 +233,10 @@ public class SystemGetStatistics {
         public void setAverageTime(int averageTime) { this.averageTime = averageTime; }
     }
 
+    private static int metric(Map<String, Long> stats, String name) {
+        return (int) Math.max(0L, stats.getOrDefault(name, 0L));
+    }
+
     @GetMapping("/statistics")
     public ResponseEntity<StatisticsResponse> getStatistics(@RequestParam(required = false) String period,
                                                             @RequestParam(required = false) List<String> metrics) {
@@ -246,111 +250,43 @@ public class SystemGetStatistics {
         printRequest(request);
 
         try {
-            // 1. 查询用户统计
-            int totalUsers = 0;
-            int activeUsers = 0;
-            int newUsers = 0;
-
-            try {
-                // 查询总用户数
-                String totalUsersSql = "SELECT COUNT(*) FROM users";
-                totalUsers = jdbcTemplate.queryForObject(totalUsersSql, Integer.class);
-
-                // 查询活跃用户数（最近7天有活动的用户）
-                String activeUsersSql = "SELECT COUNT(DISTINCT user_id) FROM reading_history WHERE start_time >= DATE_SUB(NOW(), INTERVAL 7 DAY)";
-                activeUsers = jdbcTemplate.queryForObject(activeUsersSql, Integer.class);
-
-                // 查询新用户数（最近7天注册的用户）
-                String newUsersSql = "SELECT COUNT(*) FROM users WHERE created_at >= DATE_SUB(NOW(), INTERVAL 7 DAY)";
-                newUsers = jdbcTemplate.queryForObject(newUsersSql, Integer.class);
-            } catch (Exception e) {
-                System.out.println("查询用户统计时发生错误: " + e.getMessage());
-            }
-
-            // 2. 查询文档统计
-            int totalDocuments = 0;
-            int uploadedDocuments = 0;
-            int processedDocuments = 0;
-            int failedDocuments = 0;
-
-            try {
-                // 查询总文档数
-                String totalDocsSql = "SELECT COUNT(*) FROM documents";
-                totalDocuments = jdbcTemplate.queryForObject(totalDocsSql, Integer.class);
-
-                // 查询已上传文档数
-                String uploadedDocsSql = "SELECT COUNT(*) FROM documents WHERE status = 'uploaded'";
-                uploadedDocuments = jdbcTemplate.queryForObject(uploadedDocsSql, Integer.class);
-
-                // 查询已处理文档数
-                String processedDocsSql = "SELECT COUNT(*) FROM documents WHERE status = 'processed'";
-                processedDocuments = jdbcTemplate.queryForObject(processedDocsSql, Integer.class);
-
-                // 查询失败文档数
-                String failedDocsSql = "SELECT COUNT(*) FROM documents WHERE status = 'failed'";
-                failedDocuments = jdbcTemplate.queryForObject(failedDocsSql, Integer.class);
-            } catch (Exception e) {
-                System.out.println("查询文档统计时发生错误: " + e.getMessage());
-            }
-
-            // 3. 查询词汇统计
-            int totalVocabulary = 0;
-            int addedVocabulary = 0;
-            int reviewedVocabulary = 0;
-            int masteredVocabulary = 0;
-
-            try {
-                // 查询总词汇数
-                String totalVocabSql = "SELECT COUNT(*) FROM user_vocabulary";
-                totalVocabulary = jdbcTemplate.queryForObject(totalVocabSql, Integer.class);
-
-                // 查询最近7天添加的词汇数
-                String addedVocabSql = "SELECT COUNT(*) FROM user_vocabulary WHERE created_at >= DATE_SUB(NOW(), INTERVAL 7 DAY)";
-                addedVocabulary = jdbcTemplate.queryForObject(addedVocabSql, Integer.class);
-
-                // 查询已复习词汇数
-                String reviewedVocabSql = "SELECT COUNT(*) FROM user_vocabulary WHERE review_count > 0";
-                reviewedVocabulary = jdbcTemplate.queryForObject(reviewedVocabSql, Integer.class);
-
-                // 查询已掌握词汇数
-                String masteredVocabSql = "SELECT COUNT(*) FROM user_vocabulary WHERE mastery_level >= 0.8";
-                masteredVocabulary = jdbcTemplate.queryForObject(masteredVocabSql, Integer.class);
-            } catch (Exception e) {
-                System.out.println("查询词汇统计时发生错误: " + e.getMessage());
-            }
-
-            // 4. 查询复习统计
-            int totalReviews = 0;
-            int completedReviews = 0;
-            double reviewAccuracy = 0.0;
-            int averageReviewTime = 0;
-
-            try {
-                // 查询总复习次数
-                String totalReviewsSql = "SELECT COUNT(*) FROM review_items";
-                totalReviews = jdbcTemplate.queryForObject(totalReviewsSql, Integer.class);
-
-                // 查询已完成的复习次数
-                String completedReviewsSql = "SELECT COUNT(*) FROM review_items WHERE is_completed = TRUE";
-                completedReviews = jdbcTemplate.queryForObject(completedReviewsSql, Integer.class);
-
-                // 计算复习准确率
-                if (totalReviews > 0) {
-                    reviewAccuracy = (double) completedReviews / totalReviews * 100;
-                }
-
-                // 平均复习时间（模拟）
-                averageReviewTime = 45;
-            } catch (Exception e) {
-                System.out.println("查询复习统计时发生错误: " + e.getMessage());
-            }
+            // 1. 读取汇总统计（由 SystemStatsRollup 按事件增量维护并定时对账，不再逐项 COUNT 原始表）
+            Map<String, Long> stats = statsRollup.snapshot(7);
+
+            // 用户统计：活跃用户为最近7天有阅读记录的用户，新用户为最近7天注册的用户
+            int totalUsers = metric(stats, SystemStatsRollup.USERS_TOTAL);
+            int activeUsers = metric(stats, SystemStatsRollup.USERS_ACTIVE_7D);
+            int newUsers = metric(stats, SystemStatsRollup.USERS_NEW);
+            double userGrowth = totalUsers > newUsers ? newUsers * 100.0 / (totalUsers - newUsers) : 0.0;
+
+            // 2. 文档统计
+            int totalDocuments = metric(stats, SystemStatsRollup.DOCUMENTS_TOTAL);
+            int uploadedDocuments = metric(stats, SystemStatsRollup.DOCUMENTS_STATUS_PREFIX + "uploaded");
+            int processedDocuments = metric(stats, SystemStatsRollup.DOCUMENTS_STATUS_PREFIX + "processed");
+            int failedDocuments = metric(stats, SystemStatsRollup.DOCUMENTS_STATUS_PREFIX + "failed");
+
+            // 3. 词汇统计：新增词汇为最近7天添加的词汇
+            int totalVocabulary = metric(stats, SystemStatsRollup.VOCABULARY_TOTAL);
+            int addedVocabulary = metric(stats, SystemStatsRollup.VOCABULARY_ADDED);
+            int reviewedVocabulary = metric(stats, SystemStatsRollup.VOCABULARY_REVIEWED);
+            int masteredVocabulary = metric(stats, SystemStatsRollup.VOCABULARY_MASTERED);
+
+            // 4. 复习统计：按复习会话统计，准确率为答对单词数占比，平均时间为每次完成会话的平均时长
+            int totalReviews = metric(stats, SystemStatsRollup.REVIEWS_SESSIONS);
+            int completedReviews = metric(stats, SystemStatsRollup.REVIEWS_COMPLETED);
+            long reviewWords = stats.getOrDefault(SystemStatsRollup.REVIEWS_WORDS, 0L);
+            double reviewAccuracy = reviewWords > 0
+                    ? stats.getOrDefault(SystemStatsRollup.REVIEWS_CORRECT_WORDS, 0L) * 100.0 / reviewWords : 0.0;
+            int averageReviewTime = completedReviews > 0
+                    ? (int) (stats.getOrDefault(SystemStatsRollup.REVIEWS_DURATION, 0L) / completedReviews) : 0;
+            printQueryResult(stats);
 
             // 5. 构建指标数据
             UserMetrics userMetrics = new UserMetrics(
                     totalUsers,
                     activeUsers,
                     newUsers,
-                    5.2  // 模拟增长率
+                    userGrowth
             );
 
             DocumentMetrics documentMetrics = new DocumentMetrics(
@@ -0,0 +1,343 @@
+package com.vue.readingapp.system.stats;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 系统统计汇总（system_stats_rollup）
+ *
+ * 以前 /system/statistics 每次请求都要对 users、documents、user_vocabulary 等表执行十几次 COUNT(*)。
+ * 现在统计值保存在 system_stats_rollup 中，每个指标一行：
+ *   - 累计值（bucket = 'total'）：用户总数、各状态文档数、词汇总数、复习会话数等；
+ *   - 按天的值（bucket = yyyy-MM-dd）：每日新用户、每日新增词汇，近 N 天的值为最近 N 行之和。
+ * 上传文档、状态变化、添加词汇、提交复习等事件只在内存中累加增量，定时（默认 10 秒）批量写入，
+ * 避免所有请求争用同一行的行锁。
+ * 事件覆盖不到的写入（批量修改、级联删除等）以及"近 7 天活跃用户"这类不能增量维护的去重计数，
+ * 由定时对账（默认 10 分钟）按原始表重新计算并覆盖。
+ */
+@Component
+public class SystemStatsRollup {
+
+    public static final String TOTAL = "total";
+
+    public static final String USERS_TOTAL = "users.total";
+    public static final String USERS_NEW = "users.new";
+    public static final String USERS_ACTIVE_7D = "users.active_7d";
+    public static final String DOCUMENTS_TOTAL = "documents.total";
+    public static final String DOCUMENTS_STATUS_PREFIX = "documents.status.";
+    public static final String VOCABULARY_TOTAL = "vocabulary.total";
+    public static final String VOCABULARY_ADDED = "vocabulary.added";
+    public static final String VOCABULARY_REVIEWED = "vocabulary.reviewed";
+    public static final String VOCABULARY_MASTERED = "vocabulary.mastered";
+    public static final String REVIEWS_SESSIONS = "reviews.sessions";
+    public static final String REVIEWS_COMPLETED = "reviews.completed";
+    public static final String REVIEWS_WORDS = "reviews.words";
+    public static final String REVIEWS_CORRECT_WORDS = "reviews.correct_words";
+    public static final String REVIEWS_DURATION = "reviews.duration";
+
+    // 掌握等级达到该值计为已掌握（与原统计口径 mastery_level >= 0.8 一致，mastery_level 为整数）
+    public static final int MASTERED_LEVEL = 1;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 按天统计的保留天数
+    @Value("${app.stats.daily-retention-days:90}")
+    private int dailyRetentionDays;
+
+    private static final class RollupKey {
+        private final String metric;
+        private final String bucket;
+
+        RollupKey(String metric, String bucket) {
+            this.metric = metric;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RollupKey)) return false;
+            RollupKey other = (RollupKey) o;
+            return metric.equals(other.metric) && bucket.equals(other.bucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * metric.hashCode() + bucket.hashCode();
+        }
+    }
+
+    // 尚未写入的增量
+    private final Map<RollupKey, AtomicLong> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean populated = false;
+    private volatile LocalDateTime lastReconciledAt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        try {
+            Integer tableCount = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'system_stats_rollup'",
+                    Integer.class);
+            if (tableCount == null || tableCount == 0) {
+                System.out.println("INFO: Creating table 'system_stats_rollup'...");
+                jdbcTemplate.execute("CREATE TABLE system_stats_rollup (" +
+                        "metric VARCHAR(100) NOT NULL," +
+                        "bucket VARCHAR(10) NOT NULL," +
+                        "value BIGINT NOT NULL DEFAULT 0," +
+                        "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+                        "PRIMARY KEY (metric, bucket)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to check stats rollup schema: " + e.getMessage());
+        }
+    }
+
+    // ===== 领域事件 =====
+
+    public void userRegistered() {
+        add(USERS_TOTAL, TOTAL, 1);
+        add(USERS_NEW, LocalDate.now().toString(), 1);
+    }
+
+    public void documentCreated(String status) {
+        add(DOCUMENTS_TOTAL, TOTAL, 1);
+        add(DOCUMENTS_STATUS_PREFIX + normalizeStatus(status), TOTAL, 1);
+    }
+
+    public void documentStatusChanged(String from, String to) {
+        if (Objects.equals(normalizeStatus(from), normalizeStatus(to))) {
+            return;
+        }
+        add(DOCUMENTS_STATUS_PREFIX + normalizeStatus(from), TOTAL, -1);
+        add(DOCUMENTS_STATUS_PREFIX + normalizeStatus(to), TOTAL, 1);
+    }
+
+    public void documentDeleted(String status) {
+        add(DOCUMENTS_TOTAL, TOTAL, -1);
+        add(DOCUMENTS_STATUS_PREFIX + normalizeStatus(status), TOTAL, -1);
+    }
+
+    public void vocabularyAdded(int count) {
+        if (count <= 0) {
+            return;
+        }
+        add(VOCABULARY_TOTAL, TOTAL, count);
+        add(VOCABULARY_ADDED, LocalDate.now().toString(), count);
+    }
+
+    /**
+     * 一次复习会话提交完成
+     *
+     * @param newlyReviewed 本次第一次被复习的词汇数
+     * @param masteredDelta 已掌握词汇数的变化
+     */
+    public void reviewCommitted(int words, int correctWords, int duration, int newlyReviewed, int masteredDelta) {
+        add(REVIEWS_SESSIONS, TOTAL, 1);
+        add(REVIEWS_COMPLETED, TOTAL, 1);
+        add(REVIEWS_WORDS, TOTAL, words);
+        add(REVIEWS_CORRECT_WORDS, TOTAL, correctWords);
+        add(REVIEWS_DURATION, TOTAL, Math.max(0, duration));
+        add(VOCABULARY_REVIEWED, TOTAL, newlyReviewed);
+        add(VOCABULARY_MASTERED, TOTAL, masteredDelta);
+    }
+
+    private void add(String metric, String bucket, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        pending.computeIfAbsent(new RollupKey(metric, bucket), key -> new AtomicLong()).addAndGet(delta);
+    }
+
+    private static String normalizeStatus(String status) {
+        return status == null || status.isEmpty() ? "unknown" : status;
+    }
+
+    // ===== 读取 =====
+
+    /**
+     * 读取当前统计值（含尚未写入的增量）
+     *
+     * @param days 按天统计的指标返回最近 days 天（含今天）之和
+     * @return 指标名 -> 值
+     */
+    public Map<String, Long> snapshot(int days) {
+        if (!populated) {
+            Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system_stats_rollup", Integer.class);
+            if (rows == null || rows == 0) {
+                // 首次部署：表中还没有数据，先同步计算一次
+                reconcile();
+            }
+            populated = true;
+        }
+
+        String since = LocalDate.now().minusDays(Math.max(1, days) - 1).toString();
+        Map<String, Long> values = new HashMap<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(
+                "SELECT metric, bucket, value FROM system_stats_rollup WHERE bucket = ? OR bucket >= ?", TOTAL, since)) {
+            values.merge((String) row.get("metric"), ((Number) row.get("value")).longValue(), Long::sum);
+        }
+        for (Map.Entry<RollupKey, AtomicLong> entry : pending.entrySet()) {
+            RollupKey key = entry.getKey();
+            if (TOTAL.equals(key.bucket) || key.bucket.compareTo(since) >= 0) {
+                values.merge(key.metric, entry.getValue().get(), Long::sum);
+            }
+        }
+        return values;
+    }
+
+    public LocalDateTime getLastReconciledAt() {
+        return lastReconciledAt;
+    }
+
+    // ===== 写入与对账 =====
+
+    @Scheduled(fixedDelayString = "${app.stats.flush-interval-ms:10000}")
+    public void flush() {
+        writeLock.lock();
+        try {
+            List<Object[]> batch = new ArrayList<>();
+            Map<RollupKey, Long> taken = new HashMap<>();
+            for (Map.Entry<RollupKey, AtomicLong> entry : pending.entrySet()) {
+                long delta = entry.getValue().getAndSet(0);
+                if (delta != 0) {
+                    taken.put(entry.getKey(), delta);
+                    batch.add(new Object[]{entry.getKey().metric, entry.getKey().bucket, delta});
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                jdbcTemplate.batchUpdate("INSERT INTO system_stats_rollup (metric, bucket, value) VALUES (?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE value = value + VALUES(value)", batch);
+            } catch (Exception e) {
+                // 写入失败：增量放回，下次重试
+                for (Map.Entry<RollupKey, Long> entry : taken.entrySet()) {
+                    add(entry.getKey().metric, entry.getKey().bucket, entry.getValue());
+                }
+                System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to flush " + batch.size() + " stats deltas: " + e.getMessage());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 按原始表重新计算全部统计值，纠正增量维护产生的偏差
+     *
+     * 对账期间到达的事件可能被计算一次、又作为增量再写入一次，这样的偏差在下一次对账时纠正。
+     */
+    @Scheduled(fixedDelayString = "${app.stats.reconcile-interval-ms:600000}",
+            initialDelayString = "${app.stats.reconcile-initial-delay-ms:30000}")
+    public void reconcile() {
+        writeLock.lock();
+        try {
+            long startedAt = System.currentTimeMillis();
+            // 已经发生的事件先写入，否则覆盖后这些增量会被再加一次
+            flush();
+            LocalDate today = LocalDate.now();
+            Timestamp weekAgo = Timestamp.valueOf(LocalDateTime.now().minusDays(7));
+            Timestamp dailySince = Timestamp.valueOf(today.minusDays(dailyRetentionDays - 1).atStartOfDay());
+
+            // 1. 累计值
+            List<Object[]> totals = new ArrayList<>();
+            totals.add(total(USERS_TOTAL, "SELECT COUNT(*) FROM users"));
+            totals.add(total(USERS_ACTIVE_7D, "SELECT COUNT(DISTINCT user_id) FROM reading_history WHERE start_time >= ?", weekAgo));
+            totals.add(total(DOCUMENTS_TOTAL, "SELECT COUNT(*) FROM documents"));
+            totals.add(total(VOCABULARY_TOTAL, "SELECT COUNT(*) FROM user_vocabulary"));
+            totals.add(total(VOCABULARY_REVIEWED, "SELECT COUNT(*) FROM user_vocabulary WHERE review_count > 0"));
+            totals.add(total(VOCABULARY_MASTERED, "SELECT COUNT(*) FROM user_vocabulary WHERE mastery_level >= ?", MASTERED_LEVEL));
+
+            Map<String, Object> reviews = jdbcTemplate.queryForMap("SELECT COUNT(*) AS sessions, " +
+                    "SUM(CASE WHEN status = 'completed' THEN 1 ELSE 0 END) AS completed, " +
+                    "COALESCE(SUM(CASE WHEN status = 'completed' THEN total_words ELSE 0 END), 0) AS words, " +
+                    "COALESCE(SUM(CASE WHEN status = 'completed' THEN correct_words ELSE 0 END), 0) AS correct_words, " +
+                    "COALESCE(SUM(CASE WHEN status = 'completed' THEN duration ELSE 0 END), 0) AS duration " +
+                    "FROM review_sessions");
+            totals.add(new Object[]{REVIEWS_SESSIONS, TOTAL, toLong(reviews.get("sessions"))});
+            totals.add(new Object[]{REVIEWS_COMPLETED, TOTAL, toLong(reviews.get("completed"))});
+            totals.add(new Object[]{REVIEWS_WORDS, TOTAL, toLong(reviews.get("words"))});
+            totals.add(new Object[]{REVIEWS_CORRECT_WORDS, TOTAL, toLong(reviews.get("correct_words"))});
+            totals.add(new Object[]{REVIEWS_DURATION, TOTAL, toLong(reviews.get("duration"))});
+
+            List<Object[]> statuses = new ArrayList<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT status, COUNT(*) AS count FROM documents GROUP BY status")) {
+                statuses.add(new Object[]{DOCUMENTS_STATUS_PREFIX + normalizeStatus((String) row.get("status")), TOTAL, toLong(row.get("count"))});
+            }
+
+            // 2. 按天的值
+            List<Object[]> daily = new ArrayList<>();
+            daily.addAll(dailyCounts(USERS_NEW, "users", dailySince));
+            daily.addAll(dailyCounts(VOCABULARY_ADDED, "user_vocabulary", dailySince));
+
+            // 3. 一个事务内覆盖：已不存在的状态归零，按天的值整体重建（超出保留期的日期随之清理）
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.update("UPDATE system_stats_rollup SET value = 0 WHERE metric LIKE ?", DOCUMENTS_STATUS_PREFIX + "%");
+                jdbcTemplate.update("DELETE FROM system_stats_rollup WHERE bucket <> ?", TOTAL);
+                List<Object[]> all = new ArrayList<>(totals);
+                all.addAll(statuses);
+                all.addAll(daily);
+                jdbcTemplate.batchUpdate("INSERT INTO system_stats_rollup (metric, bucket, value) VALUES (?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE value = VALUES(value)", all);
+                return null;
+            });
+
+            populated = true;
+            lastReconciledAt = LocalDateTime.now();
+            System.out.println("INFO: [" + lastReconciledAt + "] Stats rollup reconciled in " + (System.currentTimeMillis() - startedAt) + "ms");
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to reconcile stats rollup: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private Object[] total(String metric, String sql, Object... args) {
+        Long value = jdbcTemplate.queryForObject(sql, Long.class, args);
+        return new Object[]{metric, TOTAL, value != null ? value : 0L};
+    }
+
+    // created_at 按天分组（范围条件可走索引）
+    private List<Object[]> dailyCounts(String metric, String table, Timestamp since) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(
+                "SELECT DATE(created_at) AS day, COUNT(*) AS count FROM " + table + " WHERE created_at >= ? GROUP BY DATE(created_at)", since)) {
+            rows.add(new Object[]{metric, row.get("day").toString(), toLong(row.get("count"))});
+        }
+        return rows;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
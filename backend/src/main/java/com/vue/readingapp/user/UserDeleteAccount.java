@@ -9,6 +9,11 @@ import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.search.index.SearchIndexService;
+import com.vue.readingapp.search.suggest.SuggestionService;
+import com.vue.readingapp.search.history.SearchHistoryRecorder;
+import com.vue.readingapp.reader.ReaderPageCache;
 
 @RestController
 @RequestMapping("/api/v1/user")
@@ -17,6 +22,21 @@ public class UserDeleteAccount {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    private ReaderPageCache readerPageCache;
+
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到删除账户请求 ===");
@@ -82,8 +102,7 @@ public class UserDeleteAccount {
             String accessToken = authHeader.substring(7);
 
             // 2. 验证token有效性
-            String tokenSql = "SELECT user_id, expires_at FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(tokenSql, accessToken);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(accessToken);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -137,6 +156,11 @@ public class UserDeleteAccount {
             // 4.3 最后删除用户记录，触发数据库级联删除
             String deleteUserSql = "DELETE FROM users WHERE user_id = ?";
             int rowsDeleted = jdbcTemplate.update(deleteUserSql, userId);
+            sessionTokenCache.invalidateUser(userId);
+            searchIndexService.dropUser(userId);
+            readerPageCache.invalidateUser(userId);
+            suggestionService.onUserRemoved(userId);
+            searchHistoryRecorder.discardUser(userId);
 
             printQueryResult("删除用户行数: " + rowsDeleted);
 
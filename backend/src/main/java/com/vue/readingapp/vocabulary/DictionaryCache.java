@@ -0,0 +1,554 @@
+package com.vue.readingapp.vocabulary;
+
+import com.vue.readingapp.config.RelationBatchLoader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 词典查询缓存
+ *
+ * 阅读器点词翻译是阅读过程中调用最频繁的接口，原来每次都要分别查询
+ * words、word_definitions、word_examples、word_relations 四张表。
+ *
+ * 这个组件由两部分组成：
+ *   - 词条缓存：word_id -> 词条（基本信息 + 释义 + 例句 + 关联词），读穿透，
+ *     数量有上限，超出后按最近最少使用（LRU）淘汰，条目最多保留 maxAgeSeconds 秒；
+ *   - 每种语言一棵紧凑前缀树（WordTrie）：把查询词解析成 word_id。
+ *     查询词先去掉首尾标点并转小写；词典中没有原词时，依次尝试 words.exchange 中登记的
+ *     屈折形式（went -> go）和英语的常见词形规则（studies -> study、running -> run），
+ *     这样点到屈折形式也能查到原形。前缀树同时提供前缀联想，以及全局搜索中词汇的词头前缀匹配。
+ * 前缀树在应用启动后分批加载，之后按 word_id 水位线增量吸收新词；加载完成前直接按原词查库。
+ * 导入生词、新增词条后调用 invalidate，清除相关缓存并立即吸收新词。
+ */
+@Component
+public class DictionaryCache {
+
+    // 前缀树尚未加载完成，无法判断词条是否存在
+    private static final long UNKNOWN = -1;
+
+    // words.exchange 中表示屈折形式的类型：过去式、过去分词、现在分词、第三人称单数、复数、比较级、最高级
+    private static final Set<String> INFLECTION_TYPES = new HashSet<>(Arrays.asList("p", "d", "i", "3", "s", "r", "t"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RelationBatchLoader relationBatchLoader;
+
+    // 缓存的最大词条数
+    @Value("${app.dictionary.cache.max-entries:20000}")
+    private int maxEntries;
+
+    // 单个词条在缓存中的最长保留时间（秒）
+    @Value("${app.dictionary.cache.max-age-seconds:3600}")
+    private long maxAgeSeconds;
+
+    // 是否在内存中维护词典前缀树
+    @Value("${app.dictionary.trie.enabled:true}")
+    private boolean trieEnabled;
+
+    // 加载前缀树时每次从 words 表扫描的行数
+    @Value("${app.dictionary.trie.scan-batch-size:10000}")
+    private int scanBatchSize;
+
+    /**
+     * 一个词条：words 表的整行、释义、例句和关联词，各列表按 order_index 排序。
+     * 缓存中的对象被多个请求共享，只读。
+     */
+    public static class Entry {
+        private final long wordId;
+        private final Map<String, Object> word;
+        private final List<Map<String, Object>> definitions;
+        private final List<Map<String, Object>> examples;
+        private final List<Map<String, Object>> relations;
+
+        Entry(long wordId, Map<String, Object> word, List<Map<String, Object>> definitions,
+              List<Map<String, Object>> examples, List<Map<String, Object>> relations) {
+            this.wordId = wordId;
+            this.word = Collections.unmodifiableMap(word);
+            this.definitions = Collections.unmodifiableList(definitions);
+            this.examples = Collections.unmodifiableList(examples);
+            this.relations = Collections.unmodifiableList(relations);
+        }
+
+        public long getWordId() { return wordId; }
+        public String getWord() { return (String) word.get("word"); }
+
+        /** words 表的整行 */
+        public Map<String, Object> getWordRow() { return word; }
+
+        /** definition_id、definition、order_index */
+        public List<Map<String, Object>> getDefinitions() { return definitions; }
+
+        /** example_id、example_sentence、translation、order_index */
+        public List<Map<String, Object>> getExamples() { return examples; }
+
+        /** relation_id、relationship_type、related_word_id、related_word */
+        public List<Map<String, Object>> getRelations() { return relations; }
+
+        /** 指定关系类型的关联词 */
+        public List<String> getRelatedWords(String relationshipType, int limit) {
+            List<String> words = new ArrayList<>();
+            for (Map<String, Object> relation : relations) {
+                if (relationshipType.equals(relation.get("relationship_type")) && relation.get("related_word") != null
+                        && (limit <= 0 || words.size() < limit)) {
+                    words.add((String) relation.get("related_word"));
+                }
+            }
+            return words;
+        }
+    }
+
+    private static class CachedEntry {
+        private final Entry entry;
+        private final LocalDateTime validUntil;
+
+        CachedEntry(Entry entry, LocalDateTime validUntil) {
+            this.entry = entry;
+            this.validUntil = validUntil;
+        }
+    }
+
+    // accessOrder = true 的 LinkedHashMap 即为 LRU 结构
+    private final Map<Long, CachedEntry> cache = Collections.synchronizedMap(
+            new LinkedHashMap<Long, CachedEntry>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedEntry> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+
+    private final Map<String, WordTrie> tries = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock trieLock = new ReentrantReadWriteLock();
+
+    // 已吸收到前缀树中的最大 word_id，只在 refresh 中修改
+    private long watermark = 0;
+
+    // 首次全量扫描完成后，前缀树中查不到的词即可判定为不存在
+    private volatile boolean trieReady = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+
+    /**
+     * 查询单个词条
+     *
+     * @return 词条，词典中没有时返回 null
+     */
+    public Entry lookup(String word, String language) {
+        return lookupAll(Collections.singletonList(word), language).get(word);
+    }
+
+    /**
+     * 批量查询词条：缓存未命中的部分合并成每张表一次 IN 查询
+     *
+     * @return 输入的词 -> 词条，词典中没有的词不在结果中
+     */
+    public Map<String, Entry> lookupAll(Collection<String> words, String language) {
+        Map<String, Long> idsByInput = new LinkedHashMap<>();
+        Map<String, String> unresolvedByInput = new LinkedHashMap<>();
+        for (String word : words) {
+            String key = normalize(word);
+            if (key.isEmpty()) {
+                continue;
+            }
+            long wordId = resolve(key, language);
+            if (wordId == UNKNOWN) {
+                unresolvedByInput.put(word, key);
+            } else if (wordId > 0) {
+                idsByInput.put(word, wordId);
+            } else {
+                notFound.incrementAndGet();
+            }
+        }
+
+        Map<Long, Entry> entries = new HashMap<>();
+        Set<Long> missingIds = new LinkedHashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Long wordId : new LinkedHashSet<>(idsByInput.values())) {
+            CachedEntry cached = cache.get(wordId);
+            if (cached != null && now.isBefore(cached.validUntil)) {
+                entries.put(wordId, cached.entry);
+                hits.incrementAndGet();
+            } else {
+                missingIds.add(wordId);
+                misses.incrementAndGet();
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            entries.putAll(loadEntries(missingIds));
+        }
+
+        Map<String, Entry> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> input : idsByInput.entrySet()) {
+            Entry entry = entries.get(input.getValue());
+            if (entry != null) {
+                result.put(input.getKey(), entry);
+            }
+        }
+
+        // 前缀树尚未就绪：按原词直接查库
+        if (!unresolvedByInput.isEmpty()) {
+            Map<String, Entry> byWord = loadEntriesByWord(new LinkedHashSet<>(unresolvedByInput.values()), language);
+            for (Map.Entry<String, String> input : unresolvedByInput.entrySet()) {
+                Entry entry = byWord.get(input.getValue());
+                if (entry != null) {
+                    result.put(input.getKey(), entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 前缀联想：按字典序返回以 prefix 开头的词条
+     */
+    public List<String> suggest(String prefix, String language, int limit) {
+        String key = normalize(prefix);
+        WordTrie trie = tries.get(language);
+        if (key.isEmpty() || trie == null) {
+            return new ArrayList<>();
+        }
+        trieLock.readLock().lock();
+        try {
+            return trie.prefix(key, limit);
+        } finally {
+            trieLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 前缀匹配的词条ID（所有语言），同一语言内按字典序，供全局搜索的词汇部分使用
+     *
+     * @return 前缀树尚未加载完成或未启用时返回 null，由调用方改用 SQL 查询
+     */
+    public List<Long> prefixWordIds(String prefix, int limit) {
+        if (!trieEnabled || !trieReady) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<>();
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return ids;
+        }
+        trieLock.readLock().lock();
+        try {
+            for (WordTrie trie : tries.values()) {
+                for (String word : trie.prefix(key, limit - ids.size())) {
+                    ids.add((long) trie.getWordId(word));
+                }
+                if (ids.size() >= limit) {
+                    break;
+                }
+            }
+        } finally {
+            trieLock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    /**
+     * 词条被新增或修改后调用：清除这些词的缓存，并吸收新增的词条
+     */
+    public void invalidate(Collection<String> words) {
+        trieLock.readLock().lock();
+        try {
+            for (String word : words) {
+                String key = normalize(word);
+                for (WordTrie trie : tries.values()) {
+                    int wordId = key.isEmpty() ? 0 : trie.getWordId(key);
+                    if (wordId > 0) {
+                        cache.remove((long) wordId);
+                    }
+                }
+            }
+        } finally {
+            trieLock.readLock().unlock();
+        }
+        // 首次全量扫描进行中时不必等待，扫描本身会读到新词
+        if (trieEnabled && trieReady) {
+            refresh();
+        }
+    }
+
+    /**
+     * 吸收 words 表中新增的词条到前缀树。首次执行（应用启动时）会分批扫描整个词典。
+     */
+    @Scheduled(fixedDelayString = "${app.dictionary.trie.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        if (!trieEnabled) {
+            return;
+        }
+        try {
+            int absorbed = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT word_id, word, language, exchange FROM words WHERE word_id > ? ORDER BY word_id LIMIT ?",
+                        watermark, Math.max(1, scanBatchSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+
+                trieLock.writeLock().lock();
+                try {
+                    for (Map<String, Object> row : rows) {
+                        int wordId = ((Number) row.get("word_id")).intValue();
+                        String key = normalize((String) row.get("word"));
+                        if (key.isEmpty()) {
+                            continue;
+                        }
+                        String language = row.get("language") != null ? (String) row.get("language") : "en";
+                        WordTrie trie = tries.computeIfAbsent(language, k -> new WordTrie());
+                        trie.putWord(key, wordId);
+                        for (String form : inflections((String) row.get("exchange"))) {
+                            trie.putLemma(form, wordId);
+                        }
+                        absorbed++;
+                    }
+                } finally {
+                    trieLock.writeLock().unlock();
+                }
+
+                watermark = ((Number) rows.get(rows.size() - 1).get("word_id")).longValue();
+                if (rows.size() < scanBatchSize) {
+                    break;
+                }
+            }
+            if (!trieReady) {
+                trieReady = true;
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Dictionary trie loaded: " + getStats());
+            } else if (absorbed > 0) {
+                System.out.println("INFO: [" + LocalDateTime.now() + "] Dictionary trie absorbed " + absorbed + " words, watermark=" + watermark);
+            }
+        } catch (Exception e) {
+            System.err.println("ERROR: [" + LocalDateTime.now() + "] Failed to refresh dictionary trie: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedEntries", cache.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("notFound", notFound.get());
+        stats.put("trieReady", trieReady);
+        Map<String, Integer> trieWords = new TreeMap<>();
+        int nodes = 0;
+        trieLock.readLock().lock();
+        try {
+            for (Map.Entry<String, WordTrie> trie : tries.entrySet()) {
+                trieWords.put(trie.getKey(), trie.getValue().getWordCount());
+                nodes += trie.getValue().getNodeCount();
+            }
+        } finally {
+            trieLock.readLock().unlock();
+        }
+        stats.put("trieWords", trieWords);
+        stats.put("trieNodes", nodes);
+        return stats;
+    }
+
+    /**
+     * 把查询词解析成 word_id：原词 -> exchange 登记的原形 -> 词形规则
+     *
+     * @return word_id；词典中没有时返回 0；前缀树未就绪时返回 UNKNOWN
+     */
+    private long resolve(String key, String language) {
+        if (!trieEnabled || !trieReady) {
+            return UNKNOWN;
+        }
+        WordTrie trie = tries.get(language);
+        if (trie == null) {
+            return 0;
+        }
+        trieLock.readLock().lock();
+        try {
+            int wordId = trie.getWordId(key);
+            if (wordId > 0) {
+                return wordId;
+            }
+            wordId = trie.getLemmaId(key);
+            if (wordId > 0) {
+                return wordId;
+            }
+            if ("en".equals(language)) {
+                for (String candidate : englishLemmaCandidates(key)) {
+                    wordId = trie.getWordId(candidate);
+                    if (wordId > 0) {
+                        return wordId;
+                    }
+                }
+            }
+            return 0;
+        } finally {
+            trieLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 规范化查询词：去掉首尾的标点、引号，统一撇号，转小写
+     */
+    static String normalize(String word) {
+        if (word == null) {
+            return "";
+        }
+        String text = word.trim().replace('’', '\'').replace('‘', '\'');
+        int start = 0;
+        int end = text.length();
+        while (start < end && !Character.isLetterOrDigit(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && !Character.isLetterOrDigit(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 解析 words.exchange，如 "p:went/d:gone/i:going/3:goes"，返回其中的屈折形式
+     */
+    private static List<String> inflections(String exchange) {
+        List<String> forms = new ArrayList<>();
+        if (exchange == null || exchange.isEmpty()) {
+            return forms;
+        }
+        for (String part : exchange.split("/")) {
+            int colon = part.indexOf(':');
+            if (colon > 0 && INFLECTION_TYPES.contains(part.substring(0, colon))) {
+                String form = normalize(part.substring(colon + 1));
+                if (!form.isEmpty()) {
+                    forms.add(form);
+                }
+            }
+        }
+        return forms;
+    }
+
+    /**
+     * 英语常见词形还原规则，按可能性排序
+     */
+    static List<String> englishLemmaCandidates(String word) {
+        List<String> candidates = new ArrayList<>();
+        int n = word.length();
+        if (word.endsWith("'s")) {
+            candidates.add(word.substring(0, n - 2));
+            return candidates;
+        }
+        if (n > 4 && (word.endsWith("ies") || word.endsWith("ied"))) {
+            candidates.add(word.substring(0, n - 3) + "y");
+        }
+        if (n > 3 && word.endsWith("es")) {
+            candidates.add(word.substring(0, n - 2));
+        }
+        if (n > 2 && word.endsWith("s") && !word.endsWith("ss")) {
+            candidates.add(word.substring(0, n - 1));
+        }
+        if (n > 4 && word.endsWith("ing")) {
+            String stem = word.substring(0, n - 3);
+            candidates.add(stem);
+            candidates.add(stem + "e");
+            addUndoubled(stem, candidates);
+        }
+        if (n > 3 && word.endsWith("ed")) {
+            String stem = word.substring(0, n - 2);
+            candidates.add(stem);
+            candidates.add(word.substring(0, n - 1));
+            addUndoubled(stem, candidates);
+        }
+        if (n > 4 && word.endsWith("est")) {
+            String stem = word.substring(0, n - 3);
+            candidates.add(stem);
+            candidates.add(stem + "e");
+            addUndoubled(stem, candidates);
+        } else if (n > 3 && word.endsWith("er")) {
+            String stem = word.substring(0, n - 2);
+            candidates.add(stem);
+            candidates.add(stem + "e");
+            addUndoubled(stem, candidates);
+        }
+        return candidates;
+    }
+
+    // running -> runn -> run
+    private static void addUndoubled(String stem, List<String> candidates) {
+        int n = stem.length();
+        if (n > 2 && stem.charAt(n - 1) == stem.charAt(n - 2)) {
+            candidates.add(stem.substring(0, n - 1));
+        }
+    }
+
+    private Map<String, Entry> loadEntriesByWord(Collection<String> keys, String language) {
+        Map<String, Entry> byWord = new HashMap<>();
+        if (keys.isEmpty()) {
+            return byWord;
+        }
+        List<Object> params = new ArrayList<>();
+        params.add(language);
+        params.addAll(keys);
+        List<Long> wordIds = new ArrayList<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(
+                "SELECT word_id FROM words WHERE language = ? AND word IN (" +
+                        String.join(", ", Collections.nCopies(keys.size(), "?")) + ")", params.toArray())) {
+            wordIds.add(((Number) row.get("word_id")).longValue());
+        }
+        for (Entry entry : loadEntries(wordIds).values()) {
+            byWord.put(normalize(entry.getWord()), entry);
+        }
+        misses.addAndGet(keys.size());
+        return byWord;
+    }
+
+    /**
+     * 从数据库加载词条并放入缓存，每张表一次查询
+     */
+    private Map<Long, Entry> loadEntries(Collection<Long> wordIds) {
+        Map<Long, Entry> entries = new HashMap<>();
+        if (wordIds.isEmpty()) {
+            return entries;
+        }
+
+        Map<Long, List<Map<String, Object>>> words = relationBatchLoader.loadGrouped(
+                "SELECT * FROM words WHERE word_id IN {ids}", "word_id", wordIds);
+        if (words.isEmpty()) {
+            return entries;
+        }
+        Map<Long, List<Map<String, Object>>> definitions = relationBatchLoader.loadGrouped(
+                "SELECT definition_id, word_id, definition, order_index FROM word_definitions " +
+                        "WHERE word_id IN {ids} ORDER BY word_id, order_index, definition_id",
+                "word_id", words.keySet());
+        Map<Long, List<Map<String, Object>>> examples = relationBatchLoader.loadGrouped(
+                "SELECT example_id, word_id, example_sentence, translation, order_index FROM word_examples " +
+                        "WHERE word_id IN {ids} ORDER BY word_id, order_index, example_id",
+                "word_id", words.keySet());
+        Map<Long, List<Map<String, Object>>> relations = relationBatchLoader.loadGrouped(
+                "SELECT wr.relation_id, wr.word_id, wr.related_word_id, wr.relationship_type, w.word AS related_word " +
+                        "FROM word_relations wr JOIN words w ON wr.related_word_id = w.word_id " +
+                        "WHERE wr.word_id IN {ids} ORDER BY wr.word_id, wr.relation_id",
+                "word_id", words.keySet());
+
+        LocalDateTime validUntil = LocalDateTime.now().plusSeconds(maxAgeSeconds);
+        for (Map.Entry<Long, List<Map<String, Object>>> word : words.entrySet()) {
+            Long wordId = word.getKey();
+            Entry entry = new Entry(wordId, word.getValue().get(0),
+                    definitions.getOrDefault(wordId, new ArrayList<>()),
+                    examples.getOrDefault(wordId, new ArrayList<>()),
+                    relations.getOrDefault(wordId, new ArrayList<>()));
+            entries.put(wordId, entry);
+            cache.put(wordId, new CachedEntry(entry, validUntil));
+        }
+        return entries;
+    }
+}
@@ -11,6 +11,9 @@ import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.*;
 import java.time.LocalDateTime;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
+import com.vue.readingapp.search.suggest.SuggestionService;
 
 /**
  * 添加生词到生词本的控制器
@@ -24,6 +27,18 @@ public class VocabularyAddTo {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private DictionaryCache dictionaryCache;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private SystemStatsRollup statsRollup;
+
     /**
      * 辅助方法：打印请求数据
      */
@@ -218,9 +233,7 @@ public class VocabularyAddTo {
             }
 
             String token = authHeader.substring(7);
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > ?";
-            LocalDateTime now = LocalDateTime.now();
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token, now);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -259,6 +272,8 @@ public class VocabularyAddTo {
             // ON DUPLICATE KEY UPDATE 用于处理已存在的情况，不执行任何操作但也不报错
             String upsertWordSql = "INSERT INTO words (word, language) VALUES (?, ?) ON DUPLICATE KEY UPDATE word=word";
             jdbcTemplate.update(upsertWordSql, normalizedWord, finalLanguage);
+            dictionaryCache.invalidate(Collections.singletonList(normalizedWord));
+            suggestionService.onWordsAdded();
             
             String getWordIdSql = "SELECT word_id FROM words WHERE word = ? AND language = ?";
             Long wordId = jdbcTemplate.queryForObject(getWordIdSql, Long.class, normalizedWord, finalLanguage);
@@ -290,6 +305,7 @@ public class VocabularyAddTo {
 
             // 获取新插入记录的自增 ID
             Long userVocabId = keyHolder.getKey().longValue();
+            statsRollup.vocabularyAdded(1);
 
             // 6. 处理标签：如果请求中包含标签，则进行关联
             if (request.getTags() != null && !request.getTags().isEmpty()) {
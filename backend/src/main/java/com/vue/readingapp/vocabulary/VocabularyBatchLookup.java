@@ -16,6 +16,9 @@ public class VocabularyBatchLookup {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private DictionaryCache dictionaryCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到批量单词查询请求 ===");
@@ -169,86 +172,70 @@ public class VocabularyBatchLookup {
                 );
             }
 
-            // 3. 批量查询单词
+            // 3. 从词典缓存批量查询，缓存未命中的单词每张表合并为一次查询
+            Map<String, DictionaryCache.Entry> entries = dictionaryCache.lookupAll(uniqueWords, language);
+
+            // 4. 按请求顺序组装结果
             List<WordData> result = new ArrayList<>();
 
             for (String word : uniqueWords) {
-                try {
-                    // 查询单词基本信息
-                    String wordSql = "SELECT word_id, word, language, phonetic, part_of_speech, frequency, difficulty, audio_url " +
-                            "FROM words WHERE word = ? AND language = ?";
-
-                    List<Map<String, Object>> words = jdbcTemplate.queryForList(wordSql, word, language);
-
-                    if (!words.isEmpty()) {
-                        Map<String, Object> wordInfo = words.get(0);
-                        Long wordId = ((Number) wordInfo.get("word_id")).longValue();
-
-                        // 查询单词释义
-                        String definitionsSql = "SELECT definition FROM word_definitions WHERE word_id = ? ORDER BY definition_id";
-                        List<String> definitions = jdbcTemplate.queryForList(definitionsSql, String.class, wordId);
-
-                        // 查询单词例句
-                        String examplesSql = "SELECT example FROM word_examples WHERE word_id = ? ORDER BY example_id LIMIT 5";
-                        List<String> examples = jdbcTemplate.queryForList(examplesSql, String.class, wordId);
-
-                        // 查询同义词
-                        String synonymsSql = "SELECT w.word FROM word_relations wr " +
-                                "JOIN words w ON wr.related_word_id = w.word_id " +
-                                "WHERE wr.word_id = ? AND wr.relation_type = 'synonym' LIMIT 5";
-                        List<String> synonyms = jdbcTemplate.queryForList(synonymsSql, String.class, wordId);
-
-                        // 查询反义词
-                        String antonymsSql = "SELECT w.word FROM word_relations wr " +
-                                "JOIN words w ON wr.related_word_id = w.word_id " +
-                                "WHERE wr.word_id = ? AND wr.relation_type = 'antonym' LIMIT 5";
-                        List<String> antonyms = jdbcTemplate.queryForList(antonymsSql, String.class, wordId);
-
-                        // 组装单词数据
-                        WordData wordData = new WordData();
-                        wordData.setWord((String) wordInfo.get("word"));
-                        wordData.setLanguage((String) wordInfo.get("language"));
-                        wordData.setPhonetic((String) wordInfo.get("phonetic"));
-                        wordData.setPartOfSpeech((String) wordInfo.get("part_of_speech"));
-                        wordData.setFrequency(wordInfo.get("frequency") != null ? ((Number) wordInfo.get("frequency")).intValue() : 0);
-                        wordData.setDifficulty((String) wordInfo.get("difficulty"));
-                        wordData.setAudioUrl((String) wordInfo.get("audio_url"));
-                        wordData.setSource("dictionary");
-                        wordData.setDefinitions(definitions);
-                        wordData.setExamples(examples);
-                        wordData.setSynonyms(synonyms);
-                        wordData.setAntonyms(antonyms);
-
-                        // 添加元数据
-                        Map<String, Object> metadata = new HashMap<>();
-                        metadata.put("word_id", wordId);
-                        metadata.put("definition_count", definitions.size());
-                        metadata.put("example_count", examples.size());
-                        wordData.setMetadata(metadata);
-
-                        result.add(wordData);
-                    } else {
-                        // 单词不存在，创建空的单词数据
-                        WordData wordData = new WordData();
-                        wordData.setWord(word);
-                        wordData.setLanguage(language);
-                        wordData.setSource("not_found");
-
-                        Map<String, Object> metadata = new HashMap<>();
-                        metadata.put("found", false);
-                        wordData.setMetadata(metadata);
-
-                        result.add(wordData);
+                DictionaryCache.Entry entry = entries.get(word);
+
+                if (entry != null) {
+                    Map<String, Object> wordInfo = entry.getWordRow();
+                    Long wordId = entry.getWordId();
+                    List<String> definitions = new ArrayList<>();
+                    for (Map<String, Object> definition : entry.getDefinitions()) {
+                        definitions.add((String) definition.get("definition"));
                     }
-                } catch (Exception e) {
-                    System.err.println("查询单词 " + word + " 时发生错误: " + e.getMessage());
-                    // 继续处理其他单词
+                    List<String> examples = new ArrayList<>();
+                    for (Map<String, Object> example : entry.getExamples()) {
+                        if (examples.size() < 5) {
+                            examples.add((String) example.get("example_sentence"));
+                        }
+                    }
+
+                    // 组装单词数据
+                    WordData wordData = new WordData();
+                    wordData.setWord((String) wordInfo.get("word"));
+                    wordData.setLanguage((String) wordInfo.get("language"));
+                    wordData.setPhonetic((String) wordInfo.get("phonetic"));
+                    wordData.setPartOfSpeech((String) wordInfo.get("part_of_speech"));
+                    wordData.setFrequency(wordInfo.get("frq") != null ? ((Number) wordInfo.get("frq")).intValue() : 0);
+                    wordData.setDifficulty((String) wordInfo.get("difficulty"));
+                    wordData.setAudioUrl((String) wordInfo.get("audio"));
+                    wordData.setSource("dictionary");
+                    wordData.setDefinitions(definitions);
+                    wordData.setExamples(examples);
+                    wordData.setSynonyms(entry.getRelatedWords("synonym", 5));
+                    wordData.setAntonyms(entry.getRelatedWords("antonym", 5));
+
+                    // 添加元数据
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put("word_id", wordId);
+                    metadata.put("definition_count", definitions.size());
+                    metadata.put("example_count", examples.size());
+                    wordData.setMetadata(metadata);
+
+                    result.add(wordData);
+                } else {
+                    // 单词不存在，创建空的单词数据
+                    WordData wordData = new WordData();
+                    wordData.setWord(word);
+                    wordData.setLanguage(language);
+                    wordData.setSource("not_found");
+
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put("found", false);
+                    wordData.setMetadata(metadata);
+
+                    result.add(wordData);
                 }
             }
 
             printQueryResult("共查询 " + result.size() + " 个单词");
 
-            // 4. 创建响应
+            // 5. 创建响应
             BatchLookupResponse response = new BatchLookupResponse(true, "批量单词查询完成", result);
 
             printResponse(response);
@@ -10,6 +10,9 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.*;
 import java.time.LocalDateTime;
+import com.vue.readingapp.config.SessionTokenCache;
+import com.vue.readingapp.system.stats.SystemStatsRollup;
+import com.vue.readingapp.search.suggest.SuggestionService;
 
 /**
  * 生词本导入控制器
@@ -25,6 +28,18 @@ public class VocabularyImport {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
+    @Autowired
+    private DictionaryCache dictionaryCache;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
+    @Autowired
+    private SystemStatsRollup statsRollup;
+
     private void printRequest(Object request) {
         System.out.println("=== 收到导入生词本请求 ===");
         System.out.println("请求参数: " + request);
@@ -130,9 +145,7 @@ public class VocabularyImport {
             }
 
             String token = authHeader.substring(7);
-            String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > ?";
-            LocalDateTime now = LocalDateTime.now();
-            List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token, now);
+            List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
             if (sessions.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
@@ -186,6 +199,14 @@ public class VocabularyImport {
                     int end = Math.min(i + 1000, wordBatchArgs.size());
                     jdbcTemplate.batchUpdate(insertWordSql, wordBatchArgs.subList(i, end));
                 }
+
+                // 新词条进入词典缓存的前缀树
+                List<String> importedWords = new ArrayList<>();
+                for (Object[] args : wordBatchArgs) {
+                    importedWords.add((String) args[0]);
+                }
+                dictionaryCache.invalidate(importedWords);
+                suggestionService.onWordsAdded();
             }
 
             // 2. 批量插入 user_vocabulary
@@ -199,6 +220,8 @@ public class VocabularyImport {
 
             List<Object[]> batchArgs = new ArrayList<>();
             LocalDateTime currentTime = LocalDateTime.now();
+            // ON DUPLICATE KEY UPDATE 新插入的行返回 1，更新已有行返回 2
+            int insertedRows = 0;
 
             for (int i = 0; i < vocabularyItems.size(); i++) {
                 totalProcessed++;
@@ -225,7 +248,10 @@ public class VocabularyImport {
 
                     if (batchArgs.size() >= 1000) {
                         int[] results = jdbcTemplate.batchUpdate(insertVocabSql, batchArgs);
-                        for (int res : results) successfullyImported++;
+                        for (int res : results) {
+                            successfullyImported++;
+                            if (res == 1) insertedRows++;
+                        }
                         batchArgs.clear();
                     }
                 } catch (Exception e) {
@@ -236,8 +262,12 @@ public class VocabularyImport {
 
             if (!batchArgs.isEmpty()) {
                 int[] results = jdbcTemplate.batchUpdate(insertVocabSql, batchArgs);
-                for (int res : results) successfullyImported++;
+                for (int res : results) {
+                    successfullyImported++;
+                    if (res == 1) insertedRows++;
+                }
             }
+            statsRollup.vocabularyAdded(insertedRows);
 
             ImportResultData resultData = new ImportResultData(totalProcessed, successfullyImported, skipped, failed, errors, LocalDateTime.now().toString());
             String message = String.format("导入完成，成功导入 %d 项，失败 %d 项", successfullyImported, failed);
@@ -16,6 +16,9 @@ public class VocabularyLookupWord {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private DictionaryCache dictionaryCache;
+
     // 打印接收到的请求
     private void printRequest(Object request) {
         System.out.println("=== 收到单词查询请求 ===");
@@ -156,51 +159,33 @@ public class VocabularyLookupWord {
 
             String normalizedWord = word.trim().toLowerCase();
 
-            // 2. 查询单词基本信息
-            String wordSql = "SELECT word_id, word, language, phonetic, part_of_speech, frequency, difficulty, audio_url, created_at " +
-                    "FROM words WHERE word = ? AND language = ?";
+            // 2. 从词典缓存查询单词（屈折形式会解析到原形），包含释义、例句和关联词
+            DictionaryCache.Entry entry = dictionaryCache.lookup(word, language);
+            printQueryResult(entry != null ? entry.getWordRow() : null);
 
-            List<Map<String, Object>> words = jdbcTemplate.queryForList(wordSql, normalizedWord, language);
-            printQueryResult(words);
-
-            if (words.isEmpty()) {
+            if (entry == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
                         new LookupResponse(false, "未找到单词: " + normalizedWord, null)
                 );
             }
 
-            Map<String, Object> wordInfo = words.get(0);
-            Long wordId = ((Number) wordInfo.get("word_id")).longValue();
-
-            // 3. 查询单词释义
-            String definitionsSql = "SELECT definition_id, definition, example FROM word_definitions WHERE word_id = ? ORDER BY definition_id";
-            List<Map<String, Object>> definitionsList = jdbcTemplate.queryForList(definitionsSql, wordId);
+            Map<String, Object> wordInfo = entry.getWordRow();
+            Long wordId = entry.getWordId();
 
-            // 4. 查询单词例句
-            String examplesSql = "SELECT example_id, example, translation FROM word_examples WHERE word_id = ? ORDER BY example_id LIMIT 10";
-            List<Map<String, Object>> examplesList = jdbcTemplate.queryForList(examplesSql, wordId);
-
-            // 5. 查询单词关系（同义词和反义词）
-            String relationsSql = "SELECT wr.relation_type, w.word, w.language " +
-                    "FROM word_relations wr " +
-                    "JOIN words w ON wr.related_word_id = w.word_id " +
-                    "WHERE wr.word_id = ? AND wr.relation_type IN ('synonym', 'antonym')";
-            List<Map<String, Object>> relationsList = jdbcTemplate.queryForList(relationsSql, wordId);
-
-            // 6. 组装响应数据
+            // 3. 组装响应数据
             WordData wordData = new WordData();
             wordData.setWord((String) wordInfo.get("word"));
             wordData.setLanguage((String) wordInfo.get("language"));
             wordData.setPhonetic((String) wordInfo.get("phonetic"));
             wordData.setPartOfSpeech((String) wordInfo.get("part_of_speech"));
-            wordData.setFrequency(wordInfo.get("frequency") != null ? ((Number) wordInfo.get("frequency")).intValue() : 0);
+            wordData.setFrequency(wordInfo.get("frq") != null ? ((Number) wordInfo.get("frq")).intValue() : 0);
             wordData.setDifficulty((String) wordInfo.get("difficulty"));
-            wordData.setAudioUrl((String) wordInfo.get("audio_url"));
+            wordData.setAudioUrl((String) wordInfo.get("audio"));
             wordData.setSource("dictionary");
 
             // 添加释义
             List<String> definitions = new ArrayList<>();
-            for (Map<String, Object> def : definitionsList) {
+            for (Map<String, Object> def : entry.getDefinitions()) {
                 String definition = (String) def.get("definition");
                 if (definition != null && !definition.trim().isEmpty()) {
                     definitions.add(definition);
@@ -208,21 +193,11 @@ public class VocabularyLookupWord {
             }
             wordData.setDefinitions(definitions);
 
-            // 添加例句（从释义和例句表中合并）
+            // 添加例句（最多 10 条，去重）
             Set<String> exampleSet = new LinkedHashSet<>();
-
-            // 从释义表中获取例句
-            for (Map<String, Object> def : definitionsList) {
-                String example = (String) def.get("example");
-                if (example != null && !example.trim().isEmpty()) {
-                    exampleSet.add(example);
-                }
-            }
-
-            // 从例句表中获取例句
-            for (Map<String, Object> ex : examplesList) {
-                String example = (String) ex.get("example");
-                if (example != null && !example.trim().isEmpty()) {
+            for (Map<String, Object> ex : entry.getExamples()) {
+                String example = (String) ex.get("example_sentence");
+                if (example != null && !example.trim().isEmpty() && exampleSet.size() < 10) {
                     exampleSet.add(example);
                 }
             }
@@ -230,19 +205,8 @@ public class VocabularyLookupWord {
             wordData.setExamples(new ArrayList<>(exampleSet));
 
             // 添加同义词和反义词
-            List<String> synonyms = new ArrayList<>();
-            List<String> antonyms = new ArrayList<>();
-
-            for (Map<String, Object> relation : relationsList) {
-                String relationType = (String) relation.get("relation_type");
-                String relatedWord = (String) relation.get("word");
-
-                if ("synonym".equals(relationType) && relatedWord != null) {
-                    synonyms.add(relatedWord);
-                } else if ("antonym".equals(relationType) && relatedWord != null) {
-                    antonyms.add(relatedWord);
-                }
-            }
+            List<String> synonyms = entry.getRelatedWords("synonym", 0);
+            List<String> antonyms = entry.getRelatedWords("antonym", 0);
 
             wordData.setSynonyms(synonyms);
             wordData.setAntonyms(antonyms);
@@ -250,14 +214,13 @@ public class VocabularyLookupWord {
             // 添加元数据
             Map<String, Object> metadata = new HashMap<>();
             metadata.put("word_id", wordId);
-            metadata.put("created_at", wordInfo.get("created_at"));
             metadata.put("definition_count", definitions.size());
             metadata.put("example_count", exampleSet.size());
             metadata.put("synonym_count", synonyms.size());
             metadata.put("antonym_count", antonyms.size());
             wordData.setMetadata(metadata);
 
-            // 7. 创建响应
+            // 4. 创建响应
             LookupResponse response = new LookupResponse(true, "单词查询成功", wordData);
 
             // 打印返回数据
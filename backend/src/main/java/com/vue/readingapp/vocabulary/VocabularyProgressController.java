@@ -7,6 +7,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 import java.time.LocalDateTime;
+import com.vue.readingapp.config.SessionTokenCache;
 
 @RestController
 @RequestMapping("/api/v1/vocabulary/progress")
@@ -15,6 +16,9 @@ public class VocabularyProgressController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionTokenCache sessionTokenCache;
+
     // 打印接收到的请求
     private void printRequest(String method, Object request) {
         System.out.println("=== 收到学习进度请求 [" + method + "] ===");
@@ -162,8 +166,7 @@ public class VocabularyProgressController {
         }
 
         String token = authHeader.substring(7);
-        String userSql = "SELECT user_id FROM user_sessions WHERE access_token = ? AND expires_at > NOW()";
-        List<Map<String, Object>> sessions = jdbcTemplate.queryForList(userSql, token);
+        List<Map<String, Object>> sessions = sessionTokenCache.findSessions(token);
 
         if (sessions.isEmpty()) {
             return null;
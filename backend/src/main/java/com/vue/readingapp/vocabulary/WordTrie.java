@@ -0,0 +1,173 @@
+package com.vue.readingapp.vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 紧凑的词典前缀树（单一语言）
+ *
+ * 词典有几十万个词条，每个节点一个对象的前缀树会产生上百万个小对象。
+ * 这里用并行数组保存节点（字符、第一个子节点、下一个兄弟节点、词条ID、原形词条ID），
+ * 兄弟节点按字符有序，前缀枚举的结果即按字典序排列。
+ *
+ * 每个节点可以带两个值：
+ *   - wordId：该路径本身是一个词条；
+ *   - lemmaId：该路径是某个词条的屈折形式（来自 words.exchange，如 went -> go）。
+ * 非线程安全，由 DictionaryCache 加读写锁访问。
+ */
+class WordTrie {
+
+    private static final int NONE = -1;
+
+    private char[] labels = new char[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private int[] wordIds = new int[1024];
+    private int[] lemmaIds = new int[1024];
+    private int nodeCount = 0;
+    private int wordCount = 0;
+
+    WordTrie() {
+        newNode('\0');
+    }
+
+    private int newNode(char label) {
+        if (nodeCount == labels.length) {
+            int capacity = labels.length * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            wordIds = Arrays.copyOf(wordIds, capacity);
+            lemmaIds = Arrays.copyOf(lemmaIds, capacity);
+        }
+        int node = nodeCount++;
+        labels[node] = label;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        wordIds[node] = 0;
+        lemmaIds[node] = 0;
+        return node;
+    }
+
+    private int child(int node, char label) {
+        for (int n = firstChild[node]; n != NONE && labels[n] <= label; n = nextSibling[n]) {
+            if (labels[n] == label) {
+                return n;
+            }
+        }
+        return NONE;
+    }
+
+    // 兄弟链表按字符升序插入
+    private int childOrCreate(int node, char label) {
+        int previous = NONE;
+        int n = firstChild[node];
+        while (n != NONE && labels[n] < label) {
+            previous = n;
+            n = nextSibling[n];
+        }
+        if (n != NONE && labels[n] == label) {
+            return n;
+        }
+        int created = newNode(label);
+        nextSibling[created] = n;
+        if (previous == NONE) {
+            firstChild[node] = created;
+        } else {
+            nextSibling[previous] = created;
+        }
+        return created;
+    }
+
+    private int find(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length() && node != NONE; i++) {
+            node = child(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    private int findOrCreate(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            node = childOrCreate(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * 添加词条（key 需已规范化为小写）
+     */
+    void putWord(String key, int wordId) {
+        if (key.isEmpty()) {
+            return;
+        }
+        int node = findOrCreate(key);
+        if (wordIds[node] == 0) {
+            wordCount++;
+        }
+        wordIds[node] = wordId;
+    }
+
+    /**
+     * 登记屈折形式 -> 原形。同一形式对应多个原形时保留先登记的。
+     */
+    void putLemma(String form, int lemmaId) {
+        if (form.isEmpty()) {
+            return;
+        }
+        int node = findOrCreate(form);
+        if (lemmaIds[node] == 0) {
+            lemmaIds[node] = lemmaId;
+        }
+    }
+
+    /** 精确匹配的词条ID，没有时返回 0 */
+    int getWordId(String key) {
+        int node = find(key);
+        return node == NONE ? 0 : wordIds[node];
+    }
+
+    /** 作为屈折形式时对应的原形词条ID，没有时返回 0 */
+    int getLemmaId(String key) {
+        int node = find(key);
+        return node == NONE ? 0 : lemmaIds[node];
+    }
+
+    /**
+     * 按字典序列出以 prefix 开头的词条
+     */
+    List<String> prefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        int node = find(prefix);
+        if (node == NONE || limit <= 0) {
+            return result;
+        }
+        StringBuilder path = new StringBuilder(prefix);
+        if (wordIds[node] != 0) {
+            result.add(path.toString());
+        }
+        collect(firstChild[node], path, result, limit);
+        return result;
+    }
+
+    private void collect(int node, StringBuilder path, List<String> result, int limit) {
+        for (int n = node; n != NONE && result.size() < limit; n = nextSibling[n]) {
+            path.append(labels[n]);
+            if (wordIds[n] != 0) {
+                result.add(path.toString());
+            }
+            collect(firstChild[n], path, result, limit);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    int getWordCount() {
+        return wordCount;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+}
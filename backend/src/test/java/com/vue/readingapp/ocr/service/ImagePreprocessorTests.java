@@ -0,0 +1,248 @@
+package com.vue.readingapp.ocr.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 图像预处理：与逐像素的朴素实现比较结果
+ *
+ * 条带行数设为 4，小图也会被切成多个条带并行处理，覆盖条带上下边界和图像边缘的窗口。
+ */
+class ImagePreprocessorTests {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    private ImagePreprocessor preprocessor;
+
+    @BeforeEach
+    void setUp() {
+        preprocessor = new ImagePreprocessor();
+        ReflectionTestUtils.setField(preprocessor, "parallelism", 2);
+        ReflectionTestUtils.setField(preprocessor, "tileRows", 4);
+        preprocessor.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        preprocessor.shutdown();
+    }
+
+    @Test
+    void otsuMatchesExhaustiveSearch() {
+        int[] gray = randomGray(1);
+        Map<String, Object> options = options("otsu");
+        options.put("kernelSize", 1);
+
+        int threshold = naiveOtsu(gray);
+        int[] expected = new int[gray.length];
+        for (int i = 0; i < gray.length; i++) {
+            expected[i] = gray[i] > threshold ? 255 : 0;
+        }
+        assertArrayEquals(expected, pixels(preprocessor.preprocess(grayImage(gray), options)));
+    }
+
+    @Test
+    void otsuSeparatesBimodalImage() {
+        int[] gray = new int[WIDTH * HEIGHT];
+        Random random = new Random(2);
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = i % 3 == 0 ? 20 + random.nextInt(30) : 200 + random.nextInt(40);
+        }
+        Map<String, Object> options = options("otsu");
+        options.put("kernelSize", 1);
+
+        int[] result = pixels(preprocessor.preprocess(grayImage(gray), options));
+        for (int i = 0; i < gray.length; i++) {
+            assertEquals(gray[i] < 128 ? 0 : 255, result[i], "pixel " + i);
+        }
+    }
+
+    @Test
+    void adaptiveThresholdMatchesWindowSums() {
+        int[] gray = randomGray(3);
+        // 3：最小窗口；7：普通窗口，跨条带边界；61：窗口比整幅图还大，所有窗口都被裁剪
+        for (int windowSize : new int[]{3, 7, 61}) {
+            Map<String, Object> options = options("adaptive");
+            options.put("windowSize", windowSize);
+            options.put("adaptiveC", 15);
+            options.put("kernelSize", 1);
+
+            int[] expected = naiveAdaptive(gray, windowSize / 2, 15);
+            assertArrayEquals(expected, pixels(preprocessor.preprocess(grayImage(gray), options)), "windowSize " + windowSize);
+        }
+    }
+
+    @Test
+    void medianFilterMatchesSortedWindows() {
+        int[] gray = randomGray(4);
+        for (int kernelSize : new int[]{3, 5}) {
+            Map<String, Object> options = options("fixed");
+            options.put("threshold", 128);
+            options.put("kernelSize", kernelSize);
+
+            int[] binary = new int[gray.length];
+            for (int i = 0; i < gray.length; i++) {
+                binary[i] = gray[i] > 128 ? 255 : 0;
+            }
+            int[] expected = naiveMedian(binary, kernelSize / 2);
+            assertArrayEquals(expected, pixels(preprocessor.preprocess(grayImage(gray), options)), "kernelSize " + kernelSize);
+        }
+    }
+
+    @Test
+    void colorLayoutsProduceSameGray() {
+        Random random = new Random(5);
+        BufferedImage rgb = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        BufferedImage bgr = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage indexed = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int color = random.nextInt(0x1000000);
+                rgb.setRGB(x, y, color);
+                bgr.setRGB(x, y, color);
+                indexed.setRGB(x, y, color);
+            }
+        }
+        Map<String, Object> options = options("fixed");
+        options.put("threshold", 100);
+        options.put("kernelSize", 1);
+
+        int[] expected = pixels(preprocessor.preprocess(rgb, options));
+        assertArrayEquals(expected, pixels(preprocessor.preprocess(bgr, options)));
+
+        // 索引色走 getRGB 分支：与把调色板颜色写成 INT_RGB 后的结果一致
+        BufferedImage palette = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                palette.setRGB(x, y, indexed.getRGB(x, y));
+            }
+        }
+        assertArrayEquals(pixels(preprocessor.preprocess(palette, options)), pixels(preprocessor.preprocess(indexed, options)));
+    }
+
+    @Test
+    void disabledPreprocessingReturnsInput() {
+        BufferedImage image = grayImage(randomGray(6));
+        assertEquals(image, preprocessor.preprocess(image, new HashMap<>()));
+    }
+
+    // ===== 朴素实现 =====
+
+    private static int naiveOtsu(int[] gray) {
+        double best = -1;
+        int threshold = 128;
+        for (int t = 0; t < 256; t++) {
+            long background = 0;
+            long foreground = 0;
+            double sumBackground = 0;
+            double sumForeground = 0;
+            for (int value : gray) {
+                if (value <= t) {
+                    background++;
+                    sumBackground += value;
+                } else {
+                    foreground++;
+                    sumForeground += value;
+                }
+            }
+            if (background == 0 || foreground == 0) {
+                continue;
+            }
+            double diff = sumBackground / background - sumForeground / foreground;
+            double variance = (double) background * foreground * diff * diff;
+            if (variance > best) {
+                best = variance;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    private static int[] naiveAdaptive(int[] gray, int radius, int c) {
+        int[] result = new int[gray.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                long sum = 0;
+                int count = 0;
+                for (int wy = Math.max(0, y - radius); wy <= Math.min(HEIGHT - 1, y + radius); wy++) {
+                    for (int wx = Math.max(0, x - radius); wx <= Math.min(WIDTH - 1, x + radius); wx++) {
+                        sum += gray[wy * WIDTH + wx];
+                        count++;
+                    }
+                }
+                // gray / 均值 <= (100 - c)%
+                result[y * WIDTH + x] = (long) gray[y * WIDTH + x] * count * 100 <= sum * (100 - c) ? 0 : 255;
+            }
+        }
+        return result;
+    }
+
+    private static int[] naiveMedian(int[] src, int half) {
+        int[] result = new int[src.length];
+        int[] window = new int[(2 * half + 1) * (2 * half + 1)];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int n = 0;
+                for (int ky = -half; ky <= half; ky++) {
+                    for (int kx = -half; kx <= half; kx++) {
+                        int wy = Math.min(HEIGHT - 1, Math.max(0, y + ky));
+                        int wx = Math.min(WIDTH - 1, Math.max(0, x + kx));
+                        window[n++] = src[wy * WIDTH + wx];
+                    }
+                }
+                Arrays.sort(window);
+                result[y * WIDTH + x] = window[window.length / 2];
+            }
+        }
+        return result;
+    }
+
+    // ===== 工具方法 =====
+
+    private static Map<String, Object> options(String binarization) {
+        Map<String, Object> options = new HashMap<>();
+        options.put("preprocess", true);
+        options.put("binarization", binarization);
+        return options;
+    }
+
+    private static int[] randomGray(long seed) {
+        Random random = new Random(seed);
+        int[] gray = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = random.nextInt(256);
+        }
+        return gray;
+    }
+
+    private static BufferedImage grayImage(int[] gray) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < gray.length; i++) {
+            data[i] = (byte) gray[i];
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int[] values = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            values[i] = data[i] & 0xFF;
+        }
+        return values;
+    }
+}
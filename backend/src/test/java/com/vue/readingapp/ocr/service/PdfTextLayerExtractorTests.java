@@ -0,0 +1,121 @@
+package com.vue.readingapp.ocr.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文本层判定：在内存中生成 PDF 页面（纯文字、扫描图加页脚、扫描图加隐藏文本层、小插图）
+ */
+class PdfTextLayerExtractorTests {
+
+    private static final String LINE = "The quick brown fox jumps over the lazy dog while reading a long chapter. ";
+
+    private PdfTextLayerExtractor extractor;
+
+    @BeforeEach
+    void setUp() {
+        extractor = new PdfTextLayerExtractor();
+        ReflectionTestUtils.setField(extractor, "enabled", true);
+        ReflectionTestUtils.setField(extractor, "minChars", 30);
+        ReflectionTestUtils.setField(extractor, "minQuality", 0.85);
+        ReflectionTestUtils.setField(extractor, "imagePageCoverage", 0.5);
+        ReflectionTestUtils.setField(extractor, "imagePageMinDensity", 5.0);
+    }
+
+    @Test
+    void textPageIsUsable() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = addPage(document);
+            writeLines(document, page, 40);
+            assertTrue(extract(document).isUsable());
+        }
+    }
+
+    @Test
+    void scannedPageWithStampedFooterIsOcrd() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = addPage(document);
+            drawImage(document, page, 0, 0, PDRectangle.LETTER.getWidth(), PDRectangle.LETTER.getHeight());
+            // 一行页脚：字数和质量都满足 min-chars / min-quality
+            writeLines(document, page, 1);
+            PdfTextLayerExtractor.PageText text = extract(document);
+            assertTrue(text.getQuality() >= 0.85);
+            assertFalse(text.isUsable());
+        }
+    }
+
+    @Test
+    void scannedPageWithFullTextLayerIsUsable() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = addPage(document);
+            drawImage(document, page, 0, 0, PDRectangle.LETTER.getWidth(), PDRectangle.LETTER.getHeight());
+            writeLines(document, page, 40);
+            assertTrue(extract(document).isUsable());
+        }
+    }
+
+    @Test
+    void smallFigureDoesNotRequireOcr() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = addPage(document);
+            drawImage(document, page, 100, 500, 200, 150);
+            writeLines(document, page, 1);
+            assertTrue(extract(document).isUsable());
+        }
+    }
+
+    @Test
+    void garbledTextScoresLow() {
+        assertTrue(PdfTextLayerExtractor.score(LINE) > 0.95);
+        assertTrue(PdfTextLayerExtractor.score("��� abc ") < 0.5);
+        assertTrue(PdfTextLayerExtractor.score("xkcd brgt plmn trsk vwxz qrst mnbv cxzl kjhg fdsp wrtq") < 0.85);
+    }
+
+    // ===== 工具方法 =====
+
+    private PdfTextLayerExtractor.PageText extract(PDDocument document) throws IOException {
+        return extractor.extractPage(document, extractor.newStripper(), 1);
+    }
+
+    private static PDPage addPage(PDDocument document) {
+        PDPage page = new PDPage(PDRectangle.LETTER);
+        document.addPage(page);
+        return page;
+    }
+
+    private static void drawImage(PDDocument document, PDPage page, float x, float y, float width, float height) throws IOException {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        PDImageXObject xObject = LosslessFactory.createFromImage(document, image);
+        try (PDPageContentStream content = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, false)) {
+            content.drawImage(xObject, x, y, width, height);
+        }
+    }
+
+    private static void writeLines(PDDocument document, PDPage page, int lines) throws IOException {
+        try (PDPageContentStream content = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, false)) {
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 8);
+            content.setLeading(10);
+            content.newLineAtOffset(40, 40 + lines * 10);
+            for (int i = 0; i < lines; i++) {
+                content.showText(LINE);
+                content.newLine();
+            }
+            content.endText();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.vue.readingapp.reader.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文档内搜索索引：与逐页扫描词序列的朴素实现比较
+ *
+ * 页码、词序号、字符偏移都取跨越变长整数 1/2/3 字节边界的值（127/128、16383/16384），
+ * 覆盖差值编码和换页时的绝对值编码。
+ */
+class DocumentTextIndexTests {
+
+    private static final String[] WORDS = {"ab", "abc", "abd", "b", "ba", "Cat", "c", "x1", "中", "文", "字"};
+    private static final int NO_LIMIT = Integer.MAX_VALUE - 1;
+
+    @Test
+    void tokenizerRecordsPositionsAndOffsets() {
+        List<PositionalTokenizer.Token> tokens = PositionalTokenizer.tokenize("Hello, 世界 x2!", true);
+
+        assertEquals(Arrays.asList("hello", "世", "界", "x2"), terms(tokens));
+        assertEquals(Arrays.asList(0, 1, 2, 3), positions(tokens));
+        assertEquals(0, tokens.get(0).getStart());
+        assertEquals(5, tokens.get(0).getEnd());
+        assertEquals(7, tokens.get(1).getStart());
+        assertEquals(10, tokens.get(3).getStart());
+        assertEquals(12, tokens.get(3).getEnd());
+
+        // 区分大小写时保留原文
+        assertEquals("Hello", PositionalTokenizer.tokenize("Hello", false).get(0).getTerm());
+    }
+
+    @Test
+    void overlongTokenKeepsPositionButIsNotIndexed() {
+        String longWord = repeat('q', 41);
+        String text = "alpha " + longWord + " beta";
+        List<PositionalTokenizer.Token> tokens = PositionalTokenizer.tokenize(text, true);
+
+        assertEquals(Arrays.asList("alpha", "beta"), terms(tokens));
+        assertEquals(Arrays.asList(0, 2), positions(tokens));
+
+        DocumentTextIndex index = new DocumentTextIndex.Builder().addPage(1, text).build();
+        // 中间隔着一个超长词，不算相邻
+        assertTrue(index.search(Arrays.asList("alpha", "beta"), false, NO_LIMIT).getHits().isEmpty());
+        assertEquals(1, index.search(Collections.singletonList("beta"), false, NO_LIMIT).getHits().size());
+    }
+
+    @Test
+    void phraseDoesNotCrossPages() {
+        DocumentTextIndex index = new DocumentTextIndex.Builder()
+                .addPage(1, "one two")
+                .addPage(2, "three four")
+                .build();
+
+        assertTrue(index.search(Arrays.asList("two", "three"), false, NO_LIMIT).getHits().isEmpty());
+        List<DocumentTextIndex.Hit> hits = index.search(Arrays.asList("three", "four"), false, NO_LIMIT).getHits();
+        assertEquals(1, hits.size());
+        assertEquals(2, hits.get(0).getPage());
+        assertEquals(0, hits.get(0).getStart());
+        assertEquals(10, hits.get(0).getEnd());
+    }
+
+    @Test
+    void varintBoundariesRoundTrip() {
+        // 目标词前面分别有 127、128、16383、16384 个填充词 / 字符，页码也跨越编码边界
+        DocumentTextIndex.Builder builder = new DocumentTextIndex.Builder();
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        int[] pageNumbers = {1, 128, 129, 16512, 16513, 2_100_000};
+        int[] fillers = {0, 127, 128, 16383, 16384, 3};
+        for (int i = 0; i < pageNumbers.length; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int f = 0; f < fillers[i]; f++) {
+                text.append("z ");
+            }
+            text.append("needle ").append(repeat('y', fillers[i])).append(" needle haystack");
+            pages.put(pageNumbers[i], text.toString());
+            builder.addPage(pageNumbers[i], text.toString());
+        }
+        DocumentTextIndex index = builder.build();
+
+        for (List<String> query : Arrays.asList(
+                Collections.singletonList("needle"),
+                Arrays.asList("needle", "haystack"),
+                Collections.singletonList("z"))) {
+            assertHitsEqual(naiveSearch(pages, query, false, NO_LIMIT), index.search(query, false, NO_LIMIT).getHits(), query.toString());
+        }
+    }
+
+    @Test
+    void randomDocumentsMatchNaiveScan() throws IOException {
+        for (long seed = 1; seed <= 10; seed++) {
+            Random random = new Random(seed);
+            Map<Integer, String> pages = randomPages(random);
+            DocumentTextIndex.Builder builder = new DocumentTextIndex.Builder();
+            for (Map.Entry<Integer, String> page : pages.entrySet()) {
+                builder.addPage(page.getKey(), page.getValue());
+            }
+            DocumentTextIndex index = builder.build();
+            DocumentTextIndex restored = DocumentTextIndex.fromBytes(index.toBytes());
+            assertEquals(pages.size(), restored.getPageCount());
+            assertEquals(index.getTokenCount(), restored.getTokenCount());
+
+            for (int q = 0; q < 200; q++) {
+                List<String> query = new ArrayList<>();
+                int length = 1 + random.nextInt(3);
+                for (int i = 0; i < length; i++) {
+                    query.add(WORDS[random.nextInt(WORDS.length)].toLowerCase());
+                }
+                boolean prefix = random.nextBoolean();
+                if (prefix) {
+                    // 最后一个词只保留前缀
+                    String last = query.get(length - 1);
+                    query.set(length - 1, last.substring(0, 1 + random.nextInt(last.length())));
+                }
+                String message = "seed " + seed + " query " + query + " prefix " + prefix;
+                List<DocumentTextIndex.Hit> expected = naiveSearch(pages, query, prefix, NO_LIMIT);
+                assertHitsEqual(expected, index.search(query, prefix, NO_LIMIT).getHits(), message);
+                assertHitsEqual(expected, restored.search(query, prefix, NO_LIMIT).getHits(), message + " (restored)");
+                assertHitsEqual(expected, scan(pages, query, prefix, NO_LIMIT), message + " (scan)");
+            }
+        }
+    }
+
+    @Test
+    void searchStopsAtLimit() {
+        DocumentTextIndex index = new DocumentTextIndex.Builder()
+                .addPage(1, "cat cat cat")
+                .addPage(2, "cat cat")
+                .build();
+
+        DocumentTextIndex.SearchResult exact = index.search(Collections.singletonList("cat"), false, 5);
+        assertEquals(5, exact.getHits().size());
+        assertFalse(exact.isTruncated());
+
+        DocumentTextIndex.SearchResult truncated = index.search(Collections.singletonList("cat"), false, 3);
+        assertEquals(3, truncated.getHits().size());
+        assertTrue(truncated.isTruncated());
+
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        pages.put(1, "cat cat cat");
+        pages.put(2, "cat cat");
+        List<DocumentTextIndex.Hit> hits = new ArrayList<>();
+        boolean scanTruncated = false;
+        for (Map.Entry<Integer, String> page : pages.entrySet()) {
+            if (DocumentTextIndexService.scanPage(page.getKey(), page.getValue(), Collections.singletonList("cat"), false, hits, 3)) {
+                scanTruncated = true;
+                break;
+            }
+        }
+        assertEquals(3, hits.size());
+        assertTrue(scanTruncated);
+    }
+
+    @Test
+    void corruptedDataIsRejected() {
+        byte[] data = new DocumentTextIndex.Builder().addPage(1, "some text here").build().toBytes();
+        byte[] truncated = Arrays.copyOf(data, data.length - 3);
+        assertThrows(IOException.class, () -> DocumentTextIndex.fromBytes(truncated));
+    }
+
+    @Test
+    void pagesMustBeAddedInOrder() {
+        DocumentTextIndex.Builder builder = new DocumentTextIndex.Builder().addPage(2, "a");
+        assertThrows(IllegalArgumentException.class, () -> builder.addPage(2, "b"));
+    }
+
+    // ===== 朴素实现 =====
+
+    private static List<DocumentTextIndex.Hit> naiveSearch(Map<Integer, String> pages, List<String> query, boolean lastIsPrefix, int limit) {
+        List<DocumentTextIndex.Hit> hits = new ArrayList<>();
+        for (Map.Entry<Integer, String> page : pages.entrySet()) {
+            List<PositionalTokenizer.Token> tokens = PositionalTokenizer.tokenize(page.getValue(), true);
+            for (int i = 0; i < tokens.size(); i++) {
+                int matched = 0;
+                while (matched < query.size() && i + matched < tokens.size()) {
+                    PositionalTokenizer.Token token = tokens.get(i + matched);
+                    boolean prefix = lastIsPrefix && matched == query.size() - 1;
+                    boolean adjacent = token.getPosition() == tokens.get(i).getPosition() + matched;
+                    boolean equal = prefix ? token.getTerm().startsWith(query.get(matched)) : token.getTerm().equals(query.get(matched));
+                    if (!adjacent || !equal) {
+                        break;
+                    }
+                    matched++;
+                }
+                if (matched == query.size() && hits.size() < limit) {
+                    hits.add(new DocumentTextIndex.Hit(page.getKey(), tokens.get(i).getStart(), tokens.get(i + matched - 1).getEnd()));
+                }
+            }
+        }
+        return hits;
+    }
+
+    // 索引尚未建好时的逐页扫描
+    private static List<DocumentTextIndex.Hit> scan(Map<Integer, String> pages, List<String> query, boolean lastIsPrefix, int limit) {
+        List<DocumentTextIndex.Hit> hits = new ArrayList<>();
+        for (Map.Entry<Integer, String> page : pages.entrySet()) {
+            DocumentTextIndexService.scanPage(page.getKey(), page.getValue(), query, lastIsPrefix, hits, limit);
+        }
+        return hits;
+    }
+
+    // ===== 工具方法 =====
+
+    private static Map<Integer, String> randomPages(Random random) {
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        int pageNumber = 0;
+        int pageCount = 2 + random.nextInt(5);
+        for (int p = 0; p < pageCount; p++) {
+            // 页码间隔偶尔超过 127
+            pageNumber += random.nextInt(4) == 0 ? 100 + random.nextInt(200) : 1 + random.nextInt(2);
+            int words = random.nextInt(3) == 0 ? 5000 + random.nextInt(2000) : 1 + random.nextInt(60);
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                int kind = random.nextInt(40);
+                if (kind == 0) {
+                    text.append(repeat('w', 41));
+                } else if (kind == 1) {
+                    text.append("--- ");
+                    continue;
+                } else {
+                    text.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                // 中文字之间不加分隔，其他词之间用空格或标点分隔
+                text.append(random.nextInt(5) == 0 ? ", " : random.nextInt(3) == 0 ? "" : " ");
+            }
+            pages.put(pageNumber, text.toString());
+        }
+        return pages;
+    }
+
+    private static void assertHitsEqual(List<DocumentTextIndex.Hit> expected, List<DocumentTextIndex.Hit> actual, String message) {
+        assertEquals(expected.size(), actual.size(), message + " hit count");
+        for (int i = 0; i < expected.size(); i++) {
+            DocumentTextIndex.Hit e = expected.get(i);
+            DocumentTextIndex.Hit a = actual.get(i);
+            assertEquals(e.getPage() + ":" + e.getStart() + "-" + e.getEnd(), a.getPage() + ":" + a.getStart() + "-" + a.getEnd(),
+                    message + " hit " + i);
+        }
+    }
+
+    private static List<String> terms(List<PositionalTokenizer.Token> tokens) {
+        List<String> terms = new ArrayList<>();
+        for (PositionalTokenizer.Token token : tokens) {
+            terms.add(token.getTerm());
+        }
+        return terms;
+    }
+
+    private static List<Integer> positions(List<PositionalTokenizer.Token> tokens) {
+        List<Integer> positions = new ArrayList<>();
+        for (PositionalTokenizer.Token token : tokens) {
+            positions.add(token.getPosition());
+        }
+        return positions;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
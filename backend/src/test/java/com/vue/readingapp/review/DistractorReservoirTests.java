@@ -0,0 +1,195 @@
+package com.vue.readingapp.review;
+
+import com.vue.readingapp.config.RelationBatchLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 干扰项蓄水池：Algorithm R 的均匀性、按水位线增量吸收、分层抽样
+ *
+ * words / word_definitions 用内存中的行代替，按 word_id 水位线分页返回。
+ */
+class DistractorReservoirTests {
+
+    private final List<Map<String, Object>> words = new ArrayList<>();
+    private final Set<Long> withoutDefinition = new HashSet<>();
+    private final List<Long> scannedFrom = new ArrayList<>();
+
+    private DistractorReservoir reservoir;
+
+    @BeforeEach
+    void setUp() {
+        reservoir = new DistractorReservoir();
+        ReflectionTestUtils.setField(reservoir, "jdbcTemplate", new JdbcTemplate() {
+            @Override
+            public List<Map<String, Object>> queryForList(String sql, Object... args) {
+                long after = ((Number) args[0]).longValue();
+                int limit = ((Number) args[1]).intValue();
+                scannedFrom.add(after);
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (Map<String, Object> row : words) {
+                    if (((Number) row.get("word_id")).longValue() > after && rows.size() < limit) {
+                        rows.add(row);
+                    }
+                }
+                return rows;
+            }
+        });
+        ReflectionTestUtils.setField(reservoir, "relationBatchLoader", new RelationBatchLoader() {
+            @Override
+            public Map<Long, List<String>> loadWordDefinitions(Collection<? extends Number> wordIds) {
+                Map<Long, List<String>> definitions = new HashMap<>();
+                for (Number id : wordIds) {
+                    if (!withoutDefinition.contains(id.longValue())) {
+                        definitions.put(id.longValue(), Collections.singletonList("definition " + id));
+                    }
+                }
+                return definitions;
+            }
+        });
+        ReflectionTestUtils.setField(reservoir, "languageCapacity", 2000);
+        ReflectionTestUtils.setField(reservoir, "stratumCapacity", 200);
+        ReflectionTestUtils.setField(reservoir, "scanBatchSize", 3);
+    }
+
+    @Test
+    void reservoirKeepsUniformSample() {
+        // 容量 10、100 个词：每个词留在样本中的概率都应是 0.1，与到达顺序无关
+        int trials = 4000;
+        int[] kept = new int[100];
+        for (int t = 0; t < trials; t++) {
+            DistractorReservoir.Reservoir sample = new DistractorReservoir.Reservoir(10);
+            for (int i = 0; i < 100; i++) {
+                sample.offer(new DistractorReservoir.Candidate(i, "w" + i, "d", null));
+            }
+            for (DistractorReservoir.Candidate candidate : sample.samples) {
+                kept[(int) candidate.id]++;
+            }
+        }
+
+        long firstHalf = 0;
+        for (int i = 0; i < 100; i++) {
+            // 期望 400 次，标准差约 19
+            assertTrue(Math.abs(kept[i] - 400) < 100, "word " + i + " kept " + kept[i] + " times");
+            if (i < 50) {
+                firstHalf += kept[i];
+            }
+        }
+        assertTrue(Math.abs(firstHalf - 20000) < 700, "first half kept " + firstHalf);
+    }
+
+    @Test
+    void refreshScansOnlyNewWords() {
+        for (long id = 1; id <= 7; id++) {
+            addWord(id, "word" + id, "en", "easy", "noun");
+        }
+        withoutDefinition.add(4L);
+
+        reservoir.refresh();
+        // 每批 3 行：0 -> 3 -> 6，最后一批不足 3 行即停止
+        assertEquals(Arrays.asList(0L, 3L, 6L), scannedFrom);
+
+        Set<String> sampled = sampleWords("en", Collections.emptyList(), 10);
+        assertEquals(new HashSet<>(Arrays.asList("word1", "word2", "word3", "word5", "word6", "word7")), sampled);
+
+        scannedFrom.clear();
+        addWord(8, "word8", "en", "easy", "noun");
+        reservoir.refresh();
+        assertEquals(Collections.singletonList(7L), scannedFrom);
+        assertTrue(sampleWords("en", Collections.emptyList(), 10).contains("word8"));
+    }
+
+    @Test
+    void samplesAreDistinctAndExcludeDueWords() {
+        for (long id = 1; id <= 30; id++) {
+            addWord(id, "Word" + (id % 15), "en", "easy", "noun");
+        }
+        reservoir.refresh();
+
+        List<Map<String, Object>> due = Collections.singletonList(dueWord("word3", "easy", "noun"));
+        for (int i = 0; i < 50; i++) {
+            List<Map<String, Object>> result = reservoir.sample("en", due, 6);
+            Set<String> distinct = new HashSet<>();
+            for (Map<String, Object> candidate : result) {
+                String word = ((String) candidate.get("word")).toLowerCase();
+                assertTrue(distinct.add(word), "duplicate " + word);
+                assertFalse(word.equals("word3"));
+            }
+            assertTrue(result.size() <= 6);
+        }
+    }
+
+    @Test
+    void sameStratumIsPreferred() {
+        for (long id = 1; id <= 5; id++) {
+            addWord(id, "hard" + id, "en", "hard", "verb");
+        }
+        for (long id = 6; id <= 200; id++) {
+            addWord(id, "easy" + id, "en", "easy", "noun");
+        }
+        ReflectionTestUtils.setField(reservoir, "scanBatchSize", 500);
+        reservoir.refresh();
+
+        // k = 4：一半名额分给与待复习单词相同的 (hard, verb) 分层
+        List<Map<String, Object>> due = Collections.singletonList(dueWord("other", "hard", "verb"));
+        for (int i = 0; i < 50; i++) {
+            int fromStratum = 0;
+            for (String word : sampleWords("en", due, 4)) {
+                if (word.startsWith("hard")) {
+                    fromStratum++;
+                }
+            }
+            assertTrue(fromStratum >= 2, "only " + fromStratum + " from stratum");
+        }
+    }
+
+    @Test
+    void languagesAreSeparate() {
+        addWord(1, "hello", "en", null, null);
+        addWord(2, "bonjour", "fr", null, null);
+        reservoir.refresh();
+
+        assertEquals(Collections.singleton("hello"), sampleWords("en", Collections.emptyList(), 5));
+        assertEquals(Collections.singleton("bonjour"), sampleWords("fr", Collections.emptyList(), 5));
+        assertTrue(reservoir.sample("de", Collections.emptyList(), 5).isEmpty());
+    }
+
+    // ===== 工具方法 =====
+
+    private void addWord(long id, String word, String language, String difficulty, String partOfSpeech) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("word_id", id);
+        row.put("word", word);
+        row.put("language", language);
+        row.put("difficulty", difficulty);
+        row.put("part_of_speech", partOfSpeech);
+        words.add(row);
+    }
+
+    private static Map<String, Object> dueWord(String word, String difficulty, String partOfSpeech) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("word", word);
+        row.put("difficulty", difficulty);
+        row.put("part_of_speech", partOfSpeech);
+        return row;
+    }
+
+    private Set<String> sampleWords(String language, List<Map<String, Object>> due, int k) {
+        // 单次抽样的尝试次数有限，多抽几次取并集
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < (k >= 10 ? 50 : 1); i++) {
+            for (Map<String, Object> candidate : reservoir.sample(language, due, k)) {
+                result.add((String) candidate.get("word"));
+            }
+        }
+        return result;
+    }
+}
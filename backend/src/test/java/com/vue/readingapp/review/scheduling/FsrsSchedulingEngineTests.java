@@ -0,0 +1,141 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FSRS 调度：参考值按 v4.5 默认参数独立计算
+ */
+class FsrsSchedulingEngineTests {
+
+    private static final double EPSILON = 1e-9;
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    private FsrsSchedulingEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new FsrsSchedulingEngine();
+        ReflectionTestUtils.setField(engine, "desiredRetention", 0.9);
+        ReflectionTestUtils.setField(engine, "maxIntervalDays", 36500);
+    }
+
+    @Test
+    void firstReviewUsesInitialParameters() {
+        // 目标保持率 0.9 时间隔（天）= round(S)，最少 1 天
+        assertFirstReview(ReviewGrade.AGAIN, 0.4872, 7.6214, 1);
+        assertFirstReview(ReviewGrade.HARD, 1.4003, 6.3916, 1);
+        assertFirstReview(ReviewGrade.GOOD, 3.7145, 5.1618, 4);
+        assertFirstReview(ReviewGrade.EASY, 13.8206, 3.9320, 14);
+    }
+
+    @Test
+    void secondReviewAfterScheduledInterval() {
+        // 首次 GOOD（S = 3.7145，D = 5.1618）后 4 天复习，R ≈ 0.8935
+        assertSecondReview(ReviewGrade.AGAIN, 1.4332344897795595, 6.901155, 1);
+        assertSecondReview(ReviewGrade.HARD, 6.234966035075983, 6.0314775, 6);
+        assertSecondReview(ReviewGrade.GOOD, 14.808100506496405, 5.1618, 15);
+        assertSecondReview(ReviewGrade.EASY, 35.61414825643041, 4.2921225, 36);
+    }
+
+    @Test
+    void cardsReviewedBeforeFsrsStartFromInitialState() {
+        CardState previous = card(null, null, NOW.minusDays(10));
+        previous.setReviewCount(5);
+        previous.setEase(2.5);
+        CardState next = schedule(previous, ReviewGrade.GOOD, NOW);
+
+        assertEquals(3.7145, next.getStability(), EPSILON);
+        assertEquals(5.1618, next.getDifficulty(), EPSILON);
+    }
+
+    @Test
+    void higherRetentionShortensIntervals() {
+        CardState previous = card(30.0, 5.0, NOW.minusDays(30));
+        long atDefault = days(schedule(previous, ReviewGrade.GOOD, NOW));
+
+        ReflectionTestUtils.setField(engine, "desiredRetention", 0.95);
+        long atHigher = days(schedule(previous, ReviewGrade.GOOD, NOW));
+
+        assertTrue(atHigher < atDefault, atHigher + " should be shorter than " + atDefault);
+    }
+
+    @Test
+    void intervalIsCappedAndDifficultyClamped() {
+        ReflectionTestUtils.setField(engine, "maxIntervalDays", 100);
+        CardState previous = card(5000.0, 1.0, NOW.minusDays(4000));
+        CardState next = schedule(previous, ReviewGrade.EASY, NOW);
+
+        assertEquals(100, days(next));
+        assertTrue(next.getDifficulty() >= 1 && next.getDifficulty() <= 10);
+
+        CardState hardest = schedule(card(10.0, 10.0, NOW.minusDays(10)), ReviewGrade.AGAIN, NOW);
+        assertTrue(hardest.getDifficulty() <= 10);
+    }
+
+    @Test
+    void lapseNeverRaisesStability() {
+        // 很久没复习的卡片 R 接近 0，遗忘公式的结果可能高于原稳定性，应截断
+        CardState previous = card(2.0, 1.0, NOW.minusDays(3650));
+        CardState next = schedule(previous, ReviewGrade.AGAIN, NOW);
+
+        assertTrue(next.getStability() <= 2.0);
+        assertTrue(next.getStability() >= 0.1);
+    }
+
+    @Test
+    void previousStateIsNotModified() {
+        CardState previous = card(3.7145, 5.1618, NOW.minusDays(4));
+        schedule(previous, ReviewGrade.EASY, NOW);
+
+        assertEquals(3.7145, previous.getStability(), EPSILON);
+        assertEquals(5.1618, previous.getDifficulty(), EPSILON);
+        assertNull(previous.getNextReviewAt());
+    }
+
+    // ===== 工具方法 =====
+
+    private void assertFirstReview(ReviewGrade grade, double stability, double difficulty, long interval) {
+        CardState next = schedule(new CardState(), grade, NOW);
+        assertEquals(stability, next.getStability(), EPSILON, grade + " stability");
+        assertEquals(difficulty, next.getDifficulty(), EPSILON, grade + " difficulty");
+        assertEquals(interval, days(next), grade + " interval");
+    }
+
+    private void assertSecondReview(ReviewGrade grade, double stability, double difficulty, long interval) {
+        CardState previous = card(3.7145, 5.1618, NOW.minusDays(4));
+        CardState next = schedule(previous, grade, NOW);
+        assertEquals(stability, next.getStability(), EPSILON, grade + " stability");
+        assertEquals(difficulty, next.getDifficulty(), EPSILON, grade + " difficulty");
+        assertEquals(interval, days(next), grade + " interval");
+    }
+
+    private CardState schedule(CardState previous, ReviewGrade grade, LocalDateTime now) {
+        CardState next = previous.copy();
+        next.setReviewCount(previous.getReviewCount() + 1);
+        next.setLastReviewedAt(now);
+        engine.schedule(previous, next, grade, now);
+        return next;
+    }
+
+    private static CardState card(Double stability, Double difficulty, LocalDateTime lastReviewedAt) {
+        CardState card = new CardState();
+        card.setReviewCount(1);
+        card.setStability(stability);
+        card.setDifficulty(difficulty);
+        card.setLastReviewedAt(lastReviewedAt);
+        return card;
+    }
+
+    private static long days(CardState card) {
+        return ChronoUnit.DAYS.between(NOW, card.getNextReviewAt());
+    }
+}
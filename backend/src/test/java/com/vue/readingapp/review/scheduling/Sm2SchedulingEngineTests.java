@@ -0,0 +1,100 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SM-2 调度：间隔序列 1 → 6 → 上次间隔 × EF，以及 EF 的更新与下限
+ */
+class Sm2SchedulingEngineTests {
+
+    private static final double EPSILON = 1e-9;
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    private Sm2SchedulingEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new Sm2SchedulingEngine();
+        ReflectionTestUtils.setField(engine, "maxIntervalDays", 36500);
+    }
+
+    @Test
+    void correctAnswersFollowClassicSequence() {
+        CardState first = schedule(new CardState(), ReviewGrade.GOOD);
+        assertEquals(1, days(first));
+        assertEquals(2.5, first.getEase(), EPSILON);
+
+        CardState second = schedule(first, ReviewGrade.GOOD);
+        assertEquals(6, days(second));
+
+        CardState third = schedule(second, ReviewGrade.GOOD);
+        assertEquals(15, days(third));
+
+        CardState fourth = schedule(third, ReviewGrade.GOOD);
+        assertEquals(38, days(fourth));
+    }
+
+    @Test
+    void easeChangesByGrade() {
+        // EF' = EF + 0.1 - (5 - q) × (0.08 + (5 - q) × 0.02)
+        assertEquals(2.6, schedule(reviewed(6.0, 2.5), ReviewGrade.EASY).getEase(), EPSILON);
+        assertEquals(2.5, schedule(reviewed(6.0, 2.5), ReviewGrade.GOOD).getEase(), EPSILON);
+        assertEquals(2.36, schedule(reviewed(6.0, 2.5), ReviewGrade.HARD).getEase(), EPSILON);
+        assertEquals(1.96, schedule(reviewed(6.0, 2.5), ReviewGrade.AGAIN).getEase(), EPSILON);
+    }
+
+    @Test
+    void lapseResetsIntervalAndEaseHasFloor() {
+        CardState next = schedule(reviewed(120.0, 1.4), ReviewGrade.AGAIN);
+
+        assertEquals(1, days(next));
+        assertEquals(1.0, next.getStability(), EPSILON);
+        assertEquals(1.3, next.getEase(), EPSILON);
+    }
+
+    @Test
+    void intervalIsCapped() {
+        ReflectionTestUtils.setField(engine, "maxIntervalDays", 365);
+        CardState next = schedule(reviewed(300.0, 2.5), ReviewGrade.EASY);
+
+        assertEquals(365, days(next));
+        assertEquals(365.0, next.getStability(), EPSILON);
+    }
+
+    @Test
+    void newCardIgnoresLeftoverState() {
+        // 学习状态被重置的卡片（review_count = 0）重新从 1 天、默认 EF 开始
+        CardState reset = reviewed(90.0, 1.5);
+        reset.setReviewCount(0);
+        CardState next = schedule(reset, ReviewGrade.GOOD);
+
+        assertEquals(1, days(next));
+        assertEquals(2.5, next.getEase(), EPSILON);
+    }
+
+    private CardState schedule(CardState previous, ReviewGrade grade) {
+        CardState next = previous.copy();
+        next.setReviewCount(previous.getReviewCount() + 1);
+        engine.schedule(previous, next, grade, NOW);
+        return next;
+    }
+
+    private static CardState reviewed(double interval, double ease) {
+        CardState card = new CardState();
+        card.setReviewCount(3);
+        card.setStability(interval);
+        card.setEase(ease);
+        return card;
+    }
+
+    private static long days(CardState card) {
+        return ChronoUnit.DAYS.between(NOW, card.getNextReviewAt());
+    }
+}
@@ -0,0 +1,49 @@
+package com.vue.readingapp.review.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 阶梯调度：间隔只由作答后的掌握等级决定
+ */
+class StepSchedulingEngineTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    private final StepSchedulingEngine engine = new StepSchedulingEngine();
+
+    @Test
+    void intervalFollowsMasteryLevel() {
+        int[] expected = {1, 2, 4, 7, 14, 30, 60, 90, 180, 365};
+        for (int level = 0; level < expected.length; level++) {
+            CardState next = schedule(level, ReviewGrade.GOOD);
+            assertEquals(expected[level], ChronoUnit.DAYS.between(NOW, next.getNextReviewAt()), "level " + level);
+            assertEquals(expected[level], next.getStability(), 0.0, "level " + level);
+        }
+    }
+
+    @Test
+    void gradeDoesNotAffectInterval() {
+        for (ReviewGrade grade : ReviewGrade.values()) {
+            assertEquals(NOW.plusDays(7), schedule(3, grade).getNextReviewAt(), grade.name());
+        }
+    }
+
+    @Test
+    void unknownLevelsUseDefaultInterval() {
+        assertEquals(NOW.plusDays(30), schedule(10, ReviewGrade.GOOD).getNextReviewAt());
+        assertEquals(NOW.plusDays(30), schedule(-1, ReviewGrade.AGAIN).getNextReviewAt());
+    }
+
+    private CardState schedule(int masteryLevel, ReviewGrade grade) {
+        CardState previous = new CardState();
+        CardState next = previous.copy();
+        next.setMasteryLevel(masteryLevel);
+        engine.schedule(previous, next, grade, NOW);
+        return next;
+    }
+}
@@ -0,0 +1,326 @@
+package com.vue.readingapp.scheduler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 后台任务执行器：拒绝策略、优先级、按任务键取消和统计
+ *
+ * 各池都是单线程、排队上限 2：先提交一个阻塞任务占住线程，再填满队列，之后的提交都会走拒绝策略。
+ */
+class BackgroundTaskExecutorTests {
+
+    private BackgroundTaskExecutor executor;
+
+    // 占住工作线程的任务在 release 之前不会结束
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        executor = new BackgroundTaskExecutor();
+        ReflectionTestUtils.setField(executor, "ocrThreads", 1);
+        ReflectionTestUtils.setField(executor, "ocrQueueCapacity", 2);
+        ReflectionTestUtils.setField(executor, "ocrRejectionPolicy", "abort");
+        ReflectionTestUtils.setField(executor, "exportThreads", 1);
+        ReflectionTestUtils.setField(executor, "exportQueueCapacity", 2);
+        ReflectionTestUtils.setField(executor, "exportRejectionPolicy", "caller-runs");
+        ReflectionTestUtils.setField(executor, "syncThreads", 1);
+        ReflectionTestUtils.setField(executor, "syncQueueCapacity", 2);
+        ReflectionTestUtils.setField(executor, "syncRejectionPolicy", "discard");
+        ReflectionTestUtils.setField(executor, "notificationQueueCapacity", 2);
+        ReflectionTestUtils.setField(executor, "notificationRejectionPolicy", "discard");
+        ReflectionTestUtils.setField(executor, "searchThreads", 1);
+        ReflectionTestUtils.setField(executor, "searchQueueCapacity", 10);
+        ReflectionTestUtils.setField(executor, "searchRejectionPolicy", "abort");
+        ReflectionTestUtils.setField(executor, "shutdownTimeoutSeconds", 1);
+        executor.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void abortRejectsWhenQueueIsFull() throws Exception {
+        Future<?> blocker = block(BackgroundTaskExecutor.Pool.OCR);
+        Future<?> first = executor.execute(BackgroundTaskExecutor.Pool.OCR, () -> { });
+        Future<?> second = executor.execute(BackgroundTaskExecutor.Pool.OCR, () -> { });
+
+        assertThrows(RejectedExecutionException.class,
+                () -> executor.submit(BackgroundTaskExecutor.Pool.OCR, "ocr-3", BackgroundTaskExecutor.Priority.NORMAL, () -> { }));
+        // 被拒绝的任务不占用任务键
+        assertFalse(executor.isActive("ocr-3"));
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        await(() -> metric(BackgroundTaskExecutor.Pool.OCR, "completed") == 3);
+        assertEquals(4L, metric(BackgroundTaskExecutor.Pool.OCR, "submitted"));
+        assertEquals(1L, metric(BackgroundTaskExecutor.Pool.OCR, "rejected"));
+        assertEquals(0L, metric(BackgroundTaskExecutor.Pool.OCR, "cancelled"));
+    }
+
+    @Test
+    void callerRunsExecutesOnSubmittingThread() throws Exception {
+        block(BackgroundTaskExecutor.Pool.EXPORT);
+        executor.execute(BackgroundTaskExecutor.Pool.EXPORT, () -> { });
+        executor.execute(BackgroundTaskExecutor.Pool.EXPORT, () -> { });
+
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        Future<?> future = executor.execute(BackgroundTaskExecutor.Pool.EXPORT, () -> ranOn.set(Thread.currentThread()));
+
+        assertTrue(future.isDone());
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(1L, metric(BackgroundTaskExecutor.Pool.EXPORT, "rejected"));
+        assertEquals(1L, metric(BackgroundTaskExecutor.Pool.EXPORT, "callerRuns"));
+        assertEquals(1L, metric(BackgroundTaskExecutor.Pool.EXPORT, "completed"));
+    }
+
+    @Test
+    void discardReturnsCancelledFuture() throws Exception {
+        block(BackgroundTaskExecutor.Pool.SYNC);
+        executor.execute(BackgroundTaskExecutor.Pool.SYNC, () -> { });
+        executor.execute(BackgroundTaskExecutor.Pool.SYNC, () -> { });
+
+        AtomicBoolean ran = new AtomicBoolean();
+        Future<?> future = executor.submit(BackgroundTaskExecutor.Pool.SYNC, "sync-3", BackgroundTaskExecutor.Priority.HIGH, () -> ran.set(true));
+
+        assertTrue(future.isCancelled());
+        assertFalse(executor.isActive("sync-3"));
+        release.countDown();
+        await(() -> metric(BackgroundTaskExecutor.Pool.SYNC, "completed") == 3);
+        assertFalse(ran.get());
+        assertEquals(1L, metric(BackgroundTaskExecutor.Pool.SYNC, "rejected"));
+        // 丢弃不计入取消次数
+        assertEquals(0L, metric(BackgroundTaskExecutor.Pool.SYNC, "cancelled"));
+    }
+
+    @Test
+    void queuedTasksRunByPriorityThenSubmissionOrder() throws Exception {
+        block(BackgroundTaskExecutor.Pool.SEARCH);
+        List<String> order = new CopyOnWriteArrayList<>();
+        submit(BackgroundTaskExecutor.Pool.SEARCH, BackgroundTaskExecutor.Priority.LOW, () -> order.add("low"));
+        submit(BackgroundTaskExecutor.Pool.SEARCH, BackgroundTaskExecutor.Priority.NORMAL, () -> order.add("normal-1"));
+        submit(BackgroundTaskExecutor.Pool.SEARCH, BackgroundTaskExecutor.Priority.HIGH, () -> order.add("high-1"));
+        submit(BackgroundTaskExecutor.Pool.SEARCH, BackgroundTaskExecutor.Priority.NORMAL, () -> order.add("normal-2"));
+        submit(BackgroundTaskExecutor.Pool.SEARCH, BackgroundTaskExecutor.Priority.HIGH, () -> order.add("high-2"));
+
+        release.countDown();
+        await(() -> order.size() == 5);
+        assertEquals(Arrays.asList("high-1", "high-2", "normal-1", "normal-2", "low"), order);
+    }
+
+    @Test
+    void cancelRemovesQueuedTask() throws Exception {
+        block(BackgroundTaskExecutor.Pool.SEARCH);
+        AtomicBoolean ran = new AtomicBoolean();
+        Future<?> queued = executor.submit(BackgroundTaskExecutor.Pool.SEARCH, "job-1", BackgroundTaskExecutor.Priority.NORMAL, () -> ran.set(true));
+        assertTrue(executor.isActive("job-1"));
+        assertEquals(1, ((Number) poolMetrics(BackgroundTaskExecutor.Pool.SEARCH).get("queued")).intValue());
+
+        assertTrue(executor.cancel("job-1"));
+        assertTrue(queued.isCancelled());
+        assertFalse(executor.isActive("job-1"));
+        // 取消后立即释放队列位置
+        assertEquals(0, ((Number) poolMetrics(BackgroundTaskExecutor.Pool.SEARCH).get("queued")).intValue());
+        assertFalse(executor.cancel("job-1"));
+        assertFalse(executor.cancel(null));
+
+        release.countDown();
+        executor.execute(BackgroundTaskExecutor.Pool.SEARCH, () -> { }).get(5, TimeUnit.SECONDS);
+        assertFalse(ran.get());
+        assertEquals(1L, metric(BackgroundTaskExecutor.Pool.SEARCH, "cancelled"));
+    }
+
+    @Test
+    void cancelInterruptsRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.submit(BackgroundTaskExecutor.Pool.OCR, "ocr-job", BackgroundTaskExecutor.Priority.NORMAL, () -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(executor.cancel("ocr-job"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertFalse(executor.isActive("ocr-job"));
+        await(() -> metric(BackgroundTaskExecutor.Pool.OCR, "cancelled") == 1);
+    }
+
+    @Test
+    void failuresAreCounted() throws Exception {
+        Future<?> future = executor.submit(BackgroundTaskExecutor.Pool.SEARCH, "failing", BackgroundTaskExecutor.Priority.NORMAL, () -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        await(() -> metric(BackgroundTaskExecutor.Pool.SEARCH, "failed") == 1);
+        assertEquals(0L, metric(BackgroundTaskExecutor.Pool.SEARCH, "completed"));
+        assertFalse(executor.isActive("failing"));
+    }
+
+    @Test
+    void unknownRejectionPolicyFallsBackToAbort() {
+        assertEquals(BackgroundTaskExecutor.RejectionPolicy.CALLER_RUNS, BackgroundTaskExecutor.RejectionPolicy.of(" Caller-Runs "));
+        assertEquals(BackgroundTaskExecutor.RejectionPolicy.ABORT, BackgroundTaskExecutor.RejectionPolicy.of("drop-oldest"));
+    }
+
+    @Test
+    void virtualExecutorRunsEachTaskOnItsOwnThreadUpToConcurrencyLimit() throws Exception {
+        BackgroundTaskExecutor.VirtualTaskExecutor virtual =
+                new BackgroundTaskExecutor.VirtualTaskExecutor("sync", Thread::new, 3, 2);
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            virtual.execute(new Job(0, () -> {
+                threads.add(Thread.currentThread());
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        // 三个任务同时执行，各自占用一个线程
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, threads.stream().distinct().count());
+        assertEquals(3, virtual.getActiveCount());
+
+        // 超出并发上限的任务排队，按优先级执行；队列满后拒绝
+        List<String> order = new CopyOnWriteArrayList<>();
+        virtual.execute(new Job(2, () -> order.add("low")));
+        virtual.execute(new Job(1, () -> order.add("high")));
+        assertEquals(2, virtual.getQueuedCount());
+        assertThrows(RejectedExecutionException.class, () -> virtual.execute(new Job(0, () -> { })));
+
+        gate.countDown();
+        await(() -> order.size() == 2);
+        assertEquals(Arrays.asList("high", "low"), order);
+        virtual.shutdown();
+        assertTrue(virtual.awaitTermination(TimeUnit.SECONDS.toNanos(5)));
+        assertEquals(0, virtual.getActiveCount());
+        assertThrows(RejectedExecutionException.class, () -> virtual.execute(new Job(0, () -> { })));
+    }
+
+    @Test
+    void virtualExecutorRemoveAndShutdownNowDropQueuedTasks() throws Exception {
+        BackgroundTaskExecutor.VirtualTaskExecutor virtual =
+                new BackgroundTaskExecutor.VirtualTaskExecutor("sync", Thread::new, 1, 5);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        virtual.execute(new Job(0, () -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        AtomicBoolean ran = new AtomicBoolean();
+        Job removed = new Job(0, () -> ran.set(true));
+        virtual.execute(removed);
+        virtual.execute(new Job(0, () -> ran.set(true)));
+
+        assertTrue(virtual.remove(removed));
+        assertEquals(1, virtual.getQueuedCount());
+        assertEquals(1, virtual.shutdownNow().size());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(virtual.awaitTermination(TimeUnit.SECONDS.toNanos(5)));
+        assertFalse(ran.get());
+    }
+
+    // ===== 工具方法 =====
+
+    // 有界优先级队列要求任务可比较，数值小的先执行
+    private static final class Job implements Runnable, Comparable<Job> {
+        private final int priority;
+        private final Runnable body;
+
+        Job(int priority, Runnable body) {
+            this.priority = priority;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return Integer.compare(priority, other.priority);
+        }
+    }
+
+    // 提交一个占住工作线程的任务，等它开始执行后返回
+    private Future<?> block(BackgroundTaskExecutor.Pool pool) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> future = executor.execute(pool, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return future;
+    }
+
+    private void submit(BackgroundTaskExecutor.Pool pool, BackgroundTaskExecutor.Priority priority, Runnable task) {
+        executor.submit(pool, null, priority, task);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> poolMetrics(BackgroundTaskExecutor.Pool pool) {
+        return (Map<String, Object>) executor.getMetrics().get(pool.code);
+    }
+
+    private long metric(BackgroundTaskExecutor.Pool pool, String name) {
+        return ((Number) poolMetrics(pool).get(name)).longValue();
+    }
+
+    // 统计在任务的 done() 中更新，可能略晚于 Future 完成
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.vue.readingapp.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 搜索分词：拉丁词切分、中文单字 / 二元组、摘要截取
+ */
+class SearchTokenizerTests {
+
+    @Test
+    void latinWordsAreLowercasedAndSplitOnSeparators() {
+        assertEquals(Arrays.asList("hello", "world", "x2", "42"), SearchTokenizer.tokenizeForIndex("Hello, WORLD! x2-42"));
+    }
+
+    @Test
+    void overlongWordsAreDropped() {
+        char[] longWord = new char[41];
+        Arrays.fill(longWord, 'a');
+        assertEquals(Arrays.asList("short", "tail"), SearchTokenizer.tokenizeForIndex("short " + new String(longWord) + " tail"));
+    }
+
+    @Test
+    void indexEmitsUnigramsAndBigrams() {
+        assertEquals(Arrays.asList("阅", "读", "阅读", "器", "读器"), SearchTokenizer.tokenizeForIndex("阅读器"));
+    }
+
+    @Test
+    void queryUsesBigramsForRunsAndUnigramForSingleCharacters() {
+        assertEquals(Arrays.asList("阅读", "读器"), SearchTokenizer.tokenizeQuery("阅读器"));
+        assertEquals(Collections.singletonList("书"), SearchTokenizer.tokenizeQuery("书"));
+        assertEquals(Arrays.asList("abc", "书", "def"), SearchTokenizer.tokenizeQuery("abc书 def"));
+    }
+
+    @Test
+    void queryTermsAreDeduplicatedInOrder() {
+        assertEquals(Arrays.asList("cat", "dog"), SearchTokenizer.tokenizeQuery("Cat dog CAT"));
+    }
+
+    @Test
+    void supplementaryCharactersAreKeptWhole() {
+        // U+20000 是扩展 B 区汉字，在 Java 字符串中占两个 char
+        String rare = new String(Character.toChars(0x20000));
+        assertEquals(Arrays.asList(rare, "字", rare + "字"), SearchTokenizer.tokenizeForIndex(rare + "字"));
+        assertEquals(Collections.singletonList(rare), SearchTokenizer.tokenizeQuery(rare));
+    }
+
+    @Test
+    void emptyInputProducesNoTokens() {
+        assertTrue(SearchTokenizer.tokenizeForIndex(null).isEmpty());
+        assertTrue(SearchTokenizer.tokenizeQuery("  ,.;  ").isEmpty());
+    }
+
+    @Test
+    void excerptCentersOnFirstHit() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append("filler ");
+        }
+        text.append("Target phrase");
+        for (int i = 0; i < 50; i++) {
+            text.append(" filler");
+        }
+
+        String excerpt = SearchTokenizer.excerpt(text.toString(), "target", 60);
+        assertTrue(excerpt.startsWith("..."));
+        assertTrue(excerpt.endsWith("..."));
+        assertTrue(excerpt.contains("Target phrase"));
+        assertEquals(66, excerpt.length());
+    }
+
+    @Test
+    void excerptFallsBackToStart() {
+        assertEquals("short", SearchTokenizer.excerpt("short", "missing", 60));
+        assertEquals("abcde...", SearchTokenizer.excerpt("abcdefghij", "zzz", 5));
+    }
+}
@@ -0,0 +1,204 @@
+package com.vue.readingapp.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用户倒排索引：BM25 得分与按公式逐条计算的结果比较
+ */
+class UserSearchIndexTests {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double EPSILON = 1e-9;
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "epsilon", "阅读", "笔记"};
+
+    @Test
+    void scoresMatchBm25Formula() {
+        Random random = new Random(1);
+        UserSearchIndex index = new UserSearchIndex();
+        Map<Long, String> texts = new LinkedHashMap<>();
+        for (long id = 1; id <= 40; id++) {
+            String text = randomText(random);
+            texts.put(id, text);
+            index.put(UserSearchIndex.NOTE, new UserSearchIndex.EntryBuilder().field(text, 1).build(id, id, 0));
+        }
+
+        for (int q = 0; q < 50; q++) {
+            List<String> query = new ArrayList<>();
+            for (int i = 0, n = 1 + random.nextInt(3); i < n; i++) {
+                query.add(WORDS[random.nextInt(WORDS.length)]);
+            }
+            List<String> terms = SearchTokenizer.tokenizeQuery(String.join(" ", query));
+            assertScores(naiveBm25(texts, terms), index.score(UserSearchIndex.NOTE, terms), query.toString());
+        }
+    }
+
+    @Test
+    void allQueryTermsMustMatch() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(UserSearchIndex.NOTE, entry(1, "alpha beta"));
+        index.put(UserSearchIndex.NOTE, entry(2, "alpha gamma"));
+
+        Map<Long, Double> scores = index.score(UserSearchIndex.NOTE, Arrays.asList("alpha", "beta"));
+        assertEquals(Collections.singleton(1L), scores.keySet());
+        assertTrue(index.score(UserSearchIndex.NOTE, Arrays.asList("alpha", "missing")).isEmpty());
+    }
+
+    @Test
+    void updatesAndRemovalsKeepStatisticsConsistent() {
+        Random random = new Random(2);
+        UserSearchIndex index = new UserSearchIndex();
+        Map<Long, String> texts = new LinkedHashMap<>();
+        for (long id = 1; id <= 30; id++) {
+            String text = randomText(random);
+            texts.put(id, text);
+            index.put(UserSearchIndex.NOTE, entry(id, text));
+        }
+        // 改写一部分、删除一部分
+        for (long id = 1; id <= 30; id += 3) {
+            String text = randomText(random);
+            texts.put(id, text);
+            index.put(UserSearchIndex.NOTE, entry(id, text));
+        }
+        for (long id = 2; id <= 30; id += 5) {
+            texts.remove(id);
+            index.remove(UserSearchIndex.NOTE, id);
+        }
+
+        for (String word : WORDS) {
+            List<String> terms = SearchTokenizer.tokenizeQuery(word);
+            assertScores(naiveBm25(texts, terms), index.score(UserSearchIndex.NOTE, terms), word);
+        }
+    }
+
+    @Test
+    void segmentsKeepSeparateStatistics() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(UserSearchIndex.DOCUMENT, entry(1, "alpha beta"));
+        index.put(UserSearchIndex.DOCUMENT, entry(2, "gamma"));
+        Map<Long, Double> before = index.score(UserSearchIndex.DOCUMENT, Collections.singletonList("alpha"));
+
+        // 其他类型的内容不影响文档元数据段的 IDF 和平均长度
+        for (long id = 1; id <= 20; id++) {
+            index.put(UserSearchIndex.PAGE, entry(id, "alpha alpha alpha alpha"));
+        }
+        assertScores(before, index.score(UserSearchIndex.DOCUMENT, Collections.singletonList("alpha")), "document segment");
+    }
+
+    @Test
+    void fieldWeightMultipliesTermFrequency() {
+        UserSearchIndex.Entry entry = new UserSearchIndex.EntryBuilder()
+                .field("Reading Notes", 3)
+                .field("notes about reading habits", 1)
+                .build(7, 7, 0);
+
+        assertEquals(4, (int) entry.termFrequencies.get("reading"));
+        assertEquals(4, (int) entry.termFrequencies.get("notes"));
+        assertEquals(1, (int) entry.termFrequencies.get("habits"));
+        assertEquals(10, entry.length);
+    }
+
+    @Test
+    void removeDocumentDropsEntriesOfAllTypes() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(UserSearchIndex.DOCUMENT, new UserSearchIndex.EntryBuilder().field("alpha", 1).build(5, 5, 0));
+        index.put(UserSearchIndex.PAGE, new UserSearchIndex.EntryBuilder().field("alpha", 1).build(UserSearchIndex.pageEntryId(5, 1), 5, 1));
+        index.put(UserSearchIndex.NOTE, new UserSearchIndex.EntryBuilder().field("alpha", 1).build(100, 5, 1));
+        index.put(UserSearchIndex.NOTE, new UserSearchIndex.EntryBuilder().field("alpha", 1).build(101, 6, 1));
+
+        index.removeDocument(5);
+
+        assertEquals(1, index.size());
+        assertNull(index.getEntry(UserSearchIndex.DOCUMENT, 5));
+        assertFalse(index.score(UserSearchIndex.NOTE, Collections.singletonList("alpha")).containsKey(100L));
+        assertTrue(index.score(UserSearchIndex.NOTE, Collections.singletonList("alpha")).containsKey(101L));
+    }
+
+    @Test
+    void pageEntryIdsAreDistinctPerPage() {
+        assertEquals((3L << 20) | 7, UserSearchIndex.pageEntryId(3, 7));
+        assertTrue(UserSearchIndex.pageEntryId(3, 1) != UserSearchIndex.pageEntryId(3, 2));
+        assertTrue(UserSearchIndex.pageEntryId(3, 1) != UserSearchIndex.pageEntryId(4, 1));
+    }
+
+    // ===== 朴素实现 =====
+
+    private static Map<Long, Double> naiveBm25(Map<Long, String> texts, List<String> terms) {
+        Map<Long, Map<String, Integer>> frequencies = new HashMap<>();
+        long totalLength = 0;
+        for (Map.Entry<Long, String> text : texts.entrySet()) {
+            Map<String, Integer> tf = new HashMap<>();
+            for (String token : SearchTokenizer.tokenizeForIndex(text.getValue())) {
+                tf.merge(token, 1, Integer::sum);
+                totalLength++;
+            }
+            frequencies.put(text.getKey(), tf);
+        }
+        int n = texts.size();
+        double averageLength = Math.max(1.0, (double) totalLength / n);
+
+        Map<Long, Double> scores = new HashMap<>();
+        for (Map.Entry<Long, Map<String, Integer>> entry : frequencies.entrySet()) {
+            int length = 0;
+            for (int tf : entry.getValue().values()) {
+                length += tf;
+            }
+            double score = 0;
+            boolean all = !terms.isEmpty();
+            for (String term : terms) {
+                Integer tf = entry.getValue().get(term);
+                if (tf == null) {
+                    all = false;
+                    break;
+                }
+                int df = 0;
+                for (Map<String, Integer> other : frequencies.values()) {
+                    if (other.containsKey(term)) {
+                        df++;
+                    }
+                }
+                double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                score += idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+            }
+            if (all) {
+                scores.put(entry.getKey(), score);
+            }
+        }
+        return scores;
+    }
+
+    // ===== 工具方法 =====
+
+    private static void assertScores(Map<Long, Double> expected, Map<Long, Double> actual, String message) {
+        assertEquals(expected.keySet(), actual.keySet(), message);
+        for (Map.Entry<Long, Double> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()), EPSILON, message + " id " + entry.getKey());
+        }
+    }
+
+    private static UserSearchIndex.Entry entry(long id, String text) {
+        return new UserSearchIndex.EntryBuilder().field(text, 1).build(id, id, 0);
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0, n = 1 + random.nextInt(12); i < n; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package com.vue.readingapp.search.popular;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Space-Saving 摘要：与精确计数比较误差上限
+ */
+class SpaceSavingSummaryTests {
+
+    private static final int CAPACITY = 20;
+
+    @Test
+    void exactWhileUnderCapacity() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(CAPACITY);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            offer(summary, exact, "k" + random.nextInt(CAPACITY), i);
+        }
+
+        Map<String, SpaceSavingSummary.Counter> counters = counters(summary);
+        assertEquals(CAPACITY, counters.size());
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            SpaceSavingSummary.Counter counter = counters.get(entry.getKey());
+            assertEquals((long) entry.getValue(), counter.count, entry.getKey());
+            assertEquals(0, counter.error, entry.getKey());
+        }
+        assertEquals(1000, summary.getTotal());
+    }
+
+    @Test
+    void errorBoundsHoldOnSkewedStream() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(CAPACITY);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(2);
+        int total = 20000;
+        for (int i = 0; i < total; i++) {
+            // 少数热门词 + 大量长尾词
+            String key = random.nextInt(4) == 0 ? "hot" + random.nextInt(5) : "tail" + random.nextInt(2000);
+            offer(summary, exact, key, i);
+        }
+
+        assertErrorBounds(counters(summary), exact, total);
+    }
+
+    @Test
+    void mergedSummariesKeepErrorBounds() {
+        Random random = new Random(3);
+        Map<String, Long> exact = new HashMap<>();
+        Map<String, SpaceSavingSummary.Counter> window = new HashMap<>();
+        int total = 0;
+        SpaceSavingSummary merged = new SpaceSavingSummary(CAPACITY);
+        for (int bucket = 0; bucket < 5; bucket++) {
+            SpaceSavingSummary summary = new SpaceSavingSummary(CAPACITY);
+            for (int i = 0; i < 4000; i++, total++) {
+                String key = random.nextInt(3) == 0 ? "hot" + random.nextInt(4) : "tail" + random.nextInt(1000);
+                offer(summary, exact, key, total);
+            }
+            // 按桶累加（查询时间窗口）
+            summary.addTo(window, null);
+            // 合并为一份摘要（恢复快照、合并其他实例的快照）
+            merged.mergeFrom(summary);
+        }
+
+        assertErrorBounds(window, exact, total);
+        assertErrorBounds(counters(merged), exact, total);
+        assertEquals(total, merged.getTotal());
+    }
+
+    @Test
+    void serializationRoundTripKeepsCountersAndErrors() throws Exception {
+        SpaceSavingSummary summary = new SpaceSavingSummary(CAPACITY);
+        Random random = new Random(4);
+        for (int i = 0; i < 5000; i++) {
+            summary.offer("all\u0001k" + random.nextInt(100), "k", "all", 1 + random.nextInt(3), i);
+        }
+        byte[] data = summary.toBytes();
+        SpaceSavingSummary restored = SpaceSavingSummary.fromBytes(data, CAPACITY);
+
+        Map<String, SpaceSavingSummary.Counter> before = counters(summary);
+        Map<String, SpaceSavingSummary.Counter> after = counters(restored);
+        assertEquals(before.size(), after.size());
+        for (Map.Entry<String, SpaceSavingSummary.Counter> entry : before.entrySet()) {
+            SpaceSavingSummary.Counter counter = after.get(entry.getKey());
+            assertNotNull(counter, entry.getKey());
+            assertEquals(entry.getValue().count, counter.count);
+            assertEquals(entry.getValue().error, counter.error);
+            assertEquals(entry.getValue().lastSeen, counter.lastSeen);
+        }
+        assertEquals(summary.getTotal(), restored.getTotal());
+    }
+
+    @Test
+    void typeFilterSelectsCounters() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(CAPACITY);
+        summary.offer("document\u0001a", "a", "document", 3, 1);
+        summary.offer("vocabulary\u0001a", "a", "vocabulary", 2, 2);
+
+        Map<String, SpaceSavingSummary.Counter> documents = new HashMap<>();
+        summary.addTo(documents, "document");
+        assertEquals(1, documents.size());
+        assertEquals(3, documents.get("document\u0001a").count);
+    }
+
+    // 对每个计数器：真实次数 <= count <= 真实次数 + error，且 error 不超过 总次数 / capacity；
+    // 真实次数超过 总次数 / capacity 的词一定在摘要中
+    private static void assertErrorBounds(Map<String, SpaceSavingSummary.Counter> counters, Map<String, Long> exact, long total) {
+        for (Map.Entry<String, SpaceSavingSummary.Counter> entry : counters.entrySet()) {
+            SpaceSavingSummary.Counter counter = entry.getValue();
+            long actual = exact.getOrDefault(entry.getKey(), 0L);
+            assertTrue(counter.count >= actual, entry.getKey() + " underestimated");
+            assertTrue(counter.count - counter.error <= actual, entry.getKey() + " error bound too small");
+            assertTrue(counter.error <= total / CAPACITY, entry.getKey() + " error " + counter.error);
+        }
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            if (entry.getValue() > total / CAPACITY) {
+                assertTrue(counters.containsKey(entry.getKey()), entry.getKey() + " missing");
+            }
+        }
+    }
+
+    private static void offer(SpaceSavingSummary summary, Map<String, Long> exact, String key, long time) {
+        summary.offer(key, key, "all", 1, time);
+        exact.merge(key, 1L, Long::sum);
+    }
+
+    private static Map<String, SpaceSavingSummary.Counter> counters(SpaceSavingSummary summary) {
+        Map<String, SpaceSavingSummary.Counter> counters = new HashMap<>();
+        summary.addTo(counters, null);
+        return counters;
+    }
+}
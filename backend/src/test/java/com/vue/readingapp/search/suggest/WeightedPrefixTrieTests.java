@@ -0,0 +1,243 @@
+package com.vue.readingapp.search.suggest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 带权重的前缀树：随机操作序列与"过滤 + 排序"的朴素实现比较
+ *
+ * 字母表很小、键很短，前缀之间大量重叠；K 和保存 top-K 的深度都很小，
+ * 同时覆盖直接读取 top-K、删除后补足 top-K、top-K 中有过滤条目、遍历子树几种查询路径。
+ */
+class WeightedPrefixTrieTests {
+
+    private static final int K = 3;
+    private static final int TOP_K_DEPTH = 2;
+    private static final String[] TYPES = {"document", "vocabulary", "history"};
+
+    /** 朴素实现中的一个条目 */
+    private static final class ModelEntry {
+        final String type;
+        final List<String> keys;
+        double weight;
+        int count;
+
+        ModelEntry(String type, List<String> keys) {
+            this.type = type;
+            this.keys = keys;
+        }
+    }
+
+    @Test
+    void randomOperationsMatchNaiveModel() {
+        for (long seed = 1; seed <= 20; seed++) {
+            runRandomOperations(seed);
+        }
+    }
+
+    @Test
+    void shortPrefixReadsTopKInWeightOrder() {
+        WeightedPrefixTrie trie = new WeightedPrefixTrie(K, TOP_K_DEPTH);
+        trie.add("a", "apple", "vocabulary", 1, Collections.singletonList("apple"), 1, 1);
+        trie.add("b", "apply", "vocabulary", 2, Collections.singletonList("apply"), 5, 1);
+        trie.add("c", "apt", "vocabulary", 3, Collections.singletonList("apt"), 3, 1);
+        trie.add("d", "ape", "vocabulary", 4, Collections.singletonList("ape"), 2, 1);
+
+        assertEquals(Arrays.asList("b", "c", "d"), ids(trie.top("a", K, null)));
+
+        // 权重增加后上移
+        assertTrue(trie.bump("a", 10, 1));
+        assertEquals(Arrays.asList("a", "b", "c"), ids(trie.top("ap", K, null)));
+        assertEquals(2, trie.top("app", 5, null).get(0).count);
+    }
+
+    @Test
+    void removedAndFilteredEntriesAreBackfilledFromSubtree() {
+        WeightedPrefixTrie trie = new WeightedPrefixTrie(K, TOP_K_DEPTH);
+        for (int i = 0; i < 6; i++) {
+            trie.add("e" + i, "ab" + i, i % 2 == 0 ? "document" : "history", i, Collections.singletonList("ab" + i), 10 - i, 1);
+        }
+        trie.remove("e0");
+        assertEquals(Arrays.asList("e1", "e2", "e3"), ids(trie.top("a", K, null)));
+        assertEquals(Arrays.asList("e2", "e4"), ids(trie.top("a", K, entry -> "document".equals(entry.type))));
+        assertFalse(trie.bump("e0", 1, 1));
+        assertEquals(5, trie.getEntryCount());
+    }
+
+    @Test
+    void renamedEntryKeepsWeightUnderNewKeys() {
+        WeightedPrefixTrie trie = new WeightedPrefixTrie(K, TOP_K_DEPTH);
+        trie.add("doc:1", "old title", "document", 1, Arrays.asList("old", "title"), 4, 2);
+        trie.add("doc:1", "new name", "document", 1, Arrays.asList("new", "name"), 0, 0);
+
+        assertTrue(trie.top("old", 5, null).isEmpty());
+        List<WeightedPrefixTrie.Entry> renamed = trie.top("n", 5, null);
+        assertEquals(1, renamed.size());
+        assertEquals("new name", renamed.get(0).text);
+        assertEquals(4.0, renamed.get(0).weight, 0.0);
+        assertEquals(2, renamed.get(0).count);
+    }
+
+    @Test
+    void compactionDropsRemovedEntriesAndKeepsResults() {
+        WeightedPrefixTrie trie = new WeightedPrefixTrie(K, TOP_K_DEPTH);
+        for (int i = 0; i < 200; i++) {
+            trie.add("e" + i, "k" + i, "history", i, Collections.singletonList("k" + i), i, 1);
+        }
+        assertSame(trie, trie.compactIfNeeded());
+        for (int i = 0; i < 200; i += 2) {
+            trie.remove("e" + i);
+        }
+        List<String> before = ids(trie.top("k1", 20, null));
+
+        WeightedPrefixTrie compacted = trie.compactIfNeeded();
+        assertNotSame(trie, compacted);
+        assertEquals(100, compacted.getEntryCount());
+        assertEquals(before, ids(compacted.top("k1", 20, null)));
+    }
+
+    @Test
+    void removalsRefillTopKOfLargeSubtrees() {
+        // 子树节点数远超遍历上限：删除或改名后仍必须从 top-K 得到准确结果
+        Random random = new Random(7);
+        WeightedPrefixTrie trie = new WeightedPrefixTrie(10, TOP_K_DEPTH);
+        Map<String, ModelEntry> model = new LinkedHashMap<>();
+        for (int i = 0; i < 30000; i++) {
+            StringBuilder key = new StringBuilder("a");
+            for (int c = 0; c < 6; c++) {
+                key.append((char) ('a' + random.nextInt(26)));
+            }
+            List<String> keys = Collections.singletonList(key.toString());
+            double weight = random.nextDouble() * 1000;
+            trie.add("e" + i, key.toString(), "vocabulary", i, keys, weight, 1);
+            ModelEntry entry = new ModelEntry("vocabulary", keys);
+            entry.weight = weight;
+            model.put("e" + i, entry);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            List<String> top = expected(model, "a", 10, null);
+            trie.remove(top.get(0));
+            model.remove(top.get(0));
+            // 改名：旧条目被替换，权重由新条目继承
+            String renamed = top.get(3);
+            List<String> keys = Collections.singletonList("b" + round);
+            trie.add(renamed, "b" + round, "vocabulary", 0, keys, 0, 0);
+            ModelEntry entry = new ModelEntry("vocabulary", keys);
+            entry.weight = model.get(renamed).weight;
+            model.put(renamed, entry);
+
+            assertEquals(expected(model, "a", 10, null), ids(trie.top("a", 10, null)), "round " + round);
+            assertEquals(expected(model, "", 10, null), ids(trie.top("", 10, null)), "round " + round);
+        }
+    }
+
+    private void runRandomOperations(long seed) {
+        Random random = new Random(seed);
+        WeightedPrefixTrie trie = new WeightedPrefixTrie(K, TOP_K_DEPTH);
+        Map<String, ModelEntry> model = new LinkedHashMap<>();
+
+        for (int step = 0; step < 400; step++) {
+            String id = "e" + random.nextInt(40);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                List<String> keys = randomKeys(random);
+                String type = TYPES[random.nextInt(TYPES.length)];
+                double weight = random.nextDouble() * 10;
+                ModelEntry existing = model.get(id);
+                // 文本由键决定：键相同视为同一条目，否则视为改名，继承权重和次数
+                trie.add(id, String.join(" ", keys), existing != null && existing.keys.equals(keys) ? existing.type : type,
+                        0, keys, weight, 1);
+                ModelEntry entry = existing != null && existing.keys.equals(keys) ? existing : new ModelEntry(type, keys);
+                if (entry != existing && existing != null) {
+                    entry.weight = existing.weight;
+                    entry.count = existing.count;
+                }
+                entry.weight += weight;
+                entry.count++;
+                model.put(id, entry);
+            } else if (operation < 7) {
+                double weight = random.nextDouble() * 10;
+                ModelEntry entry = model.get(id);
+                assertEquals(entry != null, trie.bump(id, weight, 1), "seed " + seed + " bump " + id);
+                if (entry != null) {
+                    entry.weight += weight;
+                    entry.count++;
+                }
+            } else if (operation < 8) {
+                trie.remove(id);
+                model.remove(id);
+            } else {
+                String prefix = randomKey(random, 0, 3);
+                int limit = 1 + random.nextInt(6);
+                String type = random.nextBoolean() ? null : TYPES[random.nextInt(TYPES.length)];
+                Predicate<WeightedPrefixTrie.Entry> filter = type == null ? null : entry -> type.equals(entry.type);
+                assertEquals(expected(model, prefix, limit, type), ids(trie.top(prefix, limit, filter)),
+                        "seed " + seed + " step " + step + " prefix '" + prefix + "' limit " + limit + " type " + type);
+            }
+        }
+        assertEquals(model.size(), trie.getEntryCount(), "seed " + seed);
+    }
+
+    private static List<String> expected(Map<String, ModelEntry> model, String prefix, int limit, String type) {
+        List<Map.Entry<String, ModelEntry>> matches = new ArrayList<>();
+        for (Map.Entry<String, ModelEntry> entry : model.entrySet()) {
+            ModelEntry value = entry.getValue();
+            if (type != null && !type.equals(value.type)) {
+                continue;
+            }
+            for (String key : value.keys) {
+                if (key.startsWith(prefix)) {
+                    matches.add(entry);
+                    break;
+                }
+            }
+        }
+        matches.sort((a, b) -> Double.compare(b.getValue().weight, a.getValue().weight));
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+            ids.add(matches.get(i).getKey());
+        }
+        return ids;
+    }
+
+    private static List<String> randomKeys(Random random) {
+        int count = 1 + random.nextInt(3);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(randomKey(random, 1, 5));
+        }
+        return keys;
+    }
+
+    private static String randomKey(Random random, int minLength, int maxLength) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            key.append((char) ('a' + random.nextInt(3)));
+        }
+        return key.toString();
+    }
+
+    private static List<String> ids(List<WeightedPrefixTrie.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (WeightedPrefixTrie.Entry entry : entries) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+}
@@ -10,6 +10,7 @@ DROP TABLE IF EXISTS `notifications`;
 DROP TABLE IF EXISTS `notification_settings`;
 DROP TABLE IF EXISTS `notification_subscriptions`;
 DROP TABLE IF EXISTS `document_ocr_results`;
+DROP TABLE IF EXISTS `document_blobs`;
 DROP TABLE IF EXISTS `ocr_tasks`;
 DROP TABLE IF EXISTS `ocr_exports`;
 DROP TABLE IF EXISTS `document_ocr_settings`;
@@ -118,6 +119,8 @@ CREATE TABLE `user_sessions` (
   `created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   PRIMARY KEY (`session_id`),
   KEY `user_id` (`user_id`),
+  KEY `access_token` (`access_token`),
+  KEY `refresh_token` (`refresh_token`),
   CONSTRAINT `user_sessions_ibfk_1` FOREIGN KEY (`user_id`) REFERENCES `users` (`user_id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
@@ -165,6 +168,7 @@ CREATE TABLE `documents` (
   `file_name` VARCHAR(255) NOT NULL,
   `file_size` BIGINT(20) DEFAULT NULL,
   `file_type` VARCHAR(100) DEFAULT NULL,
+  `content_hash` CHAR(64) DEFAULT NULL,
   `language` VARCHAR(20) DEFAULT NULL,
   `page_count` INT(11) DEFAULT NULL,
   `reading_progress` DOUBLE DEFAULT 0.00,
@@ -185,13 +189,28 @@ CREATE TABLE `documents` (
   `last_read_at` TIMESTAMP NULL DEFAULT NULL,
   `processing_started_at` TIMESTAMP NULL DEFAULT NULL,
   `processing_completed_at` TIMESTAMP NULL DEFAULT NULL,
+  `text_layer_pages` INT(11) DEFAULT NULL,
+  `ocr_pages` INT(11) DEFAULT NULL,
   PRIMARY KEY (`document_id`),
   KEY `user_id` (`user_id`),
   KEY `folder_id` (`folder_id`),
+  KEY `idx_content_hash` (`content_hash`),
   CONSTRAINT `documents_ibfk_1` FOREIGN KEY (`user_id`) REFERENCES `users` (`user_id`) ON DELETE CASCADE,
   CONSTRAINT `documents_ibfk_2` FOREIGN KEY (`folder_id`) REFERENCES `folders` (`folder_id`) ON DELETE SET NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- Table structure for `document_blobs`
+CREATE TABLE `document_blobs` (
+  `content_hash` CHAR(64) NOT NULL,
+  `file_path` VARCHAR(255) NOT NULL,
+  `file_size` BIGINT(20) NOT NULL,
+  `ref_count` INT(11) NOT NULL DEFAULT 0,
+  `last_referenced_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`content_hash`),
+  KEY `idx_ref_count` (`ref_count`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- Table structure for `document_pages`
 CREATE TABLE `document_pages` (
   `page_id` VARCHAR(50) NOT NULL,
@@ -244,10 +263,14 @@ CREATE TABLE `document_processing_queue` (
   `status` VARCHAR(50) NOT NULL DEFAULT 'pending',
   `priority` INT(11) DEFAULT 1,
   `error_message` TEXT,
+  `lease_owner` VARCHAR(100) DEFAULT NULL,
+  `lease_expires_at` DATETIME DEFAULT NULL,
+  `attempts` INT(11) NOT NULL DEFAULT 0,
   `created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
   PRIMARY KEY (`queue_id`),
   KEY `document_id` (`document_id`),
+  KEY `idx_status_priority_created` (`status`, `priority`, `created_at`),
   CONSTRAINT `document_processing_queue_ibfk_1` FOREIGN KEY (`document_id`) REFERENCES `documents` (`document_id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
@@ -428,6 +451,9 @@ CREATE TABLE `user_vocabulary` (
   `review_count` INT(11) DEFAULT 0,
   `last_reviewed_at` TIMESTAMP NULL DEFAULT NULL,
   `next_review_at` TIMESTAMP NULL DEFAULT NULL,
+  `srs_stability` DOUBLE DEFAULT NULL,
+  `srs_difficulty` DOUBLE DEFAULT NULL,
+  `srs_ease` DOUBLE DEFAULT NULL,
   `source` VARCHAR(255) DEFAULT NULL,
   `source_page` INT(11) DEFAULT NULL,
   `created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
@@ -437,6 +463,8 @@ CREATE TABLE `user_vocabulary` (
   KEY `word_id` (`word_id`),
   KEY `status` (`status`),
   KEY `language` (`language`),
+  KEY `idx_user_next_review` (`user_id`, `next_review_at`),
+  KEY `idx_user_created` (`user_id`, `created_at`),
   UNIQUE KEY `unique_user_word` (`user_id`, `word`, `language`),
   CONSTRAINT `user_vocabulary_ibfk_1` FOREIGN KEY (`user_id`) REFERENCES `users` (`user_id`) ON DELETE CASCADE,
   CONSTRAINT `user_vocabulary_ibfk_2` FOREIGN KEY (`word_id`) REFERENCES `words` (`word_id`) ON DELETE CASCADE
@@ -1244,6 +1272,38 @@ CREATE TABLE `word_lookup_history` (
   CONSTRAINT `word_lookup_history_ibfk_2` FOREIGN KEY (`word_id`) REFERENCES `words` (`word_id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- Table structure for `document_text_index`
+-- 文档内搜索的位置倒排索引（序列化格式见 DocumentTextIndex）
+CREATE TABLE `document_text_index` (
+  `document_id` INT NOT NULL PRIMARY KEY,
+  `format_version` INT NOT NULL,
+  `page_count` INT NOT NULL DEFAULT 0,
+  `token_count` INT NOT NULL DEFAULT 0,
+  `index_data` LONGBLOB NOT NULL,
+  `built_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  CONSTRAINT `document_text_index_ibfk_1` FOREIGN KEY (`document_id`) REFERENCES `documents` (`document_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Table structure for `system_stats_rollup`
+-- 系统统计汇总：bucket 为 'total' 的是累计值，为日期（yyyy-MM-dd）的是当天的值
+CREATE TABLE `system_stats_rollup` (
+  `metric` VARCHAR(100) NOT NULL,
+  `bucket` VARCHAR(10) NOT NULL,
+  `value` BIGINT NOT NULL DEFAULT 0,
+  `updated_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`metric`, `bucket`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Table structure for `search_popularity_snapshots`
+-- 热门搜索统计快照：每个时间桶一份 Space-Saving 摘要（序列化格式见 SpaceSavingSummary）
+CREATE TABLE `search_popularity_snapshots` (
+  `granularity` VARCHAR(8) NOT NULL,
+  `bucket` BIGINT NOT NULL,
+  `summary_data` MEDIUMBLOB NOT NULL,
+  `updated_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`granularity`, `bucket`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- Indexes for performance
 CREATE INDEX idx_users_email ON users(email);
 CREATE INDEX idx_reading_history_user_id ON reading_history(user_id);